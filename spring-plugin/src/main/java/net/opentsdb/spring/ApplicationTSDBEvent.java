@@ -39,13 +39,51 @@ public class ApplicationTSDBEvent extends ApplicationEvent {
 
 	/**  */
 	private static final long serialVersionUID = 2281234244338800682L;
+	/** Indicates if this is a pooled instance */
+	protected final boolean pooled;
 
 	/**
 	 * Creates a new ApplicationTSDBEvent
 	 * @param tsdbEvent The wrapped TSDBEvent
 	 */
 	public ApplicationTSDBEvent(TSDBEvent tsdbEvent) {
+		this(tsdbEvent, false);
+	}
+	
+	/**
+	 * Creates a new ApplicationTSDBEvent
+	 * @param tsdbEvent The wrapped TSDBEvent
+	 * @param pooled true if this is a pooled instance
+	 */
+	protected ApplicationTSDBEvent(TSDBEvent tsdbEvent, boolean pooled) {
 		super(tsdbEvent);
+		this.pooled = pooled;
+	}
+	
+	/**
+	 * Returns the wrapped TSDBEvent
+	 * @return the wrapped TSDBEvent
+	 */
+	public TSDBEvent getTSDBEvent() {
+		return (TSDBEvent)source;
+	}
+	
+	/**
+	 * Indicates if this event is a pooled instance owned by a {@link DisruptorApplicationEventMulticaster}.
+	 * Pooled instances are reloaded once delivery completes, so listeners must not retain them.
+	 * @return true if this event is pooled, false otherwise
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+	
+	/**
+	 * Returns an event that is safe to retain after the listener callback returns.
+	 * Non pooled events return themselves, pooled events return a copy.
+	 * @return a retainable event
+	 */
+	public ApplicationTSDBEvent detach() {
+		return this;
 	}
 
 }
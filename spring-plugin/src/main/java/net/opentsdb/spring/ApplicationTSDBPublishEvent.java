@@ -49,6 +49,32 @@ public class ApplicationTSDBPublishEvent extends ApplicationTSDBEvent {
 		super(tsdbPublishEvent);
 	}
 	
+	/**
+	 * Creates a new ApplicationTSDBPublishEvent
+	 * @param tsdbPublishEvent The event to wrap
+	 * @param pooled true if this is a pooled instance
+	 */
+	protected ApplicationTSDBPublishEvent(TSDBPublishEvent tsdbPublishEvent, boolean pooled) {
+		super(tsdbPublishEvent, pooled);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.ApplicationTSDBEvent#detach()
+	 */
+	@Override
+	public ApplicationTSDBPublishEvent detach() {
+		return isPooled() ? new ApplicationTSDBPublishEvent(new TSDBPublishEvent(getTSDBEvent())) : this;
+	}
+	
+	/**
+	 * Creates a new pooled ApplicationTSDBPublishEvent for a multicaster ring buffer slot
+	 * @return a new pooled event
+	 */
+	static ApplicationTSDBPublishEvent pooled() {
+		return new ApplicationTSDBPublishEvent(new TSDBPublishEvent(), true);
+	}
+	
 	/**
 	 * Converts the publish data point method invocation into a ApplicationTSDBPublishEvent to be published into the app context
 	 * @param metric The name of the metric associated with the data point
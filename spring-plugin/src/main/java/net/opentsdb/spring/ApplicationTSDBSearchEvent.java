@@ -55,6 +55,32 @@ public class ApplicationTSDBSearchEvent extends ApplicationTSDBEvent {
 		super(tsdbEvent);
 	}
 	
+	/**
+	 * Creates a new ApplicationTSDBSearchEvent
+	 * @param tsdbEvent The event to wrap
+	 * @param pooled true if this is a pooled instance
+	 */
+	protected ApplicationTSDBSearchEvent(TSDBSearchEvent tsdbEvent, boolean pooled) {
+		super(tsdbEvent, pooled);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.ApplicationTSDBEvent#detach()
+	 */
+	@Override
+	public ApplicationTSDBSearchEvent detach() {
+		return isPooled() ? new ApplicationTSDBSearchEvent(new TSDBSearchEvent(getTSDBEvent())) : this;
+	}
+	
+	/**
+	 * Creates a new pooled ApplicationTSDBSearchEvent for a multicaster ring buffer slot
+	 * @return a new pooled event
+	 */
+	static ApplicationTSDBSearchEvent pooled() {
+		return new ApplicationTSDBSearchEvent(new TSDBSearchEvent(), true);
+	}
+	
 	
 	/**
 	 * Deletes an annotation
@@ -0,0 +1,50 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.spring;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * <p>Title: BatchApplicationListener</p>
+ * <p>Description: An application listener that accepts events in batches when registered with a {@link DisruptorApplicationEventMulticaster}.
+ * Events dispatched by other multicasters, and events published outside the ring buffer, are delivered one at a time through 
+ * {@link ApplicationListener#onApplicationEvent(ApplicationEvent)}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.spring.BatchApplicationListener</code></p>
+ * @param <E> The type of application event listened for
+ */
+
+public interface BatchApplicationListener<E extends ApplicationEvent> extends ApplicationListener<E> {
+	/**
+	 * Delivers a batch of events. The list, and any pooled events in it (see {@link ApplicationTSDBEvent#isPooled()}), 
+	 * are reused once this call returns, so implementations must copy or {@link ApplicationTSDBEvent#detach()} anything they retain.
+	 * @param events The batch of events, in publication order
+	 */
+	public void onApplicationEvents(List<E> events);
+}
@@ -0,0 +1,523 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.helios.tsdb.plugins.Constants;
+import org.helios.tsdb.plugins.async.WaitStrategyFactory;
+import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.event.TSDBPublishEvent;
+import org.helios.tsdb.plugins.event.TSDBSearchEvent;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.AbstractApplicationEventMulticaster;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+
+/**
+ * <p>Title: DisruptorApplicationEventMulticaster</p>
+ * <p>Description: A Spring {@link org.springframework.context.event.ApplicationEventMulticaster} that delivers TSDB events
+ * through a Disruptor ring buffer to a single consumer thread.</p>
+ * <ul>
+ * 	<li>Each ring slot carries pooled {@link ApplicationTSDBPublishEvent} and {@link ApplicationTSDBSearchEvent} instances which 
+ * 	the {@link SpringContainerService} loads in place, so the data point path does not allocate events.</li>
+ * 	<li>Listeners are resolved once per event type and cached until the listener set changes.</li>
+ * 	<li>Listeners implementing {@link BatchApplicationListener} receive events in batches, flushed at the end of each ring batch
+ * 	or when the configured batch size is reached.</li>
+ * 	<li>Events that are not TSDB events (context lifecycle events and the like) are delivered synchronously on the publishing thread.</li>
+ * </ul>
+ * <p>Listeners must not retain pooled events beyond the callback. See {@link ApplicationTSDBEvent#detach()}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.spring.DisruptorApplicationEventMulticaster</code></p>
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class DisruptorApplicationEventMulticaster extends AbstractApplicationEventMulticaster implements EventHandler<DisruptorApplicationEventMulticaster.MulticastSlot>, DisruptorApplicationEventMulticasterMXBean {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The ring buffer events are published to */
+	protected final RingBuffer<MulticastSlot> ringBuffer;
+	/** The ring buffer consumer */
+	protected final BatchEventProcessor<MulticastSlot> processor;
+	/** The maximum number of events delivered to a batch listener in one call */
+	protected final int maxBatchSize;
+	/** The resolved listeners keyed by event type */
+	protected final Map<Class<?>, ResolvedListeners> resolved = new ConcurrentHashMap<Class<?>, ResolvedListeners>();
+	/** The pending batches keyed by batch listener. Only accessed by the consumer thread. */
+	protected final Map<BatchApplicationListener, PendingBatch> pendingByListener = new IdentityHashMap<BatchApplicationListener, PendingBatch>();
+	/** The pending batches in flush order. Only accessed by the consumer thread. */
+	protected final List<PendingBatch> pending = new ArrayList<PendingBatch>();
+	/** The JMX ObjectName */
+	protected final ObjectName objectName;
+	
+	/** The number of events published into the ring */
+	protected final AtomicLong published = new AtomicLong(0L);
+	/** The number of listener invocations */
+	protected final AtomicLong delivered = new AtomicLong(0L);
+	/** The number of batches delivered */
+	protected final AtomicLong batches = new AtomicLong(0L);
+	/** The number of listener exceptions */
+	protected final AtomicLong errors = new AtomicLong(0L);
+	
+	/** The config property name for the multicaster ring buffer size */
+	public static final String MULTICASTER_RING_SIZE = "spr.tsd.multicaster.ringsize";
+	/** The default multicaster ring buffer size */
+	public static final int DEFAULT_MULTICASTER_RING_SIZE = 4096;
+	/** The config property name for the multicaster ring buffer wait strategy */
+	public static final String MULTICASTER_WAIT_STRAT = "spr.tsd.multicaster.waitstrat";
+	/** The config property name for the multicaster ring buffer wait strategy ctor args */
+	public static final String MULTICASTER_WAIT_STRAT_ARGS = "spr.tsd.multicaster.waitstrat.args";
+	/** The config property name for the maximum batch size delivered to batch listeners */
+	public static final String MULTICASTER_BATCH_SIZE = "spr.tsd.multicaster.batchsize";
+	/** The default maximum batch size delivered to batch listeners */
+	public static final int DEFAULT_MULTICASTER_BATCH_SIZE = 256;
+	/** The JMX ObjectName of the multicaster */
+	public static final String OBJECT_NAME = "net.opentsdb.spring:service=ApplicationEventMulticaster";
+	/** The time allowed on shutdown for the ring to drain in ms. */
+	public static final long DRAIN_TIMEOUT = 2000;
+	
+	/** The ring slot factory */
+	private static final EventFactory<MulticastSlot> SLOT_FACTORY = new EventFactory<MulticastSlot>() {
+		@Override
+		public MulticastSlot newInstance() {
+			return new MulticastSlot();
+		}
+	};
+	
+	/**
+	 * Creates a new DisruptorApplicationEventMulticaster and starts the ring consumer
+	 * @param beanFactory The bean factory used to resolve listener beans
+	 * @param executor The executor to run the ring consumer on
+	 * @param config The TSDB extracted config
+	 */
+	public DisruptorApplicationEventMulticaster(BeanFactory beanFactory, Executor executor, Properties config) {
+		setBeanFactory(beanFactory);
+		int ringSize = ConfigurationHelper.getIntSystemThenEnvProperty(MULTICASTER_RING_SIZE, DEFAULT_MULTICASTER_RING_SIZE, config);
+		maxBatchSize = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(MULTICASTER_BATCH_SIZE, DEFAULT_MULTICASTER_BATCH_SIZE, config));
+		String waitStrategyClassName = ConfigurationHelper.getSystemThenEnvProperty(MULTICASTER_WAIT_STRAT, Constants.DEFAULT_RING_BUFFER_WAIT_STRAT, config);
+		String[] waitStrategyArgs = ConfigurationHelper.getSystemThenEnvPropertyArray(MULTICASTER_WAIT_STRAT_ARGS, Constants.DEFAULT_RING_BUFFER_WAIT_STRAT_ARGS, config);
+		ringBuffer = RingBuffer.createMultiProducer(SLOT_FACTORY, ringSize, WaitStrategyFactory.newWaitStrategy(waitStrategyClassName, waitStrategyArgs));
+		processor = new BatchEventProcessor<MulticastSlot>(ringBuffer, ringBuffer.newBarrier(), this);
+		ringBuffer.addGatingSequences(processor.getSequence());
+		objectName = JMXHelper.objectName(OBJECT_NAME);
+		if(JMXHelper.isRegistered(objectName)) {
+			try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		}
+		JMXHelper.registerMBean(this, objectName);
+		executor.execute(processor);
+		log.info("Started DisruptorApplicationEventMulticaster. Ring Size:{}, Batch Size:{}, Wait Strategy:{} {}", ringSize, maxBatchSize, waitStrategyClassName, Arrays.toString(waitStrategyArgs));
+	}
+	
+	/**
+	 * Claims the next ring slot. The caller must load the slot with {@link #publishEvent(long)} or {@link #searchEvent(long)}
+	 * and then call {@link #publish(long)}, in a finally block.
+	 * @return the claimed sequence
+	 */
+	public long next() {
+		return ringBuffer.next();
+	}
+	
+	/**
+	 * Returns the cleared pooled publish event in the claimed slot for loading
+	 * @param sequence The claimed sequence
+	 * @return the TSDBPublishEvent to load
+	 */
+	public TSDBPublishEvent publishEvent(long sequence) {
+		final MulticastSlot slot = ringBuffer.get(sequence);
+		slot.event = slot.publishEvent;
+		final TSDBEvent event = slot.publishEvent.getTSDBEvent();
+		event.reset();
+		return (TSDBPublishEvent)event;
+	}
+	
+	/**
+	 * Returns the cleared pooled search event in the claimed slot for loading
+	 * @param sequence The claimed sequence
+	 * @return the TSDBSearchEvent to load
+	 */
+	public TSDBSearchEvent searchEvent(long sequence) {
+		final MulticastSlot slot = ringBuffer.get(sequence);
+		slot.event = slot.searchEvent;
+		final TSDBEvent event = slot.searchEvent.getTSDBEvent();
+		event.reset();
+		return (TSDBSearchEvent)event;
+	}
+	
+	/**
+	 * Publishes a claimed and loaded slot
+	 * @param sequence The claimed sequence
+	 */
+	public void publish(long sequence) {
+		ringBuffer.publish(sequence);
+		published.incrementAndGet();
+	}
+	
+	/**
+	 * <p>TSDB events are published into the ring. All other events are delivered synchronously.</p>
+	 * {@inheritDoc}
+	 * @see org.springframework.context.event.ApplicationEventMulticaster#multicastEvent(org.springframework.context.ApplicationEvent)
+	 */
+	@Override
+	public void multicastEvent(ApplicationEvent event) {
+		if(event instanceof ApplicationTSDBEvent) {
+			final long sequence = ringBuffer.next();
+			try {
+				ringBuffer.get(sequence).event = event;
+			} finally {
+				publish(sequence);
+			}
+		} else {
+			for(ApplicationListener listener: getApplicationListeners(event)) {
+				invoke(listener, event);
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.EventHandler#onEvent(java.lang.Object, long, boolean)
+	 */
+	@Override
+	public void onEvent(MulticastSlot slot, long sequence, boolean endOfBatch) throws Exception {
+		final ApplicationEvent event = slot.event;
+		if(event!=null) {
+			final ResolvedListeners rl = resolve(event);
+			if(rl==null) {
+				// source type differs from the cached resolution, so resolve this one the slow way
+				for(ApplicationListener listener: getApplicationListeners(event)) {
+					invoke(listener, event);
+				}
+			} else {
+				for(int i = 0; i < rl.listeners.length; i++) {
+					invoke(rl.listeners[i], event);
+				}
+				for(int i = 0; i < rl.batches.length; i++) {
+					final PendingBatch batch = rl.batches[i];
+					batch.events.add(event);
+					if(batch.events.size() >= maxBatchSize) flush(batch);
+				}
+			}
+		}
+		if(endOfBatch) {
+			for(int i = 0; i < pending.size(); i++) {
+				final PendingBatch batch = pending.get(i);
+				if(!batch.events.isEmpty()) flush(batch);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the cached listeners for the passed event's type, resolving them on the first event of each type
+	 * @param event The event to resolve listeners for
+	 * @return the resolved listeners or null if the event's source type does not match the cached resolution
+	 */
+	protected ResolvedListeners resolve(ApplicationEvent event) {
+		final Class<?> eventType = event.getClass();
+		final Class<?> sourceType = event.getSource()==null ? null : event.getSource().getClass();
+		ResolvedListeners rl = resolved.get(eventType);
+		if(rl==null) {
+			final List<ApplicationListener> listeners = new ArrayList<ApplicationListener>();
+			final List<PendingBatch> batchList = new ArrayList<PendingBatch>();
+			for(ApplicationListener listener: getApplicationListeners(event)) {
+				if(listener instanceof BatchApplicationListener) {
+					PendingBatch batch = pendingByListener.get(listener);
+					if(batch==null) {
+						batch = new PendingBatch((BatchApplicationListener)listener, maxBatchSize);
+						pendingByListener.put((BatchApplicationListener)listener, batch);
+						pending.add(batch);
+					}
+					batchList.add(batch);
+				} else {
+					listeners.add(listener);
+				}
+			}
+			rl = new ResolvedListeners(sourceType, listeners.toArray(new ApplicationListener[listeners.size()]), batchList.toArray(new PendingBatch[batchList.size()]));
+			resolved.put(eventType, rl);
+			log.info("Resolved [{}] listeners and [{}] batch listeners for event type [{}]", rl.listeners.length, rl.batches.length, eventType.getName());
+		}
+		return rl.sourceType==sourceType ? rl : null;
+	}
+	
+	/**
+	 * Delivers and clears a pending batch
+	 * @param batch The batch to flush
+	 */
+	protected void flush(PendingBatch batch) {
+		try {
+			batch.listener.onApplicationEvents(batch.events);
+			batches.incrementAndGet();
+			delivered.addAndGet(batch.events.size());
+		} catch (Throwable t) {
+			errors.incrementAndGet();
+			log.warn("Batch listener [{}] failed on batch of [{}] events", batch.listener, batch.events.size(), t);
+		} finally {
+			batch.events.clear();
+		}
+	}
+	
+	/**
+	 * Invokes a listener, logging and counting any exception so one listener cannot stop delivery to the others
+	 * @param listener The listener to invoke
+	 * @param event The event to deliver
+	 */
+	protected void invoke(ApplicationListener listener, ApplicationEvent event) {
+		try {
+			listener.onApplicationEvent(event);
+			delivered.incrementAndGet();
+		} catch (Throwable t) {
+			errors.incrementAndGet();
+			log.warn("Listener [{}] failed on event [{}]", listener, event, t);
+		}
+	}
+	
+	/**
+	 * Waits up to {@link #DRAIN_TIMEOUT} ms. for published events to be delivered, then stops the ring consumer
+	 */
+	public void shutdown() {
+		final long drainBy = System.currentTimeMillis() + DRAIN_TIMEOUT;
+		while(processor.getSequence().get() < ringBuffer.getCursor() && System.currentTimeMillis() < drainBy) {
+			try { Thread.sleep(10); } catch (InterruptedException iex) { Thread.interrupted(); break; }
+		}
+		final long undelivered = ringBuffer.getCursor() - processor.getSequence().get();
+		processor.halt();
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		log.info("Stopped DisruptorApplicationEventMulticaster. Undelivered Events:{}", undelivered);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.springframework.context.event.AbstractApplicationEventMulticaster#addApplicationListener(org.springframework.context.ApplicationListener)
+	 */
+	@Override
+	public void addApplicationListener(ApplicationListener listener) {
+		super.addApplicationListener(listener);
+		resolved.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.springframework.context.event.AbstractApplicationEventMulticaster#addApplicationListenerBean(java.lang.String)
+	 */
+	@Override
+	public void addApplicationListenerBean(String listenerBeanName) {
+		super.addApplicationListenerBean(listenerBeanName);
+		resolved.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.springframework.context.event.AbstractApplicationEventMulticaster#removeApplicationListener(org.springframework.context.ApplicationListener)
+	 */
+	@Override
+	public void removeApplicationListener(ApplicationListener listener) {
+		super.removeApplicationListener(listener);
+		resolved.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.springframework.context.event.AbstractApplicationEventMulticaster#removeApplicationListenerBean(java.lang.String)
+	 */
+	@Override
+	public void removeApplicationListenerBean(String listenerBeanName) {
+		super.removeApplicationListenerBean(listenerBeanName);
+		resolved.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.springframework.context.event.AbstractApplicationEventMulticaster#removeAllListeners()
+	 */
+	@Override
+	public void removeAllListeners() {
+		super.removeAllListeners();
+		resolved.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getBufferSize()
+	 */
+	@Override
+	public int getBufferSize() {
+		return ringBuffer.getBufferSize();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getRemainingCapacity()
+	 */
+	@Override
+	public long getRemainingCapacity() {
+		return ringBuffer.remainingCapacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getPublishedCount()
+	 */
+	@Override
+	public long getPublishedCount() {
+		return published.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getDeliveredCount()
+	 */
+	@Override
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getBatchCount()
+	 */
+	@Override
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getListenerErrorCount()
+	 */
+	@Override
+	public long getListenerErrorCount() {
+		return errors.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getMaxBatchSize()
+	 */
+	@Override
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean#getResolvedEventTypes()
+	 */
+	@Override
+	public String[] getResolvedEventTypes() {
+		final List<String> names = new ArrayList<String>(resolved.size());
+		for(Class<?> clazz: resolved.keySet()) {
+			names.add(clazz.getName());
+		}
+		return names.toArray(new String[names.size()]);
+	}
+	
+	/**
+	 * <p>Title: MulticastSlot</p>
+	 * <p>Description: A ring buffer slot holding the event to deliver and the slot's pooled TSDB events</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.spring.DisruptorApplicationEventMulticaster.MulticastSlot</code></p>
+	 */
+	public static class MulticastSlot {
+		/** The event to deliver */
+		ApplicationEvent event = null;
+		/** The slot's pooled publish event */
+		final ApplicationTSDBPublishEvent publishEvent = ApplicationTSDBPublishEvent.pooled();
+		/** The slot's pooled search event */
+		final ApplicationTSDBSearchEvent searchEvent = ApplicationTSDBSearchEvent.pooled();
+	}
+	
+	/**
+	 * <p>Title: ResolvedListeners</p>
+	 * <p>Description: The listeners resolved for an event type</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.spring.DisruptorApplicationEventMulticaster.ResolvedListeners</code></p>
+	 */
+	protected static class ResolvedListeners {
+		/** The event source type the listeners were resolved for */
+		final Class<?> sourceType;
+		/** The listeners invoked per event */
+		final ApplicationListener[] listeners;
+		/** The pending batches of the batch listeners */
+		final PendingBatch[] batches;
+		
+		/**
+		 * Creates a new ResolvedListeners
+		 * @param sourceType The event source type the listeners were resolved for
+		 * @param listeners The listeners invoked per event
+		 * @param batches The pending batches of the batch listeners
+		 */
+		ResolvedListeners(Class<?> sourceType, ApplicationListener[] listeners, PendingBatch[] batches) {
+			this.sourceType = sourceType;
+			this.listeners = listeners;
+			this.batches = batches;
+		}
+	}
+	
+	/**
+	 * <p>Title: PendingBatch</p>
+	 * <p>Description: The events accumulated for a batch listener, reused across flushes</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.spring.DisruptorApplicationEventMulticaster.PendingBatch</code></p>
+	 */
+	protected static class PendingBatch {
+		/** The batch listener */
+		final BatchApplicationListener listener;
+		/** The accumulated events */
+		final List<ApplicationEvent> events;
+		
+		/**
+		 * Creates a new PendingBatch
+		 * @param listener The batch listener
+		 * @param maxBatchSize The maximum batch size
+		 */
+		PendingBatch(BatchApplicationListener listener, int maxBatchSize) {
+			this.listener = listener;
+			this.events = new ArrayList<ApplicationEvent>(maxBatchSize);
+		}
+	}
+
+}
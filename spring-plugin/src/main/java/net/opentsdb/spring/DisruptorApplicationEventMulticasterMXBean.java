@@ -0,0 +1,83 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.spring;
+
+/**
+ * <p>Title: DisruptorApplicationEventMulticasterMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link DisruptorApplicationEventMulticaster}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.spring.DisruptorApplicationEventMulticasterMXBean</code></p>
+ */
+
+public interface DisruptorApplicationEventMulticasterMXBean {
+	/**
+	 * Returns the ring buffer's buffer size
+	 * @return the ring buffer's buffer size
+	 */
+	public int getBufferSize();
+	
+	/**
+	 * Returns the ring buffer's number of open slots
+	 * @return the ring buffer's number of open slots
+	 */
+	public long getRemainingCapacity();
+	
+	/**
+	 * Returns the number of events published into the ring buffer
+	 * @return the number of events published
+	 */
+	public long getPublishedCount();
+	
+	/**
+	 * Returns the number of individual listener invocations
+	 * @return the number of listener invocations
+	 */
+	public long getDeliveredCount();
+	
+	/**
+	 * Returns the number of batches delivered to batch listeners
+	 * @return the number of batches delivered
+	 */
+	public long getBatchCount();
+	
+	/**
+	 * Returns the number of exceptions thrown by listeners
+	 * @return the number of listener exceptions
+	 */
+	public long getListenerErrorCount();
+	
+	/**
+	 * Returns the maximum batch size delivered to batch listeners
+	 * @return the maximum batch size
+	 */
+	public int getMaxBatchSize();
+	
+	/**
+	 * Returns the names of the event types with resolved listeners
+	 * @return the resolved event type names
+	 */
+	public String[] getResolvedEventTypes();
+}
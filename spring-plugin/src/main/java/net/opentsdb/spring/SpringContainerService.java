@@ -45,6 +45,7 @@ import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.ConstructorArgumentValues;
 import org.springframework.beans.factory.config.PropertyPlaceholderConfigurer;
 import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.context.event.AbstractApplicationEventMulticaster;
 import org.springframework.context.event.SimpleApplicationEventMulticaster;
 import org.springframework.context.support.GenericXmlApplicationContext;
 import org.springframework.core.io.DefaultResourceLoader;
@@ -74,7 +75,9 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	/** The bootstrap XML config resource */
 	protected Resource resource;
 	/** The asynch application event multicaster */
-	protected SimpleApplicationEventMulticaster eventMulticaster;
+	protected AbstractApplicationEventMulticaster eventMulticaster;
+	/** The disruptor multicaster TSDB events are published through, null if disabled or stopped */
+	protected volatile DisruptorApplicationEventMulticaster ringMulticaster = null;
 	/** The asynch dispatcher's executor */
 	protected ThreadPoolExecutor asyncExecutor;
 	/** The parent TSDB instance */
@@ -91,6 +94,10 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	public static final String TSDB_BEAN_NAME = "tsdb";
 	/** The bean name of the plugin service async executor */
 	public static final String TSDB_ASYNC_EXEC_BEAN_NAME = "tsdbAsyncExecutor";
+	/** The config property name to enable the disruptor event multicaster */
+	public static final String SPRING_DISRUPTOR_MULTICASTER = "spr.tsd.multicaster.disruptor";
+	/** The default disruptor event multicaster enablement */
+	public static final boolean DEFAULT_SPRING_DISRUPTOR_MULTICASTER = true;
 	
 	private static void reset() {
 		instance = null;
@@ -141,8 +148,14 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 		String springConfig = ConfigurationHelper.getSystemThenEnvProperty(SPRING_ROOT_XML, DEFAULT_SPRING_ROOT_XML, config);
 		resource = new DefaultResourceLoader().getResource(springConfig);
 		asyncExecutor = new AsyncDispatcherExecutor(config);
-		eventMulticaster = new SimpleApplicationEventMulticaster(appContext);
-		eventMulticaster.setTaskExecutor(asyncExecutor);		
+		if(ConfigurationHelper.getBooleanSystemThenEnvProperty(SPRING_DISRUPTOR_MULTICASTER, DEFAULT_SPRING_DISRUPTOR_MULTICASTER, config)) {
+			ringMulticaster = new DisruptorApplicationEventMulticaster(appContext, asyncExecutor, config);
+			eventMulticaster = ringMulticaster;
+		} else {
+			SimpleApplicationEventMulticaster simpleMulticaster = new SimpleApplicationEventMulticaster(appContext);
+			simpleMulticaster.setTaskExecutor(asyncExecutor);
+			eventMulticaster = simpleMulticaster;
+		}
 		appContext.load(resource);
 		final PropertyPlaceholderConfigurer propPlaceholder = new PropertyPlaceholderConfigurer();
 		propPlaceholder.setProperties(config);
@@ -221,10 +234,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	
 	
 	/**
-	 * Stops the event dispatcher and all subsidiary services
+	 * Stops the event dispatcher and all subsidiary services.
+	 * The multicaster is drained and halted before the app context is closed so that
+	 * queued events are not delivered to listeners of a closed context.
 	 */
 	public void doPreShutdown() {
-
+		if(ringMulticaster!=null) {
+			DisruptorApplicationEventMulticaster rm = ringMulticaster;
+			ringMulticaster = null;
+			rm.shutdown();
+		}
 		if(appContext!=null) {
 			appContext.stop();
 			appContext.close();
@@ -245,7 +264,17 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @param tsuid Time series UID for the value
 	 */
 	public void publishDataPoint(String metric, long timestamp, double value, Map<String, String> tags, byte[] tsuid) {
-		if(appContext != null) appContext.publishEvent(ApplicationTSDBPublishEvent.publishDataPoint(metric, timestamp, value, tags, tsuid));
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.publishEvent(sequence).publishDataPoint(metric, timestamp, value, tags, tsuid);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
+			appContext.publishEvent(ApplicationTSDBPublishEvent.publishDataPoint(metric, timestamp, value, tags, tsuid));
+		}
 	}
 
 	/**
@@ -257,7 +286,17 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @param tsuid Time series UID for the value
 	 */
 	public void publishDataPoint(String metric, long timestamp, long value, Map<String, String> tags, byte[] tsuid) {
-		if(appContext != null) appContext.publishEvent(ApplicationTSDBPublishEvent.publishDataPoint(metric, timestamp, value, tags, tsuid));
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.publishEvent(sequence).publishDataPoint(metric, timestamp, value, tags, tsuid);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
+			appContext.publishEvent(ApplicationTSDBPublishEvent.publishDataPoint(metric, timestamp, value, tags, tsuid));
+		}
 	}
 	
 
@@ -268,7 +307,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#deleteAnnotation(net.opentsdb.meta.Annotation)
 	 */
 	public void deleteAnnotation(Annotation annotation) {
-		if(annotation!=null && appContext != null) {
+		if(annotation==null) return;
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).deleteAnnotation(annotation);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
 			appContext.publishEvent(ApplicationTSDBSearchEvent.deleteAnnotation(annotation));
 		}
 	}
@@ -288,7 +336,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#indexAnnotation(net.opentsdb.meta.Annotation)
 	 */
 	public void indexAnnotation(Annotation annotation) {
-		if(annotation!=null && appContext != null) {
+		if(annotation==null) return;
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).indexAnnotation(annotation);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
 			appContext.publishEvent(ApplicationTSDBSearchEvent.indexAnnotation(annotation));
 		}
 	}	
@@ -299,7 +356,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#deleteTSMeta(java.lang.String)
 	 */
 	public void deleteTSMeta(String tsMeta) {
-		if(tsMeta!=null && appContext != null) {
+		if(tsMeta==null) return;
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).deleteTSMeta(tsMeta);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
 			appContext.publishEvent(ApplicationTSDBSearchEvent.deleteTSMeta(tsMeta));
 		}
 	}
@@ -310,7 +376,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#indexTSMeta(net.opentsdb.meta.TSMeta)
 	 */
 	public void indexTSMeta(TSMeta tsMeta) {
-		if(tsMeta!=null && appContext != null) {
+		if(tsMeta==null) return;
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).indexTSMeta(tsMeta);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
 			appContext.publishEvent(ApplicationTSDBSearchEvent.indexTSMeta(tsMeta));
 		}
 	}	
@@ -321,7 +396,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#indexUIDMeta(net.opentsdb.meta.UIDMeta)
 	 */
 	public void indexUIDMeta(UIDMeta uidMeta) {
-		if(uidMeta!=null && appContext != null) {
+		if(uidMeta==null) return;
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).indexUIDMeta(uidMeta);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
 			appContext.publishEvent(ApplicationTSDBSearchEvent.indexUIDMeta(uidMeta));
 		}
 	}	
@@ -332,7 +416,16 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#deleteUIDMeta(net.opentsdb.meta.UIDMeta)
 	 */
 	public void deleteUIDMeta(UIDMeta uidMeta) {
-		if(uidMeta!=null && appContext != null) {
+		if(uidMeta==null) return;
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).deleteUIDMeta(uidMeta);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
 			appContext.publishEvent(ApplicationTSDBSearchEvent.deleteUIDMeta(uidMeta));
 		}
 	}
@@ -342,7 +435,17 @@ public class SpringContainerService extends AbstractTSDBPluginService {
 	 * @see net.opentsdb.search.SearchPlugin#executeQuery(net.opentsdb.search.SearchQuery)
 	 */
 	public void executeQuery(SearchQuery searchQuery, Deferred<SearchQuery> toComplete) {
-		if(appContext != null) appContext.publishEvent(ApplicationTSDBSearchEvent.executeQueryEvent(searchQuery, toComplete));
+		final DisruptorApplicationEventMulticaster rm = ringMulticaster;
+		if(rm!=null) {
+			final long sequence = rm.next();
+			try {
+				rm.searchEvent(sequence).executeQueryEvent(searchQuery, toComplete);
+			} finally {
+				rm.publish(sequence);
+			}
+		} else if(appContext != null) {
+			appContext.publishEvent(ApplicationTSDBSearchEvent.executeQueryEvent(searchQuery, toComplete));
+		}
 	}
 	
 	
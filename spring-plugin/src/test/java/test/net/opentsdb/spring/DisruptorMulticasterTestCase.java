@@ -0,0 +1,200 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.opentsdb.meta.Annotation;
+import net.opentsdb.spring.ApplicationTSDBEvent;
+import net.opentsdb.spring.ApplicationTSDBPublishEvent;
+import net.opentsdb.spring.DisruptorApplicationEventMulticaster;
+
+import org.helios.tsdb.plugins.event.TSDBEventType;
+import org.helios.tsdb.plugins.event.TSDBPublishEvent;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * <p>Title: DisruptorMulticasterTestCase</p>
+ * <p>Description: Validates the pooled event semantics of the {@link DisruptorApplicationEventMulticaster}: 
+ * ring slot events are reused, and {@link ApplicationTSDBEvent#detach()} returns a copy that survives reuse.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.spring.DisruptorMulticasterTestCase</code></p>
+ */
+
+public class DisruptorMulticasterTestCase extends BaseTest {
+	/** The ring size used by the tests */
+	static final int RING_SIZE = 4;
+	/** The multicaster under test */
+	protected DisruptorApplicationEventMulticaster multicaster = null;
+	/** The multicaster's consumer executor */
+	protected ExecutorService executor = null;
+	
+	/**
+	 * Stops the multicaster and its executor
+	 */
+	@After
+	public void stopMulticaster() {
+		if(multicaster!=null) multicaster.shutdown();
+		if(executor!=null) executor.shutdownNow();
+		multicaster = null;
+		executor = null;
+	}
+	
+	/**
+	 * Creates and starts a multicaster with a small ring so slots wrap quickly
+	 * @param listener The listener to register
+	 */
+	protected void startMulticaster(final RecordingListener listener) {
+		final Properties p = new Properties();
+		p.setProperty(DisruptorApplicationEventMulticaster.MULTICASTER_RING_SIZE, "" + RING_SIZE);
+		executor = Executors.newSingleThreadExecutor();
+		multicaster = new DisruptorApplicationEventMulticaster(new DefaultListableBeanFactory(), executor, p);
+		multicaster.addApplicationListener(listener);
+	}
+	
+	/**
+	 * Validates that delivered pooled events are reused across ring wraps, while detached copies keep their values
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=10000)
+	public void testDetachedPublishEventsSurviveReuse() throws Exception {
+		final int eventCount = RING_SIZE * 4;
+		final RecordingListener listener = new RecordingListener(eventCount);
+		startMulticaster(listener);
+		final Map<String, String> tags = new HashMap<String, String>();
+		tags.put("host", "localhost");
+		for(int i = 0; i < eventCount; i++) {
+			final long sequence = multicaster.next();
+			try {
+				multicaster.publishEvent(sequence).publishDataPoint("metric" + i, i, (long)i, tags, new byte[]{(byte)i});
+			} finally {
+				multicaster.publish(sequence);
+			}
+		}
+		Assert.assertTrue("Timed out waiting for events", listener.latch.await(5, TimeUnit.SECONDS));
+		final Map<ApplicationTSDBEvent, Boolean> distinct = new IdentityHashMap<ApplicationTSDBEvent, Boolean>();
+		for(ApplicationTSDBEvent raw: listener.raw) {
+			Assert.assertTrue("Delivered event was not pooled", raw.isPooled());
+			distinct.put(raw, true);
+		}
+		Assert.assertTrue("Pooled events were not reused. Distinct:" + distinct.size(), distinct.size() <= RING_SIZE);
+		for(int i = 0; i < eventCount; i++) {
+			final ApplicationTSDBEvent detached = listener.detached.get(i);
+			Assert.assertFalse("[" + i + "] Detached event was pooled", detached.isPooled());
+			Assert.assertNotSame("[" + i + "] Detached event was the pooled instance", listener.raw.get(i), detached);
+			Assert.assertTrue("[" + i + "] Unexpected detached type", detached instanceof ApplicationTSDBPublishEvent);
+			Assert.assertEquals("[" + i + "] Detached metric", "metric" + i, detached.getTSDBEvent().metric);
+			Assert.assertEquals("[" + i + "] Detached value", i, detached.getTSDBEvent().longValue);
+			Assert.assertEquals("[" + i + "] Detached tags", tags, detached.getTSDBEvent().tags);
+		}
+	}
+	
+	/**
+	 * Validates that detached search events keep the event type and payload of the pooled event
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=10000)
+	public void testDetachedSearchEvent() throws Exception {
+		final RecordingListener listener = new RecordingListener(1);
+		startMulticaster(listener);
+		final Annotation annotation = new Annotation();
+		annotation.setTSUID("000001000001000001");
+		annotation.setStartTime(1L);
+		annotation.setDescription("detach");
+		final long sequence = multicaster.next();
+		try {
+			multicaster.searchEvent(sequence).indexAnnotation(annotation);
+		} finally {
+			multicaster.publish(sequence);
+		}
+		Assert.assertTrue("Timed out waiting for events", listener.latch.await(5, TimeUnit.SECONDS));
+		final ApplicationTSDBEvent detached = listener.detached.get(0);
+		Assert.assertTrue("Delivered event was not pooled", listener.raw.get(0).isPooled());
+		Assert.assertFalse("Detached event was pooled", detached.isPooled());
+		Assert.assertEquals("Detached event type", TSDBEventType.ANNOTATION_INDEX, detached.getTSDBEvent().eventType);
+		Assert.assertSame("Detached annotation", annotation, detached.getTSDBEvent().annotation);
+	}
+	
+	/**
+	 * Validates that non pooled events detach to themselves and are delivered as published
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=10000)
+	public void testNonPooledEventDetachesToSelf() throws Exception {
+		final RecordingListener listener = new RecordingListener(1);
+		startMulticaster(listener);
+		final ApplicationTSDBPublishEvent event = new ApplicationTSDBPublishEvent(new TSDBPublishEvent().publishDataPoint("metric", 1L, 1L, new HashMap<String, String>(), new byte[]{1}));
+		Assert.assertFalse("Event was pooled", event.isPooled());
+		Assert.assertSame("Non pooled event did not detach to itself", event, event.detach());
+		multicaster.multicastEvent(event);
+		Assert.assertTrue("Timed out waiting for events", listener.latch.await(5, TimeUnit.SECONDS));
+		Assert.assertSame("Delivered event was not the published instance", event, listener.raw.get(0));
+		Assert.assertSame("Delivered event did not detach to itself", event, listener.detached.get(0));
+	}
+	
+	/**
+	 * <p>Title: RecordingListener</p>
+	 * <p>Description: Records each delivered event along with the detached event obtained during the callback</p> 
+	 */
+	static class RecordingListener implements ApplicationListener<ApplicationTSDBEvent> {
+		/** The delivered events */
+		final List<ApplicationTSDBEvent> raw = Collections.synchronizedList(new ArrayList<ApplicationTSDBEvent>());
+		/** The detached events */
+		final List<ApplicationTSDBEvent> detached = Collections.synchronizedList(new ArrayList<ApplicationTSDBEvent>());
+		/** Counts down the expected deliveries */
+		final CountDownLatch latch;
+		
+		/**
+		 * Creates a new RecordingListener
+		 * @param expected The number of expected deliveries
+		 */
+		RecordingListener(final int expected) {
+			latch = new CountDownLatch(expected);
+		}
+		
+		@Override
+		public void onApplicationEvent(final ApplicationTSDBEvent event) {
+			raw.add(event);
+			detached.add(event.detach());
+			latch.countDown();
+		}
+	}
+}
@@ -58,7 +58,7 @@ public class SpringEnabledQueuedResultEventHandler extends QueuedResultSearchEve
 	
 	@Override
 	public void onApplicationEvent(ApplicationTSDBEvent event) {
-		resultQueue.add(event);
+		resultQueue.add(event.detach());
 	}
 	/**
 	 * Sets the parent TSDB instance
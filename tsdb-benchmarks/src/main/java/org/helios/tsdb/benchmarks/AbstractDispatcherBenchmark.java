@@ -0,0 +1,169 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import net.opentsdb.uid.UniqueId;
+
+import org.helios.tsdb.plugins.async.AsyncEventDispatcher;
+import org.helios.tsdb.plugins.handlers.IEventHandler;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: AbstractDispatcherBenchmark</p>
+ * <p>Description: Base for the async event dispatcher publish throughput benchmarks. Each trial starts a dispatcher
+ * with a single {@link CountingEventHandler} and publishes a pre-built rotation of data points, so the measurement
+ * covers the dispatcher alone. Run with <b><code>-prof gc</code></b> to report the allocation per published event
+ * (<code>gc.alloc.rate.norm</code>) and with <b><code>-t</code></b> to vary the number of publishing threads.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.AbstractDispatcherBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public abstract class AbstractDispatcherBenchmark {
+	/** The number of distinct data points in the publish rotation. Must be a power of 2. */
+	public static final int DATA_POINTS = 1024;
+	/** The publish rotation mask */
+	protected static final int DATA_POINT_MASK = DATA_POINTS-1;
+	
+	/** The dispatcher under test */
+	protected AsyncEventDispatcher dispatcher = null;
+	/** The executor running the dispatcher's consumers */
+	protected ExecutorService executor = null;
+	/** The handler receiving the dispatched events */
+	protected CountingEventHandler handler = null;
+	/** The metric names in the publish rotation */
+	protected final String[] metrics = new String[DATA_POINTS];
+	/** The tags in the publish rotation */
+	protected final Map<String, String>[] tags = new Map[DATA_POINTS];
+	/** The TSUIDs in the publish rotation */
+	protected final byte[][] tsuids = new byte[DATA_POINTS][];
+	/** The publish rotation index */
+	protected final AtomicInteger index = new AtomicInteger(0);
+	
+	/**
+	 * Creates the dispatcher under test
+	 * @return an uninitialized dispatcher
+	 */
+	protected abstract AsyncEventDispatcher newDispatcher();
+	
+	/**
+	 * Returns the dispatcher configuration for this trial
+	 * @return the dispatcher configuration
+	 */
+	protected abstract Properties config();
+	
+	/**
+	 * Builds the publish rotation and starts the dispatcher
+	 */
+	@Setup
+	public void setup() {
+		for(int i = 0; i < DATA_POINTS; i++) {
+			metrics[i] = "sys.cpu." + (i%16);
+			Map<String, String> t = new HashMap<String, String>(4);
+			t.put("host", "host" + (i/16));
+			t.put("type", (i%2==0) ? "user" : "sys");
+			tags[i] = t;
+			tsuids[i] = UniqueId.stringToUid(String.format("%06X%06X%06X%06X%06X", i%16, 1, i/16, 2, i%2));
+		}
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			final AtomicInteger serial = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BenchmarkDispatcherThread#" + serial.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		handler = new CountingEventHandler();
+		dispatcher = newDispatcher();
+		dispatcher.initialize(config(), executor, Collections.<IEventHandler>singleton(handler));
+	}
+	
+	/**
+	 * Stops the dispatcher and its executor
+	 */
+	@TearDown
+	public void tearDown() {
+		if(dispatcher!=null) try { dispatcher.shutdown(); } catch (Exception ex) {/* No Op */}
+		if(executor!=null) executor.shutdownNow();
+	}
+	
+	/**
+	 * Unregisters a leftover dispatcher MBean so the next trial's dispatcher can register
+	 * @param objectName The ObjectName of the MBean
+	 */
+	protected static void unregister(String objectName) {
+		final ObjectName on = JMXHelper.objectName(objectName);
+		if(JMXHelper.isRegistered(on)) {
+			try { JMXHelper.unregisterMBean(on); } catch (Exception ex) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Publishes a double data point
+	 */
+	@Benchmark
+	public void publishDoubleDataPoint() {
+		final int i = index.getAndIncrement() & DATA_POINT_MASK;
+		dispatcher.publishDataPoint(metrics[i], 1400000000L + i, (double)i, tags[i], tsuids[i]);
+	}
+	
+	/**
+	 * Publishes a long data point
+	 */
+	@Benchmark
+	public void publishLongDataPoint() {
+		final int i = index.getAndIncrement() & DATA_POINT_MASK;
+		dispatcher.publishDataPoint(metrics[i], 1400000000L + i, (long)i, tags[i], tsuids[i]);
+	}
+}
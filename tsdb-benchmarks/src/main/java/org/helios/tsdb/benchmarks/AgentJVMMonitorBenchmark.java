@@ -0,0 +1,195 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.procedure.TObjectIntProcedure;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.opentsdb.stats.StatsCollector;
+
+import org.helios.tsdb.plugins.stats.AgentJVMMonitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: AgentJVMMonitorBenchmark</p>
+ * <p>Description: The cost of the {@link AgentJVMMonitor} thread collection into a discarding collector with a population of parked threads,
+ * against the thread collection it replaced, which read a {@link ThreadInfo} for every live thread and ran both deadlock scans on every
+ * collection. The rest of the monitor's collection is unchanged and not measured. 
+ * Run with <b><code>-prof gc</code></b> to compare the allocation per collection.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.AgentJVMMonitorBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class AgentJVMMonitorBenchmark {
+	/** The number of parked threads */
+	@Param({"100", "2000"})
+	public int threads;
+	
+	/** The monitor under test */
+	protected ThreadCollectingMonitor monitor;
+	/** The discarding collector */
+	protected final StatsCollector collector = new StatsCollector("bench") {
+		@Override
+		public void emit(String datapoint) {
+			/* No Op */
+		}
+	};
+	/** The latch the parked threads wait on */
+	protected CountDownLatch release;
+	
+	/**
+	 * Starts the parked threads and creates the monitor
+	 */
+	@Setup
+	public void setup() {
+		release = new CountDownLatch(1);
+		for(int i = 0; i < threads; i++) {
+			Thread t = new Thread("ParkedThread#" + i) {
+				public void run() {
+					try { release.await(); } catch (InterruptedException iex) {/* No Op */}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		monitor = new ThreadCollectingMonitor();
+	}
+	
+	/**
+	 * Releases the parked threads
+	 */
+	@TearDown
+	public void tearDown() {
+		release.countDown();
+	}
+	
+	/**
+	 * Executes one thread collection
+	 */
+	@Benchmark
+	public void collectThreads() {
+		monitor.collectThreads(collector);
+	}
+	
+	/**
+	 * Executes one thread collection the way the monitor did before it was made incremental
+	 */
+	@Benchmark
+	public void legacyCollectThreads() {
+		monitor.legacyCollectThreads(collector);
+	}
+	
+	/**
+	 * <p>Title: ThreadCollectingMonitor</p>
+	 * <p>Description: Exposes the monitor's thread collection, alongside a copy of the thread collection it replaced</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.benchmarks.AgentJVMMonitorBenchmark.ThreadCollectingMonitor</code></p>
+	 */
+	public static class ThreadCollectingMonitor extends AgentJVMMonitor {
+		/** The ThreadMXBean */
+		private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		
+		/**
+		 * Creates a new ThreadCollectingMonitor
+		 */
+		public ThreadCollectingMonitor() {
+			super(null, new Properties());
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.helios.tsdb.plugins.stats.AgentJVMMonitor#collectThreads(net.opentsdb.stats.StatsCollector)
+		 */
+		@Override
+		public void collectThreads(final StatsCollector sc) {
+			super.collectThreads(sc);
+		}
+		
+		/**
+		 * Collects thread stats as the monitor did before thread collection was made incremental, copied as it was
+		 * @param sc The stats collector to write collected metrics to
+		 */
+		public void legacyCollectThreads(final StatsCollector sc) {
+			try {
+				sc.addExtraTag("group", "threads");			
+				final int threadCount = threadMXBean.getThreadCount();
+				int daemonThreadCount = threadMXBean.getDaemonThreadCount();
+				int nonDaemonThreadCount = threadCount-daemonThreadCount;
+				long[] deadLocked = null;
+				deadLocked = threadMXBean.findDeadlockedThreads();
+				int deadlockedThreads  = deadLocked==null ? 0 : deadLocked.length;
+				deadLocked = threadMXBean.findMonitorDeadlockedThreads();
+				int monitorDeadlockedThreads = deadLocked==null ? 0 : deadLocked.length;
+				int peakThreadCount = threadMXBean.getPeakThreadCount();
+				threadMXBean.resetPeakThreadCount();
+				sc.record("ThreadCount", threadCount);
+				sc.record("DaemonThreadCount", daemonThreadCount);
+				sc.record("NonDaemonThreadCount", nonDaemonThreadCount);
+				sc.record("PeakThreadCount", peakThreadCount);
+				sc.record("PeakThreadCount", peakThreadCount);
+				sc.record("DeadLockThreadCount", deadlockedThreads);
+				sc.record("MonDeadLockThreadCount", monitorDeadlockedThreads);
+				TObjectIntHashMap<String> threadStateMap = new TObjectIntHashMap<String>(Thread.State.values().length);
+				for(ThreadInfo ti: threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
+					threadStateMap.adjustOrPutValue(ti.getThreadState().name(), 1, 1);
+				}
+				threadStateMap.forEachEntry(new TObjectIntProcedure<String>() {
+					@Override
+					public boolean execute(String threadState, int count) {
+						sc.record("ThreadCount", threadCount, "state=" + threadState);
+						return true;
+					}
+				});			
+			} finally {
+				sc.clearExtraTag("group");
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.helios.tsdb.plugins.util.bloom.UnsafeBloomFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+/**
+ * <p>Title: BloomFilterBenchmark</p>
+ * <p>Description: Put and mightContain cost of the {@link UnsafeBloomFilter} for TSUID sized string keys. 
+ * The filter is half filled before measuring, and the lookup rotation alternates hits and misses.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.BloomFilterBenchmark</code></p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class BloomFilterBenchmark {
+	/** The filter's expected insertions */
+	@Param({"100000", "1000000"})
+	public int expectedInsertions;
+	/** The filter's false positive probability */
+	@Param({"0.01"})
+	public double fpp;
+	
+	/** The number of distinct keys in the rotation. Must be a power of 2. */
+	public static final int KEYS = 65536;
+	/** The key funnel */
+	private static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(Charset.forName("UTF-8"));
+	
+	/** The filter under test */
+	protected UnsafeBloomFilter<CharSequence> filter;
+	/** The key rotation. Even indexes are in the filter, odd indexes are not (barring false positives). */
+	protected final String[] keys = new String[KEYS];
+	/** The rotation index */
+	protected int index = 0;
+	
+	/**
+	 * Creates the filter and adds the even keys
+	 */
+	@Setup
+	public void setup() {
+		filter = UnsafeBloomFilter.create(FUNNEL, expectedInsertions, fpp);
+		for(int i = 0; i < KEYS; i++) {
+			keys[i] = String.format("%06X%06X%06X%06X%06X", i%64, 1, i/64, 2, i%7);
+			if(i%2==0) filter.put(keys[i]);
+		}
+	}
+	
+	/**
+	 * Puts the next key
+	 * @return true if the filter changed
+	 */
+	@Benchmark
+	public boolean put() {
+		return filter.put(keys[index++ & (KEYS-1)]);
+	}
+	
+	/**
+	 * Tests the next key
+	 * @return true if the key might be in the filter
+	 */
+	@Benchmark
+	public boolean mightContain() {
+		return filter.mightContain(keys[index++ & (KEYS-1)]);
+	}
+}
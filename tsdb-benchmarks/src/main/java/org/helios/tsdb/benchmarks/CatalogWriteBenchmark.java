@@ -0,0 +1,210 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.opentsdb.catalog.AbstractDBCatalog;
+import net.opentsdb.catalog.CatalogDBInterface;
+import net.opentsdb.catalog.TSDBCatalogSearchEventHandler;
+import net.opentsdb.core.TSDB;
+import net.opentsdb.meta.TSMeta;
+import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.uid.UniqueId;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+import net.opentsdb.utils.Config;
+
+import org.helios.tsdb.plugins.event.TSDBSearchEvent;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.helios.tsdb.plugins.util.SystemClock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: CatalogWriteBenchmark</p>
+ * <p>Description: Batch insert throughput of {@link CatalogDBInterface#processEvents(Connection, Set)} against the 
+ * default in-memory H2 catalog. The TSDB and catalog are started the same way as the catalog load tests, then seeded
+ * with <b><code>seedSeries</code></b> time series spread over <b><code>metrics</code></b> metrics and 
+ * <b><code>hosts</code></b> hosts. Each measured batch holds <b><code>batchSize</code></b> new series, so most
+ * of their UIDs already exist, as they would in a running TSD. The score is batches per second; 
+ * multiply by <b><code>batchSize</code></b> for series per second.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.CatalogWriteBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class CatalogWriteBenchmark {
+	/** The number of distinct metric names */
+	@Param({"50"})
+	public int metrics;
+	/** The number of distinct host tag values */
+	@Param({"200"})
+	public int hosts;
+	/** The number of series written before measuring */
+	@Param({"20000"})
+	public int seedSeries;
+	/** The number of new series in each measured batch */
+	@Param({"256", "2048"})
+	public int batchSize;
+	
+	/** The TSDB hosting the catalog */
+	protected TSDB tsdb = null;
+	/** The catalog under test */
+	protected CatalogDBInterface catalog = null;
+	/** The catalog connection */
+	protected Connection conn = null;
+	/** The next batch to write */
+	protected Set<TSDBSearchEvent> batch = null;
+	/** The index of the next series to generate */
+	protected int seriesIndex = 0;
+	/** UIDMetas created so far keyed by type and name */
+	protected final Map<UniqueIdType, Map<String, UIDMeta>> uidMetas = new HashMap<UniqueIdType, Map<String, UIDMeta>>();
+	/** The UID serial number */
+	protected int uidSerial = 0;
+	
+	/**
+	 * Starts the TSDB and catalog and writes the seed series
+	 * @throws Exception thrown on any error
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		for(UniqueIdType type: UniqueIdType.values()) {
+			uidMetas.put(type, new HashMap<String, UIDMeta>());
+		}
+		BaseTest.createServiceJar();
+		Config config = new Config(false);
+		config.overrideConfig("helios.config.name", getClass().getSimpleName());
+		config.overrideConfig("helios.events.async.dispatcher", "org.helios.tsdb.plugins.async.DisruptorEventDispatcher");
+		config.overrideConfig("helios.events.handlers", TSDBCatalogSearchEventHandler.class.getName());
+		config.overrideConfig("tsd.core.plugin_path", BaseTest.TMP_PLUGIN_DIR);
+		config.overrideConfig("tsd.http.staticroot", System.getProperty("java.io.tmpdir") + File.separator + getClass().getSimpleName());
+		config.overrideConfig("tsd.search.enable", "true");
+		config.overrideConfig("tsd.search.plugin", "org.helios.tsdb.plugins.shell.Search");
+		config.overrideConfig("tsd.core.auto_create_metrics", "true");
+		config.overrideConfig("tsd.network.port", "0");
+		config.overrideConfig("tsd.plugins.disableStatsCollect", "true");
+		config.overrideConfig("helios.search.catalog.h2.port.tcp", "-1");
+		config.overrideConfig("helios.search.catalog.h2.port.http", "-1");
+		tsdb = new TSDB(config);
+		tsdb.initializePlugins(true);
+		TSDBCatalogSearchEventHandler.waitForStart();
+		catalog = TSDBCatalogSearchEventHandler.getInstance().getDbInterface();
+		conn = catalog.getDataSource().getConnection();
+		for(int written = 0; written < seedSeries; written += batchSize) {
+			catalog.processEvents(conn, nextBatch(Math.min(batchSize, seedSeries - written)));
+		}
+	}
+	
+	/**
+	 * Closes the catalog connection and stops the TSDB
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if(conn!=null) try { conn.close(); } catch (Exception ex) {/* No Op */}
+		if(tsdb!=null) try { tsdb.shutdown().join(5000); } catch (Exception ex) {/* No Op */}
+	}
+	
+	/**
+	 * Builds the next batch outside of the measurement
+	 */
+	@Setup(Level.Invocation)
+	public void prepareBatch() {
+		batch = nextBatch(batchSize);
+	}
+	
+	/**
+	 * Writes the prepared batch
+	 */
+	@Benchmark
+	public void processEvents() {
+		catalog.processEvents(conn, batch);
+	}
+	
+	/**
+	 * Generates the events for the next new series: an indexUIDMeta for each UID not seen before, then the indexTSMeta
+	 * @param size The number of series to generate
+	 * @return the batch of events
+	 */
+	protected Set<TSDBSearchEvent> nextBatch(int size) {
+		final Set<TSDBSearchEvent> events = new LinkedHashSet<TSDBSearchEvent>(size * 2);
+		for(int i = 0; i < size; i++, seriesIndex++) {
+			final UIDMeta metric = uidMeta(UniqueIdType.METRIC, "bench.metric." + (seriesIndex % metrics), events);
+			final ArrayList<UIDMeta> tags = new ArrayList<UIDMeta>(4);
+			tags.add(uidMeta(UniqueIdType.TAGK, "host", events));
+			tags.add(uidMeta(UniqueIdType.TAGV, "host" + ((seriesIndex / metrics) % hosts), events));
+			tags.add(uidMeta(UniqueIdType.TAGK, "instance", events));
+			tags.add(uidMeta(UniqueIdType.TAGV, "i" + (seriesIndex / (metrics * hosts)), events));
+			final StringBuilder tsuid = new StringBuilder(metric.getUID());
+			for(UIDMeta tag: tags) {
+				tsuid.append(tag.getUID());
+			}
+			final TSMeta tsMeta = AbstractDBCatalog.setUIDs(new TSMeta(UniqueId.stringToUid(tsuid.toString()), SystemClock.unixTime()), tags, metric);
+			events.add(new TSDBSearchEvent().indexTSMeta(tsMeta));
+		}
+		return events;
+	}
+	
+	/**
+	 * Returns the UIDMeta for the passed type and name, creating it and adding an index event to the batch on first sight
+	 * @param type The UID type
+	 * @param name The UID name
+	 * @param events The batch being generated
+	 * @return the UIDMeta
+	 */
+	protected UIDMeta uidMeta(UniqueIdType type, String name, Set<TSDBSearchEvent> events) {
+		final Map<String, UIDMeta> metas = uidMetas.get(type);
+		UIDMeta meta = metas.get(name);
+		if(meta==null) {
+			meta = new UIDMeta(type, UniqueId.stringToUid(String.format("%06X", ++uidSerial)), name);
+			meta.setCreated(SystemClock.unixTime());
+			metas.put(name, meta);
+			events.add(new TSDBSearchEvent().indexUIDMeta(meta));
+		}
+		return meta;
+	}
+}
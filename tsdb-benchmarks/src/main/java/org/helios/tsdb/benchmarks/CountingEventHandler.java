@@ -0,0 +1,107 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.opentsdb.stats.StatsCollector;
+
+import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.event.TSDBPublishEvent;
+import org.helios.tsdb.plugins.handlers.IEventHandler;
+import org.helios.tsdb.plugins.service.PluginContext;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.lmax.disruptor.EventHandler;
+
+/**
+ * <p>Title: CountingEventHandler</p>
+ * <p>Description: A minimal event handler that only counts the events it receives, so dispatcher benchmarks 
+ * measure the dispatcher rather than the handler. Accepts events from both the disruptor and the event bus.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.CountingEventHandler</code></p>
+ */
+
+public class CountingEventHandler implements IEventHandler, EventHandler<TSDBEvent> {
+	/** The number of events received */
+	protected final AtomicLong received = new AtomicLong(0L);
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.EventHandler#onEvent(java.lang.Object, long, boolean)
+	 */
+	@Override
+	public void onEvent(TSDBEvent event, long sequence, boolean endOfBatch) throws Exception {
+		received.incrementAndGet();
+	}
+	
+	/**
+	 * Handles a publish event from the event bus
+	 * @param event The published event
+	 */
+	@Subscribe
+	@AllowConcurrentEvents
+	public void onEvent(TSDBPublishEvent event) {
+		received.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the number of events received
+	 * @return the number of events received
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.IEventHandler#initialize(org.helios.tsdb.plugins.service.PluginContext)
+	 */
+	@Override
+	public void initialize(PluginContext pluginContext) {
+		/* No Op */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.IEventHandler#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		/* No Op */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.IEventHandler#collectStats(net.opentsdb.stats.StatsCollector)
+	 */
+	@Override
+	public void collectStats(StatsCollector collector) {
+		/* No Op */
+	}
+
+}
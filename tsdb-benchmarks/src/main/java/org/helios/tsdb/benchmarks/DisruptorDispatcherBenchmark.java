@@ -0,0 +1,74 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.Properties;
+
+import org.helios.tsdb.plugins.Constants;
+import org.helios.tsdb.plugins.async.AsyncEventDispatcher;
+import org.helios.tsdb.plugins.async.DisruptorEventDispatcher;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * <p>Title: DisruptorDispatcherBenchmark</p>
+ * <p>Description: Publish throughput of the {@link DisruptorEventDispatcher} for each wait strategy and ring size</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.DisruptorDispatcherBenchmark</code></p>
+ */
+
+public class DisruptorDispatcherBenchmark extends AbstractDispatcherBenchmark {
+	/** The disruptor wait strategy simple class name */
+	@Param({"AdaptiveWaitStrategy", "SleepingWaitStrategy", "YieldingWaitStrategy", "BlockingWaitStrategy", "BusySpinWaitStrategy"})
+	public String waitStrategy;
+	/** The ring buffer size */
+	@Param({"1024", "8192"})
+	public int ringSize;
+	
+	/** The JMX ObjectName the dispatcher registers under */
+	public static final String DISPATCHER_OBJECT_NAME = DisruptorEventDispatcher.class.getPackage().getName() + ":service=" + DisruptorEventDispatcher.class.getSimpleName();
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.benchmarks.AbstractDispatcherBenchmark#newDispatcher()
+	 */
+	@Override
+	protected AsyncEventDispatcher newDispatcher() {
+		unregister(DISPATCHER_OBJECT_NAME);
+		return new DisruptorEventDispatcher();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.benchmarks.AbstractDispatcherBenchmark#config()
+	 */
+	@Override
+	protected Properties config() {
+		Properties p = new Properties();
+		p.setProperty(Constants.RING_BUFFER_WAIT_STRAT, waitStrategy);
+		p.setProperty(Constants.RING_BUFFER_SIZE, Integer.toString(ringSize));
+		return p;
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.Properties;
+
+import org.helios.tsdb.plugins.Constants;
+import org.helios.tsdb.plugins.async.AsyncEventDispatcher;
+import org.helios.tsdb.plugins.async.EventBusEventDispatcher;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * <p>Title: EventBusDispatcherBenchmark</p>
+ * <p>Description: Publish throughput of the {@link EventBusEventDispatcher}, dispatching on the executor and on the posting thread</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.EventBusDispatcherBenchmark</code></p>
+ */
+
+public class EventBusDispatcherBenchmark extends AbstractDispatcherBenchmark {
+	/** Indicates if events are dispatched on the posting thread */
+	@Param({"false", "true"})
+	public boolean sync;
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.benchmarks.AbstractDispatcherBenchmark#newDispatcher()
+	 */
+	@Override
+	protected AsyncEventDispatcher newDispatcher() {
+		return new EventBusEventDispatcher();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.benchmarks.AbstractDispatcherBenchmark#config()
+	 */
+	@Override
+	protected Properties config() {
+		Properties p = new Properties();
+		p.setProperty(Constants.EVENTBUS_SYNC, Boolean.toString(sync));
+		return p;
+	}
+}
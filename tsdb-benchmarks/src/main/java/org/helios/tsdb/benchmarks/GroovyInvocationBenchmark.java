@@ -0,0 +1,110 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.helios.tsdb.plugins.groovy.CompiledScript;
+import org.helios.tsdb.plugins.groovy.ScriptInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: GroovyInvocationBenchmark</p>
+ * <p>Description: The per data point cost of calling a groovy script method through the script's dynamic dispatch,
+ * as the GroovyService did for every invocation, against a bound {@link ScriptInvoker}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.GroovyInvocationBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class GroovyInvocationBenchmark {
+	/** The number of data points per benchmark invocation */
+	public static final int DATA_POINTS = 1000;
+	/** The benchmarked script source */
+	public static final String SOURCE = "long process(String metric, long timestamp, long value) { return value > 100 ? value * 2 : value + metric.length() }";
+	
+	/** The script instance invoked through dynamic dispatch */
+	protected Script script;
+	/** The invoker bound to the compiled script */
+	protected ScriptInvoker invoker;
+	
+	/**
+	 * Compiles the benchmarked script
+	 */
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() {
+		Class<? extends Script> clazz = (Class<? extends Script>)new GroovyShell().getClassLoader().parseClass(SOURCE, "bench");
+		script = new GroovyShell().parse(SOURCE, "bench");
+		invoker = new ScriptInvoker(new CompiledScript("bench", clazz, new HashMap<String, Object>()), "process", 3);
+	}
+	
+	/**
+	 * Processes the data points through {@link Script#invokeMethod(String, Object)}
+	 * @return the sum of the results
+	 */
+	@Benchmark
+	@OperationsPerInvocation(DATA_POINTS)
+	public long invokeMethod() {
+		long sum = 0;
+		for(int i = 0; i < DATA_POINTS; i++) {
+			sum += (Long)script.invokeMethod("process", new Object[]{"sys.cpu", 1400000000L + i, (long)i});
+		}
+		return sum;
+	}
+	
+	/**
+	 * Processes the data points through the bound {@link ScriptInvoker}
+	 * @return the sum of the results
+	 */
+	@Benchmark
+	@OperationsPerInvocation(DATA_POINTS)
+	public long boundInvoker() {
+		long sum = 0;
+		for(int i = 0; i < DATA_POINTS; i++) {
+			sum += (Long)invoker.invoke("sys.cpu", 1400000000L + i, (long)i);
+		}
+		return sum;
+	}
+}
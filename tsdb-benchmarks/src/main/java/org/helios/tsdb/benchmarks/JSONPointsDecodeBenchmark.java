@@ -0,0 +1,161 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.opentsdb.tsd.TSDBJSONService;
+import net.opentsdb.tsd.TSDBJSONService.JSONPoint;
+
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * <p>Title: JSONPointsDecodeBenchmark</p>
+ * <p>Description: Decode cost of a <b><code>tsdb/points</code></b> websocket request, from the frame buffer to read points, 
+ * using the {@link TSDBJSONService} point readers. <b><code>tree</code></b> decodes the whole request into a Jackson tree first, 
+ * <b><code>stream</code></b> reads each point from the parser as the op does when <b><code>ts</code></b> and <b><code>noc</code></b> 
+ * precede the points, and <b><code>buffered</code></b> reads all the points from the parser before decoding a trailing 
+ * <b><code>ts</code></b> and <b><code>noc</code></b>. Run with <b><code>-prof gc</code></b> for the allocation per request.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.JSONPointsDecodeBenchmark</code></p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class JSONPointsDecodeBenchmark {
+	/** The decode strategy */
+	@Param({"tree", "stream", "buffered"})
+	public String mode;
+	/** The number of points in the request */
+	@Param({"10000"})
+	public int points;
+	
+	/** The json mapper */
+	private static final ObjectMapper jsonMapper = new ObjectMapper();
+	/** The json node factory */
+	private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+	
+	/** The encoded request */
+	protected byte[] request;
+	
+	/**
+	 * Encodes the request, with <b><code>ts</code></b> and <b><code>noc</code></b> after the points in <b><code>buffered</code></b> mode
+	 * and before them otherwise
+	 * @throws Exception thrown on any error encoding the request
+	 */
+	@Setup
+	public void setup() throws Exception {
+		final boolean trailing = "buffered".equals(mode);
+		final StringBuilder b = new StringBuilder(points * 100);
+		b.append("{\"t\":\"req\",\"rid\":1,\"svc\":\"tsdb\",\"op\":\"points\",");
+		if(!trailing) b.append("\"ts\":1400000000,\"noc\":true,");
+		b.append("\"points\":[");
+		for(int i = 0; i < points; i++) {
+			if(i>0) b.append(',');
+			b.append("{\"m\":\"sys.cpu\",\"v\":").append(i).append(",\"tags\":{\"host\":\"webserver").append(i%100)
+				.append("\",\"cpu\":\"").append(i%8).append("\",\"type\":\"user\"}}");
+		}
+		b.append(']');
+		if(trailing) b.append(",\"ts\":1400000000,\"noc\":true");
+		b.append('}');
+		request = b.toString().getBytes("UTF-8");
+	}
+	
+	/**
+	 * Decodes the request and reads its points
+	 * @param bh The blackhole consuming the read points
+	 * @return the number of points read
+	 * @throws Exception thrown on any error decoding the request
+	 */
+	@Benchmark
+	public int decode(final Blackhole bh) throws Exception {
+		final JsonParser parser = jsonMapper.getFactory().createParser(new ChannelBufferInputStream(ChannelBuffers.wrappedBuffer(request)));
+		try {
+			if("tree".equals(mode)) {
+				final ArrayNode arr = (ArrayNode)((JsonNode)jsonMapper.readTree(parser)).get("points");
+				for(int i = 0; i < arr.size(); i++) {
+					bh.consume(TSDBJSONService.readPoint((ObjectNode)arr.get(i)));
+				}
+				return arr.size();
+			}
+			final ObjectNode envelope = nodeFactory.objectNode();
+			parser.nextToken();
+			while(parser.nextToken()==JsonToken.FIELD_NAME) {
+				final String fieldName = parser.getCurrentName();
+				parser.nextToken();
+				if("points".equals(fieldName)) break;
+				envelope.put(fieldName, (JsonNode)jsonMapper.readTree(parser));
+			}
+			int count = 0;
+			if("stream".equals(mode)) {
+				while(parser.nextToken()==JsonToken.START_OBJECT) {
+					bh.consume(TSDBJSONService.readPoint(parser));
+					count++;
+				}
+			} else {
+				final List<JSONPoint> read = TSDBJSONService.readPoints(parser);
+				while(parser.nextToken()==JsonToken.FIELD_NAME) {
+					final String fieldName = parser.getCurrentName();
+					parser.nextToken();
+					envelope.put(fieldName, (JsonNode)jsonMapper.readTree(parser));
+				}
+				for(JSONPoint point: read) {
+					bh.consume(point);
+				}
+				count = read.size();
+			}
+			bh.consume(envelope);
+			return count;
+		} finally {
+			parser.close();
+		}
+	}
+}
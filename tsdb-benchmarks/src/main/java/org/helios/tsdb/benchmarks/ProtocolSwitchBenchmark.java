@@ -0,0 +1,179 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import net.opentsdb.core.TSDB;
+import net.opentsdb.utils.Config;
+
+import org.helios.tsdb.plugins.handlers.impl.LoggingSearchEventHandler;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolSwitch;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.telnet.TelnetProtocolInitiator;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: ProtocolSwitchBenchmark</p>
+ * <p>Description: Connection accept throughput through the {@link ProtocolSwitch}. Each operation opens a loopback connection, 
+ * sends a short request in the benchmarked protocol, reads the reply and closes, so it covers the accept, the protocol detection 
+ * and the rebuild of the pipeline for the detected protocol.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.ProtocolSwitchBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Threads(4)
+@Fork(1)
+public class ProtocolSwitchBenchmark {
+	/** The protocol each connection opens with */
+	@Param({"telnet", "gzip-telnet", "http"})
+	public String protocol;
+	
+	/** The TSDB whose plugin context the protocol handlers bind to */
+	protected TSDB tsdb;
+	/** The server bootstrap */
+	protected ServerBootstrap bootstrap;
+	/** The listening channel */
+	protected Channel serverChannel;
+	/** The server address */
+	protected InetSocketAddress address;
+	/** The bytes each connection sends */
+	protected byte[] request;
+	
+	/**
+	 * Starts a TSDB with the plugin service loaded, since the HTTP and websocket handlers the protocol switch 
+	 * hands off to read the loader's plugin context, then a loopback server with the protocol switch as its only initial handler
+	 * @throws Exception thrown on any error starting the server
+	 */
+	@Setup
+	public void setup() throws Exception {
+		BaseTest.createServiceJar();
+		final Config config = new Config(false);
+		config.overrideConfig("helios.config.name", getClass().getSimpleName());
+		config.overrideConfig("helios.events.handlers", LoggingSearchEventHandler.class.getName());
+		config.overrideConfig("tsd.core.plugin_path", BaseTest.TMP_PLUGIN_DIR);
+		config.overrideConfig("tsd.http.staticroot", System.getProperty("java.io.tmpdir") + File.separator + getClass().getSimpleName());
+		config.overrideConfig("tsd.search.enable", "true");
+		config.overrideConfig("tsd.search.plugin", "org.helios.tsdb.plugins.shell.Search");
+		config.overrideConfig("tsd.network.port", "0");
+		config.overrideConfig("tsd.plugins.disableStatsCollect", "true");
+		tsdb = new TSDB(config);
+		tsdb.initializePlugins(true);
+		final ProtocolSwitch protocolSwitch = ProtocolSwitch.getInstance();
+		if(!protocolSwitch.isProtocolRegistered("telnet")) {
+			protocolSwitch.registerProtocolInitiator(new TelnetProtocolInitiator(tsdb, new Properties()));
+		}
+		bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return Channels.pipeline(protocolSwitch);
+			}
+		});
+		bootstrap.setOption("backlog", 1024);
+		bootstrap.setOption("child.tcpNoDelay", true);
+		serverChannel = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+		address = (InetSocketAddress)serverChannel.getLocalAddress();
+		if("telnet".equals(protocol)) {
+			request = "exit\n".getBytes("ISO-8859-1");
+		} else if("gzip-telnet".equals(protocol)) {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			final GZIPOutputStream gzip = new GZIPOutputStream(baos);
+			gzip.write("exit\n".getBytes("ISO-8859-1"));
+			gzip.close();
+			request = baos.toByteArray();
+		} else {
+			request = "GET /benchmark HTTP/1.0\r\n\r\n".getBytes("ISO-8859-1");
+		}
+	}
+	
+	/**
+	 * Stops the server and the TSDB
+	 */
+	@TearDown
+	public void tearDown() {
+		serverChannel.close().awaitUninterruptibly();
+		bootstrap.releaseExternalResources();
+		if(tsdb!=null) try { tsdb.shutdown().join(5000); } catch (Exception ex) {/* No Op */}
+	}
+	
+	/**
+	 * Opens a connection, sends the request and reads the reply until the server closes the connection
+	 * @return the number of bytes read
+	 * @throws Exception thrown on any socket error
+	 */
+	@Benchmark
+	public int connect() throws Exception {
+		final Socket socket = new Socket();
+		try {
+			socket.setSoLinger(true, 0);
+			socket.connect(address);
+			final OutputStream os = socket.getOutputStream();
+			os.write(request);
+			os.flush();
+			final InputStream is = socket.getInputStream();
+			final byte[] buffer = new byte[256];
+			int total = 0, read = 0;
+			while((read = is.read(buffer))!=-1) {
+				total += read;
+			}
+			return total;
+		} finally {
+			socket.close();
+		}
+	}
+}
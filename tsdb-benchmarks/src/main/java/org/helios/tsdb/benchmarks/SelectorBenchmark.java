@@ -0,0 +1,115 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.helios.tsdb.plugins.remoting.subpub.TSMetaPatternSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: SelectorBenchmark</p>
+ * <p>Description: Matches a rotation of series keys against N {@link TSMetaPatternSelector} subscriptions, 
+ * the work done per published event when routing to subscribers. About a quarter of the subscriptions 
+ * are exact, the rest wildcard the host, the domain or both.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.SelectorBenchmark</code></p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=10, time=1)
+@Fork(1)
+public class SelectorBenchmark {
+	/** The number of subscriptions */
+	@Param({"1", "10", "100", "1000"})
+	public int subscriptions;
+	
+	/** The number of distinct keys in the match rotation. Must be a power of 2. */
+	public static final int KEYS = 1024;
+	
+	/** The subscription selectors */
+	protected TSMetaPatternSelector[] selectors;
+	/** The series keys in the match rotation */
+	protected final String[] keys = new String[KEYS];
+	/** The match rotation index */
+	protected int index = 0;
+	
+	/**
+	 * Builds the subscriptions and the key rotation
+	 */
+	@Setup
+	public void setup() {
+		final Random r = new Random(KEYS);
+		for(int i = 0; i < KEYS; i++) {
+			keys[i] = String.format("sys.cpu.%s:host=host%s,type=%s,cpu=%s", r.nextInt(16), r.nextInt(64), r.nextBoolean() ? "user" : "sys", r.nextInt(8));
+		}
+		selectors = new TSMetaPatternSelector[subscriptions];
+		for(int i = 0; i < subscriptions; i++) {
+			final String pattern;
+			switch(i%4) {
+				case 0:
+					pattern = String.format("sys.cpu.%s:host=host%s,type=user,cpu=%s", i%16, i%64, i%8);
+					break;
+				case 1:
+					pattern = String.format("sys.cpu.%s:host=*,type=sys,cpu=%s", i%16, i%8);
+					break;
+				case 2:
+					pattern = String.format("sys.cpu.*:host=host%s,*", i%64);
+					break;
+				default:
+					pattern = String.format("sys.*:type=user,host=host%s*,*", i%7);
+			}
+			selectors[i] = new TSMetaPatternSelector(pattern);
+		}
+	}
+	
+	/**
+	 * Matches the next key against every subscription
+	 * @return the number of matching subscriptions
+	 */
+	@Benchmark
+	public int matchAll() {
+		final String key = keys[index++ & (KEYS-1)];
+		int matches = 0;
+		for(int i = 0; i < selectors.length; i++) {
+			if(selectors[i].matches(key)) matches++;
+		}
+		return matches;
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import net.opentsdb.uid.UniqueId;
+
+import org.helios.tsdb.plugins.Constants;
+import org.helios.tsdb.plugins.async.DisruptorEventDispatcher;
+import org.helios.tsdb.plugins.handlers.IEventHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Title: WaitStrategyLatencyBenchmark</p>
+ * <p>Description: Delivery latency of the {@link DisruptorEventDispatcher} for each wait strategy under a steady and a bursty 
+ * load profile. Each operation publishes one data point and waits until the handler has received it, so the sampled time 
+ * is the publish to handler latency and the reported p99 compares the strategies directly. The idle gap before each operation
+ * is taken outside of the measurement:<ul>
+ * 	<li><b><code>steady</code></b>: a fixed <b><code>gapMicros</code></b> gap before every publish.</li>
+ * 	<li><b><code>bursty</code></b>: bursts of {@link #BURST} back to back publishes separated by a {@link #BURST_GAP_MICROS} gap.</li>
+ * </ul></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.benchmarks.WaitStrategyLatencyBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class WaitStrategyLatencyBenchmark {
+	/** The disruptor wait strategy simple class name */
+	@Param({"AdaptiveWaitStrategy", "SleepingWaitStrategy", "YieldingWaitStrategy", "BlockingWaitStrategy", "BusySpinWaitStrategy"})
+	public String waitStrategy;
+	/** The load profile */
+	@Param({"steady", "bursty"})
+	public String profile;
+	/** The gap between publishes in the steady profile in microseconds */
+	@Param({"50"})
+	public int gapMicros;
+	
+	/** The number of back to back publishes in a bursty profile burst */
+	public static final int BURST = 64;
+	/** The gap between bursts in the bursty profile in microseconds */
+	public static final long BURST_GAP_MICROS = 2000L;
+	
+	/** The dispatcher under test */
+	protected DisruptorEventDispatcher dispatcher = null;
+	/** The executor running the dispatcher's consumers */
+	protected ExecutorService executor = null;
+	/** The handler receiving the dispatched events */
+	protected CountingEventHandler handler = null;
+	/** The tags of the published data point */
+	protected final Map<String, String> tags = new HashMap<String, String>(2);
+	/** The TSUID of the published data point */
+	protected final byte[] tsuid = UniqueId.stringToUid("000001000001000001");
+	/** The number of events published */
+	protected long published = 0L;
+	
+	/**
+	 * Starts the dispatcher
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		tags.put("host", "host0");
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			final AtomicInteger serial = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "BenchmarkDispatcherThread#" + serial.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		handler = new CountingEventHandler();
+		AbstractDispatcherBenchmark.unregister(DisruptorDispatcherBenchmark.DISPATCHER_OBJECT_NAME);
+		dispatcher = new DisruptorEventDispatcher();
+		Properties p = new Properties();
+		p.setProperty(Constants.RING_BUFFER_WAIT_STRAT, waitStrategy);
+		dispatcher.initialize(p, executor, Collections.<IEventHandler>singleton(handler));
+	}
+	
+	/**
+	 * Stops the dispatcher and its executor
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if(dispatcher!=null) try { dispatcher.shutdown(); } catch (Exception ex) {/* No Op */}
+		if(executor!=null) executor.shutdownNow();
+	}
+	
+	/**
+	 * Waits out the profile's idle gap before the next publish
+	 */
+	@Setup(Level.Invocation)
+	public void gap() {
+		if("bursty".equals(profile)) {
+			if(published % BURST == 0) LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(BURST_GAP_MICROS));
+		} else {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(gapMicros));
+		}
+	}
+	
+	/**
+	 * Publishes a data point and waits for the handler to receive it
+	 * @return the number of events received
+	 */
+	@Benchmark
+	public long publishAndDeliver() {
+		final long target = ++published;
+		dispatcher.publishDataPoint("sys.cpu.user", 1400000000L + target, target, tags, tsuid);
+		long received;
+		while((received = handler.getReceived()) < target) {
+			/* spin */
+		}
+		return received;
+	}
+}
@@ -15,6 +15,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
@@ -115,6 +116,26 @@ public class ClientChannelFactory {
 	}
 	
 	
+	/**
+	 * Creates a new client bootstrap sharing this factory's netty thread pools
+	 * @param pipelineFactory The pipeline factory for channels created by the bootstrap
+	 * @return a new client bootstrap
+	 */
+	public ClientBootstrap newBootstrap(final ChannelPipelineFactory pipelineFactory) {
+		if(pipelineFactory==null) throw new IllegalArgumentException("The passed pipeline factory was null");
+		final ClientBootstrap b = new ClientBootstrap(channelFactory);
+		b.setPipelineFactory(pipelineFactory);
+		return b;
+	}
+	
+	/**
+	 * Returns the channel group for connected client instances
+	 * @return the channel group
+	 */
+	public ChannelGroup getChannelGroup() {
+		return channelGroup;
+	}
+	
 	private ChannelFuture connect(final URI uri) {
 		try {
 			ClientPipelineFactory.setURI(uri);
@@ -41,6 +41,7 @@ import org.jboss.netty.channel.ChannelState;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.UpstreamChannelStateEvent;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
 import org.jboss.netty.handler.codec.http.HttpRequestEncoder;
 import org.jboss.netty.handler.codec.http.HttpResponseDecoder;
 import org.jboss.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
@@ -60,7 +61,8 @@ import org.slf4j.LoggerFactory;
  */
 
 public enum Protocol {
-	WS(new WebSocketPipelineBuilder());
+	WS(new WebSocketPipelineBuilder()),
+	HTTP(new HttpPipelineBuilder());
 	
 	private Protocol(final PipelineBuilder builder) {
 		this.builder = builder;
@@ -146,4 +148,26 @@ public enum Protocol {
 		
 		
 	}
+	
+	/**
+	 * <p>Title: HttpPipelineBuilder</p>
+	 * <p>Description: Builds a plain HTTP/1.1 client pipeline delivering whole responses. 
+	 * The caller adds its own handler at the end of the pipeline.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.client.net.Protocol.HttpPipelineBuilder</code></p>
+	 */
+	private static class HttpPipelineBuilder implements PipelineBuilder {
+		/** The maximum aggregated response size */
+		protected static final int MAX_RESPONSE_SIZE = 1024 * 1024;
+
+		@Override
+		public ChannelPipeline getPipeline(final String host, final String path, final int port, final Map<String, String> parameters) {
+			final ChannelPipeline pipeline = Channels.pipeline();
+			pipeline.addLast("decoder", new HttpResponseDecoder());
+			pipeline.addLast("aggregator", new HttpChunkAggregator(MAX_RESPONSE_SIZE));
+			pipeline.addLast("encoder", new HttpRequestEncoder());
+			return pipeline;
+		}
+	}
 }
@@ -0,0 +1,200 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.client.put;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * <p>Title: PutBatch</p>
+ * <p>Description: A batch of data points encoded directly into the JSON body of one <b><code>/api/put</code></b> request
+ * as they are added. Once sealed, the body is immutable and can be written (and re-written on replay) without re-encoding.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.client.put.PutBatch</code></p>
+ */
+
+public class PutBatch {
+	/** The batch id */
+	protected final long id;
+	/** The creation timestamp */
+	protected final long created = System.currentTimeMillis();
+	/** The encoded request body */
+	protected final ChannelBuffer body;
+	/** The generator writing into the body */
+	protected final JsonGenerator generator;
+	/** The number of points in the batch */
+	protected int points = 0;
+	/** The number of times the batch has been replayed after a reconnect */
+	protected int replays = 0;
+	/** Indicates if the batch has been sealed */
+	protected boolean sealed = false;
+	/** Indicates if the batch has been written at least once */
+	protected boolean written = false;
+	
+	/** The shared json factory */
+	protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+	
+	/**
+	 * Creates a new PutBatch
+	 * @param id The batch id
+	 * @param estimatedSize The estimated size of the encoded batch in bytes
+	 */
+	PutBatch(final long id, final int estimatedSize) {
+		this.id = id;
+		body = ChannelBuffers.dynamicBuffer(estimatedSize);
+		try {
+			generator = JSON_FACTORY.createGenerator(new ChannelBufferOutputStream(body));
+			generator.writeStartArray();
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to start batch", iex);
+		}
+	}
+	
+	/**
+	 * Adds a long valued data point to the batch
+	 * @param metric The metric name
+	 * @param timestamp The timestamp in seconds or ms.
+	 * @param value The value
+	 * @param tags The tags
+	 */
+	void add(final String metric, final long timestamp, final long value, final Map<String, String> tags) {
+		try {
+			startPoint(metric, timestamp);
+			generator.writeNumberField("value", value);
+			endPoint(tags);
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to encode point", iex);
+		}
+	}
+	
+	/**
+	 * Adds a double valued data point to the batch
+	 * @param metric The metric name
+	 * @param timestamp The timestamp in seconds or ms.
+	 * @param value The value
+	 * @param tags The tags
+	 */
+	void add(final String metric, final long timestamp, final double value, final Map<String, String> tags) {
+		try {
+			startPoint(metric, timestamp);
+			generator.writeNumberField("value", value);
+			endPoint(tags);
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to encode point", iex);
+		}
+	}
+	
+	private void startPoint(final String metric, final long timestamp) throws IOException {
+		if(sealed) throw new IllegalStateException("Batch [" + id + "] is sealed");
+		generator.writeStartObject();
+		generator.writeStringField("metric", metric);
+		generator.writeNumberField("timestamp", timestamp);
+	}
+	
+	private void endPoint(final Map<String, String> tags) throws IOException {
+		generator.writeObjectFieldStart("tags");
+		for(Map.Entry<String, String> tag: tags.entrySet()) {
+			generator.writeStringField(tag.getKey(), tag.getValue());
+		}
+		generator.writeEndObject();
+		generator.writeEndObject();
+		points++;
+	}
+	
+	/**
+	 * Closes the body. No further points can be added.
+	 */
+	void seal() {
+		if(sealed) return;
+		try {
+			generator.writeEndArray();
+			generator.close();
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to seal batch", iex);
+		}
+		sealed = true;
+	}
+	
+	/**
+	 * Creates the HTTP request for this batch. The request content shares the batch body.
+	 * @param host The host header value
+	 * @param path The request path
+	 * @return the HTTP request
+	 */
+	HttpRequest toRequest(final String host, final String path) {
+		final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path);
+		request.setHeader(HttpHeaders.Names.HOST, host);
+		request.setHeader(HttpHeaders.Names.CONTENT_TYPE, "application/json");
+		request.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		HttpHeaders.setContentLength(request, body.readableBytes());
+		request.setContent(body.duplicate());
+		return request;
+	}
+	
+	/**
+	 * Returns the batch id
+	 * @return the batch id
+	 */
+	public long getId() {
+		return id;
+	}
+	
+	/**
+	 * Returns the number of points in the batch
+	 * @return the number of points
+	 */
+	public int getPoints() {
+		return points;
+	}
+	
+	/**
+	 * Returns the encoded size of the batch in bytes
+	 * @return the encoded size
+	 */
+	public int getSize() {
+		return body.readableBytes();
+	}
+	
+	/**
+	 * Returns the number of times the batch has been replayed
+	 * @return the replay count
+	 */
+	public int getReplays() {
+		return replays;
+	}
+}
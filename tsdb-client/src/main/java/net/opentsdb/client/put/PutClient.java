@@ -0,0 +1,581 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.client.put;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.opentsdb.client.net.ClientChannelFactory;
+import net.opentsdb.client.net.ClientPipelineFactory;
+import net.opentsdb.client.net.Protocol;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.util.CharsetUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: PutClient</p>
+ * <p>Description: A pipelined, batching client for the OpenTSDB HTTP <b><code>/api/put</code></b> endpoint.</p>
+ * <p>Points are encoded into a {@link PutBatch} as they are submitted. A batch is sent when it reaches the configured
+ * batch size or when it has lingered for the configured time. Batches are written back to back on a single keep-alive
+ * connection without waiting for the prior response, and responses are matched to batches in the order they were sent.
+ * The number of unacknowledged batches is bounded by the window: once it is full, submitting threads block until the
+ * server catches up.</p>
+ * <p>If the connection drops, the client reconnects with a backoff and replays every unacknowledged batch in its original order,
+ * so delivery is at-least-once. Re-putting an identical point is harmless to OpenTSDB.</p>
+ * <p>The client is configured with a URI such as <b><code>http://localhost:4242/api/put?batch=500&linger=10&window=16</code></b>.
+ * The supported parameters are:<ul>
+ * 	<li><b>batch</b>: the maximum number of points in a batch (default {@value #DEFAULT_BATCH_SIZE})</li>
+ * 	<li><b>linger</b>: the maximum time in ms. a partial batch waits before it is sent (default {@value #DEFAULT_LINGER_TIME})</li>
+ * 	<li><b>window</b>: the maximum number of unacknowledged batches (default {@value #DEFAULT_WINDOW})</li>
+ * 	<li><b>reconnect</b>: the initial reconnect delay in ms. which doubles on each failure (default {@value #DEFAULT_RECONNECT_DELAY})</li>
+ * </ul></p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.client.put.PutClient</code></p>
+ */
+
+public class PutClient {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The target URI */
+	protected final URI uri;
+	/** The target socket address */
+	protected final InetSocketAddress address;
+	/** The Host header value */
+	protected final String hostHeader;
+	/** The request path */
+	protected final String path;
+	/** The maximum number of points in a batch */
+	protected final int batchSize;
+	/** The maximum time in ms. a partial batch waits before it is sent */
+	protected final long lingerTime;
+	/** The maximum number of unacknowledged batches */
+	protected final int windowSize;
+	/** The initial reconnect delay in ms. */
+	protected final long reconnectDelay;
+	/** The permits for unacknowledged batches */
+	protected final Semaphore window;
+	/** The sent and unacknowledged batches in send order */
+	protected final ConcurrentLinkedQueue<PutBatch> inFlight = new ConcurrentLinkedQueue<PutBatch>();
+	/** Guards the current batch, and keeps queueing and writing of batches in the same order */
+	protected final Object lock = new Object();
+	/** The netty client bootstrap */
+	protected final ClientBootstrap bootstrap;
+	/** The scheduler for linger flushes and reconnects */
+	protected final ScheduledExecutorService scheduler;
+	/** The response handler */
+	protected final PutResponseHandler responseHandler = new PutResponseHandler();
+	
+	/** The batch currently accepting points */
+	protected PutBatch current = null;
+	/** The batch id serial */
+	protected long batchSerial = 0;
+	/** The running average encoded bytes per point, used to size new batches */
+	protected int bytesPerPoint = 128;
+	/** The connected channel, null when disconnected */
+	protected volatile Channel channel = null;
+	/** Indicates if the client has been closed */
+	protected volatile boolean closed = false;
+	/** The current reconnect delay */
+	protected long currentReconnectDelay;
+	/** Set while a reconnect is scheduled or its connect attempt is outstanding, so only one reconnect runs at a time */
+	protected final AtomicBoolean reconnectPending = new AtomicBoolean(false);
+	
+	/** The number of points submitted */
+	protected final AtomicLong pointsSubmitted = new AtomicLong(0L);
+	/** The number of points acknowledged by the server */
+	protected final AtomicLong pointsAcked = new AtomicLong(0L);
+	/** The number of points in batches rejected by the server */
+	protected final AtomicLong pointsFailed = new AtomicLong(0L);
+	/** The number of batch writes, including replays */
+	protected final AtomicLong batchesSent = new AtomicLong(0L);
+	/** The number of batches acknowledged */
+	protected final AtomicLong batchesAcked = new AtomicLong(0L);
+	/** The number of batches replayed after a reconnect */
+	protected final AtomicLong batchesReplayed = new AtomicLong(0L);
+	/** The number of reconnects */
+	protected final AtomicLong reconnects = new AtomicLong(0L);
+	
+	/** The default maximum number of points in a batch */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	/** The default maximum time in ms. a partial batch waits before it is sent */
+	public static final long DEFAULT_LINGER_TIME = 10;
+	/** The default maximum number of unacknowledged batches */
+	public static final int DEFAULT_WINDOW = 16;
+	/** The default initial reconnect delay in ms. */
+	public static final long DEFAULT_RECONNECT_DELAY = 500;
+	/** The maximum reconnect delay in ms. */
+	public static final long MAX_RECONNECT_DELAY = 15000;
+	/** The default request path */
+	public static final String DEFAULT_PATH = "/api/put";
+	
+	/** Serial number for client thread names */
+	private static final AtomicInteger serial = new AtomicInteger();
+	
+	/**
+	 * Creates a new PutClient
+	 * @param uri The target URI
+	 */
+	public PutClient(final URI uri) {
+		if(uri==null) throw new IllegalArgumentException("The passed URI was null");
+		if(!"http".equalsIgnoreCase(uri.getScheme())) throw new IllegalArgumentException("Unsupported scheme [" + uri.getScheme() + "]. Only http is supported");
+		this.uri = uri;
+		final int port = uri.getPort()==-1 ? 80 : uri.getPort();
+		address = new InetSocketAddress(uri.getHost(), port);
+		hostHeader = uri.getHost() + ":" + port;
+		path = (uri.getPath()==null || uri.getPath().isEmpty()) ? DEFAULT_PATH : uri.getPath();
+		final Map<String, String> parameters = ClientPipelineFactory.getClientPipelineFactory(uri).getParameters();
+		batchSize = intParam(parameters, "batch", DEFAULT_BATCH_SIZE);
+		lingerTime = intParam(parameters, "linger", (int)DEFAULT_LINGER_TIME);
+		windowSize = intParam(parameters, "window", DEFAULT_WINDOW);
+		reconnectDelay = intParam(parameters, "reconnect", (int)DEFAULT_RECONNECT_DELAY);
+		currentReconnectDelay = reconnectDelay;
+		window = new Semaphore(windowSize);
+		final int id = serial.incrementAndGet();
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PutClientScheduler#" + id);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		bootstrap = ClientChannelFactory.getInstance().newBootstrap(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				final ChannelPipeline pipeline = Protocol.HTTP.getPipeline(address.getHostName(), path, address.getPort(), parameters);
+				pipeline.addLast("put-handler", responseHandler);
+				return pipeline;
+			}
+		});
+		bootstrap.setOption("tcpNoDelay", true);
+		bootstrap.setOption("keepAlive", true);
+		log.info("Created PutClient for [{}]. Batch Size:{}, Linger:{} ms, Window:{}", new Object[]{uri, batchSize, lingerTime, windowSize});
+	}
+	
+	private static int intParam(final Map<String, String> parameters, final String key, final int defaultValue) {
+		final String value = parameters.get(key);
+		if(value==null) return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (Exception ex) {
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Connects the client and starts the linger flush. 
+	 * Points can be submitted before the connection completes and will be sent once it does.
+	 * @return this client
+	 */
+	public PutClient start() {
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				lingerFlush();
+			}
+		}, lingerTime, Math.max(1, lingerTime/2), TimeUnit.MILLISECONDS);
+		connect();
+		return this;
+	}
+	
+	/**
+	 * Submits a long valued data point
+	 * @param metric The metric name
+	 * @param timestamp The timestamp in seconds or ms.
+	 * @param value The value
+	 * @param tags The tags
+	 */
+	public void put(final String metric, final long timestamp, final long value, final Map<String, String> tags) {
+		PutBatch full = null;
+		synchronized(lock) {
+			final PutBatch batch = currentBatch();
+			batch.add(metric, timestamp, value, tags);
+			if(batch.points >= batchSize) full = takeCurrent();
+		}
+		pointsSubmitted.incrementAndGet();
+		if(full!=null) dispatch(full);
+	}
+	
+	/**
+	 * Submits a double valued data point
+	 * @param metric The metric name
+	 * @param timestamp The timestamp in seconds or ms.
+	 * @param value The value
+	 * @param tags The tags
+	 */
+	public void put(final String metric, final long timestamp, final double value, final Map<String, String> tags) {
+		PutBatch full = null;
+		synchronized(lock) {
+			final PutBatch batch = currentBatch();
+			batch.add(metric, timestamp, value, tags);
+			if(batch.points >= batchSize) full = takeCurrent();
+		}
+		pointsSubmitted.incrementAndGet();
+		if(full!=null) dispatch(full);
+	}
+	
+	/**
+	 * Sends the current partial batch, blocking if the window is full
+	 */
+	public void flush() {
+		PutBatch partial = null;
+		synchronized(lock) {
+			if(current!=null && current.points > 0) partial = takeCurrent();
+		}
+		if(partial!=null) dispatch(partial);
+	}
+	
+	/**
+	 * Sends the current partial batch, waits for the unacknowledged batches to be acknowledged and closes the client.
+	 * The partial batch is only sent if a window permit frees up within the timeout, otherwise it is counted as not drained.
+	 * @param timeout The maximum time in ms. to wait for a window permit and acknowledgements
+	 * @return true if all batches were sent and acknowledged, false if the wait timed out
+	 */
+	public boolean close(final long timeout) {
+		final long deadline = System.currentTimeMillis() + timeout;
+		PutBatch partial = null;
+		synchronized(lock) {
+			if(current!=null && current.points > 0) partial = takeCurrent();
+		}
+		int unsent = 0;
+		if(partial!=null) {
+			boolean permitted = false;
+			try {
+				permitted = window.tryAcquire(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+			if(permitted) send(partial);
+			else unsent = 1;
+		}
+		while(!inFlight.isEmpty() && System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted()) {
+			try { Thread.sleep(10); } catch (InterruptedException iex) { Thread.currentThread().interrupt(); break; }
+		}
+		final int undrained = inFlight.size() + unsent;
+		closed = true;
+		scheduler.shutdownNow();
+		final Channel ch = channel;
+		if(ch!=null) ch.close().awaitUninterruptibly(1000);
+		if(undrained > 0) log.warn("PutClient for [{}] closed with [{}] unacknowledged batches", uri, undrained);
+		return undrained==0;
+	}
+	
+	/**
+	 * Returns the current batch, creating a new one if there is none. The caller must hold the lock.
+	 * @return the current batch
+	 */
+	protected PutBatch currentBatch() {
+		if(current==null) {
+			current = new PutBatch(batchSerial++, batchSize * bytesPerPoint);
+		}
+		return current;
+	}
+	
+	/**
+	 * Seals and removes the current batch. The caller must hold the lock.
+	 * @return the sealed batch
+	 */
+	protected PutBatch takeCurrent() {
+		final PutBatch batch = current;
+		current = null;
+		batch.seal();
+		bytesPerPoint = Math.max(16, batch.getSize() / batch.points);
+		return batch;
+	}
+	
+	/**
+	 * Sends the current batch if it has lingered for longer than the linger time and there is room in the window.
+	 * Never blocks, so a full window cannot stall the scheduler.
+	 */
+	protected void lingerFlush() {
+		PutBatch lingered = null;
+		synchronized(lock) {
+			if(current==null || current.points==0 || System.currentTimeMillis() - current.created < lingerTime) return;
+			if(!window.tryAcquire()) return;
+			lingered = takeCurrent();
+		}
+		send(lingered);
+	}
+	
+	/**
+	 * Acquires a window permit, blocking while the window is full, and sends the batch
+	 * @param batch The batch to send
+	 */
+	protected void dispatch(final PutBatch batch) {
+		window.acquireUninterruptibly();
+		send(batch);
+	}
+	
+	/**
+	 * Queues the batch as in flight and writes it if connected. The caller must hold a window permit.
+	 * @param batch The batch to send
+	 */
+	protected void send(final PutBatch batch) {
+		synchronized(lock) {
+			inFlight.add(batch);
+			final Channel ch = channel;
+			if(ch!=null && ch.isConnected()) {
+				write(ch, batch);
+			}
+		}
+	}
+	
+	/**
+	 * Writes a batch
+	 * @param ch The channel to write to
+	 * @param batch The batch to write
+	 */
+	protected void write(final Channel ch, final PutBatch batch) {
+		if(batch.written) {
+			batch.replays++;
+			batchesReplayed.incrementAndGet();
+		}
+		batch.written = true;
+		ch.write(batch.toRequest(hostHeader, path));
+		batchesSent.incrementAndGet();
+	}
+	
+	/**
+	 * Initiates a connection. On success, all unacknowledged batches are replayed in order, on failure a reconnect is scheduled.
+	 */
+	protected void connect() {
+		if(closed) return;
+		bootstrap.connect(address).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(final ChannelFuture future) throws Exception {
+				if(!future.isSuccess()) {
+					log.warn("Failed to connect to [{}]: {}", address, future.getCause()==null ? "cancelled" : future.getCause().toString());
+					reconnectPending.set(false);
+					scheduleReconnect();
+					return;
+				}
+				final Channel ch = future.getChannel();
+				ClientChannelFactory.getInstance().getChannelGroup().add(ch);
+				synchronized(lock) {
+					currentReconnectDelay = reconnectDelay;
+					channel = ch;
+					final long priorReplays = batchesReplayed.get();
+					for(PutBatch batch: inFlight) {
+						write(ch, batch);
+					}
+					final long replayed = batchesReplayed.get() - priorReplays;
+					if(replayed > 0) {
+						log.info("Replayed [{}] unacknowledged batches to [{}]", replayed, address);
+					}
+				}
+				reconnectPending.set(false);
+				log.info("PutClient connected to [{}]", address);
+			}
+		});
+	}
+	
+	/**
+	 * Schedules a reconnect after the current backoff delay, unless one is already pending.
+	 * The pending flag is cleared when the scheduled connect attempt completes.
+	 */
+	protected void scheduleReconnect() {
+		if(closed) return;
+		if(!reconnectPending.compareAndSet(false, true)) return;
+		final long delay;
+		synchronized(lock) {
+			delay = currentReconnectDelay;
+			currentReconnectDelay = Math.min(currentReconnectDelay * 2, MAX_RECONNECT_DELAY);
+		}
+		reconnects.incrementAndGet();
+		try {
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					connect();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (Exception ex) {
+			/* scheduler shut down on close */
+			reconnectPending.set(false);
+		}
+	}
+	
+	/**
+	 * <p>Title: PutResponseHandler</p>
+	 * <p>Description: Matches responses to in flight batches and handles disconnects</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.client.put.PutClient.PutResponseHandler</code></p>
+	 */
+	protected class PutResponseHandler extends SimpleChannelUpstreamHandler {
+		@Override
+		public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+			if(!(e.getMessage() instanceof HttpResponse)) {
+				super.messageReceived(ctx, e);
+				return;
+			}
+			final HttpResponse response = (HttpResponse)e.getMessage();
+			final PutBatch batch = inFlight.poll();
+			if(batch==null) {
+				log.warn("Received response [{}] with no batch in flight", response.getStatus());
+				return;
+			}
+			window.release();
+			final int code = response.getStatus().getCode();
+			if(code >= 200 && code < 300) {
+				pointsAcked.addAndGet(batch.points);
+				batchesAcked.incrementAndGet();
+			} else {
+				pointsFailed.addAndGet(batch.points);
+				if(log.isDebugEnabled()) {
+					log.debug("Batch [{}] with [{}] points rejected: {} {}", new Object[]{batch.id, batch.points, response.getStatus(), response.getContent().toString(CharsetUtil.UTF_8)});
+				} else {
+					log.warn("Batch [{}] with [{}] points rejected: {}", new Object[]{batch.id, batch.points, response.getStatus()});
+				}
+			}
+		}
+		
+		@Override
+		public void channelClosed(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+			final boolean current;
+			synchronized(lock) {
+				current = channel!=null && channel==ctx.getChannel();
+				if(current) channel = null;
+			}
+			// only the loss of the connected channel triggers a reconnect. failed connect attempts are handled by the connect listener
+			if(current && !closed) {
+				log.warn("PutClient connection to [{}] closed with [{}] batches in flight", address, inFlight.size());
+				scheduleReconnect();
+			}
+			super.channelClosed(ctx, e);
+		}
+		
+		@Override
+		public void exceptionCaught(final ChannelHandlerContext ctx, final ExceptionEvent e) throws Exception {
+			log.warn("PutClient connection error on [{}]: {}", address, e.getCause().toString());
+			ctx.getChannel().close();
+		}
+	}
+	
+	/**
+	 * Returns the target URI
+	 * @return the target URI
+	 */
+	public URI getURI() {
+		return uri;
+	}
+	
+	/**
+	 * Indicates if the client is connected
+	 * @return true if connected
+	 */
+	public boolean isConnected() {
+		final Channel ch = channel;
+		return ch!=null && ch.isConnected();
+	}
+	
+	/**
+	 * Returns the number of unacknowledged batches
+	 * @return the number of unacknowledged batches
+	 */
+	public int getInFlight() {
+		return inFlight.size();
+	}
+	
+	/**
+	 * Returns the number of points submitted
+	 * @return the number of points submitted
+	 */
+	public long getPointsSubmitted() {
+		return pointsSubmitted.get();
+	}
+	
+	/**
+	 * Returns the number of points acknowledged by the server
+	 * @return the number of points acknowledged
+	 */
+	public long getPointsAcked() {
+		return pointsAcked.get();
+	}
+	
+	/**
+	 * Returns the number of points in batches rejected by the server
+	 * @return the number of points rejected
+	 */
+	public long getPointsFailed() {
+		return pointsFailed.get();
+	}
+	
+	/**
+	 * Returns the number of batch writes, including replays
+	 * @return the number of batch writes
+	 */
+	public long getBatchesSent() {
+		return batchesSent.get();
+	}
+	
+	/**
+	 * Returns the number of batches acknowledged
+	 * @return the number of batches acknowledged
+	 */
+	public long getBatchesAcked() {
+		return batchesAcked.get();
+	}
+	
+	/**
+	 * Returns the number of batches replayed after a reconnect
+	 * @return the number of replayed batches
+	 */
+	public long getBatchesReplayed() {
+		return batchesReplayed.get();
+	}
+	
+	/**
+	 * Returns the number of reconnects
+	 * @return the number of reconnects
+	 */
+	public long getReconnects() {
+		return reconnects.get();
+	}
+}
@@ -0,0 +1,331 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.client.test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import net.opentsdb.client.put.PutClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: LoadGenerator</p>
+ * <p>Description: Drives a {@link PutClient} at a fixed point rate over a generated set of time series.</p>
+ * <p>The series set mimics a fleet of hosts: metric names, host names and per-metric tag values (cpu, device, endpoint...) 
+ * are each drawn from a Zipf distribution, so a few hosts and endpoints carry many series and most carry few. 
+ * Every series is reported once per pass, with gauges following a random walk and counters increasing.</p>
+ * <p>Usage: <b><code>LoadGenerator &lt;uri|stub&gt; [points/sec] [seconds] [series] [threads] [drop period s]</code></b></p>
+ * <p>With <b><code>stub</code></b>, an in-process {@link StubPutServer} is started and targeted, and the optional drop period 
+ * closes its connections periodically to exercise reconnect and replay.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.client.test.LoadGenerator</code></p>
+ */
+
+public class LoadGenerator {
+	/** Static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+	
+	/** The metric names with their extra tag key (or null), and whether they are counters */
+	private static final Object[][] METRICS = {
+		{"sys.cpu.user", "cpu", false}, {"sys.cpu.system", "cpu", false}, {"sys.mem.free", null, false},
+		{"sys.net.bytes.in", "iface", true}, {"sys.net.bytes.out", "iface", true},
+		{"sys.disk.read", "dev", true}, {"sys.disk.write", "dev", true},
+		{"jvm.heap.used", null, false}, {"jvm.gc.time", "gc", true},
+		{"app.requests", "endpoint", true}, {"app.latency.p99", "endpoint", false}, {"app.errors", "endpoint", true}
+	};
+	/** The cardinality of each extra tag key */
+	private static final Map<String, Integer> TAG_CARDINALITY = new LinkedHashMap<String, Integer>();
+	/** The number of data centers */
+	private static final int DATA_CENTERS = 4;
+	/** The average number of series per host */
+	private static final int SERIES_PER_HOST = 40;
+	
+	static {
+		TAG_CARDINALITY.put("cpu", 16);
+		TAG_CARDINALITY.put("iface", 4);
+		TAG_CARDINALITY.put("dev", 8);
+		TAG_CARDINALITY.put("gc", 2);
+		TAG_CARDINALITY.put("endpoint", 50);
+	}
+	
+	/** The put client */
+	private final PutClient client;
+	/** The target rate in points per second */
+	private final int rate;
+	/** The generated series */
+	private final Series[] series;
+	
+	/**
+	 * Creates a new LoadGenerator
+	 * @param client The put client
+	 * @param rate The target rate in points per second
+	 * @param seriesCount The number of series to generate
+	 * @param seed The random seed
+	 */
+	public LoadGenerator(final PutClient client, final int rate, final int seriesCount, final long seed) {
+		this.client = client;
+		this.rate = rate;
+		series = generateSeries(seriesCount, new Random(seed));
+	}
+	
+	/**
+	 * Generates a set of distinct series
+	 * @param count The number of series
+	 * @param random The random source
+	 * @return the series
+	 */
+	static Series[] generateSeries(final int count, final Random random) {
+		final int hosts = Math.max(1, count / SERIES_PER_HOST);
+		final Zipf metricZipf = new Zipf(METRICS.length, 1.0);
+		final Zipf hostZipf = new Zipf(hosts, 1.1);
+		final Map<String, Zipf> tagZipfs = new LinkedHashMap<String, Zipf>();
+		for(Map.Entry<String, Integer> entry: TAG_CARDINALITY.entrySet()) {
+			tagZipfs.put(entry.getKey(), new Zipf(entry.getValue(), 1.2));
+		}
+		final Set<String> keys = new HashSet<String>(count);
+		final List<Series> generated = new ArrayList<Series>(count);
+		final int maxAttempts = count * 20;
+		for(int attempt = 0; attempt < maxAttempts && generated.size() < count; attempt++) {
+			final Object[] metric = METRICS[metricZipf.next(random)];
+			final int host = hostZipf.next(random);
+			final Map<String, String> tags = new LinkedHashMap<String, String>();
+			tags.put("host", "host" + host);
+			tags.put("dc", "dc" + (host % DATA_CENTERS));
+			final String tagKey = (String)metric[1];
+			if(tagKey!=null) {
+				tags.put(tagKey, tagKey + tagZipfs.get(tagKey).next(random));
+			}
+			final String key = metric[0] + tags.toString();
+			if(keys.add(key)) {
+				generated.add(new Series((String)metric[0], Collections.unmodifiableMap(tags), (Boolean)metric[2], random.nextDouble() * 100));
+			}
+		}
+		if(generated.size() < count) {
+			LOG.warn("Generated [{}] distinct series of the requested [{}]", generated.size(), count);
+		}
+		return generated.toArray(new Series[generated.size()]);
+	}
+	
+	/**
+	 * Generates load on the passed number of threads for the passed duration, then flushes
+	 * @param threads The number of generating threads
+	 * @param durationMs The duration in ms.
+	 * @throws InterruptedException thrown if interrupted while waiting for the threads
+	 */
+	public void run(final int threads, final long durationMs) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(threads);
+		final long endTime = System.currentTimeMillis() + durationMs;
+		final double threadRate = (double)rate / threads;
+		for(int t = 0; t < threads; t++) {
+			final int offset = t;
+			final Thread thread = new Thread("LoadGenerator#" + t) {
+				@Override
+				public void run() {
+					try {
+						generate(offset, threads, threadRate, endTime);
+					} catch (Exception ex) {
+						LOG.error("Load generator thread failed", ex);
+					} finally {
+						latch.countDown();
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+		latch.await();
+		client.flush();
+	}
+	
+	/**
+	 * Reports a slice of the series repeatedly at the passed rate
+	 * @param offset The first series index of the slice
+	 * @param stride The distance between series in the slice
+	 * @param threadRate The rate for this thread in points per second
+	 * @param endTime The time to stop at
+	 */
+	private void generate(final int offset, final int stride, final double threadRate, final long endTime) {
+		final Random random = new Random(offset);
+		final long startNanos = System.nanoTime();
+		long sent = 0;
+		while(System.currentTimeMillis() < endTime) {
+			final long timestamp = System.currentTimeMillis();
+			for(int i = offset; i < series.length; i += stride) {
+				final Series s = series[i];
+				if(s.counter) {
+					s.value += random.nextInt(100);
+					client.put(s.metric, timestamp, (long)s.value, s.tags);
+				} else {
+					s.value = Math.max(0, s.value + random.nextGaussian());
+					client.put(s.metric, timestamp, s.value, s.tags);
+				}
+				sent++;
+				final long aheadNanos = (long)(sent * 1000000000L / threadRate) - (System.nanoTime() - startNanos);
+				if(aheadNanos > 100000L) {
+					LockSupport.parkNanos(aheadNanos);
+					if(System.currentTimeMillis() >= endTime) return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs the load generator
+	 * @param args As documented in the class description
+	 */
+	public static void main(String[] args) {
+		if(args.length==0) {
+			System.out.println("Usage: LoadGenerator <uri|stub> [points/sec] [seconds] [series] [threads] [drop period s]");
+			return;
+		}
+		final int rate = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+		final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		final int seriesCount = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+		final int threads = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+		final int dropPeriod = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+		StubPutServer stub = null;
+		try {
+			final URI uri;
+			if("stub".equalsIgnoreCase(args[0])) {
+				stub = new StubPutServer(0);
+				uri = new URI("http://127.0.0.1:" + stub.getPort() + PutClient.DEFAULT_PATH);
+			} else {
+				uri = new URI(args[0]);
+			}
+			final PutClient client = new PutClient(uri).start();
+			final LoadGenerator generator = new LoadGenerator(client, rate, seriesCount, 42L);
+			LOG.info("Generating [{}] points/sec over [{}] series for [{}] s on [{}] threads", new Object[]{rate, generator.series.length, seconds, threads});
+			final StubPutServer server = stub;
+			final Thread reporter = new Thread("LoadGeneratorReporter") {
+				@Override
+				public void run() {
+					long lastAcked = 0, lastTime = System.currentTimeMillis();
+					int tick = 0;
+					while(!isInterrupted()) {
+						try { Thread.sleep(1000); } catch (InterruptedException iex) { return; }
+						tick++;
+						if(server!=null && dropPeriod > 0 && tick % dropPeriod==0) {
+							server.dropConnections();
+						}
+						if(tick % 5==0) {
+							final long now = System.currentTimeMillis();
+							final long acked = client.getPointsAcked();
+							LOG.info("Acked/sec:{}, Submitted:{}, Acked:{}, Failed:{}, In Flight:{}, Replayed:{}, Reconnects:{}{}", new Object[]{
+								(acked - lastAcked) * 1000 / Math.max(1, now - lastTime), client.getPointsSubmitted(), acked, client.getPointsFailed(),
+								client.getInFlight(), client.getBatchesReplayed(), client.getReconnects(), 
+								server==null ? "" : ", Stub Points:" + server.getPoints()
+							});
+							lastAcked = acked; lastTime = now;
+						}
+					}
+				}
+			};
+			reporter.setDaemon(true);
+			reporter.start();
+			final long start = System.currentTimeMillis();
+			generator.run(threads, seconds * 1000L);
+			final boolean drained = client.close(30000);
+			final long elapsed = System.currentTimeMillis() - start;
+			reporter.interrupt();
+			LOG.info("Completed. Submitted:{}, Acked:{}, Failed:{}, Batches Sent:{}, Replayed:{}, Reconnects:{}, Drained:{}, Elapsed:{} ms, Acked/sec:{}{}", new Object[]{
+				client.getPointsSubmitted(), client.getPointsAcked(), client.getPointsFailed(), client.getBatchesSent(), 
+				client.getBatchesReplayed(), client.getReconnects(), drained, elapsed, client.getPointsAcked() * 1000 / Math.max(1, elapsed),
+				stub==null ? "" : ", Stub Points:" + stub.getPoints()
+			});
+		} catch (Exception ex) {
+			LOG.error("Load generator failed", ex);
+		} finally {
+			if(stub!=null) stub.stop();
+		}
+		System.exit(0);
+	}
+	
+	/**
+	 * <p>Title: Series</p>
+	 * <p>Description: A generated time series and its last value</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.client.test.LoadGenerator.Series</code></p>
+	 */
+	static class Series {
+		/** The metric name */
+		final String metric;
+		/** The tags */
+		final Map<String, String> tags;
+		/** Indicates if the series is a monotonic counter */
+		final boolean counter;
+		/** The last value */
+		double value;
+		
+		Series(final String metric, final Map<String, String> tags, final boolean counter, final double value) {
+			this.metric = metric;
+			this.tags = tags;
+			this.counter = counter;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * <p>Title: Zipf</p>
+	 * <p>Description: Samples ranks 0 to n-1 with a Zipf distribution using a precomputed cumulative distribution</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.client.test.LoadGenerator.Zipf</code></p>
+	 */
+	static class Zipf {
+		/** The cumulative probabilities */
+		private final double[] cdf;
+		
+		Zipf(final int n, final double exponent) {
+			cdf = new double[n];
+			double sum = 0;
+			for(int i = 0; i < n; i++) {
+				sum += 1.0 / Math.pow(i + 1, exponent);
+				cdf[i] = sum;
+			}
+			for(int i = 0; i < n; i++) {
+				cdf[i] /= sum;
+			}
+		}
+		
+		int next(final Random random) {
+			final int index = Arrays.binarySearch(cdf, random.nextDouble());
+			return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+		}
+	}
+}
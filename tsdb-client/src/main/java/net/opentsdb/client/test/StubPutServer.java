@@ -0,0 +1,219 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.client.test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * <p>Title: StubPutServer</p>
+ * <p>Description: An in-process stand-in for the OpenTSDB HTTP put endpoint. 
+ * It counts the points in each posted JSON array and answers with a <b><code>204 No Content</code></b>, as a TSD does on success.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.client.test.StubPutServer</code></p>
+ */
+
+public class StubPutServer {
+	/** Static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(StubPutServer.class);
+	/** The shared json factory */
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+	/** The maximum request size */
+	private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+	
+	/** The server bootstrap */
+	private final ServerBootstrap bootstrap;
+	/** The connected channels */
+	private final ChannelGroup channels = new DefaultChannelGroup("StubPutServer");
+	/** The listening channel */
+	private final Channel serverChannel;
+	/** The number of requests received */
+	private final AtomicLong requests = new AtomicLong(0L);
+	/** The number of points received */
+	private final AtomicLong points = new AtomicLong(0L);
+	
+	/**
+	 * Creates and starts a new StubPutServer
+	 * @param port The port to listen on, 0 for an ephemeral port
+	 */
+	public StubPutServer(final int port) {
+		bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+		final PutHandler handler = new PutHandler();
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				final ChannelPipeline pipeline = Channels.pipeline();
+				pipeline.addLast("decoder", new HttpRequestDecoder());
+				pipeline.addLast("aggregator", new HttpChunkAggregator(MAX_REQUEST_SIZE));
+				pipeline.addLast("encoder", new HttpResponseEncoder());
+				pipeline.addLast("handler", handler);
+				return pipeline;
+			}
+		});
+		bootstrap.setOption("child.tcpNoDelay", true);
+		serverChannel = bootstrap.bind(new InetSocketAddress("127.0.0.1", port));
+		LOG.info("StubPutServer listening on [{}]", serverChannel.getLocalAddress());
+	}
+	
+	/**
+	 * Returns the port the server is listening on
+	 * @return the listening port
+	 */
+	public int getPort() {
+		return ((InetSocketAddress)serverChannel.getLocalAddress()).getPort();
+	}
+	
+	/**
+	 * Returns the number of requests received
+	 * @return the number of requests received
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+	
+	/**
+	 * Returns the number of points received
+	 * @return the number of points received
+	 */
+	public long getPoints() {
+		return points.get();
+	}
+	
+	/**
+	 * Closes all client connections, leaving the server listening. Used to exercise client reconnects.
+	 */
+	public void dropConnections() {
+		channels.close().awaitUninterruptibly();
+	}
+	
+	/**
+	 * Stops the server
+	 */
+	public void stop() {
+		dropConnections();
+		serverChannel.close().awaitUninterruptibly();
+		bootstrap.releaseExternalResources();
+	}
+	
+	/**
+	 * <p>Title: PutHandler</p>
+	 * <p>Description: Counts posted points and responds</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.client.test.StubPutServer.PutHandler</code></p>
+	 */
+	@Sharable
+	private class PutHandler extends SimpleChannelUpstreamHandler {
+		@Override
+		public void channelOpen(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+			channels.add(e.getChannel());
+			super.channelOpen(ctx, e);
+		}
+		
+		@Override
+		public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+			final HttpRequest request = (HttpRequest)e.getMessage();
+			requests.incrementAndGet();
+			HttpResponseStatus status = HttpResponseStatus.NO_CONTENT;
+			try {
+				points.addAndGet(countPoints(request));
+			} catch (Exception ex) {
+				status = HttpResponseStatus.BAD_REQUEST;
+			}
+			final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+			HttpHeaders.setContentLength(response, 0);
+			final boolean keepAlive = HttpHeaders.isKeepAlive(request);
+			final ChannelFuture cf = e.getChannel().write(response);
+			if(!keepAlive) cf.addListener(ChannelFutureListener.CLOSE);
+		}
+		
+		@Override
+		public void exceptionCaught(final ChannelHandlerContext ctx, final ExceptionEvent e) throws Exception {
+			e.getChannel().close();
+		}
+	}
+	
+	/**
+	 * Counts the points in a put request body, which is either a single point object or an array of them
+	 * @param request The put request
+	 * @return the number of points
+	 * @throws Exception thrown if the body is not valid JSON
+	 */
+	private static int countPoints(final HttpRequest request) throws Exception {
+		final JsonParser parser = JSON_FACTORY.createParser(new ChannelBufferInputStream(request.getContent()));
+		try {
+			JsonToken token = parser.nextToken();
+			if(token==JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				return 1;
+			}
+			if(token!=JsonToken.START_ARRAY) throw new Exception("Invalid put body");
+			int count = 0;
+			while((token = parser.nextToken())==JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				count++;
+			}
+			if(token!=JsonToken.END_ARRAY) throw new Exception("Invalid put body");
+			return count;
+		} finally {
+			parser.close();
+		}
+	}
+}
@@ -371,7 +371,7 @@ public class ElasticSearchEventHandler extends EmptySearchEventHandler {
 	public void onEvent(TSDBEvent event, long sequence, boolean endOfBatch) throws Exception {
 		if(!event.eventType.isForSearch()) return;
 		incrCount(event);
-		final long start = System.currentTimeMillis();
+		final long start = startTimer(event);
 		switch(event.eventType) {
 		case ANNOTATION_DELETE:
 			indexOps.deleteAnnotation(event.annotation);
@@ -401,7 +401,7 @@ public class ElasticSearchEventHandler extends EmptySearchEventHandler {
 		default:
 			break;			
 		}
-		elapsedTime(event, System.currentTimeMillis()-start);
+		elapsedTime(event, System.nanoTime()-start);
 	}
 	
 	/**
@@ -78,6 +78,11 @@ public class QueryContext {
 	protected int maxSize = 5000;
 	/** The cummulative number of items retrieved within this context */
 	protected int cummulative = 0;
+	/** The id of the server side cursor holding the remaining results, if one is open */
+	protected String cursorId = null;
+	/** The id of the client that submitted the query, assigned server side and used for per-client concurrency limits */
+	@JsonIgnore
+	protected String clientId = null;
 	
 
 
@@ -143,6 +148,9 @@ public class QueryContext {
 		if(nextIndex != null) {
 			builder.append(", nextIndex=").append(nextIndex);
 		}
+		if(cursorId != null) {
+			builder.append(", cursorId=").append(cursorId);
+		}
 		if(!ctx.isEmpty()) {
 			builder.append(", ctx:");
 			for(Map.Entry<String, Object> e: ctx.entrySet()) {
@@ -271,6 +279,45 @@ public class QueryContext {
 		return this;
 	}
 
+	/**
+	 * Returns the id of the server side cursor holding the remaining results of a paged query. 
+	 * Passing the context back with the same query reads the next page from that cursor.
+	 * @return the cursor id or null if no cursor is open
+	 */
+	public final String getCursorId() {
+		return cursorId;
+	}
+
+	/**
+	 * Sets the id of the server side cursor holding the remaining results of a paged query
+	 * @param cursorId the cursor id, or null to clear
+	 * @return this QueryContext
+	 */
+	public final QueryContext setCursorId(String cursorId) {
+		this.cursorId = cursorId;
+		return this;
+	}
+
+	/**
+	 * Returns the id of the client that submitted the query
+	 * @return the client id or null if the query was not submitted by a remote client
+	 */
+	@JsonIgnore
+	public final String getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * Sets the id of the client that submitted the query
+	 * @param clientId the client id
+	 * @return this QueryContext
+	 */
+	@JsonIgnore
+	public final QueryContext setClientId(String clientId) {
+		this.clientId = clientId;
+		return this;
+	}
+
 	/**
 	 * Returns the timeout on each submitted request in ms. 
 	 * @return the timeout in ms.
@@ -26,6 +26,7 @@ package net.opentsdb.tsd;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -63,6 +64,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
@@ -70,6 +73,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
 
 /**
  * <p>Title: TSDBJSONService</p>
@@ -378,6 +382,9 @@ public class TSDBJSONService implements IPluginContextResourceListener {
 	 * 		</pre>
 	 * 		</li>
 	 * </ul></p>
+	 * <p>Points are submitted as they are read from the request stream only when both <b><code>"ts"</code></b> and <b><code>"noc"</code></b>
+	 * precede <b><code>"points"</code></b> in the request. Otherwise either could follow the points, so all the points are read first
+	 * and submitted once the rest of the request has been decoded.</p>
 	 * TODO: Handle errors and return error messages to caller.
 	 * TODO: Implement hierarchical json tree of points for a smaller and more normalized payload
 	 */
@@ -385,15 +392,23 @@ public class TSDBJSONService implements IPluginContextResourceListener {
 	// var a = '{"t":"req", "rid":1, "svc":"tsdb", "op":"points", 
 	//  "points":[{"m":"sys.cpu", "ts":"' + Math.round(new Date().getTime()/1000) + '", "v":"32", "tags": {"host":"webserver1"}}, {"m":"sys.cpu", "ts":"' + Math.round(new Date().getTime()/1000) + '","v":"19","tags": {"host":"webserver2"}}]}';
 	
-	@JSONRequestHandler(name="points", description="Submits an array of datapoints to the TSDB")
+	@JSONRequestHandler(name="points", stream={"points"}, description="Submits an array of datapoints to the TSDB")
 	public void addPoint(final JSONRequest request) {
 		if(request==null) throw new IllegalArgumentException("The passed request was null");
 		final long defaultTimestamp = SystemClock.unixTime();
 		try {
+			JsonParser pointsParser = request.streamField("points");
+			List<JSONPoint> points = null;
+			if(pointsParser!=null && (request.getRequest().get("ts")==null || request.getRequest().get("noc")==null)) {
+				// "ts" or "noc" may follow the points, so all the points are read before any are submitted
+				points = readPoints(pointsParser);
+				request.finishStream();
+				pointsParser = null;
+			}
 			long requestTimestamp = defaultTimestamp;
 			if(request.getRequest().get("ts")!=null) {
 				JsonNode tNode = request.getRequest().get("ts");
-				if(tNode.isLong()) {
+				if(tNode.isIntegralNumber()) {
 					requestTimestamp = tNode.asLong();
 				}
 			}
@@ -409,55 +424,27 @@ public class TSDBJSONService implements IPluginContextResourceListener {
 			} else {
 				sendConfirm = true;
 			}
-			ArrayNode pointsArr = (ArrayNode)request.getRequest().get("points");
 			int pointsProcessed = 0;
-			for(int i = 0; i < pointsArr.size(); i++) {
-				ObjectNode point = (ObjectNode)pointsArr.get(i);
-				String metric = point.get("m").asText();
-				long pointTimestamp = requestTimestamp;
-				JsonNode tNode = point.get("ts");
-				if(tNode!=null && tNode.isLong()) {
-					pointTimestamp = tNode.asLong();
-				}
-				ObjectNode tagNode = (ObjectNode)point.get("tags");
-				Map<String, String> tags = new TreeMap<String, String>();
-				Iterator<String> titer = tagNode.fieldNames();
-				while(titer.hasNext()) {
-					String key = titer.next();
-					tags.put(key, tagNode.get(key).asText());
+			if(pointsParser!=null) {
+				if(pointsParser.getCurrentToken()!=JsonToken.START_ARRAY) throw new Exception("The points field was not an array");
+				while(pointsParser.nextToken()==JsonToken.START_OBJECT) {
+					if(submitPoint(request, sendConfirm, readPoint(pointsParser), requestTimestamp)) {
+						pointsProcessed++;
+					}
 				}
-				String numericType = null;
-				JsonNode numericTypeNode = point.get("nt");
-				if(numericTypeNode==null) {
-					numericType = "L";
-				} else {
-					numericType = numericTypeNode.asText().trim().toUpperCase();
-					if(!ALLOWED_N_TYPES.contains(numericType)) {
-						throw new Exception("Unrecognized numeric type code [" + numericType + "]");
+			} else {
+				if(points==null) {
+					ArrayNode pointsArr = (ArrayNode)request.getRequest().get("points");
+					points = new ArrayList<JSONPoint>(pointsArr.size());
+					for(int i = 0; i < pointsArr.size(); i++) {
+						points.add(readPoint((ObjectNode)pointsArr.get(i)));
 					}
 				}
-				final String metricName = String.format("%s:%s[%s]t(%s)", metric, tags.toString(), numericType, new Date(pointTimestamp*1000));
-				final Callback<Object, Object> completionCallback = new Callback<Object, Object>() {
-					@Override
-					public Object call(Object arg) throws Exception {							
-						if(sendConfirm) {
-							request.response(ResponseType.RESP).setContent(metricName).send();
-						}
-						return null;
-					}					
-				};
-				if("L".equals(numericType)) {
-					tsdb.addPoint(metric, pointTimestamp, point.get("v").asLong(), tags).addCallback(completionCallback);
-					pointsProcessed++;
-				} else if("F".equals(numericType)) {
-					float f = (float)point.get("v").asDouble();
-					tsdb.addPoint(metric, pointTimestamp, f, tags).addCallback(completionCallback);
-					pointsProcessed++;
-				} else if("D".equals(numericType)) {
-					tsdb.addPoint(metric, pointTimestamp, point.get("v").asDouble(), tags).addCallback(completionCallback);
-					pointsProcessed++;
+				for(JSONPoint point: points) {
+					if(submitPoint(request, sendConfirm, point, requestTimestamp)) {
+						pointsProcessed++;
+					}
 				}
-				log.debug("Submitted meric [{}]", metricName);
 			}
 			if(!sendConfirm) {
 				request.response(ResponseType.RESP).setContent(nodeFactory.objectNode().set("points", nodeFactory.numberNode(pointsProcessed))).send();
@@ -468,6 +455,172 @@ public class TSDBJSONService implements IPluginContextResourceListener {
 		}
 	}
 	
+	/**
+	 * Reads the whole points array from the passed parser
+	 * @param parser The parser positioned at the start of the points array
+	 * @return the read points
+	 * @throws Exception thrown on any error reading a point
+	 */
+	public static List<JSONPoint> readPoints(final JsonParser parser) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) throw new Exception("The points field was not an array");
+		final List<JSONPoint> points = new ArrayList<JSONPoint>();
+		while(parser.nextToken()==JsonToken.START_OBJECT) {
+			points.add(readPoint(parser));
+		}
+		return points;
+	}
+	
+	/**
+	 * Reads one point from the passed parser
+	 * @param parser The parser positioned at the start of the point object
+	 * @return the read point
+	 * @throws Exception thrown on any error reading the point
+	 */
+	public static JSONPoint readPoint(final JsonParser parser) throws Exception {
+		final JSONPoint point = new JSONPoint();
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			final String fieldName = parser.getCurrentName();
+			final JsonToken token = parser.nextToken();
+			if("m".equals(fieldName)) {
+				point.metric = parser.getText();
+			} else if("ts".equals(fieldName)) {
+				if(token==JsonToken.VALUE_NUMBER_INT) {
+					point.timestamp = parser.getLongValue();
+				}
+			} else if("v".equals(fieldName)) {
+				point.longValue = parser.getValueAsLong();
+				point.doubleValue = parser.getValueAsDouble();
+			} else if("nt".equals(fieldName)) {
+				point.setNumericType(parser.getText());
+			} else if("tags".equals(fieldName) && token==JsonToken.START_OBJECT) {
+				while(parser.nextToken()==JsonToken.FIELD_NAME) {
+					final String key = parser.getCurrentName();
+					parser.nextToken();
+					point.tags.put(key, parser.getText());
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+		if(point.metric==null) throw new Exception("Point had no metric name");
+		return point;
+	}
+	
+	/**
+	 * Reads one point from the passed decoded point object
+	 * @param node The point object
+	 * @return the read point
+	 * @throws Exception thrown on any error reading the point
+	 */
+	public static JSONPoint readPoint(final ObjectNode node) throws Exception {
+		final JSONPoint point = new JSONPoint();
+		point.metric = node.get("m").asText();
+		JsonNode tNode = node.get("ts");
+		if(tNode!=null && tNode.isIntegralNumber()) {
+			point.timestamp = tNode.asLong();
+		}
+		ObjectNode tagNode = (ObjectNode)node.get("tags");
+		Iterator<String> titer = tagNode.fieldNames();
+		while(titer.hasNext()) {
+			String key = titer.next();
+			point.tags.put(key, tagNode.get(key).asText());
+		}
+		JsonNode numericTypeNode = node.get("nt");
+		if(numericTypeNode!=null) {
+			point.setNumericType(numericTypeNode.asText());
+		}
+		JsonNode valueNode = node.get("v");
+		point.longValue = valueNode.asLong();
+		point.doubleValue = valueNode.asDouble();
+		return point;
+	}
+	
+	/**
+	 * <p>Title: JSONPoint</p>
+	 * <p>Description: A datapoint read from a <b><code>points</code></b> request</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.tsd.TSDBJSONService.JSONPoint</code></p>
+	 */
+	public static class JSONPoint {
+		/** The metric name */
+		public String metric = null;
+		/** The point timestamp, or -1 if the point did not specify one */
+		public long timestamp = -1L;
+		/** The numeric type code of the value */
+		public String numericType = "L";
+		/** The value as a long */
+		public long longValue = 0L;
+		/** The value as a double */
+		public double doubleValue = 0D;
+		/** The point tags */
+		public final Map<String, String> tags = new TreeMap<String, String>();
+		
+		/**
+		 * Sets the numeric type code of the value
+		 * @param code The numeric type code
+		 * @throws Exception thrown if the code is not one of {@link TSDBJSONService#ALLOWED_N_TYPES}
+		 */
+		public void setNumericType(final String code) throws Exception {
+			final String nt = code.trim().toUpperCase();
+			if(!ALLOWED_N_TYPES.contains(nt)) {
+				throw new Exception("Unrecognized numeric type code [" + nt + "]");
+			}
+			numericType = nt;
+		}
+	}
+	
+	/**
+	 * Submits one read point to the TSDB
+	 * @param request The JSONRequest
+	 * @param sendConfirm true to send a confirm to the caller when the TSDB completes the point
+	 * @param point The point to submit
+	 * @param requestTimestamp The timestamp to use if the point does not specify one
+	 * @return true if the point was submitted, false if the numeric type was not recognized
+	 */
+	protected boolean submitPoint(final JSONRequest request, final boolean sendConfirm, final JSONPoint point, final long requestTimestamp) {
+		return submitPoint(request, sendConfirm, point.metric, point.timestamp==-1L ? requestTimestamp : point.timestamp, point.tags, point.numericType, point.longValue, point.doubleValue);
+	}
+	
+	/**
+	 * Submits one point to the TSDB
+	 * @param request The JSONRequest
+	 * @param sendConfirm true to send a confirm to the caller when the TSDB completes the point
+	 * @param metric The metric name
+	 * @param timestamp The point timestamp
+	 * @param tags The point tags
+	 * @param numericType The numeric type code of the value
+	 * @param longValue The value as a long
+	 * @param doubleValue The value as a double
+	 * @return true if the point was submitted, false if the numeric type was not recognized
+	 */
+	protected boolean submitPoint(final JSONRequest request, final boolean sendConfirm, final String metric, final long timestamp, final Map<String, String> tags, final String numericType, final long longValue, final double doubleValue) {
+		final Deferred<Object> d;
+		if("L".equals(numericType)) {
+			d = tsdb.addPoint(metric, timestamp, longValue, tags);
+		} else if("F".equals(numericType)) {
+			d = tsdb.addPoint(metric, timestamp, (float)doubleValue, tags);
+		} else if("D".equals(numericType)) {
+			d = tsdb.addPoint(metric, timestamp, doubleValue, tags);
+		} else {
+			return false;
+		}
+		if(sendConfirm || log.isDebugEnabled()) {
+			final String metricName = String.format("%s:%s[%s]t(%s)", metric, tags.toString(), numericType, new Date(timestamp*1000));
+			if(sendConfirm) {
+				d.addCallback(new Callback<Object, Object>() {
+					@Override
+					public Object call(Object arg) throws Exception {							
+						request.response(ResponseType.RESP).setContent(metricName).send();
+						return null;
+					}					
+				});
+			}
+			log.debug("Submitted meric [{}]", metricName);
+		}
+		return true;
+	}
+	
 	/**
 	 * WebSocket invoker for OpenTSDB HTTP <a href="http://opentsdb.net/docs/build/html/api_http/query.html">api/query</a> API call
 	 * @param request The JSONRequest
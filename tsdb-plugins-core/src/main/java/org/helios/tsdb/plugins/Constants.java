@@ -45,6 +45,10 @@ public class Constants {
 	public static final String PLUGIN_ENABLE_STATS_POLLING = "tsd.plugins.disableStatsCollect";
 	/** The default disabling background polling of plugin stats  */
 	public static final boolean DEFAULT_PLUGIN_ENABLE_STATS_POLLING = false;
+	/** The config property name for the plugin stats collection period in ms. */
+	public static final String STATS_PERIOD_PROP = "helios.tsdb.stats.period";
+	/** The default plugin stats collection period in ms. */
+	public static final long DEFAULT_STATS_PERIOD = 15000L;
 	
 	// ===========================================================================================	
 	//		ITSDBPluginService
@@ -160,6 +164,31 @@ public class Constants {
 	/** The optional wait strategy class ctor parameters */
 	public static final String DEFAULT_RING_BUFFER_WAIT_STRAT_ARGS = "";
 
+	/** The config property name for the longest time in ns. the adaptive wait strategy will busy spin before yielding */
+	public static final String ADAPTIVE_MAX_SPIN = "helios.events.async.disruptor.adaptive.maxspin";
+	/** The default longest adaptive spin time in ns. */
+	public static final long DEFAULT_ADAPTIVE_MAX_SPIN = 50000L;
+	/** The config property name for the longest time in ns. the adaptive wait strategy will yield before parking */
+	public static final String ADAPTIVE_MAX_YIELD = "helios.events.async.disruptor.adaptive.maxyield";
+	/** The default longest adaptive yield time in ns. */
+	public static final long DEFAULT_ADAPTIVE_MAX_YIELD = 1000000L;
+	/** The config property name for the longest time in ns. a parked adaptive waiter sleeps before re-checking without a signal */
+	public static final String ADAPTIVE_PARK_TIMEOUT = "helios.events.async.disruptor.adaptive.parktimeout";
+	/** The default adaptive park timeout in ns. */
+	public static final long DEFAULT_ADAPTIVE_PARK_TIMEOUT = 1000000L;
+
+	// ===========================================================================================	
+	//		EventBus AsyncHandler Config
+	// ===========================================================================================
+	/** The config property name for dispatching events to handlers on the posting thread instead of the async executor */
+	public static final String EVENTBUS_SYNC = "helios.events.async.eventbus.sync";
+	/** The default synchronous dispatch setting */
+	public static final boolean DEFAULT_EVENTBUS_SYNC = false;
+	/** The config property name for the number of recycled events held per event class. Rounded up to a power of 2. */
+	public static final String EVENTBUS_POOL_SIZE = "helios.events.async.eventbus.poolsize";
+	/** The default number of recycled events held per event class */
+	public static final int DEFAULT_EVENTBUS_POOL_SIZE = 1024;
+
 	// ===========================================================================================	
 	//		Netty Unified Protocol Server Config
 	// ===========================================================================================
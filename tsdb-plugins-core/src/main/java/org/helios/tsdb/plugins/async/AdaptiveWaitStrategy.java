@@ -0,0 +1,458 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.async;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.helios.tsdb.plugins.Constants;
+import org.helios.tsdb.plugins.stats.NanoHistogram;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.WaitStrategy;
+
+/**
+ * <p>Title: AdaptiveWaitStrategy</p>
+ * <p>Description: A disruptor {@link WaitStrategy} that busy spins, then yields, then parks a waiting consumer, 
+ * sizing the spin and yield phases from what it has recently observed:<ul>
+ * 	<li>The moving average time consumers waited for the next event. When events have been arriving within the spin
+ * 	window, the spin phase is stretched to about twice the average so the next one is caught without a context switch.
+ * 	When the gaps are longer than the spin and yield windows, both phases shrink to their minimum and the consumer parks almost at once.</li>
+ * 	<li>The moving average number of events available when a wait ends. A lagging consumer is in the middle of a burst,
+ * 	so the spin phase is held at its maximum until the backlog clears.</li>
+ * </ul>
+ * Parked consumers are woken by {@link #signalAllWhenBlocking()}, which only takes the lock when a consumer is actually parked,
+ * so producers pay nothing for the park phase while the consumers are spinning or yielding.
+ * On a single processor the spin phase is skipped, since a spinning consumer only holds the CPU the producer needs.</p>
+ * <p>The averages are shared by all the consumers of the ring buffer and are updated without synchronization, so concurrent
+ * consumers may occasionally drop each other's samples. The thresholds only steer the wait, so this is harmless.</p>
+ * <p>Created by {@link WaitStrategyFactory} when <b><code>helios.events.async.disruptor.waitstrat</code></b> is <b><code>AdaptiveWaitStrategy</code></b>.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.async.AdaptiveWaitStrategy</code></p>
+ */
+
+public class AdaptiveWaitStrategy implements WaitStrategy, AdaptiveWaitStrategyMXBean {
+	/** The shortest spin phase in ns. */
+	public static final long MIN_SPIN = 1000L;
+	/** Indicates if the JVM has a single processor, in which case a spinning consumer only delays the producer it is waiting for */
+	protected static final boolean UNIPROCESSOR = Constants.CORES < 2;
+	/** The shortest yield phase in ns. */
+	public static final long MIN_YIELD = 10000L;
+	/** The number of spins between clock reads */
+	private static final int SPIN_CHECK_MASK = 0x3F;
+	/** The shift applied to the moving averages' samples (a weight of 1/8 per sample) */
+	private static final int EWMA_SHIFT = 3;
+	/** The fixed point shift of the consumer lag average */
+	private static final int LAG_SHIFT = 8;
+	/** The lag average above which the consumers are considered to be working through a burst (2 events, fixed point) */
+	private static final long BURST_LAG = 2L << LAG_SHIFT;
+	
+	/**
+	 * <p>Title: WaitMode</p>
+	 * <p>Description: The phases of a consumer wait</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.async.AdaptiveWaitStrategy.WaitMode</code></p>
+	 */
+	public static enum WaitMode {
+		/** Busy spinning on the sequence */
+		SPIN,
+		/** Yielding between sequence checks */
+		YIELD,
+		/** Parked until a producer signals or the park timeout elapses */
+		PARK;
+	}
+	
+	/** The wait modes */
+	private static final WaitMode[] MODES = WaitMode.values();
+	
+	/** The lock parked consumers wait on */
+	protected final Lock lock = new ReentrantLock();
+	/** The condition parked consumers wait on */
+	protected final Condition processorNotifyCondition = lock.newCondition();
+	/** The number of parked consumers */
+	protected final AtomicInteger parked = new AtomicInteger(0);
+	
+	/** The maximum spin phase in ns. */
+	protected volatile long maxSpin;
+	/** The maximum yield phase in ns. */
+	protected volatile long maxYield;
+	/** The park timeout in ns. */
+	protected volatile long parkTimeout;
+	/** The current spin phase in ns. */
+	protected volatile long spinThreshold;
+	/** The current yield phase in ns. */
+	protected volatile long yieldThreshold;
+	/** The moving average wait time in ns. */
+	protected volatile long avgWait = 0L;
+	/** The moving average consumer lag in events, fixed point */
+	protected volatile long avgLag = 0L;
+	/** The mode of the most recent waiting consumer */
+	protected volatile WaitMode mode = WaitMode.SPIN;
+	
+	/** The total ns. spent in each mode, indexed by mode ordinal */
+	protected final AtomicLongArray modeTimes = new AtomicLongArray(MODES.length);
+	/** The number of waits ending in each mode, indexed by mode ordinal */
+	protected final AtomicLongArray modeWaits = new AtomicLongArray(MODES.length);
+	/** The wait time histogram */
+	protected final NanoHistogram waits = new NanoHistogram();
+	
+	/**
+	 * Creates a new AdaptiveWaitStrategy configured from system properties and the environment
+	 */
+	public AdaptiveWaitStrategy() {
+		configure(new Properties());
+	}
+	
+	/**
+	 * Configures the maximum spin and yield phases and the park timeout and resets the adaptive thresholds
+	 * @param config The configuration properties
+	 */
+	public void configure(Properties config) {
+		maxSpin = Math.max(MIN_SPIN, ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADAPTIVE_MAX_SPIN, Constants.DEFAULT_ADAPTIVE_MAX_SPIN, config));
+		maxYield = Math.max(MIN_YIELD, ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADAPTIVE_MAX_YIELD, Constants.DEFAULT_ADAPTIVE_MAX_YIELD, config));
+		parkTimeout = Math.max(1L, ConfigurationHelper.getLongSystemThenEnvProperty(Constants.ADAPTIVE_PARK_TIMEOUT, Constants.DEFAULT_ADAPTIVE_PARK_TIMEOUT, config));
+		spinThreshold = UNIPROCESSOR ? 0L : maxSpin;
+		yieldThreshold = maxYield;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.WaitStrategy#waitFor(long, com.lmax.disruptor.Sequence, com.lmax.disruptor.Sequence, com.lmax.disruptor.SequenceBarrier)
+	 */
+	@Override
+	public long waitFor(final long sequence, final Sequence cursor, final Sequence dependentSequence, final SequenceBarrier barrier) throws AlertException, InterruptedException {
+		long available = dependentSequence.get();
+		if(available >= sequence) {
+			adapt(0L, available - sequence + 1);
+			return available;
+		}
+		final long start = System.nanoTime();
+		final long spinUntil = start + spinThreshold;
+		final long yieldUntil = spinUntil + yieldThreshold;
+		WaitMode current = WaitMode.SPIN;
+		mode = current;
+		long modeStart = start;
+		int spins = 0;
+		while((available = dependentSequence.get()) < sequence) {
+			barrier.checkAlert();
+			switch(current) {
+				case SPIN:
+					if((++spins & SPIN_CHECK_MASK)==0) {
+						final long now = System.nanoTime();
+						if(now >= spinUntil) {
+							modeTimes.addAndGet(current.ordinal(), now - modeStart);
+							modeStart = now;
+							current = WaitMode.YIELD;
+							mode = current;
+						}
+					}
+					break;
+				case YIELD: {
+					Thread.yield();
+					final long now = System.nanoTime();
+					if(now >= yieldUntil) {
+						modeTimes.addAndGet(current.ordinal(), now - modeStart);
+						modeStart = now;
+						current = WaitMode.PARK;
+						mode = current;
+					}
+					break;
+				}
+				default:
+					if(!park(sequence, cursor, barrier)) {
+						// the producers have claimed the sequence but the dependents have not caught up
+						Thread.yield();
+					}
+			}
+		}
+		final long end = System.nanoTime();
+		modeTimes.addAndGet(current.ordinal(), end - modeStart);
+		modeWaits.incrementAndGet(current.ordinal());
+		waits.record(end - start);
+		adapt(end - start, available - sequence + 1);
+		return available;
+	}
+	
+	/**
+	 * Parks the calling consumer until a producer signals or the park timeout elapses
+	 * @param sequence The sequence the consumer is waiting for
+	 * @param cursor The ring buffer cursor
+	 * @param barrier The consumer's barrier
+	 * @return true if the consumer parked, false if the cursor had already reached the sequence
+	 * @throws AlertException thrown if the barrier is alerted
+	 * @throws InterruptedException thrown if the consumer is interrupted while parked
+	 */
+	protected boolean park(final long sequence, final Sequence cursor, final SequenceBarrier barrier) throws AlertException, InterruptedException {
+		lock.lock();
+		try {
+			parked.incrementAndGet();
+			try {
+				if(cursor.get() >= sequence) return false;
+				barrier.checkAlert();
+				processorNotifyCondition.awaitNanos(parkTimeout);
+				return true;
+			} finally {
+				parked.decrementAndGet();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Folds a completed wait into the moving averages and recomputes the spin and yield thresholds
+	 * @param waited The time the consumer waited in ns.
+	 * @param lag The number of events available when the wait ended
+	 */
+	protected void adapt(final long waited, final long lag) {
+		final long spinCap = maxSpin;
+		final long yieldCap = maxYield;
+		// cap the sample so one long idle period does not hold the thresholds down through the next burst
+		final long sample = Math.min(waited, (spinCap + yieldCap) << 2);
+		final long w = avgWait + ((sample - avgWait) >> EWMA_SHIFT);
+		final long l = avgLag + (((lag << LAG_SHIFT) - avgLag) >> EWMA_SHIFT);
+		avgWait = w;
+		avgLag = l;
+		if(l >= BURST_LAG) {
+			spinThreshold = UNIPROCESSOR ? 0L : spinCap;
+			yieldThreshold = yieldCap;
+		} else {
+			spinThreshold = UNIPROCESSOR ? 0L : (w > spinCap ? MIN_SPIN : clamp(w << 1, MIN_SPIN, spinCap));
+			yieldThreshold = w > spinCap + yieldCap ? MIN_YIELD : clamp(w << 1, MIN_YIELD, yieldCap);
+		}
+	}
+	
+	/**
+	 * Clamps a value to a range
+	 * @param value The value
+	 * @param min The range minimum
+	 * @param max The range maximum
+	 * @return the clamped value
+	 */
+	private static long clamp(final long value, final long min, final long max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.lmax.disruptor.WaitStrategy#signalAllWhenBlocking()
+	 */
+	@Override
+	public void signalAllWhenBlocking() {
+		if(parked.get()==0) return;
+		lock.lock();
+		try {
+			processorNotifyCondition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Builds a map keyed by wait mode name from an array indexed by mode ordinal
+	 * @param values The values indexed by mode ordinal
+	 * @return the map of values
+	 */
+	private static Map<String, Long> byMode(final AtomicLongArray values) {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>(MODES.length);
+		for(WaitMode m: MODES) {
+			map.put(m.name(), values.get(m.ordinal()));
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getMode()
+	 */
+	@Override
+	public String getMode() {
+		return mode.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getModeTimes()
+	 */
+	@Override
+	public Map<String, Long> getModeTimes() {
+		return byMode(modeTimes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getModeWaits()
+	 */
+	@Override
+	public Map<String, Long> getModeWaits() {
+		return byMode(modeWaits);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getSpinThreshold()
+	 */
+	@Override
+	public long getSpinThreshold() {
+		return spinThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getYieldThreshold()
+	 */
+	@Override
+	public long getYieldThreshold() {
+		return yieldThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getAverageWait()
+	 */
+	@Override
+	public long getAverageWait() {
+		return avgWait;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getAverageLag()
+	 */
+	@Override
+	public double getAverageLag() {
+		return (double)avgLag / (1 << LAG_SHIFT);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getWaitP50()
+	 */
+	@Override
+	public long getWaitP50() {
+		return waits.percentile(50);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getWaitP99()
+	 */
+	@Override
+	public long getWaitP99() {
+		return waits.percentile(99);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getMaxSpin()
+	 */
+	@Override
+	public long getMaxSpin() {
+		return maxSpin;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#setMaxSpin(long)
+	 */
+	@Override
+	public void setMaxSpin(long maxSpin) {
+		this.maxSpin = Math.max(MIN_SPIN, maxSpin);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getMaxYield()
+	 */
+	@Override
+	public long getMaxYield() {
+		return maxYield;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#setMaxYield(long)
+	 */
+	@Override
+	public void setMaxYield(long maxYield) {
+		this.maxYield = Math.max(MIN_YIELD, maxYield);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#getParkTimeout()
+	 */
+	@Override
+	public long getParkTimeout() {
+		return parkTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#setParkTimeout(long)
+	 */
+	@Override
+	public void setParkTimeout(long parkTimeout) {
+		this.parkTimeout = Math.max(1L, parkTimeout);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean#resetStats()
+	 */
+	@Override
+	public void resetStats() {
+		for(int i = 0; i < MODES.length; i++) {
+			modeTimes.set(i, 0L);
+			modeWaits.set(i, 0L);
+		}
+		waits.reset();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return new StringBuilder("AdaptiveWaitStrategy [mode:").append(mode)
+			.append(", spin:").append(TimeUnit.NANOSECONDS.toMicros(spinThreshold)).append("us")
+			.append(", yield:").append(TimeUnit.NANOSECONDS.toMicros(yieldThreshold)).append("us")
+			.append(", avgWait:").append(avgWait).append("ns]").toString();
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.async;
+
+import java.util.Map;
+
+/**
+ * <p>Title: AdaptiveWaitStrategyMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link AdaptiveWaitStrategy}. All times are in nanoseconds.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.async.AdaptiveWaitStrategyMXBean</code></p>
+ */
+
+public interface AdaptiveWaitStrategyMXBean {
+	/**
+	 * Returns the mode the most recent waiting consumer was in
+	 * @return the current wait mode name
+	 */
+	public String getMode();
+	
+	/**
+	 * Returns the total time consumers have spent in each wait mode
+	 * @return a map of elapsed times keyed by wait mode name
+	 */
+	public Map<String, Long> getModeTimes();
+	
+	/**
+	 * Returns the number of waits that ended in each wait mode
+	 * @return a map of wait counts keyed by wait mode name
+	 */
+	public Map<String, Long> getModeWaits();
+	
+	/**
+	 * Returns the current adaptive spin threshold
+	 * @return the time a waiting consumer currently spins before yielding
+	 */
+	public long getSpinThreshold();
+	
+	/**
+	 * Returns the current adaptive yield threshold
+	 * @return the time a waiting consumer currently yields before parking
+	 */
+	public long getYieldThreshold();
+	
+	/**
+	 * Returns the moving average time consumers waited for the next event
+	 * @return the average wait time
+	 */
+	public long getAverageWait();
+	
+	/**
+	 * Returns the moving average number of events available to a consumer when its wait ended,
+	 * i.e. how far the consumers are lagging the producers
+	 * @return the average consumer lag in events
+	 */
+	public double getAverageLag();
+	
+	/**
+	 * Returns the median time consumers waited for the next event
+	 * @return the p50 wait time
+	 */
+	public long getWaitP50();
+	
+	/**
+	 * Returns the 99th percentile time consumers waited for the next event
+	 * @return the p99 wait time
+	 */
+	public long getWaitP99();
+	
+	/**
+	 * Returns the longest time a consumer may spin before yielding
+	 * @return the maximum spin time
+	 */
+	public long getMaxSpin();
+	
+	/**
+	 * Sets the longest time a consumer may spin before yielding
+	 * @param maxSpin the maximum spin time
+	 */
+	public void setMaxSpin(long maxSpin);
+	
+	/**
+	 * Returns the longest time a consumer may yield before parking
+	 * @return the maximum yield time
+	 */
+	public long getMaxYield();
+	
+	/**
+	 * Sets the longest time a consumer may yield before parking
+	 * @param maxYield the maximum yield time
+	 */
+	public void setMaxYield(long maxYield);
+	
+	/**
+	 * Returns the longest time a parked consumer sleeps before re-checking without being signalled
+	 * @return the park timeout
+	 */
+	public long getParkTimeout();
+	
+	/**
+	 * Sets the longest time a parked consumer sleeps before re-checking without being signalled
+	 * @param parkTimeout the park timeout
+	 */
+	public void setParkTimeout(long parkTimeout);
+	
+	/**
+	 * Resets the mode times, wait counts and wait time histogram
+	 */
+	public void resetStats();
+}
@@ -33,6 +33,8 @@ import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.ObjectName;
+
 import net.opentsdb.meta.Annotation;
 import net.opentsdb.meta.TSMeta;
 import net.opentsdb.meta.UIDMeta;
@@ -41,7 +43,12 @@ import net.opentsdb.stats.StatsCollector;
 
 import org.helios.tsdb.plugins.Constants;
 import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.event.TSDBEventType;
 import org.helios.tsdb.plugins.handlers.IEventHandler;
+import org.helios.tsdb.plugins.handlers.logging.EventTracer;
+import org.helios.tsdb.plugins.handlers.logging.LoggerManagerFactory;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder.Stage;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
 import org.slf4j.Logger;
@@ -72,6 +79,8 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	protected Executor executor = null;
 	/** The wait strategy */
 	protected WaitStrategy waitStrategy = null;
+	/** The JMX ObjectName of the wait strategy if it is instrumented */
+	protected ObjectName waitStrategyObjectName = null;
 	/** The ring buffer size */
 	protected int ringBufferSize;
 	/** The event handler sequence barrier */
@@ -87,6 +96,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 
 	/** A counter of the number of events processed */
 	protected final AtomicLong eventsProcessed = new AtomicLong();
+	/** The nanosecond latency recorder for ring buffer publication */
+	protected EventLatencyRecorder latency = null;
+	/** The completed event tracer */
+	protected final EventTracer tracer = LoggerManagerFactory.getEventTracer(getClass());
 	
 	
 	/**
@@ -103,8 +116,14 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 		String waitStrategyClassName = ConfigurationHelper.getSystemThenEnvProperty(Constants.RING_BUFFER_WAIT_STRAT, Constants.DEFAULT_RING_BUFFER_WAIT_STRAT, config);
 		log.info("Creating Dispruptor WaitStrategy [{}] with args {}....", waitStrategyClassName, Arrays.toString(waitStrategyArgs));
 		waitStrategy = WaitStrategyFactory.newWaitStrategy(waitStrategyClassName, waitStrategyArgs);
-		log.info("Dispruptor WaitStrategy Created");
+		if(waitStrategy instanceof AdaptiveWaitStrategy) {
+			((AdaptiveWaitStrategy)waitStrategy).configure(config);
+			waitStrategyObjectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=").append(getClass().getSimpleName()).append(",type=").append(waitStrategy.getClass().getSimpleName()));
+			JMXHelper.registerMBean(waitStrategy, waitStrategyObjectName);
+		}
+		log.info("Dispruptor WaitStrategy Created: [{}]", waitStrategy);
 		ringBuffer = RingBuffer.createMultiProducer(TSDBEvent.EVENT_FACTORY, ringBufferSize, waitStrategy);
+		latency = new EventLatencyRecorder(getClass().getSimpleName());
 		
 		
 		eventHandlerSequenceBarrier = ringBuffer.newBarrier();
@@ -155,6 +174,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 		}
 		closerBatchProcessor.halt();
 		log.info("Stopped Closer Handler");
+		if(waitStrategyObjectName!=null && JMXHelper.isRegistered(waitStrategyObjectName)) {
+			try { JMXHelper.unregisterMBean(waitStrategyObjectName); } catch (Exception ex) {/* No Op */}
+		}
+		if(latency!=null) latency.unregister();
 		log.info("\n\t========================================\n\tDisruptorEventDispatcher Stopped\n\t========================================\n");
 	}
 	
@@ -173,11 +196,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	@Override
 	public void publishDataPoint(String metric, long timestamp, double value, Map<String, String> tags, byte[] tsuid) {
 		//log.info("Publishing {}.....", metric);
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).publishDataPoint(metric, timestamp, value, tags, tsuid);
-        ringBuffer.publish(sequence);
-        //log.info("Published Sequence {} for {}.....", sequence, metric);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -187,11 +209,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	@Override
 	public void publishDataPoint(String metric, long timestamp, long value, Map<String, String> tags, byte[] tsuid) {
 		//log.info("Publishing {}.....", metric);
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).publishDataPoint(metric, timestamp, value, tags, tsuid);
-        ringBuffer.publish(sequence);
-        //log.info("Published Sequence {} for {}.....", sequence, metric);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 
@@ -203,8 +224,22 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void collectStats(StatsCollector collector) {
-		// TODO Auto-generated method stub
-
+		if(latency!=null) latency.collectStats(collector);
+	}
+	
+	/**
+	 * Stamps the loaded event at the passed sequence as enqueued, publishes it
+	 * and records the time taken to claim the slot and publish
+	 * @param sequence The claimed and loaded sequence
+	 * @param start The time in ns. before the slot was claimed
+	 */
+	protected void publish(final long sequence, final long start) {
+		final TSDBEvent event = ringBuffer.get(sequence);
+		final TSDBEventType eventType = event.eventType;
+		final long enqueued = event.enqueued().enqueuedNanos;
+		ringBuffer.publish(sequence);
+		latency.record(eventType, Stage.PUBLISH, enqueued-start);
+		eventsProcessed.incrementAndGet();
 	}
 	
 	/**
@@ -222,10 +257,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void executeQuery(SearchQuery searchQuery , Deferred<SearchQuery> toComplete) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).executeQuery(searchQuery, toComplete);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -234,10 +269,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void indexAnnotation(Annotation annotation) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).indexAnnotation(annotation);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -246,10 +281,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void deleteAnnotation(Annotation annotation) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).deleteAnnotation(annotation);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -258,10 +293,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void indexTSMeta(TSMeta tsMeta) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).indexTSMeta(tsMeta);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -270,10 +305,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void deleteTSMeta(String tsMeta) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).deleteTSMeta(tsMeta);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -282,10 +317,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void indexUIDMeta(UIDMeta uidMeta) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).indexUIDMeta(uidMeta);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 	/**
@@ -294,10 +329,10 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void deleteUIDMeta(UIDMeta uidMeta) {
+        final long start = System.nanoTime();
         long sequence = ringBuffer.next();
         ringBuffer.get(sequence).deleteUIDMeta(uidMeta);
-        ringBuffer.publish(sequence);
-        eventsProcessed.incrementAndGet();
+        publish(sequence, start);
 	}
 
 
@@ -310,7 +345,7 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	 */
 	@Override
 	public void onEvent(TSDBEvent event, long sequence, boolean endOfBatch) throws Exception {
-		if(log.isTraceEnabled()) log.trace("Completed TSDBEvent type [{}], seq:{}, eob:{}", event.eventType, sequence, endOfBatch);
+		if(tracer.isTracing()) tracer.trace(event, sequence);
 		//event.reset();
 	}
 
@@ -330,6 +365,14 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 		return ringBuffer.remainingCapacity();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.DisruptorEventDispatcherMXBean#getWaitStrategy()
+	 */
+	public String getWaitStrategy() {
+		return waitStrategy==null ? null : waitStrategy.getClass().getName();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.tsdb.plugins.async.DisruptorEventDispatcherMXBean#getEventHandlerNames()
@@ -339,4 +382,28 @@ public class DisruptorEventDispatcher implements DisruptorEventDispatcherMXBean,
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.DisruptorEventDispatcherMXBean#isEventTraceEnabled()
+	 */
+	public boolean isEventTraceEnabled() {
+		return tracer.isTracing();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.DisruptorEventDispatcherMXBean#setEventTraceEnabled(boolean)
+	 */
+	public void setEventTraceEnabled(boolean enabled) {
+		tracer.setTracing(enabled);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.async.DisruptorEventDispatcherMXBean#dumpEventTrace(int)
+	 */
+	public String[] dumpEventTrace(int max) {
+		return tracer.dump(max);
+	}
+
 }
@@ -51,10 +51,35 @@ public interface DisruptorEventDispatcherMXBean {
 	 */
 	public long getEventProcessedCount();
 	
+	/**
+	 * Returns the class name of the ring buffer's wait strategy
+	 * @return the wait strategy class name
+	 */
+	public String getWaitStrategy();
+	
 	/**
 	 * Returns the names of the registered event handlers
 	 * @return the names of the registered event handlers
 	 */
 	public String[] getEventHandlerNames();
+	
+	/**
+	 * Indicates if the trace of completed events is enabled
+	 * @return true if event tracing is enabled, false otherwise
+	 */
+	public boolean isEventTraceEnabled();
+	
+	/**
+	 * Enables or disables the trace of completed events
+	 * @param enabled true to enable, false to disable
+	 */
+	public void setEventTraceEnabled(boolean enabled);
+	
+	/**
+	 * Formats the most recent completed event trace records
+	 * @param max The maximum number of records to return
+	 * @return the formatted records, oldest first
+	 */
+	public String[] dumpEventTrace(int max);
 
 }
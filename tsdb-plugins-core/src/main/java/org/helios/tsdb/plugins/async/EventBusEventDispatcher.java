@@ -24,13 +24,17 @@
  */
 package org.helios.tsdb.plugins.async;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.opentsdb.meta.Annotation;
 import net.opentsdb.meta.TSMeta;
@@ -38,19 +42,34 @@ import net.opentsdb.meta.UIDMeta;
 import net.opentsdb.search.SearchQuery;
 import net.opentsdb.stats.StatsCollector;
 
+import org.helios.tsdb.plugins.Constants;
+import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.event.TSDBEventType;
 import org.helios.tsdb.plugins.event.TSDBPublishEvent;
 import org.helios.tsdb.plugins.event.TSDBSearchEvent;
 import org.helios.tsdb.plugins.handlers.IEventHandler;
+import org.helios.tsdb.plugins.handlers.IPublishEventHandler;
+import org.helios.tsdb.plugins.handlers.IRetainingEventHandler;
+import org.helios.tsdb.plugins.handlers.ISearchEventHandler;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder.Stage;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.eventbus.AsyncEventBus;
-import com.google.common.eventbus.DeadEvent;
+import com.lmax.disruptor.EventHandler;
 import com.stumbleupon.async.Deferred;
 
 /**
  * <p>Title: EventBusEventDispatcher</p>
- * <p>Description: An async event dispatcher that uses a Guava {@link AsyncEventBus} to manage async dispatches.</p> 
+ * <p>Description: An event dispatcher that routes each event straight to the handlers subscribed to its {@link TSDBEventType}.</p>
+ * <p>The handler routing table is built once at initialization: each handler's event mask is derived from the handler
+ * interfaces it implements ({@link IPublishEventHandler} for publish events, {@link ISearchEventHandler} for search events,
+ * all events for handlers implementing neither) and the handler is added to the array of every event type enabled in its mask.
+ * Events are then delivered by calling {@link EventHandler#onEvent(Object, long, boolean)} on each handler in the array, 
+ * either on the posting thread or as a single task per event on the async executor.</p>
+ * <p>Event instances are recycled through a bounded pool once every handler has returned, unless a handler 
+ * subscribed to the event's type is an {@link IRetainingEventHandler}.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.async.EventBusEventDispatcher</code></p>
@@ -59,12 +78,26 @@ import com.stumbleupon.async.Deferred;
 public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	/** Instance logger */
 	protected final Logger log = LoggerFactory.getLogger(getClass());
-	/** The dispatching event bus */
-	protected AsyncEventBus eventBus = null;
-	/** The executor driving the async bus */
+	/** The executor async dispatches are run on */
 	protected Executor executor = null;
-	/** The registered event handlers (since EventBus won't tell us what they are) */
-	protected final Set<Object> registered = new CopyOnWriteArraySet<Object>();
+	/** The registered event handlers */
+	protected final Set<IEventHandler> registered = new CopyOnWriteArraySet<IEventHandler>();
+	/** The handlers subscribed to each event type, indexed by the event type ordinal */
+	protected volatile EventHandler<TSDBEvent>[][] handlersByType = newRoutingTable();
+	/** Indicates if events of each type can be recycled after dispatch, indexed by the event type ordinal */
+	protected volatile boolean[] recyclable = new boolean[TSDBEventType.values().length];
+	/** Indicates if events are dispatched on the posting thread */
+	protected boolean synchronous = Constants.DEFAULT_EVENTBUS_SYNC;
+	/** The pool of recycled publish events */
+	protected EventPool<PooledPublishEvent> publishPool = null;
+	/** The pool of recycled search events */
+	protected EventPool<PooledSearchEvent> searchPool = null;
+	/** The nanosecond latency recorder for event posts */
+	protected EventLatencyRecorder latency = null;
+	/** The number of posted events no handler was subscribed to */
+	protected final AtomicLong deadEvents = new AtomicLong(0L);
+	/** The number of exceptions thrown by handlers */
+	protected final AtomicLong handlerErrors = new AtomicLong(0L);
 	
 	
 	/**
@@ -75,11 +108,17 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	}
 	
 	/**
-	 * Dead event handler. Prints a warning message on dead events.
-	 * @param deadEvent The dead event
+	 * Creates an empty routing table
+	 * @return an empty routing table
 	 */
-	public void onDeadEvent(DeadEvent deadEvent) {
-		log.warn("\n\t**************************\n\tDEAD EVENT\n\t{}\n\t**************************\n");
+	@SuppressWarnings("unchecked")
+	private static EventHandler<TSDBEvent>[][] newRoutingTable() {
+		final TSDBEventType[] types = TSDBEventType.values();
+		final EventHandler<TSDBEvent>[][] table = new EventHandler[types.length][];
+		for(TSDBEventType t: types) {
+			table[t.ordinal()] = new EventHandler[0];
+		}
+		return table;
 	}
 	
 	/**
@@ -88,10 +127,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void shutdown() {
-		for(Iterator<Object> iter = registered.iterator(); iter.hasNext();) {			
-			eventBus.unregister(iter.next());			
-		}
+		handlersByType = newRoutingTable();
 		registered.clear();
+		if(latency!=null) latency.unregister();
 	}
 
 	/**
@@ -100,28 +138,167 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void collectStats(StatsCollector collector) {
-		// TODO Auto-generated method stub
-
+		if(latency!=null) latency.collectStats(collector);
+		collector.record("dispatcher.dead", deadEvents.get());
+		collector.record("dispatcher.errors", handlerErrors.get());
 	}
 	
+	/**
+	 * Returns the event mask a handler is subscribed to
+	 * @param handler The handler
+	 * @return the handler's event mask
+	 */
+	protected int getEventMask(IEventHandler handler) {
+		int mask = 0;
+		for(TSDBEventType t: TSDBEventType.values()) {
+			if((handler instanceof IPublishEventHandler && t.isForPulisher()) || (handler instanceof ISearchEventHandler && t.isForSearch())) {
+				mask |= t.mask;
+			}
+		}
+		return mask==0 ? TSDBEventType.getMask(TSDBEventType.values()) : mask;
+	}
 	
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.tsdb.plugins.async.AsyncEventDispatcher#initialize(java.util.Properties, java.util.concurrent.Executor, java.util.Collection)
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public void initialize(Properties config, Executor executor, Collection<IEventHandler> handlers) {
-		eventBus = new AsyncEventBus("AsyncEventDispatcher", executor);
-		this.executor = executor;		
-		eventBus.register(this);
+		latency = new EventLatencyRecorder(getClass().getSimpleName());
+		this.executor = executor;
+		synchronous = ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.EVENTBUS_SYNC, Constants.DEFAULT_EVENTBUS_SYNC, config);
+		final int poolSize = ConfigurationHelper.getIntSystemThenEnvProperty(Constants.EVENTBUS_POOL_SIZE, Constants.DEFAULT_EVENTBUS_POOL_SIZE, config);
+		publishPool = new EventPool<PooledPublishEvent>(poolSize);
+		searchPool = new EventPool<PooledSearchEvent>(poolSize);
+		final TSDBEventType[] types = TSDBEventType.values();
+		final List<List<EventHandler<TSDBEvent>>> routes = new ArrayList<List<EventHandler<TSDBEvent>>>(types.length);
+		final boolean[] recycle = new boolean[types.length];
+		for(TSDBEventType t: types) {
+			routes.add(new ArrayList<EventHandler<TSDBEvent>>());
+			recycle[t.ordinal()] = true;
+		}
 		if(handlers!=null && !handlers.isEmpty()) {
 			for(IEventHandler handler: handlers) {
 				if(handler==null) continue;
-				eventBus.register(handler);
+				if(!(handler instanceof EventHandler)) {
+					log.warn("The handler [{}] does not implement [{}]. Not registered to handle events", handler.getClass().getName(), EventHandler.class.getName());
+					continue;
+				}
+				final int mask = getEventMask(handler);
+				for(TSDBEventType t: types) {
+					if(!t.isEnabled(mask)) continue;
+					routes.get(t.ordinal()).add((EventHandler<TSDBEvent>)handler);
+					if(handler instanceof IRetainingEventHandler) recycle[t.ordinal()] = false;
+				}
 				registered.add(handler);
+				log.info("Registered TSDBEventHandler [{}]", handler.getClass().getName());
 			}
 		}
-		
+		final EventHandler<TSDBEvent>[][] table = new EventHandler[types.length][];
+		for(TSDBEventType t: types) {
+			final List<EventHandler<TSDBEvent>> route = routes.get(t.ordinal());
+			table[t.ordinal()] = route.toArray(new EventHandler[route.size()]);
+		}
+		recyclable = recycle;
+		handlersByType = table;
+		log.info("Initialized {} dispatcher with [{}] handlers", synchronous ? "synchronous" : "async", registered.size());
+	}
+	
+	/**
+	 * Stamps the passed loaded event as enqueued and dispatches it on the posting thread or the async executor, 
+	 * recording the time taken to post
+	 * @param event The loaded event to post
+	 */
+	protected <T extends TSDBEvent & Runnable> void post(T event) {
+		final TSDBEventType eventType = event.eventType;
+		if(handlersByType[eventType.ordinal()].length==0) {
+			deadEvents.incrementAndGet();
+			if(log.isDebugEnabled()) log.debug("No handlers subscribed to event [{}]", event);
+			recycle(event, eventType);
+			return;
+		}
+		final long start = event.enqueued().enqueuedNanos;
+		if(synchronous) {
+			event.run();
+		} else {
+			executor.execute(event);
+		}
+		latency.record(eventType, Stage.PUBLISH, System.nanoTime()-start);
+	}
+	
+	/**
+	 * Delivers the passed event to each handler subscribed to its type
+	 * @param event The event to deliver
+	 */
+	protected void dispatch(TSDBEvent event) {
+		final EventHandler<TSDBEvent>[] handlers = handlersByType[event.eventType.ordinal()];
+		for(int i = 0; i < handlers.length; i++) {
+			try {
+				handlers[i].onEvent(event, -1L, false);
+			} catch (Throwable t) {
+				handlerErrors.incrementAndGet();
+				log.error("Handler [{}] failed to handle event [{}]", handlers[i].getClass().getName(), event, t);
+			}
+		}
+	}
+	
+	/**
+	 * Resets the passed dispatched event and returns it to its pool if events of its type are recyclable
+	 * @param event The dispatched event
+	 * @param eventType The type the event was dispatched as
+	 */
+	protected void recycle(TSDBEvent event, TSDBEventType eventType) {
+		if(!recyclable[eventType.ordinal()]) return;
+		event.reset();
+		event.enqueuedNanos = -1;
+		if(event instanceof PooledPublishEvent) {
+			publishPool.release((PooledPublishEvent)event);
+		} else if(event instanceof PooledSearchEvent) {
+			searchPool.release((PooledSearchEvent)event);
+		}
+	}
+	
+	/**
+	 * Acquires a publish event from the pool, or creates a new one if the pool is empty
+	 * @return a publish event
+	 */
+	protected PooledPublishEvent publishEvent() {
+		final PooledPublishEvent event = publishPool.acquire();
+		return event!=null ? event : new PooledPublishEvent();
+	}
+	
+	/**
+	 * Acquires a search event from the pool, or creates a new one if the pool is empty
+	 * @return a search event
+	 */
+	protected PooledSearchEvent searchEvent() {
+		final PooledSearchEvent event = searchPool.acquire();
+		return event!=null ? event : new PooledSearchEvent();
+	}
+	
+	/**
+	 * Returns the number of posted events no handler was subscribed to
+	 * @return the number of dead events
+	 */
+	public long getDeadEventCount() {
+		return deadEvents.get();
+	}
+	
+	/**
+	 * Returns the number of exceptions thrown by handlers
+	 * @return the number of handler errors
+	 */
+	public long getHandlerErrorCount() {
+		return handlerErrors.get();
+	}
+	
+	/**
+	 * Returns the number of events created because the pools were empty
+	 * @return the number of pool misses
+	 */
+	public long getPoolMissCount() {
+		return (publishPool==null ? 0L : publishPool.misses.get()) + (searchPool==null ? 0L : searchPool.misses.get());
 	}
 
 
@@ -131,7 +308,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void publishDataPoint(String metric, long timestamp, double value, Map<String, String> tags, byte[] tsuid) {
-		eventBus.post(new TSDBPublishEvent().publishDataPoint(metric, timestamp, value, tags, tsuid));
+		final PooledPublishEvent event = publishEvent();
+		event.publishDataPoint(metric, timestamp, value, tags, tsuid);
+		post(event);
 	}
 
 	/**
@@ -140,7 +319,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void publishDataPoint(String metric, long timestamp, long value, Map<String, String> tags, byte[] tsuid) {
-		eventBus.post(new TSDBPublishEvent().publishDataPoint(metric, timestamp, value, tags, tsuid));
+		final PooledPublishEvent event = publishEvent();
+		event.publishDataPoint(metric, timestamp, value, tags, tsuid);
+		post(event);
 	}
 
 
@@ -152,8 +333,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void executeQuery(SearchQuery searchQuery, Deferred<SearchQuery> toComplete) {
-		TSDBSearchEvent searchEvent = new TSDBSearchEvent().executeQueryEvent(searchQuery, toComplete); 
-		eventBus.post(searchEvent);
+		final PooledSearchEvent event = searchEvent();
+		event.executeQueryEvent(searchQuery, toComplete);
+		post(event);
 	}
 
 	/**
@@ -162,7 +344,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void indexAnnotation(Annotation annotation) {
-		eventBus.post(new TSDBSearchEvent().indexAnnotation(annotation));
+		final PooledSearchEvent event = searchEvent();
+		event.indexAnnotation(annotation);
+		post(event);
 	}
 
 	/**
@@ -171,8 +355,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void deleteAnnotation(Annotation annotation) {
-		eventBus.post(new TSDBSearchEvent().deleteAnnotation(annotation));
-
+		final PooledSearchEvent event = searchEvent();
+		event.deleteAnnotation(annotation);
+		post(event);
 	}
 
 	/**
@@ -181,8 +366,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void indexTSMeta(TSMeta tsMeta) {		
-		eventBus.post(new TSDBSearchEvent().indexTSMeta(tsMeta));
-
+		final PooledSearchEvent event = searchEvent();
+		event.indexTSMeta(tsMeta);
+		post(event);
 	}
 
 	/**
@@ -191,8 +377,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void deleteTSMeta(String tsMeta) {
-		eventBus.post(new TSDBSearchEvent().deleteTSMeta(tsMeta));
-
+		final PooledSearchEvent event = searchEvent();
+		event.deleteTSMeta(tsMeta);
+		post(event);
 	}
 
 	/**
@@ -201,8 +388,9 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void indexUIDMeta(UIDMeta uidMeta) {
-		eventBus.post(new TSDBSearchEvent().indexUIDMeta(uidMeta));
-
+		final PooledSearchEvent event = searchEvent();
+		event.indexUIDMeta(uidMeta);
+		post(event);
 	}
 
 	/**
@@ -211,8 +399,116 @@ public class EventBusEventDispatcher implements AsyncEventDispatcher {
 	 */
 	@Override
 	public void deleteUIDMeta(UIDMeta uidMeta) {
-		eventBus.post(new TSDBSearchEvent().deleteUIDMeta(uidMeta));
-
+		final PooledSearchEvent event = searchEvent();
+		event.deleteUIDMeta(uidMeta);
+		post(event);
+	}
+	
+	/**
+	 * <p>Title: PooledPublishEvent</p>
+	 * <p>Description: A recyclable publish event that dispatches itself when run</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.async.EventBusEventDispatcher.PooledPublishEvent</code></p>
+	 */
+	protected class PooledPublishEvent extends TSDBPublishEvent implements Runnable {
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			final TSDBEventType eventType = this.eventType;
+			dispatch(this);
+			recycle(this, eventType);
+		}
+	}
+	
+	/**
+	 * <p>Title: PooledSearchEvent</p>
+	 * <p>Description: A recyclable search event that dispatches itself when run</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.async.EventBusEventDispatcher.PooledSearchEvent</code></p>
+	 */
+	protected class PooledSearchEvent extends TSDBSearchEvent implements Runnable {
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			final TSDBEventType eventType = this.eventType;
+			dispatch(this);
+			recycle(this, eventType);
+		}
+	}
+	
+	/**
+	 * <p>Title: EventPool</p>
+	 * <p>Description: A bounded, allocation free stack of recycled events. Slots are claimed and filled with a CAS and 
+	 * a shared top of stack hint keeps acquires and releases probing the same few slots.
+	 * An acquire that finds no event returns null and a release that finds no free slot drops the event.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.async.EventBusEventDispatcher.EventPool</code></p>
+	 * @param <T> The pooled event type
+	 */
+	protected static class EventPool<T extends TSDBEvent> {
+		/** The number of slots probed per acquire or release */
+		static final int PROBES = 8;
+		/** The pool slots */
+		final AtomicReferenceArray<T> slots;
+		/** The slot index mask */
+		final int mask;
+		/** The index of the slot above the most recently filled slot */
+		final AtomicInteger top = new AtomicInteger(0);
+		/** The number of acquires that found the pool empty */
+		final AtomicLong misses = new AtomicLong(0L);
+		
+		/**
+		 * Creates a new EventPool
+		 * @param size The requested number of slots, rounded up to a power of 2
+		 */
+		EventPool(int size) {
+			int slotCount = PROBES;
+			while(slotCount < size) slotCount <<= 1;
+			slots = new AtomicReferenceArray<T>(slotCount);
+			mask = slotCount-1;
+		}
+		
+		/**
+		 * Takes an event from the pool
+		 * @return a recycled event or null if none was found
+		 */
+		T acquire() {
+			final int t = top.get();
+			for(int i = 1; i <= PROBES; i++) {
+				final int index = (t - i) & mask;
+				final T event = slots.get(index);
+				if(event!=null && slots.compareAndSet(index, event, null)) {
+					top.lazySet(index);
+					return event;
+				}
+			}
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		/**
+		 * Returns an event to the pool
+		 * @param event The reset event
+		 */
+		void release(T event) {
+			final int t = top.get();
+			for(int i = 0; i < PROBES; i++) {
+				final int index = (t + i) & mask;
+				if(slots.get(index)==null && slots.compareAndSet(index, null, event)) {
+					top.lazySet(index + 1);
+					return;
+				}
+			}
+		}
 	}
 
 }
@@ -33,7 +33,7 @@ import com.lmax.disruptor.WaitStrategy;
 
 /**
  * <p>Title: WaitStrategyFactory</p>
- * <p>Description: </p> 
+ * <p>Description: Creates disruptor {@link WaitStrategy} instances by class name and string constructor arguments</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.async.WaitStrategyFactory</code></p>
@@ -42,10 +42,12 @@ import com.lmax.disruptor.WaitStrategy;
 public class WaitStrategyFactory {
     /** The default package where these strategies are located */
     public static final String DEFAULT_PACKAGE = "com.lmax.disruptor.";
+    /** The package searched for unqualified strategy names not found in the default package */
+    public static final String LOCAL_PACKAGE = WaitStrategyFactory.class.getPackage().getName() + ".";
 
     /**
      * Creates a new {@link WaitStrategy} for the disruptor async handler.
-     * @param className The wait strategy class name
+     * @param className The wait strategy class name. Unqualified names are resolved in {@link #DEFAULT_PACKAGE}, then in {@link #LOCAL_PACKAGE}
      * @param args The constructor arguments in string form
      * @return the wait strategy instance
      */
@@ -53,15 +55,19 @@ public class WaitStrategyFactory {
     	WaitStrategy ws = null;
     	Class<?>_clazz = null;    	
     	Class<WaitStrategy> clazz = null;
-    	if(!className.startsWith(DEFAULT_PACKAGE)) {
-    		if(!className.contains(".")) {
-    			className = DEFAULT_PACKAGE + className;
+    	if(!className.contains(".")) {
+    		try {
+    			_clazz = Class.forName(DEFAULT_PACKAGE + className);
+    		} catch (Exception ex) {
+    			className = LOCAL_PACKAGE + className;
     		}
     	}
-    	try {
-    		_clazz = Class.forName(className);
-    	} catch (Exception ex) {
-    		throw new RuntimeException("Failed to load WaitStrategy [" + className + "]");    		
+    	if(_clazz==null) {
+	    	try {
+	    		_clazz = Class.forName(className);
+	    	} catch (Exception ex) {
+	    		throw new RuntimeException("Failed to load WaitStrategy [" + className + "]");    		
+	    	}
     	}
     	if(!WaitStrategy.class.isAssignableFrom(_clazz)) {
     		throw new IllegalArgumentException("The class [" + className + "] does not implement " + WaitStrategy.class.getName());
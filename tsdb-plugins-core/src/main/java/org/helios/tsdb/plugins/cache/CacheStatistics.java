@@ -24,9 +24,15 @@
  */
 package org.helios.tsdb.plugins.cache;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.management.ObjectName;
+
+import net.opentsdb.stats.StatsCollector;
+
 import org.helios.jmx.util.helpers.JMXHelper;
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
 
 
 /**
@@ -42,6 +48,8 @@ public class CacheStatistics implements CacheStatisticsMXBean {
 	protected final Cache<?, ?> cache;	
 	/** The cache stats JMX object name */
 	protected final ObjectName objectName;
+	/** The estimated bytes held by a weighed cache, or null if the cache is not weighed */
+	protected final AtomicLong weightedSize;
 
 
 	/**
@@ -50,8 +58,19 @@ public class CacheStatistics implements CacheStatisticsMXBean {
 	 * @param objectName The assigned JMX ObjectName for this cache
 	 */
 	public CacheStatistics(Cache<?, ?> cache, ObjectName objectName) {
+		this(cache, objectName, null);
+	}
+	
+	/**
+	 * Creates a new CacheStatistics for a cache bounded by memory weight
+	 * @param cache The guava cache instance to wrap
+	 * @param objectName The assigned JMX ObjectName for this cache
+	 * @param weightedSize The estimated bytes held by the cache, maintained by the cache owner
+	 */
+	public CacheStatistics(Cache<?, ?> cache, ObjectName objectName, AtomicLong weightedSize) {
 		this.cache = cache;
-		this.objectName = objectName;		
+		this.objectName = objectName;
+		this.weightedSize = weightedSize;
 	}
 
 	
@@ -189,5 +208,34 @@ public class CacheStatistics implements CacheStatisticsMXBean {
 	public long getEvictionCount() {
 		return cache.stats().evictionCount();
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.cache.CacheStatisticsMXBean#getWeightedSize()
+	 */
+	@Override
+	public long getWeightedSize() {
+		return weightedSize==null ? -1L : weightedSize.get();
+	}
+
+	/**
+	 * Records the size and the hit, miss, load and eviction counts of the passed cache to the passed collector, tagged with <b><code>cache=&lt;name&gt;</code></b>
+	 * @param collector The collector to write to
+	 * @param name The cache name
+	 * @param cache The cache to collect stats for
+	 */
+	public static void collectStats(StatsCollector collector, String name, Cache<?, ?> cache) {
+		final CacheStats stats = cache.stats();
+		collector.addExtraTag("cache", name);
+		try {
+			collector.record("cache.size", cache.size());
+			collector.record("cache.hits", stats.hitCount());
+			collector.record("cache.misses", stats.missCount());
+			collector.record("cache.loads", stats.loadCount());
+			collector.record("cache.evictions", stats.evictionCount());
+		} finally {
+			collector.clearExtraTag("cache");
+		}
+	}
 
 }
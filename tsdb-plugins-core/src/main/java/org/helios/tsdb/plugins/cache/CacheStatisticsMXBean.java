@@ -128,6 +128,12 @@ public interface CacheStatisticsMXBean {
 	 * @return the cache eviction count
 	 */
 	public long getEvictionCount();
+	
+	/**
+	 * Returns the estimated number of bytes held by a cache bounded by memory weight
+	 * @return the estimated bytes held or -1 if the cache is not weighed
+	 */
+	public long getWeightedSize();
 
 
 }
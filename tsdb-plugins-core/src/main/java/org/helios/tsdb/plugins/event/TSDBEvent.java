@@ -75,6 +75,8 @@ public class TSDBEvent  {
 	
 	/** Indicates that the associated object should be synced to store through the TSDB */
 	public boolean synToStore = false;
+	/** The {@link System#nanoTime()} at which this event was last enqueued, or -1 if not stamped */
+	public long enqueuedNanos = -1;
 	
 	/**
 	 * Creates a new TSDBEvent
@@ -115,6 +117,15 @@ public class TSDBEvent  {
 		
 	}
 	
+	/**
+	 * Stamps this event with the current {@link System#nanoTime()} as it is enqueued for async processing
+	 * @return this event
+	 */
+	public TSDBEvent enqueued() {
+		enqueuedNanos = System.nanoTime();
+		return this;
+	}
+	
 	 /** The event factory for TSDBEvents */
 	public final static EventFactory<TSDBEvent> EVENT_FACTORY = new EventFactory<TSDBEvent>() {
 		 @Override
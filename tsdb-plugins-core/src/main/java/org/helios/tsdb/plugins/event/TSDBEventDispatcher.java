@@ -8,6 +8,7 @@ import net.opentsdb.meta.Annotation;
 import net.opentsdb.meta.TSMeta;
 import net.opentsdb.meta.UIDMeta;
 import net.opentsdb.search.SearchQuery;
+import net.opentsdb.stats.StatsCollector;
 
 import org.helios.tsdb.plugins.Constants;
 import org.helios.tsdb.plugins.async.AsyncDispatcherExecutor;
@@ -93,6 +94,33 @@ public class TSDBEventDispatcher extends AbstractTSDBPluginService {
 		}		
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>The async dispatcher and its executor are reported once per collection, with the publish plugin's stats
+	 * when publishing is enabled, otherwise with the search plugin's.</p>
+	 * @see org.helios.tsdb.plugins.service.AbstractTSDBPluginService#collectStats(org.helios.tsdb.plugins.event.PluginType, net.opentsdb.stats.StatsCollector)
+	 */
+	@Override
+	public void collectStats(PluginType pluginType, StatsCollector statsCollector) {
+		super.collectStats(pluginType, statsCollector);
+		if(asyncDispatcher==null || pluginType != (publishEnabled ? PluginType.PUBLISH : PluginType.SEARCH)) return;
+		asyncDispatcher.collectStats(statsCollector);
+		if(asyncExecutor!=null) {
+			statsCollector.addExtraTag("component", asyncDispatcher.getClass().getSimpleName());
+			try {
+				statsCollector.record("dispatcher.queue.depth", asyncExecutor.getQueue().size());
+				statsCollector.record("dispatcher.active", asyncExecutor.getActiveCount());
+				statsCollector.record("dispatcher.completed", asyncExecutor.getCompletedTaskCount());
+				if(asyncExecutor instanceof AsyncDispatcherExecutor) {
+					statsCollector.record("dispatcher.rejected", ((AsyncDispatcherExecutor)asyncExecutor).getRejectedExecutionCount());
+					statsCollector.record("dispatcher.uncaught", ((AsyncDispatcherExecutor)asyncExecutor).getUncaughtCount());
+				}
+			} finally {
+				statsCollector.clearExtraTag("component");
+			}
+		}
+	}
+	
 	/**
 	 * Loads the async dispatcher
 	 * @param asyncDispatcherClassName The async dispatcher class name
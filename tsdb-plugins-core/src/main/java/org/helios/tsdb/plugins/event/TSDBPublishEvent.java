@@ -41,6 +41,21 @@ public class TSDBPublishEvent extends TSDBEvent {
 		super();
 	}
 	
+	/**
+	 * Creates a new TSDBPublishEvent from an event
+	 * @param event the event to copy from
+	 */
+	public TSDBPublishEvent(TSDBEvent event) {
+		eventType = event.eventType;
+		metric = event.metric;
+		timestamp = event.timestamp;
+		longValue = event.longValue;
+		doubleValue = event.doubleValue;
+		tags = event.tags;
+		tsuidBytes = event.tsuidBytes;
+		enqueuedNanos = event.enqueuedNanos;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.tsdb.plugins.event.TSDBEvent#publishDataPoint(java.lang.String, long, double, java.util.Map, byte[])
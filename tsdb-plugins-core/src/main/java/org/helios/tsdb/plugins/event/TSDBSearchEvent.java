@@ -65,6 +65,7 @@ public class TSDBSearchEvent extends TSDBEvent {
 		tsuid = event.tsuid;
 		tsuidBytes = event.tsuidBytes;
 		uidMeta = event.uidMeta;
+		enqueuedNanos = event.enqueuedNanos;
 	}
 	
 	
@@ -0,0 +1,390 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.groovy;
+
+import groovy.lang.Binding;
+import groovy.lang.MissingPropertyException;
+import groovy.lang.Script;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+/**
+ * <p>Title: CompiledScript</p>
+ * <p>Description: One compiled version of a named groovy script. The script is compiled once into a class and each invoking thread
+ * gets its own script instance and {@link Binding}, so no script state is shared between threads. Entry point methods are resolved once
+ * per method name and arity and invoked directly, falling back to the script's dynamic dispatch only when the arguments need groovy coercion.
+ * When the script is recompiled, the new version is linked in through {@link #replace(CompiledScript)} so that {@link ScriptInvoker}s
+ * holding the old version swap over on their next call.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.groovy.CompiledScript</code></p>
+ */
+public class CompiledScript {
+	/** The name the script is registered under */
+	protected final String name;
+	/** The compiled script class */
+	protected final Class<? extends Script> scriptClass;
+	/** The URL the source was loaded from, null if the source was passed directly */
+	protected final URL sourceUrl;
+	/** The last modified timestamp of the source URL when the source was read */
+	protected final long sourceTimestamp;
+	/** The shared beans that each thread's binding falls back to */
+	protected final Map<String, Object> beans;
+	/** The resolved entry point methods keyed by method name and indexed by arity */
+	protected final Map<String, Method[]> entryPoints = new ConcurrentHashMap<String, Method[]>();
+	/** The script instance for each invoking thread */
+	protected final ThreadLocal<Script> instances = new ThreadLocal<Script>() {
+		@Override
+		protected Script initialValue() {
+			return newInstance();
+		}
+	};
+	/** The compiled version that replaced this one, null while this is the current version */
+	protected volatile CompiledScript replacement = null;
+	
+	/** Empty object array constant */
+	protected static final Object[] EMPTY_OBJ_ARR = {};
+	/** Empty method array constant for names with no direct entry point */
+	protected static final Method[] EMPTY_METHOD_ARR = {};
+	
+	/**
+	 * Creates a new CompiledScript
+	 * @param name The name the script is registered under
+	 * @param scriptClass The compiled script class
+	 * @param beans The shared beans that each thread's binding falls back to
+	 * @param sourceUrl The URL the source was loaded from, null if the source was passed directly
+	 * @param sourceTimestamp The last modified timestamp of the source URL when the source was read
+	 */
+	public CompiledScript(String name, Class<? extends Script> scriptClass, Map<String, Object> beans, URL sourceUrl, long sourceTimestamp) {
+		if(name==null || name.trim().isEmpty()) throw new IllegalArgumentException("The passed name was null or empty", new Throwable());
+		if(scriptClass==null) throw new IllegalArgumentException("The passed script class was null", new Throwable());
+		if(beans==null) throw new IllegalArgumentException("The passed beans were null", new Throwable());
+		this.name = name;
+		this.scriptClass = scriptClass;
+		this.beans = beans;
+		this.sourceUrl = sourceUrl;
+		this.sourceTimestamp = sourceTimestamp;
+	}
+	
+	/**
+	 * Creates a new CompiledScript for a script compiled from source passed directly
+	 * @param name The name the script is registered under
+	 * @param scriptClass The compiled script class
+	 * @param beans The shared beans that each thread's binding falls back to
+	 */
+	public CompiledScript(String name, Class<? extends Script> scriptClass, Map<String, Object> beans) {
+		this(name, scriptClass, beans, null, -1L);
+	}
+	
+	/**
+	 * Creates a new script instance with its own binding
+	 * @return a new script instance
+	 */
+	protected Script newInstance() {
+		final ScriptBinding binding = new ScriptBinding();
+		final Script script = InvokerHelper.createScript(scriptClass, binding);
+		binding.setVariable("bindings", binding);
+		return script;
+	}
+	
+	/**
+	 * Returns the calling thread's instance of this script
+	 * @return the calling thread's script instance
+	 */
+	public Script getInstance() {
+		return instances.get();
+	}
+	
+	/**
+	 * Returns the most recent compiled version of this script
+	 * @return the current version, which is this instance if it has not been replaced
+	 */
+	public CompiledScript current() {
+		CompiledScript cs = this;
+		CompiledScript next = cs.replacement;
+		while(next!=null) {
+			cs = next;
+			next = cs.replacement;
+		}
+		return cs;
+	}
+	
+	/**
+	 * Links the passed recompiled version in as the replacement for this one
+	 * @param newVersion The recompiled version of this script
+	 */
+	public void replace(CompiledScript newVersion) {
+		if(newVersion==null || newVersion==this) return;
+		replacement = newVersion;
+	}
+	
+	/**
+	 * Indicates if this version has been replaced by a recompiled version
+	 * @return true if this version has been replaced
+	 */
+	public boolean isReplaced() {
+		return replacement!=null;
+	}
+	
+	/**
+	 * Returns the directly invocable method for the passed name and arity
+	 * @param methodName The method name
+	 * @param arity The number of arguments
+	 * @return the method or null if the method name and arity is not declared exactly once by the script and must be dispatched dynamically
+	 */
+	public Method getEntryPoint(String methodName, int arity) {
+		Method[] byArity = entryPoints.get(methodName);
+		if(byArity==null) {
+			byArity = resolveEntryPoints(methodName);
+			entryPoints.put(methodName, byArity);
+		}
+		return arity < byArity.length ? byArity[arity] : null;
+	}
+	
+	/**
+	 * Resolves the methods declared by the script class with the passed name, indexed by arity. 
+	 * Overloads sharing an arity are left unresolved so groovy picks between them at call time.
+	 * @param methodName The method name
+	 * @return the resolved methods
+	 */
+	protected Method[] resolveEntryPoints(String methodName) {
+		int maxArity = -1;
+		final Method[] declared = scriptClass.getDeclaredMethods();
+		for(Method m: declared) {
+			if(!m.isSynthetic() && m.getName().equals(methodName)) {
+				maxArity = Math.max(maxArity, m.getParameterTypes().length);
+			}
+		}
+		if(maxArity==-1) return EMPTY_METHOD_ARR;
+		final Method[] byArity = new Method[maxArity+1];
+		final boolean[] ambiguous = new boolean[maxArity+1];
+		for(Method m: declared) {
+			if(m.isSynthetic() || !m.getName().equals(methodName)) continue;
+			final int arity = m.getParameterTypes().length;
+			if(byArity[arity]!=null || m.isVarArgs()) {
+				ambiguous[arity] = true;
+			} else {
+				byArity[arity] = m;
+			}
+		}
+		for(int i = 0; i <= maxArity; i++) {
+			if(ambiguous[i]) {
+				byArity[i] = null;
+			} else if(byArity[i]!=null && !Modifier.isPublic(byArity[i].getModifiers())) {
+				try { byArity[i].setAccessible(true); } catch (SecurityException sex) { byArity[i] = null; }
+			}
+		}
+		return byArity;
+	}
+	
+	/**
+	 * Invokes the named method on the calling thread's script instance
+	 * @param methodName The method name
+	 * @param args The method arguments
+	 * @return the method's return value
+	 */
+	public Object invoke(String methodName, Object...args) {
+		if(args==null) args = EMPTY_OBJ_ARR;
+		return invoke(getEntryPoint(methodName, args.length), methodName, args);
+	}
+	
+	/**
+	 * Invokes the passed entry point on the calling thread's script instance 
+	 * @param method The resolved entry point, or null to dispatch dynamically
+	 * @param methodName The method name
+	 * @param args The method arguments
+	 * @return the method's return value
+	 */
+	protected Object invoke(Method method, String methodName, Object[] args) {
+		final Script script = instances.get();
+		if(method!=null) {
+			try {
+				return method.invoke(script, args);
+			} catch (InvocationTargetException ite) {
+				throw rethrow(ite.getCause());
+			} catch (IllegalArgumentException iae) {
+				/* The arguments need groovy coercion, fall through to dynamic dispatch */
+			} catch (IllegalAccessException iae) {
+				/* Fall through to dynamic dispatch */
+			}
+		}
+		return script.invokeMethod(methodName, args);
+	}
+	
+	/**
+	 * Invokes the named method on the calling thread's script instance, directing the script's <b><code>out</code></b> and <b><code>err</code></b> to the passed streams for the call
+	 * @param methodName The method name
+	 * @param os The output stream the script will write to when it calls <p><code>out</code></p>, ignored if null
+	 * @param es The output stream the script will write to when it calls <p><code>err</code></p>, ignored if null
+	 * @param args The method arguments
+	 * @return the method's return value
+	 */
+	public Object invoke(String methodName, OutputStream os, OutputStream es, Object...args) {
+		if(os==null && es==null) return invoke(methodName, args);
+		final Binding binding = instances.get().getBinding();
+		setStreams(binding, os, es);
+		try {
+			return invoke(methodName, args);
+		} finally {
+			clearStreams(binding, os, es);
+		}
+	}
+	
+	/**
+	 * Runs the script body on the calling thread's script instance
+	 * @param os The output stream the script will write to when it calls <p><code>out</code></p>, ignored if null
+	 * @param es The output stream the script will write to when it calls <p><code>err</code></p>, ignored if null
+	 * @param args The arguments bound to the script as <b><code>args</code></b>
+	 * @return the script's return value
+	 */
+	public Object run(OutputStream os, OutputStream es, Object...args) {
+		final Script script = instances.get();
+		final Binding binding = script.getBinding();
+		binding.setVariable("args", args==null ? EMPTY_OBJ_ARR : args);
+		setStreams(binding, os, es);
+		try {
+			return script.run();
+		} finally {
+			clearStreams(binding, os, es);
+		}
+	}
+	
+	/**
+	 * Binds the passed streams as the script's <b><code>out</code></b> and <b><code>err</code></b>
+	 * @param binding The binding to set the streams in
+	 * @param os The out stream, ignored if null
+	 * @param es The err stream, ignored if null
+	 */
+	protected static void setStreams(Binding binding, OutputStream os, OutputStream es) {
+		if(os!=null) binding.setVariable("out", new PrintStream(os, true));
+		if(es!=null) binding.setVariable("err", new PrintStream(es, true));
+	}
+	
+	/**
+	 * Removes the streams bound by {@link #setStreams(Binding, OutputStream, OutputStream)}
+	 * @param binding The binding to remove the streams from
+	 * @param os The out stream, ignored if null
+	 * @param es The err stream, ignored if null
+	 */
+	protected static void clearStreams(Binding binding, OutputStream os, OutputStream es) {
+		if(os!=null) binding.getVariables().remove("out");
+		if(es!=null) binding.getVariables().remove("err");
+	}
+	
+	/**
+	 * Rethrows the cause of a failed invocation unchecked
+	 * @param t The cause of the failed invocation
+	 * @return never returns
+	 */
+	protected static RuntimeException rethrow(Throwable t) {
+		if(t instanceof RuntimeException) throw (RuntimeException)t;
+		if(t instanceof Error) throw (Error)t;
+		throw new RuntimeException(t);
+	}
+
+	/**
+	 * Returns the name the script is registered under
+	 * @return the script name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the compiled script class
+	 * @return the script class
+	 */
+	public Class<? extends Script> getScriptClass() {
+		return scriptClass;
+	}
+
+	/**
+	 * Returns the URL the source was loaded from
+	 * @return the source URL or null if the source was passed directly
+	 */
+	public URL getSourceUrl() {
+		return sourceUrl;
+	}
+
+	/**
+	 * Returns the last modified timestamp of the source URL when the source was read
+	 * @return the source timestamp or -1 if the source was passed directly
+	 */
+	public long getSourceTimestamp() {
+		return sourceTimestamp;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CompiledScript [name=" + name + ", class=" + scriptClass.getName() + (sourceUrl==null ? "" : ", url=" + sourceUrl) + "]";
+	}
+	
+	/**
+	 * <p>Title: ScriptBinding</p>
+	 * <p>Description: A per-thread binding whose own variables shadow the shared beans. Variables set by the script stay in this binding.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.groovy.CompiledScript.ScriptBinding</code></p>
+	 */
+	protected class ScriptBinding extends Binding {
+		
+		/**
+		 * {@inheritDoc}
+		 * @see groovy.lang.Binding#getVariable(java.lang.String)
+		 */
+		@Override
+		public Object getVariable(String varName) {
+			final Map<?, ?> vars = getVariables();
+			Object value = vars.get(varName);
+			if(value==null && !vars.containsKey(varName)) {
+				value = beans.get(varName);
+				if(value==null) throw new MissingPropertyException(varName, getClass());
+			}
+			return value;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see groovy.lang.Binding#hasVariable(java.lang.String)
+		 */
+		@Override
+		public boolean hasVariable(String varName) {
+			return super.hasVariable(varName) || beans.containsKey(varName);
+		}
+	}
+}
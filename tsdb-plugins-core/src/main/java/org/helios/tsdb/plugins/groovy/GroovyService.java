@@ -10,7 +10,6 @@ import groovy.lang.Script;
 
 import java.io.File;
 import java.io.OutputStream;
-import java.io.PrintStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -25,7 +24,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -38,6 +39,7 @@ import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.control.customizers.ImportCustomizer;
 import org.helios.tsdb.plugins.service.IPluginContextResourceListener;
 import org.helios.tsdb.plugins.service.PluginContext;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
 import org.helios.tsdb.plugins.util.SystemClock;
 import org.helios.tsdb.plugins.util.URLHelper;
@@ -53,7 +55,7 @@ import org.slf4j.LoggerFactory;
  */
 public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceMXBean {
 	/** A map of compiled scripts keyed by an arbitrary reference name */
-	protected final Map<String, Script> compiledScripts = new ConcurrentHashMap<String, Script>();
+	protected final Map<String, CompiledScript> compiledScripts = new ConcurrentHashMap<String, CompiledScript>();
 	
 	/** The instance logger */
 	protected final Logger log = LoggerFactory.getLogger(getClass());
@@ -74,7 +76,7 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	/** A groovy classloader for compiling scripts */
 	protected final GroovyClassLoader groovyClassLoader; 
 	/** The shared bindings */
-	protected final Map<String, Object> beans = new HashMap<String, Object>();
+	protected final Map<String, Object> beans = new ConcurrentHashMap<String, Object>();
 	
 	/** A set of registered class listeners */
 	protected final Set<GroovyLoadedScriptListener> listeners = new CopyOnWriteArraySet<GroovyLoadedScriptListener>();
@@ -98,6 +100,14 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	/** The initial and default imports customizer for the compiler configuration */
 	protected final ImportCustomizer importCustomizer = new ImportCustomizer(); 
 	
+	/** The period in ms. at which the sources of scripts compiled from URLs are checked for changes */
+	protected final long sourceCheckPeriod;
+	
+	/** The conf property name for the period in ms. at which the sources of scripts compiled from URLs are checked for changes. Zero or less disables the check */
+	public static final String SOURCE_CHECK_PERIOD_PROP = "helios.groovy.sourcecheck.period";
+	/** The default period in ms. at which the sources of scripts compiled from URLs are checked for changes */
+	public static final long DEFAULT_SOURCE_CHECK_PERIOD = 5000L;
+	
 	/**
 	 * Creates a new GroovyService
 	 * @param pluginContext The shared plugin context
@@ -107,6 +117,7 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 		this.pluginClassLoader = pluginContext.getSupportClassLoader();
 		this.tsdb = pluginContext.getTsdb();
 		this.config = pluginContext.getExtracted();
+		sourceCheckPeriod = ConfigurationHelper.getLongSystemThenEnvProperty(SOURCE_CHECK_PERIOD_PROP, DEFAULT_SOURCE_CHECK_PERIOD, config);
 		pluginContext.setResource("groovy-service", this);
 		objectName = JMXHelper.objectName(getClass().getPackage().getName() + ":service=" + getClass().getSimpleName());
 		compilerConfigurationObjectName = JMXHelper.objectName(objectName.toString() + ",type=CompilerConfiguration");
@@ -131,16 +142,27 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 		pluginContext.addResourceListener(new IPluginContextResourceListener() {
 			@Override
 			public void onResourceRegistered(String name, Object resource) {
-				beans.put(name, resource);				
+				putBean(name, resource);				
 			}
 		});
-		beans.put("pluginContext", pluginContext);
-		beans.put("tsdb", tsdb);
+		putBean("pluginContext", pluginContext);
+		putBean("tsdb", tsdb);
 		for(String name: pluginContext.getResourceNames()) {
-			beans.put(name, pluginContext.getResource(name.toLowerCase(), Object.class));
+			putBean(name, pluginContext.getResource(name.toLowerCase(), Object.class));
 		}		
 	}
 	
+	/**
+	 * Adds a shared bean to the script bindings, ignoring nulls
+	 * @param name The bean name
+	 * @param bean The bean
+	 */
+	protected void putBean(String name, Object bean) {
+		if(name!=null && bean!=null) {
+			beans.put(name, bean);
+		}
+	}
+	
 	
 
 	/**
@@ -294,17 +316,8 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	 * @return the value returned from the script
 	 */
 	public Object invoke(String name, String methodName, OutputStream os, OutputStream es, Object...args) {
-		if(name==null || name.trim().isEmpty() )  throw new IllegalArgumentException("The passed script name was null or empty", new Throwable());
 		if(methodName==null || methodName.trim().isEmpty() )  throw new IllegalArgumentException("The passed method name was null or empty", new Throwable());
-		Script script = compiledScripts.get(name);
-		if(script==null)  throw new IllegalArgumentException("No script found for passed script name [" + name + "]", new Throwable());
-		if(os!=null) {
-			script.setProperty("out", new PrintStream(os, true));
-		}
-		if(es!=null) {
-			script.setProperty("err", new PrintStream(es, true));
-		}		
-		return script.invokeMethod(methodName, args);
+		return getCompiledScript(name).invoke(methodName, os, es, args);
 	}
 	
 	/**
@@ -315,11 +328,8 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	 * @return the value returned from the script
 	 */
 	public Object invoke(String name, String methodName, Object...args) {
-		if(name==null || name.trim().isEmpty() )  throw new IllegalArgumentException("The passed script name was null or empty", new Throwable());
 		if(methodName==null || methodName.trim().isEmpty() )  throw new IllegalArgumentException("The passed method name was null or empty", new Throwable());
-		Script script = compiledScripts.get(name);
-		if(script==null)  throw new IllegalArgumentException("No script found for passed script name [" + name + "]", new Throwable());
-		return invoke(name, methodName, args);
+		return getCompiledScript(name).invoke(methodName, args);
 	}
 	
 
@@ -327,6 +337,30 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 		return invoke(name, methodName, EMPTY_OBJ_ARR);
 	}
 	
+	/**
+	 * Returns an invoker bound to the named method of the named script for repeated invocation.
+	 * The invoker follows the script across recompilations.
+	 * @param name The name of the script
+	 * @param methodName The name of the method
+	 * @param arity The number of arguments the method will be invoked with
+	 * @return the bound invoker
+	 */
+	public ScriptInvoker getInvoker(String name, String methodName, int arity) {
+		return new ScriptInvoker(getCompiledScript(name), methodName, arity);
+	}
+	
+	/**
+	 * Returns the current compiled version of the named script
+	 * @param name The name of the script
+	 * @return the compiled script
+	 */
+	public CompiledScript getCompiledScript(String name) {
+		if(name==null || name.trim().isEmpty() )  throw new IllegalArgumentException("The passed script name was null or empty", new Throwable());
+		CompiledScript script = compiledScripts.get(name);
+		if(script==null)  throw new IllegalArgumentException("No script found for passed script name [" + name + "]", new Throwable());
+		return script;
+	}
+	
 	/**
 	 * Runs the named compiled script 
 	 * @param scriptName The name of the script to run
@@ -335,12 +369,9 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	 */
 	public Object invokeScript(String scriptName, Object...args) {
 		if(scriptName==null || scriptName.trim().isEmpty()) throw new IllegalArgumentException("ScriptName was null or empty");
-		Script script = this.compiledScripts.get(scriptName);
+		CompiledScript script = this.compiledScripts.get(scriptName);
 		if(script==null) throw new RuntimeException("No Script found for ScriptName [" + scriptName + "]");
-		Binding binds = getBindings();
-		binds.setProperty("args", args);
-		script.setBinding(binds);
-		return script.run();
+		return script.run(null, null, args);
 	}
 	
 	
@@ -354,21 +385,7 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	 * @return the value returned from the script
 	 */
 	public Object run(String name, OutputStream os, OutputStream es, Object...args) {
-		if(name==null || name.trim().isEmpty() )  throw new IllegalArgumentException("The passed script name was null or empty", new Throwable());
-		Script script = compiledScripts.get(name);
-		if(script==null)  throw new IllegalArgumentException("No script found for passed script name [" + name + "]", new Throwable());
-		if(args==null || args.length==0) {
-			script.setProperty("args", EMPTY_OBJ_ARR);
-		} else {
-			script.setProperty("args", args);
-		}
-		if(os!=null) {
-			script.setProperty("out", new PrintStream(os, true));
-		}
-		if(es!=null) {
-			script.setProperty("err", new PrintStream(es, true));
-		}		
-		return script.run();
+		return getCompiledScript(name).run(os, es, args);
 	}
 	
 	/** A synthetic script name serial generator */
@@ -380,34 +397,45 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	 */
 	@Override
 	public String compile(String scriptName, String source) {
+		return compile(scriptName, source, null, -1L);
+	}
+	
+	/**
+	 * Compiles the passed source into a script class and registers it under the passed name, replacing any prior version
+	 * @param scriptName The name to register the script under. If null, the script's {@link ScriptName} or a synthetic name is used.
+	 * @param source The script source
+	 * @param sourceUrl The URL the source was read from, null if the source was passed directly
+	 * @param sourceTimestamp The last modified timestamp of the source URL when the source was read
+	 * @return the name the script was registered under
+	 */
+	@SuppressWarnings("unchecked")
+	protected String compile(String scriptName, String source, URL sourceUrl, long sourceTimestamp) {
 		if(scriptName!=null && scriptName.trim().isEmpty()) scriptName=null;
-		//else scriptName = scriptName.trim();
 		if(source==null || source.length()==0) throw new IllegalArgumentException("The passed source was null or empty", new Throwable());	
-		//source = source.replace("\\n", "\n");
-		Script script = null;
+		Class<? extends Script> clazz = null;
 		String name = scriptName!=null ? scriptName.trim() : "groovy#" + nameSerial.incrementAndGet();
-//		GroovyClassLoader gcl = new GroovyClassLoader(Thread.currentThread().getContextClassLoader(), compilerConfiguration);
 		try {
-			script = new GroovyShell(compilerConfiguration).parse(source, name);
-//			Class<?> clazz = gcl.parseClass(source);
-			ScriptName sn = script.getClass().getAnnotation(ScriptName.class);
+			Class<?> parsed = new GroovyShell(compilerConfiguration).getClassLoader().parseClass(source, name);
+			if(!Script.class.isAssignableFrom(parsed)) throw new IllegalArgumentException("The compiled class [" + parsed.getName() + "] is not a Script");
+			clazz = (Class<? extends Script>)parsed;
+			ScriptName sn = clazz.getAnnotation(ScriptName.class);
 			if(sn!=null && !sn.value().trim().isEmpty()) {
 				name = sn.value().trim();
 			}
-			log.info("Compiled script named [" + name + "]. Class is: [" + script.getClass().getName() + "]");
+			log.info("Compiled script named [" + name + "]. Class is: [" + clazz.getName() + "]");
 		} catch (Exception ex) {
 			ex.printStackTrace(System.err);
 			throw new RuntimeException(ex);
-		} finally {
-//			try { gcl.close(); } catch (Exception ex) {}
 		}
-		Binding bindings = getBindings();
-		script.setBinding(bindings);
-		script.setProperty("bindings", bindings);
-		compiledScripts.put(name, script);
-		
-		Class<?> clazz = script.getClass();//groovyClassLoader.parseClass(source);
-		scanLoadedClass(clazz, script);
+		CompiledScript compiled = new CompiledScript(name, clazz, beans, sourceUrl, sourceTimestamp);
+		CompiledScript prior = compiledScripts.put(name, compiled);
+		if(prior!=null) {
+			prior.replace(compiled);
+		}
+		if(sourceUrl!=null) {
+			startSourceCheck();
+		}
+		scanLoadedClass(clazz, compiled.getInstance());
 		return name;
 	}
 	
@@ -436,8 +464,51 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 	@Override
 	public String compileFromUrl(String sourceUrl) {
 		URL url = URLHelper.toURL(sourceUrl);
+		long timestamp = URLHelper.getLastModified(url);
 		String source = URLHelper.getTextFromURL(url);
-		return compile(source);
+		return compile(null, source, url, timestamp);
+	}
+	
+	/**
+	 * Starts the periodic check for changes in the sources of scripts compiled from URLs, if it is enabled and not started
+	 */
+	protected synchronized void startSourceCheck() {
+		if(scheduler!=null || sourceCheckPeriod < 1) return;
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "GroovyScriptSourceCheck");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkSources();
+			}
+		}, sourceCheckPeriod, sourceCheckPeriod, TimeUnit.MILLISECONDS);
+		log.info("Started script source check with a period of [" + sourceCheckPeriod + "] ms.");
+	}
+	
+	/**
+	 * Recompiles each script compiled from a URL whose source has been modified since it was read.
+	 * The prior version stays in place if the recompile fails.
+	 */
+	protected void checkSources() {
+		for(CompiledScript script: compiledScripts.values()) {
+			URL url = script.getSourceUrl();
+			if(url==null) continue;
+			try {
+				long timestamp = URLHelper.getLastModified(url);
+				if(timestamp > script.getSourceTimestamp()) {
+					log.info("Source of script [" + script.getName() + "] at [" + url + "] changed. Recompiling");
+					compile(script.getName(), URLHelper.getTextFromURL(url), url, timestamp);
+				}
+			} catch (Exception ex) {
+				log.warn("Failed to recompile script [" + script.getName() + "] from [" + url + "]", ex);
+			}
+		}
 	}
 	
 	
@@ -571,11 +642,11 @@ public class GroovyService implements GroovyLoadedScriptListener, GroovyServiceM
 		if(beans.isEmpty()) {
 			synchronized(beans) {
 				if(beans.isEmpty()) {
-					beans.put("jmxserver", JMXHelper.getHeliosMBeanServer());
-					beans.put("jmxhelper", JMXHelper.class);
-					beans.put("tsdb", tsdb);
-					beans.put("pluginContext", pluginContext);
-					beans.put("sysclock", SystemClock.class);
+					putBean("jmxserver", JMXHelper.getHeliosMBeanServer());
+					putBean("jmxhelper", JMXHelper.class);
+					putBean("tsdb", tsdb);
+					putBean("pluginContext", pluginContext);
+					putBean("sysclock", SystemClock.class);
 					
 //					for(String beanName: applicationContext.getBeanDefinitionNames()) {
 //						Object bean = applicationContext.getBean(beanName);
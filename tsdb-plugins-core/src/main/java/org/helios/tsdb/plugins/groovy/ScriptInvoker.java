@@ -0,0 +1,122 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.groovy;
+
+import java.lang.reflect.Method;
+
+/**
+ * <p>Title: ScriptInvoker</p>
+ * <p>Description: A bound call site for one method of a named script, intended to be acquired once and invoked many times,
+ * such as once per data point. The entry point is resolved when the invoker is bound and again only when the script has been recompiled,
+ * so a steady state invocation is a volatile read, a thread local lookup and a direct method call.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.groovy.ScriptInvoker</code></p>
+ */
+public class ScriptInvoker {
+	/** The method name */
+	protected final String methodName;
+	/** The number of arguments the method is invoked with */
+	protected final int arity;
+	/** The current binding */
+	protected volatile Bound bound;
+	
+	/**
+	 * Creates a new ScriptInvoker
+	 * @param script The compiled script to bind to
+	 * @param methodName The method name
+	 * @param arity The number of arguments the method will be invoked with
+	 */
+	public ScriptInvoker(CompiledScript script, String methodName, int arity) {
+		if(script==null) throw new IllegalArgumentException("The passed script was null", new Throwable());
+		if(methodName==null || methodName.trim().isEmpty()) throw new IllegalArgumentException("The passed method name was null or empty", new Throwable());
+		if(arity < 0) throw new IllegalArgumentException("Invalid arity [" + arity + "]", new Throwable());
+		this.methodName = methodName.trim();
+		this.arity = arity;
+		bound = new Bound(script.current());
+	}
+	
+	/**
+	 * Invokes the bound method on the calling thread's instance of the current version of the script
+	 * @param args The method arguments, which should number the invoker's arity
+	 * @return the method's return value
+	 */
+	public Object invoke(Object...args) {
+		Bound b = bound;
+		if(b.script.isReplaced()) {
+			b = new Bound(b.script.current());
+			bound = b;
+		}
+		if(args==null) args = CompiledScript.EMPTY_OBJ_ARR;
+		return b.script.invoke(args.length==arity ? b.method : null, methodName, args);
+	}
+	
+	/**
+	 * Returns the compiled script version the invoker is currently bound to
+	 * @return the bound compiled script
+	 */
+	public CompiledScript getScript() {
+		return bound.script;
+	}
+	
+	/**
+	 * Returns the method name
+	 * @return the method name
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * Returns the number of arguments the method is invoked with
+	 * @return the arity
+	 */
+	public int getArity() {
+		return arity;
+	}
+
+	/**
+	 * <p>Title: Bound</p>
+	 * <p>Description: A compiled script version and the entry point resolved against it, swapped as one so they are always consistent</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.groovy.ScriptInvoker.Bound</code></p>
+	 */
+	protected class Bound {
+		/** The compiled script version */
+		final CompiledScript script;
+		/** The resolved entry point, null if the method is dispatched dynamically */
+		final Method method;
+		
+		/**
+		 * Creates a new Bound
+		 * @param script The compiled script version
+		 */
+		Bound(CompiledScript script) {
+			this.script = script;
+			this.method = script.getEntryPoint(methodName, arity);
+		}
+	}
+}
@@ -31,9 +31,13 @@ import javax.management.ObjectName;
 import net.opentsdb.core.TSDB;
 import net.opentsdb.stats.StatsCollector;
 
+import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.handlers.logging.EventTracer;
 import org.helios.tsdb.plugins.handlers.logging.LoggerManager;
 import org.helios.tsdb.plugins.handlers.logging.LoggerManagerFactory;
 import org.helios.tsdb.plugins.service.PluginContext;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder.Stage;
 import org.helios.tsdb.plugins.util.JMXHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,11 +50,13 @@ import org.slf4j.LoggerFactory;
  * <p><code>org.helios.tsdb.plugins.handlers.AbstractTSDBEventHandler</code></p>
  */
 
-public class AbstractTSDBEventHandler implements IEventHandler, TSDBServiceMXBean {
+public class AbstractTSDBEventHandler implements IEventHandler, TSDBEventHandlerMXBean {
 	/** The handler logger */
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 	/** The handler logger level manager */
 	protected final LoggerManager loggerManager = LoggerManagerFactory.getLoggerManager(getClass());
+	/** The handler hot path event tracer */
+	protected final EventTracer tracer = LoggerManagerFactory.getEventTracer(getClass());
 	
 	/** The TSDB instance */
 	protected TSDB tsdb;
@@ -62,6 +68,8 @@ public class AbstractTSDBEventHandler implements IEventHandler, TSDBServiceMXBea
 	protected PluginContext pluginContext = null;
 	/** The object name for this service's management interface */
 	protected ObjectName objectName = JMXHelper.objectName("tsdb.plugin.service:name=" + getClass().getSimpleName());
+	/** The nanosecond latency recorder for this handler */
+	protected EventLatencyRecorder latency = null;
 	
 	/**
 	 * Creates a new AbstractTSDBEventHandler
@@ -80,8 +88,32 @@ public class AbstractTSDBEventHandler implements IEventHandler, TSDBServiceMXBea
 		tsdb = pluginContext.getTsdb();
 		config = pluginContext.getExtracted();
 		supportClassLoader = pluginContext.getSupportClassLoader();
+		latency = new EventLatencyRecorder(getClass().getSimpleName());
 		JMXHelper.registerMBean(this, objectName);
 	}
+	
+	/**
+	 * Starts timing the handling of the passed event, recording the time it spent 
+	 * queued in the dispatcher if the dispatcher stamped it on enqueue
+	 * @param event The event about to be handled
+	 * @return the handler start time in ns. to pass to {@link #elapsedTime(TSDBEvent, long)}
+	 */
+	protected long startTimer(TSDBEvent event) {
+		final long now = System.nanoTime();
+		if(latency!=null && event.enqueuedNanos!=-1) {
+			latency.record(event.eventType, Stage.QUEUE_WAIT, now-event.enqueuedNanos);
+		}
+		return now;
+	}
+	
+	/**
+	 * Registers the elapsed handling time of an event
+	 * @param event The event processed
+	 * @param elapsed The elapsed time of the operation in ns.
+	 */
+	protected void elapsedTime(TSDBEvent event, long elapsed) {
+		if(latency!=null) latency.record(event.eventType, Stage.HANDLER, elapsed);
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -89,6 +121,7 @@ public class AbstractTSDBEventHandler implements IEventHandler, TSDBServiceMXBea
 	 */
 	@Override
 	public void shutdown() {
+		if(latency!=null) latency.unregister();
 		JMXHelper.unregisterMBean(objectName);		
 	}
 
@@ -98,8 +131,8 @@ public class AbstractTSDBEventHandler implements IEventHandler, TSDBServiceMXBea
 	 */
 	@Override
 	public void collectStats(StatsCollector collector) {
-		// To be optionally implemented by concrete class
-		
+		// To be optionally extended by concrete class
+		if(latency!=null) latency.collectStats(collector);
 	}
 
 	/**
@@ -130,4 +163,94 @@ public class AbstractTSDBEventHandler implements IEventHandler, TSDBServiceMXBea
 	}
 
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#isEventTraceEnabled()
+	 */
+	@Override
+	public boolean isEventTraceEnabled() {
+		return tracer.isTracing();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#setEventTraceEnabled(boolean)
+	 */
+	@Override
+	public void setEventTraceEnabled(boolean enabled) {
+		tracer.setTracing(enabled);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#getEventTraceSampleRate()
+	 */
+	@Override
+	public int getEventTraceSampleRate() {
+		return tracer.getSampleRate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#setEventTraceSampleRate(int)
+	 */
+	@Override
+	public void setEventTraceSampleRate(int sampleRate) {
+		tracer.setSampleRate(sampleRate);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#getEventTraceMaxRate()
+	 */
+	@Override
+	public int getEventTraceMaxRate() {
+		return tracer.getMaxPerSecond();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#setEventTraceMaxRate(int)
+	 */
+	@Override
+	public void setEventTraceMaxRate(int maxPerSecond) {
+		tracer.setMaxPerSecond(maxPerSecond);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#getEventTraceThrottled()
+	 */
+	@Override
+	public long getEventTraceThrottled() {
+		return tracer.getThrottledCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#dumpEventTrace(int)
+	 */
+	@Override
+	public String[] dumpEventTrace(int max) {
+		return tracer.dump(max);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#writeEventTrace(java.lang.String)
+	 */
+	@Override
+	public int writeEventTrace(String fileName) {
+		return tracer.writeTo(fileName);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean#clearEventTrace()
+	 */
+	@Override
+	public void clearEventTrace() {
+		tracer.clear();
+	}
+
 }
@@ -25,7 +25,7 @@ public class EmptyPublishEventHandler extends AbstractTSDBEventHandler implement
 	 */
 	@Override
 	public void onEvent(TSDBEvent event, long sequence, boolean endOfBatch) throws Exception {
-		log.info("Processing Sequence {} for Event [{}]", sequence, event);
+		if(tracer.isTracing()) tracer.trace(event, sequence);
 		if(event.eventType==null || !event.eventType.isForPulisher()) return;		
 //		if (event.eventType == TSDBEventType.DPOINT_DOUBLE) {
 //			publishDataPoint(event.metric, event.timestamp, event.doubleValue, event.tags, event.tsuidBytes);
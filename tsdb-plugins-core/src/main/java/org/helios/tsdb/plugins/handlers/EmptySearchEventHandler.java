@@ -28,12 +28,10 @@ import net.opentsdb.stats.StatsCollector;
 
 import org.cliffc.high_scale_lib.Counter;
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
-import org.helios.jmx.util.unsafe.collections.ConcurrentLongSlidingWindow;
 import org.helios.tsdb.plugins.event.TSDBEvent;
 import org.helios.tsdb.plugins.event.TSDBEventType;
 import org.helios.tsdb.plugins.event.TSDBSearchEvent;
 import org.helios.tsdb.plugins.service.PluginContext;
-import org.helios.tsdb.plugins.util.ConfigurationHelper;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
@@ -50,13 +48,6 @@ import com.lmax.disruptor.EventHandler;
 public class EmptySearchEventHandler  extends AbstractTSDBEventHandler implements EventHandler<TSDBEvent>, ISearchEventHandler {
 	/** A map of invocation counts for each operation handled by this handler */
 	protected final NonBlockingHashMap<TSDBEventType, Counter> invocationCounts = new NonBlockingHashMap<TSDBEventType, Counter>(TSDBEventType.values().length);
-	/** A map of elapsed time sliding windows for each operation handled by this handler */
-	protected final NonBlockingHashMap<TSDBEventType, ConcurrentLongSlidingWindow> invocationTimes = new NonBlockingHashMap<TSDBEventType, ConcurrentLongSlidingWindow>(TSDBEventType.values().length);
-
-	/** The config property name to specify the sliding window size for operation elapsed times */
-	public static final String ES_SW_SIZE = "es.tsd.search.elasticsearch.sliding.size";
-	/** The default sliding window size for operation elapsed times */
-	public static final int DEFAULT_ES_SW_SIZE = 100;
 	
 	/** Indicates if this handler is intended to handle 
 	 * {@link net.opentsdb.search.SearchPlugin#executeQuery(net.opentsdb.search.SearchQuery)} 
@@ -78,13 +69,11 @@ public class EmptySearchEventHandler  extends AbstractTSDBEventHandler implement
 	@Override
 	public void initialize(PluginContext pc) {
 		super.initialize(pc);
-		int swSize = ConfigurationHelper.getIntSystemThenEnvProperty(ES_SW_SIZE, DEFAULT_ES_SW_SIZE, pc.getExtracted());
 		StringBuilder b = new StringBuilder("\nMetric Collection Keys:\n========================");
 		for(TSDBEventType et: TSDBEventType.values()) {
 			if(et.isForSearch()) {
 				b.append("\n\t").append(et.name());
 				invocationCounts.put(et, new Counter());
-				invocationTimes.put(et, new ConcurrentLongSlidingWindow(swSize));
 			}
 		}
 		log.info(b.toString());
@@ -97,15 +86,6 @@ public class EmptySearchEventHandler  extends AbstractTSDBEventHandler implement
 	protected void incrCount(TSDBEvent event) {
 		invocationCounts.get(event.eventType).increment();		
 	}	
-	
-	/**
-	 * Registers the elapsed time of an operation
-	 * @param event The event processed
-	 * @param elapsed The elapsed time of the operation in ms.
-	 */
-	protected void elapsedTime(TSDBEvent event, long elapsed) {
-		invocationTimes.get(event.eventType).insert(elapsed);
-	}
 
 	/**
 	 * {@inheritDoc}
@@ -159,7 +139,7 @@ public class EmptySearchEventHandler  extends AbstractTSDBEventHandler implement
 	 */
 	@Override
 	public void shutdown() {
-		
+		super.shutdown();
 	}
 
 	/**
@@ -168,7 +148,7 @@ public class EmptySearchEventHandler  extends AbstractTSDBEventHandler implement
 	 */
 	@Override
 	public void collectStats(StatsCollector collector) {
-		
+		super.collectStats(collector);
 	}
 
 	/**
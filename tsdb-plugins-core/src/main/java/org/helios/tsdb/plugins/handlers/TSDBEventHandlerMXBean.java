@@ -0,0 +1,97 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.handlers;
+
+/**
+ * <p>Title: TSDBEventHandlerMXBean</p>
+ * <p>Description: MXBean management interface for event handlers, adding control of the hot path event trace</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean</code></p>
+ */
+
+public interface TSDBEventHandlerMXBean extends TSDBServiceMXBean {
+	/**
+	 * Indicates if the hot path event trace is enabled for this event handler
+	 * @return true if event tracing is enabled, false otherwise
+	 * @see org.helios.tsdb.plugins.handlers.logging.EventTracer#isTracing()
+	 */
+	public boolean isEventTraceEnabled();
+	
+	/**
+	 * Enables or disables the hot path event trace for this event handler
+	 * @param enabled true to enable, false to disable
+	 */
+	public void setEventTraceEnabled(boolean enabled);
+	
+	/**
+	 * Returns the event trace sample rate (every nth event is traced)
+	 * @return the event trace sample rate
+	 */
+	public int getEventTraceSampleRate();
+	
+	/**
+	 * Sets the event trace sample rate
+	 * @param sampleRate trace every nth event
+	 */
+	public void setEventTraceSampleRate(int sampleRate);
+	
+	/**
+	 * Returns the maximum number of event trace records written per second
+	 * @return the maximum event trace record rate
+	 */
+	public int getEventTraceMaxRate();
+	
+	/**
+	 * Sets the maximum number of event trace records written per second
+	 * @param maxPerSecond the maximum event trace record rate
+	 */
+	public void setEventTraceMaxRate(int maxPerSecond);
+	
+	/**
+	 * Returns the number of sampled events dropped by the event trace rate limiter
+	 * @return the number of throttled events
+	 */
+	public long getEventTraceThrottled();
+	
+	/**
+	 * Formats the most recent event trace records
+	 * @param max The maximum number of records to return
+	 * @return the formatted records, oldest first
+	 */
+	public String[] dumpEventTrace(int max);
+	
+	/**
+	 * Writes the event trace to the named file in binary form
+	 * @param fileName The file to write to
+	 * @return the number of records written
+	 */
+	public int writeEventTrace(String fileName);
+	
+	/**
+	 * Discards all event trace records
+	 */
+	public void clearEventTrace();
+}
@@ -33,6 +33,7 @@ import net.opentsdb.core.TSDB;
 import org.helios.tsdb.plugins.event.TSDBEvent;
 import org.helios.tsdb.plugins.event.TSDBPublishEvent;
 import org.helios.tsdb.plugins.handlers.EmptyPublishEventHandler;
+import org.helios.tsdb.plugins.handlers.IRetainingEventHandler;
 import org.helios.tsdb.plugins.service.PluginContext;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
 
@@ -44,7 +45,7 @@ import org.helios.tsdb.plugins.util.ConfigurationHelper;
  * <p><code>org.helios.tsdb.plugins.handlers.impl.QueuedResultPublishEventHandler</code></p>
  */
 
-public class QueuedResultPublishEventHandler extends EmptyPublishEventHandler {
+public class QueuedResultPublishEventHandler extends EmptyPublishEventHandler implements IRetainingEventHandler {
 	/** The singleton instance */
 	private static volatile QueuedResultPublishEventHandler instance = null;
 	/** The singleton instance ctor lock */
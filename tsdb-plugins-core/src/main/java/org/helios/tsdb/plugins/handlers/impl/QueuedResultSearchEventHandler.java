@@ -30,6 +30,7 @@ import java.util.concurrent.BlockingQueue;
 import org.helios.tsdb.plugins.event.TSDBEvent;
 import org.helios.tsdb.plugins.event.TSDBSearchEvent;
 import org.helios.tsdb.plugins.handlers.EmptySearchEventHandler;
+import org.helios.tsdb.plugins.handlers.IRetainingEventHandler;
 import org.helios.tsdb.plugins.service.PluginContext;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
 
@@ -41,7 +42,7 @@ import org.helios.tsdb.plugins.util.ConfigurationHelper;
  * <p><code>org.helios.tsdb.plugins.handlers.impl.QueuedResultSearchEventHandler</code></p>
  */
 
-public class QueuedResultSearchEventHandler extends EmptySearchEventHandler {
+public class QueuedResultSearchEventHandler extends EmptySearchEventHandler implements IRetainingEventHandler {
 	/** The singleton instance */
 	protected static volatile QueuedResultSearchEventHandler instance = null;
 	/** The singleton instance ctor lock */
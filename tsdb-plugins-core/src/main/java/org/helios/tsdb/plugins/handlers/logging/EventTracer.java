@@ -0,0 +1,330 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.handlers.logging;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.event.TSDBEventType;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+
+/**
+ * <p>Title: EventTracer</p>
+ * <p>Description: A sampled, rate limited trace of the events passing through a handler's hot path, written as fixed size binary
+ * records into a pre-allocated ring buffer rather than formatted through the logging framework. Records are only formatted when the
+ * trace is dumped. Callers guard with {@link #isTracing()} so a disabled tracer costs a single volatile read:</p>
+ * <pre>
+ * 	if(tracer.isTracing()) tracer.trace(event, sequence);
+ * </pre>
+ * <p>Each record is guarded by a stamp, seqlock style: the writer zeroes the stamp, writes the record with ordered stores and 
+ * then publishes the stamp as the record index + 1. Readers copy a record only if they see the same stamp before and after
+ * the copy. The write cursor is never rewound, so stamps are never reused: {@link #clear()} starts a new generation at the 
+ * current cursor and records claimed before it, including those still being written, are ignored.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.handlers.logging.EventTracer</code></p>
+ */
+
+public class EventTracer {
+	/** The name of the traced component */
+	protected final String name;
+	/** Indicates if tracing is enabled */
+	protected volatile boolean tracing = false;
+	/** The trace ring buffer, allocated when tracing is first enabled */
+	protected volatile AtomicLongArray ring = null;
+	/** The number of records the ring holds (a power of two) */
+	protected final int capacity;
+	/** The write cursor (total records ever claimed) */
+	protected final AtomicLong cursor = new AtomicLong(0L);
+	/** The cursor index the current generation starts at, advanced by {@link #clear()} */
+	protected volatile long generation = 0L;
+	/** The number of events skipped by the rate limiter */
+	protected final AtomicLong throttled = new AtomicLong(0L);
+	/** Record every nth event */
+	protected volatile int sampleRate;
+	/** The maximum number of records written per second */
+	protected volatile int maxPerSecond;
+	/** The sampling counter (racy by design, only used to thin out events) */
+	protected int sampleCounter = 0;
+	/** The current rate limit window (nanoTime >> 30, roughly one second) */
+	protected long rateWindow = 0;
+	/** The number of records written in the current rate limit window */
+	protected int rateCount = 0;
+	
+	/** The number of longs in each trace record */
+	public static final int RECORD_LONGS = 8;
+	/** The offset of the record stamp, written last so readers can detect torn or overwritten records */
+	private static final int STAMP = 0;
+	/** The offset of the record nano time */
+	private static final int NANOS = 1;
+	/** The offset of the event type ordinal */
+	private static final int TYPE = 2;
+	/** The offset of the dispatcher sequence */
+	private static final int SEQUENCE = 3;
+	/** The offset of the event timestamp */
+	private static final int TIMESTAMP = 4;
+	/** The offset of the event value */
+	private static final int VALUE = 5;
+	/** The offset of the metric or tsuid hash code */
+	private static final int KEY = 6;
+	/** The offset of the recording thread id */
+	private static final int THREAD = 7;
+	
+	/** The event types */
+	private static final TSDBEventType[] TYPES = TSDBEventType.values();
+	
+	/** The config property name for the number of records kept by each event tracer */
+	public static final String TRACE_CAPACITY_PROP = "helios.events.trace.capacity";
+	/** The default number of records kept by each event tracer */
+	public static final int DEFAULT_TRACE_CAPACITY = 8192;
+	/** The config property name for the event trace sample rate (record every nth event) */
+	public static final String TRACE_SAMPLE_PROP = "helios.events.trace.samplerate";
+	/** The default event trace sample rate */
+	public static final int DEFAULT_TRACE_SAMPLE = 1;
+	/** The config property name for the maximum number of event trace records written per second */
+	public static final String TRACE_MAX_RATE_PROP = "helios.events.trace.maxrate";
+	/** The default maximum number of event trace records written per second */
+	public static final int DEFAULT_TRACE_MAX_RATE = 10000;
+	
+	/**
+	 * Creates a new EventTracer
+	 * @param name The name of the traced component
+	 */
+	public EventTracer(String name) {
+		this.name = name;
+		capacity = Integer.highestOneBit(Math.max(16, ConfigurationHelper.getIntSystemThenEnvProperty(TRACE_CAPACITY_PROP, DEFAULT_TRACE_CAPACITY)));
+		sampleRate = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(TRACE_SAMPLE_PROP, DEFAULT_TRACE_SAMPLE));
+		maxPerSecond = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(TRACE_MAX_RATE_PROP, DEFAULT_TRACE_MAX_RATE));
+	}
+	
+	/**
+	 * Indicates if tracing is enabled. This is the hot path guard.
+	 * @return true if tracing is enabled, false otherwise
+	 */
+	public final boolean isTracing() {
+		return tracing;
+	}
+	
+	/**
+	 * Enables or disables tracing. The ring buffer is allocated the first time tracing is enabled.
+	 * @param enabled true to enable, false to disable
+	 */
+	public synchronized void setTracing(boolean enabled) {
+		if(enabled && ring==null) {
+			ring = new AtomicLongArray(capacity * RECORD_LONGS);
+		}
+		tracing = enabled;
+	}
+	
+	/**
+	 * Records a trace of the passed event, subject to sampling and rate limiting
+	 * @param event The event to trace
+	 * @param sequence The dispatcher sequence of the event, or -1 if not sequenced
+	 */
+	public void trace(final TSDBEvent event, final long sequence) {
+		final AtomicLongArray r = ring;
+		if(r==null) return;
+		if(++sampleCounter < sampleRate) return;
+		sampleCounter = 0;
+		final long now = System.nanoTime();
+		final long window = now >> 30;
+		if(window!=rateWindow) {
+			rateWindow = window;
+			rateCount = 0;
+		}
+		if(++rateCount > maxPerSecond) {
+			throttled.incrementAndGet();
+			return;
+		}
+		final long index = cursor.getAndIncrement();
+		final int offset = (int)(index & (capacity-1)) * RECORD_LONGS;
+		final TSDBEventType type = event.eventType;
+		// full fence so the zeroed stamp is visible before any of the record fields
+		r.set(offset + STAMP, 0L);
+		r.lazySet(offset + NANOS, now);
+		r.lazySet(offset + TYPE, type==null ? -1 : type.ordinal());
+		r.lazySet(offset + SEQUENCE, sequence);
+		r.lazySet(offset + TIMESTAMP, event.timestamp);
+		r.lazySet(offset + VALUE, type==TSDBEventType.DPOINT_DOUBLE ? Double.doubleToRawLongBits(event.doubleValue) : event.longValue);
+		r.lazySet(offset + KEY, event.metric!=null ? event.metric.hashCode() : event.tsuid!=null ? event.tsuid.hashCode() : 0);
+		r.lazySet(offset + THREAD, Thread.currentThread().getId());
+		// ordered store, published after the record fields
+		r.lazySet(offset + STAMP, index + 1);
+	}
+	
+	/**
+	 * Copies the intact records of the current generation in the ring, oldest first
+	 * @param max The maximum number of (most recent) records to return
+	 * @return a list of record arrays
+	 */
+	protected List<long[]> snapshot(int max) {
+		final AtomicLongArray r = ring;
+		if(r==null) return new ArrayList<long[]>(0);
+		final long first = generation;
+		final long end = cursor.get();
+		final long start = Math.max(first, end - Math.min(capacity, Math.max(0, max)));
+		final List<long[]> records = new ArrayList<long[]>((int)Math.max(0L, end-start));
+		for(long index = start; index < end; index++) {
+			final int offset = (int)(index & (capacity-1)) * RECORD_LONGS;
+			if(r.get(offset + STAMP)!=index+1) continue;
+			final long[] rec = new long[RECORD_LONGS];
+			for(int i = 0; i < RECORD_LONGS; i++) rec[i] = r.get(offset + i);
+			// skip records being written or already overwritten by a wrapping writer
+			if(rec[STAMP]!=index+1 || r.get(offset + STAMP)!=index+1) continue;
+			records.add(rec);
+		}
+		return records;
+	}
+	
+	/**
+	 * Formats the most recent trace records
+	 * @param max The maximum number of records to format
+	 * @return an array of formatted records, oldest first
+	 */
+	public String[] dump(int max) {
+		final List<long[]> records = snapshot(max);
+		final String[] lines = new String[records.size()];
+		final StringBuilder b = new StringBuilder();
+		for(int i = 0; i < lines.length; i++) {
+			final long[] rec = records.get(i);
+			final int t = (int)rec[TYPE];
+			final TSDBEventType type = t>=0 && t<TYPES.length ? TYPES[t] : null;
+			b.setLength(0);
+			b.append(rec[NANOS]).append(" ").append(type==null ? "?" : type.name())
+				.append(" seq:").append(rec[SEQUENCE])
+				.append(" ts:").append(rec[TIMESTAMP])
+				.append(" value:").append(type==TSDBEventType.DPOINT_DOUBLE ? String.valueOf(Double.longBitsToDouble(rec[VALUE])) : String.valueOf(rec[VALUE]))
+				.append(" key:").append(Integer.toHexString((int)rec[KEY]))
+				.append(" thread:").append(rec[THREAD]);
+			lines[i] = b.toString();
+		}
+		return lines;
+	}
+	
+	/**
+	 * Writes the intact trace records to the named file in raw binary form: a header of the record count
+	 * and record width followed by each record as big-endian longs, oldest first
+	 * @param fileName The name of the file to write to
+	 * @return the number of records written
+	 */
+	public int writeTo(String fileName) {
+		final List<long[]> records = snapshot(capacity);
+		DataOutputStream dos = null;
+		try {
+			dos = new DataOutputStream(new FileOutputStream(fileName));
+			dos.writeInt(records.size());
+			dos.writeInt(RECORD_LONGS);
+			for(long[] rec: records) {
+				for(long v: rec) dos.writeLong(v);
+			}
+			dos.flush();
+			return records.size();
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed to write event trace for [" + name + "] to [" + fileName + "]", ex);
+		} finally {
+			if(dos!=null) try { dos.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Discards all trace records by starting a new generation at the current cursor. 
+	 * The cursor is not rewound since writers may still be completing records they claimed before the clear.
+	 */
+	public synchronized void clear() {
+		generation = cursor.get();
+		throttled.set(0L);
+	}
+	
+	/**
+	 * Returns the name of the traced component
+	 * @return the name of the traced component
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the number of records the ring holds
+	 * @return the ring capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the total number of records written since the last clear
+	 * @return the total number of records written
+	 */
+	public long getRecordCount() {
+		return Math.max(0L, cursor.get() - generation);
+	}
+	
+	/**
+	 * Returns the number of sampled events dropped by the rate limiter
+	 * @return the number of throttled events
+	 */
+	public long getThrottledCount() {
+		return throttled.get();
+	}
+	
+	/**
+	 * Returns the sample rate (every nth event is recorded)
+	 * @return the sample rate
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+	
+	/**
+	 * Sets the sample rate
+	 * @param sampleRate record every nth event
+	 */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = Math.max(1, sampleRate);
+	}
+	
+	/**
+	 * Returns the maximum number of records written per second
+	 * @return the maximum record rate
+	 */
+	public int getMaxPerSecond() {
+		return maxPerSecond;
+	}
+	
+	/**
+	 * Sets the maximum number of records written per second
+	 * @param maxPerSecond the maximum record rate
+	 */
+	public void setMaxPerSecond(int maxPerSecond) {
+		this.maxPerSecond = Math.max(1, maxPerSecond);
+	}
+
+}
@@ -46,6 +46,8 @@ public class LoggerManagerFactory {
 	public static final Map<String, String> LOGGER_MANAGERS;
 	/** A cache of logger managers by name */
 	private static final Map<String, LoggerManager> cacheByName = new ConcurrentHashMap<String, LoggerManager>();
+	/** A cache of event tracers by name */
+	private static final Map<String, EventTracer> tracersByName = new ConcurrentHashMap<String, EventTracer>();
 	
 	/** The selected logger manager ctor by String */
 	private static volatile Constructor<LoggerManager> loggerManagerByStringCtor = null;
@@ -117,4 +119,32 @@ public class LoggerManagerFactory {
 	}
 	
 
+	/**
+	 * Returns the event tracer for the passed name, creating it (disabled) if it does not exist
+	 * @param name The name of the traced component
+	 * @return the event tracer
+	 */
+	public static EventTracer getEventTracer(String name) {
+		EventTracer tracer = tracersByName.get(name);
+		if(tracer==null) {
+			synchronized(tracersByName) {
+				tracer = tracersByName.get(name);
+				if(tracer==null) {
+					tracer = new EventTracer(name);
+					tracersByName.put(name, tracer);
+				}
+			}
+		}
+		return tracer;
+	}
+	
+	/**
+	 * Returns the event tracer for the passed class
+	 * @param clazz The class to get an event tracer for
+	 * @return the event tracer
+	 */
+	public static EventTracer getEventTracer(Class<?> clazz) {
+		return getEventTracer(clazz.getName());
+	}
+	
 }
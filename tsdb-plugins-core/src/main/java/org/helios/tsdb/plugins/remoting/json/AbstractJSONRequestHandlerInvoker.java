@@ -48,6 +48,11 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	private final String opDescription;
 	/** The operation type */
 	private final RequestType type;
+	/** The names of the request fields streamed to the op */
+	private final String[] streamFields;
+	
+	/** Empty string array constant */
+	private static final String[] EMPTY_STR_ARR = {};
 	
 	/**
 	 * Creates a new AbstractJSONRequestHandlerInvoker
@@ -59,12 +64,27 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	 * @param type The op type
 	 */
 	public AbstractJSONRequestHandlerInvoker(Object targetService, String serviceName, String serviceDescription, String opName, String opDescription, RequestType type) {
+		this(targetService, serviceName, serviceDescription, opName, opDescription, type, EMPTY_STR_ARR);
+	}
+	
+	/**
+	 * Creates a new AbstractJSONRequestHandlerInvoker
+	 * @param targetService The target service this invoker is invoking against
+	 * @param serviceName The target service name
+	 * @param serviceDescription The target service description
+	 * @param opName The target op name
+	 * @param opDescription The target op description
+	 * @param type The op type
+	 * @param streamFields The names of the request fields streamed to the op
+	 */
+	public AbstractJSONRequestHandlerInvoker(Object targetService, String serviceName, String serviceDescription, String opName, String opDescription, RequestType type, String[] streamFields) {
 		this.targetService = targetService;		
 		this.serviceName = serviceName;
 		this.serviceDescription = serviceDescription;
 		this.opDescription = opDescription;
 		this.opName = opName;
 		this.type = type;
+		this.streamFields = streamFields==null ? EMPTY_STR_ARR : streamFields;
 	}
 	
 
@@ -142,6 +162,18 @@ public abstract class AbstractJSONRequestHandlerInvoker  {
 	public RequestType getRequestType() {
 		return type;
 	}
+	
+	/**
+	 * Indicates if the named request field is streamed to the op rather than decoded
+	 * @param fieldName The field name
+	 * @return true if the field is streamed
+	 */
+	public boolean isStreamed(String fieldName) {
+		for(int i = 0; i < streamFields.length; i++) {
+			if(streamFields[i].equals(fieldName)) return true;
+		}
+		return false;
+	}
 
 	
 	
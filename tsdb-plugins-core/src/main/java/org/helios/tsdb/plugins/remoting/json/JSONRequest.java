@@ -18,7 +18,10 @@ import org.jboss.netty.channel.Channel;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -52,6 +55,15 @@ public class JSONRequest {
 	public final Channel channel;
 	/** The original request, in case there is other stuff in there that the data service needs */
 	protected final JsonNode request;
+	/** The parser positioned at the value of the streamed field, null if the request was fully materialized */
+	@JsonIgnore
+	protected JsonParser stream = null;
+	/** The name of the streamed field, null if the request was fully materialized */
+	@JsonIgnore
+	protected final String streamField;
+	/** The parsing context of the request object enclosing the streamed field */
+	@JsonIgnore
+	protected final JsonStreamContext streamParent;
 	
 //	/** The response prepared to send back to the caller submitting this request */
 //	@JsonIgnore
@@ -121,6 +133,25 @@ public class JSONRequest {
 	 * @param request The original request
 	 */
 	protected JSONRequest(Channel channel, String tCode, long rid, long rerid, String serviceName, String opName, JsonNode request) {
+		this(channel, tCode, rid, rerid, serviceName, opName, request, null, null);
+	}
+	
+	/**
+	 * Creates a new JSONRequest whose decoding stopped at the value of a streamed field
+	 * @param channel The channel that the request came in on. Ignored if null 
+	 * @param tCode the type code of the request
+	 * @param requestId The client supplied request ID
+	 * @param inReferenceToRequestId The client supplied in regards to request ID
+	 * @param serviceName The service name requested
+	 * @param opName The op name requested
+	 * @param request The fields of the request decoded before the streamed field
+	 * @param stream The parser positioned at the start token of the streamed field's value, or null if nothing was streamed
+	 * @param streamField The name of the streamed field, or null if nothing was streamed
+	 */
+	protected JSONRequest(Channel channel, String tCode, long rid, long rerid, String serviceName, String opName, JsonNode request, JsonParser stream, String streamField) {
+		this.stream = stream;
+		this.streamField = stream==null ? null : streamField;
+		this.streamParent = stream==null ? null : stream.getParsingContext().getParent();
 		this.channel = channel;
 		this.tCode = tCode;
 		this.requestId = rid;
@@ -295,6 +326,51 @@ public class JSONRequest {
 		return request;
 	}
 	
+	/**
+	 * Indicates if the named field was left in the stream rather than decoded into the {@link #getRequest() request}
+	 * @param fieldName The field name
+	 * @return true if the named field is streamed
+	 */
+	public boolean isStreamed(String fieldName) {
+		return streamField!=null && streamField.equals(fieldName);
+	}
+	
+	/**
+	 * Returns the parser positioned at the start token of the named field's value, so large arrays can be consumed element by element.
+	 * Only the fields that preceded the streamed field in the request are available from {@link #getRequest()} until the stream is finished.
+	 * The parser is only valid for the duration of the request handler invocation.
+	 * @param fieldName The field name
+	 * @return the parser, or null if the named field was not streamed, in which case the value is in the {@link #getRequest() request}
+	 */
+	public JsonParser streamField(String fieldName) {
+		return isStreamed(fieldName) ? stream : null;
+	}
+	
+	/**
+	 * Skips whatever is left of the streamed field's value, decodes any fields that follow it into the {@link #getRequest() request} and closes the parser.
+	 * No op if the request was fully materialized or the stream is already finished.
+	 */
+	public void finishStream() {
+		final JsonParser p = stream;
+		if(p==null) return;
+		stream = null;
+		try {
+			while(p.getParsingContext()!=streamParent) {
+				if(p.nextToken()==null) return;
+			}
+			final ObjectNode on = (ObjectNode)request;
+			while(p.nextToken()==JsonToken.FIELD_NAME) {
+				final String fieldName = p.getCurrentName();
+				p.nextToken();
+				on.put(fieldName, (JsonNode)jsonMapper.readTree(p));
+			}
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to finish streamed request", iex);
+		} finally {
+			try { p.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
 	
 	
 	/**
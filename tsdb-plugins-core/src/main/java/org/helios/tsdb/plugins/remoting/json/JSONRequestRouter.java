@@ -24,6 +24,7 @@
  */
 package org.helios.tsdb.plugins.remoting.json;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,9 +40,18 @@ import org.helios.tsdb.plugins.remoting.json.services.SystemJSONServices;
 import org.helios.tsdb.plugins.service.PluginContext;
 import org.helios.tsdb.plugins.service.TSDBPluginServiceLoader;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -65,6 +75,10 @@ public class JSONRequestRouter {
 	protected final ConcurrentHashMap<String, Map<String, AbstractJSONRequestHandlerInvoker>> invokerMap = new ConcurrentHashMap<String, Map<String, AbstractJSONRequestHandlerInvoker>>();
 	/** The json node factory */
 	private final JsonNodeFactory nodeFactory = JsonNodeFactory.instance; 
+	/** The json mapper used to decode the non-streamed request fields */
+	private final ObjectMapper jsonMapper = new ObjectMapper();
+	/** The json factory used to create request parsers */
+	private final JsonFactory jsonFactory = jsonMapper.getFactory();
 	/** The pplugin context */
 	final PluginContext pluginContext;
 	
@@ -136,6 +150,66 @@ public class JSONRequestRouter {
 		invoker.invokeJSONRequest(jsonRequest);		
 	}
 	
+	/**
+	 * Decodes the json request in the passed buffer and routes it to the intended request handler.
+	 * The envelope is read from the stream and the request is routed as soon as its <b><code>svc</code></b> and <b><code>op</code></b> are known,
+	 * so fields the op declares as {@link JSONRequestHandler#stream() streamed} are handed to it unparsed.
+	 * @param channel The channel the request came in on
+	 * @param content The buffer containing the json request. The buffer's reader index is not modified.
+	 */
+	public void route(Channel channel, ChannelBuffer content) {
+		JSONRequest jsonRequest = null;
+		JsonParser parser = null;
+		try {
+			parser = jsonFactory.createParser(new ChannelBufferInputStream(content.duplicate()));
+			jsonRequest = decode(channel, parser);
+		} catch (Exception ex) {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+			throw new RuntimeException("Failed to decode JSON request", ex);
+		}
+		try {
+			route(jsonRequest);
+		} finally {
+			jsonRequest.finishStream();
+		}
+	}
+	
+	/**
+	 * Decodes a json request from the passed parser. Envelope and other fields are decoded into the request tree 
+	 * until a field the target op streams is reached, at which point decoding stops and the parser is left positioned at that field's value.
+	 * @param channel The channel the request came in on
+	 * @param parser The parser to read from
+	 * @return the decoded request
+	 * @throws IOException thrown on any error reading or parsing the request
+	 */
+	protected JSONRequest decode(Channel channel, JsonParser parser) throws IOException {
+		if(parser.nextToken()!=JsonToken.START_OBJECT) throw new JsonParseException("JSON request was not an object", parser.getCurrentLocation());
+		final ObjectNode request = nodeFactory.objectNode();
+		String tCode = null, serviceName = null, opName = null;
+		long rid = -1L;
+		AbstractJSONRequestHandlerInvoker invoker = null;
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			final String fieldName = parser.getCurrentName();
+			final JsonToken token = parser.nextToken();
+			if(invoker==null && serviceName!=null && opName!=null) {
+				Map<String, AbstractJSONRequestHandlerInvoker> imap = invokerMap.get(serviceName);
+				if(imap!=null) invoker = imap.get(opName);
+			}
+			if(invoker!=null && (token==JsonToken.START_ARRAY || token==JsonToken.START_OBJECT) && invoker.isStreamed(fieldName)) {
+				return new JSONRequest(channel, tCode, rid, -1L, serviceName, opName, request, parser, fieldName);
+			}
+			final JsonNode value = jsonMapper.readTree(parser);
+			request.put(fieldName, value);
+			if("t".equals(fieldName)) tCode = value.asText();
+			else if("rid".equals(fieldName)) rid = value.asLong(-1L);
+			else if("svc".equals(fieldName)) serviceName = value.asText();
+			else if("op".equals(fieldName)) opName = value.asText();
+		}
+		if(serviceName==null || opName==null) throw new JsonParseException("JSON request had no svc or op", parser.getCurrentLocation());
+		parser.close();
+		return new JSONRequest(channel, tCode, rid, -1L, serviceName, opName, request);
+	}
+	
 	/**
 	 * Writes a JSON catalog of the available services
 	 * @param jsonRequest The json request
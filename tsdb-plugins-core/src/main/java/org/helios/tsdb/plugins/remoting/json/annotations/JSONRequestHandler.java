@@ -58,4 +58,10 @@ public @interface JSONRequestHandler {
 	 * The request type
 	 */
 	public RequestType type() default RequestType.REQUEST;
+	
+	/**
+	 * The names of top level request fields that are not decoded into the request tree, but handed to the op 
+	 * as a parser positioned at the field's value through {@link JSONRequest#streamField(String)}
+	 */
+	public String[] stream() default {};
 }
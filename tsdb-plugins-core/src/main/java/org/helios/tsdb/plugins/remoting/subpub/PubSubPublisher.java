@@ -30,6 +30,7 @@ import org.helios.jmx.metrics.ewma.ConcurrentDirectEWMA;
 import org.helios.tsdb.plugins.event.TSDBEvent;
 import org.helios.tsdb.plugins.event.TSDBEventType;
 import org.helios.tsdb.plugins.handlers.EmptyPublishEventHandler;
+import org.helios.tsdb.plugins.handlers.IRetainingEventHandler;
 import org.helios.tsdb.plugins.meta.Datapoint;
 import org.helios.tsdb.plugins.service.IPluginContextResourceFilter;
 import org.helios.tsdb.plugins.service.IPluginContextResourceListener;
@@ -47,7 +48,7 @@ import reactor.event.Event;
  * <p><code>org.helios.tsdb.plugins.remoting.subpub.PubSubPublisher</code></p>
  */
 
-public class PubSubPublisher extends EmptyPublishEventHandler implements PubSubPublisherMXBean {
+public class PubSubPublisher extends EmptyPublishEventHandler implements PubSubPublisherMXBean, IRetainingEventHandler {
 	/** The sub manager to push events to */
 	protected SubscriptionManager subManager = null;
 	/** A EWMA for measuring the elapsed time of processing an event */
@@ -24,7 +24,7 @@
  */
 package org.helios.tsdb.plugins.remoting.subpub;
 
-import org.helios.tsdb.plugins.handlers.TSDBServiceMXBean;
+import org.helios.tsdb.plugins.handlers.TSDBEventHandlerMXBean;
 
 /**
  * <p>Title: PubSubPublisherMXBean</p>
@@ -34,7 +34,7 @@ import org.helios.tsdb.plugins.handlers.TSDBServiceMXBean;
  * <p><code>org.helios.tsdb.plugins.remoting.subpub.PubSubPublisherMXBean</code></p>
  */
 
-public interface PubSubPublisherMXBean extends TSDBServiceMXBean {
+public interface PubSubPublisherMXBean extends TSDBEventHandlerMXBean {
 	/**
 	 * Returns the timestamp of the last sample as a long UTC.
 	 * @return the timestamp of the last sample 
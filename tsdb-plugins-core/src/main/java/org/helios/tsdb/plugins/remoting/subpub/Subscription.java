@@ -49,6 +49,7 @@ import org.helios.tsdb.plugins.event.TSDBEvent;
 import org.helios.tsdb.plugins.event.TSDBEventType;
 import org.helios.tsdb.plugins.meta.Datapoint;
 import org.helios.tsdb.plugins.util.JMXHelper;
+import org.helios.tsdb.plugins.util.bloom.ScalableUnsafeBloomFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,7 +69,6 @@ import reactor.function.Function;
 import reactor.timer.TimeUtils;
 import reactor.tuple.Tuple2;
 
-import com.google.common.hash.BloomFilter;
 import com.google.common.hash.Funnel;
 import com.google.common.hash.Funnels;
 import com.google.common.hash.PrimitiveSink;
@@ -86,7 +86,7 @@ public class Subscription implements SubscriptionMBean, Consumer<Map<String,Data
 	protected static final Logger log = LoggerFactory.getLogger(Subscription.class);
 
 	/** The filter to quickly determine if an incoming message matches this subscription */
-	private BloomFilter<byte[]> filter; 
+	private final ScalableUnsafeBloomFilter<byte[]> filter;
 	/** The charset of the incoming messages */
 	public static final Charset DEFAULT_CHARSET = Charset.defaultCharset();
 	/** The default number of insertions */
@@ -167,7 +167,7 @@ public class Subscription implements SubscriptionMBean, Consumer<Map<String,Data
 	 * @param types The TSDBEvent types to subscribe to
 	 */
 	public Subscription(final Reactor reactor, final MetricsMetaAPI metricsMeta, final CharSequence pattern, final int expectedInsertions, final TSDBEventType...types) {
-		filter = BloomFilter.create(SubFunnel.INSTANCE, expectedInsertions, DEFAULT_PROB);
+		filter = new ScalableUnsafeBloomFilter<byte[]>(SubFunnel.INSTANCE, expectedInsertions, DEFAULT_PROB);
 		this.pattern = pattern.toString().trim();
 		selector = new TSMetaPatternSelector(this.pattern.toString());
 		eventBitMask = TSDBEventType.getMask(types);
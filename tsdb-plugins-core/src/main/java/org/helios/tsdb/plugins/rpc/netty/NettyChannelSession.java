@@ -35,6 +35,7 @@ import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.local.LocalChannel;
 import org.jboss.netty.channel.socket.DatagramChannel;
 import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +58,8 @@ public class NettyChannelSession implements ISessionLifecycle, ChannelFutureList
 	protected final AtomicBoolean expired = new AtomicBoolean(false);
 	/** Static class logger */
 	protected static final Logger log = LoggerFactory.getLogger(NettyChannelSession.class);
+	/** The name of the handler installed by the websocket handshaker */
+	public static final String WS_ENCODER = "wsencoder";
 	
 	/**
 	 * Creates a new NettyChannelSession
@@ -113,6 +116,18 @@ public class NettyChannelSession implements ISessionLifecycle, ChannelFutureList
 		}
 	}
 
+	/**
+	 * <p>Sends a websocket ping if the channel has completed a websocket handshake. Other channel protocols have no probe.</p>
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.ISessionLifecycle#heartbeat()
+	 */
+	@Override
+	public boolean heartbeat() {
+		if(!channel.isOpen() || channel.getPipeline().get(WS_ENCODER)==null) return false;
+		channel.write(new PingWebSocketFrame());
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
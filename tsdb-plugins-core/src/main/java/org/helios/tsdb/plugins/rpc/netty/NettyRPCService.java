@@ -24,6 +24,7 @@
  */
 package org.helios.tsdb.plugins.rpc.netty;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.util.Properties;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -34,7 +35,12 @@ import net.opentsdb.tsd.RpcHandler;
 
 import org.helios.tsdb.plugins.Constants;
 import org.helios.tsdb.plugins.rpc.AbstractRPCService;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolSwitch;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.http.HttpRequestRouter;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandler;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.telnet.TelnetProtocolInitiator;
 import org.helios.tsdb.plugins.rpc.netty.pipeline.websock.WebSocketServiceHandler;
+import org.helios.tsdb.plugins.rpc.session.RPCSessionManager;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.ChannelPipelineFactory;
@@ -61,6 +67,8 @@ public class NettyRPCService extends AbstractRPCService {
 	protected InetSocketAddress ipSocketAddress = null;
 	/** The channel pipeline factory */
 	protected ChannelPipelineFactory pipelineFactory = null;
+	/** The static content handler */
+	protected StaticContentHandler staticContentHandler = null;
 	
 	/**
 	 * Creates a new NettyRPCService
@@ -125,16 +133,32 @@ public class NettyRPCService extends AbstractRPCService {
 		RpcHandler.getInstance()
 			.registerHandler("ws", new WebSocketServiceHandler());
 		log.info("\n\t===============================================================\n\tRegistered WebSocketServiceHandler\n\t===============================================================\n");
+		if(!ProtocolSwitch.getInstance().isProtocolRegistered("telnet")) {
+			ProtocolSwitch.getInstance().registerProtocolInitiator(new TelnetProtocolInitiator(tsdb, config));
+		}
+		String staticRoot = ConfigurationHelper.getSystemThenEnvProperty(StaticContentHandler.STATIC_ROOT_PROP, null, config);
+		if(staticRoot!=null && new File(staticRoot).isDirectory()) {
+			staticContentHandler = new StaticContentHandler(new File(staticRoot), config);
+			HttpRequestRouter.getInstance().registerHandler(staticContentHandler);
+			log.info("Registered StaticContentHandler for [{}]", staticRoot);
+		} else {
+			log.info("No static content root directory. StaticContentHandler Disabled.");
+		}
 	}
 	
 	/**
-	 * <p>Stops the NettyRPCService and related sub-services</p>
+	 * <p>Stops the NettyRPCService and related sub-services, including the {@link RPCSessionManager} and its expiry timer</p>
 	 * {@inheritDoc}
 	 * @see org.helios.tsdb.plugins.rpc.AbstractRPCService#stopImpl()
 	 */
 	@Override
 	protected void stopImpl() {
 //		serverBootstrap.releaseExternalResources();
+		if(staticContentHandler!=null) {
+			staticContentHandler.shutdown();
+			staticContentHandler = null;
+		}
+		RPCSessionManager.shutdown();
 	}
 
 }
@@ -56,6 +56,17 @@ public class NetyChannelSessionFactory implements ITransportSessionFactory {
 		return NETTY_CHANNEL;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.ITransportSessionFactory#getSessionId(java.lang.Object)
+	 */
+	@Override
+	public String getSessionId(Object transport) {
+		if(transport==null) throw new IllegalArgumentException("The passed transport was null");
+		if(!NETTY_CHANNEL.isInstance(transport)) throw new IllegalArgumentException("The passed transport type [" + transport.getClass().getName() + "] is not a Netty Channel");
+		return Integer.toString(((Channel)transport).getId());
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.tsdb.plugins.rpc.session.ITransportSessionFactory#newRPCSession(java.lang.Object)
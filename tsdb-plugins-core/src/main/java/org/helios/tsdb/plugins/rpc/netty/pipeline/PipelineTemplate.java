@@ -0,0 +1,111 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline;
+
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelPipeline;
+
+/**
+ * <p>Title: PipelineTemplate</p>
+ * <p>Description: A named sequence of channel handlers assembled once by a {@link ProtocolInitiator} and applied to each matched pipeline.
+ * Sharable handlers are added as the same instance to every pipeline. Stateful handlers are created per pipeline by their {@link HandlerFactory}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.PipelineTemplate</code></p>
+ */
+
+public class PipelineTemplate {
+	/** The handler names in pipeline order */
+	protected String[] names = new String[0];
+	/** The shared handler or {@link HandlerFactory} for each name */
+	protected Object[] entries = new Object[0];
+	
+	/**
+	 * <p>Title: HandlerFactory</p>
+	 * <p>Description: Creates a new instance of a stateful channel handler for each pipeline</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.PipelineTemplate.HandlerFactory</code></p>
+	 */
+	public static interface HandlerFactory {
+		/**
+		 * Creates a new channel handler
+		 * @return a new channel handler
+		 */
+		public ChannelHandler newHandler();
+	}
+	
+	/**
+	 * Appends a sharable handler which is added as is to every pipeline
+	 * @param name The handler name
+	 * @param handler The sharable handler
+	 * @return this template
+	 */
+	public PipelineTemplate addShared(String name, ChannelHandler handler) {
+		if(handler==null) throw new IllegalArgumentException("The passed handler was null");
+		return append(name, handler);
+	}
+	
+	/**
+	 * Appends a handler factory which creates a new handler for every pipeline
+	 * @param name The handler name
+	 * @param factory The handler factory
+	 * @return this template
+	 */
+	public PipelineTemplate addFactory(String name, HandlerFactory factory) {
+		if(factory==null) throw new IllegalArgumentException("The passed factory was null");
+		return append(name, factory);
+	}
+	
+	private synchronized PipelineTemplate append(String name, Object entry) {
+		if(name==null || name.trim().isEmpty()) throw new IllegalArgumentException("The passed name was null or empty");
+		final int size = names.length;
+		final String[] newNames = new String[size+1];
+		final Object[] newEntries = new Object[size+1];
+		System.arraycopy(names, 0, newNames, 0, size);
+		System.arraycopy(entries, 0, newEntries, 0, size);
+		newNames[size] = name;
+		newEntries[size] = entry;
+		entries = newEntries;
+		names = newNames;
+		return this;
+	}
+	
+	/**
+	 * Appends the template's handlers to the end of the passed pipeline
+	 * @param pipeline The pipeline to modify
+	 */
+	public void apply(ChannelPipeline pipeline) {
+		final String[] n = names;
+		final Object[] h = entries;
+		for(int i = 0; i < n.length; i++) {
+			pipeline.addLast(n[i], handler(h[i]));
+		}
+	}
+	
+	private static ChannelHandler handler(Object entry) {
+		return (entry instanceof HandlerFactory) ? ((HandlerFactory)entry).newHandler() : (ChannelHandler)entry;
+	}
+}
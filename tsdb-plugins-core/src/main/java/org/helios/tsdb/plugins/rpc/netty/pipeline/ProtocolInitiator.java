@@ -46,6 +46,7 @@ public interface ProtocolInitiator {
 	
 	/**
 	 * Tests this initiator to see if the initiating connection is a protocol match.
+	 * Implementations should peek at offsets relative to the buffer's reader index and must not modify its indexes.
 	 * @param buff The initial channel buffer passed on connect
 	 * @return true for match, false otherwise
 	 */
@@ -24,35 +24,36 @@
  */
 package org.helios.tsdb.plugins.rpc.netty.pipeline;
 
-import java.nio.ByteOrder;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.helios.tsdb.plugins.rpc.netty.pipeline.http.Http2PrefaceInitiator;
 import org.helios.tsdb.plugins.rpc.netty.pipeline.http.HttpProtocolInitiator;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.tls.TlsProtocolInitiator;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferFactory;
-import org.jboss.netty.buffer.DirectChannelBufferFactory;
-import org.jboss.netty.buffer.DynamicChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.UpstreamMessageEvent;
-import org.jboss.netty.handler.logging.LoggingHandler;
-import org.jboss.netty.logging.InternalLogLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * <p>Title: ProtocolSwitch</p>
- * <p>Description: An upfront channel handler to determine the protocol handlers the pipeline should install for the incomng request</p> 
+ * <p>Description: An upfront channel handler to determine the protocol handlers the pipeline should install for the incomng request.</p>
+ * <p>Initiators peek at fixed offsets from the reader index of the received bytes, so detection never copies or decodes.
+ * If the first read is too short for every initiator to decide, it is held in the handler context's attachment and 
+ * the next read is wrapped together with it in a composite buffer.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolSwitch</code></p>
  */
-
+@Sharable
 public class ProtocolSwitch implements ChannelUpstreamHandler {
 	/** The singleton instance */
 	protected static volatile ProtocolSwitch instance = null;
@@ -65,12 +66,13 @@ public class ProtocolSwitch implements ChannelUpstreamHandler {
 
 	/** A map of protocol initiators keyed by the protocol name they advertise */
 	protected final Map<String, ProtocolInitiator> initiators = new ConcurrentHashMap<String, ProtocolInitiator>();
-	
-	/** A channel local to accumulate unclassified buffers */
-	protected final ChannelLocal<DynamicChannelBuffer> preSwitchedBuffer = new ChannelLocal<DynamicChannelBuffer>(true);
-	/** The channel buffer factory */
-	protected final ChannelBufferFactory chanelBufferFactory = new DirectChannelBufferFactory(ByteOrder.nativeOrder(), 1024);
+	/** The registered initiators in registration order, which is the order they are tried in */
+	protected volatile ProtocolInitiator[] initiatorSequence = new ProtocolInitiator[0];
+	/** The number of connections that matched no initiator */
+	protected final AtomicLong unmatched = new AtomicLong(0L);
 
+	/** The maximum number of bytes held while waiting for enough to match on */
+	public static final int MAX_PENDING_BYTES = 64;
 	
 	/**
 	 * Acquires and returns the singleton instance
@@ -88,7 +90,7 @@ public class ProtocolSwitch implements ChannelUpstreamHandler {
 	}
 	
 	/**
-	 * Registers a new protocol initiator
+	 * Registers a new protocol initiator. Initiators are tried in the order they are registered.
 	 * @param initiator the protocol initiator to register
 	 */
 	public void registerProtocolInitiator(ProtocolInitiator initiator) {
@@ -100,6 +102,11 @@ public class ProtocolSwitch implements ChannelUpstreamHandler {
 			synchronized(initiators) {
 				if(!initiators.containsKey(key)) {
 					initiators.put(key, initiator);
+					final ProtocolInitiator[] current = initiatorSequence;
+					final ProtocolInitiator[] updated = new ProtocolInitiator[current.length+1];
+					System.arraycopy(current, 0, updated, 0, current.length);
+					updated[current.length] = initiator;
+					initiatorSequence = updated;
 					return;
 				}
 			}
@@ -107,11 +114,22 @@ public class ProtocolSwitch implements ChannelUpstreamHandler {
 		throw new RuntimeException("An initiator for protocol [" + key + "] has already been registered");		
 	}
 	
+	/**
+	 * Determines if an initiator is registered for the passed protocol
+	 * @param protocol The protocol name
+	 * @return true if an initiator is registered for the protocol
+	 */
+	public boolean isProtocolRegistered(String protocol) {
+		return protocol!=null && initiators.containsKey(protocol.trim().toLowerCase());
+	}
+	
 	/**
 	 * Creates a new ProtocolSwitch
 	 */
 	protected ProtocolSwitch() {
 		registerProtocolInitiator(new HttpProtocolInitiator());
+		registerProtocolInitiator(new Http2PrefaceInitiator());
+		registerProtocolInitiator(new TlsProtocolInitiator(TlsProtocolInitiator.getDefaultServerContext()));
 	}
 
 	/**
@@ -120,79 +138,78 @@ public class ProtocolSwitch implements ChannelUpstreamHandler {
 	 */
 	@Override
 	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
-		if(e instanceof MessageEvent) {
-			MessageEvent me = (MessageEvent) e;
-			if(me.getMessage() instanceof ChannelBuffer) {
-				ChannelBuffer postDetectBuffer = protocolSwitch(ctx, e.getChannel(), (ChannelBuffer)me.getMessage(), e);
-				if(postDetectBuffer!=null) {	
-					ctx.getPipeline().remove(this);
-					ctx.sendUpstream(new UpstreamMessageEvent(e.getChannel(), postDetectBuffer, ((MessageEvent) e).getRemoteAddress()));					
-				}
+		if(e instanceof MessageEvent && ((MessageEvent)e).getMessage() instanceof ChannelBuffer) {
+			final MessageEvent me = (MessageEvent)e;
+			final ChannelBuffer pending = (ChannelBuffer)ctx.getAttachment();
+			final ChannelBuffer buffer = pending==null ? (ChannelBuffer)me.getMessage() : ChannelBuffers.wrappedBuffer(pending, (ChannelBuffer)me.getMessage());
+			final ProtocolInitiator selected = protocolSwitch(ctx, e.getChannel(), buffer);
+			if(selected==null) {
+				// hold the bytes until the next read
+				ctx.setAttachment(buffer);
+				return;
+			}
+			ctx.setAttachment(null);
+			if(selected==NO_MATCH) {
+				return;
 			}
+			selected.modifyPipeline(ctx, e.getChannel(), buffer);
+			ctx.getPipeline().remove(ctx.getName());
+			ctx.sendUpstream(new UpstreamMessageEvent(e.getChannel(), buffer, me.getRemoteAddress()));
 		} else {
 			ctx.sendUpstream(e);
 		}
 	}
 	
+	/** Marker returned by {@link #protocolSwitch(ChannelHandlerContext, Channel, ChannelBuffer)} when no initiator matched and the channel was closed */
+	protected static final ProtocolInitiator NO_MATCH = new ProtocolInitiator() {
+		@Override
+		public int requiredBytes() { return Integer.MAX_VALUE; }
+		@Override
+		public boolean match(ChannelBuffer buff) { return false; }
+		@Override
+		public void modifyPipeline(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) { /* No Op */ }
+		@Override
+		public String getProtocol() { return "none"; }
+	};
+	
 	/**
-	 * Examines the channel buffer and attempts to match the protocol of the request and invoke the matching {@link ProtocolInitiator}.
+	 * Examines the channel buffer and attempts to match the protocol of the request to a registered {@link ProtocolInitiator}.
+	 * If nothing matches, the channel is closed.
 	 * @param ctx The channel handler context
 	 * @param channel The channel
-	 * @param bufferx The message buffer
-	 * @param e The channel event
-	 * @return The channel buffer to send upstream, or null if we need more bytes
+	 * @param buffer The bytes received so far
+	 * @return the matched initiator, null if more bytes are needed, or {@link #NO_MATCH} if nothing matched
 	 */
-	protected ChannelBuffer protocolSwitch(ChannelHandlerContext ctx, Channel channel, ChannelBuffer bufferx, ChannelEvent e)  {		
-		ChannelBuffer cb = preSwitchedBuffer.get(channel);
-		if(cb!=null) {
-			cb.writeBytes(bufferx);
-			cb.resetReaderIndex();
-		} else {
-			cb = bufferx;
-		}
-		// this guy will be set with a matching initiator
-		ProtocolInitiator selectedInitiator = null;
+	protected ProtocolInitiator protocolSwitch(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer)  {		
 		// this guy will be set to false if at least 1 initiator had insufficient bytes to match
 		boolean sufficientBytes = true;
 		// ths guy has the total bytes available in the buffer
-		final int bytesAvailable = cb.readableBytes();
-		
-		for(ProtocolInitiator pi : initiators.values()) {
+		final int bytesAvailable = buffer.readableBytes();
+		for(ProtocolInitiator pi : initiatorSequence) {
 			if(pi.requiredBytes() > bytesAvailable) {
 				sufficientBytes = false;
-			} else {
-				if(pi.match(cb)) {
-					selectedInitiator = pi;
-					break;
-				}
-			}			
-		}
-		
-		if(selectedInitiator==null) {
-			// we did not get a match
-			if(!sufficientBytes) {
-				// ok, we did not have enough bytes
-				DynamicChannelBuffer dcb = preSwitchedBuffer.get(channel);
-				if(dcb == null) {
-					dcb = new DynamicChannelBuffer(cb.order(), 1024, chanelBufferFactory);
-					preSwitchedBuffer.set(channel, dcb);
-				}
-				dcb.writeBytes(cb);
-				dcb.resetReaderIndex();
-				return null;
+			} else if(pi.match(buffer)) {
+				return pi;
 			}
-			// darn, we have enough bytes for any of the inits,
-			// but none matched
-			throw new RuntimeException("Failed to match any protocol initiator");
 		}
-		preSwitchedBuffer.remove(channel);
-		// we matched on an initiator, so have it modify the pipeline
-		selectedInitiator.modifyPipeline(ctx, channel, cb);
-		return cb;
-		
-		// if we get here, it means we did not find a protocol match
-		// so pass to the default protocol initiator.
+		if(!sufficientBytes && bytesAvailable < MAX_PENDING_BYTES) {
+			return null;
+		}
+		// darn, we have enough bytes for any of the inits,
+		// but none matched
+		unmatched.incrementAndGet();
+		if(log.isDebugEnabled()) {
+			log.debug("Failed to match any protocol initiator for [{}]. Leading bytes: [{}]", channel.getRemoteAddress(), ChannelBuffers.hexDump(buffer, buffer.readerIndex(), Math.min(16, bytesAvailable)));
+		}
+		channel.close();
+		return NO_MATCH;
 	}
 	
-
+	/**
+	 * Returns the number of connections that matched no initiator and were closed
+	 * @return the number of unmatched connections
+	 */
+	public long getUnmatchedConnections() {
+		return unmatched.get();
+	}
 }
@@ -27,8 +27,11 @@ package org.helios.tsdb.plugins.rpc.netty.pipeline;
 import org.helios.tsdb.plugins.rpc.session.IRPCSession;
 import org.helios.tsdb.plugins.rpc.session.RPCSessionAttribute;
 import org.helios.tsdb.plugins.rpc.session.RPCSessionManager;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
 import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
@@ -36,6 +39,9 @@ import org.jboss.netty.channel.ChannelState;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.FileRegion;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.WriteCompletionEvent;
 import org.jboss.netty.channel.local.LocalChannel;
 import org.jboss.netty.channel.socket.DatagramChannel;
 import org.jboss.netty.channel.socket.SocketChannel;
@@ -50,7 +56,8 @@ import org.jboss.netty.logging.InternalLogLevel;
  * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.RemotingPipelineFactory</code></p>
  */
 
-public class RemotingPipelineFactory implements ChannelPipelineFactory, ChannelUpstreamHandler {
+@ChannelHandler.Sharable
+public class RemotingPipelineFactory implements ChannelPipelineFactory, ChannelUpstreamHandler, ChannelDownstreamHandler {
 	/** The singleton instance */
 	protected static volatile RemotingPipelineFactory instance = null;
 	/** The singleton instance ctor lock */
@@ -60,7 +67,7 @@ public class RemotingPipelineFactory implements ChannelPipelineFactory, ChannelU
 	private static final LoggingHandler lh = new LoggingHandler(ProtocolSwitch.class, InternalLogLevel.INFO, true);
 	
 	/** The protocol detection handler */
-	protected final ProtocolSwitch protocolSwitch = new ProtocolSwitch();
+	protected final ProtocolSwitch protocolSwitch = ProtocolSwitch.getInstance();
 	
 	/**
 	 * Acquires and returns the singleton instance
@@ -100,21 +107,62 @@ public class RemotingPipelineFactory implements ChannelPipelineFactory, ChannelU
 	}
 	
 	/**
-	 * <p>If the channel event is a {@link ChannelState#CONNECTED} event, a new {@link IRPCSession} is created for the connected channel.</p>
+	 * Records a decoded frame received on the passed context's channel against the channel's {@link IRPCSession}.
+	 * Called by the protocol handlers once a message has been decoded, since the session handler sits ahead of the decoders.
+	 * @param ctx The channel handler context of the protocol handler that received the frame
+	 */
+	public static void onFrameIn(final ChannelHandlerContext ctx) {
+		final ChannelHandlerContext sessionCtx = ctx.getPipeline().getContext("session");
+		if(sessionCtx==null) return;
+		final IRPCSession session = (IRPCSession)sessionCtx.getAttachment();
+		if(session!=null) session.onFrameIn();
+	}
+	
+	/**
+	 * <p>If the channel event is a {@link ChannelState#CONNECTED} event, a new {@link IRPCSession} is created for the connected channel
+	 * and kept in the context attachment. Flushed bytes are then recorded against the session. Received frames are recorded
+	 * by the protocol handlers through {@link #onFrameIn(ChannelHandlerContext)}.</p>
 	 * {@inheritDoc}
 	 * @see org.jboss.netty.channel.ChannelUpstreamHandler#handleUpstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
 	 */
 	@Override
 	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
-		if(e instanceof ChannelStateEvent) {
+		if(e instanceof WriteCompletionEvent) {
+			final IRPCSession session = (IRPCSession)ctx.getAttachment();
+			if(session!=null) session.onBytesWritten(((WriteCompletionEvent)e).getWrittenAmount());
+		} else if(e instanceof ChannelStateEvent) {
 			ChannelStateEvent cse = (ChannelStateEvent)e;
 			if(cse.getState()==ChannelState.CONNECTED && cse.getValue()!=null) {
 				IRPCSession session = RPCSessionManager.getInstance().getSession(e.getChannel());
 				session.addSessionAttribute(RPCSessionAttribute.RemoteAddress, cse.getValue().toString());
 				session.addSessionAttribute(RPCSessionAttribute.Protocol, getProtocol(e.getChannel()));
-				ctx.getPipeline().remove(this);
+				ctx.setAttachment(session);
+			}
+		}
+		ctx.sendUpstream(e);
+	}
+	
+	/**
+	 * <p>Records written messages and the number of bytes they queue against the channel's {@link IRPCSession}</p>
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.ChannelDownstreamHandler#handleDownstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+		if(e instanceof MessageEvent) {
+			final IRPCSession session = (IRPCSession)ctx.getAttachment();
+			if(session!=null) {
+				final Object message = ((MessageEvent)e).getMessage();
+				if(message instanceof ChannelBuffer) {
+					session.onFrameOut(((ChannelBuffer)message).readableBytes());
+				} else if(message instanceof FileRegion) {
+					session.onFrameOut(((FileRegion)message).getCount());
+				} else {
+					session.onFrameOut(0);
+				}
 			}
-		}		
+		}
+		ctx.sendDownstream(e);
 	}
 	
 	/**
@@ -0,0 +1,102 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline.http;
+
+import org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: Http2PrefaceInitiator</p>
+ * <p>Description: Protocol initiator for clients opening with the HTTP/2 connection preface (<b><code>PRI * HTTP/2.0</code></b>).
+ * HTTP/2 is not served, so the client is sent an empty SETTINGS frame followed by a GOAWAY with the <b><code>HTTP_1_1_REQUIRED</code></b> 
+ * error code, which tells it to retry over HTTP/1.1, and the connection is closed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.http.Http2PrefaceInitiator</code></p>
+ */
+
+public class Http2PrefaceInitiator implements ProtocolInitiator {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	
+	/** The leading bytes of the HTTP/2 connection preface */
+	protected static final byte[] PREFACE = {'P', 'R', 'I', ' '};
+	/** The HTTP/2 GOAWAY error code indicating HTTP/1.1 is required */
+	public static final int HTTP_1_1_REQUIRED = 0xd;
+	/** An empty SETTINGS frame followed by a GOAWAY frame with last stream id 0 and the HTTP_1_1_REQUIRED error code */
+	protected static final ChannelBuffer GOAWAY = ChannelBuffers.unmodifiableBuffer(ChannelBuffers.wrappedBuffer(new byte[]{
+		0, 0, 0, 0x4, 0, 0, 0, 0, 0,					// SETTINGS: length 0, type 4, flags 0, stream 0
+		0, 0, 8, 0x7, 0, 0, 0, 0, 0,					// GOAWAY: length 8, type 7, flags 0, stream 0
+		0, 0, 0, 0,										// last stream id
+		0, 0, 0, HTTP_1_1_REQUIRED						// error code
+	}));
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#requiredBytes()
+	 */
+	@Override
+	public int requiredBytes() {
+		return PREFACE.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#match(org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	public boolean match(ChannelBuffer buff) {
+		final int index = buff.readerIndex();
+		for(int i = 0; i < PREFACE.length; i++) {
+			if(buff.getByte(index + i)!=PREFACE[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#modifyPipeline(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	public void modifyPipeline(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+		log.debug("Rejecting HTTP/2 connection from [{}]", channel.getRemoteAddress());
+		channel.write(GOAWAY.duplicate()).addListener(ChannelFutureListener.CLOSE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#getProtocol()
+	 */
+	@Override
+	public String getProtocol() {
+		return "h2";
+	}
+}
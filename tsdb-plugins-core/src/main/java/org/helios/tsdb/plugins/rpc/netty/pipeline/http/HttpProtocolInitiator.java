@@ -24,9 +24,12 @@
  */
 package org.helios.tsdb.plugins.rpc.netty.pipeline.http;
 
+import org.helios.tsdb.plugins.rpc.netty.pipeline.PipelineTemplate;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.PipelineTemplate.HandlerFactory;
 import org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
@@ -54,12 +57,34 @@ public class HttpProtocolInitiator implements ProtocolInitiator {
 
 	/** The http request router */
 	protected HttpRequestRouter router = HttpRequestRouter.getInstance();
+	/** The handlers installed on a matched pipeline */
+	protected final PipelineTemplate template = new PipelineTemplate();
 
 	/**
 	 * Creates a new HttpProtocolInitiator
 	 */
 	public HttpProtocolInitiator() {
-
+		template.addFactory("decoder", new HandlerFactory() {
+			@Override
+			public ChannelHandler newHandler() {
+				return new HttpRequestDecoder();
+			}
+		}).addFactory("aggregator", new HandlerFactory() {
+			@Override
+			public ChannelHandler newHandler() {
+				return new HttpChunkAggregator(65536);
+			}
+		}).addFactory("encoder", new HandlerFactory() {
+			@Override
+			public ChannelHandler newHandler() {
+				return new HttpResponseEncoder();
+			}
+		}).addFactory("chunkedWriter", new HandlerFactory() {
+			@Override
+			public ChannelHandler newHandler() {
+				return new ChunkedWriteHandler();
+			}
+		}).addShared("router", router);
 	}
 
 	/**
@@ -77,7 +102,8 @@ public class HttpProtocolInitiator implements ProtocolInitiator {
 	 */
 	@Override
 	public boolean match(ChannelBuffer buff) {
-		return isHttp(buff.getUnsignedByte(0), buff.getUnsignedByte(1));
+		final int index = buff.readerIndex();
+		return isHttp(buff.getUnsignedByte(index), buff.getUnsignedByte(index+1));
 	}
 
 	/**
@@ -87,11 +113,7 @@ public class HttpProtocolInitiator implements ProtocolInitiator {
 	@Override
 	public void modifyPipeline(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
 		ChannelPipeline pipeline = ctx.getPipeline();
-		pipeline.addLast("decoder", new HttpRequestDecoder());
-		pipeline.addLast("aggregator", new HttpChunkAggregator(65536));
-		pipeline.addLast("encoder", new HttpResponseEncoder());       
-		pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
-		pipeline.addLast("router", router);
+		template.apply(pipeline);
 		if(this.log.isDebugEnabled()) {
 			pipeline.addFirst("logger", loggingHandler);
 		}
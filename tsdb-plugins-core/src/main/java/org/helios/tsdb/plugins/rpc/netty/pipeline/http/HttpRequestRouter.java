@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.helios.tsdb.plugins.rpc.netty.pipeline.RemotingPipelineFactory;
 import org.helios.tsdb.plugins.rpc.netty.pipeline.websock.WebSocketServiceHandler;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -185,6 +186,7 @@ public class HttpRequestRouter implements ChannelUpstreamHandler {
 			throw new Exception("Failed to extract a message event for assumed type HttpRequest", ex);
 		}
 		// now we have a request...
+		RemotingPipelineFactory.onFrameIn(ctx);
 		String uri = request.getUri();
 		int qindex = uri.indexOf("?");
 		if(qindex!=-1) {
@@ -0,0 +1,828 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline.http;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_RANGES;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CACHE_CONTROL;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_ENCODING;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_RANGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_MODIFIED_SINCE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.IF_RANGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.LAST_MODIFIED;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.RANGE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.VARY;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.PARTIAL_CONTENT;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.ObjectName;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.handler.stream.ChunkedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: StaticContentHandler</p>
+ * <p>Description: The default {@link HttpRequestHandler} which serves static content from a root directory.
+ * Files up to a configured size are read once and held in memory along with a gzipped copy when the content type compresses, 
+ * so repeated requests are answered with no disk access and no copying. Larger files are sent with a {@link FileRegion} (sendfile).
+ * Responses carry an ETag and Last-Modified, conditional GETs are answered with 304s and single byte ranges are supported.
+ * Cached files are periodically checked and dropped when they change or are deleted.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandler</code></p>
+ */
+
+public class StaticContentHandler implements HttpRequestHandler, StaticContentHandlerMXBean {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The root directory */
+	protected final File root;
+	/** The canonical path of the root directory */
+	protected final String rootPath;
+	/** The known files keyed by their path relative to the root */
+	protected final ConcurrentHashMap<String, StaticContent> files = new ConcurrentHashMap<String, StaticContent>();
+	/** The number of bytes of content held in memory */
+	protected final AtomicLong cachedBytes = new AtomicLong(0L);
+	/** The maximum number of bytes of content held in memory */
+	protected final long maxCachedBytes;
+	/** The size above which files are sent from disk */
+	protected final long maxCachedFileSize;
+	/** The Cache-Control header value */
+	protected final String cacheControl;
+	/** The scheduler that checks cached files for changes */
+	protected final ScheduledExecutorService scanner;
+	/** The management interface ObjectName */
+	protected final ObjectName objectName;
+	
+	/** The number of responses served from memory */
+	protected final AtomicLong memoryResponses = new AtomicLong(0L);
+	/** The number of responses sent from disk */
+	protected final AtomicLong fileResponses = new AtomicLong(0L);
+	/** The number of not modified responses */
+	protected final AtomicLong notModifiedResponses = new AtomicLong(0L);
+	/** The number of partial content responses */
+	protected final AtomicLong partialResponses = new AtomicLong(0L);
+	/** The number of not found responses */
+	protected final AtomicLong notFoundResponses = new AtomicLong(0L);
+	/** The number of invalidated files */
+	protected final AtomicLong invalidations = new AtomicLong(0L);
+	
+	/** The conf property name for the static content root directory */
+	public static final String STATIC_ROOT_PROP = "tsd.http.staticroot";
+	/** The conf property name for the maximum number of bytes of static content held in memory */
+	public static final String STATIC_CACHE_SIZE_PROP = "helios.http.static.cachesize";
+	/** The default maximum number of bytes of static content held in memory */
+	public static final long DEFAULT_STATIC_CACHE_SIZE = 32 * 1024 * 1024;
+	/** The conf property name for the size in bytes above which static files are sent from disk */
+	public static final String STATIC_MAX_FILE_PROP = "helios.http.static.maxfile";
+	/** The default size in bytes above which static files are sent from disk */
+	public static final long DEFAULT_STATIC_MAX_FILE = 1024 * 1024;
+	/** The conf property name for the max-age in seconds clients may cache static content for */
+	public static final String STATIC_MAX_AGE_PROP = "helios.http.static.maxage";
+	/** The default max-age in seconds clients may cache static content for */
+	public static final long DEFAULT_STATIC_MAX_AGE = 300;
+	/** The conf property name for the period in ms. at which cached files are checked for changes */
+	public static final String STATIC_SCAN_PERIOD_PROP = "helios.http.static.scan";
+	/** The default period in ms. at which cached files are checked for changes */
+	public static final long DEFAULT_STATIC_SCAN_PERIOD = 5000;
+	
+	/** The default file served for directory requests */
+	public static final String INDEX_FILE = "index.html";
+	/** The smallest compressible file that will be gzipped */
+	public static final int MIN_GZIP_SIZE = 256;
+	/** The HTTP date format */
+	public static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+	
+	/** Content types keyed by file extension */
+	protected static final Map<String, String> CONTENT_TYPES;
+	/** The default content type */
+	public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	
+	static {
+		Map<String, String> types = new HashMap<String, String>();
+		types.put("html", "text/html; charset=UTF-8");
+		types.put("htm", "text/html; charset=UTF-8");
+		types.put("css", "text/css; charset=UTF-8");
+		types.put("js", "application/javascript; charset=UTF-8");
+		types.put("json", "application/json; charset=UTF-8");
+		types.put("map", "application/json; charset=UTF-8");
+		types.put("xml", "application/xml; charset=UTF-8");
+		types.put("txt", "text/plain; charset=UTF-8");
+		types.put("csv", "text/csv; charset=UTF-8");
+		types.put("svg", "image/svg+xml");
+		types.put("png", "image/png");
+		types.put("gif", "image/gif");
+		types.put("jpg", "image/jpeg");
+		types.put("jpeg", "image/jpeg");
+		types.put("ico", "image/x-icon");
+		types.put("woff", "application/font-woff");
+		types.put("ttf", "application/x-font-ttf");
+		types.put("eot", "application/vnd.ms-fontobject");
+		CONTENT_TYPES = Collections.unmodifiableMap(types);
+	}
+	
+	/** The per thread HTTP date formatter */
+	protected static final ThreadLocal<SimpleDateFormat> HTTP_DATE = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat sdf = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+			sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return sdf;
+		}
+	};
+	
+	/**
+	 * Creates a new StaticContentHandler
+	 * @param root The root directory to serve content from
+	 * @param config The extracted configuration
+	 */
+	public StaticContentHandler(File root, Properties config) {
+		if(root==null) throw new IllegalArgumentException("The passed root directory was null");
+		if(!root.isDirectory()) throw new IllegalArgumentException("The passed root [" + root + "] is not a directory");
+		this.root = root;
+		try {
+			rootPath = root.getCanonicalPath();
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to resolve root directory [" + root + "]", iex);
+		}
+		maxCachedBytes = ConfigurationHelper.getLongSystemThenEnvProperty(STATIC_CACHE_SIZE_PROP, DEFAULT_STATIC_CACHE_SIZE, config);
+		maxCachedFileSize = ConfigurationHelper.getLongSystemThenEnvProperty(STATIC_MAX_FILE_PROP, DEFAULT_STATIC_MAX_FILE, config);
+		cacheControl = "max-age=" + ConfigurationHelper.getLongSystemThenEnvProperty(STATIC_MAX_AGE_PROP, DEFAULT_STATIC_MAX_AGE, config);
+		final long scanPeriod = ConfigurationHelper.getLongSystemThenEnvProperty(STATIC_SCAN_PERIOD_PROP, DEFAULT_STATIC_SCAN_PERIOD, config);
+		if(scanPeriod > 0) {
+			scanner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "StaticContentScanner");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			scanner.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					scan();
+				}
+			}, scanPeriod, scanPeriod, TimeUnit.MILLISECONDS);
+		} else {
+			scanner = null;
+		}
+		objectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=StaticContentHandler"));
+		if(JMXHelper.isRegistered(objectName)) {
+			try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		}
+		JMXHelper.registerMBean(this, objectName);
+		log.info("Created StaticContentHandler. Root:[{}], Cache Size:[{}], Max Cached File:[{}]", new Object[]{rootPath, maxCachedBytes, maxCachedFileSize});
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Registers as the default handler</p>
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.HttpRequestHandler#getUriPatterns()
+	 */
+	@Override
+	public Set<String> getUriPatterns() {
+		return Collections.singleton("");
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.HttpRequestHandler#handle(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent, org.jboss.netty.handler.codec.http.HttpRequest, java.lang.String)
+	 */
+	@Override
+	public void handle(ChannelHandlerContext ctx, MessageEvent e, HttpRequest request, String path) throws Exception {
+		final Channel channel = e.getChannel();
+		final HttpMethod method = request.getMethod();
+		final boolean head = HttpMethod.HEAD.equals(method);
+		if(!head && !HttpMethod.GET.equals(method)) {
+			sendStatus(channel, request, METHOD_NOT_ALLOWED);
+			return;
+		}
+		final String key = normalize(path);
+		if(key==null) {
+			sendStatus(channel, request, BAD_REQUEST);
+			return;
+		}
+		final StaticContent content = getContent(key);
+		if(content==null) {
+			notFoundResponses.incrementAndGet();
+			sendStatus(channel, request, NOT_FOUND);
+			return;
+		}
+		if(isNotModified(request, content)) {
+			notModifiedResponses.incrementAndGet();
+			HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_MODIFIED);
+			setCacheHeaders(response, content);
+			write(channel, request, response, null, null);
+			return;
+		}
+		final String range = request.getHeader(RANGE);
+		if(range!=null && isRangeCurrent(request, content)) {
+			final long[] bounds = parseRange(range, content.length);
+			if(bounds==UNSATISFIABLE) {
+				HttpResponse response = new DefaultHttpResponse(HTTP_1_1, REQUESTED_RANGE_NOT_SATISFIABLE);
+				response.setHeader(CONTENT_RANGE, "bytes */" + content.length);
+				HttpHeaders.setContentLength(response, 0);
+				write(channel, request, response, null, null);
+				return;
+			}
+			if(bounds!=null) {
+				partialResponses.incrementAndGet();
+				final long start = bounds[0], count = bounds[1] - bounds[0] + 1;
+				HttpResponse response = new DefaultHttpResponse(HTTP_1_1, PARTIAL_CONTENT);
+				setCacheHeaders(response, content);
+				response.setHeader(CONTENT_TYPE, content.contentType);
+				response.setHeader(CONTENT_RANGE, "bytes " + bounds[0] + "-" + bounds[1] + "/" + content.length);
+				HttpHeaders.setContentLength(response, count);
+				send(ctx, channel, request, response, content, head ? null : content.content, start, count);
+				return;
+			}
+		}
+		HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+		setCacheHeaders(response, content);
+		response.setHeader(CONTENT_TYPE, content.contentType);
+		ChannelBuffer body = content.content;
+		if(content.gzipped!=null) {
+			response.setHeader(VARY, ACCEPT_ENCODING);
+			if(acceptsGzip(request)) {
+				body = content.gzipped;
+				response.setHeader(CONTENT_ENCODING, "gzip");
+				response.setHeader(ETAG, content.gzipETag);
+			}
+		}
+		final long count = body==null ? content.length : body.readableBytes();
+		HttpHeaders.setContentLength(response, count);
+		send(ctx, channel, request, response, content, head ? null : body, 0, count);
+	}
+	
+	/**
+	 * Writes the response followed by its body, either from memory or from the file
+	 * @param ctx The channel handler context
+	 * @param channel The channel to write to
+	 * @param request The HTTP request
+	 * @param response The response with its headers set
+	 * @param content The requested content
+	 * @param body The in memory body, null to send from the file
+	 * @param start The offset of the first byte to send
+	 * @param count The number of bytes to send
+	 * @throws IOException thrown if the file cannot be opened
+	 */
+	protected void send(ChannelHandlerContext ctx, Channel channel, HttpRequest request, HttpResponse response, StaticContent content, ChannelBuffer body, long start, long count) throws IOException {
+		if(HttpMethod.HEAD.equals(request.getMethod())) {
+			write(channel, request, response, null, null);
+		} else if(body!=null) {
+			memoryResponses.incrementAndGet();
+			response.setContent(body.slice(body.readerIndex() + (int)start, (int)count));
+			write(channel, request, response, null, null);
+		} else {
+			fileResponses.incrementAndGet();
+			final RandomAccessFile raf = new RandomAccessFile(content.file, "r");
+			if(ctx.getPipeline().get(SslHandler.class)!=null) {
+				write(channel, request, response, new ChunkedFile(raf, start, count, 8192), null);
+			} else {
+				write(channel, request, response, null, new DefaultFileRegion(raf.getChannel(), start, count, true));
+			}
+		}
+	}
+	
+	/**
+	 * Writes the response and optional trailing body, closing the channel afterwards unless the request is keep-alive
+	 * @param channel The channel to write to
+	 * @param request The HTTP request
+	 * @param response The response
+	 * @param chunked An optional chunked body
+	 * @param region An optional file region body
+	 */
+	protected void write(Channel channel, HttpRequest request, HttpResponse response, ChunkedFile chunked, final FileRegion region) {
+		final boolean keepAlive = HttpHeaders.isKeepAlive(request);
+		if(keepAlive && !request.getProtocolVersion().isKeepAliveDefault()) {
+			response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		}
+		ChannelFuture future = channel.write(response);
+		if(chunked!=null) {
+			future = channel.write(chunked);
+		} else if(region!=null) {
+			future = channel.write(region);
+			future.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture f) throws Exception {
+					if(!f.isSuccess()) region.releaseExternalResources();
+				}
+			});
+		}
+		if(!keepAlive) {
+			future.addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+	
+	/**
+	 * Sends a body-less status response
+	 * @param channel The channel to write to
+	 * @param request The HTTP request
+	 * @param status The status to send
+	 */
+	protected void sendStatus(Channel channel, HttpRequest request, HttpResponseStatus status) {
+		HttpResponse response = new DefaultHttpResponse(HTTP_1_1, status);
+		HttpHeaders.setContentLength(response, 0);
+		write(channel, request, response, null, null);
+	}
+	
+	/**
+	 * Sets the validator and caching headers on the passed response
+	 * @param response The response
+	 * @param content The content being responded with
+	 */
+	protected void setCacheHeaders(HttpResponse response, StaticContent content) {
+		response.setHeader(ETAG, content.eTag);
+		response.setHeader(LAST_MODIFIED, content.lastModifiedHeader);
+		response.setHeader(CACHE_CONTROL, cacheControl);
+		response.setHeader(ACCEPT_RANGES, "bytes");
+	}
+	
+	/**
+	 * Determines if the client's copy of the content is current
+	 * @param request The HTTP request
+	 * @param content The requested content
+	 * @return true if a 304 should be sent
+	 */
+	protected boolean isNotModified(HttpRequest request, StaticContent content) {
+		final String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		if(ifNoneMatch!=null) {
+			return ifNoneMatch.contains(content.eTag) || (content.gzipETag!=null && ifNoneMatch.contains(content.gzipETag)) || "*".equals(ifNoneMatch.trim());
+		}
+		final String ifModifiedSince = request.getHeader(IF_MODIFIED_SINCE);
+		if(ifModifiedSince!=null) {
+			if(ifModifiedSince.equals(content.lastModifiedHeader)) return true;
+			final long since = parseDate(ifModifiedSince);
+			return since!=-1L && content.lastModified/1000 <= since/1000;
+		}
+		return false;
+	}
+	
+	/**
+	 * Determines if a range request applies, which is when there is no If-Range or it matches the current content
+	 * @param request The HTTP request
+	 * @param content The requested content
+	 * @return true if the range should be honoured
+	 */
+	protected boolean isRangeCurrent(HttpRequest request, StaticContent content) {
+		final String ifRange = request.getHeader(IF_RANGE);
+		return ifRange==null || ifRange.equals(content.eTag) || ifRange.equals(content.lastModifiedHeader);
+	}
+	
+	/** Marker returned by {@link #parseRange(String, long)} when the range cannot be satisfied */
+	protected static final long[] UNSATISFIABLE = new long[0];
+	
+	/**
+	 * Parses a single byte range
+	 * @param range The Range header value
+	 * @param length The length of the content
+	 * @return the first and last byte positions, {@link #UNSATISFIABLE} if the range is outside the content, 
+	 * or null if the header is malformed or specifies multiple ranges, in which case the full content is sent
+	 */
+	protected static long[] parseRange(String range, long length) {
+		String r = range.trim();
+		if(!r.startsWith("bytes=") || r.indexOf(',')!=-1) return null;
+		r = r.substring(6).trim();
+		final int dash = r.indexOf('-');
+		if(dash==-1) return null;
+		try {
+			long first, last;
+			if(dash==0) {
+				final long suffix = Long.parseLong(r.substring(1).trim());
+				if(suffix<=0 || length==0) return UNSATISFIABLE;
+				first = Math.max(0, length - suffix);
+				last = length - 1;
+			} else {
+				first = Long.parseLong(r.substring(0, dash).trim());
+				if(first >= length) return UNSATISFIABLE;
+				final String end = r.substring(dash+1).trim();
+				last = end.isEmpty() ? length - 1 : Long.parseLong(end);
+				if(last < first) return null;
+				last = Math.min(last, length - 1);
+			}
+			return new long[]{first, last};
+		} catch (NumberFormatException nex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Determines if the client accepts gzip content encoding
+	 * @param request The HTTP request
+	 * @return true if gzip is accepted
+	 */
+	protected static boolean acceptsGzip(HttpRequest request) {
+		final String accept = request.getHeader(ACCEPT_ENCODING);
+		return accept!=null && accept.contains("gzip");
+	}
+	
+	/**
+	 * Parses an HTTP date
+	 * @param date The date string
+	 * @return the UTC long timestamp or -1 if the date could not be parsed
+	 */
+	protected static long parseDate(String date) {
+		try {
+			return HTTP_DATE.get().parse(date).getTime();
+		} catch (Exception ex) {
+			return -1L;
+		}
+	}
+	
+	/**
+	 * Normalizes a requested URI to a path relative to the root directory
+	 * @param path The requested URI
+	 * @return the relative path or null if the path is invalid or escapes the root
+	 */
+	protected static String normalize(String path) {
+		String p = path;
+		if(p.indexOf('%')!=-1) {
+			try {
+				p = URLDecoder.decode(p.replace("+", "%2B"), "UTF-8");
+			} catch (Exception ex) {
+				return null;
+			}
+		}
+		if(p.indexOf('\\')!=-1 || p.indexOf('\0')!=-1) return null;
+		while(p.startsWith("/")) p = p.substring(1);
+		if(p.isEmpty() || p.endsWith("/")) p = p + INDEX_FILE;
+		final String segments = "/" + p + "/";
+		if(segments.contains("/../") || segments.contains("/./") || segments.contains("//")) return null;
+		return p;
+	}
+	
+	/**
+	 * Returns the content for the passed relative path, loading it on first request
+	 * @param key The relative path
+	 * @return the content or null if there is no readable file for the path
+	 * @throws IOException thrown on any error reading the file
+	 */
+	protected StaticContent getContent(String key) throws IOException {
+		StaticContent content = files.get(key);
+		if(content!=null) return content;
+		final File file = new File(root, key);
+		if(!file.isFile() || !file.canRead()) return null;
+		if(!file.getCanonicalPath().startsWith(rootPath + File.separator)) return null;
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+		final String contentType = contentType(key);
+		ChannelBuffer plain = null, gzipped = null;
+		if(length <= maxCachedFileSize && cachedBytes.get() + length <= maxCachedBytes) {
+			final byte[] bytes = readFully(file, (int)length);
+			plain = ChannelBuffers.wrappedBuffer(bytes);
+			if(length >= MIN_GZIP_SIZE && isCompressible(contentType)) {
+				final byte[] gz = gzip(bytes);
+				if(gz.length < length - (length >> 3)) {
+					gzipped = ChannelBuffers.wrappedBuffer(gz);
+				}
+			}
+		}
+		content = new StaticContent(file, length, lastModified, contentType, plain, gzipped);
+		final StaticContent prior = files.putIfAbsent(key, content);
+		if(prior!=null) return prior;
+		cachedBytes.addAndGet(content.cachedSize());
+		return content;
+	}
+	
+	/**
+	 * Drops cached files that have changed or been deleted since they were loaded
+	 */
+	protected void scan() {
+		try {
+			for(Map.Entry<String, StaticContent> entry: files.entrySet()) {
+				final StaticContent content = entry.getValue();
+				final File file = content.file;
+				if(!file.isFile() || file.lastModified()!=content.lastModified || file.length()!=content.length) {
+					invalidate(entry.getKey(), content);
+				}
+			}
+		} catch (Exception ex) {
+			log.warn("Static content scan failed", ex);
+		}
+	}
+	
+	/**
+	 * Removes the passed content from the cache
+	 * @param key The content's relative path
+	 * @param content The content to remove
+	 */
+	protected void invalidate(String key, StaticContent content) {
+		if(files.remove(key, content)) {
+			cachedBytes.addAndGet(-content.cachedSize());
+			invalidations.incrementAndGet();
+			log.debug("Invalidated static content [{}]", key);
+		}
+	}
+	
+	/**
+	 * Returns the content type for the passed path
+	 * @param path The path
+	 * @return the content type
+	 */
+	protected static String contentType(String path) {
+		final int dot = path.lastIndexOf('.');
+		if(dot==-1 || dot < path.lastIndexOf('/')) return DEFAULT_CONTENT_TYPE;
+		final String type = CONTENT_TYPES.get(path.substring(dot+1).toLowerCase());
+		return type==null ? DEFAULT_CONTENT_TYPE : type;
+	}
+	
+	/**
+	 * Determines if content of the passed type is worth compressing
+	 * @param contentType The content type
+	 * @return true if the content should be gzipped
+	 */
+	protected static boolean isCompressible(String contentType) {
+		return contentType.startsWith("text/") || contentType.startsWith("application/javascript") || contentType.startsWith("application/json") 
+				|| contentType.startsWith("application/xml") || contentType.startsWith("image/svg");
+	}
+	
+	/**
+	 * Reads the full content of a file
+	 * @param file The file to read
+	 * @param length The length of the file
+	 * @return the file content
+	 * @throws IOException thrown on any error reading the file
+	 */
+	protected static byte[] readFully(File file, int length) throws IOException {
+		final byte[] bytes = new byte[length];
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(file);
+			int read = 0;
+			while(read < length) {
+				final int r = fis.read(bytes, read, length - read);
+				if(r==-1) throw new IOException("File [" + file + "] was truncated while reading");
+				read += r;
+			}
+			return bytes;
+		} finally {
+			if(fis!=null) try { fis.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Gzips the passed bytes
+	 * @param bytes The bytes to compress
+	 * @return the compressed bytes
+	 * @throws IOException will not happen
+	 */
+	protected static byte[] gzip(byte[] bytes) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length/3);
+		final GZIPOutputStream gos = new GZIPOutputStream(baos);
+		gos.write(bytes);
+		gos.close();
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Stops the change scan and unregisters the management interface
+	 */
+	public void shutdown() {
+		if(scanner!=null) scanner.shutdownNow();
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		flush();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#flush()
+	 */
+	@Override
+	public void flush() {
+		for(Map.Entry<String, StaticContent> entry: files.entrySet()) {
+			invalidate(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getRootDirectory()
+	 */
+	@Override
+	public String getRootDirectory() {
+		return rootPath;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getFileCount()
+	 */
+	@Override
+	public int getFileCount() {
+		return files.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getCachedBytes()
+	 */
+	@Override
+	public long getCachedBytes() {
+		return cachedBytes.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getMaxCachedBytes()
+	 */
+	@Override
+	public long getMaxCachedBytes() {
+		return maxCachedBytes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getMaxCachedFileSize()
+	 */
+	@Override
+	public long getMaxCachedFileSize() {
+		return maxCachedFileSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getMemoryResponses()
+	 */
+	@Override
+	public long getMemoryResponses() {
+		return memoryResponses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getFileResponses()
+	 */
+	@Override
+	public long getFileResponses() {
+		return fileResponses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getNotModifiedResponses()
+	 */
+	@Override
+	public long getNotModifiedResponses() {
+		return notModifiedResponses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getPartialResponses()
+	 */
+	@Override
+	public long getPartialResponses() {
+		return partialResponses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getNotFoundResponses()
+	 */
+	@Override
+	public long getNotFoundResponses() {
+		return notFoundResponses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean#getInvalidations()
+	 */
+	@Override
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+	
+	/**
+	 * <p>Title: StaticContent</p>
+	 * <p>Description: The metadata, validators and optional in memory content of one static file</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandler.StaticContent</code></p>
+	 */
+	protected static class StaticContent {
+		/** The file */
+		final File file;
+		/** The file length */
+		final long length;
+		/** The file's last modified timestamp when it was loaded */
+		final long lastModified;
+		/** The formatted Last-Modified header */
+		final String lastModifiedHeader;
+		/** The ETag of the plain content */
+		final String eTag;
+		/** The ETag of the gzipped content, null if there is none */
+		final String gzipETag;
+		/** The content type */
+		final String contentType;
+		/** The plain content, null if the file is sent from disk */
+		final ChannelBuffer content;
+		/** The gzipped content, null if the content is not compressed */
+		final ChannelBuffer gzipped;
+		
+		/**
+		 * Creates a new StaticContent
+		 * @param file The file
+		 * @param length The file length
+		 * @param lastModified The file's last modified timestamp
+		 * @param contentType The content type
+		 * @param content The plain content, null if the file is sent from disk
+		 * @param gzipped The gzipped content, null if the content is not compressed
+		 */
+		StaticContent(File file, long length, long lastModified, String contentType, ChannelBuffer content, ChannelBuffer gzipped) {
+			this.file = file;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.contentType = contentType;
+			this.content = content;
+			this.gzipped = gzipped;
+			lastModifiedHeader = HTTP_DATE.get().format(new Date(lastModified));
+			final String tag = Long.toHexString(lastModified) + "-" + Long.toHexString(length);
+			eTag = "\"" + tag + "\"";
+			gzipETag = gzipped==null ? null : "\"" + tag + "-gz\"";
+		}
+		
+		/**
+		 * Returns the number of bytes this content holds in memory
+		 * @return the number of cached bytes
+		 */
+		long cachedSize() {
+			return (content==null ? 0 : content.capacity()) + (gzipped==null ? 0 : gzipped.capacity());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline.http;
+
+/**
+ * <p>Title: StaticContentHandlerMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link StaticContentHandler}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.http.StaticContentHandlerMXBean</code></p>
+ */
+
+public interface StaticContentHandlerMXBean {
+	/**
+	 * Returns the root directory static content is served from
+	 * @return the root directory
+	 */
+	public String getRootDirectory();
+	
+	/**
+	 * Returns the number of files with cached metadata
+	 * @return the number of known files
+	 */
+	public int getFileCount();
+	
+	/**
+	 * Returns the number of bytes of content, plain and gzipped, held in memory
+	 * @return the number of cached bytes
+	 */
+	public long getCachedBytes();
+	
+	/**
+	 * Returns the maximum number of bytes of content held in memory
+	 * @return the cache size limit in bytes
+	 */
+	public long getMaxCachedBytes();
+	
+	/**
+	 * Returns the size in bytes above which files are sent from disk instead of memory
+	 * @return the maximum cached file size
+	 */
+	public long getMaxCachedFileSize();
+	
+	/**
+	 * Returns the number of responses served from memory
+	 * @return the number of memory responses
+	 */
+	public long getMemoryResponses();
+	
+	/**
+	 * Returns the number of responses sent from disk
+	 * @return the number of file responses
+	 */
+	public long getFileResponses();
+	
+	/**
+	 * Returns the number of 304 Not Modified responses
+	 * @return the number of not modified responses
+	 */
+	public long getNotModifiedResponses();
+	
+	/**
+	 * Returns the number of 206 Partial Content responses
+	 * @return the number of partial responses
+	 */
+	public long getPartialResponses();
+	
+	/**
+	 * Returns the number of requests for content that was not found
+	 * @return the number of not found responses
+	 */
+	public long getNotFoundResponses();
+	
+	/**
+	 * Returns the number of cached files invalidated because they changed or were deleted
+	 * @return the number of invalidations
+	 */
+	public long getInvalidations();
+	
+	/**
+	 * Discards all cached content
+	 */
+	public void flush();
+}
@@ -0,0 +1,148 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline.telnet;
+
+import java.util.Properties;
+
+import net.opentsdb.core.TSDB;
+
+import org.helios.tsdb.plugins.rpc.netty.pipeline.PipelineTemplate;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.PipelineTemplate.HandlerFactory;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.compression.ZlibDecoder;
+import org.jboss.netty.handler.codec.compression.ZlibWrapper;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.jboss.netty.handler.codec.string.StringDecoder;
+import org.jboss.netty.handler.codec.string.StringEncoder;
+import org.jboss.netty.util.CharsetUtil;
+
+/**
+ * <p>Title: TelnetProtocolInitiator</p>
+ * <p>Description: Protocol initiator for the OpenTSDB line oriented telnet protocol, either in plain text 
+ * (the first byte is a lower case command letter) or as a gzip stream (the first two bytes are the gzip magic),
+ * which is inflated before the lines are framed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.telnet.TelnetProtocolInitiator</code></p>
+ */
+
+public class TelnetProtocolInitiator implements ProtocolInitiator {
+	/** The handlers installed on a plain text telnet pipeline */
+	protected final PipelineTemplate template = new PipelineTemplate();
+	/** The handlers installed on a gzipped telnet pipeline */
+	protected final PipelineTemplate gzipTemplate = new PipelineTemplate();
+	
+	/** The first gzip magic byte */
+	public static final int GZIP_MAGIC1 = 0x1f;
+	/** The second gzip magic byte */
+	public static final int GZIP_MAGIC2 = 0x8b;
+	/** The maximum telnet line length, matching the TSD */
+	public static final int MAX_LINE_LENGTH = 1024;
+	
+	/** The shared string decoder */
+	protected static final StringDecoder STRING_DECODER = new StringDecoder(CharsetUtil.ISO_8859_1);
+	/** The shared string encoder */
+	protected static final StringEncoder STRING_ENCODER = new StringEncoder(CharsetUtil.ISO_8859_1);
+	
+	/**
+	 * Creates a new TelnetProtocolInitiator
+	 * @param tsdb The TSDB to submit points to
+	 * @param config The extracted configuration, read for {@link TelnetRpcHandler#TELNET_PUT_PROP}
+	 */
+	public TelnetProtocolInitiator(TSDB tsdb, Properties config) {
+		final TelnetRpcHandler handler = new TelnetRpcHandler(tsdb, ConfigurationHelper.getBooleanSystemThenEnvProperty(TelnetRpcHandler.TELNET_PUT_PROP, TelnetRpcHandler.DEFAULT_TELNET_PUT, config));
+		final HandlerFactory framer = new HandlerFactory() {
+			@Override
+			public ChannelHandler newHandler() {
+				return new DelimiterBasedFrameDecoder(MAX_LINE_LENGTH, Delimiters.lineDelimiter());
+			}
+		};
+		gzipTemplate.addFactory("inflater", new HandlerFactory() {
+			@Override
+			public ChannelHandler newHandler() {
+				return new ZlibDecoder(ZlibWrapper.GZIP);
+			}
+		});
+		for(PipelineTemplate t: new PipelineTemplate[]{gzipTemplate, template}) {
+			t.addFactory("framer", framer)
+				.addShared("decoder", STRING_DECODER)
+				.addShared("encoder", STRING_ENCODER)
+				.addShared("telnet", handler);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#requiredBytes()
+	 */
+	@Override
+	public int requiredBytes() {
+		return 2;
+	}
+	
+	/**
+	 * Determines if the passed buffer starts with the gzip magic
+	 * @param buff The buffer to test
+	 * @return true if the buffer is gzipped
+	 */
+	protected static boolean isGzip(ChannelBuffer buff) {
+		final int index = buff.readerIndex();
+		return buff.getUnsignedByte(index)==GZIP_MAGIC1 && buff.getUnsignedByte(index+1)==GZIP_MAGIC2;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#match(org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	public boolean match(ChannelBuffer buff) {
+		final int b0 = buff.getUnsignedByte(buff.readerIndex());
+		return (b0 >= 'a' && b0 <= 'z') || isGzip(buff);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#modifyPipeline(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	public void modifyPipeline(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+		(isGzip(buffer) ? gzipTemplate : template).apply(ctx.getPipeline());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#getProtocol()
+	 */
+	@Override
+	public String getProtocol() {
+		return "telnet";
+	}
+}
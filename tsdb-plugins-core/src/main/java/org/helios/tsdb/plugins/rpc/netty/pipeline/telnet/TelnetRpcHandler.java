@@ -0,0 +1,216 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline.telnet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.opentsdb.core.TSDB;
+import net.opentsdb.core.Tags;
+
+import org.helios.tsdb.plugins.rpc.netty.pipeline.RemotingPipelineFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
+
+/**
+ * <p>Title: TelnetRpcHandler</p>
+ * <p>Description: Handles decoded OpenTSDB telnet lines. Supports <b><code>put</code></b>, <b><code>version</code></b> and <b><code>exit</code></b>,
+ * answering errors in the same form as the TSD. The plugin RPC port is not authenticated, so <b><code>put</code></b> is refused unless
+ * {@link #TELNET_PUT_PROP} is enabled.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.telnet.TelnetRpcHandler</code></p>
+ */
+@Sharable
+public class TelnetRpcHandler extends SimpleChannelUpstreamHandler {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The TSDB to submit points to */
+	protected final TSDB tsdb;
+	/** Indicates if the put command is enabled */
+	protected final boolean putEnabled;
+	
+	/** The version command response */
+	public static final String VERSION_RESPONSE = "tsdb-plugins telnet\n";
+	/** The put command response when put is not enabled */
+	public static final String PUT_DISABLED_RESPONSE = "put: not enabled on this port\n";
+	
+	/** The config property name for enabling the telnet put command on the plugin RPC port */
+	public static final String TELNET_PUT_PROP = "helios.rpc.telnet.put.enabled";
+	/** The default telnet put enablement */
+	public static final boolean DEFAULT_TELNET_PUT = false;
+	
+	/**
+	 * Creates a new TelnetRpcHandler
+	 * @param tsdb The TSDB to submit points to
+	 * @param putEnabled true to accept put commands, false to refuse them
+	 */
+	public TelnetRpcHandler(TSDB tsdb, boolean putEnabled) {
+		this.tsdb = tsdb;
+		this.putEnabled = putEnabled;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		RemotingPipelineFactory.onFrameIn(ctx);
+		final String[] words = split((String)e.getMessage());
+		if(words.length==0) return;
+		final Channel channel = e.getChannel();
+		final String command = words[0];
+		if("put".equals(command)) {
+			if(!putEnabled) {
+				channel.write(PUT_DISABLED_RESPONSE);
+				return;
+			}
+			try {
+				put(channel, words);
+			} catch (IllegalArgumentException iae) {
+				channel.write("put: illegal argument: " + iae.getMessage() + "\n");
+			}
+		} else if("version".equals(command)) {
+			channel.write(VERSION_RESPONSE);
+		} else if("exit".equals(command)) {
+			channel.write("Bye.\n").addListener(ChannelFutureListener.CLOSE);
+		} else {
+			channel.write("unknown command: " + command + ".  Try `help'.\n");
+		}
+	}
+	
+	/**
+	 * Submits a data point: <b><code>put &lt;metric&gt; &lt;timestamp&gt; &lt;value&gt; &lt;tagk=tagv&gt; [...]</code></b>.
+	 * Values that look like integers are written as longs, other values as floats when they fit in one exactly and as doubles otherwise.
+	 * @param channel The channel to write errors to
+	 * @param words The split command line
+	 */
+	protected void put(final Channel channel, final String[] words) {
+		if(words.length < 5) {
+			throw new IllegalArgumentException("not enough arguments (need least 4, got " + (words.length - 1) + ")");
+		}
+		if(tsdb==null) {
+			throw new IllegalArgumentException("no TSDB available");
+		}
+		final String metric = words[1];
+		final long timestamp;
+		try {
+			timestamp = Long.parseLong(words[2]);
+		} catch (NumberFormatException nex) {
+			throw new IllegalArgumentException("invalid timestamp: " + words[2]);
+		}
+		final Map<String, String> tags = new HashMap<String, String>(words.length * 2);
+		for(int i = 4; i < words.length; i++) {
+			final int eq = words[i].indexOf('=');
+			if(eq < 1 || eq==words[i].length()-1) throw new IllegalArgumentException("invalid tag: " + words[i]);
+			tags.put(words[i].substring(0, eq), words[i].substring(eq+1));
+		}
+		final String value = words[3];
+		final Deferred<Object> d;
+		try {
+			if(Tags.looksLikeInteger(value)) {
+				d = tsdb.addPoint(metric, timestamp, Tags.parseLong(value), tags);
+			} else {
+				final double dvalue = Double.parseDouble(value);
+				if(fitsInFloat(dvalue)) {
+					d = tsdb.addPoint(metric, timestamp, (float)dvalue, tags);
+				} else {
+					d = tsdb.addPoint(metric, timestamp, dvalue, tags);
+				}
+			}
+		} catch (NumberFormatException nex) {
+			throw new IllegalArgumentException("invalid value: " + value);
+		}
+		d.addErrback(new Callback<Object, Exception>() {
+			@Override
+			public Object call(Exception ex) throws Exception {
+				if(channel.isConnected()) {
+					channel.write("put: HBase error: " + ex.getMessage() + "\n");
+				}
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Determines if the passed value can be stored as a float without losing precision
+	 * @param value The value to test
+	 * @return true if the value fits in a float
+	 */
+	protected static boolean fitsInFloat(final double value) {
+		return ((float)value)==value;
+	}
+	
+	/**
+	 * Splits a command line on spaces, ignoring repeated and surrounding spaces
+	 * @param line The line to split
+	 * @return the words in the line
+	 */
+	protected static String[] split(final String line) {
+		final int length = line.length();
+		int count = 0;
+		boolean inWord = false;
+		for(int i = 0; i < length; i++) {
+			final boolean space = line.charAt(i)==' ';
+			if(!space && !inWord) count++;
+			inWord = !space;
+		}
+		final String[] words = new String[count];
+		int w = 0, start = -1;
+		for(int i = 0; i <= length; i++) {
+			final boolean space = i==length || line.charAt(i)==' ';
+			if(space) {
+				if(start!=-1) {
+					words[w++] = line.substring(start, i);
+					start = -1;
+				}
+			} else if(start==-1) {
+				start = i;
+			}
+		}
+		return words;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
+	 */
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+		log.debug("Telnet connection error on [{}]", e.getChannel().getRemoteAddress(), e.getCause());
+		e.getChannel().close();
+	}
+}
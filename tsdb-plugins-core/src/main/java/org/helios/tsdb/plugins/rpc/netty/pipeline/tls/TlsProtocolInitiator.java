@@ -0,0 +1,143 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.rpc.netty.pipeline.tls;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: TlsProtocolInitiator</p>
+ * <p>Description: Protocol initiator for connections opening with a TLS (or SSLv2 compatible) ClientHello.
+ * An {@link SslHandler} is installed behind the protocol switch, followed by the protocol switch again, 
+ * so the protocol carried inside the TLS session is detected from the decrypted bytes.
+ * If no server SSL context is configured, TLS connections are closed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.rpc.netty.pipeline.tls.TlsProtocolInitiator</code></p>
+ */
+
+public class TlsProtocolInitiator implements ProtocolInitiator {
+	/** Static class logger */
+	private static final Logger LOG = LoggerFactory.getLogger(TlsProtocolInitiator.class);
+	
+	/** The server SSL context, null if TLS is not enabled */
+	protected final SSLContext sslContext;
+	
+	/** The TLS handshake record content type */
+	public static final int TLS_HANDSHAKE = 0x16;
+	/** The TLS/SSLv3 major version */
+	public static final int TLS_MAJOR_VERSION = 0x03;
+	/** The SSLv2 ClientHello message type */
+	public static final int SSLV2_CLIENT_HELLO = 0x01;
+	/** The system property naming the JSSE server key store */
+	public static final String KEYSTORE_PROP = "javax.net.ssl.keyStore";
+	/** The name of the SslHandler in the pipeline */
+	public static final String SSL_HANDLER_NAME = "ssl";
+	/** The name of the protocol switch installed behind the SslHandler */
+	public static final String INNER_SWITCH_NAME = "tlsProtocolSwitch";
+	
+	/**
+	 * Creates a new TlsProtocolInitiator
+	 * @param sslContext The server SSL context, or null if TLS is not enabled
+	 */
+	public TlsProtocolInitiator(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+	
+	/**
+	 * Returns the JVM's default SSL context if a key store has been configured through the standard JSSE system properties
+	 * @return the default SSL context or null if no key store is configured or the context cannot be initialized
+	 */
+	public static SSLContext getDefaultServerContext() {
+		if(System.getProperty(KEYSTORE_PROP)==null) return null;
+		try {
+			return SSLContext.getDefault();
+		} catch (Exception ex) {
+			LOG.warn("Failed to initialize default SSLContext. TLS connections will be rejected.", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#requiredBytes()
+	 */
+	@Override
+	public int requiredBytes() {
+		return 3;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#match(org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	public boolean match(ChannelBuffer buff) {
+		final int index = buff.readerIndex();
+		final int b0 = buff.getUnsignedByte(index);
+		final int b1 = buff.getUnsignedByte(index+1);
+		final int b2 = buff.getUnsignedByte(index+2);
+		// TLS record: handshake content type, major version 3, minor version 0 (SSLv3) to 4 (TLS 1.3)
+		if(b0==TLS_HANDSHAKE && b1==TLS_MAJOR_VERSION && b2 <= 0x04) return true;
+		// SSLv2 compatible ClientHello: 2 byte record length with the high bit set, then the message type
+		return (b0 & 0x80)!=0 && b2==SSLV2_CLIENT_HELLO;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#modifyPipeline(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	public void modifyPipeline(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+		if(sslContext==null) {
+			LOG.debug("Rejecting TLS connection from [{}]. TLS is not enabled.", channel.getRemoteAddress());
+			channel.close();
+			return;
+		}
+		final SSLEngine engine = sslContext.createSSLEngine();
+		engine.setUseClientMode(false);
+		final ChannelPipeline pipeline = ctx.getPipeline();
+		pipeline.addAfter(ctx.getName(), SSL_HANDLER_NAME, new SslHandler(engine));
+		pipeline.addAfter(SSL_HANDLER_NAME, INNER_SWITCH_NAME, ctx.getHandler());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.netty.pipeline.ProtocolInitiator#getProtocol()
+	 */
+	@Override
+	public String getProtocol() {
+		return "tls";
+	}
+}
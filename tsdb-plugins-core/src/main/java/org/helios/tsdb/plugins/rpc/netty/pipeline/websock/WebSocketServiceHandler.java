@@ -44,6 +44,7 @@ import org.helios.tsdb.plugins.remoting.json.JSONRequestRouter;
 import org.helios.tsdb.plugins.remoting.json.JSONResponse;
 import org.helios.tsdb.plugins.remoting.json.ResponseType;
 import org.helios.tsdb.plugins.remoting.json.serialization.TSDBTypeSerializer;
+import org.helios.tsdb.plugins.rpc.netty.pipeline.RemotingPipelineFactory;
 import org.helios.tsdb.plugins.rpc.session.RPCSessionAttribute;
 import org.helios.tsdb.plugins.rpc.session.RPCSessionManager;
 import org.helios.tsdb.plugins.util.StringHelper;
@@ -151,6 +152,7 @@ public class WebSocketServiceHandler  implements ChannelUpstreamHandler, Channel
 			if (message instanceof HttpRequest) {
 				handleRequest(ctx, (HttpRequest) message, (MessageEvent)e);
 			} else if (message instanceof WebSocketFrame) {
+				RemotingPipelineFactory.onFrameIn(ctx);
 				handleRequest(ctx, (WebSocketFrame) message);
 			}
 		} else {
@@ -184,10 +186,8 @@ public class WebSocketServiceHandler  implements ChannelUpstreamHandler, Channel
             throw new UnsupportedOperationException(String.format("%s frame types not supported", frame.getClass()
                     .getName()));
         }
-        String request = ((TextWebSocketFrame) frame).getText();
         JSONRequest wsRequest = null;
         try {
-        	wsRequest = JSONRequest.newJSONRequest(ctx.getChannel(), request);
         	
 //        	if("who".equals(wsRequest.getArgument("t").toString())) {
 //        		SocketAddress sa = ctx.getChannel().getRemoteAddress();
@@ -201,11 +201,12 @@ public class WebSocketServiceHandler  implements ChannelUpstreamHandler, Channel
 //        		}
 //        		SharedChannelGroup.getInstance().add(ctx.getChannel(), ChannelType.WEBSOCKET_REMOTE, "ClientWebSocket", host, agent);
 //        	} else {
-        		router.route(wsRequest);
+        		router.route(ctx.getChannel(), frame.getBinaryData());
 //        	}
         	
         		
         } catch (Exception ex) {
+        	String request = ((TextWebSocketFrame) frame).getText();
     		JSONResponse response = new JSONResponse(-1, ResponseType.ERR, ctx.getChannel(), wsRequest);
     		Map<String, String> map = new HashMap<String, String>(2);
     		map.put("err", "Failed to parse request [" + request + "]");
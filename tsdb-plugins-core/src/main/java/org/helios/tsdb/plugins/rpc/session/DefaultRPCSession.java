@@ -54,6 +54,12 @@ public class DefaultRPCSession implements IRPCSession {
 	protected final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
 	/** The session attributes */
 	protected final Map<RPCSessionAttribute, String> sessionAttributes = new EnumMap<RPCSessionAttribute, String>(RPCSessionAttribute.class);
+	/** The number of frames received from the remote */
+	protected final AtomicLong framesIn = new AtomicLong();
+	/** The number of frames written to the remote */
+	protected final AtomicLong framesOut = new AtomicLong();
+	/** The number of written bytes not yet flushed to the remote */
+	protected final AtomicLong bytesQueued = new AtomicLong();
 	
 	/** A reference to the RPCSessionManager */
 	protected final RPCSessionManager sessionManager;
@@ -182,6 +188,7 @@ public class DefaultRPCSession implements IRPCSession {
 	 */
 	@Override
 	public int getTimeToExpiry() {
+		if(getMaxInactiveInterval()<1) return -1;
 		int lat = (int)TimeUnit.SECONDS.convert(lastAccessTime.get(), TimeUnit.MILLISECONDS);
 		return (int) (getMaxInactiveInterval() - (SystemClock.unixTime()-lat));
 	}
@@ -192,8 +199,7 @@ public class DefaultRPCSession implements IRPCSession {
 	 */
 	@Override
 	public int getMaxInactiveInterval() {
-		// TODO Auto-generated method stub
-		return 0;
+		return sessionManager.getIdleTimeout();
 	}
 
 	/**
@@ -220,4 +226,69 @@ public class DefaultRPCSession implements IRPCSession {
 		sessionAttributes.put(type, value);		
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSession#heartbeat()
+	 */
+	@Override
+	public boolean heartbeat() {
+		return sessionLifecycle.heartbeat();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSession#onFrameIn()
+	 */
+	@Override
+	public void onFrameIn() {
+		framesIn.incrementAndGet();
+		touch();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSession#onFrameOut(long)
+	 */
+	@Override
+	public void onFrameOut(long bytes) {
+		framesOut.incrementAndGet();
+		bytesQueued.addAndGet(bytes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSession#onBytesWritten(long)
+	 */
+	@Override
+	public void onBytesWritten(long bytes) {
+		bytesQueued.addAndGet(-bytes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSessionMBean#getFramesIn()
+	 */
+	@Override
+	public long getFramesIn() {
+		return framesIn.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSessionMBean#getFramesOut()
+	 */
+	@Override
+	public long getFramesOut() {
+		return framesOut.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.IRPCSessionMBean#getBytesQueued()
+	 */
+	@Override
+	public long getBytesQueued() {
+		return bytesQueued.get();
+	}
+
 }
@@ -108,7 +108,7 @@ public interface IRPCSession extends IRPCSessionMBean {
 	
 	/**
 	 * Returns the number of seconds until this session expires without access from the client
-	 * @return seconds until expiry
+	 * @return seconds until expiry, or -1 if idle sessions do not expire
 	 */
 	public int getTimeToExpiry();
 	
@@ -132,4 +132,27 @@ public interface IRPCSession extends IRPCSessionMBean {
 	 */
 	public void addSessionAttribute(RPCSessionAttribute type, String value);
 	
+	/**
+	 * Sends a heartbeat probe to the remote
+	 * @return true if a probe was sent, false if the transport does not support heartbeats
+	 */
+	public boolean heartbeat();
+	
+	/**
+	 * Records a frame received from the remote and touches the session
+	 */
+	public void onFrameIn();
+	
+	/**
+	 * Records a frame written to the remote
+	 * @param bytes The number of bytes queued for the frame
+	 */
+	public void onFrameOut(long bytes);
+	
+	/**
+	 * Records bytes flushed to the remote
+	 * @param bytes The number of bytes flushed
+	 */
+	public void onBytesWritten(long bytes);
+	
 }
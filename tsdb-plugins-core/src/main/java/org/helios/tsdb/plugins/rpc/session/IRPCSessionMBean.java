@@ -67,7 +67,7 @@ public interface IRPCSessionMBean {
 	
 	/**
 	 * Returns the number of seconds until this session expires without access from the client
-	 * @return seconds until expiry
+	 * @return seconds until expiry, or -1 if idle sessions do not expire
 	 */
 	public int getTimeToExpiry();
 	
@@ -84,6 +84,24 @@ public interface IRPCSessionMBean {
 	 */
 	public Map<String, String> getSessionAttributes();
 	
+	/**
+	 * Returns the number of frames received from the remote
+	 * @return the number of frames received
+	 */
+	public long getFramesIn();
+	
+	/**
+	 * Returns the number of frames written to the remote
+	 * @return the number of frames written
+	 */
+	public long getFramesOut();
+	
+	/**
+	 * Returns the number of bytes written to the transport that have not yet been flushed to the remote
+	 * @return the number of queued bytes
+	 */
+	public long getBytesQueued();
+	
 	
 
 }
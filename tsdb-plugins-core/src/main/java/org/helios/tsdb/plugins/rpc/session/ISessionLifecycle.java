@@ -49,5 +49,11 @@ public interface ISessionLifecycle {
 	 * @return true if the session is expired, false otherwise
 	 */
 	public boolean isExpired();
+	
+	/**
+	 * Sends a heartbeat probe to the remote. Any traffic from the remote after the probe counts as the answer.
+	 * @return true if a probe was sent, false if the transport does not support heartbeats
+	 */
+	public boolean heartbeat();
 
 }
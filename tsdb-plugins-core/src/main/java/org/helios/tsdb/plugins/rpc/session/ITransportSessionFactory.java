@@ -39,6 +39,13 @@ public interface ITransportSessionFactory {
 	 */
 	public Class<?> getTransportType();
 	
+	/**
+	 * Returns the id of the session that would be created for the passed transport object, without creating it
+	 * @param transport The transport object which must be castable to the type returned in {@link #getTransportType()}
+	 * @return the session id for the passed transport object
+	 */
+	public String getSessionId(Object transport);
+	
 	/**
 	 * Creates a new IRPCSession for the passed transport object
 	 * @param transport The transport object which must be castable to the type returned in {@link #getTransportType()}
@@ -24,13 +24,21 @@
  */
 package org.helios.tsdb.plugins.rpc.session;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
 
@@ -38,13 +46,22 @@ import org.helios.tsdb.plugins.async.AsyncDispatcherExecutor;
 import org.helios.tsdb.plugins.rpc.netty.NetyChannelSessionFactory;
 import org.helios.tsdb.plugins.service.PluginContext;
 import org.helios.tsdb.plugins.service.TSDBPluginServiceLoader;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
+import org.helios.tsdb.plugins.util.SystemClock;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * <p>Title: RPCSessionManager</p>
- * <p>Description: The manager for {@link IRPCSession} instances</p> 
+ * <p>Description: The manager for {@link IRPCSession} instances. Sessions are held in a fixed number of shards
+ * selected by session id so registrations on different shards do not contend, and idle expiry and heartbeat deadlines
+ * are driven by a hashed wheel timer rather than by scanning the registered sessions.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.rpc.session.RPCSessionManager</code></p>
@@ -57,8 +74,26 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	private static final Object lock = new Object();
 	/** Instance logger */
 	private final Logger log = LoggerFactory.getLogger(getClass());
-	/** A map of rpc sessions keyed by the session id */
-	private final Map<String, IRPCSession> sessions = new ConcurrentHashMap<String, IRPCSession>();
+	/** The session registry shards, each a map of session entries keyed by the session id */
+	private final ConcurrentHashMap<String, SessionEntry>[] shards;
+	/** The mask applied to a session id hash to select a shard */
+	private final int shardMask;
+	/** The timer driving idle expiry and heartbeats */
+	private final Timer timer;
+	/** The idle time in seconds after which a session is expired */
+	private volatile int idleTimeout;
+	/** The idle time in seconds after which a session is sent a heartbeat */
+	private volatile int heartbeatInterval;
+	/** The time in seconds a session has to answer a heartbeat */
+	private volatile int heartbeatDeadline;
+	/** The number of sessions expired for being idle */
+	private final AtomicLong idleExpirations = new AtomicLong(0L);
+	/** The number of sessions expired for missing a heartbeat deadline */
+	private final AtomicLong heartbeatExpirations = new AtomicLong(0L);
+	/** The number of heartbeats sent */
+	private final AtomicLong heartbeatsSent = new AtomicLong(0L);
+	/** The number of sessions evicted through JMX */
+	private final AtomicLong evictions = new AtomicLong(0L);
 	/** A map of registered ITransportSessionFactory instances keyed by the the supported transport type */
 	private final Map<Class<?>, ITransportSessionFactory> lifeCycleFactories = new ConcurrentHashMap<Class<?>, ITransportSessionFactory>();
 	/** A set of registered session lifecycle listeners */
@@ -74,6 +109,32 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	/** The JMX ObjectName for the RPCSessionManager MBean */
 	public static final ObjectName OBJECT_NAME = JMXHelper.objectName(new StringBuilder(RPCSessionManager.class.getPackage().getName()).append(":service=").append(RPCSessionManager.class.getSimpleName()));
 	
+	/** The conf property name for the number of session registry shards */
+	public static final String SESSION_SHARDS_PROP = "helios.rpc.session.shards";
+	/** The default number of session registry shards */
+	public static final int DEFAULT_SESSION_SHARDS = 16;
+	/** The conf property name for the idle time in seconds after which a session is expired. Zero or less disables idle expiry. */
+	public static final String SESSION_IDLE_PROP = "helios.rpc.session.idle";
+	/** The default idle time in seconds after which a session is expired */
+	public static final int DEFAULT_SESSION_IDLE = 3600;
+	/** The conf property name for the idle time in seconds after which a session is sent a heartbeat. Zero or less disables heartbeats. */
+	public static final String SESSION_HEARTBEAT_PROP = "helios.rpc.session.heartbeat";
+	/** The default idle time in seconds after which a session is sent a heartbeat */
+	public static final int DEFAULT_SESSION_HEARTBEAT = 30;
+	/** The conf property name for the time in seconds a session has to answer a heartbeat */
+	public static final String SESSION_HEARTBEAT_DEADLINE_PROP = "helios.rpc.session.heartbeat.deadline";
+	/** The default time in seconds a session has to answer a heartbeat */
+	public static final int DEFAULT_SESSION_HEARTBEAT_DEADLINE = 10;
+	/** The conf property name for the expiry timer tick in ms. */
+	public static final String SESSION_TICK_PROP = "helios.rpc.session.tick";
+	/** The default expiry timer tick in ms. */
+	public static final long DEFAULT_SESSION_TICK = 500;
+	/** The number of ticks in the expiry timer wheel */
+	public static final int WHEEL_SIZE = 512;
+	
+	/** The session metrics that sessions can be ranked by */
+	public static final Set<String> RANKING_METRICS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("FramesIn", "FramesOut", "BytesQueued", "Idle")));
+	
 	
 	/**
 	 * Acquires and returns the singleton instance
@@ -90,16 +151,76 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 		return instance;
 	}
 	
+	/**
+	 * Stops the singleton instance, if one was created: the expiry timer and its thread are stopped, pending session events
+	 * are left to drain from the dispatcher, and the management interface is unregistered. The next call to {@link #getInstance()}
+	 * creates a new manager.
+	 */
+	public static void shutdown() {
+		synchronized(lock) {
+			final RPCSessionManager manager = instance;
+			if(manager==null) return;
+			instance = null;
+			final int pending = manager.timer.stop().size();
+			manager.threadPool.shutdown();
+			try { JMXHelper.unregisterMBean(OBJECT_NAME); } catch (Exception ex) {/* No Op */}
+			manager.log.info("Stopped RPCSessionManager. Cancelled [{}] pending session timeouts", pending);
+		}
+	}
+	
 	/**
 	 * Creates a new RPCSessionManager
 	 */
 	private RPCSessionManager() {
 		log.info("Created RPCSessionManager");		
 		pluginContext = TSDBPluginServiceLoader.getLoaderInstance().getPluginContext();
-		threadPool = new AsyncDispatcherExecutor("rpcsession", pluginContext.getExtracted());
+		final Properties config = pluginContext.getExtracted();
+		threadPool = new AsyncDispatcherExecutor("rpcsession", config);
+		int shardCount = 1;
+		final int requestedShards = ConfigurationHelper.getIntSystemThenEnvProperty(SESSION_SHARDS_PROP, DEFAULT_SESSION_SHARDS, config);
+		while(shardCount < requestedShards) shardCount <<= 1;
+		shards = newShards(shardCount);
+		shardMask = shardCount-1;
+		idleTimeout = ConfigurationHelper.getIntSystemThenEnvProperty(SESSION_IDLE_PROP, DEFAULT_SESSION_IDLE, config);
+		heartbeatInterval = ConfigurationHelper.getIntSystemThenEnvProperty(SESSION_HEARTBEAT_PROP, DEFAULT_SESSION_HEARTBEAT, config);
+		heartbeatDeadline = ConfigurationHelper.getIntSystemThenEnvProperty(SESSION_HEARTBEAT_DEADLINE_PROP, DEFAULT_SESSION_HEARTBEAT_DEADLINE, config);
+		final long tick = ConfigurationHelper.getLongSystemThenEnvProperty(SESSION_TICK_PROP, DEFAULT_SESSION_TICK, config);
+		timer = new HashedWheelTimer(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "RPCSessionExpiryTimer");
+				t.setDaemon(true);
+				return t;
+			}
+		}, ThreadNameDeterminer.CURRENT, tick, TimeUnit.MILLISECONDS, WHEEL_SIZE);
 		registerLifecycleSessionFactory(new NetyChannelSessionFactory());
 		JMXHelper.registerMBean(this, OBJECT_NAME);
-		
+		log.info("Session registry: shards: {}, idle: {} s, heartbeat: {} s, deadline: {} s", new Object[]{shardCount, idleTimeout, heartbeatInterval, heartbeatDeadline});
+	}
+	
+	/**
+	 * Creates the session registry shards
+	 * @param shardCount The number of shards
+	 * @return the shard array
+	 */
+	@SuppressWarnings("unchecked")
+	private static ConcurrentHashMap<String, SessionEntry>[] newShards(int shardCount) {
+		final ConcurrentHashMap<String, SessionEntry>[] arr = new ConcurrentHashMap[shardCount];
+		for(int i = 0; i < shardCount; i++) {
+			arr[i] = new ConcurrentHashMap<String, SessionEntry>(64, 0.75f, 4);
+		}
+		return arr;
+	}
+	
+	/**
+	 * Returns the registry shard for the passed session id
+	 * @param sessionId The session id
+	 * @return the shard the session is registered in
+	 */
+	private ConcurrentHashMap<String, SessionEntry> shardFor(String sessionId) {
+		int h = sessionId.hashCode();
+		h ^= (h >>> 16);
+		return shards[h & shardMask];
 	}
 	
 	/**
@@ -108,7 +229,13 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	 */
 	@Override
 	public Set<IRPCSessionMBean> getSessions() {
-		return new HashSet<IRPCSessionMBean>(sessions.values());
+		final Set<IRPCSessionMBean> set = new HashSet<IRPCSessionMBean>(getSessionCount());
+		for(ConcurrentHashMap<String, SessionEntry> shard: shards) {
+			for(SessionEntry entry: shard.values()) {
+				set.add(entry.session);
+			}
+		}
+		return set;
 	}
 	
 	/**
@@ -168,17 +295,19 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	void expired(final IRPCSession expiredSession) {
 		if(expiredSession!=null) {
 			if(expiredSession.isExpired()) {
+				final ConcurrentHashMap<String, SessionEntry> shard = shardFor(expiredSession.getSessionId());
+				final SessionEntry entry = shard.get(expiredSession.getSessionId());
+				if(entry==null || entry.session!=expiredSession || !shard.remove(expiredSession.getSessionId(), entry)) return;
+				entry.cancel();
 				if(!sessionListeners.isEmpty()) {
 					threadPool.execute(new Runnable() {
 						public void run() {
-							sessions.remove(expiredSession.getSessionId());
 							for(IRPCSessionListener listener: sessionListeners) {
 								listener.onSessionExpired(expiredSession);
 							}						
 						}
 					});
 				}
-				sessions.remove(expiredSession.getSessionId());
 			}
 		}
 	}
@@ -225,16 +354,24 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	 * @return the IRPCSession for the transport object
 	 */
 	public IRPCSession getSession(Object transport) {
-		IRPCSession tmpSession = getFactoryFor(transport).newRPCSession(transport);
-		IRPCSession session = sessions.get(tmpSession.getSessionId());
-		if(session==null) {
-			synchronized(sessions) {
-				session = sessions.get(tmpSession.getSessionId());
-				if(session==null) {
-					session = tmpSession;
-					sessions.put(session.getSessionId(), session);
+		final ITransportSessionFactory factory = getFactoryFor(transport);
+		final String sessionId = factory.getSessionId(transport);
+		final ConcurrentHashMap<String, SessionEntry> shard = shardFor(sessionId);
+		SessionEntry entry = shard.get(sessionId);
+		if(entry==null) {
+			synchronized(shard) {
+				entry = shard.get(sessionId);
+				if(entry==null) {
+					entry = new SessionEntry(factory.newRPCSession(transport));
+					shard.put(sessionId, entry);
+					if(entry.session.isExpired()) {
+						// the transport closed while the session was being created
+						shard.remove(sessionId, entry);
+						return entry.session;
+					}
+					entry.schedule(nextCheck(0L, -1L));
 					if(!sessionListeners.isEmpty()) {
-						final IRPCSession fsession = session;
+						final IRPCSession fsession = entry.session;
 						threadPool.execute(new Runnable() {
 							public void run() {
 								for(IRPCSessionListener listener: sessionListeners) {
@@ -246,7 +383,26 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 				}
 			}
 		}
-		return session;
+		return entry.session;
+	}
+	
+	/**
+	 * Computes the delay until a session needs to be checked again
+	 * @param idle The time in ms. the session has been idle
+	 * @param heartbeatAge The time in ms. since an unanswered heartbeat was sent, or -1 if none is outstanding
+	 * @return the delay in ms. or -1 if the session does not need to be checked
+	 */
+	private long nextCheck(long idle, long heartbeatAge) {
+		final long idleMs = TimeUnit.SECONDS.toMillis(idleTimeout);
+		final long heartbeatMs = TimeUnit.SECONDS.toMillis(heartbeatInterval);
+		long next = Long.MAX_VALUE;
+		if(idleMs > 0) next = idleMs - idle;
+		if(heartbeatAge >= 0) {
+			next = Math.min(next, TimeUnit.SECONDS.toMillis(heartbeatDeadline) - heartbeatAge);
+		} else if(heartbeatMs > 0) {
+			next = Math.min(next, idle >= heartbeatMs ? heartbeatMs : heartbeatMs - idle);
+		}
+		return next==Long.MAX_VALUE ? -1L : Math.max(next, 0L);
 	}
 	
 	/**
@@ -329,7 +485,11 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	 */
 	@Override
 	public int getSessionCount() {
-		return sessions.size();
+		int count = 0;
+		for(ConcurrentHashMap<String, SessionEntry> shard: shards) {
+			count += shard.size();
+		}
+		return count;
 	}
 
 	/**
@@ -369,11 +529,229 @@ public class RPCSessionManager implements RPCSessionManagerMXBean {
 	 */
 	@Override
 	public void expireAll() {
-		Set<IRPCSession> _sessions = new HashSet<IRPCSession>(sessions.values());
-		for(IRPCSession session: _sessions) {
-			session.expire();
+		for(ConcurrentHashMap<String, SessionEntry> shard: shards) {
+			for(SessionEntry entry: shard.values()) {
+				entry.session.expire();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#expireSession(java.lang.String)
+	 */
+	@Override
+	public boolean expireSession(String sessionId) {
+		if(sessionId==null) throw new IllegalArgumentException("The passed session id was null");
+		final SessionEntry entry = shardFor(sessionId).get(sessionId);
+		if(entry==null) return false;
+		log.info("Evicting session [{}]", sessionId);
+		evictions.incrementAndGet();
+		entry.session.expire();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getTopSessions(java.lang.String, int)
+	 */
+	@Override
+	public List<IRPCSessionMBean> getTopSessions(final String metric, int count) {
+		if(metric==null || !RANKING_METRICS.contains(metric)) throw new IllegalArgumentException("Invalid metric [" + metric + "]. Valid metrics are " + RANKING_METRICS);
+		final List<IRPCSessionMBean> ranked = new ArrayList<IRPCSessionMBean>(getSessions());
+		Collections.sort(ranked, new Comparator<IRPCSessionMBean>() {
+			@Override
+			public int compare(IRPCSessionMBean s1, IRPCSessionMBean s2) {
+				final long v1 = rankValue(s1), v2 = rankValue(s2);
+				return v1 > v2 ? -1 : v1 < v2 ? 1 : 0;
+			}
+			private long rankValue(IRPCSessionMBean session) {
+				if("FramesIn".equals(metric)) return session.getFramesIn();
+				if("FramesOut".equals(metric)) return session.getFramesOut();
+				if("BytesQueued".equals(metric)) return session.getBytesQueued();
+				return -session.getLastAccessedTime();
+			}
+		});
+		return count < ranked.size() ? new ArrayList<IRPCSessionMBean>(ranked.subList(0, Math.max(count, 0))) : ranked;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getShardSizes()
+	 */
+	@Override
+	public int[] getShardSizes() {
+		final int[] sizes = new int[shards.length];
+		for(int i = 0; i < shards.length; i++) {
+			sizes[i] = shards[i].size();
+		}
+		return sizes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getIdleTimeout()
+	 */
+	@Override
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#setIdleTimeout(int)
+	 */
+	@Override
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getHeartbeatInterval()
+	 */
+	@Override
+	public int getHeartbeatInterval() {
+		return heartbeatInterval;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#setHeartbeatInterval(int)
+	 */
+	@Override
+	public void setHeartbeatInterval(int heartbeatInterval) {
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getHeartbeatDeadline()
+	 */
+	@Override
+	public int getHeartbeatDeadline() {
+		return heartbeatDeadline;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#setHeartbeatDeadline(int)
+	 */
+	@Override
+	public void setHeartbeatDeadline(int heartbeatDeadline) {
+		this.heartbeatDeadline = heartbeatDeadline;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getIdleExpirations()
+	 */
+	@Override
+	public long getIdleExpirations() {
+		return idleExpirations.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getHeartbeatExpirations()
+	 */
+	@Override
+	public long getHeartbeatExpirations() {
+		return heartbeatExpirations.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getHeartbeatsSent()
+	 */
+	@Override
+	public long getHeartbeatsSent() {
+		return heartbeatsSent.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.session.RPCSessionManagerMXBean#getEvictions()
+	 */
+	@Override
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	/**
+	 * <p>Title: SessionEntry</p>
+	 * <p>Description: A registered session and its expiry timer state. The timer task re-arms itself
+	 * for the next deadline instead of being cancelled and rescheduled on every session access.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.rpc.session.RPCSessionManager.SessionEntry</code></p>
+	 */
+	private class SessionEntry implements TimerTask {
+		/** The registered session */
+		final IRPCSession session;
+		/** The pending timer timeout */
+		volatile Timeout timeout = null;
+		/** The time an unanswered heartbeat was sent, or -1 if none is outstanding. Only accessed by the timer thread. */
+		long heartbeatTime = -1L;
+		
+		/**
+		 * Creates a new SessionEntry
+		 * @param session The registered session
+		 */
+		SessionEntry(IRPCSession session) {
+			this.session = session;
+		}
+		
+		/**
+		 * Schedules the next check of this session
+		 * @param delay The delay in ms. or -1 to not schedule
+		 */
+		void schedule(long delay) {
+			timeout = delay < 0 ? null : timer.newTimeout(this, delay, TimeUnit.MILLISECONDS);
+		}
+		
+		/**
+		 * Cancels the pending check of this session
+		 */
+		void cancel() {
+			final Timeout t = timeout;
+			if(t!=null) t.cancel();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+		 */
+		@Override
+		public void run(Timeout t) throws Exception {
+			if(t.isCancelled() || session.isExpired()) return;
+			final long now = SystemClock.time();
+			final long lastAccess = session.getLastAccessedTime();
+			final long idle = now - lastAccess;
+			if(heartbeatTime >= 0) {
+				if(lastAccess >= heartbeatTime) {
+					heartbeatTime = -1L;
+				} else if(now - heartbeatTime >= TimeUnit.SECONDS.toMillis(heartbeatDeadline)) {
+					log.info("Session [{}] missed heartbeat deadline. Expiring.", session.getSessionId());
+					heartbeatExpirations.incrementAndGet();
+					session.expire();
+					return;
+				}
+			}
+			if(idleTimeout > 0 && idle >= TimeUnit.SECONDS.toMillis(idleTimeout)) {
+				log.info("Session [{}] idle for {} ms. Expiring.", session.getSessionId(), idle);
+				idleExpirations.incrementAndGet();
+				session.expire();
+				return;
+			}
+			if(heartbeatTime < 0 && heartbeatInterval > 0 && idle >= TimeUnit.SECONDS.toMillis(heartbeatInterval)) {
+				if(session.heartbeat()) {
+					heartbeatsSent.incrementAndGet();
+					heartbeatTime = now;
+				}
+			}
+			schedule(nextCheck(idle, heartbeatTime < 0 ? -1L : now - heartbeatTime));
 		}
-		_sessions.clear();		
 	}
 
 
@@ -24,6 +24,7 @@
  */
 package org.helios.tsdb.plugins.rpc.session;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -68,4 +69,87 @@ public interface RPCSessionManagerMXBean {
 	 * Expires all the sessions
 	 */
 	public void expireAll();
+	
+	/**
+	 * Expires the session with the passed id, closing its transport
+	 * @param sessionId The id of the session to expire
+	 * @return true if the session was found, false otherwise
+	 */
+	public boolean expireSession(String sessionId);
+	
+	/**
+	 * Returns the sessions ranked highest by the passed metric
+	 * @param metric The metric to rank by: <b>FramesIn</b>, <b>FramesOut</b>, <b>BytesQueued</b> or <b>Idle</b>
+	 * @param count The maximum number of sessions to return
+	 * @return the top ranked sessions, highest first
+	 */
+	public List<IRPCSessionMBean> getTopSessions(String metric, int count);
+	
+	/**
+	 * Returns the number of sessions registered in each registry shard
+	 * @return the number of sessions in each shard
+	 */
+	public int[] getShardSizes();
+	
+	/**
+	 * Returns the idle time in seconds after which a session is expired
+	 * @return the idle timeout in seconds, zero or less if idle sessions do not expire
+	 */
+	public int getIdleTimeout();
+	
+	/**
+	 * Sets the idle time in seconds after which a session is expired. 
+	 * Sessions pick up the new value at their next scheduled check.
+	 * @param idleTimeout the idle timeout in seconds, zero or less to disable
+	 */
+	public void setIdleTimeout(int idleTimeout);
+	
+	/**
+	 * Returns the idle time in seconds after which a session is sent a heartbeat
+	 * @return the heartbeat interval in seconds, zero or less if heartbeats are disabled
+	 */
+	public int getHeartbeatInterval();
+	
+	/**
+	 * Sets the idle time in seconds after which a session is sent a heartbeat.
+	 * Sessions pick up the new value at their next scheduled check.
+	 * @param heartbeatInterval the heartbeat interval in seconds, zero or less to disable
+	 */
+	public void setHeartbeatInterval(int heartbeatInterval);
+	
+	/**
+	 * Returns the time in seconds a session has to answer a heartbeat before it is expired
+	 * @return the heartbeat deadline in seconds
+	 */
+	public int getHeartbeatDeadline();
+	
+	/**
+	 * Sets the time in seconds a session has to answer a heartbeat before it is expired
+	 * @param heartbeatDeadline the heartbeat deadline in seconds
+	 */
+	public void setHeartbeatDeadline(int heartbeatDeadline);
+	
+	/**
+	 * Returns the number of sessions expired for being idle
+	 * @return the number of idle expirations
+	 */
+	public long getIdleExpirations();
+	
+	/**
+	 * Returns the number of sessions expired for missing a heartbeat deadline
+	 * @return the number of heartbeat expirations
+	 */
+	public long getHeartbeatExpirations();
+	
+	/**
+	 * Returns the number of heartbeats sent
+	 * @return the number of heartbeats sent
+	 */
+	public long getHeartbeatsSent();
+	
+	/**
+	 * Returns the number of sessions evicted through {@link #expireSession(String)}
+	 * @return the number of evictions
+	 */
+	public long getEvictions();
 }
@@ -59,8 +59,8 @@ import org.helios.tsdb.plugins.shell.Plugin;
 import org.helios.tsdb.plugins.shell.Publisher;
 import org.helios.tsdb.plugins.shell.RpcService;
 import org.helios.tsdb.plugins.shell.Search;
+import org.helios.tsdb.plugins.stats.StatsSubmissionBuffer;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
-import org.helios.tsdb.plugins.util.SystemClock;
 import org.helios.tsdb.plugins.util.jmx.jmxmp.JMXMPConnectionServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -136,6 +136,8 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 	
 	/** The schedule handle for the stats collector */
 	protected ScheduledFuture<?> scheduleHandle = null;
+	/** The buffer collected stats are written to the TSDB through, null if stats collection is disabled */
+	protected volatile StatsSubmissionBuffer statsBuffer = null;
 
 	/**
 	 * Creates a new AbstractTSDBPluginService
@@ -176,6 +178,10 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 			scheduleHandle.cancel(false);
 			scheduleHandle = null;
 		}
+		if(statsBuffer!=null) {
+			statsBuffer.shutdown();
+			statsBuffer = null;
+		}
 		if(deferredToAdd!=null) {
 			shutdownDeferred.chain(deferredToAdd);
 		}
@@ -236,7 +242,9 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 			log.info("\n\tCallback Plugins Enabled for EventDispatcher:\n\t\tSearch:{}\n\t\tPublish:{}\n", searchEnabled, publishEnabled);
 			doInitialize();
 			if(!ConfigurationHelper.getBooleanSystemThenEnvProperty(Constants.PLUGIN_ENABLE_STATS_POLLING, Constants.DEFAULT_PLUGIN_ENABLE_STATS_POLLING, config)) {
-				scheduleHandle = scheduler.scheduleWithFixedDelay(this, 15, 15, TimeUnit.SECONDS);
+				statsBuffer = new StatsSubmissionBuffer(tsdb, config);
+				final long period = ConfigurationHelper.getLongSystemThenEnvProperty(Constants.STATS_PERIOD_PROP, Constants.DEFAULT_STATS_PERIOD, config);
+				scheduleHandle = scheduler.scheduleWithFixedDelay(this, period, period, TimeUnit.MILLISECONDS);
 				log.info("Started Stats Collector Scheduling");
 			}
 			jmxServer = new JMXMPConnectionServer(config);			
@@ -254,49 +262,20 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 	}
 	
 	/**
-	 * Executes stats collection 
+	 * Executes stats collection. The TSDB's own stats (which include the search and publish handlers through the shell plugins)
+	 * and the RPC services' stats are offered to the {@link StatsSubmissionBuffer} which is then flushed to the TSDB.
 	 */
 	public void run() {
 		log.debug("Collecting...");
-		StatsCollectorImpl collector = new StatsCollectorImpl(tsdb, true);
+		final StatsSubmissionBuffer buffer = statsBuffer;
+		if(buffer==null) return;
+		buffer.mark();
+		StatsCollectorImpl collector = new StatsCollectorImpl(buffer);
 		collector.addHostTag(true);
 		try {			
-			//collector.clear();
 			tsdb.collectStats(collector);
 		} catch (Exception ex) {
 			log.error("tsdb.collectStats error:" + ex);
-		} finally {
-			//collector.restore();
-		}
-		try {			
-			collector.clear();
-			for(ISearchEventHandler handler: searchHandlers) {
-				handler.collectStats(collector);
-			}			
-		} catch (Exception ex) {
-			log.error("handler.collectStats error:" + ex);
-		} finally {
-			collector.restore();
-		}
-		try {			
-			collector.clear();
-			for(ISearchEventHandler handler: searchHandlers) {
-				handler.collectStats(collector);
-			}
-		} catch (Exception ex) {
-			log.error("searchHandlers.collectStats error:" + ex);
-		} finally {
-			collector.restore();
-		}
-		try {			
-			collector.clear();
-			for(IPublishEventHandler handler: publishHandlers) {
-				handler.collectStats(collector);
-			}
-		} catch (Exception ex) {
-			log.error("publishHandlers.collectStats error:" + ex);
-		} finally {
-			collector.restore();
 		}
 		try {			
 			collector.clear();
@@ -308,9 +287,19 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 		} finally {
 			collector.restore();
 		}
+		buffer.flush();
 		log.debug("Collect done.");
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.service.ITSDBPluginService#getStatsBuffer()
+	 */
+	@Override
+	public StatsSubmissionBuffer getStatsBuffer() {
+		return statsBuffer;
+	}
+	
 	/**
 	 * <p>Title: StatsCollectorImpl</p>
 	 * <p>Description: Optionally logging using caller logger and string cleaning StatsCollector impl</p> 
@@ -328,23 +317,19 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 				return LOG;
 			}
 		};
-		/** Indicates if collected metrics should be recorded to the TSDB */
-		private final boolean relay;
-		/** The parent TSDB instance */
-		private final TSDB tsdb;
+		/** The buffer collected metrics are offered to, or null if they are only logged */
+		private final StatsSubmissionBuffer buffer;
 		
 		/** The tag backup/restore stack */
 		private final Stack<Map<String, String>> tagStack = new Stack<Map<String, String>>(); 
 		
 		/**
 		 * Creates a new StatsCollectorImpl
-		 * @param tsdb The parent TSDB instance
-		 * @param relay Indicates if collected metrics should be recorded to the TSDB
+		 * @param buffer The buffer collected metrics are offered to, or null if they should only be logged
 		 */
-		public StatsCollectorImpl(TSDB tsdb, boolean relay) {
+		public StatsCollectorImpl(StatsSubmissionBuffer buffer) {
 			super("tsd");
-			this.tsdb = tsdb;
-			this.relay = relay;
+			this.buffer = buffer;
 		}
 		
 		/**
@@ -425,16 +410,8 @@ public abstract class AbstractTSDBPluginService implements ITSDBPluginService, R
 				final String _name = name.replace(' ', '_');
 				final String _xtratag = xtratag==null ? null : xtratag.replace(' ', '_');
 				super.record(_name, value, _xtratag);
-				if(relay) {
-					String[] tg = null;
-					if(_xtratag!=null) {
-						tg = splitXtraTag(_xtratag);
-						addExtraTag(tg[0], tg[1]);
-					}
-					tsdb.addPoint(_name, SystemClock.unixTime(), value, this.extratags);
-					if(tg!=null) {
-						clearExtraTag(tg[0]);					
-					}				
+				if(buffer!=null) {
+					buffer.offer(_name, value, this.extratags, _xtratag);
 				}
 			} catch (Exception ex) {
 				LOG.error("Recording Error", ex);
@@ -35,6 +35,7 @@ import net.opentsdb.stats.StatsCollector;
 
 import org.helios.tsdb.plugins.event.PluginType;
 import org.helios.tsdb.plugins.shell.Plugin;
+import org.helios.tsdb.plugins.stats.StatsSubmissionBuffer;
 
 import com.stumbleupon.async.Deferred;
 
@@ -150,6 +151,12 @@ public interface ITSDBPluginService {
 	 */
 	public TSDB getTSDB();
 	
+	/**
+	 * Returns the buffer collected stats are written to the TSDB through
+	 * @return the stats submission buffer, or null if stats collection is disabled or the service has not been initialized
+	 */
+	public StatsSubmissionBuffer getStatsBuffer();
+	
 }
 	
 	
@@ -85,7 +85,7 @@ public class Search extends SearchPlugin implements Plugin {
 	 */
 	@Override
 	public void collectStats(StatsCollector statsCollector) {
-		if(pluginService!=null) pluginService.collectStats(PluginType.PUBLISH, statsCollector);
+		if(pluginService!=null) pluginService.collectStats(PluginType.SEARCH, statsCollector);
 
 	}
 
@@ -25,8 +25,8 @@
 package org.helios.tsdb.plugins.stats;
 
 
-import gnu.trove.map.hash.TObjectIntHashMap;
-import gnu.trove.procedure.TObjectIntProcedure;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
 
 import java.lang.management.ClassLoadingMXBean;
 import java.lang.management.CompilationMXBean;
@@ -37,15 +37,12 @@ import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryUsage;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
-import java.util.Set;
 
-import javax.management.Attribute;
-import javax.management.AttributeList;
+import javax.management.JMX;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
@@ -56,6 +53,7 @@ import net.opentsdb.stats.StatsCollector;
 
 import org.helios.tsdb.plugins.rpc.AbstractRPCService;
 import org.helios.tsdb.plugins.service.AbstractTSDBPluginService.StatsCollectorImpl;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
 import org.helios.tsdb.plugins.util.SystemClock;
 import org.helios.tsdb.plugins.util.SystemClock.ElapsedTime;
@@ -64,7 +62,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * <p>Title: AgentJVMMonitor</p>
- * <p>Description: Agent to collect stats from local JMX MXBeans</p> 
+ * <p>Description: Agent to collect stats from local JMX MXBeans.</p>
+ * <p>Thread states are tracked incrementally: full {@link ThreadInfo}s are only sampled for threads that are new,
+ * were last seen BLOCKED, consumed more than <b><code>helios.jvm.threads.hotcpu</code></b> percent of a CPU since the last collection,
+ * or are due in the rotating refresh that resamples every thread once per <b><code>helios.jvm.threads.refresh</code></b> collections.
+ * The MXBean proxies, tag strings and per-collector state are created once, so a steady state collection 
+ * allocates little beyond what the platform MXBeans return.</p>
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor</code></p>
@@ -81,22 +84,45 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	private final boolean compileTimeSupported = compMXBean.isCompilationTimeMonitoringSupported();
 	/** The MemoryMXBean */
 	private final MemoryMXBean memMXBean = ManagementFactory.getMemoryMXBean();
-	/** A set of heap memory pool mx beans */
-	private final Set<MemoryPoolMXBean> heapMemPoolMXBeans;
-	/** A set of non heap memory pool mx beans */
-	private final Set<MemoryPoolMXBean> nonHeapMemPoolMXBeans;
-	/** A set of gc mx beans */
-	private final Set<GarbageCollectorMXBean> gcMXBeans = Collections.unmodifiableSet(new HashSet<GarbageCollectorMXBean>(ManagementFactory.getGarbageCollectorMXBeans()));
-	/** A map of timestamp/gc time to calc deltas */
-	private final Map<String, long[]> gcDeltas = new HashMap<String, long[]>(gcMXBeans.size());
-	/** A map of last gc atribute availability indicators for each GC Bean */
-	private final Map<String, Boolean> gcLastGCAvailable = new HashMap<String, Boolean>(gcMXBeans.size());
-	/** A map of last gc event ID for each gc bean keyed by the gc name */
-	private final Map<String, Long> gcLastGCId = new HashMap<String, Long>(gcMXBeans.size());
-	/** A set of NIO Buffer Pool MXBean ObjectNames */
-	private final Set<ObjectName> bufferPoolObjectNames;
+	/** The heap and non heap memory pools */
+	private final MemoryPool[] memoryPools;
+	/** The garbage collectors */
+	private final GarbageCollector[] garbageCollectors;
+	/** The NIO buffer pools */
+	private final BufferPool[] bufferPools;
+	/** The OS MXBean proxy */
+	private final ProcessOSMXBean osMXBean = JMX.newMXBeanProxy(mbeanServer, OS_MXBEAN_ON, ProcessOSMXBean.class);
 	/** Instance logger */
 	private final Logger log = LoggerFactory.getLogger(getClass());
+	
+	/** The tracked thread samples keyed by thread id */
+	private final TLongObjectHashMap<ThreadSample> threadSamples = new TLongObjectHashMap<ThreadSample>(512);
+	/** The number of tracked threads in each state, indexed by state ordinal */
+	private final int[] threadStateCounts = new int[THREAD_STATES.length];
+	/** The reusable buffer of thread ids to sample */
+	private long[] sampleIds = new long[64];
+	/** The thread collection cycle */
+	private long threadCycle = 0L;
+	/** The time of the last thread collection in ns. */
+	private long lastThreadCollect = -1L;
+	/** The number of collections over which every thread is resampled */
+	private final int threadRefresh;
+	/** The percentage of one CPU a thread must consume between collections to be resampled */
+	private final int hotCpuPercent;
+	/** Indicates if thread cpu time can be read */
+	private final boolean threadCpuEnabled;
+	/** The number of ThreadInfos sampled in the last collection */
+	private int lastSampleCount = 0;
+	/** The number of collections between readings of the OS totals */
+	private final int osRefresh;
+	/** The OS collection cycle */
+	private long osCycle = 0L;
+	/** The last read total swap space */
+	private long totalSwap = -1L;
+	/** The last read total physical memory */
+	private long totalMem = -1L;
+	/** The last read maximum file descriptor count */
+	private long maxFd = -1L;
 
 	/** The platform MBeanServer */
 	public static final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
@@ -104,6 +130,30 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	/** Java 7 Indicator */
 	public static final boolean java7 = isJava7();
 	
+	/** The thread states */
+	private static final Thread.State[] THREAD_STATES = Thread.State.values();
+	/** The state tag for each thread state, indexed by state ordinal */
+	private static final String[] THREAD_STATE_TAGS = new String[THREAD_STATES.length];
+	
+	static {
+		for(Thread.State state: THREAD_STATES) {
+			THREAD_STATE_TAGS[state.ordinal()] = "state=" + state.name();
+		}
+	}
+	
+	/** The config property name for the number of collections over which every thread is resampled */
+	public static final String THREAD_REFRESH_PROP = "helios.jvm.threads.refresh";
+	/** The default number of collections over which every thread is resampled */
+	public static final int DEFAULT_THREAD_REFRESH = 8;
+	/** The config property name for the percentage of one CPU a thread must consume between collections to be resampled */
+	public static final String THREAD_HOTCPU_PROP = "helios.jvm.threads.hotcpu";
+	/** The default percentage of one CPU a thread must consume between collections to be resampled */
+	public static final int DEFAULT_THREAD_HOTCPU = 10;
+	/** The config property name for the number of collections between readings of the OS memory, swap and file descriptor totals */
+	public static final String OS_REFRESH_PROP = "helios.jvm.os.refresh";
+	/** The default number of collections between readings of the OS totals */
+	public static final int DEFAULT_OS_REFRESH = 8;
+	
 //	/**
 //	 * Acquires the AgentJVMMonitor singleton instance
 //	 * @return the AgentJVMMonitor singleton instance
@@ -173,29 +223,34 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	 */
 	public AgentJVMMonitor(TSDB tsdb, Properties config) {
 		super(tsdb, config);
-		Set<MemoryPoolMXBean> tmpHeapSet = new HashSet<MemoryPoolMXBean>();
-		Set<MemoryPoolMXBean> tmpNonHeapSet = new HashSet<MemoryPoolMXBean>();
+		threadRefresh = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(THREAD_REFRESH_PROP, DEFAULT_THREAD_REFRESH, config));
+		hotCpuPercent = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(THREAD_HOTCPU_PROP, DEFAULT_THREAD_HOTCPU, config));
+		osRefresh = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(OS_REFRESH_PROP, DEFAULT_OS_REFRESH, config));
+		boolean cpu = false;
+		try {
+			cpu = threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+		} catch (Exception ex) {/* No Op */}
+		threadCpuEnabled = cpu;
+		
+		List<MemoryPool> pools = new ArrayList<MemoryPool>();
 		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
-			if("HEAP".equals(pool.getType().name())) tmpHeapSet.add(pool);
-			else tmpNonHeapSet.add(pool);
+			pools.add(new MemoryPool(pool));
 		}
-		heapMemPoolMXBeans = Collections.unmodifiableSet(tmpHeapSet);
-		nonHeapMemPoolMXBeans = Collections.unmodifiableSet(tmpNonHeapSet);
+		memoryPools = pools.toArray(new MemoryPool[pools.size()]);
 		
-		for(GarbageCollectorMXBean gcBean: gcMXBeans) {
-			try {
-				ObjectName on = JMXHelper.objectName(new StringBuilder(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE).append(",name=").append(gcBean.getName()));
-				mbeanServer.getAttribute(on, "LastGcInfo");
-				gcLastGCAvailable.put(gcBean.getName(), true);
-			} catch(Exception e) {
-				gcLastGCAvailable.put(gcBean.getName(), false);
-			}
+		List<GarbageCollector> gcs = new ArrayList<GarbageCollector>();
+		for(GarbageCollectorMXBean gcBean: ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcs.add(new GarbageCollector(gcBean));
 		}
+		garbageCollectors = gcs.toArray(new GarbageCollector[gcs.size()]);
+		
+		List<BufferPool> nioPools = new ArrayList<BufferPool>();
 		if(java7) {
-			bufferPoolObjectNames = new HashSet<ObjectName>(mbeanServer.queryNames(JMXHelper.objectName("java.nio:type=BufferPool,name=*"), null));
-		} else {
-			bufferPoolObjectNames = Collections.emptySet();
+			for(ObjectName on: mbeanServer.queryNames(JMXHelper.objectName("java.nio:type=BufferPool,name=*"), null)) {
+				nioPools.add(new BufferPool(JMX.newMXBeanProxy(mbeanServer, on, NioBufferPoolMXBean.class)));
+			}
 		}
+		bufferPools = nioPools.toArray(new BufferPool[nioPools.size()]);
 		log.info("Started AgentJVMMonitor");
 	}
 	
@@ -234,36 +289,108 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 			final int threadCount = threadMXBean.getThreadCount();
 			int daemonThreadCount = threadMXBean.getDaemonThreadCount();
 			int nonDaemonThreadCount = threadCount-daemonThreadCount;
-			long[] deadLocked = null;
-			deadLocked = threadMXBean.findDeadlockedThreads();
+			// findDeadlockedThreads covers monitor deadlocks too, so the monitor only scan is only needed when it finds something
+			long[] deadLocked = threadMXBean.findDeadlockedThreads();
 			int deadlockedThreads  = deadLocked==null ? 0 : deadLocked.length;
-			deadLocked = threadMXBean.findMonitorDeadlockedThreads();
-			int monitorDeadlockedThreads = deadLocked==null ? 0 : deadLocked.length;
+			int monitorDeadlockedThreads = 0;
+			if(deadlockedThreads > 0) {
+				deadLocked = threadMXBean.findMonitorDeadlockedThreads();
+				monitorDeadlockedThreads = deadLocked==null ? 0 : deadLocked.length;
+			}
 			int peakThreadCount = threadMXBean.getPeakThreadCount();
 			threadMXBean.resetPeakThreadCount();
 			sc.record("ThreadCount", threadCount);
 			sc.record("DaemonThreadCount", daemonThreadCount);
 			sc.record("NonDaemonThreadCount", nonDaemonThreadCount);
 			sc.record("PeakThreadCount", peakThreadCount);
-			sc.record("PeakThreadCount", peakThreadCount);
 			sc.record("DeadLockThreadCount", deadlockedThreads);
 			sc.record("MonDeadLockThreadCount", monitorDeadlockedThreads);
-			TObjectIntHashMap<String> threadStateMap = new TObjectIntHashMap<String>(Thread.State.values().length);
-			for(ThreadInfo ti: threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds())) {
-				threadStateMap.adjustOrPutValue(ti.getThreadState().name(), 1, 1);
+			updateThreadStates();
+			for(int i = 0; i < THREAD_STATES.length; i++) {
+				sc.record("ThreadCount", threadStateCounts[i], THREAD_STATE_TAGS[i]);
 			}
-			threadStateMap.forEachEntry(new TObjectIntProcedure<String>() {
-				@Override
-				public boolean execute(String threadState, int count) {
-					sc.record("ThreadCount", threadCount, "state=" + threadState);
-					return true;
-				}
-			});			
+			sc.record("SampledThreadCount", lastSampleCount);
 		} finally {
 			sc.clearExtraTag("group");
 		}
 	}
 	
+	/**
+	 * Brings the tracked thread state counts up to date, sampling ThreadInfos only for the threads that 
+	 * are new, were last seen BLOCKED, are running hot or are due for a refresh.
+	 */
+	protected void updateThreadStates() {
+		final long cycle = ++threadCycle;
+		final long now = System.nanoTime();
+		final long hotCpuNanos = lastThreadCollect==-1L ? Long.MAX_VALUE : ((now - lastThreadCollect) / 100L) * hotCpuPercent;
+		lastThreadCollect = now;
+		final long[] ids = threadMXBean.getAllThreadIds();
+		int sampleCount = 0;
+		for(int i = 0; i < ids.length; i++) {
+			final long id = ids[i];
+			ThreadSample sample = threadSamples.get(id);
+			boolean resample;
+			if(sample==null) {
+				sample = new ThreadSample();
+				threadSamples.put(id, sample);
+				resample = true;
+			} else {
+				resample = sample.state==Thread.State.BLOCKED || ((id + cycle) % threadRefresh)==0;
+			}
+			if(threadCpuEnabled) {
+				final long cpu = threadMXBean.getThreadCpuTime(id);
+				if(cpu!=-1L) {
+					if(sample.cpuTime!=-1L && (cpu - sample.cpuTime) >= hotCpuNanos) resample = true;
+					sample.cpuTime = cpu;
+				}
+			}
+			sample.cycle = cycle;
+			if(resample) {
+				if(sampleCount==sampleIds.length) sampleIds = Arrays.copyOf(sampleIds, sampleIds.length*2);
+				sampleIds[sampleCount++] = id;
+			}
+		}
+		lastSampleCount = sampleCount;
+		if(sampleCount > 0) {
+			final long[] sampled = sampleCount==sampleIds.length ? sampleIds : Arrays.copyOf(sampleIds, sampleCount);
+			final ThreadInfo[] infos = threadMXBean.getThreadInfo(sampled, 0);
+			for(int i = 0; i < sampleCount; i++) {
+				final ThreadInfo ti = infos[i];
+				if(ti==null) {
+					// terminated since the ids were read
+					untrack(threadSamples.remove(sampled[i]));
+					continue;
+				}
+				final ThreadSample sample = threadSamples.get(sampled[i]);
+				final Thread.State state = ti.getThreadState();
+				if(sample.state!=state) {
+					if(sample.state!=null) threadStateCounts[sample.state.ordinal()]--;
+					threadStateCounts[state.ordinal()]++;
+					sample.state = state;
+				}
+			}
+		}
+		if(threadSamples.size() > ids.length) {
+			for(TLongObjectIterator<ThreadSample> iter = threadSamples.iterator(); iter.hasNext();) {
+				iter.advance();
+				if(iter.value().cycle!=cycle) {
+					untrack(iter.value());
+					iter.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes a terminated thread's last known state from the state counts
+	 * @param sample The terminated thread's sample, which may be null
+	 */
+	private void untrack(ThreadSample sample) {
+		if(sample!=null && sample.state!=null) {
+			threadStateCounts[sample.state.ordinal()]--;
+		}
+	}
+	
 	/**
 	 * Collects class loader stats
 	 * @param sc The stats collector to write collected metrics to
@@ -287,7 +414,7 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	 * @param sc The stats collector to write collected metrics to
 	 */
 	protected void collectCompilation(final StatsCollector sc) {
-		sc.record("CompilationRate", clMXBean.getLoadedClassCount(), "group=compilation");
+		sc.record("CompilationTime", compMXBean.getTotalCompilationTime(), "group=compilation");
 	}
 	
 	/**
@@ -298,27 +425,10 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 		try {
 			sc.addExtraTag("group", "memory");
 			sc.record("PendingFinalizers", memMXBean.getObjectPendingFinalizationCount());
-			MemoryUsage heap = memMXBean.getHeapMemoryUsage();
-			MemoryUsage nonHeap = memMXBean.getNonHeapMemoryUsage();
 			sc.addExtraTag("type", "heap");
-			
-			sc.record("Committed", heap.getCommitted());
-			sc.record("Max", heap.getMax());
-			sc.record("Init", heap.getInit());
-			sc.record("Used", heap.getUsed());
-			sc.record("PercentUsed", calcPercent(heap.getUsed(), heap.getCommitted()));
-			sc.record("PercentCapacity", calcPercent(heap.getUsed(), heap.getMax()));
-			
-			sc.clearExtraTag("type");
+			recordUsage(sc, memMXBean.getHeapMemoryUsage());
 			sc.addExtraTag("type", "nonheap");
-
-			sc.record("Committed", nonHeap.getCommitted());
-			sc.record("Max", nonHeap.getMax());
-			sc.record("Init", nonHeap.getInit());
-			sc.record("Used", nonHeap.getUsed());
-			sc.record("PercentUsed", calcPercent(nonHeap.getUsed(), nonHeap.getCommitted()));
-			sc.record("PercentCapacity", calcPercent(nonHeap.getUsed(), nonHeap.getMax()));
-			
+			recordUsage(sc, memMXBean.getNonHeapMemoryUsage());
 		} finally {
 			sc.clearExtraTag("group");
 			sc.clearExtraTag("type");
@@ -326,6 +436,20 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 		
 	}
 	
+	/**
+	 * Records the committed, max, init and used sizes and the used percentages of a memory usage
+	 * @param sc The stats collector to write collected metrics to
+	 * @param usage The memory usage to record
+	 */
+	protected void recordUsage(final StatsCollector sc, final MemoryUsage usage) {
+		sc.record("Committed", usage.getCommitted());
+		sc.record("Max", usage.getMax());
+		sc.record("Init", usage.getInit());
+		sc.record("Used", usage.getUsed());
+		sc.record("PercentUsed", calcPercent(usage.getUsed(), usage.getCommitted()));
+		sc.record("PercentCapacity", calcPercent(usage.getUsed(), usage.getMax()));
+	}
+	
 	/**
 	 * Collects memory pool stats.
 	 * @param sc The stats collector to write collected metrics to
@@ -333,34 +457,13 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	protected void collectMemoryPools(final StatsCollector sc) {
 		try {
 			sc.addExtraTag("group", "memorypool");			
-			for(MemoryPoolMXBean pool: heapMemPoolMXBeans) {
+			for(MemoryPool pool: memoryPools) {
 				try {
-					MemoryUsage usage = pool.getUsage();					
-					sc.addExtraTag("pool", pool.getName().replace(' ', '_'));
-					sc.addExtraTag("type", "heap");
-					sc.record("Committed", usage.getCommitted());
-					sc.record("Max", usage.getMax());
-					sc.record("Init", usage.getInit());
-					sc.record("Used", usage.getUsed());
-					sc.record("PercentUsed", calcPercent(usage.getUsed(), usage.getCommitted()));
-					sc.record("PercentCapacity", calcPercent(usage.getUsed(), usage.getMax()));					
-				} finally {
-					sc.clearExtraTag("pool");
-					sc.clearExtraTag("type");
-					
-				}
-			}			
-			for(MemoryPoolMXBean pool: nonHeapMemPoolMXBeans) {
-				try {
-					MemoryUsage usage = pool.getUsage();					
-					sc.addExtraTag("pool", pool.getName().replace(' ', '_'));
-					sc.addExtraTag("type", "nonheap");
-					sc.record("Committed", usage.getCommitted());
-					sc.record("Max", usage.getMax());
-					sc.record("Init", usage.getInit());
-					sc.record("Used", usage.getUsed());
-					sc.record("PercentUsed", calcPercent(usage.getUsed(), usage.getCommitted()));
-					sc.record("PercentCapacity", calcPercent(usage.getUsed(), usage.getMax()));					
+					MemoryUsage usage = pool.pool.getUsage();
+					if(usage==null) continue;  // pool is no longer valid
+					sc.addExtraTag("pool", pool.name);
+					sc.addExtraTag("type", pool.type);
+					recordUsage(sc, usage);
 				} finally {
 					sc.clearExtraTag("pool");
 					sc.clearExtraTag("type");
@@ -368,8 +471,6 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 			}			
 		} finally {
 			sc.clearExtraTag("group");
-//			sc.clearExtraTag("pool");
-//			sc.clearExtraTag("type");
 		}
 	}
 	
@@ -378,66 +479,23 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	 * @param sc The stats collector to write collected metrics to
 	 */
 	protected void collectGc(final StatsCollector sc) {
-		long now = System.currentTimeMillis();
+		final long now = System.currentTimeMillis();
 		try {
 			sc.addExtraTag("group", "gc");
-			if(!gcDeltas.isEmpty()) {
-				for(GarbageCollectorMXBean gcBean: gcMXBeans) {				
-					String name = gcBean.getName().replace(' ', '_');
-					long[] lastPeriod = gcDeltas.get(name);
-					if(lastPeriod!=null) {
-						long gcTime = gcBean.getCollectionTime();
-						long elapsed = now - lastPeriod[0];
-						long gcElapsed = gcTime - lastPeriod[1];
-						sc.record("PercentTimeInGC", calcPercent(gcElapsed, elapsed), "name=" + name);
-					}				
+			for(GarbageCollector gc: garbageCollectors) {
+				final long gcCount = gc.bean.getCollectionCount();
+				final long gcTime = gc.bean.getCollectionTime();
+				if(gc.lastTimestamp!=-1L) {
+					sc.record("PercentTimeInGC", calcPercent(gcTime - gc.lastGcTime, now - gc.lastTimestamp), gc.xtag);
 				}
-			}
-			gcDeltas.clear();
-			for(GarbageCollectorMXBean gcBean: gcMXBeans) {
-				String name = gcBean.getName().replace(' ', '_');
-				String xtag = "name=" + name;
-				long gcCount = gcBean.getCollectionCount();
-				long gcTime = gcBean.getCollectionTime();
-				gcDeltas.put(name, new long[]{now, gcTime});
-				sc.record("GCTime", gcTime, xtag);
-				sc.record("GCCount", gcCount, xtag);
-				if(gcLastGCAvailable.get(gcBean.getName())) {
-					try {
-						ObjectName on = JMXHelper.objectName(new StringBuilder(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE).append(",name=").append(gcBean.getName()));
-						Long lastId = gcLastGCId.get(name);
-						Long thisId = null;
-						CompositeData gcInfo = (CompositeData)mbeanServer.getAttribute(on, "LastGcInfo");
-						if(gcInfo!=null) {
-							thisId = (Long)gcInfo.get("id");
-							if(thisId.equals(lastId)) continue;
-							gcLastGCId.put(name, thisId);
-							try { sc.record("LastDuration", (Long)gcInfo.get("duration"), xtag); } catch (Exception e) {/* No Op */}
-							try { sc.record("GCThreadCount", (Integer)gcInfo.get("GcThreadCount"), xtag); } catch (Exception e) {/* No Op */}
-							TabularData memoryBeforeGc = (TabularData)gcInfo.get("memoryUsageBeforeGc");
-							TabularData memoryAfterGc = (TabularData)gcInfo.get("memoryUsageAfterGc");
-							String[] key = new String[1];
-							for(String poolName: gcBean.getMemoryPoolNames()) {
-								key[0] = poolName;
-								MemoryUsage beforeGc = MemoryUsage.from((CompositeData)memoryBeforeGc.get(key).get("value"));
-								MemoryUsage afterGc = MemoryUsage.from((CompositeData)memoryAfterGc.get(key).get("value"));
-								long used = beforeGc.getUsed()-afterGc.getUsed();
-								long committed = beforeGc.getCommitted()-afterGc.getCommitted();
-								if(used<0) {
-									sc.record("LastConsumed", Math.abs(used), xtag); 
-								} else {
-									sc.record("LastCleared", used, xtag);
-								}
-								if(committed<0) {
-									sc.record("LastAllocated", Math.abs(committed), xtag);
-								} else {
-									sc.record("LastReleased", committed, xtag);
-								}							
-							}
-						}
-					} catch (Exception e) {
-							e.printStackTrace(System.err);
-					}
+				gc.lastTimestamp = now;
+				gc.lastGcTime = gcTime;
+				sc.record("GCTime", gcTime, gc.xtag);
+				sc.record("GCCount", gcCount, gc.xtag);
+				// the last gc info is only fetched when there has been a collection since the last time it was read
+				if(gc.lastGcAvailable && gcCount!=gc.lastGcCount) {
+					gc.lastGcCount = gcCount;
+					collectLastGc(sc, gc);
 				}
 			}
 		} finally {
@@ -446,9 +504,43 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 		
 	}
 	
-	/** The NIO Buffer Pool Attributes */
-	public static final String[] NIO_BUFFER_ATTRS = new String[]{"Count", "MemoryUsed", "TotalCapacity", "Name"};	
-
+	/**
+	 * Collects the details of a garbage collector's last collection
+	 * @param sc The stats collector to write collected metrics to
+	 * @param gc The garbage collector
+	 */
+	protected void collectLastGc(final StatsCollector sc, final GarbageCollector gc) {
+		try {
+			CompositeData gcInfo = (CompositeData)mbeanServer.getAttribute(gc.objectName, "LastGcInfo");
+			if(gcInfo==null) return;
+			final long thisId = (Long)gcInfo.get("id");
+			if(thisId==gc.lastGcId) return;
+			gc.lastGcId = thisId;
+			final String xtag = gc.xtag;
+			try { sc.record("LastDuration", (Long)gcInfo.get("duration"), xtag); } catch (Exception e) {/* No Op */}
+			try { sc.record("GCThreadCount", (Integer)gcInfo.get("GcThreadCount"), xtag); } catch (Exception e) {/* No Op */}
+			TabularData memoryBeforeGc = (TabularData)gcInfo.get("memoryUsageBeforeGc");
+			TabularData memoryAfterGc = (TabularData)gcInfo.get("memoryUsageAfterGc");
+			for(Object[] key: gc.poolKeys) {
+				MemoryUsage beforeGc = MemoryUsage.from((CompositeData)memoryBeforeGc.get(key).get("value"));
+				MemoryUsage afterGc = MemoryUsage.from((CompositeData)memoryAfterGc.get(key).get("value"));
+				long used = beforeGc.getUsed()-afterGc.getUsed();
+				long committed = beforeGc.getCommitted()-afterGc.getCommitted();
+				if(used<0) {
+					sc.record("LastConsumed", Math.abs(used), xtag); 
+				} else {
+					sc.record("LastCleared", used, xtag);
+				}
+				if(committed<0) {
+					sc.record("LastAllocated", Math.abs(committed), xtag);
+				} else {
+					sc.record("LastReleased", committed, xtag);
+				}							
+			}
+		} catch (Exception e) {
+			log.warn("Failed to collect last gc info for [{}]: {}", gc.bean.getName(), e.toString());
+		}
+	}
 	
 	/**
 	 * Collects NIO stats 
@@ -457,31 +549,20 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	protected void collectNio(final StatsCollector sc) {
 		try {
 			sc.addExtraTag("group", "nio");
-			for(ObjectName on: bufferPoolObjectNames) {
+			for(BufferPool pool: bufferPools) {
 				try {
-					AttributeList attrs = mbeanServer.getAttributes(on, NIO_BUFFER_ATTRS);
-					Map<String, Object> attrMap = new HashMap<String, Object>(attrs.size());
-					for(Attribute attr: attrs.asList()) {
-						attrMap.put(attr.getName(), attr.getValue());
-					}
-					String name = (String)attrMap.get(NIO_BUFFER_ATTRS[3]);
-					String xtag = "name=" + name;
-					sc.record("Count", (Long)attrMap.get(NIO_BUFFER_ATTRS[0]), xtag);
-					long used = (Long)attrMap.get(NIO_BUFFER_ATTRS[1]);
-					long capacity = (Long)attrMap.get(NIO_BUFFER_ATTRS[2]);
-					
-					sc.record("MemoryUsed", used, xtag);
-					sc.record("TotalCapacity", capacity, xtag);
-					sc.record("PerecentUsed", calcPercent(used, capacity), xtag);
+					final long used = pool.proxy.getMemoryUsed();
+					final long capacity = pool.proxy.getTotalCapacity();
+					sc.record("Count", pool.proxy.getCount(), pool.xtag);
+					sc.record("MemoryUsed", used, pool.xtag);
+					sc.record("TotalCapacity", capacity, pool.xtag);
+					sc.record("PerecentUsed", calcPercent(used, capacity), pool.xtag);
 				} catch (Exception e) {
 					log.error("Failed to collect nio buffers", e);
-				} finally {
-					//sc.clearExtraTag("name");
 				}
 			}
 		} finally {
 			sc.clearExtraTag("group");
-//			sc.clearExtraTag("name");
 		}
 	}
 	
@@ -489,64 +570,63 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	public static final ObjectName OS_MXBEAN_ON = JMXHelper.objectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
 	
 	/**
-	 * Collects OS process stats
+	 * Collects OS process stats. The memory, swap and file descriptor totals, which are costly to read on some 
+	 * platforms and rarely change, are re-read every <b><code>helios.jvm.os.refresh</code></b> collections.
 	 * @param sc The stats collector to write collected metrics to
 	 */
 	protected void collectOS(final StatsCollector sc) {
 		try {
-			sc.addExtraTag("group", "nio");
-			AttributeList attrs = null;
-			try {
-				attrs = mbeanServer.getAttributes(OS_MXBEAN_ON, windows ? WIN_OS_STATS : UNIX_OS_STATS);
-			} catch (Exception e) {
-				e.printStackTrace(System.err);
-				return;
+			sc.addExtraTag("group", "os");
+			if((osCycle++ % osRefresh)==0) {
+				try { totalSwap = osMXBean.getTotalSwapSpaceSize(); } catch (Exception e) { totalSwap = -1L; }
+				try { totalMem = osMXBean.getTotalPhysicalMemorySize(); } catch (Exception e) { totalMem = -1L; }
+				if(!windows) {
+					try { maxFd = osMXBean.getMaxFileDescriptorCount(); } catch (Exception e) { maxFd = -1L; }
+				}
 			}
-			Map<String, Number> attrMap = new HashMap<String, Number>(attrs.size());
-			for(Attribute attr: attrs.asList()) {
-				attrMap.put(attr.getName(), (Number)attr.getValue());
-			}		
-			try {
-				long totalSwap = attrMap.get(WIN_OS_STATS[1]).longValue();
-				long freeSwap = attrMap.get(WIN_OS_STATS[2]).longValue();
-				long usedSwap = totalSwap - freeSwap;
-				sc.record(WIN_OS_STATS[1], totalSwap);
-				sc.record(WIN_OS_STATS[2], freeSwap);
-				sc.record("SwapUsed", totalSwap-freeSwap);
-				sc.record("PercentSwapUsed", calcPercent(usedSwap, totalSwap));
-			} catch (Exception e) {}
-			try {
-				long virtualMem = attrMap.get("CommittedVirtualMemorySize").longValue();
-				long totalMem = attrMap.get("TotalPhysicalMemorySize").longValue();
-				long freeMem = attrMap.get("FreePhysicalMemorySize").longValue();
-				long usedMem = totalMem - freeMem;
-				sc.record(WIN_OS_STATS[0], virtualMem);
-				sc.record("TotalPhysicalMemorySize", totalMem);
-				sc.record("FreePhysicalMemorySize", freeMem);
-				sc.record("UsedPhysicalMemorySize", usedMem);
+			if(totalSwap!=-1L) {
+				try {
+					long freeSwap = osMXBean.getFreeSwapSpaceSize();
+					long usedSwap = totalSwap - freeSwap;
+					sc.record("TotalSwapSpaceSize", totalSwap);
+					sc.record("FreeSwapSpaceSize", freeSwap);
+					sc.record("SwapUsed", usedSwap);
+					sc.record("PercentSwapUsed", calcPercent(usedSwap, totalSwap));
+				} catch (Exception e) {}
+			}
+			if(totalMem!=-1L) {
+				try {
+					long virtualMem = osMXBean.getCommittedVirtualMemorySize();
+					long freeMem = osMXBean.getFreePhysicalMemorySize();
+					long usedMem = totalMem - freeMem;
+					sc.record("CommittedVirtualMemorySize", virtualMem);
+					sc.record("TotalPhysicalMemorySize", totalMem);
+					sc.record("FreePhysicalMemorySize", freeMem);
+					sc.record("UsedPhysicalMemorySize", usedMem);
 				
-				sc.record("PercentMemoryUsed", calcPercent(usedMem, totalMem));
-				sc.record("PercentMemoryFree", calcPercent(freeMem, totalMem));
+					sc.record("PercentMemoryUsed", calcPercent(usedMem, totalMem));
+					sc.record("PercentMemoryFree", calcPercent(freeMem, totalMem));
 
-				sc.record("PercentVirtualUsed", calcPercent(virtualMem, totalMem));
-				sc.record("PercentVirtualFree", calcPercent((totalMem-virtualMem), totalMem));
+					sc.record("PercentVirtualUsed", calcPercent(virtualMem, totalMem));
+					sc.record("PercentVirtualFree", calcPercent((totalMem-virtualMem), totalMem));
 				
-			} catch (Exception e) {}
+				} catch (Exception e) {}
+			}
 			try {
 				long now = System.nanoTime();
-				long cpuElapsed = attrMap.get(WIN_OS_STATS[3]).longValue();
-				if(processCpuTime!=null) {
-					long elapsedClockTime = now - processCpuTime[0];
-					long elapsedCpuTime = cpuElapsed - processCpuTime[1];
+				long cpuElapsed = osMXBean.getProcessCpuTime();
+				if(lastCpuClockTime!=-1L) {
+					long elapsedClockTime = now - lastCpuClockTime;
+					long elapsedCpuTime = cpuElapsed - lastProcessCpuTime;
 					long totalCpuTime = elapsedClockTime * processors;
 					sc.record("JVMCPU", calcPercent(elapsedCpuTime, totalCpuTime));
 				}
-				processCpuTime = new long[]{now, cpuElapsed};
+				lastCpuClockTime = now;
+				lastProcessCpuTime = cpuElapsed;
 			} catch (Exception e) {}
-			if(!windows) {
+			if(!windows && maxFd!=-1L) {
 				try {
-					long openFd = attrMap.get("OpenFileDescriptorCount").longValue();
-					long maxFd = attrMap.get("MaxFileDescriptorCount").longValue();
+					long openFd = osMXBean.getOpenFileDescriptorCount();
 					sc.record("OpenFileDescriptors", openFd);
 					sc.record("PercentFileDescriptors", calcPercent(openFd, maxFd));
 				} catch (Exception e) {}
@@ -557,18 +637,14 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 	}
 	
 	
-	/** OSMXBean Stats for Windows */
-	public static final String[] WIN_OS_STATS = new String[]{"CommittedVirtualMemorySize", "TotalSwapSpaceSize", "FreeSwapSpaceSize", "ProcessCpuTime", "FreePhysicalMemorySize", "TotalPhysicalMemorySize"};
-	/** OSMXBean Stats for Unix */
-	public static final String[] UNIX_OS_STATS = new String[]{"CommittedVirtualMemorySize", "TotalSwapSpaceSize", "FreeSwapSpaceSize", "ProcessCpuTime", "FreePhysicalMemorySize", "TotalPhysicalMemorySize",
-		"SystemCpuLoad", "ProcessCpuLoad", "SystemLoadAverage", "OpenFileDescriptorCount", "MaxFileDescriptorCount"
-	};
 	/** Indicates if this platform is Windows */
 	public static final boolean windows = ManagementFactory.getOperatingSystemMXBean().getName().toLowerCase().contains("windows");
 	/** The number of processors */
 	public static final int processors = ManagementFactory.getOperatingSystemMXBean().getAvailableProcessors();
-	/** The timestamped process cpu time */
-	protected long[] processCpuTime = null;
+	/** The clock time of the last process cpu time reading in ns. */
+	protected long lastCpuClockTime = -1L;
+	/** The last process cpu time reading in ns. */
+	protected long lastProcessCpuTime = -1L;
 	
 	
 	/**
@@ -593,5 +669,201 @@ public class AgentJVMMonitor extends AbstractRPCService   {
 		float perc = part/whole*100;
 		return (int)perc;
 	}
+	
+	/**
+	 * <p>Title: ThreadSample</p>
+	 * <p>Description: The last sampled state and cpu time of a tracked thread</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor.ThreadSample</code></p>
+	 */
+	private static class ThreadSample {
+		/** The last sampled state, or null if not sampled yet */
+		Thread.State state = null;
+		/** The last read cpu time in ns., or -1 if not read yet */
+		long cpuTime = -1L;
+		/** The last collection cycle the thread was seen in */
+		long cycle = 0L;
+	}
+	
+	/**
+	 * <p>Title: MemoryPool</p>
+	 * <p>Description: A memory pool MXBean and its pre-rendered tag values</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor.MemoryPool</code></p>
+	 */
+	private static class MemoryPool {
+		/** The memory pool MXBean */
+		final MemoryPoolMXBean pool;
+		/** The pool tag value */
+		final String name;
+		/** The type tag value */
+		final String type;
+		
+		/**
+		 * Creates a new MemoryPool
+		 * @param pool The memory pool MXBean
+		 */
+		MemoryPool(MemoryPoolMXBean pool) {
+			this.pool = pool;
+			name = pool.getName().replace(' ', '_');
+			type = "HEAP".equals(pool.getType().name()) ? "heap" : "nonheap";
+		}
+	}
+	
+	/**
+	 * <p>Title: GarbageCollector</p>
+	 * <p>Description: A garbage collector MXBean, its pre-rendered tags and the readings of the previous collection</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor.GarbageCollector</code></p>
+	 */
+	private static class GarbageCollector {
+		/** The garbage collector MXBean */
+		final GarbageCollectorMXBean bean;
+		/** The garbage collector MXBean ObjectName */
+		final ObjectName objectName;
+		/** The name tag */
+		final String xtag;
+		/** The tabular data keys of the collector's memory pools */
+		final Object[][] poolKeys;
+		/** Indicates if the LastGcInfo attribute is available */
+		final boolean lastGcAvailable;
+		/** The time of the previous reading, or -1 if there was none */
+		long lastTimestamp = -1L;
+		/** The gc time of the previous reading */
+		long lastGcTime = 0L;
+		/** The gc count when the last gc info was read */
+		long lastGcCount = -1L;
+		/** The id of the last reported gc */
+		long lastGcId = -1L;
+		
+		/**
+		 * Creates a new GarbageCollector
+		 * @param bean The garbage collector MXBean
+		 */
+		GarbageCollector(GarbageCollectorMXBean bean) {
+			this.bean = bean;
+			objectName = JMXHelper.objectName(new StringBuilder(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE).append(",name=").append(bean.getName()));
+			xtag = "name=" + bean.getName().replace(' ', '_');
+			String[] poolNames = bean.getMemoryPoolNames();
+			poolKeys = new Object[poolNames.length][];
+			for(int i = 0; i < poolNames.length; i++) {
+				poolKeys[i] = new Object[]{poolNames[i]};
+			}
+			boolean available = false;
+			try {
+				mbeanServer.getAttribute(objectName, "LastGcInfo");
+				available = true;
+			} catch (Exception e) {/* No Op */}
+			lastGcAvailable = available;
+		}
+	}
+	
+	/**
+	 * <p>Title: BufferPool</p>
+	 * <p>Description: An NIO buffer pool MXBean proxy and its pre-rendered tag</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor.BufferPool</code></p>
+	 */
+	private static class BufferPool {
+		/** The buffer pool proxy */
+		final NioBufferPoolMXBean proxy;
+		/** The name tag */
+		final String xtag;
+		
+		/**
+		 * Creates a new BufferPool
+		 * @param proxy The buffer pool proxy
+		 */
+		BufferPool(NioBufferPoolMXBean proxy) {
+			this.proxy = proxy;
+			xtag = "name=" + proxy.getName().replace(' ', '_');
+		}
+	}
+	
+	/**
+	 * <p>Title: NioBufferPoolMXBean</p>
+	 * <p>Description: Proxy interface for the Java 7+ <b><code>java.nio:type=BufferPool</code></b> MXBeans, 
+	 * which cannot be referenced directly on Java 6</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor.NioBufferPoolMXBean</code></p>
+	 */
+	public static interface NioBufferPoolMXBean {
+		/**
+		 * Returns the pool name
+		 * @return the pool name
+		 */
+		public String getName();
+		/**
+		 * Returns the number of buffers in the pool
+		 * @return the number of buffers
+		 */
+		public long getCount();
+		/**
+		 * Returns the memory used by the pool in bytes
+		 * @return the memory used
+		 */
+		public long getMemoryUsed();
+		/**
+		 * Returns the total capacity of the buffers in the pool in bytes
+		 * @return the total capacity
+		 */
+		public long getTotalCapacity();
+	}
+	
+	/**
+	 * <p>Title: ProcessOSMXBean</p>
+	 * <p>Description: Proxy interface for the vendor specific attributes of the platform OperatingSystem MXBean.
+	 * Reading an attribute the platform does not support throws an exception.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.AgentJVMMonitor.ProcessOSMXBean</code></p>
+	 */
+	public static interface ProcessOSMXBean {
+		/**
+		 * Returns the committed virtual memory in bytes
+		 * @return the committed virtual memory
+		 */
+		public long getCommittedVirtualMemorySize();
+		/**
+		 * Returns the total swap space in bytes
+		 * @return the total swap space
+		 */
+		public long getTotalSwapSpaceSize();
+		/**
+		 * Returns the free swap space in bytes
+		 * @return the free swap space
+		 */
+		public long getFreeSwapSpaceSize();
+		/**
+		 * Returns the cpu time used by the process in ns.
+		 * @return the process cpu time
+		 */
+		public long getProcessCpuTime();
+		/**
+		 * Returns the free physical memory in bytes
+		 * @return the free physical memory
+		 */
+		public long getFreePhysicalMemorySize();
+		/**
+		 * Returns the total physical memory in bytes
+		 * @return the total physical memory
+		 */
+		public long getTotalPhysicalMemorySize();
+		/**
+		 * Returns the number of open file descriptors (unix only)
+		 * @return the number of open file descriptors
+		 */
+		public long getOpenFileDescriptorCount();
+		/**
+		 * Returns the maximum number of file descriptors (unix only)
+		 * @return the maximum number of file descriptors
+		 */
+		public long getMaxFileDescriptorCount();
+	}
 
 }
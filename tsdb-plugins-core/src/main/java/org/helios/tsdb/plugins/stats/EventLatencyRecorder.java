@@ -0,0 +1,319 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.ObjectName;
+
+import net.opentsdb.stats.StatsCollector;
+
+import org.helios.tsdb.plugins.event.TSDBEventType;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+
+/**
+ * <p>Title: EventLatencyRecorder</p>
+ * <p>Description: Records nanosecond {@link NanoHistogram}s of event processing latency, keyed by event type and processing {@link Stage},
+ * for one event handler or dispatcher. Percentiles are published through JMX and through {@link #collectStats(StatsCollector)}.
+ * Histograms are created on the first sample for a given type and stage, after which recording does not allocate.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.stats.EventLatencyRecorder</code></p>
+ */
+
+public class EventLatencyRecorder implements EventLatencyRecorderMXBean {
+	/** The name of the instrumented component */
+	protected final String component;
+	/** The JMX ObjectName of this recorder */
+	protected final ObjectName objectName;
+	/** The histograms, indexed by <code>(event type ordinal * stages) + stage ordinal</code>, with a trailing row for samples with no event type */
+	protected final AtomicReferenceArray<NanoHistogram> histograms = new AtomicReferenceArray<NanoHistogram>((TYPES.length + 1) * STAGES.length);
+	/** Indicates if recording is enabled */
+	protected volatile boolean enabled;
+	
+	/** The event types */
+	private static final TSDBEventType[] TYPES = TSDBEventType.values();
+	/** The stages */
+	private static final Stage[] STAGES = Stage.values();
+	/** The series name used for samples with no event type, such as a batch commit */
+	public static final String NO_TYPE = "ALL";
+	
+	/** The JMX ObjectName template for recorders */
+	public static final String OBJECT_NAME_TEMPLATE = "org.helios.tsdb.plugins.stats:service=EventLatency,component=%s";
+	/** The config property name to enable latency recording */
+	public static final String LATENCY_ENABLED_PROP = "helios.events.latency.enabled";
+	/** The default latency recording enablement */
+	public static final boolean DEFAULT_LATENCY_ENABLED = true;
+
+	/**
+	 * <p>Title: Stage</p>
+	 * <p>Description: Enumerates the instrumented stages of event processing</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.EventLatencyRecorder.Stage</code></p>
+	 */
+	public static enum Stage {
+		/** The time taken by a dispatcher to claim a slot for and publish an event */
+		PUBLISH,
+		/** The time from an event's publication by a dispatcher until a handler starts processing it */
+		QUEUE_WAIT,
+		/** The time a handler spends processing an event */
+		HANDLER,
+		/** The time an event waits in a handler's internal queue before being written in a batch */
+		BATCH_WAIT,
+		/** The time taken to write and commit a batch of events */
+		BATCH_COMMIT;
+	}
+	
+	/**
+	 * Creates a new EventLatencyRecorder and registers its management interface
+	 * @param component The name of the instrumented component
+	 */
+	public EventLatencyRecorder(String component) {
+		this.component = component;
+		enabled = ConfigurationHelper.getBooleanSystemThenEnvProperty(LATENCY_ENABLED_PROP, DEFAULT_LATENCY_ENABLED);
+		objectName = JMXHelper.objectName(String.format(OBJECT_NAME_TEMPLATE, ObjectName.quote(component)));
+		if(JMXHelper.isRegistered(objectName)) {
+			try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		}
+		JMXHelper.registerMBean(this, objectName);
+	}
+	
+	/**
+	 * Records an elapsed time
+	 * @param eventType The event type, or null for samples that span event types
+	 * @param stage The processing stage
+	 * @param nanos The elapsed time in ns.
+	 */
+	public void record(TSDBEventType eventType, Stage stage, long nanos) {
+		if(!enabled) return;
+		final int index = ((eventType==null ? TYPES.length : eventType.ordinal()) * STAGES.length) + stage.ordinal();
+		NanoHistogram h = histograms.get(index);
+		if(h==null) {
+			histograms.compareAndSet(index, null, new NanoHistogram());
+			h = histograms.get(index);
+		}
+		h.record(nanos);
+	}
+	
+	/**
+	 * Records the time elapsed since the passed start time
+	 * @param eventType The event type, or null for samples that span event types
+	 * @param stage The processing stage
+	 * @param startNanos The start time as reported by {@link System#nanoTime()}
+	 */
+	public void recordSince(TSDBEventType eventType, Stage stage, long startNanos) {
+		if(!enabled) return;
+		record(eventType, stage, System.nanoTime()-startNanos);
+	}
+	
+	/**
+	 * Submits the count, p50, p99, p999 and max of each populated series to the passed collector
+	 * as <b><code>tsd.latency.*</code></b> tagged with the component, event type and stage
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		collector.addExtraTag("component", component);
+		try {
+			for(int i = 0; i < histograms.length(); i++) {
+				NanoHistogram h = histograms.get(i);
+				if(h==null || h.getCount()==0) continue;
+				long[] p = h.percentiles(50D, 99D, 99.9D);
+				collector.addExtraTag("event", typeName(i));
+				collector.addExtraTag("stage", STAGES[i % STAGES.length].name().toLowerCase());
+				try {
+					collector.record("latency.count", h.getCount());
+					collector.record("latency.p50", p[0]);
+					collector.record("latency.p99", p[1]);
+					collector.record("latency.p999", p[2]);
+					collector.record("latency.max", h.getMax());
+				} finally {
+					collector.clearExtraTag("stage");
+					collector.clearExtraTag("event");
+				}
+			}
+		} finally {
+			collector.clearExtraTag("component");
+		}
+	}
+	
+	/**
+	 * Unregisters this recorder's management interface
+	 */
+	public void unregister() {
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+	}
+	
+	/**
+	 * Returns the event type name for the passed histogram index
+	 * @param index The histogram index
+	 * @return the event type name
+	 */
+	private static String typeName(int index) {
+		final int t = index / STAGES.length;
+		return t==TYPES.length ? NO_TYPE : TYPES[t].name();
+	}
+	
+	/**
+	 * Returns the series key for the passed histogram index
+	 * @param index The histogram index
+	 * @return the series key
+	 */
+	private static String seriesName(int index) {
+		return typeName(index) + "." + STAGES[index % STAGES.length].name();
+	}
+	
+	/**
+	 * Computes a map of a value for every populated series
+	 * @param percentile The percentile to compute, or a negative value for the statistic identified by <b><code>stat</code></b>
+	 * @param stat 0 for count, 1 for mean, 2 for max
+	 * @return the map of values keyed by series
+	 */
+	protected Map<String, Long> values(double percentile, int stat) {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(int i = 0; i < histograms.length(); i++) {
+			NanoHistogram h = histograms.get(i);
+			if(h==null || h.getCount()==0) continue;
+			final long value;
+			if(percentile>=0) value = h.percentile(percentile);
+			else if(stat==0) value = h.getCount();
+			else if(stat==1) value = h.getMean();
+			else value = h.getMax();
+			map.put(seriesName(i), value);
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getComponent()
+	 */
+	@Override
+	public String getComponent() {
+		return component;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#isEnabled()
+	 */
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#setEnabled(boolean)
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getCounts()
+	 */
+	@Override
+	public Map<String, Long> getCounts() {
+		return values(-1D, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getMeans()
+	 */
+	@Override
+	public Map<String, Long> getMeans() {
+		return values(-1D, 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getP50()
+	 */
+	@Override
+	public Map<String, Long> getP50() {
+		return values(50D, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getP99()
+	 */
+	@Override
+	public Map<String, Long> getP99() {
+		return values(99D, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getP999()
+	 */
+	@Override
+	public Map<String, Long> getP999() {
+		return values(99.9D, 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#getMaxes()
+	 */
+	@Override
+	public Map<String, Long> getMaxes() {
+		return values(-1D, 2);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#percentile(java.lang.String, double)
+	 */
+	@Override
+	public long percentile(String series, double percentile) {
+		for(int i = 0; i < histograms.length(); i++) {
+			if(!seriesName(i).equals(series)) continue;
+			NanoHistogram h = histograms.get(i);
+			return (h==null || h.getCount()==0) ? -1L : h.percentile(percentile);
+		}
+		return -1L;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		for(int i = 0; i < histograms.length(); i++) {
+			NanoHistogram h = histograms.get(i);
+			if(h!=null) h.reset();
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.stats;
+
+import java.util.Map;
+
+/**
+ * <p>Title: EventLatencyRecorderMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link EventLatencyRecorder}. All map keys are <b><code>&lt;event type&gt;.&lt;stage&gt;</code></b>
+ * and all times are in nanoseconds.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.stats.EventLatencyRecorderMXBean</code></p>
+ */
+
+public interface EventLatencyRecorderMXBean {
+	/**
+	 * Returns the name of the instrumented component
+	 * @return the name of the instrumented component
+	 */
+	public String getComponent();
+	
+	/**
+	 * Indicates if latency recording is enabled
+	 * @return true if latency recording is enabled, false otherwise
+	 */
+	public boolean isEnabled();
+	
+	/**
+	 * Enables or disables latency recording
+	 * @param enabled true to enable, false to disable
+	 */
+	public void setEnabled(boolean enabled);
+	
+	/**
+	 * Returns the number of recorded samples for each event type and stage
+	 * @return a map of sample counts
+	 */
+	public Map<String, Long> getCounts();
+	
+	/**
+	 * Returns the mean elapsed time for each event type and stage
+	 * @return a map of mean elapsed times in ns.
+	 */
+	public Map<String, Long> getMeans();
+	
+	/**
+	 * Returns the median elapsed time for each event type and stage
+	 * @return a map of p50 elapsed times in ns.
+	 */
+	public Map<String, Long> getP50();
+	
+	/**
+	 * Returns the 99th percentile elapsed time for each event type and stage
+	 * @return a map of p99 elapsed times in ns.
+	 */
+	public Map<String, Long> getP99();
+	
+	/**
+	 * Returns the 99.9th percentile elapsed time for each event type and stage
+	 * @return a map of p999 elapsed times in ns.
+	 */
+	public Map<String, Long> getP999();
+	
+	/**
+	 * Returns the maximum elapsed time for each event type and stage
+	 * @return a map of max elapsed times in ns.
+	 */
+	public Map<String, Long> getMaxes();
+	
+	/**
+	 * Returns the elapsed time at an arbitrary percentile for an event type and stage
+	 * @param series The series key (<b><code>&lt;event type&gt;.&lt;stage&gt;</code></b>)
+	 * @param percentile The percentile (0 - 100)
+	 * @return the elapsed time in ns. or -1 if the series has no samples
+	 */
+	public long percentile(String series, double percentile);
+	
+	/**
+	 * Clears all recorded samples
+	 */
+	public void reset();
+}
@@ -0,0 +1,222 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: NanoHistogram</p>
+ * <p>Description: A lock-free, fixed footprint, log-linear histogram of elapsed nanosecond times.
+ * Values below 64 are counted exactly and every power-of-two range above that is split into 32 linear
+ * sub-buckets, so a reported percentile is within ~3% of the true value over the full <code>long</code> range.
+ * Recording is a couple of atomic increments into a pre-allocated array and never allocates.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.stats.NanoHistogram</code></p>
+ */
+
+public class NanoHistogram {
+	/** The bucket counts */
+	protected final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/** The total number of recorded values */
+	protected final AtomicLong count = new AtomicLong(0L);
+	/** The sum of all recorded values */
+	protected final AtomicLong total = new AtomicLong(0L);
+	/** The largest recorded value */
+	protected final AtomicLong max = new AtomicLong(0L);
+	
+	/** The number of bits of sub-bucket resolution within each power of two */
+	public static final int SUB_BUCKET_BITS = 5;
+	/** The number of sub-buckets within each power of two */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Values below this are counted in their own exact bucket */
+	public static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+	/** The most significant bit of the first value not counted linearly */
+	private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+	/** The total number of buckets */
+	public static final int BUCKETS = LINEAR_BUCKETS + ((63 - LINEAR_BITS) << SUB_BUCKET_BITS);
+	
+	/**
+	 * Creates a new NanoHistogram
+	 */
+	public NanoHistogram() {
+		
+	}
+	
+	/**
+	 * Records an elapsed time
+	 * @param nanos The elapsed time in ns. Negative values (clock skew) are recorded as zero.
+	 */
+	public void record(long nanos) {
+		if(nanos<0) nanos = 0;
+		counts.incrementAndGet(index(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long m = max.get();
+		while(nanos>m) {
+			if(max.compareAndSet(m, nanos)) break;
+			m = max.get();
+		}
+	}
+	
+	/**
+	 * Records the time elapsed since the passed start time
+	 * @param startNanos The start time as reported by {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime()-startNanos);
+	}
+	
+	/**
+	 * Returns the bucket index for the passed value
+	 * @param value The value (non-negative)
+	 * @return the bucket index
+	 */
+	public static int index(long value) {
+		if(value < LINEAR_BUCKETS) return (int)value;
+		final int msb = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = msb - SUB_BUCKET_BITS;
+		return LINEAR_BUCKETS + ((msb - LINEAR_BITS) << SUB_BUCKET_BITS) + (int)((value >>> shift) - SUB_BUCKETS);
+	}
+	
+	/**
+	 * Returns the smallest value counted in the passed bucket
+	 * @param index The bucket index
+	 * @return the smallest value counted in the bucket
+	 */
+	public static long lowestValue(int index) {
+		if(index < LINEAR_BUCKETS) return index;
+		final int offset = index - LINEAR_BUCKETS;
+		final int msb = (offset >> SUB_BUCKET_BITS) + LINEAR_BITS;
+		final long sub = (offset & (SUB_BUCKETS-1)) + SUB_BUCKETS;
+		return sub << (msb - SUB_BUCKET_BITS);
+	}
+	
+	/**
+	 * Returns the largest value counted in the passed bucket
+	 * @param index The bucket index
+	 * @return the largest value counted in the bucket
+	 */
+	public static long highestValue(int index) {
+		return index >= BUCKETS-1 ? Long.MAX_VALUE : lowestValue(index+1)-1;
+	}
+	
+	/**
+	 * Computes the values at the passed percentiles from a single snapshot of the bucket counts
+	 * @param percentiles The percentiles to compute (0 - 100)
+	 * @return an array of values in ns. corresponding to each requested percentile, or zeros if nothing has been recorded
+	 */
+	public long[] percentiles(double...percentiles) {
+		final long[] results = new long[percentiles.length];
+		final long[] snapshot = new long[BUCKETS];
+		long population = 0;
+		int highest = -1;
+		for(int i = 0; i < BUCKETS; i++) {
+			long c = counts.get(i);
+			snapshot[i] = c;
+			if(c!=0) {
+				population += c;
+				highest = i;
+			}
+		}
+		if(population==0) return results;
+		final long maxValue = max.get();
+		for(int p = 0; p < percentiles.length; p++) {
+			double pct = Math.min(100D, Math.max(0D, percentiles[p]));
+			long target = Math.max(1L, (long)Math.ceil(pct / 100D * population));
+			long seen = 0;
+			int bucket = highest;
+			for(int i = 0; i <= highest; i++) {
+				seen += snapshot[i];
+				if(seen >= target) { bucket = i; break; }
+			}
+			results[p] = Math.min(highestValue(bucket), maxValue);
+		}
+		return results;
+	}
+	
+	/**
+	 * Returns the value at the passed percentile
+	 * @param percentile The percentile to compute (0 - 100)
+	 * @return the value in ns.
+	 */
+	public long percentile(double percentile) {
+		return percentiles(percentile)[0];
+	}
+	
+	/**
+	 * Returns the number of recorded values
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Returns the largest recorded value in ns.
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the mean recorded value in ns.
+	 * @return the mean recorded value
+	 */
+	public long getMean() {
+		final long c = count.get();
+		return c==0 ? 0L : total.get()/c;
+	}
+	
+	/**
+	 * Clears all recorded values. Values recorded concurrently with a reset may be partially retained.
+	 */
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			if(counts.get(i)!=0) counts.set(i, 0L);
+		}
+		count.set(0L);
+		total.set(0L);
+		max.set(0L);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		long[] p = percentiles(50D, 99D, 99.9D);
+		return new StringBuilder("NanoHistogram [count=").append(getCount())
+			.append(", p50=").append(p[0])
+			.append(", p99=").append(p[1])
+			.append(", p999=").append(p[2])
+			.append(", max=").append(getMax())
+			.append("]").toString();
+	}
+
+}
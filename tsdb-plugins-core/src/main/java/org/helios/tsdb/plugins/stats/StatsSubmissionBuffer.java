@@ -0,0 +1,614 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.stats;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import net.opentsdb.core.TSDB;
+import net.opentsdb.stats.StatsCollector;
+import net.opentsdb.uid.NoSuchUniqueName;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.helios.tsdb.plugins.util.SystemClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stumbleupon.async.Callback;
+
+/**
+ * <p>Title: StatsSubmissionBuffer</p>
+ * <p>Description: A bounded buffer of self-monitoring datapoints that are written back into the host TSDB in batches.
+ * Datapoints are held in pre-allocated parallel slot arrays and reference an interned {@link Series}, whose metric and tag
+ * UIDs are resolved (and assigned if necessary) once, when the series is first seen. Once the series set has been
+ * registered, offering and flushing datapoints does not allocate beyond the TSDB's own write path.</p>
+ * <p>The buffer never blocks the caller: when it is full, when the series limit has been reached, or when the TSDB
+ * has not yet acknowledged a buffer's worth of writes, datapoints are dropped and counted instead.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.stats.StatsSubmissionBuffer</code></p>
+ */
+
+public class StatsSubmissionBuffer implements StatsSubmissionBufferMXBean {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The TSDB to write datapoints to */
+	protected final TSDB tsdb;
+	/** The metric name prefix */
+	protected final String prefix;
+	/** The slot capacity, always a power of 2 */
+	protected final int capacity;
+	/** The slot index mask */
+	protected final int mask;
+	/** The maximum number of datapoints submitted per batch */
+	protected final int batchSize;
+	/** The maximum number of registered series */
+	protected final int maxSeries;
+	/** The series of each buffered datapoint, indexed by slot */
+	protected final Series[] slotSeries;
+	/** The timestamp of each buffered datapoint, indexed by slot */
+	protected final long[] slotTimestamps;
+	/** The value of each buffered datapoint, indexed by slot */
+	protected final long[] slotValues;
+	/** The sequence of the next slot to be written */
+	protected long head = 0;
+	/** The sequence of the next slot to be submitted */
+	protected long tail = 0;
+	/** The registered series */
+	protected final Map<Series, Series> series = new HashMap<Series, Series>();
+	/** The prefixed metric names keyed by the collected name */
+	protected final Map<String, String> metricNames = new HashMap<String, String>();
+	/** The split tag pairs keyed by the collector supplied xtratag */
+	protected final Map<String, String[]> xtraTags = new HashMap<String, String[]>();
+	/** The names with a resolved UID, keyed by UID type */
+	protected final EnumMap<UniqueIdType, Set<String>> resolved = new EnumMap<UniqueIdType, Set<String>>(UniqueIdType.class);
+	/** The reusable series used to probe the series registry */
+	protected final Series probe = new Series();
+	/** The reusable tag map used to probe the series registry */
+	protected final Map<String, String> probeTags = new HashMap<String, String>();
+	/** The unix time applied to offered datapoints */
+	protected volatile long timestamp = SystemClock.unixTime();
+	/** The collection cycle counter, incremented on each {@link #mark()} */
+	protected volatile long cycle = 0L;
+	/** Indicates if the series limit warning has been logged */
+	protected boolean seriesLimitLogged = false;
+	
+	/** The number of offered datapoints */
+	protected final AtomicLong offered = new AtomicLong();
+	/** The number of dropped datapoints */
+	protected final AtomicLong dropped = new AtomicLong();
+	/** The number of datapoints written to the TSDB */
+	protected final AtomicLong submitted = new AtomicLong();
+	/** The number of datapoints the TSDB failed to write */
+	protected final AtomicLong failed = new AtomicLong();
+	/** The number of datapoints handed to the TSDB and not yet acknowledged */
+	protected final AtomicInteger inFlight = new AtomicInteger();
+	/** The elapsed time of the last flush in ms. */
+	protected volatile long lastFlushTime = 0L;
+	/** The JMX ObjectName of this buffer */
+	protected final ObjectName objectName;
+	
+	/** The shared write completion callback */
+	protected final Callback<Object, Object> onWritten = new Callback<Object, Object>() {
+		public Object call(Object arg) throws Exception {
+			inFlight.decrementAndGet();
+			submitted.incrementAndGet();
+			return null;
+		}
+	};
+	/** The shared write failure callback */
+	protected final Callback<Object, Object> onFailed = new Callback<Object, Object>() {
+		public Object call(Object arg) throws Exception {
+			inFlight.decrementAndGet();
+			failed.incrementAndGet();
+			if(log.isDebugEnabled()) log.debug("Failed to write self-metric: {}", arg);
+			return null;
+		}
+	};
+	
+	/** The config property name for the self-metrics name prefix */
+	public static final String STATS_PREFIX_PROP = "helios.tsdb.stats.prefix";
+	/** The default self-metrics name prefix */
+	public static final String DEFAULT_STATS_PREFIX = "tsd";
+	/** The config property name for the self-metrics buffer capacity */
+	public static final String STATS_BUFFER_PROP = "helios.tsdb.stats.buffer";
+	/** The default self-metrics buffer capacity */
+	public static final int DEFAULT_STATS_BUFFER = 4096;
+	/** The config property name for the self-metrics flush batch size */
+	public static final String STATS_BATCH_PROP = "helios.tsdb.stats.batch";
+	/** The default self-metrics flush batch size */
+	public static final int DEFAULT_STATS_BATCH = 512;
+	/** The config property name for the maximum number of self-metric series */
+	public static final String STATS_MAX_SERIES_PROP = "helios.tsdb.stats.maxseries";
+	/** The default maximum number of self-metric series */
+	public static final int DEFAULT_STATS_MAX_SERIES = 2048;
+
+	/**
+	 * Creates a new StatsSubmissionBuffer and registers its management interface
+	 * @param tsdb The TSDB to write datapoints to
+	 * @param config The configuration
+	 */
+	public StatsSubmissionBuffer(TSDB tsdb, Properties config) {
+		this.tsdb = tsdb;
+		String p = ConfigurationHelper.getSystemThenEnvProperty(STATS_PREFIX_PROP, DEFAULT_STATS_PREFIX, config).trim();
+		while(p.endsWith(".")) p = p.substring(0, p.length()-1);
+		prefix = p;
+		int requested = Math.max(16, ConfigurationHelper.getIntSystemThenEnvProperty(STATS_BUFFER_PROP, DEFAULT_STATS_BUFFER, config));
+		capacity = Integer.highestOneBit(requested-1) << 1;
+		mask = capacity-1;
+		batchSize = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(STATS_BATCH_PROP, DEFAULT_STATS_BATCH, config));
+		maxSeries = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(STATS_MAX_SERIES_PROP, DEFAULT_STATS_MAX_SERIES, config));
+		slotSeries = new Series[capacity];
+		slotTimestamps = new long[capacity];
+		slotValues = new long[capacity];
+		for(UniqueIdType type: UniqueIdType.values()) {
+			resolved.put(type, new HashSet<String>());
+		}
+		objectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=StatsSubmissionBuffer"));
+		if(JMXHelper.isRegistered(objectName)) {
+			try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		}
+		JMXHelper.registerMBean(this, objectName);
+		log.info("Created StatsSubmissionBuffer. Prefix:[{}], Capacity:[{}], Batch:[{}]", new Object[]{prefix, capacity, batchSize});
+	}
+	
+	/**
+	 * Sets the timestamp applied to subsequently offered datapoints to the current unix time.
+	 * Called at the start of each collection cycle so that all datapoints in a cycle share one timestamp.
+	 */
+	public void mark() {
+		timestamp = SystemClock.unixTime();
+		cycle++;
+	}
+	
+	/**
+	 * Offers a collected datapoint to the buffer
+	 * @param name The collected metric name, which will be prefixed
+	 * @param value The datapoint value
+	 * @param extratags The collector's current tags, which may be null
+	 * @param xtratag An optional additional <b><code>key=value</code></b> tag
+	 * @return true if the datapoint was buffered, false if it was dropped
+	 */
+	public synchronized boolean offer(String name, long value, Map<String, String> extratags, String xtratag) {
+		offered.incrementAndGet();
+		probeTags.clear();
+		if(extratags!=null) probeTags.putAll(extratags);
+		if(xtratag!=null) {
+			String[] pair = xtraTag(xtratag);
+			if(pair!=null) probeTags.put(pair[0], pair[1]);
+		}
+		return enqueue(metricName(name), value);
+	}
+	
+	/**
+	 * Offers a datapoint rendered in the <b><code>metric timestamp value tagk=tagv ...</code></b> line format.
+	 * The metric name is taken as is and the timestamp is replaced with the current cycle's timestamp.
+	 * @param datapoint The datapoint line
+	 * @return true if the datapoint was buffered, false if it was dropped or could not be parsed
+	 */
+	public synchronized boolean offer(String datapoint) {
+		offered.incrementAndGet();
+		final String[] frags = datapoint.trim().split("\\s+");
+		if(frags.length < 3) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		final long value;
+		try {
+			value = frags[2].indexOf('.')==-1 ? Long.parseLong(frags[2]) : Math.round(Double.parseDouble(frags[2]));
+		} catch (NumberFormatException nex) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		probeTags.clear();
+		for(int i = 3; i < frags.length; i++) {
+			String[] pair = xtraTag(frags[i]);
+			if(pair!=null) probeTags.put(pair[0], pair[1]);
+		}
+		return enqueue(frags[0], value);
+	}
+	
+	/**
+	 * Buffers a datapoint for the passed metric and the current probe tags
+	 * @param metric The fully qualified metric name
+	 * @param value The datapoint value
+	 * @return true if the datapoint was buffered, false if it was dropped
+	 */
+	protected boolean enqueue(String metric, long value) {
+		if(head - tail >= capacity) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		Series s = series.get(probe.set(metric, probeTags));
+		if(s==null) {
+			s = register(metric);
+		} else if(!s.valid && s.lastAttempt!=cycle) {
+			resolve(s);
+		}
+		if(s==null || !s.valid) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		final int slot = (int)(head & mask);
+		slotSeries[slot] = s;
+		slotTimestamps[slot] = timestamp;
+		slotValues[slot] = value;
+		head++;
+		return true;
+	}
+	
+	/**
+	 * Registers a new series for the passed metric and the current probe tags, resolving the metric and tag UIDs
+	 * @param metric The fully qualified metric name
+	 * @return the new series, which will be marked invalid if its UIDs could not be resolved, 
+	 * or null if the series limit has been reached. Resolution of an invalid series is retried once per collection cycle.
+	 */
+	protected Series register(String metric) {
+		if(series.size() >= maxSeries) {
+			if(!seriesLimitLogged) {
+				seriesLimitLogged = true;
+				log.warn("Self-metric series limit [{}] reached. Datapoints for new series will be dropped.", maxSeries);
+			}
+			return null;
+		}
+		final Series s = new Series().set(metric, new HashMap<String, String>(probeTags));
+		resolve(s);
+		series.put(s, s);
+		return s;
+	}
+	
+	/**
+	 * Resolves the metric and tag UIDs of the passed series and marks it valid if they all resolved
+	 * @param s The series to resolve
+	 * @return true if the series is valid
+	 */
+	protected boolean resolve(Series s) {
+		boolean valid = resolve(UniqueIdType.METRIC, s.metric);
+		for(Map.Entry<String, String> tag: s.tags.entrySet()) {
+			valid = valid && resolve(UniqueIdType.TAGK, tag.getKey()) && resolve(UniqueIdType.TAGV, tag.getValue());
+		}
+		s.valid = valid;
+		s.lastAttempt = cycle;
+		return valid;
+	}
+	
+	/**
+	 * Resolves the UID for the passed name, assigning one if it does not exist
+	 * @param type The UID type
+	 * @param name The name to resolve
+	 * @return true if the name has a UID, false otherwise
+	 */
+	protected boolean resolve(UniqueIdType type, String name) {
+		final Set<String> names = resolved.get(type);
+		if(names.contains(name)) return true;
+		try {
+			try {
+				tsdb.getUID(type, name);
+			} catch (NoSuchUniqueName nsun) {
+				try {
+					tsdb.assignUid(type.name().toLowerCase(), name);
+				} catch (IllegalArgumentException iex) {
+					// either invalid, or assigned concurrently
+					tsdb.getUID(type, name);
+				}
+			}
+			names.add(name);
+			return true;
+		} catch (Exception ex) {
+			log.warn("Failed to resolve {} UID for self-metric name [{}]: {}", new Object[]{type, name, ex.toString()});
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the prefixed metric name for the passed collected name
+	 * @param name The collected name
+	 * @return the prefixed metric name
+	 */
+	protected String metricName(String name) {
+		String metric = metricNames.get(name);
+		if(metric==null) {
+			metric = prefix.isEmpty() ? name.replace(' ', '_') : (prefix + "." + name.replace(' ', '_'));
+			metricNames.put(name, metric);
+		}
+		return metric;
+	}
+	
+	/**
+	 * Returns the split tag pair for the passed <b><code>key=value</code></b> tag
+	 * @param xtratag The tag to split
+	 * @return the split tag pair or null if the tag was not a pair
+	 */
+	protected String[] xtraTag(String xtratag) {
+		String[] pair = xtraTags.get(xtratag);
+		if(pair==null) {
+			final int index = xtratag.indexOf('=');
+			if(index < 1 || index == xtratag.length()-1) return null;
+			pair = new String[]{xtratag.substring(0, index).trim().replace(' ', '_'), xtratag.substring(index+1).trim().replace(' ', '_')};
+			xtraTags.put(xtratag, pair);
+		}
+		return pair;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Submission stops early when the number of unacknowledged writes reaches the buffer capacity, 
+	 * leaving the remainder buffered for the next flush.</p>
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#flush()
+	 */
+	@Override
+	public int flush() {
+		final long start = System.currentTimeMillis();
+		int total = 0;
+		int sent = 0;
+		do {
+			sent = submitBatch();
+			total += sent;
+		} while(sent==batchSize);
+		lastFlushTime = System.currentTimeMillis()-start;
+		if(log.isDebugEnabled()) log.debug("Flushed [{}] self-metrics in [{}] ms.", total, lastFlushTime);
+		return total;
+	}
+	
+	/**
+	 * Submits up to one batch of buffered datapoints to the TSDB
+	 * @return the number of datapoints submitted
+	 */
+	protected synchronized int submitBatch() {
+		int sent = 0;
+		while(tail < head && sent < batchSize && inFlight.get() < capacity) {
+			final int slot = (int)(tail & mask);
+			final Series s = slotSeries[slot];
+			slotSeries[slot] = null;
+			tail++;
+			sent++;
+			inFlight.incrementAndGet();
+			try {
+				tsdb.addPoint(s.metric, slotTimestamps[slot], slotValues[slot], s.tags).addCallbacks(onWritten, onFailed);
+			} catch (Exception ex) {
+				inFlight.decrementAndGet();
+				failed.incrementAndGet();
+				if(log.isDebugEnabled()) log.debug("Failed to submit self-metric [{}]: {}", s.metric, ex.toString());
+			}
+		}
+		return sent;
+	}
+	
+	/**
+	 * Records this buffer's own counters to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		collector.record("selfmetrics.buffered", getSize());
+		collector.record("selfmetrics.series", getSeriesCount());
+		collector.record("selfmetrics.inflight", inFlight.get());
+		collector.record("selfmetrics.offered", offered.get());
+		collector.record("selfmetrics.dropped", dropped.get());
+		collector.record("selfmetrics.submitted", submitted.get());
+		collector.record("selfmetrics.failed", failed.get());
+	}
+	
+	/**
+	 * Unregisters this buffer's management interface and discards any buffered datapoints
+	 */
+	public synchronized void shutdown() {
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception ex) {/* No Op */}
+		for(int i = 0; i < capacity; i++) slotSeries[i] = null;
+		tail = head;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getPrefix()
+	 */
+	@Override
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getCapacity()
+	 */
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getSize()
+	 */
+	@Override
+	public synchronized int getSize() {
+		return (int)(head - tail);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getBatchSize()
+	 */
+	@Override
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getSeriesCount()
+	 */
+	@Override
+	public synchronized int getSeriesCount() {
+		return series.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getMaxSeries()
+	 */
+	@Override
+	public int getMaxSeries() {
+		return maxSeries;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getOfferedCount()
+	 */
+	@Override
+	public long getOfferedCount() {
+		return offered.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getDroppedCount()
+	 */
+	@Override
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getSubmittedCount()
+	 */
+	@Override
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getFailedCount()
+	 */
+	@Override
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getInFlightCount()
+	 */
+	@Override
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#getLastFlushTime()
+	 */
+	@Override
+	public long getLastFlushTime() {
+		return lastFlushTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean#resetCounters()
+	 */
+	@Override
+	public void resetCounters() {
+		offered.set(0L);
+		dropped.set(0L);
+		submitted.set(0L);
+		failed.set(0L);
+	}
+	
+	/**
+	 * <p>Title: Series</p>
+	 * <p>Description: An interned self-metric series, identified by its metric name and tags</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.stats.StatsSubmissionBuffer.Series</code></p>
+	 */
+	protected static class Series {
+		/** The fully qualified metric name */
+		protected String metric;
+		/** The series tags */
+		protected Map<String, String> tags;
+		/** The precomputed hash code */
+		protected int hash;
+		/** Indicates if the metric and tag UIDs were resolved */
+		protected boolean valid = false;
+		/** The collection cycle of the last resolution attempt */
+		protected long lastAttempt = -1L;
+		
+		/**
+		 * Sets the identity of this series
+		 * @param metric The fully qualified metric name
+		 * @param tags The series tags
+		 * @return this series
+		 */
+		protected Series set(String metric, Map<String, String> tags) {
+			this.metric = metric;
+			this.tags = tags;
+			hash = (31 * metric.hashCode()) + tags.hashCode();
+			return this;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof Series)) return false;
+			Series other = (Series)obj;
+			return hash==other.hash && metric.equals(other.metric) && tags.equals(other.tags);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return metric + tags;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.stats;
+
+/**
+ * <p>Title: StatsSubmissionBufferMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link StatsSubmissionBuffer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.stats.StatsSubmissionBufferMXBean</code></p>
+ */
+
+public interface StatsSubmissionBufferMXBean {
+	/**
+	 * Returns the prefix prepended to every submitted metric name
+	 * @return the metric name prefix
+	 */
+	public String getPrefix();
+	
+	/**
+	 * Returns the maximum number of datapoints the buffer can hold
+	 * @return the buffer capacity
+	 */
+	public int getCapacity();
+	
+	/**
+	 * Returns the number of datapoints currently buffered and awaiting submission
+	 * @return the number of buffered datapoints
+	 */
+	public int getSize();
+	
+	/**
+	 * Returns the maximum number of datapoints submitted to the TSDB per flush batch
+	 * @return the flush batch size
+	 */
+	public int getBatchSize();
+	
+	/**
+	 * Returns the number of registered series
+	 * @return the number of registered series
+	 */
+	public int getSeriesCount();
+	
+	/**
+	 * Returns the maximum number of series that will be registered
+	 * @return the maximum number of series
+	 */
+	public int getMaxSeries();
+	
+	/**
+	 * Returns the total number of datapoints offered to the buffer
+	 * @return the number of offered datapoints
+	 */
+	public long getOfferedCount();
+	
+	/**
+	 * Returns the total number of datapoints dropped because the buffer was full, 
+	 * the series limit was reached or the series could not be registered 
+	 * @return the number of dropped datapoints
+	 */
+	public long getDroppedCount();
+	
+	/**
+	 * Returns the total number of datapoints successfully written to the TSDB
+	 * @return the number of written datapoints
+	 */
+	public long getSubmittedCount();
+	
+	/**
+	 * Returns the total number of datapoints the TSDB failed to write
+	 * @return the number of failed datapoints
+	 */
+	public long getFailedCount();
+	
+	/**
+	 * Returns the number of datapoints handed to the TSDB and not yet acknowledged
+	 * @return the number of in-flight datapoints
+	 */
+	public int getInFlightCount();
+	
+	/**
+	 * Returns the elapsed time of the last flush in ms.
+	 * @return the elapsed time of the last flush in ms.
+	 */
+	public long getLastFlushTime();
+	
+	/**
+	 * Resets the offered, dropped, submitted and failed counters
+	 */
+	public void resetCounters();
+	
+	/**
+	 * Flushes the buffered datapoints to the TSDB
+	 * @return the number of datapoints handed to the TSDB
+	 */
+	public int flush();
+}
@@ -4,32 +4,28 @@
 package org.helios.tsdb.plugins.stats;
 
 import java.util.Properties;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 import net.opentsdb.core.TSDB;
 import net.opentsdb.stats.StatsCollector;
 
 import org.helios.jmx.util.helpers.StringHelper;
 import org.helios.tsdb.plugins.rpc.AbstractRPCService;
+import org.helios.tsdb.plugins.service.ITSDBPluginService;
 import org.helios.tsdb.plugins.service.TSDBPluginServiceLoader;
 
 /**
  * <p>Title: TSDBStatsSubmitter</p>
- * <p>Description: An RPC plugin for collecting stats from the TSDB instance and resubmitting them as actual metrics</p>
+ * <p>Description: An RPC plugin that reports the self-metrics {@link StatsSubmissionBuffer}'s own counters.
+ * The collection cycle itself is run by the plugin service (see {@link org.helios.tsdb.plugins.service.AbstractTSDBPluginService#run()}),
+ * which collects the TSDB's own stats (which include the search and publish plugin handlers, the async dispatcher and the catalog)
+ * and the stats of the registered RPC services (such as this one and the {@link AgentJVMMonitor}) into the buffer and then flushes
+ * it to the TSDB. Collection never waits on the TSDB: datapoints that do not fit in the buffer are dropped and counted.</p>
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><b><code>org.helios.tsdb.plugins.stats.TSDBStatsSubmitter</code></b>
  */
 
-public class TSDBStatsSubmitter extends AbstractRPCService implements Runnable {
-	/** The stats collection scheduler */
-	protected ScheduledExecutorService scheduler = null;
-	/** The schedule handle */
-	protected ScheduledFuture<?> handle = null;
-	
-	protected TSDBStatsCollector statsCollector = new TSDBStatsCollector();
+public class TSDBStatsSubmitter extends AbstractRPCService {
 	
 	/**
 	 * Creates a new TSDBStatsSubmitter
@@ -41,28 +37,33 @@ public class TSDBStatsSubmitter extends AbstractRPCService implements Runnable {
 	}
 	
 	protected void startImpl() {
-		scheduler = TSDBPluginServiceLoader.getLoaderInstance().getPluginContext().getResource("scheduler", ScheduledExecutorService.class);
-		handle = scheduler.scheduleWithFixedDelay(this, 5000, 15000, TimeUnit.MILLISECONDS);
+		if(getBuffer()==null) {
+			log.warn("Plugin stats collection is disabled. No self-metrics will be submitted.");
+		}
 		log.info(StringHelper.banner("Started TSDBStatsSubmitter"));
 	}
 	
 	protected void stopImpl() {
-		if(handle!=null) {
-			handle.cancel(true);
-		}
+		/* No Op */
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.rpc.AbstractRPCService#collectStats(net.opentsdb.stats.StatsCollector)
+	 */
 	@Override
-	public void run() {
-		tsdb.collectStats(statsCollector);
+	public void collectStats(StatsCollector collector) {
+		final StatsSubmissionBuffer buffer = getBuffer();
+		if(buffer!=null) buffer.collectStats(collector);
 	}
 	
-	class TSDBStatsCollector extends StatsCollector {
-		public TSDBStatsCollector() {
-			super("");
-		}		
-		public void emit(String datapoint) {
-			
-		}
+	/**
+	 * Returns the buffer collected stats are written to
+	 * @return the stats submission buffer, or null if plugin stats collection is disabled
+	 */
+	public StatsSubmissionBuffer getBuffer() {
+		final TSDBPluginServiceLoader loader = TSDBPluginServiceLoader.getLoaderInstance();
+		final ITSDBPluginService pluginService = loader==null ? null : loader.getPluginService();
+		return pluginService==null ? null : pluginService.getStatsBuffer();
 	}
 }
@@ -0,0 +1,364 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.util.bloom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.hash.Funnel;
+
+/**
+ * <p>Title: ScalableUnsafeBloomFilter</p>
+ * <p>Description: A thread safe, off heap bloom filter that grows as insertions exceed expectations.
+ * It starts with one {@link UnsafeBloomFilter} layer sized for the expected insertions. When a layer has taken
+ * its capacity, a new layer is stacked on top with <b><code>growthFactor</code></b> times the capacity and a false 
+ * positive probability tightened by <b><code>tighteningRatio</code></b>, so the compound false positive
+ * probability stays bounded (Almeida et al, <i>Scalable Bloom Filters</i>). Elements are hashed once per call
+ * regardless of the number of layers.</p>
+ * <p>The filter can be snapshotted to a memory mapped file with {@link #snapshot(File)} and restored with
+ * {@link #load(File, Funnel)}. A snapshot taken during concurrent puts may or may not include them.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.util.bloom.ScalableUnsafeBloomFilter</code></p>
+ * @param <T> The type of the elements put into the filter
+ */
+
+public class ScalableUnsafeBloomFilter<T> {
+	/** The funnel to translate Ts to bytes */
+	protected final Funnel<T> funnel;
+	/** The expected insertions of the first layer */
+	protected final int expectedInsertions;
+	/** The false positive probability of the first layer */
+	protected final double fpp;
+	/** The capacity multiplier for each new layer */
+	protected final int growthFactor;
+	/** The false positive probability multiplier for each new layer */
+	protected final double tighteningRatio;
+	/** The filter layers, oldest first. Replaced, never modified, when a layer is added. */
+	protected volatile Layer<T>[] layers;
+	/** The number of elements added */
+	protected final AtomicLong insertions = new AtomicLong(0L);
+	
+	/** The default capacity multiplier for each new layer */
+	public static final int DEFAULT_GROWTH_FACTOR = 2;
+	/** The default false positive probability multiplier for each new layer */
+	public static final double DEFAULT_TIGHTENING_RATIO = 0.8d;
+	/** The largest capacity of a single layer, keeping its bit count within an int */
+	public static final int MAX_LAYER_CAPACITY = 1 << 26;
+	/** The snapshot file magic number */
+	public static final int SNAPSHOT_MAGIC = 0x5B100F17;
+	/** The snapshot file format version */
+	public static final int SNAPSHOT_VERSION = 1;
+	
+	/** The byte size of the snapshot header */
+	private static final int SNAPSHOT_HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 4 + 8 + 8;
+	/** The byte size of the snapshot layer header */
+	private static final int SNAPSHOT_LAYER_HEADER_SIZE = 4 + 8 + 4;
+	
+	/**
+	 * Creates a new ScalableUnsafeBloomFilter with the default growth factor and tightening ratio
+	 * @param funnel The funnel to translate Ts to bytes
+	 * @param expectedInsertions The expected insertions of the first layer
+	 * @param fpp The false positive probability of the first layer
+	 */
+	public ScalableUnsafeBloomFilter(Funnel<T> funnel, int expectedInsertions, double fpp) {
+		this(funnel, expectedInsertions, fpp, DEFAULT_GROWTH_FACTOR, DEFAULT_TIGHTENING_RATIO);
+	}
+	
+	/**
+	 * Creates a new ScalableUnsafeBloomFilter
+	 * @param funnel The funnel to translate Ts to bytes
+	 * @param expectedInsertions The expected insertions of the first layer
+	 * @param fpp The false positive probability of the first layer
+	 * @param growthFactor The capacity multiplier for each new layer
+	 * @param tighteningRatio The false positive probability multiplier for each new layer
+	 */
+	public ScalableUnsafeBloomFilter(Funnel<T> funnel, int expectedInsertions, double fpp, int growthFactor, double tighteningRatio) {
+		this(funnel, expectedInsertions, fpp, growthFactor, tighteningRatio, null, 0L);
+	}
+	
+	/**
+	 * Creates a new ScalableUnsafeBloomFilter from existing layers
+	 * @param funnel The funnel to translate Ts to bytes
+	 * @param expectedInsertions The expected insertions of the first layer
+	 * @param fpp The false positive probability of the first layer
+	 * @param growthFactor The capacity multiplier for each new layer
+	 * @param tighteningRatio The false positive probability multiplier for each new layer
+	 * @param layers The existing layers, or null to start with a single empty layer
+	 * @param insertions The number of elements already added to the existing layers
+	 */
+	@SuppressWarnings("unchecked")
+	private ScalableUnsafeBloomFilter(Funnel<T> funnel, int expectedInsertions, double fpp, int growthFactor, double tighteningRatio, Layer<T>[] layers, long insertions) {
+		this.funnel = checkNotNull(funnel);
+		checkArgument(expectedInsertions > 0, "Expected insertions must be positive");
+		checkArgument(fpp > 0.0 && fpp < 1.0, "False positive probability in (0.0, 1.0)");
+		checkArgument(growthFactor >= 1, "Growth factor must be at least 1");
+		checkArgument(tighteningRatio > 0.0 && tighteningRatio <= 1.0, "Tightening ratio in (0.0, 1.0]");
+		this.expectedInsertions = Math.min(expectedInsertions, MAX_LAYER_CAPACITY);
+		this.fpp = fpp;
+		this.growthFactor = growthFactor;
+		this.tighteningRatio = tighteningRatio;
+		this.layers = layers!=null ? layers : new Layer[] {new Layer<T>(funnel, this.expectedInsertions, fpp, 0)};
+		this.insertions.set(insertions);
+	}
+	
+	/**
+	 * Puts an element into this filter
+	 * @param object The element to put
+	 * @return true if the element was definitely not in the filter before this call, false if it might have been
+	 */
+	public boolean put(T object) {
+		final Layer<T>[] ls = layers;
+		Layer<T> current = ls[ls.length-1];
+		final long hash64 = current.filter.hash(object);
+		for(int i = ls.length-1; i >= 0; i--) {
+			if(ls[i].filter.mightContainHash(hash64)) return false;
+		}
+		if(current.count.get() >= current.capacity) {
+			current = grow(current);
+		}
+		if(current.filter.putHash(hash64)) {
+			current.count.incrementAndGet();
+			insertions.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Determines if an element might have been put in this filter
+	 * @param object The element to test
+	 * @return true if the element might have been put in this filter, false if it definitely has not
+	 */
+	public boolean mightContain(T object) {
+		final Layer<T>[] ls = layers;
+		final long hash64 = ls[0].filter.hash(object);
+		for(int i = ls.length-1; i >= 0; i--) {
+			if(ls[i].filter.mightContainHash(hash64)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds a new layer above the passed full layer, unless another thread already has
+	 * @param full The layer found to be full
+	 * @return the current top layer
+	 */
+	@SuppressWarnings("unchecked")
+	protected synchronized Layer<T> grow(Layer<T> full) {
+		final Layer<T>[] ls = layers;
+		final Layer<T> top = ls[ls.length-1];
+		if(top!=full) return top;
+		final int capacity = (int)Math.min((long)full.capacity * growthFactor, MAX_LAYER_CAPACITY);
+		final Layer<T> next = new Layer<T>(funnel, capacity, full.fpp * tighteningRatio, 0);
+		final Layer<T>[] grown = new Layer[ls.length+1];
+		System.arraycopy(ls, 0, grown, 0, ls.length);
+		grown[ls.length] = next;
+		layers = grown;
+		return next;
+	}
+	
+	/**
+	 * Returns the probability that {@link #mightContain(Object)} will erroneously return true for an
+	 * element that has not been put, compounded across all layers
+	 * @return the expected false positive probability
+	 */
+	public double expectedFpp() {
+		double notFalsePositive = 1.0d;
+		for(Layer<T> layer: layers) {
+			notFalsePositive *= (1.0d - layer.filter.expectedFalsePositiveProbability());
+		}
+		return 1.0d - notFalsePositive;
+	}
+	
+	/**
+	 * Returns the number of elements added
+	 * @return the number of elements added
+	 */
+	public long getInsertions() {
+		return insertions.get();
+	}
+	
+	/**
+	 * Returns the number of layers
+	 * @return the number of layers
+	 */
+	public int getLayerCount() {
+		return layers.length;
+	}
+	
+	/**
+	 * Returns the total number of bits across all layers
+	 * @return the total number of bits
+	 */
+	public long getBitSize() {
+		long size = 0;
+		for(Layer<T> layer: layers) {
+			size += layer.filter.bitSize();
+		}
+		return size;
+	}
+	
+	/**
+	 * Writes this filter to the passed file through a memory mapped buffer, replacing any existing content
+	 * @param file The file to write to
+	 * @return the number of bytes written
+	 */
+	public long snapshot(File file) {
+		final Layer<T>[] ls = layers;
+		long size = SNAPSHOT_HEADER_SIZE;
+		for(Layer<T> layer: ls) {
+			size += SNAPSHOT_LAYER_HEADER_SIZE + layer.filter.serializedSize();
+		}
+		checkArgument(size <= Integer.MAX_VALUE, "Snapshot of [%s] bytes is too large to map", size);
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(size);
+			final MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+			buffer.putInt(SNAPSHOT_MAGIC);
+			buffer.putInt(SNAPSHOT_VERSION);
+			buffer.putInt(ls.length);
+			buffer.putInt(expectedInsertions);
+			buffer.putDouble(fpp);
+			buffer.putInt(growthFactor);
+			buffer.putDouble(tighteningRatio);
+			buffer.putLong(insertions.get());
+			for(Layer<T> layer: ls) {
+				buffer.putInt(layer.capacity);
+				buffer.putDouble(layer.fpp);
+				buffer.putInt(layer.count.get());
+				layer.filter.writeTo(buffer);
+			}
+			buffer.force();
+			return size;
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to snapshot bloom filter to [" + file + "]", iex);
+		} finally {
+			if(raf!=null) try { raf.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Loads a filter from a file written by {@link #snapshot(File)}
+	 * @param file The file to read from
+	 * @param funnel The funnel the filter was created with
+	 * @return the loaded filter
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ScalableUnsafeBloomFilter<T> load(File file, Funnel<T> funnel) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			final FileChannel channel = raf.getChannel();
+			final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			final int magic = buffer.getInt();
+			if(magic!=SNAPSHOT_MAGIC) throw new IllegalArgumentException("The file [" + file + "] is not a bloom filter snapshot");
+			final int version = buffer.getInt();
+			if(version!=SNAPSHOT_VERSION) throw new IllegalArgumentException("Unsupported bloom filter snapshot version [" + version + "] in [" + file + "]");
+			final int layerCount = buffer.getInt();
+			final int expectedInsertions = buffer.getInt();
+			final double fpp = buffer.getDouble();
+			final int growthFactor = buffer.getInt();
+			final double tighteningRatio = buffer.getDouble();
+			final long insertions = buffer.getLong();
+			final Layer<T>[] layers = new Layer[layerCount];
+			for(int i = 0; i < layerCount; i++) {
+				final int capacity = buffer.getInt();
+				final double layerFpp = buffer.getDouble();
+				final int count = buffer.getInt();
+				layers[i] = new Layer<T>(UnsafeBloomFilter.readFrom(buffer, funnel), capacity, layerFpp, count);
+			}
+			return new ScalableUnsafeBloomFilter<T>(funnel, expectedInsertions, fpp, growthFactor, tighteningRatio, layers, insertions);
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to load bloom filter from [" + file + "]", iex);
+		} finally {
+			if(raf!=null) try { raf.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("ScalableUnsafeBloomFilter [layers:%s, insertions:%s, bits:%s, fpp:%s]", layers.length, insertions.get(), getBitSize(), expectedFpp());
+	}
+	
+	/**
+	 * <p>Title: Layer</p>
+	 * <p>Description: A single fixed size filter in the stack and its insertion count</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.util.bloom.ScalableUnsafeBloomFilter.Layer</code></p>
+	 * @param <T> The type of the elements put into the filter
+	 */
+	protected static class Layer<T> {
+		/** The layer's filter */
+		final UnsafeBloomFilter<T> filter;
+		/** The number of insertions the layer was sized for */
+		final int capacity;
+		/** The false positive probability the layer was sized for */
+		final double fpp;
+		/** The number of elements added to this layer */
+		final AtomicInteger count;
+		
+		/**
+		 * Creates a new empty Layer
+		 * @param funnel The funnel to translate Ts to bytes
+		 * @param capacity The number of insertions to size the layer for
+		 * @param fpp The false positive probability to size the layer for
+		 * @param count The number of elements already added
+		 */
+		Layer(Funnel<T> funnel, int capacity, double fpp, int count) {
+			this(UnsafeBloomFilter.create(funnel, capacity, fpp), capacity, fpp, count);
+		}
+		
+		/**
+		 * Creates a new Layer around an existing filter
+		 * @param filter The layer's filter
+		 * @param capacity The number of insertions the layer was sized for
+		 * @param fpp The false positive probability the layer was sized for
+		 * @param count The number of elements already added
+		 */
+		Layer(UnsafeBloomFilter<T> filter, int capacity, double fpp, int count) {
+			this.filter = filter;
+			this.capacity = capacity;
+			this.fpp = fpp;
+			this.count = new AtomicInteger(count);
+		}
+	}
+
+}
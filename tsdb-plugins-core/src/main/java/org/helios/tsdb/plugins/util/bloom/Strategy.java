@@ -29,7 +29,7 @@ import com.google.common.hash.Funnel;
 
 /**
  * <p>Title: Strategy</p>
- * <p>Description: </p> 
+ * <p>Description: A bloom filter hashing strategy that maps elements, or their pre-computed 64 bit hash, onto bits of an {@link UnsafeBitArray}</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.util.bloom.Strategy</code></p>
@@ -51,6 +51,25 @@ interface Strategy extends java.io.Serializable {
     <T> boolean mightContain(
         T object, Funnel<? super T> funnel, int numHashFunctions, UnsafeBitArray bits);
 
+    /**
+     * Hashes a user element once, so the result can be applied to several bit arrays
+     * through {@link #putHash(long, int, UnsafeBitArray)} and {@link #mightContainHash(long, int, UnsafeBitArray)}.
+     */
+    <T> long hash(T object, Funnel<? super T> funnel);
+
+    /**
+     * Sets {@code numHashFunctions} bits of the given bit array from a hash returned by {@link #hash(Object, Funnel)}.
+     *
+     * <p>Returns whether any bits changed as a result of this operation.
+     */
+    boolean putHash(long hash64, int numHashFunctions, UnsafeBitArray bits);
+
+    /**
+     * Queries {@code numHashFunctions} bits of the given bit array from a hash returned by {@link #hash(Object, Funnel)};
+     * returns {@code true} if and only if all selected bits are set.
+     */
+    boolean mightContainHash(long hash64, int numHashFunctions, UnsafeBitArray bits);
+
     /**
      * Identifier used to encode this strategy, when marshalled as part of a BloomFilter.
      * Only values in the [-128, 127] range are valid for the compact serial form.
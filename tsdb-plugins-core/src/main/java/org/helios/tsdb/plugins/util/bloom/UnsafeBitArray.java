@@ -26,20 +26,25 @@ package org.helios.tsdb.plugins.util.bloom;
 
 import static org.helios.jmx.util.unsafe.UnsafeAdapter.LONG_ARRAY_OFFSET;
 import static org.helios.jmx.util.unsafe.UnsafeAdapter.copyMemory;
-import static org.helios.jmx.util.unsafe.UnsafeAdapter.getLong;
-import static org.helios.jmx.util.unsafe.UnsafeAdapter.putLong;
 import static org.helios.jmx.util.unsafe.UnsafeAdapter.setMemory;
 
+import java.lang.reflect.Field;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.helios.jmx.util.unsafe.DeAllocateMe;
 import org.helios.jmx.util.unsafe.UnsafeAdapter;
 
+import sun.misc.Unsafe;
+
 import com.google.common.math.IntMath;
 
 /**
  * <p>Title: UnsafeBitArray</p>
- * <p>Description: A reimplementation of google guava's BitArray class using off heap allocation.</p> 
+ * <p>Description: A reimplementation of google guava's BitArray class using off heap allocation.
+ * Bits are set with a compare and swap on the containing long, so concurrent {@link #set(int)} calls never lose bits
+ * and exactly one caller sees <code>true</code> for each bit that was flipped.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.util.bloom.UnsafeBitArray</code></p>
@@ -49,10 +54,23 @@ public class UnsafeBitArray implements DeAllocateMe {
 	/** The assigned allocation address */
 	protected final long[][] address = new long[1][1];
 	/** The number of set bits */
-	protected int bits = 0;
+	protected final AtomicInteger bits = new AtomicInteger(0);
 	/** The number of longs managed for the bit array */
 	protected final int size;
 	
+	/** The unsafe instance used for volatile reads and CAS on the off heap longs */
+	private static final Unsafe UNSAFE;
+	
+	static {
+		try {
+			Field f = Unsafe.class.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			UNSAFE = (Unsafe)f.get(null);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to acquire sun.misc.Unsafe", ex);
+		}
+	}
+	
 	private long address() {
 		return address[0][0];
 	}
@@ -68,20 +86,39 @@ public class UnsafeBitArray implements DeAllocateMe {
 		if(data==null || data.length==0) throw new IllegalArgumentException("Data length was zero or null");
 		size = data.length;
 	    int bitCount = 0;
-	    long bytesOfData = 0;
 	    for (long value : data) {
 	        bitCount += Long.bitCount(value);
 	    }
-	    bits = bitCount;
-	    bytesOfData = bitCount << 3;
+	    bits.set(bitCount);
+	    final long bytesOfData = ((long)size) << 3;
 	    address[0][0] = UnsafeAdapter.allocateMemory(bytesOfData, this);
 	    copyMemory(data, LONG_ARRAY_OFFSET, null, address(), bytesOfData);
 	}
 	
+	/**
+	 * Creates a new UnsafeBitArray from longs read from the passed buffer's current position
+	 * @param size The number of longs to read
+	 * @param buffer The buffer to read from
+	 */
+	public UnsafeBitArray(int size, ByteBuffer buffer) {
+		if(size<1) throw new IllegalArgumentException("Invalid size [" + size + "]");
+		if(buffer.remaining() < (((long)size) << 3)) throw new IllegalArgumentException("Buffer has [" + buffer.remaining() + "] bytes remaining but [" + (((long)size) << 3) + "] are required");
+		this.size = size;
+		final long byteSize = ((long)size) << 3;
+		address[0][0] = UnsafeAdapter.allocateMemory(byteSize, this);
+		int bitCount = 0;
+		for(int i = 0; i < size; i++) {
+			final long value = buffer.getLong();
+			UNSAFE.putLong(offset(i), value);
+			bitCount += Long.bitCount(value);
+		}
+		bits.set(bitCount);
+	}
+	
 	private UnsafeBitArray(int bits, int size, long srcAddress) {
-		this.bits = bits;
+		this.bits.set(bits);
 		this.size = size;
-		long byteSize = size << 3;
+		long byteSize = ((long)size) << 3;
 		address[0][0] = UnsafeAdapter.allocateMemory(byteSize, this);
 		copyMemory(srcAddress, address[0][0], byteSize);
 	}
@@ -91,9 +128,8 @@ public class UnsafeBitArray implements DeAllocateMe {
 	 * @param bits The number of bits to represent
 	 */
 	public UnsafeBitArray(int bits) {
-		this.bits = bits;
 		size = IntMath.divide(bits, 64, RoundingMode.CEILING);
-		long byteSize = size << 3;
+		long byteSize = ((long)size) << 3;
 		address[0][0] = UnsafeAdapter.allocateMemory(byteSize, this);
 		setMemory(address[0][0], byteSize, ZERO);
 	}
@@ -106,45 +142,53 @@ public class UnsafeBitArray implements DeAllocateMe {
 	 */
 	public long[] toLongArray() {
 		long[] arr = new long[size];
-		copyMemory(null, address[0][0], arr, LONG_ARRAY_OFFSET, size << 3);
+		copyMemory(null, address[0][0], arr, LONG_ARRAY_OFFSET, ((long)size) << 3);
 		return arr;
 	}
 	
-	private long data(int index) {
-		return getLong(address[0][0] + (index << 3));
+	/**
+	 * Writes this bit array's longs to the passed buffer at its current position
+	 * @param buffer The buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		for(int i = 0; i < size; i++) {
+			buffer.putLong(data(i));
+		}
 	}
 	
-	private void data(int index, long value) {
-		putLong(address[0][0] + (index << 3), value);
+	private long offset(int index) {
+		return address[0][0] + (((long)index) << 3);
 	}
 	
-	
-	private int byteSize() {
-		return size << 3;
+	private long data(int index) {
+		return UNSAFE.getLongVolatile(null, offset(index));
 	}
 	
+	
     /**
      * Determines if the bit at the specified index is on
      * @param index the bit index
      * @return true if on, false if off
      */
     public boolean get(int index) {
-    	return (data(index >> 6) & (1L << index)) != 0;
-//    	return getLong(address[0][0] + ((index >> 6) << 3)) != 0;
+    	return (data(index >>> 6) & (1L << index)) != 0;
     }
 	
 	/**
-	 * Conditionally sets the bit at the specified bit index
+	 * Atomically sets the bit at the specified bit index if it is not already set
 	 * @param index the bit index
-	 * @return true if set, false otherwise
+	 * @return true if this call set the bit, false if it was already set
 	 */
 	public boolean set(int index) {
-		if (!get(index)) {
-			data(index >> 6, data(index >> 6) | (1L << index));
-			bits++;
-			return true;
-		}
-		return false;
+		final long offset = offset(index >>> 6);
+		final long mask = 1L << index;
+		long current;
+		do {
+			current = UNSAFE.getLongVolatile(null, offset);
+			if((current & mask) != 0) return false;
+		} while(!UNSAFE.compareAndSwapLong(null, offset, current, current | mask));
+		bits.incrementAndGet();
+		return true;
 	}	
 	
 
@@ -156,12 +200,20 @@ public class UnsafeBitArray implements DeAllocateMe {
       return size << 6;
     }
     
+    /**
+     * Returns the number of longs in this array
+     * @return the number of longs in this array
+     */
+    public int longSize() {
+    	return size;
+    }
+    
     /**
      * Returns the number of set bits (1s)
      * @return the number of set bits
      */
     public int bitCount() {
-      return bits;
+      return bits.get();
     }
 
     /**
@@ -169,14 +221,15 @@ public class UnsafeBitArray implements DeAllocateMe {
      * @return a copy of this bit array
      */
     public UnsafeBitArray copy() {
-        return new UnsafeBitArray(bits, byteSize(), address());
+        return new UnsafeBitArray(bits.get(), size, address());
     }    
     
     @Override
     public int hashCode() {
         int result = 1;
         for(int i = 0; i < size; i++) {
-        	int elementHash = (int)(data(0) ^ (data(0) >>> 32));
+        	final long element = data(i);
+        	int elementHash = (int)(element ^ (element >>> 32));
         	result = 31 * result + elementHash;
         }
         return result;
@@ -188,7 +241,7 @@ public class UnsafeBitArray implements DeAllocateMe {
         	UnsafeBitArray bitArray = (UnsafeBitArray)o;
         	if(bitArray.size != size) return false;
         	for(int i = 0; i < size; i++) {
-        		if(data(0) != bitArray.data(0)) return false;
+        		if(data(i) != bitArray.data(i)) return false;
         	}
         	return true;
         }
@@ -28,6 +28,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -36,7 +37,8 @@ import com.google.common.hash.Funnel;
 
 /**
  * <p>Title: UnsafeBloomFilter</p>
- * <p>Description: </p> 
+ * <p>Description: A reimplementation of google guava's BloomFilter backed by an off heap {@link UnsafeBitArray}.
+ * Bits are set atomically, so the filter is safe for concurrent puts and lookups without external locking.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.util.bloom.UnsafeBloomFilter</code></p>
@@ -118,6 +120,88 @@ public class UnsafeBloomFilter<T> implements Serializable {
 	    return strategy.put(object, funnel, numHashFunctions, bits);
 	  }
 
+	  /**
+	   * Hashes an element once for use with {@link #putHash(long)} and {@link #mightContainHash(long)}
+	   * on this or any other filter sharing the same funnel and strategy.
+	   * @param object The element to hash
+	   * @return the element hash
+	   */
+	  long hash(T object) {
+	    return strategy.hash(object, funnel);
+	  }
+
+	  /**
+	   * Puts an element into this filter from its {@link #hash(Object)}
+	   * @param hash64 The element hash
+	   * @return true if the filter's bits changed
+	   */
+	  boolean putHash(long hash64) {
+	    return strategy.putHash(hash64, numHashFunctions, bits);
+	  }
+
+	  /**
+	   * Tests an element from its {@link #hash(Object)}
+	   * @param hash64 The element hash
+	   * @return true if the element might have been put in this filter
+	   */
+	  boolean mightContainHash(long hash64) {
+	    return strategy.mightContainHash(hash64, numHashFunctions, bits);
+	  }
+
+	  /**
+	   * Returns the number of bits in this filter
+	   * @return the number of bits in this filter
+	   */
+	  public int bitSize() {
+	    return bits.size();
+	  }
+
+	  /**
+	   * Returns the number of set bits in this filter
+	   * @return the number of set bits in this filter
+	   */
+	  public int bitCount() {
+	    return bits.bitCount();
+	  }
+
+	  /**
+	   * Returns the number of bytes {@link #writeTo(ByteBuffer)} will write
+	   * @return the serialized byte size
+	   */
+	  public long serializedSize() {
+	    return SERIAL_HEADER_SIZE + (((long)bits.longSize()) << 3);
+	  }
+
+	  /**
+	   * Writes this filter to the passed buffer at its current position. Puts running concurrently with the
+	   * write may or may not be included.
+	   * @param buffer The buffer to write to
+	   */
+	  public void writeTo(ByteBuffer buffer) {
+	    buffer.putInt(numHashFunctions);
+	    buffer.putInt(strategy.ordinal());
+	    buffer.putInt(bits.longSize());
+	    bits.writeTo(buffer);
+	  }
+
+	  /**
+	   * Reads a filter written by {@link #writeTo(ByteBuffer)} from the passed buffer's current position
+	   * @param buffer The buffer to read from
+	   * @param funnel The funnel the filter was created with
+	   * @return the read filter
+	   */
+	  public static <T> UnsafeBloomFilter<T> readFrom(ByteBuffer buffer, Funnel<T> funnel) {
+	    final int numHashFunctions = buffer.getInt();
+	    final int strategyOrdinal = buffer.getInt();
+	    final int longSize = buffer.getInt();
+	    final UnsafeBloomFilterStrategies[] strategies = UnsafeBloomFilterStrategies.values();
+	    checkArgument(strategyOrdinal >= 0 && strategyOrdinal < strategies.length, "Unknown strategy ordinal [%s]", strategyOrdinal);
+	    return new UnsafeBloomFilter<T>(new UnsafeBitArray(longSize, buffer), numHashFunctions, funnel, strategies[strategyOrdinal]);
+	  }
+
+	  /** The byte size of the header written by {@link #writeTo(ByteBuffer)} */
+	  static final int SERIAL_HEADER_SIZE = 12;
+
 	  /**
 	   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
 	   * {@code true} for an object that has not actually been put in the {@code BloomFilter}.
@@ -245,7 +329,7 @@ public class UnsafeBloomFilter<T> implements Serializable {
 	   * @param m total number of bits in Bloom filter (must be positive)
 	   */
 	  @VisibleForTesting static int optimalNumOfHashFunctions(int n, int m) {
-	    return Math.max(1, (int) Math.round(m / n * LN2));
+	    return Math.max(1, (int) Math.round((double) m / n * LN2));
 	  }
 
 	  /**
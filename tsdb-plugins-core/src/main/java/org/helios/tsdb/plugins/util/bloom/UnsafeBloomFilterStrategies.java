@@ -30,7 +30,7 @@ import com.google.common.hash.Hashing;
 
 /**
  * <p>Title: UnsafeBloomFilterStrategies</p>
- * <p>Description: </p> 
+ * <p>Description: The bit index strategies for {@link UnsafeBloomFilter}</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.tsdb.plugins.util.bloom.UnsafeBloomFilterStrategies</code></p>
@@ -45,8 +45,20 @@ public enum UnsafeBloomFilterStrategies implements Strategy {
 	  MURMUR128_MITZ_32() {
 	    @Override public <T> boolean put(T object, Funnel<? super T> funnel,
 	        int numHashFunctions, UnsafeBitArray bits) {
+	      return putHash(hash(object, funnel), numHashFunctions, bits);
+	    }
+
+	    @Override public <T> boolean mightContain(T object, Funnel<? super T> funnel,
+	        int numHashFunctions, UnsafeBitArray bits) {
+	      return mightContainHash(hash(object, funnel), numHashFunctions, bits);
+	    }
+
+	    @Override public <T> long hash(T object, Funnel<? super T> funnel) {
 	      // TODO(user): when the murmur's shortcuts are implemented, update this code
-	      long hash64 = Hashing.murmur3_128().newHasher().putObject(object, funnel).hash().asLong();
+	      return Hashing.murmur3_128().newHasher().putObject(object, funnel).hash().asLong();
+	    }
+
+	    @Override public boolean putHash(long hash64, int numHashFunctions, UnsafeBitArray bits) {
 	      int hash1 = (int) hash64;
 	      int hash2 = (int) (hash64 >>> 32);
 	      boolean bitsChanged = false;
@@ -60,9 +72,7 @@ public enum UnsafeBloomFilterStrategies implements Strategy {
 	      return bitsChanged;
 	    }
 
-	    @Override public <T> boolean mightContain(T object, Funnel<? super T> funnel,
-	        int numHashFunctions, UnsafeBitArray bits) {
-	      long hash64 = Hashing.murmur3_128().newHasher().putObject(object, funnel).hash().asLong();
+	    @Override public boolean mightContainHash(long hash64, int numHashFunctions, UnsafeBitArray bits) {
 	      int hash1 = (int) hash64;
 	      int hash2 = (int) (hash64 >>> 32);
 	      for (int i = 1; i <= numHashFunctions; i++) {
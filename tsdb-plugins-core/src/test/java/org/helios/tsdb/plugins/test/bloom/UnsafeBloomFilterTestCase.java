@@ -0,0 +1,134 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.test.bloom;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.helios.tsdb.plugins.util.bloom.ScalableUnsafeBloomFilter;
+import org.helios.tsdb.plugins.util.bloom.UnsafeBloomFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+
+/**
+ * <p>Title: UnsafeBloomFilterTestCase</p>
+ * <p>Description: Validates concurrent puts, growth and snapshots of the off heap bloom filters</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.test.bloom.UnsafeBloomFilterTestCase</code></p>
+ */
+
+public class UnsafeBloomFilterTestCase extends BaseTest {
+	/** The funnel used by all tests */
+	static final Funnel<CharSequence> FUNNEL = Funnels.stringFunnel(Charset.forName("UTF-8"));
+	
+	/**
+	 * Validates that a filter populated by concurrent threads sets exactly the bits of a filter populated sequentially
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=60000)
+	public void testConcurrentPut() throws Exception {
+		final int count = 200000, threads = 8;
+		final UnsafeBloomFilter<CharSequence> sequential = UnsafeBloomFilter.create(FUNNEL, count, 0.01);
+		final UnsafeBloomFilter<CharSequence> concurrent = UnsafeBloomFilter.create(FUNNEL, count, 0.01);
+		for(int i = 0; i < count; i++) {
+			sequential.put("key" + i);
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		try {
+			for(int t = 0; t < threads; t++) {
+				final int offset = t;
+				executor.execute(new Runnable() {
+					public void run() {
+						for(int i = offset; i < count; i += threads) {
+							concurrent.put("key" + i);
+						}
+						latch.countDown();
+					}
+				});
+			}
+			Assert.assertTrue("Timed out waiting for puts", latch.await(30, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals("Unexpected bit count", sequential.bitCount(), concurrent.bitCount());
+		Assert.assertEquals("Filters not equal", sequential, concurrent);
+	}
+	
+	/**
+	 * Validates that a scalable filter adds layers past its expected insertions without false negatives
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testScalableGrowth() throws Exception {
+		final ScalableUnsafeBloomFilter<CharSequence> filter = new ScalableUnsafeBloomFilter<CharSequence>(FUNNEL, 1000, 0.01);
+		for(int i = 0; i < 20000; i++) {
+			filter.put("key" + i);
+		}
+		Assert.assertTrue("Filter did not grow", filter.getLayerCount() > 1);
+		for(int i = 0; i < 20000; i++) {
+			Assert.assertTrue("False negative for [key" + i + "]", filter.mightContain("key" + i));
+		}
+		int falsePositives = 0;
+		for(int i = 0; i < 20000; i++) {
+			if(filter.mightContain("absent" + i)) falsePositives++;
+		}
+		log("Scalable filter: %s, false positives: %s", filter, falsePositives);
+		Assert.assertTrue("Excessive false positives [" + falsePositives + "]", falsePositives < 20000 * 0.05);
+	}
+	
+	/**
+	 * Validates that a scalable filter snapshotted to a file loads back with the same content
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testSnapshotAndLoad() throws Exception {
+		final ScalableUnsafeBloomFilter<CharSequence> filter = new ScalableUnsafeBloomFilter<CharSequence>(FUNNEL, 1000, 0.01);
+		for(int i = 0; i < 5000; i++) {
+			filter.put("key" + i);
+		}
+		final File file = File.createTempFile("bloom", ".snapshot");
+		file.deleteOnExit();
+		filter.snapshot(file);
+		final ScalableUnsafeBloomFilter<CharSequence> loaded = ScalableUnsafeBloomFilter.load(file, FUNNEL);
+		Assert.assertEquals("Layer count mismatch", filter.getLayerCount(), loaded.getLayerCount());
+		Assert.assertEquals("Insertion count mismatch", filter.getInsertions(), loaded.getInsertions());
+		Assert.assertEquals("Bit size mismatch", filter.getBitSize(), loaded.getBitSize());
+		for(int i = 0; i < 5000; i++) {
+			Assert.assertTrue("False negative for [key" + i + "]", loaded.mightContain("key" + i));
+		}
+		Assert.assertEquals("Fpp mismatch", filter.expectedFpp(), loaded.expectedFpp(), 0.0d);
+	}
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.test.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.helios.tsdb.plugins.event.TSDBEvent;
+import org.helios.tsdb.plugins.handlers.logging.EventTracer;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: EventTracerTestCase</p>
+ * <p>Description: Validates the {@link EventTracer} ring: wrapping, generations started by {@link EventTracer#clear()} and 
+ * that concurrent writers, clears and dumps never surface a torn record</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.test.logging.EventTracerTestCase</code></p>
+ */
+
+public class EventTracerTestCase extends BaseTest {
+	/** Parses the sequence, timestamp and value out of a dumped record */
+	static final Pattern RECORD = Pattern.compile(".*? seq:(-?\\d+) ts:(-?\\d+) value:(-?\\d+) .*");
+	
+	/**
+	 * Clears the tracer config
+	 */
+	@After
+	public void clearConfig() {
+		System.clearProperty(EventTracer.TRACE_CAPACITY_PROP);
+	}
+	
+	/**
+	 * Validates that a wrapped ring keeps the most recent records, oldest first
+	 */
+	@Test
+	public void testWrapKeepsMostRecent() {
+		final EventTracer tracer = newTracer(64);
+		final TSDBEvent event = newEvent();
+		for(int i = 0; i < 100; i++) trace(tracer, event, i);
+		Assert.assertEquals("Record count", 100, tracer.getRecordCount());
+		final List<long[]> records = parse(tracer.dump(1000));
+		Assert.assertEquals("Records kept", 64, records.size());
+		for(int i = 0; i < records.size(); i++) {
+			Assert.assertEquals("Sequence at " + i, 36 + i, records.get(i)[0]);
+		}
+		final List<long[]> recent = parse(tracer.dump(5));
+		Assert.assertEquals("Recent records", 5, recent.size());
+		Assert.assertEquals("Oldest recent", 95, recent.get(0)[0]);
+	}
+	
+	/**
+	 * Validates that clear discards the prior records without rewinding and that the new generation records are dumped
+	 */
+	@Test
+	public void testClearStartsNewGeneration() {
+		final EventTracer tracer = newTracer(16);
+		final TSDBEvent event = newEvent();
+		for(int i = 0; i < 10; i++) trace(tracer, event, i);
+		tracer.clear();
+		Assert.assertEquals("Count after clear", 0, tracer.getRecordCount());
+		Assert.assertEquals("Dump after clear", 0, tracer.dump(100).length);
+		for(int i = 100; i < 105; i++) trace(tracer, event, i);
+		Assert.assertEquals("Count in new generation", 5, tracer.getRecordCount());
+		final List<long[]> records = parse(tracer.dump(100));
+		Assert.assertEquals("Records in new generation", 5, records.size());
+		for(int i = 0; i < records.size(); i++) {
+			Assert.assertEquals("Sequence at " + i, 100 + i, records.get(i)[0]);
+		}
+		// wrap the new generation: none of the first generation may resurface
+		for(int i = 200; i < 240; i++) trace(tracer, event, i);
+		for(long[] rec: parse(tracer.dump(100))) {
+			Assert.assertTrue("Current generation record " + rec[0], rec[0] >= 224);
+		}
+	}
+	
+	/**
+	 * Validates that records dumped while several threads trace into a small ring and the ring is repeatedly cleared are never torn.
+	 * Every traced event carries the same value as its sequence, timestamp and value.
+	 * @throws Exception thrown on any error
+	 */
+	@Test(timeout=30000)
+	public void testConcurrentTraceClearAndDump() throws Exception {
+		final EventTracer tracer = newTracer(16);
+		final int writers = 4;
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(writers);
+		for(int w = 0; w < writers; w++) {
+			final long base = ((long)w) << 40;
+			final Thread t = new Thread("EventTracerWriter#" + w) {
+				@Override
+				public void run() {
+					try {
+						final TSDBEvent event = newEvent();
+						long n = 0;
+						while(running.get()) trace(tracer, event, base + n++);
+					} catch (Throwable ex) {
+						failure.set(ex);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		long dumped = 0;
+		final long end = System.currentTimeMillis() + 2000;
+		try {
+			for(int i = 0; System.currentTimeMillis() < end; i++) {
+				if(i%8==0) tracer.clear();
+				final String[] lines = tracer.dump(16);
+				Assert.assertTrue("Dump within capacity", lines.length <= 16);
+				for(long[] rec: parse(lines)) {
+					Assert.assertEquals("Torn record timestamp", rec[0], rec[1]);
+					Assert.assertEquals("Torn record value", rec[0], rec[2]);
+					dumped++;
+				}
+			}
+		} finally {
+			running.set(false);
+			Assert.assertTrue("Writers stopped", done.await(5, TimeUnit.SECONDS));
+		}
+		Assert.assertNull("Writer failure", failure.get());
+		Assert.assertTrue("Records dumped", dumped > 0);
+	}
+	
+	/**
+	 * Creates a tracing tracer with the passed capacity, no sampling and no rate limit
+	 * @param capacity The ring capacity
+	 * @return the tracer
+	 */
+	static EventTracer newTracer(final int capacity) {
+		System.setProperty(EventTracer.TRACE_CAPACITY_PROP, "" + capacity);
+		final EventTracer tracer = new EventTracer("EventTracerTestCase");
+		tracer.setSampleRate(1);
+		tracer.setMaxPerSecond(Integer.MAX_VALUE);
+		tracer.setTracing(true);
+		Assert.assertEquals("Capacity", capacity, tracer.getCapacity());
+		return tracer;
+	}
+	
+	/**
+	 * Creates a long data point event
+	 * @return the event
+	 */
+	static TSDBEvent newEvent() {
+		return TSDBEvent.EVENT_FACTORY.newInstance().publishDataPoint("sys.cpu", 0L, 0L, Collections.<String, String>emptyMap(), new byte[]{0, 0, 1});
+	}
+	
+	/**
+	 * Traces the passed event with the passed value as its sequence, timestamp and value
+	 * @param tracer The tracer
+	 * @param event The event
+	 * @param value The value
+	 */
+	static void trace(final EventTracer tracer, final TSDBEvent event, final long value) {
+		event.timestamp = value;
+		event.longValue = value;
+		tracer.trace(event, value);
+	}
+	
+	/**
+	 * Parses the sequence, timestamp and value of dumped records
+	 * @param lines The dumped records
+	 * @return an array of sequence, timestamp and value for each record
+	 */
+	static List<long[]> parse(final String[] lines) {
+		final List<long[]> records = new ArrayList<long[]>(lines.length);
+		for(String line: lines) {
+			final Matcher m = RECORD.matcher(line);
+			Assert.assertTrue("Record format [" + line + "]", m.matches());
+			records.add(new long[]{Long.parseLong(m.group(1)), Long.parseLong(m.group(2)), Long.parseLong(m.group(3))});
+		}
+		return records;
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.test.stats;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.helios.tsdb.plugins.stats.NanoHistogram;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: NanoHistogramTestCase</p>
+ * <p>Description: Validates the {@link NanoHistogram} bucket layout at the linear/log transition and the top of the 
+ * <code>long</code> range, and that percentiles match the bucket of the exact percentile value.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.test.stats.NanoHistogramTestCase</code></p>
+ */
+
+public class NanoHistogramTestCase extends BaseTest {
+	
+	/**
+	 * Validates the bucket count and the buckets at each end of the range
+	 */
+	@Test
+	public void testBucketRange() {
+		Assert.assertEquals("Bucket count", 1888, NanoHistogram.BUCKETS);
+		Assert.assertEquals("Lowest bucket", 0, NanoHistogram.index(0L));
+		Assert.assertEquals("Highest bucket", NanoHistogram.BUCKETS-1, NanoHistogram.index(Long.MAX_VALUE));
+		Assert.assertEquals("Highest bucket upper bound", Long.MAX_VALUE, NanoHistogram.highestValue(NanoHistogram.BUCKETS-1));
+		Assert.assertEquals("Highest bucket lower bound", 63L << 57, NanoHistogram.lowestValue(NanoHistogram.BUCKETS-1));
+		Assert.assertEquals("Last power of two", NanoHistogram.BUCKETS-32, NanoHistogram.index(1L << 62));
+	}
+	
+	/**
+	 * Validates that values below 64 have their own bucket and the first log buckets above it are two wide
+	 */
+	@Test
+	public void testLinearLogTransition() {
+		for(int v = 0; v < NanoHistogram.LINEAR_BUCKETS; v++) {
+			Assert.assertEquals("Linear index " + v, v, NanoHistogram.index(v));
+			Assert.assertEquals("Linear lower bound " + v, v, NanoHistogram.lowestValue(v));
+			Assert.assertEquals("Linear upper bound " + v, v, NanoHistogram.highestValue(v));
+		}
+		Assert.assertEquals("Last linear", 63, NanoHistogram.index(63L));
+		Assert.assertEquals("First log", 64, NanoHistogram.index(64L));
+		Assert.assertEquals("First log shares", 64, NanoHistogram.index(65L));
+		Assert.assertEquals("Second log", 65, NanoHistogram.index(66L));
+		Assert.assertEquals("First log upper bound", 65L, NanoHistogram.highestValue(64));
+		Assert.assertEquals("Top of first power", 95, NanoHistogram.index(127L));
+		Assert.assertEquals("Next power", 96, NanoHistogram.index(128L));
+		Assert.assertEquals("Next power upper bound", 131L, NanoHistogram.highestValue(96));
+	}
+	
+	/**
+	 * Validates that every bucket is contiguous with its neighbour, that its bounds index back to it,
+	 * and that each log bucket is no wider than 1/32 of its lower bound
+	 */
+	@Test
+	public void testBucketBounds() {
+		for(int i = 0; i < NanoHistogram.BUCKETS; i++) {
+			final long low = NanoHistogram.lowestValue(i);
+			final long high = NanoHistogram.highestValue(i);
+			Assert.assertEquals("Lower bound index " + i, i, NanoHistogram.index(low));
+			Assert.assertEquals("Upper bound index " + i, i, NanoHistogram.index(high));
+			if(i < NanoHistogram.BUCKETS-1) {
+				Assert.assertEquals("Contiguous " + i, high + 1, NanoHistogram.lowestValue(i+1));
+			}
+			if(i >= NanoHistogram.LINEAR_BUCKETS) {
+				Assert.assertTrue("Width " + i, high - low < low / NanoHistogram.SUB_BUCKETS);
+			}
+		}
+		for(int msb = 6; msb < 63; msb++) {
+			final int first = NanoHistogram.LINEAR_BUCKETS + ((msb - 6) << NanoHistogram.SUB_BUCKET_BITS);
+			Assert.assertEquals("Power of two " + msb, first, NanoHistogram.index(1L << msb));
+			Assert.assertEquals("Below power of two " + msb, first - 1, NanoHistogram.index((1L << msb) - 1));
+		}
+	}
+	
+	/**
+	 * Validates percentiles against the exact percentiles of random values spread over the linear and log ranges
+	 */
+	@Test
+	public void testPercentiles() {
+		final Random r = new Random(1888);
+		final NanoHistogram h = new NanoHistogram();
+		final long[] values = new long[10000];
+		for(int i = 0; i < values.length; i++) {
+			// mostly small values with a long tail
+			values[i] = (long)Math.pow(2D, r.nextDouble() * 40D) - 1;
+			h.record(values[i]);
+		}
+		Arrays.sort(values);
+		final double[] pcts = {0D, 1D, 25D, 50D, 90D, 99D, 99.9D, 99.99D, 100D};
+		final long[] results = h.percentiles(pcts);
+		for(int p = 0; p < pcts.length; p++) {
+			final long exact = values[(int)Math.max(0L, (long)Math.ceil(pcts[p] / 100D * values.length) - 1)];
+			final long expected = Math.min(NanoHistogram.highestValue(NanoHistogram.index(exact)), values[values.length-1]);
+			Assert.assertEquals("p" + pcts[p], expected, results[p]);
+			Assert.assertTrue("p" + pcts[p] + " error", results[p] - exact <= exact / NanoHistogram.SUB_BUCKETS);
+		}
+		Assert.assertEquals("Max", values[values.length-1], h.getMax());
+		Assert.assertEquals("p100 is max", h.getMax(), h.percentile(100D));
+		Assert.assertEquals("Count", values.length, h.getCount());
+	}
+	
+	/**
+	 * Validates percentiles of values in the top bucket, which are capped at the recorded max
+	 */
+	@Test
+	public void testPercentilesAtMax() {
+		final NanoHistogram h = new NanoHistogram();
+		h.record(Long.MAX_VALUE - 1);
+		Assert.assertEquals("Capped at max", Long.MAX_VALUE - 1, h.percentile(100D));
+		h.record(Long.MAX_VALUE);
+		Assert.assertEquals("Top of range", Long.MAX_VALUE, h.percentile(100D));
+		Assert.assertEquals("Same bucket", Long.MAX_VALUE, h.percentile(50D));
+		h.record(10L);
+		Assert.assertEquals("Linear value", 10L, h.percentile(1D));
+	}
+	
+	/**
+	 * Validates empty, negative and reset histograms
+	 */
+	@Test
+	public void testEmptyNegativeAndReset() {
+		final NanoHistogram h = new NanoHistogram();
+		Assert.assertArrayEquals("Empty", new long[]{0L, 0L}, h.percentiles(50D, 99D));
+		h.record(-5L);
+		Assert.assertEquals("Negative count", 1L, h.getCount());
+		Assert.assertEquals("Negative recorded as zero", 0L, h.percentile(100D));
+		h.record(1000L);
+		Assert.assertEquals("Mean", 500L, h.getMean());
+		h.reset();
+		Assert.assertEquals("Reset count", 0L, h.getCount());
+		Assert.assertEquals("Reset max", 0L, h.getMax());
+		Assert.assertEquals("Reset percentile", 0L, h.percentile(99D));
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.tsdb.plugins.test.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import net.opentsdb.core.TSDB;
+import net.opentsdb.uid.NoSuchUniqueName;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+import net.opentsdb.utils.Config;
+
+import org.helios.tsdb.plugins.service.AbstractTSDBPluginService.StatsCollectorImpl;
+import org.helios.tsdb.plugins.stats.StatsSubmissionBuffer;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.net.opentsdb.core.EmptyTSDB;
+import test.net.opentsdb.core.MethodMocker;
+
+import com.stumbleupon.async.Deferred;
+
+/**
+ * <p>Title: StatsSubmissionBufferTestCase</p>
+ * <p>Description: Validates the metric names, tags and drop accounting of self-metrics written through the {@link StatsSubmissionBuffer}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.tsdb.plugins.test.stats.StatsSubmissionBufferTestCase</code></p>
+ */
+
+public class StatsSubmissionBufferTestCase extends BaseTest {
+	/** The datapoints written by the mocked TSDB */
+	public static final List<RecordedPoint> points = new ArrayList<RecordedPoint>();
+	/** The UIDs assigned by the mocked TSDB as <b><code>type:name</code></b> */
+	public static final Set<String> assigned = new HashSet<String>();
+	/** The remaining number of UID lookup failures the mocked TSDB will inject, keyed by name */
+	public static final Map<String, Integer> failures = new HashMap<String, Integer>();
+	/** The number of UID lookups made against the mocked TSDB, keyed by name */
+	public static final Map<String, Integer> lookupCounts = new HashMap<String, Integer>();
+	
+	/** The buffer under test */
+	protected StatsSubmissionBuffer buffer = null;
+	
+	/**
+	 * Mocks the TSDB's UID and write methods
+	 */
+	@BeforeClass
+	public static void mockClasses() {
+		MethodMocker.getInstance().transform(TSDB.class, MockedTSDB.class);
+	}
+	
+	/**
+	 * Restores the TSDB
+	 */
+	@AfterClass
+	public static void restoreClasses() {
+		MethodMocker.getInstance().restore(TSDB.class);
+	}
+	
+	/**
+	 * Shuts down the buffer under test and clears the mocked TSDB's state
+	 */
+	@After
+	public void shutdownBuffer() {
+		if(buffer!=null) buffer.shutdown();
+		buffer = null;
+		points.clear();
+		assigned.clear();
+		failures.clear();
+		lookupCounts.clear();
+	}
+	
+	/**
+	 * Creates a buffer writing to a new mocked TSDB
+	 * @param props Alternating buffer config property names and values
+	 * @return the new buffer
+	 * @throws Exception thrown on any error
+	 */
+	protected StatsSubmissionBuffer newBuffer(String...props) throws Exception {
+		final Properties p = new Properties();
+		for(int i = 0; i < props.length; i+=2) {
+			p.setProperty(props[i], props[i+1]);
+		}
+		buffer = new StatsSubmissionBuffer(new TSDB(new Config(false)), p);
+		return buffer;
+	}
+	
+	/**
+	 * Validates that collected stats are written once, with the configured prefix and the collector's tags
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testPrefixedPointsAndTags() throws Exception {
+		newBuffer();
+		buffer.mark();
+		final StatsCollectorImpl collector = new StatsCollectorImpl(buffer);
+		collector.addExtraTag("host", "testhost");
+		collector.record("uid.cache-hit", 5, "kind=metrics");
+		collector.record("rpc received", 7);
+		Assert.assertTrue(buffer.offer("jvm.heap 1400000000 42 host=testhost"));
+		Assert.assertEquals("Buffered count", 3, buffer.getSize());
+		Assert.assertEquals("Submitted in flush", 3, buffer.flush());
+		Assert.assertEquals("Points written", 3, points.size());
+		
+		final Map<String, String> tags = new HashMap<String, String>();
+		tags.put("host", "testhost");
+		tags.put("kind", "metrics");
+		assertPoint(0, "tsd.uid.cache-hit", 5, tags);
+		tags.remove("kind");
+		assertPoint(1, "tsd.rpc_received", 7, tags);
+		assertPoint(2, "jvm.heap", 42, tags);
+		Assert.assertEquals("Submitted count", 3, buffer.getSubmittedCount());
+		Assert.assertEquals("Dropped count", 0, buffer.getDroppedCount());
+		Assert.assertEquals("In flight count", 0, buffer.getInFlightCount());
+		Assert.assertTrue("Metric UID assigned", assigned.contains("metric:tsd.uid.cache-hit"));
+		Assert.assertTrue("Tag key UID assigned", assigned.contains("tagk:kind"));
+		Assert.assertTrue("Tag value UID assigned", assigned.contains("tagv:testhost"));
+	}
+	
+	/**
+	 * Validates that datapoints offered to a full buffer are dropped and counted until it is flushed
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testDroppedWhenFull() throws Exception {
+		newBuffer(StatsSubmissionBuffer.STATS_BUFFER_PROP, "16");
+		Assert.assertEquals("Capacity", 16, buffer.getCapacity());
+		buffer.mark();
+		for(int i = 0; i < 20; i++) {
+			buffer.offer("full.test", i, null, null);
+		}
+		Assert.assertEquals("Buffered count", 16, buffer.getSize());
+		Assert.assertEquals("Offered count", 20, buffer.getOfferedCount());
+		Assert.assertEquals("Dropped count", 4, buffer.getDroppedCount());
+		Assert.assertEquals("Submitted in flush", 16, buffer.flush());
+		Assert.assertEquals("Points written", 16, points.size());
+		Assert.assertEquals("First kept value", 0L, points.get(0).value);
+		Assert.assertEquals("Last kept value", 15L, points.get(15).value);
+		Assert.assertTrue("Accepted after flush", buffer.offer("full.test", 99, null, null));
+		Assert.assertEquals("Dropped count after flush", 4, buffer.getDroppedCount());
+	}
+	
+	/**
+	 * Validates that datapoints for new series are dropped and counted once the series limit is reached
+	 * while datapoints for registered series are still accepted
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testDroppedAtSeriesLimit() throws Exception {
+		newBuffer(StatsSubmissionBuffer.STATS_MAX_SERIES_PROP, "2");
+		buffer.mark();
+		Assert.assertTrue(buffer.offer("series.a", 1, null, null));
+		Assert.assertTrue(buffer.offer("series.b", 2, null, null));
+		Assert.assertFalse("Third series accepted", buffer.offer("series.c", 3, null, null));
+		Assert.assertFalse("Retagged series accepted", buffer.offer("series.a", 4, null, "type=x"));
+		Assert.assertTrue("Registered series rejected", buffer.offer("series.a", 5, null, null));
+		Assert.assertEquals("Series count", 2, buffer.getSeriesCount());
+		Assert.assertEquals("Dropped count", 2, buffer.getDroppedCount());
+		buffer.flush();
+		Assert.assertEquals("Points written", 3, points.size());
+		for(RecordedPoint rp: points) {
+			Assert.assertFalse("Dropped series written", rp.metric.equals("tsd.series.c"));
+		}
+	}
+	
+	/**
+	 * Validates that a series whose UIDs failed to resolve is retried on the next collection cycle instead of being dropped forever
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testResolutionRetriedNextCycle() throws Exception {
+		failures.put("tsd.flaky", 1);
+		newBuffer();
+		buffer.mark();
+		Assert.assertFalse("Unresolved series accepted", buffer.offer("flaky", 1, null, null));
+		Assert.assertFalse("Unresolved series accepted", buffer.offer("flaky", 2, null, null));
+		Assert.assertEquals("Lookups in failed cycle", 1, lookups("tsd.flaky"));
+		Assert.assertEquals("Dropped count", 2, buffer.getDroppedCount());
+		buffer.mark();
+		Assert.assertTrue("Series not retried", buffer.offer("flaky", 3, null, null));
+		Assert.assertTrue(buffer.offer("flaky", 4, null, null));
+		buffer.flush();
+		Assert.assertEquals("Points written", 2, points.size());
+		assertPoint(0, "tsd.flaky", 3, new HashMap<String, String>());
+		Assert.assertEquals("Series count", 1, buffer.getSeriesCount());
+	}
+	
+	/**
+	 * Asserts the metric, value and tags of a written datapoint
+	 * @param index The index of the written datapoint
+	 * @param metric The expected metric name
+	 * @param value The expected value
+	 * @param tags The expected tags
+	 */
+	static void assertPoint(int index, String metric, long value, Map<String, String> tags) {
+		final RecordedPoint rp = points.get(index);
+		Assert.assertEquals("Metric #" + index, metric, rp.metric);
+		Assert.assertEquals("Value #" + index, value, rp.value);
+		Assert.assertEquals("Tags #" + index, tags, rp.tags);
+	}
+	
+	/**
+	 * Returns the number of UID lookups for the passed name
+	 * @param name The looked up name
+	 * @return the number of lookups
+	 */
+	static int lookups(String name) {
+		final Integer count = lookupCounts.get(name);
+		return count==null ? 0 : count;
+	}
+	
+	/**
+	 * <p>Title: RecordedPoint</p>
+	 * <p>Description: A datapoint written to the mocked TSDB</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.test.stats.StatsSubmissionBufferTestCase.RecordedPoint</code></p>
+	 */
+	public static class RecordedPoint {
+		/** The metric name */
+		final String metric;
+		/** The timestamp */
+		final long timestamp;
+		/** The value */
+		final long value;
+		/** A copy of the tags */
+		final Map<String, String> tags;
+		
+		public RecordedPoint(String metric, long timestamp, long value, Map<String, String> tags) {
+			this.metric = metric;
+			this.timestamp = timestamp;
+			this.value = value;
+			this.tags = new HashMap<String, String>(tags);
+		}
+	}
+	
+	/**
+	 * <p>Title: MockedTSDB</p>
+	 * <p>Description: TSDB method templates that never contact HBase: UIDs are assigned in memory and written datapoints are recorded</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.tsdb.plugins.test.stats.StatsSubmissionBufferTestCase.MockedTSDB</code></p>
+	 */
+	public static class MockedTSDB extends EmptyTSDB {
+		@Override
+		public byte[] getUID(UniqueIdType type, String name) {
+			final Integer count = lookupCounts.get(name);
+			lookupCounts.put(name, count==null ? 1 : count + 1);
+			final Integer remaining = failures.get(name);
+			if(remaining!=null && remaining > 0) {
+				failures.put(name, remaining - 1);
+				throw new IllegalStateException("Injected lookup failure for [" + name + "]");
+			}
+			if(!assigned.contains(type.name().toLowerCase() + ":" + name)) {
+				throw new NoSuchUniqueName(type.name().toLowerCase(), name);
+			}
+			return new byte[]{0, 0, 1};
+		}
+		
+		@Override
+		public byte[] assignUid(String type, String name) {
+			assigned.add(type + ":" + name);
+			return new byte[]{0, 0, 1};
+		}
+		
+		@Override
+		public Deferred<Object> addPoint(String metric, long timestamp, long value, Map<String, String> tags) {
+			points.add(new RecordedPoint(metric, timestamp, value, tags));
+			return Deferred.fromResult(null);
+		}
+	}
+}
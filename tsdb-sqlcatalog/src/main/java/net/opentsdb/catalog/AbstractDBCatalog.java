@@ -56,15 +56,20 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
+import net.opentsdb.catalog.cache.MetaChangeListener;
+import net.opentsdb.catalog.cache.SeriesListener;
 import net.opentsdb.catalog.cache.TSMetaCache;
+import net.opentsdb.catalog.cache.TagPairListener;
 import net.opentsdb.catalog.cache.UIDCache;
 import net.opentsdb.catalog.datasource.CatalogDataSource;
+import net.opentsdb.catalog.export.CatalogExporter;
 import net.opentsdb.catalog.h2.H2Support;
 import net.opentsdb.catalog.h2.json.JSONMapSupport;
 import net.opentsdb.catalog.sequence.ISequenceCache;
@@ -76,6 +81,7 @@ import net.opentsdb.meta.TSMeta;
 import net.opentsdb.meta.UIDMeta;
 import net.opentsdb.search.SearchQuery;
 import net.opentsdb.search.SearchQuery.SearchType;
+import net.opentsdb.stats.StatsCollector;
 import net.opentsdb.uid.UniqueId;
 import net.opentsdb.uid.UniqueId.UniqueIdType;
 import net.opentsdb.utils.JSON;
@@ -146,6 +152,8 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	
 	/** The meta metrics api service impl */
 	protected SQLCatalogMetricsMetaAPIImpl metricsMetaService = null;
+	/** The background exporter of the catalog tables to columnar files */
+	protected CatalogExporter catalogExporter = null;
 	
 	/** The SQLWorker to manage JDBC Ops */
 	protected SQLWorker sqlWorker = null;
@@ -373,13 +381,14 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	}
 	
 	/**
-	 * Reflectively sets the tags and metric on the passed TSMeta
+	 * Reflectively sets the tags and metric on the passed TSMeta, since TSMeta exposes no setters for them.
+	 * Public so that tools building TSMetas outside the catalog do not need their own reflective access.
 	 * @param tsMeta The TSMeta to update
 	 * @param tags The tags to set
 	 * @param metric The metric to update
 	 * @return The updated TSMeta
 	 */
-	protected static TSMeta setUIDs(TSMeta tsMeta, ArrayList<UIDMeta> tags, UIDMeta metric) {
+	public static TSMeta setUIDs(TSMeta tsMeta, ArrayList<UIDMeta> tags, UIDMeta metric) {
 		setTSMetaTags(tsMeta, tags);
 		setTSMetaMetric(tsMeta, metric);
 		return tsMeta;
@@ -532,7 +541,13 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 		JMXHelper.registerMBean(this, JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=TSDBCatalog")));
 		final AbstractDBCatalog finalMe = this;
 		metricsMetaService = new SQLCatalogMetricsMetaAPIImpl(sqlWorker, this, tsdb, pluginContext);
+		addTagPairListener(metricsMetaService.getTagPredicateCache());
+		addSeriesListener(metricsMetaService.getTagAdjacencyIndex());
+		addSeriesListener(metricsMetaService.getFQNBitmapIndex());
+		addSeriesListener(metricsMetaService.getResultCache());
+		addMetaChangeListener(metricsMetaService.getResultCache());
 		pluginContext.setResource("meta-api", metricsMetaService);
+		catalogExporter = new CatalogExporter(dataSource, extracted);
 		pluginContext.addResourceListener(
 				new IPluginContextResourceListener() {
 					@Override
@@ -568,6 +583,7 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 		pluginContext.setResource("tsMetaCache", tsMetaCache);
 		pluginContext.setResource("uidCaches", uidCaches);
 		log.info("Loaded TSMeta Cache with [{}] TSMetas", tsMetaCache.size());
+		existenceResolver = new BatchExistenceResolver(sqlWorker, tsMetaCache, uidCaches);
 		
 		// UIDManager.private static int metaSync(final TSDB tsdb) 
 		
@@ -672,6 +688,10 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 				metricsMetaService.shutdown();
 				metricsMetaService = null;
 			}
+			if(catalogExporter!=null) {
+				catalogExporter.shutdown();
+				catalogExporter = null;
+			}
 			cds.shutdown();
 			cds = null;
 			dataSource = null;
@@ -691,6 +711,153 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	
 	/** Keeps track of batched UIDs for the duration of processEvents. */
 	protected final Set<String> batchedUids = new HashSet<String>(1024);
+	/** Resolves the existence of the objects in each batch for the duration of processEvents */
+	protected BatchExistenceResolver existenceResolver = null;
+	/** Tag pairs (XUID, key name, value name) inserted during processEvents, published to tag pair listeners after commit */
+	protected final List<String[]> insertedTagPairs = new ArrayList<String[]>();
+	/** Tag key and value UIDs deleted during processEvents, published to tag pair listeners after commit */
+	protected final List<UIDMeta> deletedTagUIDs = new ArrayList<UIDMeta>();
+	/** Listeners notified of committed tag pair changes */
+	protected final Set<TagPairListener> tagPairListeners = new CopyOnWriteArraySet<TagPairListener>();
+	/** Time series inserted during processEvents, published to series listeners after commit */
+	protected final List<PendingSeries> insertedSeries = new ArrayList<PendingSeries>();
+	/** TSUIDs of time series deleted during processEvents, published to series listeners after commit */
+	protected final List<String> deletedSeries = new ArrayList<String>();
+	/** Listeners notified of committed time series changes */
+	protected final Set<SeriesListener> seriesListeners = new CopyOnWriteArraySet<SeriesListener>();
+	/** TSUIDs of TSMetas updated during processEvents, published to meta change listeners after commit */
+	protected final List<String> changedTSUIDs = new ArrayList<String>();
+	/** UIDMetas updated or deleted during processEvents, published to meta change listeners after commit */
+	protected final List<UIDMeta> changedUIDMetas = new ArrayList<UIDMeta>();
+	/** Listeners notified of committed TSMeta and UIDMeta changes */
+	protected final Set<MetaChangeListener> metaChangeListeners = new CopyOnWriteArraySet<MetaChangeListener>();
+	
+	/**
+	 * <p>Title: PendingSeries</p>
+	 * <p>Description: A time series inserted in the current batch, pending publication to series listeners</p> 
+	 */
+	protected static class PendingSeries {
+		/** The assigned FQNID */
+		final long fqnId;
+		/** The TSUID */
+		final String tsuid;
+		/** The metric UIDMeta */
+		final UIDMeta metric;
+		/** The tag UIDMetas in alternating key, value order */
+		final UIDMeta[] tags;
+		
+		PendingSeries(final long fqnId, final String tsuid, final UIDMeta metric, final UIDMeta[] tags) {
+			this.fqnId = fqnId;
+			this.tsuid = tsuid;
+			this.metric = metric;
+			this.tags = tags;
+		}
+	}
+	
+	/**
+	 * Registers a series listener
+	 * @param listener The listener to register
+	 */
+	public void addSeriesListener(SeriesListener listener) {
+		if(listener!=null) seriesListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a series listener
+	 * @param listener The listener to remove
+	 */
+	public void removeSeriesListener(SeriesListener listener) {
+		if(listener!=null) seriesListeners.remove(listener);
+	}
+	
+	/**
+	 * Publishes the time series changes committed by the last batch to the registered series listeners
+	 */
+	protected void fireSeriesEvents() {
+		if(seriesListeners.isEmpty()) return;
+		for(SeriesListener listener: seriesListeners) {
+			try {
+				for(String tsuid: deletedSeries) {
+					listener.onSeriesRemoved(tsuid);
+				}
+				for(PendingSeries ps: insertedSeries) {
+					listener.onSeriesAdded(ps.fqnId, ps.tsuid, ps.metric, ps.tags);
+				}
+			} catch (Exception ex) {
+				log.warn("Series listener [{}] failed", listener, ex);
+			}
+		}
+	}
+	
+	/**
+	 * Registers a meta change listener
+	 * @param listener The listener to register
+	 */
+	public void addMetaChangeListener(MetaChangeListener listener) {
+		if(listener!=null) metaChangeListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a meta change listener
+	 * @param listener The listener to remove
+	 */
+	public void removeMetaChangeListener(MetaChangeListener listener) {
+		if(listener!=null) metaChangeListeners.remove(listener);
+	}
+	
+	/**
+	 * Publishes the TSMeta and UIDMeta changes committed by the last batch to the registered meta change listeners
+	 */
+	protected void fireMetaChangeEvents() {
+		if(metaChangeListeners.isEmpty()) return;
+		for(MetaChangeListener listener: metaChangeListeners) {
+			try {
+				for(String tsuid: changedTSUIDs) {
+					listener.onTSMetaChanged(tsuid);
+				}
+				for(UIDMeta uidMeta: changedUIDMetas) {
+					listener.onUIDMetaChanged(uidMeta);
+				}
+			} catch (Exception ex) {
+				log.warn("Meta change listener [{}] failed", listener, ex);
+			}
+		}
+	}
+	
+	/**
+	 * Registers a tag pair listener
+	 * @param listener The listener to register
+	 */
+	public void addTagPairListener(TagPairListener listener) {
+		if(listener!=null) tagPairListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a tag pair listener
+	 * @param listener The listener to remove
+	 */
+	public void removeTagPairListener(TagPairListener listener) {
+		if(listener!=null) tagPairListeners.remove(listener);
+	}
+	
+	/**
+	 * Publishes the tag pair changes committed by the last batch to the registered tag pair listeners
+	 */
+	protected void fireTagPairEvents() {
+		if(tagPairListeners.isEmpty()) return;
+		for(TagPairListener listener: tagPairListeners) {
+			try {
+				for(UIDMeta uidMeta: deletedTagUIDs) {
+					listener.onTagPairsRemoved(uidMeta.getType(), uidMeta.getUID());
+				}
+				for(String[] pair: insertedTagPairs) {
+					listener.onTagPairAdded(pair[0], pair[1], pair[2]);
+				}
+			} catch (Exception ex) {
+				log.warn("Tag pair listener [{}] failed", listener, ex);
+			}
+		}
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -707,6 +874,7 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 		final boolean trace = log.isTraceEnabled();
 		try {			
 			try {
+				existenceResolver.resolve(conn, events);
 				for(TSDBSearchEvent event: events) {
 					if(BatchMileStone.class.isInstance(event)) {
 						log.info("==== Set Milestone ====");
@@ -803,6 +971,9 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 				annotationsPs.clearBatch();								
 			}
 			conn.commit();
+			fireTagPairEvents();
+			fireSeriesEvents();
+			fireMetaChangeEvents();
 			log.info(et.printAvg("Indexes", ops));
 			if(latch!=null) {
 				latch.countDown();
@@ -834,6 +1005,13 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 			if(uidMetaTagPairFQNPs!=null) try { uidMetaTagPairFQNPs.close(); uidMetaTagPairFQNPs = null;} catch (Exception x) {/* No Op */}
 			if(annotationsPs!=null) try { annotationsPs.close(); annotationsPs = null;} catch (Exception x) {/* No Op */}
 			batchedUids.clear();
+			existenceResolver.clear();
+			insertedTagPairs.clear();
+			deletedTagUIDs.clear();
+			insertedSeries.clear();
+			deletedSeries.clear();
+			changedTSUIDs.clear();
+			changedUIDMetas.clear();
 		}
 	}
 	
@@ -996,6 +1174,27 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBInterface#collectStats(net.opentsdb.stats.StatsCollector)
+	 */
+	@Override
+	public void collectStats(StatsCollector collector) {
+		for(Map.Entry<String, AtomicLong> op: opCounters.asMap().entrySet()) {
+			collector.addExtraTag("op", op.getKey());
+			try {
+				collector.record("catalog.ops", op.getValue().get());
+			} finally {
+				collector.clearExtraTag("op");
+			}
+		}
+		for(UIDCache uidCache: uidCaches.values()) {
+			uidCache.collectStats(collector);
+		}
+		if(tsMetaCache!=null) tsMetaCache.collectStats(collector);
+		if(metricsMetaService!=null) metricsMetaService.collectStats(collector);
+	}
+	
 	/**
 	 * Returns the count of operations represented by the passed key
 	 * @param key The op key
@@ -1016,8 +1215,21 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	 */
 	@Override
 	public void processUIDMeta(Connection conn, UIDMeta uidMeta) {
+		processUIDMeta(conn, uidMeta, true);
+	}
+	
+	/**
+	 * Inserts or updates a UIDMeta
+	 * @param conn The connection to process on
+	 * @param uidMeta The UIDMeta to process
+	 * @param reportChange true if an update should be published to the meta change listeners. UIDMetas carried by a 
+	 * new TSMeta are updated in place but not reported, since they are not edits and would otherwise evict every cached
+	 * result referencing them.
+	 */
+	protected void processUIDMeta(Connection conn, UIDMeta uidMeta, boolean reportChange) {
 		try {
 			if(!exists(conn, uidMeta)) {
+				existenceResolver.markUID(uidMeta.getType(), uidMeta.getUID());
 				switch(uidMeta.getType()) {
 					case METRIC:
 						uidMetaMetricIndexPs = sqlWorker.batch(conn, uidMetaMetricIndexPs, getUIDMetaMetricIndexSQL(), getInsertBinds(uidMeta));
@@ -1036,6 +1248,7 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 						break;
 				}				
 			} else {
+				if(reportChange) changedUIDMetas.add(uidMeta);
 				switch(uidMeta.getType()) {  
 					case METRIC:							
 						uidMetaMetricUpdatePs = sqlWorker.batch(conn, uidMetaMetricUpdatePs, getUIDMetaMetricUpdateSQL(), getUpdateBinds(uidMeta));
@@ -1261,7 +1474,9 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	 * @param tsMeta The changed TSMeta 
 	 */
 	protected void updateTSMeta(Connection conn, TSMeta tsMeta) {		
-		long fqnId = getFqnIdForTsUid(conn, tsMeta.getTSUID());
+		changedTSUIDs.add(tsMeta.getTSUID());
+		final Long probedFqnId = existenceResolver==null ? null : existenceResolver.fqnId(tsMeta.getTSUID());
+		long fqnId = probedFqnId!=null ? probedFqnId.longValue() : getFqnIdForTsUid(conn, tsMeta.getTSUID());
 //		int version = incrementVersion(tsMeta);
 		tsMetaFqnUpdatePs = sqlWorker.batch(conn, tsMetaFqnUpdatePs, TSUID_UPDATE_SQL, 
 				1,
@@ -1314,7 +1529,7 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	protected void preProcessUIDMeta(Connection conn, Collection<UIDMeta> uidMetas) {
 		for(UIDMeta uidMeta: uidMetas) {
 			if(!batchedUids.contains(uidMeta.toString())) {
-				processUIDMeta(conn, uidMeta);
+				processUIDMeta(conn, uidMeta, false);
 				batchedUids.add(uidMeta.toString());
 			}
 		}
@@ -1376,8 +1591,10 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 				JSONMapSupport.nokToString(tsMeta.getCustom())					
 		);
 		batchedtsMetaInserts++;
+		existenceResolver.markTSMeta(tsMeta.getTSUID());
 		LinkedList<UIDMeta> pairs = new LinkedList<UIDMeta>(tsMeta.getTags());
 		int pairCount = tsMeta.getTags().size()/2;
+		insertedSeries.add(new PendingSeries(fqnSeq, tsMeta.getTSUID(), tsMeta.getMetric(), pairs.subList(0, pairCount*2).toArray(new UIDMeta[pairCount*2])));
 		int leaf = pairCount-1;
 		for(short i = 0; i < pairCount; i++) {
 			String pairUID = pairs.removeFirst().getUID() + pairs.removeFirst().getUID();
@@ -1404,6 +1621,8 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 		if(tagPairStored(conn, tagPairUid)) return tagPairUid;
 		uidMetaTagPairPs = sqlWorker.batch(conn, uidMetaTagPairPs, INSERT_TAGPAIR_SQL, tagPairUid, tagPair[0].getUID(), tagPair[1].getUID(), tagPair[0].getName() + "=" + tagPair[1].getName());
 		batchUidPairs.add(tagPairUid);
+		existenceResolver.markTagPair(tagPairUid);
+		insertedTagPairs.add(new String[]{tagPairUid, tagPair[0].getName(), tagPair[1].getName()});
 		return null;
 	}
 	
@@ -1421,8 +1640,11 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	public void deleteUIDMeta(Connection conn, UIDMeta uidMeta) {
 		if(uidMeta.getType()==UniqueIdType.TAGK || uidMeta.getType()==UniqueIdType.TAGV) {
 			sqlWorker.executeUpdate(conn, String.format(TSD_DELETE_UID_PARENT, uidMeta.getType().name()), uidMeta.getUID());
+			deletedTagUIDs.add(uidMeta);
 		}
+		changedUIDMetas.add(uidMeta);
 		sqlWorker.executeUpdate(conn, String.format(TSD_DELETE_UID, uidMeta.getType().name()), uidMeta.getUID());
+		existenceResolver.markUIDDeleted(uidMeta.getType(), uidMeta.getUID());
 	}
 	
 	/**
@@ -1433,6 +1655,8 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	@Override
 	public void deleteTSMeta(Connection conn, String tsUid) {		
 		sqlWorker.executeUpdate(conn, TSD_DELETE_TS, tsUid);
+		deletedSeries.add(tsUid);
+		existenceResolver.markTSMetaDeleted(tsUid);
 	}
 	
 	/**
@@ -1510,6 +1734,12 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 			for(UIDCache c: uidCaches.values()) {
 				c.clear();
 			}
+			if(metricsMetaService!=null) {
+				metricsMetaService.getTagPredicateCache().clear();
+			}
+			for(SeriesListener listener: seriesListeners) {
+				listener.onPurge();
+			}
 		} catch (Exception ex) {
 			throw new RuntimeException("Failed to purge Store", ex);
 		} finally {			
@@ -1850,6 +2080,8 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	@Override
 	public boolean exists(Connection conn, TSMeta tsMeta) {
 		if(tsMeta==null) throw new IllegalArgumentException("The passed TSMeta was null");
+		final Boolean resolved = existenceResolver==null ? null : existenceResolver.tsMetaExists(tsMeta.getTSUID());
+		if(resolved!=null) return resolved.booleanValue();
 		return tsMetaCache.get(tsMeta.getTSUID(), conn)!=null;
 	}
 	
@@ -1870,6 +2102,8 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	@Override
 	public boolean exists(Connection conn, UIDMeta uidMeta) {
 		if(uidMeta==null) throw new IllegalArgumentException("The passed UIDMeta was null");
+		final Boolean resolved = existenceResolver==null ? null : existenceResolver.uidExists(uidMeta.getType(), uidMeta.getUID());
+		if(resolved!=null) return resolved.booleanValue();
 		return uidCaches.get(uidMeta.getType()).get(uidMeta.getUID(), conn)!=null;
 	}
 	
@@ -2076,6 +2310,8 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 	 * @return true if stored, false otherwise
 	 */
 	public boolean tagPairStored(Connection conn, String tagPairUid) {
+		final Boolean resolved = existenceResolver==null ? null : existenceResolver.tagPairExists(tagPairUid);
+		if(resolved!=null) return resolved.booleanValue();
 		return sqlWorker.sqlForBool(conn, UID_PAIR_EXISTS_SQL, tagPairUid);
 	}
 
@@ -2762,6 +2998,155 @@ public abstract class AbstractDBCatalog implements CatalogDBInterface, CatalogDB
 		return synker.getPendingSynchOps();
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getQueryPlans()
+	 */
+	@Override
+	public Map<String, String> getQueryPlans() {
+		if(metricsMetaService==null) return Collections.emptyMap();
+		return metricsMetaService.getQueryAdvisor().getPlans();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getFullScanQueries()
+	 */
+	@Override
+	public String[] getFullScanQueries() {
+		if(metricsMetaService==null) return new String[0];
+		return metricsMetaService.getQueryAdvisor().getFullScans();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getQueryAverageLatencies()
+	 */
+	@Override
+	public Map<String, Long> getQueryAverageLatencies() {
+		if(metricsMetaService==null) return Collections.emptyMap();
+		return metricsMetaService.getQueryAdvisor().getAverageLatencies();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getQueryMaxLatencies()
+	 */
+	@Override
+	public Map<String, Long> getQueryMaxLatencies() {
+		if(metricsMetaService==null) return Collections.emptyMap();
+		return metricsMetaService.getQueryAdvisor().getMaxLatencies();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getQueryExecutionCounts()
+	 */
+	@Override
+	public Map<String, Long> getQueryExecutionCounts() {
+		if(metricsMetaService==null) return Collections.emptyMap();
+		return metricsMetaService.getQueryAdvisor().getExecutionCounts();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#isQueryAdvisorEnabled()
+	 */
+	@Override
+	public boolean isQueryAdvisorEnabled() {
+		return metricsMetaService!=null && metricsMetaService.getQueryAdvisor().isEnabled();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#setQueryAdvisorEnabled(boolean)
+	 */
+	@Override
+	public void setQueryAdvisorEnabled(final boolean enabled) {
+		if(metricsMetaService!=null) metricsMetaService.getQueryAdvisor().setEnabled(enabled);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#resetQueryAdvisor()
+	 */
+	@Override
+	public void resetQueryAdvisor() {
+		if(metricsMetaService!=null) metricsMetaService.getQueryAdvisor().reset();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getOpenCursors()
+	 */
+	@Override
+	public int getOpenCursors() {
+		return metricsMetaService==null ? 0 : metricsMetaService.getCursorSessionManager().getOpenCursors();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getCursorHits()
+	 */
+	@Override
+	public long getCursorHits() {
+		return metricsMetaService==null ? 0 : metricsMetaService.getCursorSessionManager().getCursorHits();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getCursorMisses()
+	 */
+	@Override
+	public long getCursorMisses() {
+		return metricsMetaService==null ? 0 : metricsMetaService.getCursorSessionManager().getCursorMisses();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getCursorRejections()
+	 */
+	@Override
+	public long getCursorRejections() {
+		return metricsMetaService==null ? 0 : metricsMetaService.getCursorSessionManager().getCursorRejections();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getCursorExpirations()
+	 */
+	@Override
+	public long getCursorExpirations() {
+		return metricsMetaService==null ? 0 : metricsMetaService.getCursorSessionManager().getCursorExpirations();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getExistenceProbes()
+	 */
+	@Override
+	public long getExistenceProbes() {
+		return existenceResolver==null ? 0 : existenceResolver.getProbeCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getExistenceCacheHits()
+	 */
+	@Override
+	public long getExistenceCacheHits() {
+		return existenceResolver==null ? 0 : existenceResolver.getCacheHitCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.CatalogDBMXBean#getExistenceProbedKeys()
+	 */
+	@Override
+	public long getExistenceProbedKeys() {
+		return existenceResolver==null ? 0 : existenceResolver.getProbedKeyCount();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see net.opentsdb.catalog.CatalogDBInterface#clearSyncQueueFailure(net.opentsdb.meta.UIDMeta, net.opentsdb.catalog.TSDBTable)
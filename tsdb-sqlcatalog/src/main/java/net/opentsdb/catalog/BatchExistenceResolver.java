@@ -0,0 +1,359 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.opentsdb.catalog.SQLWorker.ResultSetHandler;
+import net.opentsdb.catalog.cache.TSMetaCache;
+import net.opentsdb.catalog.cache.UIDCache;
+import net.opentsdb.meta.TSMeta;
+import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+import org.helios.tsdb.plugins.event.TSDBSearchEvent;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+
+/**
+ * <p>Title: BatchExistenceResolver</p>
+ * <p>Description: Resolves the existence of every TSMeta, UIDMeta and tag pair referenced by a batch of catalog events 
+ * up front, so the catalog writer can decide between insert and update without a <b><code>SELECT COUNT(*)</code></b> 
+ * round trip per object. Keys already present in the in-process caches are known to exist. The remaining keys are 
+ * probed with <b><code>IN</code></b> list queries in chunks whose sizes are padded to powers of two, which keeps the 
+ * number of distinct statements (and generated binders) small.</p>
+ * <p>Not thread safe. Instances are owned by the single catalog writer.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.BatchExistenceResolver</code></p>
+ */
+
+public class BatchExistenceResolver {
+	/** A SQLWorker to execute the probes */
+	protected final SQLWorker sqlWorker;
+	/** The TSMeta cache */
+	protected final TSMetaCache tsMetaCache;
+	/** The UIDMeta caches */
+	protected final Map<UniqueIdType, UIDCache> uidCaches;
+	/** The maximum number of keys in one probe */
+	protected final int maxProbeSize;
+	
+	/** The resolved existence of TSMetas keyed by TSUID */
+	protected final Map<String, Boolean> tsMetas = new HashMap<String, Boolean>();
+	/** The FQNIDs of existing TSMetas keyed by TSUID, where probed */
+	protected final Map<String, Long> fqnIds = new HashMap<String, Long>();
+	/** The resolved existence of UIDMetas keyed by UID within each type */
+	protected final Map<UniqueIdType, Map<String, Boolean>> uids = new EnumMap<UniqueIdType, Map<String, Boolean>>(UniqueIdType.class);
+	/** The resolved existence of tag pairs keyed by tag pair UID */
+	protected final Map<String, Boolean> tagPairs = new HashMap<String, Boolean>();
+	
+	/** The number of probe queries executed */
+	protected final AtomicLong probes = new AtomicLong(0L);
+	/** The number of keys resolved from the caches */
+	protected final AtomicLong cacheHits = new AtomicLong(0L);
+	/** The number of keys resolved by probing */
+	protected final AtomicLong probedKeys = new AtomicLong(0L);
+	
+	/** The configuration property name for the maximum number of keys in one existence probe */
+	public static final String MAX_PROBE_SIZE_PROP = "helios.search.catalog.existence.probesize";
+	/** The default maximum number of keys in one existence probe */
+	public static final int DEFAULT_MAX_PROBE_SIZE = 256;
+	
+	/** The TSMeta existence probe template */
+	public static final String TSMETA_PROBE_SQL = "SELECT TSUID, FQNID FROM TSD_TSMETA WHERE TSUID IN (%s)";
+	/** The UIDMeta existence probe template */
+	public static final String UID_PROBE_SQL = "SELECT XUID FROM TSD_%s WHERE XUID IN (%s)";
+	/** The tag pair existence probe template */
+	public static final String TAGPAIR_PROBE_SQL = "SELECT XUID FROM TSD_TAGPAIR WHERE XUID IN (%s)";
+	
+	/**
+	 * Creates a new BatchExistenceResolver
+	 * @param sqlWorker A SQLWorker to execute the probes
+	 * @param tsMetaCache The TSMeta cache
+	 * @param uidCaches The UIDMeta caches
+	 */
+	public BatchExistenceResolver(final SQLWorker sqlWorker, final TSMetaCache tsMetaCache, final Map<UniqueIdType, UIDCache> uidCaches) {
+		this.sqlWorker = sqlWorker;
+		this.tsMetaCache = tsMetaCache;
+		this.uidCaches = uidCaches;
+		int size = ConfigurationHelper.getIntSystemThenEnvProperty(MAX_PROBE_SIZE_PROP, DEFAULT_MAX_PROBE_SIZE);
+		maxProbeSize = size < 1 ? 1 : Integer.highestOneBit(size);
+		for(UniqueIdType type: UniqueIdType.values()) {
+			uids.put(type, new HashMap<String, Boolean>());
+		}
+	}
+	
+	/**
+	 * Resolves the existence of all the objects referenced by the passed events
+	 * @param conn The connection to probe with
+	 * @param events The batch of events
+	 */
+	public void resolve(final Connection conn, final Set<TSDBSearchEvent> events) {
+		final Set<String> tsuids = new LinkedHashSet<String>();
+		final Map<UniqueIdType, Set<String>> uidKeys = new EnumMap<UniqueIdType, Set<String>>(UniqueIdType.class);
+		for(UniqueIdType type: UniqueIdType.values()) {
+			uidKeys.put(type, new LinkedHashSet<String>());
+		}
+		final Set<String> pairs = new LinkedHashSet<String>();
+		for(TSDBSearchEvent event: events) {
+			if(event.eventType==null) continue;
+			switch(event.eventType) {
+				case TSMETA_INDEX:
+					final TSMeta tsMeta = event.tsMeta;
+					if(tsMeta==null || tsMeta.getTSUID()==null) continue;
+					if(tsMetaCache.contains(tsMeta.getTSUID())) {
+						tsMetas.put(tsMeta.getTSUID(), Boolean.TRUE);
+						cacheHits.incrementAndGet();
+					} else {
+						tsuids.add(tsMeta.getTSUID());
+					}
+					if(tsMeta.getMetric()!=null) uidKeys.get(UniqueIdType.METRIC).add(tsMeta.getMetric().getUID());
+					final List<UIDMeta> tags = tsMeta.getTags();
+					if(tags!=null) {
+						for(int i = 0; i+1 < tags.size(); i+=2) {
+							uidKeys.get(UniqueIdType.TAGK).add(tags.get(i).getUID());
+							uidKeys.get(UniqueIdType.TAGV).add(tags.get(i+1).getUID());
+							pairs.add(tags.get(i).getUID() + tags.get(i+1).getUID());
+						}
+					}
+					break;
+				case UIDMETA_INDEX:
+					if(event.uidMeta!=null) uidKeys.get(event.uidMeta.getType()).add(event.uidMeta.getUID());
+					break;
+				default:
+					break;
+			}
+		}
+		probeTSMetas(conn, tsuids);
+		for(Map.Entry<UniqueIdType, Set<String>> e: uidKeys.entrySet()) {
+			final UIDCache cache = uidCaches.get(e.getKey());
+			final Map<String, Boolean> resolved = uids.get(e.getKey());
+			final Set<String> toProbe = new LinkedHashSet<String>();
+			for(String uid: e.getValue()) {
+				if(cache!=null && cache.contains(uid)) {
+					resolved.put(uid, Boolean.TRUE);
+					cacheHits.incrementAndGet();
+				} else {
+					toProbe.add(uid);
+				}
+			}
+			probe(conn, String.format(UID_PROBE_SQL, e.getKey().name(), "%s"), toProbe, resolved, null);
+		}
+		probe(conn, TAGPAIR_PROBE_SQL, pairs, tagPairs, null);
+	}
+	
+	/**
+	 * Returns the resolved existence of the passed TSMeta
+	 * @param tsuid The TSUID of the TSMeta
+	 * @return true if it exists, false if it does not, or null if it was not resolved
+	 */
+	public Boolean tsMetaExists(final String tsuid) {
+		return tsMetas.get(tsuid);
+	}
+	
+	/**
+	 * Returns the FQNID of the passed existing TSMeta if it was probed
+	 * @param tsuid The TSUID of the TSMeta
+	 * @return the FQNID or null if it was not probed
+	 */
+	public Long fqnId(final String tsuid) {
+		return fqnIds.get(tsuid);
+	}
+	
+	/**
+	 * Returns the resolved existence of the passed UIDMeta
+	 * @param type The UIDMeta type
+	 * @param uid The UID
+	 * @return true if it exists, false if it does not, or null if it was not resolved
+	 */
+	public Boolean uidExists(final UniqueIdType type, final String uid) {
+		return uids.get(type).get(uid);
+	}
+	
+	/**
+	 * Returns the resolved existence of the passed tag pair
+	 * @param tagPairUid The tag pair UID
+	 * @return true if it exists, false if it does not, or null if it was not resolved
+	 */
+	public Boolean tagPairExists(final String tagPairUid) {
+		return tagPairs.get(tagPairUid);
+	}
+	
+	/**
+	 * Marks the passed TSMeta as existing once its insert has been batched
+	 * @param tsuid The TSUID of the TSMeta
+	 */
+	public void markTSMeta(final String tsuid) {
+		tsMetas.put(tsuid, Boolean.TRUE);
+	}
+	
+	/**
+	 * Marks the passed UIDMeta as existing once its insert has been batched
+	 * @param type The UIDMeta type
+	 * @param uid The UID
+	 */
+	public void markUID(final UniqueIdType type, final String uid) {
+		uids.get(type).put(uid, Boolean.TRUE);
+	}
+	
+	/**
+	 * Marks the passed tag pair as existing once its insert has been batched
+	 * @param tagPairUid The tag pair UID
+	 */
+	public void markTagPair(final String tagPairUid) {
+		tagPairs.put(tagPairUid, Boolean.TRUE);
+	}
+	
+	/**
+	 * Marks the passed TSMeta as absent once it has been deleted, so a later index of the same TSMeta in the batch inserts it
+	 * @param tsuid The TSUID of the deleted TSMeta
+	 */
+	public void markTSMetaDeleted(final String tsuid) {
+		tsMetas.put(tsuid, Boolean.FALSE);
+		fqnIds.remove(tsuid);
+	}
+	
+	/**
+	 * Marks the passed UIDMeta as absent once it has been deleted, so a later index of the same UIDMeta in the batch inserts it.
+	 * Deleting a TAGK or TAGV also deletes the tag pairs it belongs to, so those are marked absent too.
+	 * @param type The UIDMeta type
+	 * @param uid The UID of the deleted UIDMeta
+	 */
+	public void markUIDDeleted(final UniqueIdType type, final String uid) {
+		uids.get(type).put(uid, Boolean.FALSE);
+		if(type==UniqueIdType.TAGK || type==UniqueIdType.TAGV) {
+			for(Map.Entry<String, Boolean> pair: tagPairs.entrySet()) {
+				final String key = pair.getKey();
+				if(type==UniqueIdType.TAGK ? key.startsWith(uid) : key.endsWith(uid)) {
+					pair.setValue(Boolean.FALSE);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Clears the resolved state at the end of a batch
+	 */
+	public void clear() {
+		tsMetas.clear();
+		fqnIds.clear();
+		for(Map<String, Boolean> m: uids.values()) {
+			m.clear();
+		}
+		tagPairs.clear();
+	}
+	
+	/**
+	 * Returns the number of probe queries executed
+	 * @return the number of probe queries
+	 */
+	public long getProbeCount() {
+		return probes.get();
+	}
+	
+	/**
+	 * Returns the number of keys resolved from the in-process caches
+	 * @return the number of cache resolved keys
+	 */
+	public long getCacheHitCount() {
+		return cacheHits.get();
+	}
+	
+	/**
+	 * Returns the number of keys resolved by probing
+	 * @return the number of probed keys
+	 */
+	public long getProbedKeyCount() {
+		return probedKeys.get();
+	}
+	
+	/**
+	 * Probes the passed TSUIDs, capturing the FQNIDs of those that exist
+	 * @param conn The connection to probe with
+	 * @param tsuids The TSUIDs to probe
+	 */
+	protected void probeTSMetas(final Connection conn, final Set<String> tsuids) {
+		probe(conn, TSMETA_PROBE_SQL, tsuids, tsMetas, fqnIds);
+	}
+	
+	/**
+	 * Probes the passed keys in chunks, recording each key as existing or not
+	 * @param conn The connection to probe with
+	 * @param template The probe SQL template with a single <b><code>%s</code></b> token for the bind markers
+	 * @param keys The keys to probe
+	 * @param resolved The map to record the existence of each key into
+	 * @param ids An optional map to record the long in the second column of each returned row into
+	 */
+	protected void probe(final Connection conn, final String template, final Set<String> keys, final Map<String, Boolean> resolved, final Map<String, Long> ids) {
+		if(keys.isEmpty()) return;
+		final List<String> chunk = new ArrayList<String>(Math.min(keys.size(), maxProbeSize));
+		for(String key: keys) {
+			resolved.put(key, Boolean.FALSE);
+			chunk.add(key);
+			if(chunk.size()==maxProbeSize) {
+				probeChunk(conn, template, chunk, resolved, ids);
+				chunk.clear();
+			}
+		}
+		if(!chunk.isEmpty()) {
+			probeChunk(conn, template, chunk, resolved, ids);
+		}
+	}
+	
+	private void probeChunk(final Connection conn, final String template, final List<String> chunk, final Map<String, Boolean> resolved, final Map<String, Long> ids) {
+		// Pad to the next power of two with the last key so there are only a few distinct statements
+		final int size = chunk.size()==1 ? 1 : Integer.highestOneBit(chunk.size()-1) << 1;
+		final Object[] binds = new Object[size];
+		final StringBuilder markers = new StringBuilder(size*3);
+		for(int i = 0; i < size; i++) {
+			if(i>0) markers.append(',');
+			markers.append('?');
+			binds[i] = chunk.get(Math.min(i, chunk.size()-1));
+		}
+		probes.incrementAndGet();
+		probedKeys.addAndGet(chunk.size());
+		sqlWorker.executeQuery(conn, String.format(template, markers), new ResultSetHandler() {
+			@Override
+			public boolean onRow(int rowId, ResultSet rset) {
+				try {
+					final String key = rset.getString(1);
+					resolved.put(key, Boolean.TRUE);
+					if(ids!=null) ids.put(key, rset.getLong(2));
+				} catch (Exception ex) {
+					throw new RuntimeException("Failed to read existence probe", ex);
+				}
+				return true;
+			}
+		}, binds);
+	}
+}
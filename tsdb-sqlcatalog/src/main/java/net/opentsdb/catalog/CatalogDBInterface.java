@@ -38,6 +38,7 @@ import net.opentsdb.meta.Annotation;
 import net.opentsdb.meta.TSMeta;
 import net.opentsdb.meta.UIDMeta;
 import net.opentsdb.search.SearchQuery;
+import net.opentsdb.stats.StatsCollector;
 import net.opentsdb.uid.UniqueId.UniqueIdType;
 
 import org.helios.tsdb.plugins.event.TSDBSearchEvent;
@@ -173,6 +174,12 @@ public interface CatalogDBInterface {
 	 * Terminates the database resources
 	 */
 	public void shutdown();
+	
+	/**
+	 * Records the catalog's operation counters and cache stats to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector);
 
 	// ===================================================================================================
 	// SQL Batch Control and Event Processing
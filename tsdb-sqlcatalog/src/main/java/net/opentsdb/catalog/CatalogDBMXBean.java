@@ -314,6 +314,101 @@ public interface CatalogDBMXBean extends LoggerManager {
 	 */
 	public String getTSMetasJSON(boolean byFqn, boolean deep, String ids);
 	
+	/**
+	 * Returns the captured EXPLAIN output for each executed meta API query template, keyed by template name
+	 * @return the captured query plans
+	 */
+	public Map<String, String> getQueryPlans();
+	
+	/**
+	 * Returns the meta API query templates whose plans contain full table scans, with the scanned tables
+	 * @return the full scan query templates
+	 */
+	public String[] getFullScanQueries();
+	
+	/**
+	 * Returns the average execution time in microseconds of each meta API query template
+	 * @return the average execution times keyed by template name
+	 */
+	public Map<String, Long> getQueryAverageLatencies();
+	
+	/**
+	 * Returns the maximum execution time in microseconds of each meta API query template
+	 * @return the maximum execution times keyed by template name
+	 */
+	public Map<String, Long> getQueryMaxLatencies();
+	
+	/**
+	 * Returns the number of executions of each meta API query template
+	 * @return the execution counts keyed by template name
+	 */
+	public Map<String, Long> getQueryExecutionCounts();
+	
+	/**
+	 * Indicates if the meta API query advisor is enabled
+	 * @return true if the query advisor is enabled, false otherwise
+	 */
+	public boolean isQueryAdvisorEnabled();
+	
+	/**
+	 * Enables or disables the meta API query advisor
+	 * @param enabled true to enable, false to disable
+	 */
+	public void setQueryAdvisorEnabled(boolean enabled);
+	
+	/**
+	 * Clears the query advisor's statistics and plans so they are re-captured, e.g. after adding indexes
+	 */
+	public void resetQueryAdvisor();
+	
+	/**
+	 * Returns the number of open meta API cursor sessions
+	 * @return the number of open cursor sessions
+	 */
+	public int getOpenCursors();
+	
+	/**
+	 * Returns the number of meta API pages served from an open cursor session
+	 * @return the number of cursor hits
+	 */
+	public long getCursorHits();
+	
+	/**
+	 * Returns the number of meta API page requests that presented a cursor id but had to re-execute the query
+	 * @return the number of cursor misses
+	 */
+	public long getCursorMisses();
+	
+	/**
+	 * Returns the number of meta API cursor sessions not opened because the cap was reached
+	 * @return the number of cursor rejections
+	 */
+	public long getCursorRejections();
+	
+	/**
+	 * Returns the number of meta API cursor sessions closed after idling past the TTL
+	 * @return the number of cursor expirations
+	 */
+	public long getCursorExpirations();
+	
+	/**
+	 * Returns the number of batched existence probe queries executed by the catalog writer
+	 * @return the number of existence probes
+	 */
+	public long getExistenceProbes();
+	
+	/**
+	 * Returns the number of batch object existence checks resolved from the in-process caches
+	 * @return the number of existence cache hits
+	 */
+	public long getExistenceCacheHits();
+	
+	/**
+	 * Returns the number of batch object existence checks resolved by probing the catalog
+	 * @return the number of probed keys
+	 */
+	public long getExistenceProbedKeys();
+	
 	
 	
 	
@@ -0,0 +1,349 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog;
+
+import java.sql.ResultSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.opentsdb.meta.api.QueryContext;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: CursorSessionManager</p>
+ * <p>Description: Holds open, forward-only JDBC cursors for paged (non-continuous) meta API queries so that 
+ * the next page requested with the same {@link QueryContext} is read from the open cursor rather than 
+ * re-planning and re-scanning the query. Sessions are keyed by the context's cursor id, expire after a 
+ * configurable idle TTL and are capped in number since each one pins a pooled connection.</p>
+ * <p>A held cursor selects a bounded window of pages rather than every remaining row up to the context's max size, 
+ * and is read one page per fetch. When the window is used up the session is dropped and the next page re-executes
+ * the query from the context's next index, opening a new window.</p>
+ * <p>A session is checked out for the duration of a page and parked again afterwards, so an open cursor 
+ * is never read concurrently or closed by the reaper while in use.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.CursorSessionManager</code></p>
+ */
+
+public class CursorSessionManager implements ThreadFactory {
+	/** Instance logger */
+	protected Logger log = LoggerFactory.getLogger(getClass());
+	/** The parked cursor sessions keyed by cursor id */
+	protected final Map<String, CursorSession<?>> sessions = new ConcurrentHashMap<String, CursorSession<?>>();
+	/** The number of open sessions, including checked out sessions */
+	protected final AtomicInteger openSessions = new AtomicInteger(0);
+	/** The idle TTL of a parked session in ms. */
+	protected final long ttl;
+	/** The maximum number of open sessions */
+	protected final int maxSessions;
+	/** The number of pages selected by a held cursor */
+	protected final int windowPages;
+	/** The reaper scheduler */
+	protected final ScheduledExecutorService reaper;
+	/** Serial number factory for reaper thread names */
+	protected final AtomicInteger serial = new AtomicInteger(0);
+	
+	/** The number of pages served from an open cursor */
+	protected final AtomicLong hits = new AtomicLong(0L);
+	/** The number of resumes that found no usable session */
+	protected final AtomicLong misses = new AtomicLong(0L);
+	/** The number of sessions not opened because the cap was reached */
+	protected final AtomicLong rejections = new AtomicLong(0L);
+	/** The number of sessions closed by the reaper */
+	protected final AtomicLong expirations = new AtomicLong(0L);
+	
+	/** The configuration property name for the idle TTL of a cursor session in ms. */
+	public static final String CURSOR_TTL_PROP = "helios.search.catalog.cursor.ttl";
+	/** The default idle TTL of a cursor session in ms. */
+	public static final long DEFAULT_CURSOR_TTL = 60000L;
+	/** The configuration property name for the maximum number of concurrently open cursor sessions. Zero disables cursor sessions. */
+	public static final String MAX_CURSORS_PROP = "helios.search.catalog.cursor.max";
+	/** The default maximum number of concurrently open cursor sessions, a small share of the 30 connections in the default pool */
+	public static final int DEFAULT_MAX_CURSORS = 4;
+	/** The configuration property name for the number of pages selected by a held cursor */
+	public static final String CURSOR_PAGES_PROP = "helios.search.catalog.cursor.pages";
+	/** The default number of pages selected by a held cursor */
+	public static final int DEFAULT_CURSOR_PAGES = 8;
+	
+	/**
+	 * Creates a new CursorSessionManager
+	 */
+	public CursorSessionManager() {
+		ttl = ConfigurationHelper.getLongSystemThenEnvProperty(CURSOR_TTL_PROP, DEFAULT_CURSOR_TTL);
+		maxSessions = ConfigurationHelper.getIntSystemThenEnvProperty(MAX_CURSORS_PROP, DEFAULT_MAX_CURSORS);
+		windowPages = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(CURSOR_PAGES_PROP, DEFAULT_CURSOR_PAGES));
+		if(maxSessions > 0) {
+			final long period = Math.max(1000L, ttl/4);
+			reaper = Executors.newSingleThreadScheduledExecutor(this);
+			reaper.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					reap();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			reaper = null;
+		}
+	}
+	
+	/**
+	 * Indicates if a new cursor session can be opened
+	 * @return true if a session can be opened, false if disabled or at the cap
+	 */
+	public boolean hasCapacity() {
+		return openSessions.get() < maxSessions;
+	}
+	
+	/**
+	 * Returns the row limit for a query whose cursor will be held: the lesser of the window of pages and the rows remaining
+	 * to the context's max size, plus one look-ahead row
+	 * @param queryContext The query context about to execute the query
+	 * @return the row limit
+	 */
+	public int windowLimit(final QueryContext queryContext) {
+		final long window = (long)queryContext.getPageSize() * windowPages;
+		return (int)Math.min(window, queryContext.getMaxSize() - queryContext.getCummulative()) + 1;
+	}
+	
+	/**
+	 * Opens a new session for a cursor which has just served its first page, assigning the cursor id to the passed context
+	 * @param signature The query signature, which must be presented again to resume the session
+	 * @param rset The open result set, closed when the session is closed
+	 * @param iter The iterator over the result set
+	 * @param queryContext The query context the first page was served to
+	 * @param windowEnd The context's cumulative count at which the rows selected by the cursor run out, excluding the look-ahead row
+	 * @return true if the session was opened, false if the cap was reached in which case the caller still owns the result set
+	 */
+	public <T> boolean open(final String signature, final ResultSet rset, final IndexProvidingIterator<T> iter, final QueryContext queryContext, final int windowEnd) {
+		if(queryContext.getCummulative() + queryContext.getPageSize() > windowEnd) return false;
+		if(openSessions.incrementAndGet() > maxSessions) {
+			openSessions.decrementAndGet();
+			rejections.incrementAndGet();
+			return false;
+		}
+		final CursorSession<T> session = new CursorSession<T>(UUID.randomUUID().toString(), signature, rset, iter, windowEnd);
+		queryContext.setCursorId(session.id);
+		park(session, queryContext);
+		return true;
+	}
+	
+	/**
+	 * Checks out the session for the passed context's cursor id if it exists, matches the passed signature, is 
+	 * positioned at the context's next index and has a full page left in its window. Sessions that do not qualify are closed.
+	 * @param signature The query signature
+	 * @param queryContext The query context
+	 * @return the session, or null if there is no usable session in which case the caller should re-execute the query
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CursorSession<T> checkout(final String signature, final QueryContext queryContext) {
+		final String id = queryContext.getCursorId();
+		if(id==null) return null;
+		queryContext.setCursorId(null);
+		final CursorSession<?> session = sessions.remove(id);
+		if(session==null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if(!session.signature.equals(signature) || !String.valueOf(session.nextIndex).equals(String.valueOf(queryContext.getNextIndex()))
+				|| queryContext.getCummulative() + queryContext.getPageSize() > session.windowEnd) {
+			misses.incrementAndGet();
+			close(session);
+			return null;
+		}
+		hits.incrementAndGet();
+		return (CursorSession<T>)session;
+	}
+	
+	/**
+	 * Returns a checked out session after serving a page. If the context is exhausted the session is closed, 
+	 * otherwise it is parked and the cursor id is assigned to the context.
+	 * @param session The session
+	 * @param queryContext The query context the page was served to
+	 */
+	public void park(final CursorSession<?> session, final QueryContext queryContext) {
+		if(queryContext.isExhausted() || queryContext.getNextIndex()==null || queryContext.getCummulative() >= queryContext.getMaxSize()) {
+			queryContext.setCursorId(null);
+			close(session);
+			return;
+		}
+		session.nextIndex = queryContext.getNextIndex();
+		session.lastAccess = System.currentTimeMillis();
+		queryContext.setCursorId(session.id);
+		sessions.put(session.id, session);
+	}
+	
+	/**
+	 * Closes the passed session, releasing its cursor and connection
+	 * @param session The session to close
+	 */
+	public void close(final CursorSession<?> session) {
+		if(session.closed) return;
+		session.closed = true;
+		openSessions.decrementAndGet();
+		try { session.rset.close(); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * Closes sessions that have been idle longer than the TTL
+	 */
+	protected void reap() {
+		final long cutoff = System.currentTimeMillis() - ttl;
+		for(Iterator<CursorSession<?>> iter = sessions.values().iterator(); iter.hasNext();) {
+			final CursorSession<?> session = iter.next();
+			if(session.lastAccess < cutoff && sessions.remove(session.id)!=null) {
+				close(session);
+				expirations.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Closes all sessions and stops the reaper
+	 */
+	public void shutdown() {
+		if(reaper!=null) reaper.shutdownNow();
+		for(String id: sessions.keySet()) {
+			final CursorSession<?> session = sessions.remove(id);
+			if(session!=null) close(session);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(final Runnable r) {
+		final Thread t = new Thread(r, getClass().getSimpleName() + "ReaperThread#" + serial.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+	
+	/**
+	 * Returns the number of open cursor sessions
+	 * @return the number of open cursor sessions
+	 */
+	public int getOpenCursors() {
+		return openSessions.get();
+	}
+	
+	/**
+	 * Returns the number of pages selected by a held cursor
+	 * @return the number of pages in a cursor window
+	 */
+	public int getWindowPages() {
+		return windowPages;
+	}
+	
+	/**
+	 * Returns the maximum number of open cursor sessions
+	 * @return the maximum number of open cursor sessions
+	 */
+	public int getMaxCursors() {
+		return maxSessions;
+	}
+	
+	/**
+	 * Returns the number of pages served from an open cursor
+	 * @return the number of cursor hits
+	 */
+	public long getCursorHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of resumes that found no usable session
+	 * @return the number of cursor misses
+	 */
+	public long getCursorMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Returns the number of sessions not opened because the cap was reached
+	 * @return the number of rejections
+	 */
+	public long getCursorRejections() {
+		return rejections.get();
+	}
+	
+	/**
+	 * Returns the number of sessions closed by the reaper
+	 * @return the number of expirations
+	 */
+	public long getCursorExpirations() {
+		return expirations.get();
+	}
+	
+	/**
+	 * <p>Title: CursorSession</p>
+	 * <p>Description: An open cursor and the iterator reading it</p> 
+	 * @param <T> The type of the object being iterated
+	 */
+	public static class CursorSession<T> {
+		/** The cursor id */
+		final String id;
+		/** The query signature */
+		final String signature;
+		/** The open result set */
+		final ResultSet rset;
+		/** The iterator over the result set */
+		final IndexProvidingIterator<T> iter;
+		/** The context's cumulative count at which the rows selected by the cursor run out */
+		final int windowEnd;
+		/** The next index the cursor is positioned at */
+		volatile Object nextIndex = null;
+		/** The last access timestamp */
+		volatile long lastAccess = System.currentTimeMillis();
+		/** Indicates if the session is closed */
+		volatile boolean closed = false;
+		
+		CursorSession(final String id, final String signature, final ResultSet rset, final IndexProvidingIterator<T> iter, final int windowEnd) {
+			this.id = id;
+			this.windowEnd = windowEnd;
+			this.signature = signature;
+			this.rset = rset;
+			this.iter = iter;
+		}
+		
+		/**
+		 * Returns the iterator over the open cursor
+		 * @return the iterator
+		 */
+		public IndexProvidingIterator<T> getIterator() {
+			return iter;
+		}
+	}
+}
@@ -136,6 +136,15 @@ public class H2DBCatalog extends AbstractDBCatalog {
     /** The key of the user defined var to flag a connection as the sync queue processor */
     public static final String SYNC_CONN_FLAG = "syncprocessor";
     
+	/**
+	 * Creates a new H2DBCatalog, using <b><code>MERGE ... KEY</code></b> upserts for UIDMetas and tag pairs
+	 * so an insert racing a concurrent writer updates the row rather than failing the batch
+	 */
+	public H2DBCatalog() {
+		UID_INDEX_SQL_TEMPLATE = "MERGE INTO %s (XUID,VERSION, NAME,CREATED,LAST_UPDATE,DESCRIPTION,DISPLAY_NAME,NOTES,CUSTOM) KEY(XUID) VALUES(?,?,?,?,?,?,?,?,?)";
+		INSERT_TAGPAIR_SQL = "MERGE INTO TSD_TAGPAIR (XUID, TAGK, TAGV, NAME) KEY(XUID) VALUES (?,?,?,?)";
+	}
+    
 	
 
     
@@ -3,6 +3,8 @@
  */
 package net.opentsdb.catalog;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -89,7 +91,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			getMetricNamesWithTagsJSON(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				getMap(request, "tags")				
 			);
 		} else {
@@ -113,7 +115,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			getMetricNamesJSON(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				getStringArray(request, "keys")				
 			);
 		} else {
@@ -159,7 +161,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			getTagKeysJSON(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				request.getRequest().get("m").textValue(),
 				getStringArray(request, "keys")	
 			);
@@ -208,7 +210,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			getTagValuesJSON(
 				request, 
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				request.getRequest().get("m").textValue(),
 				getMap(request, "tags"),
 				request.getRequest().get("k").textValue()
@@ -254,7 +256,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			evaluateJSON(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				request.getRequest().get("x").textValue()					
 			);			
 		} else {
@@ -268,7 +270,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			overlap(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class),
+				queryContext(request),
 				request.getRequest().get("x").textValue(),
 				request.getRequest().get("y").textValue()
 			);
@@ -280,6 +282,23 @@ public class JSONMetricsAPIService {
 	
 	
 	
+	/**
+	 * Reads the query context from the passed request and assigns it the id of the requesting client
+	 * @param request The JSON request
+	 * @return the query context
+	 */
+	protected QueryContext queryContext(final JSONRequest request) {
+		final QueryContext q = JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class);
+		final SocketAddress remote = request.channel==null ? null : request.channel.getRemoteAddress();
+		if(remote instanceof InetSocketAddress) {
+			final InetSocketAddress isa = (InetSocketAddress)remote;
+			q.setClientId(isa.getAddress()!=null ? isa.getAddress().getHostAddress() : isa.getHostName());
+		} else if(remote!=null) {
+			q.setClientId(remote.toString());
+		}
+		return q;
+	}
+	
 	/**
 	 * Attaches the consume and error handlers to the passed stream
 	 * @param stream The stream to attach handlers to
@@ -433,7 +452,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			evaluateD3JSON(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class),
+				queryContext(request),
 				request.getRequest().get("x").textValue()
 			);
 		} else {
@@ -475,7 +494,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			getTSMetasJSON(
 				request, 
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				request.getRequest().get("m").textValue(),
 				getMap(request, "tags")
 			);
@@ -521,7 +540,7 @@ public class JSONMetricsAPIService {
 		if(q==null) {
 			findJSON(
 				request,
-				JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+				queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 				UniqueIdType.valueOf(request.getRequest().get("type").textValue().trim().toUpperCase()),
 				request.getRequest().get("name").textValue()
 			);
@@ -541,7 +560,7 @@ public class JSONMetricsAPIService {
 //		if(q==null) {
 //			jsonGetAnnotations(
 //					request,
-//					JSON.parseToObject(request.getRequest().get("q").toString(), QueryContext.class).addCtx(ctxName, System.currentTimeMillis()),
+//					queryContext(request).addCtx(ctxName, System.currentTimeMillis()),
 //					request.getRequest().has("x") ? request.getRequest().get("x").asText() : null,
 //							getLongArray(request, "r")
 //					);
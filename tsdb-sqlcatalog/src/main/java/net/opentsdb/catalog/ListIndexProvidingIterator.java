@@ -0,0 +1,112 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Title: ListIndexProvidingIterator</p>
+ * <p>Description: An {@link IndexProvidingIterator} over an in-memory list of results, 
+ * used when a query is served from an in-memory index rather than a result set</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.ListIndexProvidingIterator</code></p>
+ * @param <T> The type of the object being iterated
+ */
+
+public abstract class ListIndexProvidingIterator<T> implements IndexProvidingIterator<T> {
+	/** The list being iterated */
+	private final List<T> items;
+	/** The position of the next item */
+	private int position = 0;
+	/** The current "nexted" item */
+	private T currentItem = null;
+	
+	/**
+	 * Creates a new ListIndexProvidingIterator
+	 * @param items The list to iterate
+	 */
+	public ListIndexProvidingIterator(final List<T> items) {
+		this.items = items;
+	}
+	
+	/**
+	 * Returns the index of the passed item
+	 * @param t The item
+	 * @return the index of the item
+	 */
+	protected abstract Object getIndex(T t);
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+		return position < items.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public T next() {
+		if(position >= items.size()) throw new NoSuchElementException();
+		currentItem = items.get(position++);
+		return currentItem;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Iterator#remove()
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("remove() not supported in this iterator");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.IndexProvidingIterator#getIndex()
+	 */
+	@Override
+	public Object getIndex() throws NoSuchElementException {
+		if(currentItem==null) throw new NoSuchElementException();
+		return getIndex(currentItem);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.IndexProvidingIterator#pushBack()
+	 */
+	@Override
+	public void pushBack() {
+		if(position==0) throw new RuntimeException("Iterator was on first item");
+		position--;
+		currentItem = null;
+	}
+}
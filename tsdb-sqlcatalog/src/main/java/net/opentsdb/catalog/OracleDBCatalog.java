@@ -45,6 +45,21 @@ import net.opentsdb.search.SearchQuery;
 public class OracleDBCatalog extends AbstractDBCatalog {
 
 
+	/**
+	 * Creates a new OracleDBCatalog, using <b><code>MERGE</code></b> upserts for UIDMetas and tag pairs
+	 * so an insert racing a concurrent writer updates (or skips) the row rather than failing the batch
+	 */
+	public OracleDBCatalog() {
+		UID_INDEX_SQL_TEMPLATE = "MERGE INTO %s T USING (SELECT ? XUID, ? VERSION, ? NAME, ? CREATED, ? LAST_UPDATE, ? DESCRIPTION, ? DISPLAY_NAME, ? NOTES, ? CUSTOM FROM DUAL) S " + 
+				"ON (T.XUID = S.XUID) " + 
+				"WHEN MATCHED THEN UPDATE SET T.VERSION = S.VERSION, T.NAME = S.NAME, T.DESCRIPTION = S.DESCRIPTION, T.DISPLAY_NAME = S.DISPLAY_NAME, T.NOTES = S.NOTES, T.CUSTOM = S.CUSTOM " + 
+				"WHEN NOT MATCHED THEN INSERT (XUID,VERSION, NAME,CREATED,LAST_UPDATE,DESCRIPTION,DISPLAY_NAME,NOTES,CUSTOM) " + 
+				"VALUES (S.XUID, S.VERSION, S.NAME, S.CREATED, S.LAST_UPDATE, S.DESCRIPTION, S.DISPLAY_NAME, S.NOTES, S.CUSTOM)";
+		INSERT_TAGPAIR_SQL = "MERGE INTO TSD_TAGPAIR T USING (SELECT ? XUID, ? TAGK, ? TAGV, ? NAME FROM DUAL) S " + 
+				"ON (T.XUID = S.XUID) " + 
+				"WHEN NOT MATCHED THEN INSERT (XUID, TAGK, TAGV, NAME) VALUES (S.XUID, S.TAGK, S.TAGV, S.NAME)";
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see net.opentsdb.catalog.AbstractDBCatalog#doInitialize()
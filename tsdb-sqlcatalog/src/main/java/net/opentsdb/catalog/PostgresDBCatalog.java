@@ -49,6 +49,17 @@ import net.opentsdb.search.SearchQuery;
 public class PostgresDBCatalog extends AbstractDBCatalog {
 
 
+	/**
+	 * Creates a new PostgresDBCatalog, using <b><code>INSERT ... ON CONFLICT</code></b> upserts (9.5+) for UIDMetas and tag pairs
+	 * so an insert racing a concurrent writer updates (or skips) the row rather than failing the batch
+	 */
+	public PostgresDBCatalog() {
+		UID_INDEX_SQL_TEMPLATE = "INSERT INTO %s (XUID,VERSION, NAME,CREATED,LAST_UPDATE,DESCRIPTION,DISPLAY_NAME,NOTES,CUSTOM) VALUES(?,?,?,?,?,?,?,?,?) " + 
+				"ON CONFLICT (XUID) DO UPDATE SET VERSION = EXCLUDED.VERSION, NAME = EXCLUDED.NAME, DESCRIPTION = EXCLUDED.DESCRIPTION, " + 
+				"DISPLAY_NAME = EXCLUDED.DISPLAY_NAME, NOTES = EXCLUDED.NOTES, CUSTOM = EXCLUDED.CUSTOM";
+		INSERT_TAGPAIR_SQL = "INSERT INTO TSD_TAGPAIR (XUID, TAGK, TAGV, NAME) VALUES (?,?,?,?) ON CONFLICT (XUID) DO NOTHING";
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see net.opentsdb.catalog.AbstractDBCatalog#doInitialize()
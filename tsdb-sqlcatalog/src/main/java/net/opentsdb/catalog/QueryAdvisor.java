@@ -0,0 +1,391 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.opentsdb.catalog.SQLWorker.ResultSetHandler;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: QueryAdvisor</p>
+ * <p>Description: Records per-template latency for the SQL generated by the meta API, captures the database's 
+ * EXPLAIN output the first time each template is executed and flags templates whose plans contain full table scans.
+ * Plans are captured on a single low priority background thread so the query that triggers the EXPLAIN does not wait on it,
+ * or hold a second pooled connection while it runs. The collected advice is exposed through {@link CatalogDBMXBean}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.QueryAdvisor</code></p>
+ */
+
+public class QueryAdvisor implements ThreadFactory {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The SQLWorker used to execute EXPLAINs */
+	protected final SQLWorker sqlWorker;
+	/** The statistics for each template keyed by the template name */
+	protected final Map<String, TemplateStats> templates = new ConcurrentHashMap<String, TemplateStats>();
+	/** Indicates if the advisor is enabled */
+	protected final AtomicBoolean enabled = new AtomicBoolean(true);
+	/** Indicates if plans should be captured */
+	protected final boolean explain;
+	/** The dialect of the catalog database, determined lazily */
+	protected volatile Dialect dialect = null;
+	/** The executor capturing plans, or null if plans are not captured */
+	protected final ThreadPoolExecutor explainExecutor;
+	/** Serial number factory for explain thread names */
+	protected final AtomicInteger serial = new AtomicInteger(0);
+	
+	/** The maximum number of templates waiting to be explained. Templates rejected when full are explained on a later execution. */
+	public static final int EXPLAIN_QUEUE_SIZE = 64;
+	
+	/** The configuration property name for enabling the query advisor */
+	public static final String ADVISOR_ENABLED_PROP = "helios.search.catalog.advisor.enabled";
+	/** The default query advisor enablement */
+	public static final boolean DEFAULT_ADVISOR_ENABLED = true;
+	/** The configuration property name for enabling query plan capture */
+	public static final String ADVISOR_EXPLAIN_PROP = "helios.search.catalog.advisor.explain";
+	/** The default query plan capture enablement */
+	public static final boolean DEFAULT_ADVISOR_EXPLAIN = true;
+	
+	/**
+	 * <p>Title: Dialect</p>
+	 * <p>Description: Enumerates the supported catalog DB dialects and how to EXPLAIN and find full scans for each</p> 
+	 */
+	public static enum Dialect {
+		/** The H2 dialect */
+		H2("jdbc:h2:", "EXPLAIN %s", null, "([\\w\\.]+)\\.tableScan"),
+		/** The Postgres dialect */
+		POSTGRES("jdbc:postgresql:", "EXPLAIN %s", null, "Seq Scan on (\\w+)"),
+		/** The Oracle dialect. Binds are not supported by EXPLAIN PLAN so the literal SQL is explained */
+		ORACLE("jdbc:oracle:", "EXPLAIN PLAN SET STATEMENT_ID = 'TSDBADV' FOR %s", "SELECT PLAN_TABLE_OUTPUT FROM TABLE(DBMS_XPLAN.DISPLAY(NULL, 'TSDBADV', 'BASIC'))", "TABLE ACCESS (?:STORAGE )?FULL\\s*\\|\\s*(\\w+)"),
+		/** The Phoenix dialect */
+		PHOENIX("jdbc:phoenix:", "EXPLAIN %s", null, "FULL SCAN OVER (\\w+)"),
+		/** Unrecognized dialects, which are not explained */
+		UNKNOWN("", null, null, null);
+		
+		private Dialect(final String urlPrefix, final String explainTemplate, final String planQuery, final String fullScanPattern) {
+			this.urlPrefix = urlPrefix;
+			this.explainTemplate = explainTemplate;
+			this.planQuery = planQuery;
+			this.fullScanPattern = fullScanPattern==null ? null : Pattern.compile(fullScanPattern, Pattern.CASE_INSENSITIVE);
+		}
+		
+		/** The JDBC URL prefix for this dialect */
+		public final String urlPrefix;
+		/** The EXPLAIN statement template */
+		public final String explainTemplate;
+		/** The query to retrieve the plan if the EXPLAIN statement does not return it */
+		public final String planQuery;
+		/** The pattern to locate full scanned tables in the plan */
+		public final Pattern fullScanPattern;
+		
+		/**
+		 * Determines the dialect for the passed JDBC URL
+		 * @param url The JDBC URL
+		 * @return the dialect
+		 */
+		public static Dialect forUrl(final String url) {
+			if(url!=null) {
+				for(Dialect d: values()) {
+					if(d!=UNKNOWN && url.startsWith(d.urlPrefix)) return d;
+				}
+			}
+			return UNKNOWN;
+		}
+	}
+	
+	/**
+	 * Creates a new QueryAdvisor
+	 * @param sqlWorker The SQLWorker used to execute EXPLAINs
+	 */
+	public QueryAdvisor(final SQLWorker sqlWorker) {
+		this.sqlWorker = sqlWorker;
+		enabled.set(ConfigurationHelper.getBooleanSystemThenEnvProperty(ADVISOR_ENABLED_PROP, DEFAULT_ADVISOR_ENABLED));
+		explain = ConfigurationHelper.getBooleanSystemThenEnvProperty(ADVISOR_EXPLAIN_PROP, DEFAULT_ADVISOR_EXPLAIN);
+		explainExecutor = explain ? new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(EXPLAIN_QUEUE_SIZE), this) : null;
+	}
+	
+	/**
+	 * Stops the plan capture thread, abandoning any pending EXPLAINs
+	 */
+	public void shutdown() {
+		if(explainExecutor!=null) explainExecutor.shutdownNow();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(final Runnable r) {
+		final Thread t = new Thread(r, getClass().getSimpleName() + "ExplainThread#" + serial.incrementAndGet());
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	}
+	
+	/**
+	 * Records an execution of a meta API query. The first execution of each template is queued to be explained in the background.
+	 * @param template The name of the template the SQL was generated from
+	 * @param sql The executed SQL
+	 * @param binds The bind values
+	 * @param elapsedNanos The elapsed execution time in nanos
+	 */
+	public void record(final String template, final String sql, final List<Object> binds, final long elapsedNanos) {
+		if(!enabled.get()) return;
+		TemplateStats stats = templates.get(template);
+		if(stats==null) {
+			synchronized(templates) {
+				stats = templates.get(template);
+				if(stats==null) {
+					stats = new TemplateStats();
+					templates.put(template, stats);
+				}
+			}
+		}
+		stats.record(elapsedNanos);
+		if(explain && stats.explained.compareAndSet(false, true)) {
+			final TemplateStats _stats = stats;
+			final List<Object> _binds = new ArrayList<Object>(binds);
+			try {
+				explainExecutor.execute(new Runnable() {
+					public void run() {
+						explain(template, _stats, sql, _binds);
+					}
+				});
+			} catch (RejectedExecutionException rex) {
+				// Queue is full or the advisor is shut down. Try again on a later execution.
+				stats.explained.set(false);
+			}
+		}
+	}
+	
+	/**
+	 * Captures the plan for the passed SQL
+	 * @param template The template name
+	 * @param stats The template stats to update
+	 * @param sql The SQL to explain
+	 * @param binds The bind values
+	 */
+	protected void explain(final String template, final TemplateStats stats, final String sql, final List<Object> binds) {
+		Connection conn = null;
+		try {
+			conn = sqlWorker.dataSource.getConnection();
+			if(dialect==null) {
+				dialect = Dialect.forUrl(conn.getMetaData().getURL());
+			}
+			if(dialect.explainTemplate==null) return;
+			final StringBuilder plan = new StringBuilder();
+			final ResultSetHandler planReader = new ResultSetHandler() {
+				@Override
+				public boolean onRow(int rowId, ResultSet rset) {
+					try {
+						if(plan.length()>0) plan.append("\n");
+						plan.append(rset.getString(1));
+					} catch (Exception ex) {/* No Op */}
+					return true;
+				}
+			};
+			if(dialect.planQuery==null) {
+				sqlWorker.executeQuery(conn, String.format(dialect.explainTemplate, sql), planReader, binds.toArray(new Object[binds.size()]));
+			} else {
+				sqlWorker.execute(conn, String.format(dialect.explainTemplate, SQLCatalogMetricsMetaAPIImpl.fillInSQL(sql, binds)));
+				sqlWorker.executeQuery(conn, dialect.planQuery, planReader);
+			}
+			final Set<String> scanned = new TreeSet<String>();
+			final Matcher m = dialect.fullScanPattern.matcher(plan);
+			while(m.find()) {
+				scanned.add(m.group(1).toUpperCase());
+			}
+			stats.sql = sql;
+			stats.plan = plan.toString();
+			stats.fullScans = scanned.toArray(new String[scanned.size()]);
+			if(!scanned.isEmpty()) {
+				log.warn("Meta API query template [{}] performs full scans on {}. Plan:\n{}", template, scanned, plan);
+			} else {
+				log.info("Captured plan for meta API query template [{}]", template);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to explain meta API query template [{}]", template, ex);
+		} finally {
+			if(conn!=null) try { conn.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Indicates if the advisor is enabled
+	 * @return true if the advisor is enabled, false otherwise
+	 */
+	public boolean isEnabled() {
+		return enabled.get();
+	}
+	
+	/**
+	 * Enables or disables the advisor
+	 * @param enable true to enable, false to disable
+	 */
+	public void setEnabled(final boolean enable) {
+		enabled.set(enable);
+	}
+	
+	/**
+	 * Clears all collected statistics and plans so they are re-captured on the next executions
+	 */
+	public void reset() {
+		templates.clear();
+	}
+	
+	/**
+	 * Returns the captured plans keyed by template name
+	 * @return the captured plans keyed by template name
+	 */
+	public Map<String, String> getPlans() {
+		final Map<String, String> map = new TreeMap<String, String>();
+		for(Map.Entry<String, TemplateStats> e: templates.entrySet()) {
+			final String plan = e.getValue().plan;
+			if(plan!=null) map.put(e.getKey(), plan);
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns the names of the templates whose plans contain full scans, with the scanned tables
+	 * @return the full scan template descriptions
+	 */
+	public String[] getFullScans() {
+		final List<String> scans = new ArrayList<String>();
+		for(Map.Entry<String, TemplateStats> e: templates.entrySet()) {
+			final String[] tables = e.getValue().fullScans;
+			if(tables.length>0) scans.add(e.getKey() + ":" + Arrays.toString(tables));
+		}
+		Collections.sort(scans);
+		return scans.toArray(new String[scans.size()]);
+	}
+	
+	/**
+	 * Returns the average execution time in microseconds keyed by template name
+	 * @return the average execution times
+	 */
+	public Map<String, Long> getAverageLatencies() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(Map.Entry<String, TemplateStats> e: templates.entrySet()) {
+			map.put(e.getKey(), e.getValue().getAverageMicros());
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns the maximum execution time in microseconds keyed by template name
+	 * @return the maximum execution times
+	 */
+	public Map<String, Long> getMaxLatencies() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(Map.Entry<String, TemplateStats> e: templates.entrySet()) {
+			map.put(e.getKey(), TimeUnit.MICROSECONDS.convert(e.getValue().maxNanos.get(), TimeUnit.NANOSECONDS));
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns the execution counts keyed by template name
+	 * @return the execution counts
+	 */
+	public Map<String, Long> getExecutionCounts() {
+		final Map<String, Long> map = new TreeMap<String, Long>();
+		for(Map.Entry<String, TemplateStats> e: templates.entrySet()) {
+			map.put(e.getKey(), e.getValue().count.get());
+		}
+		return map;
+	}
+	
+	/**
+	 * <p>Title: TemplateStats</p>
+	 * <p>Description: The accumulated statistics and plan for one query template</p> 
+	 */
+	protected static class TemplateStats {
+		/** The number of executions */
+		final AtomicLong count = new AtomicLong(0L);
+		/** The total elapsed time in nanos */
+		final AtomicLong totalNanos = new AtomicLong(0L);
+		/** The maximum elapsed time in nanos */
+		final AtomicLong maxNanos = new AtomicLong(0L);
+		/** Indicates if the template has been explained */
+		final AtomicBoolean explained = new AtomicBoolean(false);
+		/** The explained SQL */
+		volatile String sql = null;
+		/** The captured plan */
+		volatile String plan = null;
+		/** The full scanned tables */
+		volatile String[] fullScans = {};
+		
+		/**
+		 * Records an execution
+		 * @param elapsedNanos the elapsed time in nanos
+		 */
+		void record(final long elapsedNanos) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(elapsedNanos);
+			long max = maxNanos.get();
+			while(elapsedNanos > max) {
+				if(maxNanos.compareAndSet(max, elapsedNanos)) break;
+				max = maxNanos.get();
+			}
+		}
+		
+		/**
+		 * Returns the average elapsed time in micros
+		 * @return the average elapsed time in micros
+		 */
+		long getAverageMicros() {
+			final long cnt = count.get();
+			if(cnt==0) return 0L;
+			return TimeUnit.MICROSECONDS.convert(totalNanos.get() / cnt, TimeUnit.NANOSECONDS);
+		}
+	}
+}
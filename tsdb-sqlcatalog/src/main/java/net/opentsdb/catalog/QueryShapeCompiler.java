@@ -0,0 +1,610 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog;
+
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TAG_FILTER_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TAG_VALUES_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_NO_TAGS_NAME_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.INITIAL_XUID_START_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.MAX_TSUID;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.TSUID_START_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.XUID_START_SQL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+
+/**
+ * <p>Title: QueryShapeCompiler</p>
+ * <p>Description: Compiles the SQL for TSMeta, overlap and tag value meta queries from the <i>shape</i> of their expression 
+ * rather than the expression itself. The shape is the number of tags and, for each name predicate, the number of exact
+ * and <b><code>LIKE</code></b> alternatives. Each shape is rendered into a parameterized statement template once and cached,
+ * so repeated shapes skip SQL generation entirely and present the same SQL text to the connection pool's statement cache, 
+ * the {@link SQLWorker} binder cache and the server's plan cache.</p>
+ * <p>To keep the number of shapes small, alternative counts are rounded up to the next power of two by repeating the last
+ * alternative, and tag predicates are ordered by their shape since their intersection is commutative.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.QueryShapeCompiler</code></p>
+ */
+
+public class QueryShapeCompiler implements QueryShapeCompilerMXBean {
+	/** The compiled statement templates keyed by shape signature */
+	protected final ConcurrentHashMap<String, String> templates = new ConcurrentHashMap<String, String>();
+	/** The number of compiled shapes */
+	protected final AtomicLong compiled = new AtomicLong(0L);
+	/** The number of reused shapes */
+	protected final AtomicLong reused = new AtomicLong(0L);
+	/** The number of shapes not cached because the cache was full */
+	protected final AtomicLong uncached = new AtomicLong(0L);
+	/** The maximum number of cached templates */
+	protected final int maxShapes;
+	/** The JMX ObjectName for this compiler */
+	protected final ObjectName objectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=QueryShapeCompiler"));
+	
+	/** The configuration property name for the maximum number of cached statement templates */
+	public static final String MAX_SHAPES_PROP = "helios.search.catalog.shapes.max";
+	/** The default maximum number of cached statement templates */
+	public static final int DEFAULT_MAX_SHAPES = 1024;
+	
+	/** The TSMeta fragment for a metric expression with no tags */
+	public static final String GET_TSMETAS_METRIC_ONLY_SQL =
+			"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND (%s) ";
+	
+	/** The metric name column */
+	private static final String METRIC_COLUMN = "M.NAME";
+	/** The tag key column */
+	private static final String TAGK_COLUMN = "K.NAME";
+	/** The tag value column */
+	private static final String TAGV_COLUMN = "V.NAME";
+	/** The tag filter key column */
+	private static final String FILTER_TAGK_COLUMN = "KA.NAME";
+	/** The tag filter value column */
+	private static final String FILTER_TAGV_COLUMN = "VA.NAME";
+	
+	/** Orders tag predicates by shape */
+	private static final Comparator<TagPredicate> TAG_SHAPE_ORDER = new Comparator<TagPredicate>() {
+		@Override
+		public int compare(final TagPredicate t1, final TagPredicate t2) {
+			return t1.code.compareTo(t2.code);
+		}
+	};
+	
+	/**
+	 * Creates a new QueryShapeCompiler
+	 */
+	public QueryShapeCompiler() {
+		maxShapes = ConfigurationHelper.getIntSystemThenEnvProperty(MAX_SHAPES_PROP, DEFAULT_MAX_SHAPES);
+		JMXHelper.registerMBean(this, objectName);
+	}
+	
+	/**
+	 * Compiles a TSMeta query. The caller appends the row limit bind.
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param tsuid The optional TSUID to match
+	 * @param nextIndex The TSUID to start at, or null to start at the first
+	 * @return the compiled query
+	 */
+	public CompiledQuery tsMetas(final String metricName, final Map<String, String> tags, final String tsuid, final Object nextIndex) {
+		final Predicate metric = new Predicate(metricName);
+		final TagPredicate[] tagPredicates = tagPredicates(tags);
+		final boolean hasTsuid = tsuid!=null && !tsuid.trim().isEmpty();
+		final StringBuilder sig = new StringBuilder("TSM:");
+		appendShape(sig, metric, tagPredicates);
+		if(hasTsuid) sig.append(":U");
+		final String signature = sig.toString();
+		String sql = templates.get(signature);
+		if(sql==null) {
+			sql = store(signature, renderTSMetas(metric, tagPredicates, hasTsuid));
+		} else {
+			reused.incrementAndGet();
+		}
+		final List<Object> binds = new ArrayList<Object>(16);
+		if(tagPredicates.length==0) {
+			binds.add(nextIndex==null ? MAX_TSUID : nextIndex);
+			if(!metric.isAny()) metric.bind(binds);
+		} else {
+			bindIntersection(binds, metric, tagPredicates);
+			binds.add(nextIndex==null ? MAX_TSUID : nextIndex);
+		}
+		if(hasTsuid) binds.add(tsuid);
+		return new CompiledQuery(signature, sql, binds);
+	}
+	
+	/**
+	 * Compiles a query counting the TSMetas matching the first expression which do not match the second 
+	 * @param metricOne The metric name expression of the first expression
+	 * @param tagsOne The tag key and value expressions of the first expression
+	 * @param metricTwo The metric name expression of the second expression
+	 * @param tagsTwo The tag key and value expressions of the second expression
+	 * @return the compiled query
+	 */
+	public CompiledQuery overlap(final String metricOne, final Map<String, String> tagsOne, final String metricTwo, final Map<String, String> tagsTwo) {
+		final Predicate m1 = new Predicate(metricOne), m2 = new Predicate(metricTwo);
+		final TagPredicate[] t1 = tagPredicates(tagsOne), t2 = tagPredicates(tagsTwo);
+		final StringBuilder sig = new StringBuilder("OVL:");
+		appendShape(sig, m1, t1);
+		sig.append(":EXCEPT:");
+		appendShape(sig, m2, t2);
+		final String signature = sig.toString();
+		String sql = templates.get(signature);
+		if(sql==null) {
+			// Each intersection is nested so the EXCEPT applies to all of it: H2 evaluates set operators left to right
+			final StringBuilder b = new StringBuilder("SELECT COUNT(*) FROM ( SELECT * FROM ( ");
+			renderIntersection(b, m1, t1);
+			b.append(") A \n\tEXCEPT\n SELECT * FROM ( ");
+			renderIntersection(b, m2, t2);
+			b.append(") B ) X ");
+			sql = store(signature, b.toString());
+		} else {
+			reused.incrementAndGet();
+		}
+		final List<Object> binds = new ArrayList<Object>(16);
+		bindIntersection(binds, m1, t1);
+		bindIntersection(binds, m2, t2);
+		return new CompiledQuery(signature, sql, binds);
+	}
+	
+	/**
+	 * Compiles a tag value query. The caller appends the row limit bind.
+	 * @param metricName The metric name expression
+	 * @param tagKey The expression of the tag key to return the values of
+	 * @param tags The tag key and value expressions the values' series must match
+	 * @param nextIndex The XUID to start after, or null to start at the first
+	 * @return the compiled query
+	 */
+	public CompiledQuery tagValues(final String metricName, final String tagKey, final Map<String, String> tags, final Object nextIndex) {
+		final Predicate metric = new Predicate(metricName);
+		final Predicate key = new Predicate(tagKey);
+		final TagPredicate[] tagPredicates = tagPredicates(tags);
+		final String start = nextIndex==null ? null : nextIndex.toString().trim();
+		final boolean hasStart = start!=null && !start.isEmpty();
+		final StringBuilder sig = new StringBuilder("TGV:");
+		appendShape(sig, metric, tagPredicates);
+		sig.append(":K").append(key.code);
+		if(hasStart) sig.append(":S");
+		final String signature = sig.toString();
+		String sql = templates.get(signature);
+		if(sql==null) {
+			sql = store(signature, renderTagValues(metric, key, tagPredicates, hasStart));
+		} else {
+			reused.incrementAndGet();
+		}
+		final List<Object> binds = new ArrayList<Object>(16);
+		metric.bind(binds);
+		key.bind(binds);
+		for(TagPredicate tp: tagPredicates) {
+			tp.key.bind(binds);
+			tp.value.bind(binds);
+		}
+		if(hasStart) binds.add(start);
+		return new CompiledQuery(signature, sql, binds);
+	}
+	
+	/**
+	 * Caches a newly compiled template if there is room
+	 * @param signature The shape signature
+	 * @param sql The compiled template
+	 * @return the cached template
+	 */
+	protected String store(final String signature, final String sql) {
+		compiled.incrementAndGet();
+		if(templates.size() >= maxShapes) {
+			uncached.incrementAndGet();
+			return sql;
+		}
+		final String prior = templates.putIfAbsent(signature, sql);
+		return prior==null ? sql : prior;
+	}
+	
+	/**
+	 * Renders a TSMeta query template
+	 * @param metric The metric predicate
+	 * @param tagPredicates The tag predicates in shape order
+	 * @param hasTsuid true if the query matches a TSUID
+	 * @return the template
+	 */
+	protected String renderTSMetas(final Predicate metric, final TagPredicate[] tagPredicates, final boolean hasTsuid) {
+		if(tagPredicates.length==0) {
+			if(metric.isAny()) {
+				return String.format(hasTsuid ? GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL, TSUID_START_SQL);
+			}
+			return String.format(hasTsuid ? GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL : GET_TSMETAS_NO_TAGS_NAME_SQL, TSUID_START_SQL, metric.render(METRIC_COLUMN));
+		}
+		final StringBuilder b = new StringBuilder("SELECT * FROM ( ");
+		renderIntersection(b, metric, tagPredicates);
+		b.append(") X  WHERE ").append(TSUID_START_SQL);
+		if(hasTsuid) b.append("\n AND X.TSUID = ? \n");
+		b.append(" ORDER BY X.TSUID DESC LIMIT ? ");
+		return b.toString();
+	}
+	
+	/**
+	 * Renders the intersection of the TSMetas matching each tag predicate
+	 * @param b The buffer to render into
+	 * @param metric The metric predicate
+	 * @param tagPredicates The tag predicates in shape order
+	 */
+	protected void renderIntersection(final StringBuilder b, final Predicate metric, final TagPredicate[] tagPredicates) {
+		final String metricSql = metric.render(METRIC_COLUMN);
+		if(tagPredicates.length==0) {
+			b.append(String.format(GET_TSMETAS_METRIC_ONLY_SQL, metricSql));
+			return;
+		}
+		for(int i = 0; i < tagPredicates.length; i++) {
+			if(i!=0) b.append("\n INTERSECT  \n");
+			b.append(String.format(GET_TSMETAS_SQL, metricSql, tagPredicates[i].key.render(TAGK_COLUMN), tagPredicates[i].value.render(TAGV_COLUMN)));
+		}
+	}
+	
+	/**
+	 * Appends the binds for an intersection rendered by {@link #renderIntersection(StringBuilder, Predicate, TagPredicate[])}
+	 * @param binds The binds to append to
+	 * @param metric The metric predicate
+	 * @param tagPredicates The tag predicates in shape order
+	 */
+	protected void bindIntersection(final List<Object> binds, final Predicate metric, final TagPredicate[] tagPredicates) {
+		if(tagPredicates.length==0) {
+			metric.bind(binds);
+			return;
+		}
+		for(TagPredicate tp: tagPredicates) {
+			metric.bind(binds);
+			tp.key.bind(binds);
+			tp.value.bind(binds);
+		}
+	}
+	
+	/**
+	 * Renders a tag value query template
+	 * @param metric The metric predicate
+	 * @param key The predicate of the tag key to return the values of
+	 * @param tagPredicates The tag predicates in shape order
+	 * @param hasStart true if the query starts after a supplied XUID
+	 * @return the template
+	 */
+	protected String renderTagValues(final Predicate metric, final Predicate key, final TagPredicate[] tagPredicates, final boolean hasStart) {
+		final StringBuilder b = new StringBuilder(String.format(GET_TAG_VALUES_SQL, metric.render(METRIC_COLUMN), key.render(TAGK_COLUMN)));
+		if(tagPredicates.length!=0) {
+			b.append(" AND EXISTS ( ");
+			for(int i = 0; i < tagPredicates.length; i++) {
+				if(i!=0) b.append(" \nINTERSECT\n ");
+				b.append(String.format(GET_TAG_FILTER_SQL, new StringBuilder("( ( ")
+					.append(tagPredicates[i].key.render(FILTER_TAGK_COLUMN))
+					.append(" ) AND ( ")
+					.append(tagPredicates[i].value.render(FILTER_TAGV_COLUMN))
+					.append(" ) ) ")));
+			}
+			b.append(" ) ");
+		}
+		b.append(" AND ").append(hasStart ? XUID_START_SQL : INITIAL_XUID_START_SQL);
+		b.append(" ORDER BY X.XUID DESC LIMIT ? ");
+		return b.toString();
+	}
+	
+	/**
+	 * Parses the passed tags into tag predicates in shape order
+	 * @param tags The tag key and value expressions
+	 * @return the tag predicates
+	 */
+	protected static TagPredicate[] tagPredicates(final Map<String, String> tags) {
+		if(tags==null || tags.isEmpty()) return new TagPredicate[0];
+		final TagPredicate[] tps = new TagPredicate[tags.size()];
+		int i = 0;
+		// Iterate in key order so equal shapes always bind in the same order
+		for(Map.Entry<String, String> e: new TreeMap<String, String>(tags).entrySet()) {
+			tps[i++] = new TagPredicate(e.getKey(), e.getValue());
+		}
+		Arrays.sort(tps, TAG_SHAPE_ORDER);
+		return tps;
+	}
+	
+	/**
+	 * Appends the shape of a metric and tag predicates to a signature
+	 * @param sig The signature buffer
+	 * @param metric The metric predicate
+	 * @param tagPredicates The tag predicates in shape order
+	 */
+	protected static void appendShape(final StringBuilder sig, final Predicate metric, final TagPredicate[] tagPredicates) {
+		sig.append('M').append(metric.isAny() ? "*" : metric.code).append(":T").append(tagPredicates.length);
+		for(TagPredicate tp: tagPredicates) {
+			sig.append('[').append(tp.code).append(']');
+		}
+	}
+	
+	/**
+	 * Rounds the passed count up to the next power of two
+	 * @param n The count
+	 * @return the padded count
+	 */
+	static int pad(final int n) {
+		return n <= 1 ? n : Integer.highestOneBit(n - 1) << 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#getShapesCompiled()
+	 */
+	@Override
+	public long getShapesCompiled() {
+		return compiled.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#getShapesReused()
+	 */
+	@Override
+	public long getShapesReused() {
+		return reused.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#getShapesUncached()
+	 */
+	@Override
+	public long getShapesUncached() {
+		return uncached.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#getShapeCount()
+	 */
+	@Override
+	public int getShapeCount() {
+		return templates.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#getMaxShapes()
+	 */
+	@Override
+	public int getMaxShapes() {
+		return maxShapes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#getShapes()
+	 */
+	@Override
+	public Map<String, String> getShapes() {
+		return new HashMap<String, String>(templates);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.QueryShapeCompilerMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		templates.clear();
+		compiled.set(0L);
+		reused.set(0L);
+		uncached.set(0L);
+	}
+	
+	/**
+	 * Unregisters this compiler's management interface
+	 */
+	public void shutdown() {
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * <p>Title: CompiledQuery</p>
+	 * <p>Description: A statement template and the binds for one execution of it</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.QueryShapeCompiler.CompiledQuery</code></p>
+	 */
+	public static class CompiledQuery {
+		/** The shape signature */
+		private final String shape;
+		/** The statement template */
+		private final String sql;
+		/** The bind values */
+		private final List<Object> binds;
+		
+		/**
+		 * Creates a new CompiledQuery
+		 * @param shape The shape signature
+		 * @param sql The statement template
+		 * @param binds The bind values
+		 */
+		CompiledQuery(final String shape, final String sql, final List<Object> binds) {
+			this.shape = shape;
+			this.sql = sql;
+			this.binds = binds;
+		}
+
+		/**
+		 * Returns the shape signature
+		 * @return the shape signature
+		 */
+		public String getShape() {
+			return shape;
+		}
+
+		/**
+		 * Returns the statement template
+		 * @return the statement template
+		 */
+		public String getSQL() {
+			return sql;
+		}
+
+		/**
+		 * Returns the mutable bind values, so callers can append trailing binds such as the row limit
+		 * @return the bind values
+		 */
+		public List<Object> getBinds() {
+			return binds;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return new StringBuilder("CompiledQuery [").append(shape).append("]").toString();
+		}
+	}
+	
+	/**
+	 * <p>Title: Predicate</p>
+	 * <p>Description: A parsed name expression. Alternatives are separated by <b><code>|</code></b>. An alternative 
+	 * containing a <b><code>*</code></b> is matched with <b><code>LIKE</code></b>, otherwise it is matched for equality.</p> 
+	 */
+	static class Predicate {
+		/** The exact alternatives, padded */
+		final String[] exact;
+		/** The LIKE alternatives with wildcards translated, padded */
+		final String[] like;
+		/** The shape code */
+		final String code;
+		
+		/**
+		 * Creates a new Predicate
+		 * @param value The name expression
+		 */
+		Predicate(final String value) {
+			final StringTokenizer st = new StringTokenizer(value.replace(" ", ""), "|", false);
+			if(!st.hasMoreTokens()) {
+				throw new RuntimeException("Failed to parse expression [" + value + "]. Segment count was 0");
+			}
+			final Set<String> e = new LinkedHashSet<String>();
+			final Set<String> l = new LinkedHashSet<String>();
+			while(st.hasMoreTokens()) {
+				final String val = st.nextToken();
+				if(val.indexOf('*')==-1) e.add(val);
+				else l.add(val.replace('*', '%'));
+			}
+			exact = padded(e);
+			like = padded(l);
+			code = new StringBuilder("e").append(exact.length).append('l').append(like.length).toString();
+		}
+		
+		/**
+		 * Returns the passed alternatives padded to a power of two by repeating the last
+		 * @param alts The alternatives
+		 * @return the padded alternatives
+		 */
+		private static String[] padded(final Set<String> alts) {
+			final String[] arr = alts.toArray(new String[pad(alts.size())]);
+			for(int i = alts.size(); i < arr.length; i++) {
+				arr[i] = arr[i-1];
+			}
+			return arr;
+		}
+		
+		/**
+		 * Indicates if this predicate matches any name
+		 * @return true if this predicate is a lone <b><code>*</code></b>
+		 */
+		boolean isAny() {
+			return exact.length==0 && like.length==1 && "%".equals(like[0]);
+		}
+		
+		/**
+		 * Renders this predicate's shape against the passed column
+		 * @param column The column name
+		 * @return the rendered predicate
+		 */
+		String render(final String column) {
+			final StringBuilder b = new StringBuilder();
+			if(exact.length==1) {
+				b.append(column).append(" = ?");
+			} else if(exact.length > 1) {
+				b.append(column).append(" IN (?");
+				for(int i = 1; i < exact.length; i++) {
+					b.append(", ?");
+				}
+				b.append(')');
+			}
+			for(int i = 0; i < like.length; i++) {
+				if(b.length()>0) b.append(" OR ");
+				b.append(column).append(" LIKE ?");
+			}
+			return b.toString();
+		}
+		
+		/**
+		 * Appends this predicate's binds in render order
+		 * @param binds The binds to append to
+		 */
+		void bind(final List<Object> binds) {
+			for(String s: exact) binds.add(s);
+			for(String s: like) binds.add(s);
+		}
+	}
+	
+	/**
+	 * <p>Title: TagPredicate</p>
+	 * <p>Description: A parsed tag key and value expression pair</p> 
+	 */
+	static class TagPredicate {
+		/** The tag key predicate */
+		final Predicate key;
+		/** The tag value predicate */
+		final Predicate value;
+		/** The shape code */
+		final String code;
+		
+		/**
+		 * Creates a new TagPredicate
+		 * @param key The tag key expression
+		 * @param value The tag value expression
+		 */
+		TagPredicate(final String key, final String value) {
+			this.key = new Predicate(key);
+			this.value = new Predicate(value);
+			code = new StringBuilder(this.key.code).append('=').append(this.value.code).toString();
+		}
+	}
+}
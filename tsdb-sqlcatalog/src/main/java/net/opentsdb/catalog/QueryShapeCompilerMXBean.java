@@ -0,0 +1,78 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog;
+
+import java.util.Map;
+
+/**
+ * <p>Title: QueryShapeCompilerMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link QueryShapeCompiler}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.QueryShapeCompilerMXBean</code></p>
+ */
+
+public interface QueryShapeCompilerMXBean {
+	/**
+	 * Returns the number of query shapes compiled into statement templates
+	 * @return the number of compiled shapes
+	 */
+	public long getShapesCompiled();
+	
+	/**
+	 * Returns the number of queries that reused a compiled statement template
+	 * @return the number of reused shapes
+	 */
+	public long getShapesReused();
+	
+	/**
+	 * Returns the number of queries whose shape could not be cached because the template cache was full
+	 * @return the number of uncached shapes
+	 */
+	public long getShapesUncached();
+	
+	/**
+	 * Returns the number of cached statement templates
+	 * @return the number of cached templates
+	 */
+	public int getShapeCount();
+	
+	/**
+	 * Returns the maximum number of cached statement templates
+	 * @return the maximum number of cached templates
+	 */
+	public int getMaxShapes();
+	
+	/**
+	 * Returns the cached statement templates keyed by shape signature
+	 * @return the cached templates
+	 */
+	public Map<String, String> getShapes();
+	
+	/**
+	 * Clears the cached statement templates and resets the counters
+	 */
+	public void reset();
+}
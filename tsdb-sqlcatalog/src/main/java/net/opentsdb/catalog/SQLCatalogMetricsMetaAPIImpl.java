@@ -56,8 +56,14 @@ import java.util.regex.Pattern;
 
 import javax.management.ObjectName;
 
+import net.opentsdb.catalog.cache.FQNBitmap;
+import net.opentsdb.catalog.cache.FQNBitmapIndex;
+import net.opentsdb.catalog.cache.MetaQueryResultCache;
+import net.opentsdb.catalog.cache.TagAdjacencyIndex;
 import net.opentsdb.catalog.cache.TagPredicateCache;
 import net.opentsdb.catalog.datasource.CatalogDataSource;
+import net.opentsdb.catalog.exec.MetaQueryClass;
+import net.opentsdb.catalog.exec.MetaQueryScheduler;
 import net.opentsdb.core.Const;
 import net.opentsdb.core.TSDB;
 import net.opentsdb.meta.Annotation;
@@ -65,6 +71,7 @@ import net.opentsdb.meta.TSMeta;
 import net.opentsdb.meta.UIDMeta;
 import net.opentsdb.meta.api.MetricsMetaAPI;
 import net.opentsdb.meta.api.QueryContext;
+import net.opentsdb.stats.StatsCollector;
 import net.opentsdb.tsd.BadRequestException;
 import net.opentsdb.tsd.HttpQuery;
 import net.opentsdb.tsd.HttpRpc;
@@ -80,8 +87,6 @@ import org.helios.tsdb.plugins.service.PluginContext;
 import org.helios.tsdb.plugins.service.PluginContextImpl;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -108,6 +113,8 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 	protected final AsyncDispatcherExecutor metaQueryExecutor;
 	/** The reactor dispatcher */
 	protected final SuppliedTPEMultiThreadDispatcher dispatcher;
+	/** The scheduler admitting meta queries onto their own threads */
+	protected final MetaQueryScheduler queryScheduler;
 	/** The reactor environment */
 	protected final Environment env;
 	/** The SQLWorker to manage JDBC Ops */
@@ -121,6 +128,18 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 	
 	/** The tag predicate cache */
 	protected final TagPredicateCache tagPredicateCache;
+	/** The query advisor recording template latencies and plans */
+	protected final QueryAdvisor queryAdvisor;
+	/** The compiler caching statement templates by query shape */
+	protected final QueryShapeCompiler shapeCompiler;
+	/** The metric/tag key/tag value adjacency index serving autocomplete lookups */
+	protected final TagAdjacencyIndex adjacencyIndex;
+	/** The FQNID bitmap index serving TSMeta expression evaluation */
+	protected final FQNBitmapIndex bitmapIndex;
+	/** The open cursor sessions for paged queries */
+	protected final CursorSessionManager cursorSessions;
+	/** The result cache for TSMeta and tag value query pages */
+	protected final MetaQueryResultCache resultCache;
 	
 	/** The maximum TSUID in Hex String format */
 	public static final String MAX_TSUID;
@@ -222,21 +241,29 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 				"AND (%s) " +					// K.NAME % ? 	  --- > TAGK_SQL_BLOCK		 			
 				"AND (%s) ";				// V.NAME % ? 	  --- > TAGV_SQL_BLOCK
 
+		/** The TSMeta Retrieval SQL template for a page of FQNIDs resolved from the bitmap index */
+		public static final String GET_TSMETAS_BY_FQNID_SQL =
+				"SELECT X.* FROM TSD_TSMETA X WHERE X.FQNID IN (%s) ORDER BY X.TSUID DESC";
+
+		/** The UIDMeta Retrieval SQL template for a page of UIDs resolved from the adjacency index. Formatted with the UID type and the binds. */
+		public static final String GET_UIDMETAS_BY_XUID_SQL =
+				"SELECT * FROM TSD_%s WHERE XUID IN (%s)";
+
 		/** The TSMeta Retrieval SQL template when no tags or metric name are provided and overflow is true */
 		public static final String GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL =
 				"SELECT X.* FROM TSD_TSMETA X WHERE %s ORDER BY X.TSUID DESC LIMIT ?"; 
 
-		/** The TSMeta Retrieval SQL template when no tags are provided and overflow is true */
+		/** The TSMeta Retrieval SQL template when no tags are provided and overflow is true. Tokens are the start and metric predicates. */
 		public static final String GET_TSMETAS_NO_TAGS_NAME_SQL =
-				"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND %s AND M.NAME = ? ORDER BY X.TSUID DESC LIMIT ?";
+				"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND %s AND (%s) ORDER BY X.TSUID DESC LIMIT ?";
 		
 		/** The TSMeta Retrieval SQL template when no tags or metric name are provided but a TSUID is */
 		public static final String GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL =
 				"SELECT X.* FROM TSD_TSMETA X WHERE %s AND X.TSUID = ? ORDER BY X.TSUID DESC LIMIT ?"; 
 
-		/** The TSMeta Retrieval SQL template when no tags are provided but a TSUID is */
+		/** The TSMeta Retrieval SQL template when no tags are provided but a TSUID is. Tokens are the start and metric predicates. */
 		public static final String GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL =
-				"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND %s AND M.NAME = ?  AND X.TSUID = ? ORDER BY X.TSUID DESC LIMIT ?"; 
+				"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND %s AND (%s)  AND X.TSUID = ? ORDER BY X.TSUID DESC LIMIT ?"; 
 		
 		
 	
@@ -299,6 +326,7 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		metaQueryExecutor = new AsyncDispatcherExecutor("MetricsMetaAPIService", ctx.getExtracted());
 		metaQueryExecutor.registerUncaughtExceptionHandler(this);
 		dispatcher = new SuppliedTPEMultiThreadDispatcher(metaQueryExecutor);
+		queryScheduler = new MetaQueryScheduler(ctx.getExtracted());
 		env = new Environment();
 		env.addDispatcher(DISPATCHER_NAME, dispatcher);
 		
@@ -307,6 +335,12 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		Serializers.setTSDB(tsdb);
 		this.metaReader = metaReader;
 		tagPredicateCache = new TagPredicateCache(sqlWorker);
+		queryAdvisor = new QueryAdvisor(sqlWorker);
+		shapeCompiler = new QueryShapeCompiler();
+		adjacencyIndex = new TagAdjacencyIndex(sqlWorker);
+		bitmapIndex = new FQNBitmapIndex(sqlWorker);
+		cursorSessions = new CursorSessionManager();
+		resultCache = new MetaQueryResultCache();
 		loadContent();
 		ctx.setResource(getClass().getSimpleName(), this);	
 		new MetricUIHandler();
@@ -391,23 +425,35 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		}
 	}
 	
-	private static final Pattern Q_PATTERN = Pattern.compile("\\?");
-	
-	public static String fillInSQL(String sql, List<Object> binds) {
+	/**
+	 * Renders the passed SQL with its bind values filled in, for logging and EXPLAINs
+	 * @param sql The SQL with <b><code>?</code></b> bind placeholders
+	 * @param binds The bind values
+	 * @return the filled in SQL
+	 */
+	public static String fillInSQL(final String sql, final List<Object> binds) {
 		final int bindCnt = binds.size();
-		Matcher m = Q_PATTERN.matcher(sql);
-		for(int i = 0; i < bindCnt; i++) {
-			Object bind = binds.get(i);
-			if(bind instanceof CharSequence) {
-				sql = m.replaceFirst("'" + bind.toString() + "'");
+		final int len = sql.length();
+		final StringBuilder b = new StringBuilder(len + (bindCnt * 16));
+		int bindIndex = 0;
+		for(int i = 0; i < len; i++) {
+			final char c = sql.charAt(i);
+			if(c!='?' || bindIndex==bindCnt) {
+				b.append(c);
+				continue;
+			}
+			final Object bind = binds.get(bindIndex++);
+			if(bind==null) {
+				b.append("NULL");
+			} else if(bind instanceof CharSequence) {
+				b.append('\'').append(bind).append('\'');
 			} else if (bind.getClass().isArray()) {
-				sql = m.replaceFirst(renderArray(bind));
+				b.append(renderArray(bind));
 			} else {
-				sql = m.replaceFirst(bind.toString());
-			}		
-			m = Q_PATTERN.matcher(sql);
+				b.append(bind);
+			}
 		}
-		return sql;
+		return b.toString();
 	}
 	
 	public static String renderArray(final Object array) {
@@ -438,13 +484,85 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 	
 	
 
+	/**
+	 * Records the tag predicate and query result cache stats to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		tagPredicateCache.collectStats(collector);
+		resultCache.collectStats(collector);
+	}
+
 	/**
 	 * Shuts down this service
 	 */
 	public void shutdown() {
+		tagPredicateCache.shutdown();
+		cursorSessions.shutdown();
+		queryAdvisor.shutdown();
+		adjacencyIndex.shutdown();
+		queryScheduler.shutdown();
+		resultCache.shutdown();
+		shapeCompiler.shutdown();
 		metaQueryExecutor.shutdown();
 	}
 	
+	/**
+	 * Returns the tag predicate cache
+	 * @return the tag predicate cache
+	 */
+	public TagPredicateCache getTagPredicateCache() {
+		return tagPredicateCache;
+	}
+	
+	/**
+	 * Returns the query advisor
+	 * @return the query advisor
+	 */
+	public QueryAdvisor getQueryAdvisor() {
+		return queryAdvisor;
+	}
+	
+	/**
+	 * Returns the query shape compiler
+	 * @return the query shape compiler
+	 */
+	public QueryShapeCompiler getShapeCompiler() {
+		return shapeCompiler;
+	}
+	
+	/**
+	 * Returns the metric/tag key/tag value adjacency index
+	 * @return the adjacency index
+	 */
+	public TagAdjacencyIndex getTagAdjacencyIndex() {
+		return adjacencyIndex;
+	}
+	
+	/**
+	 * Returns the FQNID bitmap index
+	 * @return the bitmap index
+	 */
+	public FQNBitmapIndex getFQNBitmapIndex() {
+		return bitmapIndex;
+	}
+	
+	/**
+	 * Returns the meta query result cache
+	 * @return the result cache
+	 */
+	public MetaQueryResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * Returns the cursor session manager
+	 * @return the cursor session manager
+	 */
+	public CursorSessionManager getCursorSessionManager() {
+		return cursorSessions;
+	}
+	
 	/**
 	 * Executes a single correlated UID query, where the target is the type we want to query and the filter is the correlation data.
 	 * @param priorDeferred An optional deferred result from a prior continuous call. If null, this is assumed
@@ -460,9 +578,18 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		final reactor.core.composable.Deferred<UIDMeta, Stream<UIDMeta>> def = getDeferred(priorDeferred, queryContext);
 		final Stream<List<UIDMeta>> stream = def.compose().collect();
 		final String _filterName = (filterName==null || filterName.trim().isEmpty()) ? "*" : filterName.trim();
-		this.metaQueryExecutor.execute(new Runnable() {
+		this.queryScheduler.submit(queryContext, MetaQueryClass.INTERACTIVE, def, new Runnable() {
 			@SuppressWarnings("boxing")
 			public void run() {
+				if(targetType==UniqueIdType.TAGK && filterType==UniqueIdType.METRIC && adjacencyIndex.isLoaded()) {
+					try {
+						streamIndexed(UniqueIdType.TAGK, adjacencyIndex.getTagKeys(_filterName, excludes==null ? null : Arrays.asList(excludes), startIndex(queryContext), queryContext.getNextMaxLimit() + 1), def, queryContext);
+					} catch (Exception ex) {
+						log.error("Failed to execute getTagKeysFor from the adjacency index", ex);
+						def.accept(new Exception("Failed to execute getTagKeysFor", ex));
+					}
+					return;
+				}
 				final List<Object> binds = new ArrayList<Object>();
 				String sql = null;
 				final String predicate = expandPredicate(_filterName, TAGK_SQL_BLOCK, binds);
@@ -491,7 +618,9 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 					}
 					binds.add(queryContext.getNextMaxLimit() + 1);					
 					if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(sql, binds));
+					final long startNanos = System.nanoTime();
 					final ResultSet rset = sqlWorker.executeQuery(sql, true, binds.toArray(new Object[0]));
+					queryAdvisor.record("GET_KEY_TAGS_SQL", sql, binds, System.nanoTime()-startNanos);
 					final IndexProvidingIterator<UIDMeta> iter = metaReader.iterateUIDMetas(rset, targetType);
 					try {
 						while(processStream(iter, def, queryContext)) {/* No Op */} 
@@ -500,7 +629,7 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 					}
 				} catch (Exception ex) {
 					log.error("Failed to execute getTagKeysFor.\nSQL was [{}]", sql, ex);
-					def.accept(new Exception("Failed to execute getTagValues", ex));
+					def.accept(new Exception("Failed to execute getTagKeysFor", ex));
 				}
 			}
 		});
@@ -530,9 +659,18 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		final reactor.core.composable.Deferred<UIDMeta, Stream<UIDMeta>> def = getDeferred(priorDeferred, queryContext);
 		final Stream<List<UIDMeta>> stream = def.compose().collect();
 		
-		this.metaQueryExecutor.execute(new Runnable() {
+		this.queryScheduler.submit(queryContext, MetaQueryClass.INTERACTIVE, def, new Runnable() {
 			@SuppressWarnings("boxing")
 			public void run() {				
+				if(tagKeys!=null && tagKeys.length>0 && adjacencyIndex.isLoaded()) {
+					try {
+						streamIndexed(UniqueIdType.METRIC, adjacencyIndex.getMetricNamesForKeys(tagKeys, startIndex(queryContext), queryContext.getNextMaxLimit() + 1), def, queryContext);
+					} catch (Exception ex) {
+						log.error("Failed to execute getMetricNamesFor from the adjacency index", ex);
+						def.accept(new Exception("Failed to execute getMetricNamesFor", ex));
+					}
+					return;
+				}
 				final List<Object> binds = new ArrayList<Object>();
 				
 				String sql = null;
@@ -564,7 +702,9 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 					}
 					binds.add(queryContext.getNextMaxLimit() + 1);
 					if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(sql, binds));
+					final long startNanos = System.nanoTime();
 					final ResultSet rset = sqlWorker.executeQuery(sql, true, binds.toArray(new Object[0]));
+					queryAdvisor.record((tagKeys==null || tagKeys.length==0) ? "GET_METRIC_NAMES_SQL" : "GET_METRIC_NAMES_WITH_KEYS_SQL", sql, binds, System.nanoTime()-startNanos);
 					final IndexProvidingIterator<UIDMeta> iter = metaReader.iterateUIDMetas(rset, UniqueIdType.METRIC);
 					try {
 						while(processStream(iter, def, queryContext)) {/* No Op */} 
@@ -573,7 +713,7 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 					}
 				} catch (Exception ex) {
 					log.error("Failed to execute getMetricNamesFor.\nSQL was [{}]", sql, ex);
-					def.accept(new Exception("Failed to execute getTagValues", ex));				
+					def.accept(new Exception("Failed to execute getMetricNamesFor", ex));				
 				}
 			}
 		});
@@ -609,9 +749,18 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		final Stream<List<UIDMeta>> stream = def.compose().collect();
 		
 		final Map<String, String> _tags = (tags==null) ? EMPTY_TAGS : tags;
-		this.metaQueryExecutor.execute(new Runnable() {
+		this.queryScheduler.submit(queryContext, MetaQueryClass.INTERACTIVE, def, new Runnable() {
 			@SuppressWarnings("boxing")
 			public void run() {				
+				if(!_tags.isEmpty() && adjacencyIndex.isLoaded()) {
+					try {
+						streamIndexed(UniqueIdType.METRIC, adjacencyIndex.getMetricNamesForTags(_tags, startIndex(queryContext), queryContext.getNextMaxLimit() + 1), def, queryContext);
+					} catch (Exception ex) {
+						log.error("Failed to execute getMetricNamesFor from the adjacency index", ex);
+						def.accept(new Exception("Failed to execute getMetricNamesFor (with tags)", ex));
+					}
+					return;
+				}
 				final List<Object> binds = new ArrayList<Object>();
 				final List<String> likeOrEquals = new ArrayList<String>();
 				String sql = null;
@@ -654,7 +803,9 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 					} 
 					binds.add(queryContext.getNextMaxLimit() + 1);
 					if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(sql, binds));
+					final long startNanos = System.nanoTime();
 					final ResultSet rset = sqlWorker.executeQuery(sql, true, binds.toArray(new Object[0]));
+					queryAdvisor.record(_tags.isEmpty() ? "GET_METRIC_NAMES_SQL" : "GET_METRIC_NAMES_WITH_TAGS_SQL", sql, binds, System.nanoTime()-startNanos);
 					final IndexProvidingIterator<UIDMeta> iter = metaReader.iterateUIDMetas(rset, UniqueIdType.METRIC);
 					try {
 						while(processStream(iter, def, queryContext)) {/* No Op */} 
@@ -663,7 +814,7 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 					}					
 				} catch (Exception ex) {
 					log.error("Failed to execute getMetricNamesFor (with tags).\nSQL was [{}]", sql, ex);
-					def.accept(new Exception("Failed to execute getTagValues", ex));				
+					def.accept(new Exception("Failed to execute getMetricNamesFor (with tags)", ex));				
 				}
 			}
 		});
@@ -713,37 +864,71 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		final Stream<List<TSMeta>> stream = def.compose().collect();		
 		final String _metricName = (metricName==null || metricName.trim().isEmpty()) ? "*" : metricName.trim();
 		final Map<String, String> _tags = (tags==null) ? EMPTY_TAGS : tags;
+		final MetaQueryResultCache.Key cacheKey = resultCache.tsMetasKey(queryContext, _metricName, _tags, tsuid);
+		final Runnable replay = resultCache.replaying(cacheKey, def, queryContext);
+		if(replay!=null) {
+			// delivered from the dispatcher after returning, like an executed query, rather than before the caller consumes the stream
+			dispatcher.execute(replay);
+			return stream;
+		}
 		
-		this.dispatcher.execute(new Runnable() {
+		this.queryScheduler.submit(queryContext, MetaQueryClass.BULK, def, resultCache.capturing(cacheKey, queryContext, new Runnable() {
 			@SuppressWarnings({ "boxing" })
 			public void run() {								
-				final List<Object> binds = new ArrayList<Object>();
-				final StringBuilder sqlBuffer = new StringBuilder();
+				QueryShapeCompiler.CompiledQuery query = null;
 				try {
-					generateTSMetaSQL(sqlBuffer, binds, queryContext, _metricName, _tags, "INTERSECT", tsuid);		
-					final int expectedRows = queryContext.getNextMaxLimit() + 1; 
+					if(!_tags.isEmpty() && tsuid==null && bitmapIndex.isLoaded()) {
+						getIndexedTSMetas(def, queryContext, _metricName, _tags);
+						return;
+					}
+					// Paged (non-continuous) queries hold the cursor open between pages when a session is available
+					final String signature = queryContext.isContinuous() ? null : ("getTSMetas:" + _metricName + ":" + new TreeMap<String, String>(_tags) + ":" + tsuid);
+					if(signature!=null) {
+						final CursorSessionManager.CursorSession<TSMeta> session = cursorSessions.checkout(signature, queryContext);
+						if(session!=null) {
+							queryContext.addCtx("CursorResumed", System.currentTimeMillis());
+							try {
+								processStream(session.getIterator(), def, queryContext);
+							} finally {
+								cursorSessions.park(session, queryContext);
+							}
+							return;
+						}
+					}
+					final boolean holdCursor = signature!=null && cursorSessions.hasCapacity();
+					query = shapeCompiler.tsMetas(_metricName, _tags, tsuid, queryContext.getNextIndex());
+					final List<Object> binds = query.getBinds();
+					// a held cursor selects a bounded window of pages and is read a page per fetch
+					final int expectedRows = holdCursor ? cursorSessions.windowLimit(queryContext) : (queryContext.getNextMaxLimit() + 1);
+					final int fetchSize = holdCursor ? queryContext.getPageSize() + 1 : expectedRows;
+					final int windowEnd = queryContext.getCummulative() + expectedRows - 1;
 					binds.add(expectedRows);
 					queryContext.addCtx("SQLPrepared", System.currentTimeMillis());
-					if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(sqlBuffer.toString(), binds));					
-					final ResultSet rset = sqlWorker.executeQuery(sqlBuffer.toString(), expectedRows, false, binds.toArray(new Object[0]));
-					rset.setFetchSize(expectedRows);
+					if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(query.getSQL(), binds));					
+					final long startNanos = System.nanoTime();
+					final ResultSet rset = sqlWorker.executeQuery(query.getSQL(), fetchSize, false, binds.toArray(new Object[binds.size()]));
+					queryAdvisor.record(_tags.isEmpty() ? "GET_TSMETAS_NO_TAGS_SQL" : "GET_TSMETAS_SQL", query.getSQL(), binds, System.nanoTime()-startNanos);
+					rset.setFetchSize(fetchSize);
 					queryContext.addCtx("SQLExecuted", System.currentTimeMillis());
-//					final List<TSMeta> tsMetas = metaReader.readTSMetas(rset, true);
 					final IndexProvidingIterator<TSMeta> tsMetas = metaReader.iterateTSMetas(rset, true);
 					queryContext.addCtx("SQLRSetIter", System.currentTimeMillis());
+					boolean parked = false;
 					try {
 						while(processStream(tsMetas, def, queryContext)) {
 							queryContext.startExpiry();
 						} 
+						if(holdCursor && !queryContext.isExhausted() && queryContext.getNextIndex()!=null) {
+							parked = cursorSessions.open(signature, rset, tsMetas, queryContext, windowEnd);
+						}
 					} finally {
-						try { rset.close(); } catch (Exception x) {/* No Op */}
+						if(!parked) try { rset.close(); } catch (Exception x) {/* No Op */}
 					}
 				} catch (Exception ex) {
-					log.error("Failed to execute getTSMetas (with tags).\nSQL was [{}]", sqlBuffer, ex);
+					log.error("Failed to execute getTSMetas (with tags).\nSQL was [{}]", query==null ? null : query.getSQL(), ex);
 					def.accept(new Exception("Failed to execute getTSMetas", ex));
 				}
 			}
-		});
+		}));
 		return stream;
 	}
 	
@@ -780,6 +965,10 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 				final String expr = expression.trim();
 				try {			
 					final ObjectName on = JMXHelper.objectName(expr);
+					if(bitmapIndex.isLoaded()) {
+						def.accept(bitmapIndex.match(on.getDomain(), on.getKeyPropertyList(), tsuid));
+						return;
+					}
 					getTSMetas(null, new QueryContext().setPageSize(1).setMaxSize(1).startExpiry(), on.getDomain(), on.getKeyPropertyList(), tsuid)
 						.consume(new Consumer<List<TSMeta>>() {
 							@Override
@@ -815,16 +1004,17 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 			throw new IllegalArgumentException("The passed expressionTwo was null or empty");
 		}
 		final long start = System.currentTimeMillis();
-		final List<Object> binds = new ArrayList<Object>();
-		final StringBuilder sqlBuffer = new StringBuilder("SELECT COUNT(*) FROM ( ");
 		final ObjectName on1 = JMXHelper.objectName(expressionOne);
 		final ObjectName on2 = JMXHelper.objectName(expressionTwo);
-		prepareGetTSMetasSQL(on1.getDomain(), on1.getKeyPropertyList(), binds, sqlBuffer, GET_TSMETAS_SQL, "INTERSECT");
-		sqlBuffer.append("\n\tEXCEPT\n");
-		prepareGetTSMetasSQL(on2.getDomain(), on2.getKeyPropertyList(), binds, sqlBuffer, GET_TSMETAS_SQL, "INTERSECT");
-		sqlBuffer.append(") X ");
-		if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(sqlBuffer.toString(), binds));		
-		final long result = sqlWorker.sqlForLong(sqlBuffer.toString(), binds.toArray(new Object[0]));
+		if(bitmapIndex.isLoaded()) {
+			return bitmapIndex.overlap(on1.getDomain(), on1.getKeyPropertyList(), on2.getDomain(), on2.getKeyPropertyList());
+		}
+		final QueryShapeCompiler.CompiledQuery query = shapeCompiler.overlap(on1.getDomain(), on1.getKeyPropertyList(), on2.getDomain(), on2.getKeyPropertyList());
+		final List<Object> binds = query.getBinds();
+		if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(query.getSQL(), binds));		
+		final long startNanos = System.nanoTime();
+		final long result = sqlWorker.sqlForLong(query.getSQL(), binds.toArray(new Object[binds.size()]));
+		queryAdvisor.record("OVERLAP_SQL", query.getSQL(), binds, System.nanoTime()-startNanos);
 		final long elapsed = System.currentTimeMillis()-start;
 		//log.info("Computed overlap for expressions:\n\tExpression One: [{}]\n\tExpression Two: [{}]\n\tElapsed: [{}] ms\n\tResult: [{}]", expressionOne, expressionTwo, elapsed, result);
 		return result;
@@ -884,60 +1074,134 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 
 	
 	/**
-	 * Processes the results into the stream
-	 * @param iter The iterator of the results to stream out
+	 * Streams UIDMetas served from the adjacency index. The index only holds UIDs and names, so the page is
+	 * re-read from the catalog by primary key to return the full UIDMetas, including descriptions, notes and custom maps.
+	 * @param type The UID type of the results
+	 * @param results The results, already ordered and limited to the next max limit
 	 * @param def The deferred the results are accepted into
 	 * @param queryContext The current query context
-	 * @return true to continue processing, false for done
 	 */
-	protected  <T> boolean processStream(final IndexProvidingIterator<T> iter , final reactor.core.composable.Deferred<T, Stream<T>> def, final QueryContext queryContext) {
-		int rowsRead = 0;
-		final int pageRows = queryContext.getPageSize();		
-		if(queryContext.isExpired()) {
-			def.accept(new TimeoutException("Request Timed Out During Processing after [" + queryContext.getTimeout() + "] ms."));
-			return false;
+	protected void streamIndexed(final UniqueIdType type, final List<UIDMeta> results, final reactor.core.composable.Deferred<UIDMeta, Stream<UIDMeta>> def, final QueryContext queryContext) {
+		final IndexProvidingIterator<UIDMeta> iter = new ListIndexProvidingIterator<UIDMeta>(readFullUIDMetas(type, results)) {
+			@Override
+			protected Object getIndex(UIDMeta t) {
+				return t.getUID();
+			}
+		};
+		while(processStream(iter, def, queryContext)) {/* No Op */}
+	}
+	
+	/**
+	 * Reads the full UIDMetas for the passed index results, in the same order. UIDs deleted since they were indexed are dropped.
+	 * @param type The UID type of the results
+	 * @param results The index results
+	 * @return the full UIDMetas
+	 */
+	protected List<UIDMeta> readFullUIDMetas(final UniqueIdType type, final List<UIDMeta> results) {
+		if(results.isEmpty()) return results;
+		final Object[] uids = new Object[results.size()];
+		final StringBuilder in = new StringBuilder();
+		for(int i = 0; i < uids.length; i++) {
+			if(i>0) in.append(", ");
+			in.append("?");
+			uids[i] = results.get(i).getUID();
 		}
-		boolean exh = false;
-		while(rowsRead < pageRows) {
-			if(iter.hasNext()) {
-				def.accept(iter.next());
-				rowsRead++;
-			} else {
-				exh = true;
-				break;
+		final String sql = String.format(GET_UIDMETAS_BY_XUID_SQL, type.name(), in);
+		final long startNanos = System.nanoTime();
+		final ResultSet rset = sqlWorker.executeQuery(sql, uids.length, false, uids);
+		final Map<String, UIDMeta> byUid = new HashMap<String, UIDMeta>(uids.length);
+		try {
+			for(UIDMeta meta: metaReader.readUIDMetas(rset, type)) {
+				byUid.put(meta.getUID(), meta);
 			}
+		} finally {
+			try { rset.close(); } catch (Exception x) {/* No Op */}
+		}
+		queryAdvisor.record("GET_UIDMETAS_BY_XUID_SQL", sql, Arrays.asList(uids), System.nanoTime()-startNanos);
+		final List<UIDMeta> full = new ArrayList<UIDMeta>(results.size());
+		for(UIDMeta meta: results) {
+			final UIDMeta f = byUid.get(meta.getUID());
+			if(f!=null) full.add(f);
+		}
+		return full;
+	}
+	
+	/**
+	 * Returns the paging start index of the passed query context
+	 * @param queryContext The query context
+	 * @return the trimmed start index or null if there is none
+	 */
+	protected static String startIndex(final QueryContext queryContext) {
+		final Object nextIndex = queryContext.getNextIndex();
+		if(nextIndex==null) return null;
+		final String s = nextIndex.toString().trim();
+		return s.isEmpty() ? null : s;
+	}
+	
+	/**
+	 * Streams the TSMetas matching the passed expression, resolving the page of FQNIDs from the bitmap index 
+	 * and fetching only those rows from the catalog
+	 * @param def The deferred the results are accepted into
+	 * @param queryContext The current query context
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @throws Exception thrown on any error fetching the TSMetas
+	 */
+	protected void getIndexedTSMetas(final reactor.core.composable.Deferred<TSMeta, Stream<TSMeta>> def, final QueryContext queryContext, final String metricName, final Map<String, String> tags) throws Exception {
+		final FQNBitmap matched = bitmapIndex.resolve(metricName, tags);
+		final List<Long> fqnIds = bitmapIndex.page(matched, startIndex(queryContext), queryContext.getNextMaxLimit() + 1);
+		queryContext.addCtx("BitmapResolved", System.currentTimeMillis());
+		if(fqnIds.isEmpty()) {
+			processStream(new ListIndexProvidingIterator<TSMeta>(Collections.<TSMeta>emptyList()) {
+				@Override
+				protected Object getIndex(TSMeta t) {
+					return t.getTSUID();
+				}
+			}, def, queryContext);
+			return;
+		}
+		final StringBuilder sql = new StringBuilder(GET_TSMETAS_BY_FQNID_SQL.length() + (fqnIds.size() * 3));
+		final StringBuilder in = new StringBuilder();
+		for(int i = 0; i < fqnIds.size(); i++) {
+			if(i>0) in.append(", ");
+			in.append("?");
+		}
+		sql.append(String.format(GET_TSMETAS_BY_FQNID_SQL, in));
+		final long startNanos = System.nanoTime();
+		final ResultSet rset = sqlWorker.executeQuery(sql.toString(), fqnIds.size(), false, fqnIds.toArray(new Object[fqnIds.size()]));
+		queryAdvisor.record("GET_TSMETAS_BY_FQNID_SQL", sql.toString(), new ArrayList<Object>(fqnIds), System.nanoTime()-startNanos);
+		try {
+			final IndexProvidingIterator<TSMeta> tsMetas = metaReader.iterateTSMetas(rset, true);
+			while(processStream(tsMetas, def, queryContext)) {
+				queryContext.startExpiry();
+			}
+		} finally {
+			try { rset.close(); } catch (Exception x) {/* No Op */}
 		}
-		
-		if(!exh) {
-			queryContext.setExhausted(false).setNextIndex(iter.getIndex()).incrementCummulative(rowsRead);
-		} else {
-			queryContext.setExhausted(true).setNextIndex(null).incrementCummulative(rowsRead);
-		}		
-		queryContext.addCtx("StreamFlushed", System.currentTimeMillis());
-		log.debug("Deferred Flushing [{}] rows", rowsRead);
-		def.flush();
-		return queryContext.shouldContinue();
 	}
 	
 	/**
 	 * Processes the results into the stream
-	 * @param items The results to stream out
+	 * @param iter The iterator of the results to stream out
 	 * @param def The deferred the results are accepted into
 	 * @param queryContext The current query context
 	 * @return true to continue processing, false for done
 	 */
-	protected  boolean processStream(List<TSMeta> items , final reactor.core.composable.Deferred<TSMeta, Stream<TSMeta>> def, final QueryContext queryContext) {
+	protected  <T> boolean processStream(final IndexProvidingIterator<T> iter , final reactor.core.composable.Deferred<T, Stream<T>> def, final QueryContext queryContext) {
 		int rowsRead = 0;
 		final int pageRows = queryContext.getPageSize();		
+		final MetaQueryResultCache.Capture capture = MetaQueryResultCache.currentCapture();
 		if(queryContext.isExpired()) {
+			if(capture!=null) capture.abandon();
 			def.accept(new TimeoutException("Request Timed Out During Processing after [" + queryContext.getTimeout() + "] ms."));
 			return false;
 		}
 		boolean exh = false;
-		Iterator<TSMeta> iter = items.iterator();
 		while(rowsRead < pageRows) {
 			if(iter.hasNext()) {
-				def.accept(iter.next());
+				final T item = iter.next();
+				if(capture!=null) capture.add(item);
+				def.accept(item);
 				rowsRead++;
 			} else {
 				exh = true;
@@ -946,94 +1210,19 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		}
 		
 		if(!exh) {
-			if(iter.hasNext()) {
-				queryContext.setExhausted(false).setNextIndex(iter.next().getTSUID()).incrementCummulative(rowsRead);
-			} else {
-				queryContext.setExhausted(true).setNextIndex(null).incrementCummulative(rowsRead);
-			}
+			queryContext.setExhausted(false).setNextIndex(iter.getIndex()).incrementCummulative(rowsRead);
 		} else {
 			queryContext.setExhausted(true).setNextIndex(null).incrementCummulative(rowsRead);
 		}		
+		if(capture!=null) capture.pageComplete();
 		queryContext.addCtx("StreamFlushed", System.currentTimeMillis());
 		log.debug("Deferred Flushing [{}] rows", rowsRead);
 		def.flush();
 		return queryContext.shouldContinue();
 	}
 	
-
-	/**
-	 * Generates a TSMeta query
-	 * @param sqlBuffer The sql buffer to append generated SQL into
-	 * @param binds The query bind values
-	 * @param queryOptions The query options
-	 * @param metricName The metric name
-	 * @param tags The tag pairs
-	 * @param mergeOp Specifies a row merge op (usually INTERSECT or UNION ALL)
-	 * @param tsuid The optional TSMeta UID to match against
-	 */
-	protected void generateTSMetaSQL(final StringBuilder sqlBuffer, final List<Object> binds, final QueryContext queryOptions, final String metricName, final Map<String, String> tags, final String mergeOp, final String tsuid) {
-		final boolean hasMetricName = (metricName==null || metricName.trim().isEmpty());
-		if(tags==null || tags.isEmpty()) {	
-			if(tsuid!=null && !tsuid.trim().isEmpty()) {
-				if(queryOptions.getNextIndex()==null) {							
-					sqlBuffer.append(String.format(hasMetricName ? GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL, INITIAL_TSUID_START_SQL)); 
-				} else {
-					sqlBuffer.append(String.format(hasMetricName ? GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL, TSUID_START_SQL));
-					binds.add(queryOptions.getNextIndex());
-				}
-				binds.add(tsuid);
-			} else {
-				if(queryOptions.getNextIndex()==null) {							
-					sqlBuffer.append(String.format(hasMetricName ? GET_TSMETAS_NO_TAGS_NAME_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL, INITIAL_TSUID_START_SQL)); 
-				} else {
-					sqlBuffer.append(String.format(hasMetricName ? GET_TSMETAS_NO_TAGS_NAME_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL, TSUID_START_SQL));
-					binds.add(queryOptions.getNextIndex());
-				}
-			}
-			if(hasMetricName) binds.add(metricName);			
-		} else {
-			StringBuilder keySql = new StringBuilder("SELECT * FROM ( ");
-			prepareGetTSMetasSQL(metricName, tags, binds, keySql, GET_TSMETAS_SQL, mergeOp);
-			keySql.append(") X ");
-			if(queryOptions.getNextIndex()==null) {
-				keySql.append(" WHERE ").append(INITIAL_TSUID_START_SQL);
-			} else {
-				keySql.append(" WHERE ").append(TSUID_START_SQL);
-				binds.add(queryOptions.getNextIndex());
-			}
-			if(tsuid!=null && !tsuid.trim().isEmpty()) {
-				keySql.append("\n AND X.TSUID = ? \n");
-				binds.add(tsuid);
-			}
-			
-			keySql.append(" ORDER BY X.TSUID DESC LIMIT ? ");
-			
-			sqlBuffer.append(keySql.toString());
-		}	
-		
-	}
-		
-	protected void doGetTSMetasSQLTagValues(final boolean firstEntry, final String metricName, Map.Entry<String, String> tag, final List<Object> binds, final StringBuilder sql, final String driverTsMetaSql, String mergeOp) {
-		// // expandPredicate(entry.getKey(), TAGK_SQL_BLOCK, binds),
-		if(!firstEntry) {
-			sql.append("\n ").append(mergeOp).append("  \n");
-			
-		}
-		
-		sql.append(String.format(driverTsMetaSql,  
-				expandPredicate(metricName, METRIC_SQL_BLOCK, binds),
-				expandPredicate(tag.getKey(), TAGK_SQL_BLOCK, binds),
-				expandPredicate(tag.getValue(), TAGV_SQL_BLOCK, binds)
-		));
-	}
 	
-	protected void prepareGetTSMetasSQL(final String metricName, final Map<String, String> tags, final List<Object> binds, final StringBuilder sql, final String driverTsMetaSql, String mergeOp) {
-		Iterator<Map.Entry<String, String>> iter = tags.entrySet().iterator();
-		doGetTSMetasSQLTagValues(true, metricName, iter.next(), binds, sql, driverTsMetaSql, mergeOp);
-		while(iter.hasNext()) {
-			doGetTSMetasSQLTagValues(false, metricName, iter.next(), binds, sql, driverTsMetaSql, mergeOp);
-		}
-	}
+
 	
 	
 	
@@ -1063,42 +1252,34 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		final String _metricName = (metricName==null || metricName.trim().isEmpty()) ? "*" : metricName.trim();
 		final String _tagKey = (tagKey==null || tagKey.trim().isEmpty()) ? "*" : tagKey.trim();
 		final Map<String, String> _tags = (tags==null) ? EMPTY_TAGS : tags;
+		final MetaQueryResultCache.Key cacheKey = resultCache.tagValuesKey(queryContext, _metricName, _tags, _tagKey);
+		final Runnable replay = resultCache.replaying(cacheKey, def, queryContext);
+		if(replay!=null) {
+			// delivered from the dispatcher after returning, like an executed query, rather than before the caller consumes the stream
+			dispatcher.execute(replay);
+			return stream;
+		}
 		
-		this.dispatcher.execute(new Runnable() {
+		this.queryScheduler.submit(queryContext, MetaQueryClass.INTERACTIVE, def, resultCache.capturing(cacheKey, queryContext, new Runnable() {
 			@SuppressWarnings("boxing")
 			public void run() {				
-				final List<Object> binds = new ArrayList<Object>();
-				final StringBuilder sqlBuffer = new StringBuilder(String.format(GET_TAG_VALUES_SQL,
-						expandPredicate(_metricName, METRIC_SQL_BLOCK, binds),
-						expandPredicate(_tagKey, TAGK_SQL_BLOCK, binds)
-				));
-				if(!_tags.isEmpty()) {
-					sqlBuffer.append(" AND EXISTS ( ");
-					boolean first = true;
-					for(Map.Entry<String, String> pair: _tags.entrySet()) {
-						if(!first) sqlBuffer.append(" \nINTERSECT\n ");
-						StringBuilder b = new StringBuilder("( ( ");
-						b.append(expandPredicate(pair.getKey(), " KA.NAME %s ? ", binds));
-						b.append(" ) AND ( ");
-						b.append(expandPredicate(pair.getValue(), " VA.NAME %s ? ", binds));
-						b.append(" ) ) ");
-						sqlBuffer.append(String.format(GET_TAG_FILTER_SQL, b.toString()));
-						first = false;
-						
+				// The adjacency index cannot evaluate tag pair co-occurrence within a series, so tag filters go to the DB
+				if(_tags.isEmpty() && adjacencyIndex.isLoaded()) {
+					try {
+						streamIndexed(UniqueIdType.TAGV, adjacencyIndex.getTagValues(_metricName, _tagKey, startIndex(queryContext), queryContext.getNextMaxLimit() + 1), def, queryContext);
+					} catch (Exception ex) {
+						log.error("Failed to execute getTagValues from the adjacency index", ex);
+						def.accept(new Exception("Failed to execute getTagValues", ex));
 					}
-					sqlBuffer.append(" ) ");
+					return;
 				}
-				sqlBuffer.append(" AND ");
-				if(queryContext.getNextIndex()!=null && !queryContext.getNextIndex().toString().trim().isEmpty()) {
-					sqlBuffer.append(XUID_START_SQL);
-					binds.add(queryContext.getNextIndex().toString().trim());
-				} else {
-					sqlBuffer.append(INITIAL_XUID_START_SQL);
-				}
-				sqlBuffer.append(" ORDER BY X.XUID DESC LIMIT ? ");
+				final QueryShapeCompiler.CompiledQuery query = shapeCompiler.tagValues(_metricName, _tagKey, _tags, queryContext.getNextIndex());
+				final List<Object> binds = query.getBinds();
 				binds.add(queryContext.getNextMaxLimit() + 1);
 				try {
-					final ResultSet rset = sqlWorker.executeQuery(sqlBuffer.toString(), true, binds.toArray(new Object[0]));
+					final long startNanos = System.nanoTime();
+					final ResultSet rset = sqlWorker.executeQuery(query.getSQL(), true, binds.toArray(new Object[binds.size()]));
+					queryAdvisor.record("GET_TAG_VALUES_SQL", query.getSQL(), binds, System.nanoTime()-startNanos);
 					final IndexProvidingIterator<UIDMeta> iter = metaReader.iterateUIDMetas(rset, UniqueIdType.TAGV);
 					try {
 						while(processStream(iter, def, queryContext)) {/* No Op */} 
@@ -1106,11 +1287,11 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 						try { rset.close(); } catch (Exception x) {/* No Op */}
 					}
 				} catch (Exception ex) {
-					log.error("Failed to execute getTagValues (with tags).\nSQL was [{}]", sqlBuffer, ex);
+					log.error("Failed to execute getTagValues (with tags).\nSQL was [{}]", query.getSQL(), ex);
 					def.accept(new Exception("Failed to execute getTagValues", ex));
 				}
 			}
-		});
+		}));
 		return stream;
 	}
 
@@ -1291,7 +1472,7 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 			def.accept(new IllegalArgumentException("The passed type was null"));
 			return stream;
 		}
-		this.dispatcher.execute(new Runnable() {
+		this.queryScheduler.submit(queryContext, MetaQueryClass.INTERACTIVE, def, new Runnable() {
 			public void run() {
 				final List<Object> binds = new ArrayList<Object>();
 				StringBuilder sqlBuffer = new StringBuilder("SELECT * FROM TSD_")
@@ -1309,7 +1490,9 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 				if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(sqlBuffer.toString(), binds));
 				try {
 					
+					final long startNanos = System.nanoTime();
 					final ResultSet rset = sqlWorker.executeQuery(sqlBuffer.toString(), true, binds.toArray(new Object[0]));
+					queryAdvisor.record("FIND_" + type.name() + "_SQL", sqlBuffer.toString(), binds, System.nanoTime()-startNanos);
 					final IndexProvidingIterator<UIDMeta> iter = metaReader.iterateUIDMetas(rset, type);
 					try {
 						while(processStream(iter, def, queryContext)) {/* No Op */} 
@@ -1388,7 +1571,7 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 		File file = new File(codeSourcePath);
 		if( codeSourcePath.endsWith(".jar") && file.exists() && file.canRead() ) {
 			JarFile jar = null;
-			ChannelBuffer contentBuffer = ChannelBuffers.dynamicBuffer(300000);
+			final byte[] copyBuffer = new byte[8192];
 			try {
 				jar = new JarFile(file);
 				final Enumeration<JarEntry> entries = jar.entries(); 
@@ -1407,8 +1590,8 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 							contentFile.getParentFile().mkdirs();
 						}
 						if( contentFile.exists() ) {
-							if( contentFile.lastModified() < contentTime ) {
-								log.debug("File in directory was newer [{}]", name);
+							if( contentFile.length()==contentSize && contentFile.lastModified() >= contentTime ) {
+								log.debug("File in directory was current [{}]", name);
 								fileOlder.incrementAndGet();
 								continue;
 							}
@@ -1426,14 +1609,20 @@ public class SQLCatalogMetricsMetaAPIImpl implements MetricsMetaAPI, UncaughtExc
 						try {
 							fos = new FileOutputStream(contentFile);
 							jis = jar.getInputStream(entry);
-							contentBuffer.writeBytes(jis, contentSize);
-							contentBuffer.readBytes(fos, contentSize);
+							int written = 0;
+							int bytesRead = -1;
+							while((bytesRead = jis.read(copyBuffer))!=-1) {
+								fos.write(copyBuffer, 0, bytesRead);
+								written += bytesRead;
+							}
 							fos.flush();
 							jis.close(); jis = null;
 							fos.close(); fos = null;
+							// stamp the entry time so the next start sees the file as current
+							if(contentTime > 0) contentFile.setLastModified(contentTime);
 							filesLoaded.incrementAndGet();
-							bytesLoaded.addAndGet(contentSize);
-							log.debug("Wrote content file [{}] + with size [{}]", contentFile, contentSize );
+							bytesLoaded.addAndGet(written);
+							log.debug("Wrote content file [{}] + with size [{}]", contentFile, written );
 						} finally {
 							if( jis!=null ) try { jis.close(); } catch (Exception ex) {}
 							if( fos!=null ) try { fos.close(); } catch (Exception ex) {}
@@ -83,6 +83,9 @@ public class SQLWorker {
 	/** A class array of a ResultSet */
 	protected static final Class<?>[] RSET_IFACE = {ResultSet.class};
 	
+	/** The statement tracker bound to the current thread, if any */
+	protected static final ThreadLocal<StatementTracker> statementTracker = new ThreadLocal<StatementTracker>();
+	
 	/**
 	 * Acquires a SQLWorker for the passed DataSource
 	 * @param dataSource The data source this SQLWorker will use
@@ -142,6 +145,55 @@ public class SQLWorker {
 		public boolean onRow(int rowId, ResultSet rset);
 	}
 	
+	/**
+	 * <p>Title: StatementTracker</p>
+	 * <p>Description: Defines an object that is notified of the statements executed by the thread it is bound to,
+	 * typically so that a long running statement can be cancelled from another thread.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.SQLWorker.StatementTracker</code></p>
+	 */
+	public static interface StatementTracker {
+		/**
+		 * Callback when a statement is about to be executed
+		 * @param st The statement
+		 */
+		public void onExecute(Statement st);
+		
+		/**
+		 * Callback when a statement has been closed
+		 * @param st The statement
+		 */
+		public void onClose(Statement st);
+	}
+	
+	/**
+	 * Binds a statement tracker to the current thread
+	 * @param tracker The tracker to bind, or null to unbind the current one
+	 */
+	public static void bindStatementTracker(final StatementTracker tracker) {
+		if(tracker==null) statementTracker.remove();
+		else statementTracker.set(tracker);
+	}
+	
+	/**
+	 * Notifies the current thread's statement tracker, if there is one, that a statement is about to be executed
+	 * @param st The statement
+	 */
+	protected static void trackExecute(final Statement st) {
+		final StatementTracker tracker = statementTracker.get();
+		if(tracker!=null) tracker.onExecute(st);
+	}
+	
+	/**
+	 * Notifies the current thread's statement tracker, if there is one, that a statement has been closed
+	 * @param st The statement
+	 */
+	protected static void trackClose(final Statement st) {
+		final StatementTracker tracker = statementTracker.get();
+		if(tracker!=null) tracker.onClose(st);
+	}
+	
 	/**
 	 * Creates a ResultSet proxy that will close the parent statement and connection when the result set is closed.
 	 * @param rset The resultset to proxy
@@ -235,6 +287,7 @@ public class SQLWorker {
 			ps = conn.prepareStatement(sqlText);	
 			ps.setFetchSize(fetchSize);
 			binderFactory.getBinder(sqlText).bind(ps, args);
+			trackExecute(ps);
 			rset = ps.executeQuery();
 			if(disconnected) {
 				TSDBCachedRowSetImpl crs = new TSDBCachedRowSetImpl();
@@ -247,7 +300,10 @@ public class SQLWorker {
 		} finally {
 			if(disconnected) {				
 				if(rset!=null) try { rset.close(); } catch (Exception x) { /* No Op */ }
-				if(ps!=null) try { ps.close(); } catch (Exception x) { /* No Op */ }
+				if(ps!=null) {
+					try { ps.close(); } catch (Exception x) { /* No Op */ }
+					trackClose(ps);
+				}
 				if(newConn && conn!=null) try { conn.close(); } catch (Exception x) { /* No Op */ }				
 			} 
 		}		
@@ -272,6 +328,7 @@ public class SQLWorker {
 			ps = conn.prepareStatement(sqlText);
 			binderFactory.getBinder(sqlText).bind(ps, args);
 			int rowId = 0;
+			trackExecute(ps);
 			rset = ps.executeQuery();
 			while(rset.next()) {
 				if(!rowHandler.onRow(rowId, rset)) break;
@@ -281,7 +338,10 @@ public class SQLWorker {
 			throw new RuntimeException("SQL Query Failure [" + sqlText + "]", ex);
 		} finally {
 			if(rset!=null) try { rset.close(); } catch (Exception x) { /* No Op */ }
-			if(ps!=null) try { ps.close(); } catch (Exception x) { /* No Op */ }
+			if(ps!=null) {
+				try { ps.close(); } catch (Exception x) { /* No Op */ }
+				trackClose(ps);
+			}
 			if(newConn && conn!=null) try { conn.close(); } catch (Exception x) { /* No Op */ }				
 		}		
 	}
@@ -621,8 +681,8 @@ public class SQLWorker {
 		protected final ClassPool classPool = new ClassPool();
 		/** A cache of binders keyed by the SQL statement */
 		protected final Map<String, PreparedStatementBinder> binders = new ConcurrentHashMap<String, PreparedStatementBinder>();
-		/** A class naming key */
-		protected final AtomicLong serial = new AtomicLong(0L);
+		/** A class naming key, shared by all factories since they define binders in the same class loader */
+		protected static final AtomicLong serial = new AtomicLong(0L);
 		/** The datasource providing connections for this binder factory */
 		protected final DataSource ds;
 		/** The PreparedStatementBinder Ct Interface */
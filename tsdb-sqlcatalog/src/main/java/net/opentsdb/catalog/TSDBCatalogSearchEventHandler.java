@@ -44,12 +44,14 @@ import javax.management.NotificationListener;
 import javax.sql.DataSource;
 
 import net.opentsdb.search.SearchQuery;
+import net.opentsdb.stats.StatsCollector;
 
 import org.helios.tsdb.plugins.event.TSDBEvent;
 import org.helios.tsdb.plugins.event.TSDBEventType;
 import org.helios.tsdb.plugins.event.TSDBSearchEvent;
 import org.helios.tsdb.plugins.handlers.EmptySearchEventHandler;
 import org.helios.tsdb.plugins.service.PluginContext;
+import org.helios.tsdb.plugins.stats.EventLatencyRecorder.Stage;
 import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
 import org.helios.tsdb.plugins.util.SystemClock;
@@ -248,6 +250,17 @@ public class TSDBCatalogSearchEventHandler extends EmptySearchEventHandler imple
 				null);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.tsdb.plugins.handlers.EmptySearchEventHandler#collectStats(net.opentsdb.stats.StatsCollector)
+	 */
+	@Override
+	public void collectStats(StatsCollector collector) {
+		super.collectStats(collector);
+		final CatalogDBInterface db = dbInterface;
+		if(db!=null) db.collectStats(collector);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.tsdb.plugins.handlers.EmptySearchEventHandler#shutdown()
@@ -362,7 +375,8 @@ public class TSDBCatalogSearchEventHandler extends EmptySearchEventHandler imple
 	 */
 	@Override
 	public void onEvent(TSDBEvent event, long sequence, boolean endOfBatch) throws Exception {
-		final long start = System.currentTimeMillis();
+		final long start = startTimer(event);
+		if(tracer.isTracing()) tracer.trace(event, sequence);
 		incrCount(event);
 		if(!EVENT_ORDERING.containsKey(event.eventType)) {
 			log.warn("No event type ordering entry. Not processing Event [{}]", event);
@@ -372,12 +386,14 @@ public class TSDBCatalogSearchEventHandler extends EmptySearchEventHandler imple
 			if(!searchEnabled) return;
 			executeQuery(event.searchQuery, event.deferred);
 		} else {
-			if(!processingQueue.offer(event.asSearchEvent(), 500, TimeUnit.MILLISECONDS)) {
-				log.warn("Time out trying to enqueue event [{}]", event.asSearchEvent());
+			TSDBSearchEvent searchEvent = event.asSearchEvent();
+			searchEvent.enqueued();
+			if(!processingQueue.offer(searchEvent, 500, TimeUnit.MILLISECONDS)) {
+				log.warn("Time out trying to enqueue event [{}]", searchEvent);
 			}
 			//processingQueue.add(event.asSearchEvent());
 		}
-		elapsedTime(event, System.currentTimeMillis()-start);
+		elapsedTime(event, System.nanoTime()-start);
 	}
 	
 	
@@ -406,7 +422,7 @@ public class TSDBCatalogSearchEventHandler extends EmptySearchEventHandler imple
 						}						
 					} while(events.size()<batchSize && ts>System.currentTimeMillis());
 					log.debug("Processing Batch of [{}] Events", events.size());
-					dbInterface.processEvents(conn, events);
+					processBatch(conn, events);
 					events.clear();
 				}
 			} catch (InterruptedException iex) {
@@ -418,7 +434,7 @@ public class TSDBCatalogSearchEventHandler extends EmptySearchEventHandler imple
 						do {
 							Set<TSDBSearchEvent> events = new LinkedHashSet<TSDBSearchEvent>(batchSize);						
 							processingQueue.drainTo(events, batchSize);
-							dbInterface.processEvents(conn, events);						
+							processBatch(conn, events);						
 						} while(!processingQueue.isEmpty() && SystemClock.time() < timeoutEndPeriod);
 					}
 				}
@@ -432,6 +448,22 @@ public class TSDBCatalogSearchEventHandler extends EmptySearchEventHandler imple
 	}
 	
 
+	/**
+	 * Writes a batch of events to the catalog, recording how long each event waited in the
+	 * processing queue and how long the batch took to write and commit
+	 * @param conn The catalog connection
+	 * @param events The events to write
+	 */
+	protected void processBatch(Connection conn, Set<TSDBSearchEvent> events) {
+		final long start = System.nanoTime();
+		for(TSDBSearchEvent ev: events) {
+			if(ev.eventType!=null && ev.enqueuedNanos!=-1) {
+				latency.record(ev.eventType, Stage.BATCH_WAIT, start-ev.enqueuedNanos);
+			}
+		}
+		dbInterface.processEvents(conn, events);
+		latency.record(null, Stage.BATCH_COMMIT, System.nanoTime()-start);
+	}
 	
    /**
      * Executes a search query and returns the deferred for the results
@@ -0,0 +1,573 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import java.util.Arrays;
+
+/**
+ * <p>Title: FQNBitmap</p>
+ * <p>Description: A compressed bitmap of non-negative int FQNIDs. The id space is split into chunks keyed by the 
+ * high 16 bits of each id and each chunk is stored in a sorted <b><code>char</code></b> array while sparse, 
+ * switching to a fixed 8 KB word bitmap once it holds more than {@link #ARRAY_MAX} ids.
+ * This follows the container layout of Roaring bitmaps, trimmed down to the operations the catalog index needs.</p>
+ * <p>Instances are not thread safe. Binary operations never modify their operands.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.FQNBitmap</code></p>
+ */
+
+public class FQNBitmap {
+	/** The high 16 bit chunk keys in ascending order */
+	private int[] keys;
+	/** The chunk containers corresponding to {@link #keys} */
+	private Container[] containers;
+	/** The number of chunks in use */
+	private int size = 0;
+	
+	/** The maximum cardinality of an array container */
+	public static final int ARRAY_MAX = 4096;
+	/** The number of longs in a bitmap container */
+	static final int WORDS = 1024;
+	/** An empty int array const */
+	private static final int[] EMPTY_INT_ARR = {};
+	
+	/**
+	 * Creates a new empty FQNBitmap
+	 */
+	public FQNBitmap() {
+		keys = new int[4];
+		containers = new Container[4];
+	}
+	
+	/**
+	 * Creates a new FQNBitmap with the passed initial chunk capacity
+	 * @param capacity The initial chunk capacity
+	 */
+	private FQNBitmap(final int capacity) {
+		keys = new int[Math.max(capacity, 1)];
+		containers = new Container[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Adds the passed id to this bitmap
+	 * @param id The id to add
+	 * @return true if the id was added, false if it was already present
+	 */
+	public boolean add(final int id) {
+		if(id<0) throw new IllegalArgumentException("Negative id [" + id + "]");
+		final int hb = id >>> 16;
+		int i = find(hb);
+		if(i<0) {
+			i = -i-1;
+			insertAt(i, hb, new ArrayContainer(4));
+		}
+		final Container c = containers[i];
+		final int before = c.cardinality;
+		containers[i] = c.add((char)id);
+		return containers[i].cardinality > before;
+	}
+	
+	/**
+	 * Removes the passed id from this bitmap
+	 * @param id The id to remove
+	 * @return true if the id was removed, false if it was not present
+	 */
+	public boolean remove(final int id) {
+		if(id<0) return false;
+		final int i = find(id >>> 16);
+		if(i<0) return false;
+		final Container c = containers[i];
+		final int before = c.cardinality;
+		final Container n = c.remove((char)id);
+		if(n.cardinality==0) {
+			removeAt(i);
+		} else {
+			containers[i] = n;
+		}
+		return n.cardinality < before;
+	}
+	
+	/**
+	 * Determines if the passed id is in this bitmap
+	 * @param id The id to test
+	 * @return true if present, false otherwise
+	 */
+	public boolean contains(final int id) {
+		if(id<0) return false;
+		final int i = find(id >>> 16);
+		return i>=0 && containers[i].contains((char)id);
+	}
+	
+	/**
+	 * Returns the number of ids in this bitmap
+	 * @return the number of ids
+	 */
+	public int cardinality() {
+		int card = 0;
+		for(int i = 0; i < size; i++) {
+			card += containers[i].cardinality;
+		}
+		return card;
+	}
+	
+	/**
+	 * Indicates if this bitmap is empty
+	 * @return true if empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size==0;
+	}
+	
+	/**
+	 * Returns the ids in this bitmap in ascending order
+	 * @return an array of ids
+	 */
+	public int[] toArray() {
+		if(size==0) return EMPTY_INT_ARR;
+		final int[] arr = new int[cardinality()];
+		int pos = 0;
+		for(int i = 0; i < size; i++) {
+			pos = containers[i].fill(arr, pos, keys[i] << 16);
+		}
+		return arr;
+	}
+	
+	/**
+	 * Returns an estimate of the heap consumed by this bitmap in bytes
+	 * @return the estimated size in bytes
+	 */
+	public long sizeInBytes() {
+		long bytes = 16 + (keys.length * 4) + (containers.length * 8);
+		for(int i = 0; i < size; i++) {
+			bytes += containers[i].sizeInBytes();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Unions the passed bitmap into this bitmap in place
+	 * @param other The bitmap to union in
+	 * @return this bitmap
+	 */
+	public FQNBitmap or(final FQNBitmap other) {
+		for(int j = 0; j < other.size; j++) {
+			final int i = find(other.keys[j]);
+			if(i<0) {
+				insertAt(-i-1, other.keys[j], other.containers[j].copy());
+			} else {
+				containers[i] = containers[i].or(other.containers[j]);
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns a copy of this bitmap
+	 * @return a copy of this bitmap
+	 */
+	public FQNBitmap copy() {
+		final FQNBitmap b = new FQNBitmap(size);
+		for(int i = 0; i < size; i++) {
+			b.keys[i] = keys[i];
+			b.containers[i] = containers[i].copy();
+		}
+		b.size = size;
+		return b;
+	}
+	
+	/**
+	 * Returns a new bitmap containing the ids present in both passed bitmaps
+	 * @param a The first bitmap
+	 * @param b The second bitmap
+	 * @return the intersection
+	 */
+	public static FQNBitmap and(final FQNBitmap a, final FQNBitmap b) {
+		final FQNBitmap r = new FQNBitmap(Math.min(a.size, b.size));
+		int i = 0, j = 0;
+		while(i < a.size && j < b.size) {
+			if(a.keys[i] < b.keys[j]) { i++; continue; }
+			if(a.keys[i] > b.keys[j]) { j++; continue; }
+			final Container c = a.containers[i].and(b.containers[j]);
+			if(c.cardinality>0) r.insertAt(r.size, a.keys[i], c);
+			i++; j++;
+		}
+		return r;
+	}
+	
+	/**
+	 * Returns a new bitmap containing the ids present in <b><code>a</code></b> but not in <b><code>b</code></b>
+	 * @param a The first bitmap
+	 * @param b The bitmap of ids to exclude
+	 * @return the difference
+	 */
+	public static FQNBitmap andNot(final FQNBitmap a, final FQNBitmap b) {
+		final FQNBitmap r = new FQNBitmap(a.size);
+		int j = 0;
+		for(int i = 0; i < a.size; i++) {
+			while(j < b.size && b.keys[j] < a.keys[i]) j++;
+			final Container c = (j < b.size && b.keys[j]==a.keys[i]) ? a.containers[i].andNot(b.containers[j]) : a.containers[i].copy();
+			if(c.cardinality>0) r.insertAt(r.size, a.keys[i], c);
+		}
+		return r;
+	}
+	
+	/**
+	 * Returns the number of ids present in <b><code>a</code></b> but not in <b><code>b</code></b> without materializing the difference
+	 * @param a The first bitmap
+	 * @param b The bitmap of ids to exclude
+	 * @return the cardinality of the difference
+	 */
+	public static int andNotCardinality(final FQNBitmap a, final FQNBitmap b) {
+		int card = 0;
+		int j = 0;
+		for(int i = 0; i < a.size; i++) {
+			while(j < b.size && b.keys[j] < a.keys[i]) j++;
+			if(j < b.size && b.keys[j]==a.keys[i]) {
+				card += a.containers[i].cardinality - a.containers[i].andCardinality(b.containers[j]);
+			} else {
+				card += a.containers[i].cardinality;
+			}
+		}
+		return card;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "FQNBitmap [cardinality=" + cardinality() + ", chunks=" + size + "]";
+	}
+	
+	private int find(final int hb) {
+		return Arrays.binarySearch(keys, 0, size, hb);
+	}
+	
+	private void insertAt(final int i, final int hb, final Container c) {
+		if(size==keys.length) {
+			keys = Arrays.copyOf(keys, size*2);
+			containers = Arrays.copyOf(containers, size*2);
+		}
+		System.arraycopy(keys, i, keys, i+1, size-i);
+		System.arraycopy(containers, i, containers, i+1, size-i);
+		keys[i] = hb;
+		containers[i] = c;
+		size++;
+	}
+	
+	private void removeAt(final int i) {
+		System.arraycopy(keys, i+1, keys, i, size-i-1);
+		System.arraycopy(containers, i+1, containers, i, size-i-1);
+		size--;
+		containers[size] = null;
+	}
+	
+	/**
+	 * <p>Title: Container</p>
+	 * <p>Description: The storage for the low 16 bits of the ids in one chunk</p> 
+	 */
+	abstract static class Container {
+		/** The number of ids in this container */
+		int cardinality = 0;
+		
+		abstract Container add(char x);
+		abstract Container remove(char x);
+		abstract boolean contains(char x);
+		abstract Container copy();
+		abstract int fill(int[] dest, int pos, int high);
+		abstract long sizeInBytes();
+		/** Returns this container's ids as words. Callers must not modify the returned array. */
+		abstract long[] words();
+		
+		Container or(final Container other) {
+			if(this instanceof ArrayContainer && other instanceof ArrayContainer) {
+				return ((ArrayContainer)this).merge((ArrayContainer)other);
+			}
+			final long[] a = words(), b = other.words();
+			final long[] r = new long[WORDS];
+			for(int i = 0; i < WORDS; i++) r[i] = a[i] | b[i];
+			return BitmapContainer.of(r);
+		}
+		
+		Container and(final Container other) {
+			if(this instanceof ArrayContainer) {
+				return ((ArrayContainer)this).filter(other, true);
+			} else if(other instanceof ArrayContainer) {
+				return ((ArrayContainer)other).filter(this, true);
+			}
+			final long[] a = words(), b = other.words();
+			final long[] r = new long[WORDS];
+			for(int i = 0; i < WORDS; i++) r[i] = a[i] & b[i];
+			return BitmapContainer.of(r);
+		}
+		
+		Container andNot(final Container other) {
+			if(this instanceof ArrayContainer) {
+				return ((ArrayContainer)this).filter(other, false);
+			}
+			final long[] a = words(), b = other.words();
+			final long[] r = new long[WORDS];
+			for(int i = 0; i < WORDS; i++) r[i] = a[i] & ~b[i];
+			return BitmapContainer.of(r);
+		}
+		
+		int andCardinality(final Container other) {
+			if(this instanceof ArrayContainer || other instanceof ArrayContainer) {
+				final ArrayContainer ac = (ArrayContainer)(this instanceof ArrayContainer ? this : other);
+				final Container probe = ac==this ? other : this;
+				int card = 0;
+				for(int i = 0; i < ac.cardinality; i++) {
+					if(probe.contains(ac.values[i])) card++;
+				}
+				return card;
+			}
+			final long[] a = words(), b = other.words();
+			int card = 0;
+			for(int i = 0; i < WORDS; i++) card += Long.bitCount(a[i] & b[i]);
+			return card;
+		}
+	}
+	
+	/**
+	 * <p>Title: ArrayContainer</p>
+	 * <p>Description: A sparse container holding a sorted array of low bits</p> 
+	 */
+	static class ArrayContainer extends Container {
+		/** The sorted low bits */
+		char[] values;
+		
+		ArrayContainer(final int capacity) {
+			values = new char[capacity];
+		}
+		
+		@Override
+		Container add(final char x) {
+			int i = Arrays.binarySearch(values, 0, cardinality, x);
+			if(i>=0) return this;
+			if(cardinality >= ARRAY_MAX) {
+				return toBitmap().add(x);
+			}
+			i = -i-1;
+			if(cardinality==values.length) {
+				values = Arrays.copyOf(values, Math.min(Math.max(cardinality*2, 4), ARRAY_MAX));
+			}
+			System.arraycopy(values, i, values, i+1, cardinality-i);
+			values[i] = x;
+			cardinality++;
+			return this;
+		}
+		
+		@Override
+		Container remove(final char x) {
+			final int i = Arrays.binarySearch(values, 0, cardinality, x);
+			if(i<0) return this;
+			System.arraycopy(values, i+1, values, i, cardinality-i-1);
+			cardinality--;
+			return this;
+		}
+		
+		@Override
+		boolean contains(final char x) {
+			return Arrays.binarySearch(values, 0, cardinality, x) >= 0;
+		}
+		
+		@Override
+		Container copy() {
+			final ArrayContainer c = new ArrayContainer(0);
+			c.values = Arrays.copyOf(values, cardinality);
+			c.cardinality = cardinality;
+			return c;
+		}
+		
+		@Override
+		int fill(final int[] dest, int pos, final int high) {
+			for(int i = 0; i < cardinality; i++) {
+				dest[pos++] = high | values[i];
+			}
+			return pos;
+		}
+		
+		@Override
+		long sizeInBytes() {
+			return 24 + (values.length * 2);
+		}
+		
+		@Override
+		long[] words() {
+			final long[] w = new long[WORDS];
+			for(int i = 0; i < cardinality; i++) {
+				w[values[i] >>> 6] |= (1L << values[i]);
+			}
+			return w;
+		}
+		
+		BitmapContainer toBitmap() {
+			final BitmapContainer bc = new BitmapContainer(words());
+			bc.cardinality = cardinality;
+			return bc;
+		}
+		
+		Container merge(final ArrayContainer other) {
+			if(cardinality + other.cardinality > ARRAY_MAX) {
+				final long[] r = words();
+				for(int i = 0; i < other.cardinality; i++) {
+					r[other.values[i] >>> 6] |= (1L << other.values[i]);
+				}
+				return BitmapContainer.of(r);
+			}
+			final ArrayContainer r = new ArrayContainer(cardinality + other.cardinality);
+			int i = 0, j = 0, k = 0;
+			while(i < cardinality && j < other.cardinality) {
+				final char a = values[i], b = other.values[j];
+				if(a < b) { r.values[k++] = a; i++; }
+				else if(a > b) { r.values[k++] = b; j++; }
+				else { r.values[k++] = a; i++; j++; }
+			}
+			while(i < cardinality) r.values[k++] = values[i++];
+			while(j < other.cardinality) r.values[k++] = other.values[j++];
+			r.cardinality = k;
+			return r;
+		}
+		
+		/**
+		 * Returns a new container with this container's values that are (or are not) in the passed container
+		 * @param other The container to probe
+		 * @param keep true to keep values present in <b><code>other</code></b>, false to keep values absent from it
+		 * @return the filtered container
+		 */
+		ArrayContainer filter(final Container other, final boolean keep) {
+			final ArrayContainer r = new ArrayContainer(cardinality);
+			int k = 0;
+			for(int i = 0; i < cardinality; i++) {
+				if(other.contains(values[i])==keep) r.values[k++] = values[i];
+			}
+			r.cardinality = k;
+			return r;
+		}
+	}
+	
+	/**
+	 * <p>Title: BitmapContainer</p>
+	 * <p>Description: A dense container holding a 65536 bit bitmap of low bits</p> 
+	 */
+	static class BitmapContainer extends Container {
+		/** The bitmap words */
+		final long[] bits;
+		
+		BitmapContainer(final long[] bits) {
+			this.bits = bits;
+		}
+		
+		/**
+		 * Creates the most compact container for the passed words
+		 * @param words The bitmap words
+		 * @return a bitmap container, or an array container if the cardinality is low enough
+		 */
+		static Container of(final long[] words) {
+			int card = 0;
+			for(int i = 0; i < WORDS; i++) card += Long.bitCount(words[i]);
+			if(card <= ARRAY_MAX) {
+				final ArrayContainer ac = new ArrayContainer(card);
+				ac.cardinality = card;
+				fillChars(words, ac.values);
+				return ac;
+			}
+			final BitmapContainer bc = new BitmapContainer(words);
+			bc.cardinality = card;
+			return bc;
+		}
+		
+		private static void fillChars(final long[] words, final char[] dest) {
+			int pos = 0;
+			for(int i = 0; i < WORDS; i++) {
+				long w = words[i];
+				while(w!=0) {
+					dest[pos++] = (char)((i << 6) + Long.numberOfTrailingZeros(w));
+					w &= (w - 1);
+				}
+			}
+		}
+		
+		@Override
+		Container add(final char x) {
+			final long mask = 1L << x;
+			final int w = x >>> 6;
+			if((bits[w] & mask)==0) {
+				bits[w] |= mask;
+				cardinality++;
+			}
+			return this;
+		}
+		
+		@Override
+		Container remove(final char x) {
+			final long mask = 1L << x;
+			final int w = x >>> 6;
+			if((bits[w] & mask)!=0) {
+				bits[w] &= ~mask;
+				cardinality--;
+				if(cardinality <= ARRAY_MAX) {
+					return of(bits);
+				}
+			}
+			return this;
+		}
+		
+		@Override
+		boolean contains(final char x) {
+			return (bits[x >>> 6] & (1L << x)) != 0;
+		}
+		
+		@Override
+		Container copy() {
+			final BitmapContainer c = new BitmapContainer(bits.clone());
+			c.cardinality = cardinality;
+			return c;
+		}
+		
+		@Override
+		int fill(final int[] dest, int pos, final int high) {
+			for(int i = 0; i < WORDS; i++) {
+				long w = bits[i];
+				while(w!=0) {
+					dest[pos++] = high | ((i << 6) + Long.numberOfTrailingZeros(w));
+					w &= (w - 1);
+				}
+			}
+			return pos;
+		}
+		
+		@Override
+		long sizeInBytes() {
+			return 24 + (WORDS * 8);
+		}
+		
+		@Override
+		long[] words() {
+			return bits;
+		}
+	}
+}
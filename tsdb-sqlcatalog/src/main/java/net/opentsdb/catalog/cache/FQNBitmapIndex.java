@@ -0,0 +1,605 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import net.opentsdb.catalog.SQLWorker;
+import net.opentsdb.catalog.SQLWorker.ResultSetHandler;
+import net.opentsdb.meta.UIDMeta;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: FQNBitmapIndex</p>
+ * <p>Description: An in-memory inverted index of time series (TSMetas) keyed by FQNID. Each metric name, tag key and 
+ * <b><code>tagk=tagv</code></b> pair is a term in a sorted term dictionary mapped to an {@link FQNBitmap} of the FQNIDs of the 
+ * series using it. TSMeta expressions (<b><code>metric:tagk=tagv,...</code></b>) with <b><code>*</code></b> wildcards and 
+ * <b><code>|</code></b> alternatives are resolved to term range scans, unioned per tag pair and intersected across tag pairs, 
+ * so expression evaluation, matching and overlap counts do not need to join through <b><code>TSD_FQN_TAGPAIR</code></b>.</p>
+ * <p>The index is loaded from the catalog on startup and maintained by the catalog writer through {@link SeriesListener}.
+ * FQNIDs beyond the int range cannot be indexed, in which case the index disables itself and callers fall back to SQL.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.FQNBitmapIndex</code></p>
+ */
+
+public class FQNBitmapIndex implements SeriesListener {
+	/** Instance logger */
+	protected Logger log = LoggerFactory.getLogger(getClass()); 
+	/** A SQLWorker to load the index */
+	protected final SQLWorker sqlWorker;
+	/** The metric name term dictionary */
+	protected final ConcurrentSkipListMap<String, FQNBitmap> metricTerms = new ConcurrentSkipListMap<String, FQNBitmap>();
+	/** The tag key term dictionary */
+	protected final ConcurrentSkipListMap<String, FQNBitmap> tagKeyTerms = new ConcurrentSkipListMap<String, FQNBitmap>();
+	/** The <b><code>tagk=tagv</code></b> pair term dictionary */
+	protected final ConcurrentSkipListMap<String, FQNBitmap> pairTerms = new ConcurrentSkipListMap<String, FQNBitmap>();
+	/** The FQNIDs of indexed series keyed by TSUID */
+	protected final ConcurrentHashMap<String, Integer> fqnIds = new ConcurrentHashMap<String, Integer>();
+	/** The TSUIDs of indexed series keyed by FQNID */
+	protected final ConcurrentHashMap<Integer, String> tsuids = new ConcurrentHashMap<Integer, String>();
+	/** Metric, tag key and tag value names keyed by UID, used to decode the TSUIDs of removed series */
+	protected final ConcurrentHashMap<String, String> metricNames = new ConcurrentHashMap<String, String>(), tagKeyNames = new ConcurrentHashMap<String, String>(), tagValueNames = new ConcurrentHashMap<String, String>();
+	/** Guards the bitmaps which are mutated in place by the writer */
+	protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/** Indicates if the index is enabled */
+	protected final boolean enabled;
+	/** Indicates if the index has been loaded and can serve lookups */
+	protected volatile boolean loaded = false;
+	/** The number of lookups served */
+	protected final AtomicLong lookups = new AtomicLong(0L);
+	
+	/** The configuration property name for enabling the bitmap index */
+	public static final String ENABLED_PROP = "helios.search.catalog.bitmapindex.enabled";
+	/** The default enablement of the bitmap index */
+	public static final boolean DEFAULT_ENABLED = true;
+	
+	/** The delimiter between the tag key and tag value in pair terms */
+	public static final char PAIR_DELIM = '=';
+	/** The highest char, used to bound term dictionary prefix scans */
+	private static final char MAX_CHAR = Character.MAX_VALUE;
+	
+	/** The width of a UID in hex characters */
+	public static final int UID_HEX_WIDTH = TagAdjacencyIndex.UID_HEX_WIDTH;
+	
+	/** The SQL to load the series and their metrics */
+	public static final String LOAD_SERIES_SQL = 
+			"SELECT X.FQNID, X.TSUID, M.XUID, M.NAME FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID";
+	/** The SQL to load the tag pairs of each series */
+	public static final String LOAD_PAIRS_SQL = 
+			"SELECT T.FQNID, K.XUID, K.NAME, V.XUID, V.NAME " + 
+			"FROM TSD_FQN_TAGPAIR T, TSD_TAGPAIR P, TSD_TAGK K, TSD_TAGV V " + 
+			"WHERE T.XUID = P.XUID " + 
+			"AND P.TAGK = K.XUID " + 
+			"AND P.TAGV = V.XUID";
+
+	/**
+	 * Creates a new FQNBitmapIndex and loads it if enabled
+	 * @param sqlWorker A SQLWorker to load the index
+	 */
+	public FQNBitmapIndex(final SQLWorker sqlWorker) {
+		this.sqlWorker = sqlWorker;
+		enabled = ConfigurationHelper.getBooleanSystemThenEnvProperty(ENABLED_PROP, DEFAULT_ENABLED);
+		if(enabled) {
+			load();
+		}
+	}
+	
+	/**
+	 * (Re)loads the index from the catalog
+	 */
+	public void load() {
+		final long start = System.currentTimeMillis();
+		lock.writeLock().lock();
+		try {
+			loaded = false;
+			clear();
+			final AtomicInteger pairs = new AtomicInteger(0);
+			sqlWorker.executeQuery(LOAD_SERIES_SQL, new ResultSetHandler() {
+				@Override
+				public boolean onRow(int rowId, ResultSet rset) {
+					try {
+						final int fqn = toIndexId(rset.getLong(1));
+						final String tsuid = rset.getString(2);
+						fqnIds.put(tsuid, fqn);
+						tsuids.put(fqn, tsuid);
+						metricNames.put(rset.getString(3), rset.getString(4));
+						term(metricTerms, rset.getString(4)).add(fqn);
+					} catch (Exception ex) {
+						throw new RuntimeException("Failed to read series", ex);
+					}
+					return true;
+				}
+			});
+			sqlWorker.executeQuery(LOAD_PAIRS_SQL, new ResultSetHandler() {
+				@Override
+				public boolean onRow(int rowId, ResultSet rset) {
+					try {
+						final int fqn = toIndexId(rset.getLong(1));
+						tagKeyNames.put(rset.getString(2), rset.getString(3));
+						tagValueNames.put(rset.getString(4), rset.getString(5));
+						indexPair(fqn, rset.getString(3), rset.getString(5));
+						pairs.incrementAndGet();
+					} catch (Exception ex) {
+						throw new RuntimeException("Failed to read series tag pairs", ex);
+					}
+					return true;
+				}
+			});
+			loaded = true;
+			log.info("Loaded FQNBitmapIndex with [{}] series, [{}] tag pair terms and [{}] series tag pairs in [{}] ms. Approximate size: [{}] bytes", fqnIds.size(), pairTerms.size(), pairs.get(), System.currentTimeMillis()-start, getSizeInBytes());
+		} catch (Exception ex) {
+			clear();
+			log.warn("Failed to load FQNBitmapIndex. Expression evaluation will use SQL.", ex);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Indicates if the index is loaded and can serve lookups
+	 * @return true if the index is loaded, false otherwise
+	 */
+	public boolean isLoaded() {
+		return enabled && loaded;
+	}
+	
+	/**
+	 * Returns the number of lookups served
+	 * @return the number of lookups served
+	 */
+	public long getLookupCount() {
+		return lookups.get();
+	}
+	
+	/**
+	 * Returns the number of indexed series
+	 * @return the number of indexed series
+	 */
+	public int getSeriesCount() {
+		return fqnIds.size();
+	}
+	
+	/**
+	 * Returns the approximate heap consumed by the term bitmaps in bytes
+	 * @return the approximate size in bytes
+	 */
+	public long getSizeInBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = 0;
+			for(FQNBitmap b: metricTerms.values()) bytes += b.sizeInBytes();
+			for(FQNBitmap b: tagKeyTerms.values()) bytes += b.sizeInBytes();
+			for(FQNBitmap b: pairTerms.values()) bytes += b.sizeInBytes();
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	// ==================================================================================================
+	//  Maintenance
+	// ==================================================================================================
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onSeriesAdded(long, java.lang.String, net.opentsdb.meta.UIDMeta, net.opentsdb.meta.UIDMeta[])
+	 */
+	@Override
+	public void onSeriesAdded(final long fqnId, final String tsuid, final UIDMeta metric, final UIDMeta[] tags) {
+		if(!isLoaded()) return;
+		if(fqnId > Integer.MAX_VALUE) {
+			disable("FQNID [" + fqnId + "] exceeds the indexable range");
+			return;
+		}
+		final int fqn = (int)fqnId;
+		lock.writeLock().lock();
+		try {
+			final Integer prior = fqnIds.put(tsuid, fqn);
+			if(prior!=null && prior.intValue()!=fqn) {
+				unindex(prior, tsuid);
+				fqnIds.put(tsuid, fqn);
+			}
+			tsuids.put(fqn, tsuid);
+			metricNames.put(metric.getUID(), metric.getName());
+			term(metricTerms, metric.getName()).add(fqn);
+			for(int i = 0; i+1 < tags.length; i+=2) {
+				tagKeyNames.put(tags[i].getUID(), tags[i].getName());
+				tagValueNames.put(tags[i+1].getUID(), tags[i+1].getName());
+				indexPair(fqn, tags[i].getName(), tags[i+1].getName());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>The metric and tag pair UIDs are decoded from the TSUID and resolved to names through the UID name maps.</p>
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onSeriesRemoved(java.lang.String)
+	 */
+	@Override
+	public void onSeriesRemoved(final String tsuid) {
+		if(!isLoaded() || tsuid==null) return;
+		lock.writeLock().lock();
+		try {
+			final Integer fqn = fqnIds.get(tsuid);
+			if(fqn!=null) unindex(fqn, tsuid);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onPurge()
+	 */
+	@Override
+	public void onPurge() {
+		lock.writeLock().lock();
+		try {
+			clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes the passed series from all its terms. Caller must hold the write lock.
+	 * @param fqn The FQNID of the series
+	 * @param tsuid The TSUID of the series
+	 */
+	private void unindex(final int fqn, final String tsuid) {
+		fqnIds.remove(tsuid);
+		tsuids.remove(fqn);
+		if(tsuid.length() < UID_HEX_WIDTH) return;
+		clearBit(metricTerms, metricNames.get(tsuid.substring(0, UID_HEX_WIDTH)), fqn);
+		for(int i = UID_HEX_WIDTH; i + (UID_HEX_WIDTH*2) <= tsuid.length(); i += (UID_HEX_WIDTH*2)) {
+			final String key = tagKeyNames.get(tsuid.substring(i, i+UID_HEX_WIDTH));
+			final String value = tagValueNames.get(tsuid.substring(i+UID_HEX_WIDTH, i+(UID_HEX_WIDTH*2)));
+			if(key==null) continue;
+			clearBit(tagKeyTerms, key, fqn);
+			if(value!=null) clearBit(pairTerms, key + PAIR_DELIM + value, fqn);
+		}
+	}
+	
+	/**
+	 * Clears the passed bit from the named term, dropping the term if it becomes empty
+	 * @param dict The term dictionary
+	 * @param term The term
+	 * @param fqn The FQNID to clear
+	 */
+	private static void clearBit(final ConcurrentSkipListMap<String, FQNBitmap> dict, final String term, final int fqn) {
+		if(term==null) return;
+		final FQNBitmap b = dict.get(term);
+		if(b!=null && b.remove(fqn) && b.isEmpty()) {
+			dict.remove(term);
+		}
+	}
+	
+	/**
+	 * Indexes a tag pair of a series. Caller must hold the write lock.
+	 * @param fqn The FQNID of the series
+	 * @param key The tag key name
+	 * @param value The tag value name
+	 */
+	private void indexPair(final int fqn, final String key, final String value) {
+		term(tagKeyTerms, key).add(fqn);
+		term(pairTerms, key + PAIR_DELIM + value).add(fqn);
+	}
+	
+	/**
+	 * Acquires the bitmap for the passed term, creating it if it does not exist
+	 * @param dict The term dictionary
+	 * @param term The term
+	 * @return the term's bitmap
+	 */
+	private static FQNBitmap term(final ConcurrentSkipListMap<String, FQNBitmap> dict, final String term) {
+		FQNBitmap b = dict.get(term);
+		if(b==null) {
+			b = new FQNBitmap();
+			dict.put(term, b);
+		}
+		return b;
+	}
+	
+	/**
+	 * Converts a catalog FQNID to an index id
+	 * @param fqnId The FQNID
+	 * @return the index id
+	 */
+	private static int toIndexId(final long fqnId) {
+		if(fqnId < 0 || fqnId > Integer.MAX_VALUE) throw new IllegalStateException("FQNID [" + fqnId + "] exceeds the indexable range");
+		return (int)fqnId;
+	}
+	
+	/**
+	 * Disables the index, releasing its memory
+	 * @param reason The reason the index is being disabled
+	 */
+	private void disable(final String reason) {
+		lock.writeLock().lock();
+		try {
+			loaded = false;
+			clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.warn("FQNBitmapIndex disabled: {}. Expression evaluation will use SQL.", reason);
+	}
+	
+	/**
+	 * Clears all index state. Caller must hold the write lock.
+	 */
+	private void clear() {
+		metricTerms.clear();
+		tagKeyTerms.clear();
+		pairTerms.clear();
+		fqnIds.clear();
+		tsuids.clear();
+		metricNames.clear();
+		tagKeyNames.clear();
+		tagValueNames.clear();
+	}
+	
+	// ==================================================================================================
+	//  Lookups
+	// ==================================================================================================
+	
+	/**
+	 * Resolves the FQNIDs of the series matching the passed expression
+	 * @param metricExpr The metric name expression
+	 * @param tags The tag key and value expressions, all of which must match
+	 * @return a new bitmap of the matching FQNIDs
+	 */
+	public FQNBitmap resolve(final String metricExpr, final Map<String, String> tags) {
+		lookups.incrementAndGet();
+		lock.readLock().lock();
+		try {
+			return doResolve(metricExpr, tags);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Determines if the series with the passed TSUID matches the passed expression.
+	 * Each term is a single bit test so no bitmaps are materialized.
+	 * @param metricExpr The metric name expression
+	 * @param tags The tag key and value expressions, all of which must match
+	 * @param tsuid The TSUID of the series to test
+	 * @return true if the series matches, false otherwise
+	 */
+	public boolean match(final String metricExpr, final Map<String, String> tags, final String tsuid) {
+		lookups.incrementAndGet();
+		final Integer fqn = fqnIds.get(tsuid);
+		if(fqn==null) return false;
+		lock.readLock().lock();
+		try {
+			if(!anyContains(terms(metricTerms, metricExpr), fqn)) return false;
+			for(Map.Entry<String, String> tag: tags.entrySet()) {
+				if(!anyContains(pairTerms(tag.getKey(), tag.getValue()), fqn)) return false;
+			}
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of series matching the first expression that do not match the second
+	 * @param metricOne The first metric name expression
+	 * @param tagsOne The first tag expressions
+	 * @param metricTwo The second metric name expression
+	 * @param tagsTwo The second tag expressions
+	 * @return the number of series in the first expression and not in the second
+	 */
+	public long overlap(final String metricOne, final Map<String, String> tagsOne, final String metricTwo, final Map<String, String> tagsTwo) {
+		lookups.incrementAndGet();
+		lock.readLock().lock();
+		try {
+			return FQNBitmap.andNotCardinality(doResolve(metricOne, tagsOne), doResolve(metricTwo, tagsTwo));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns a page of the passed matched series in descending TSUID order
+	 * @param matched The matched FQNIDs
+	 * @param startTsuid The exclusive upper bound TSUID to page from, or null for the first page
+	 * @param limit The maximum number of results
+	 * @return the FQNIDs of the page in descending TSUID order
+	 */
+	public List<Long> page(final FQNBitmap matched, final String startTsuid, final int limit) {
+		if(limit < 1 || matched.isEmpty()) return Collections.emptyList();
+		final TreeMap<String, Integer> top = new TreeMap<String, Integer>();
+		for(final int fqn: matched.toArray()) {
+			final String tsuid = tsuids.get(fqn);
+			if(tsuid==null || (startTsuid!=null && tsuid.compareTo(startTsuid) >= 0)) continue;
+			if(top.size() < limit) {
+				top.put(tsuid, fqn);
+			} else if(tsuid.compareTo(top.firstKey()) > 0) {
+				top.pollFirstEntry();
+				top.put(tsuid, fqn);
+			}
+		}
+		final List<Long> page = new ArrayList<Long>(top.size());
+		for(Integer fqn: top.descendingMap().values()) {
+			page.add(fqn.longValue());
+		}
+		return page;
+	}
+	
+	/**
+	 * Resolves the FQNIDs of the series matching the passed expression. Caller must hold the read lock.
+	 * @param metricExpr The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @return a new bitmap of the matching FQNIDs
+	 */
+	private FQNBitmap doResolve(final String metricExpr, final Map<String, String> tags) {
+		FQNBitmap result = union(terms(metricTerms, metricExpr));
+		for(Map.Entry<String, String> tag: tags.entrySet()) {
+			if(result.isEmpty()) break;
+			result = FQNBitmap.and(result, union(pairTerms(tag.getKey(), tag.getValue())));
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns a new bitmap which is the union of the passed term bitmaps
+	 * @param bitmaps The term bitmaps
+	 * @return the union
+	 */
+	private static FQNBitmap union(final List<FQNBitmap> bitmaps) {
+		if(bitmaps.isEmpty()) return new FQNBitmap();
+		final FQNBitmap result = bitmaps.get(0).copy();
+		for(int i = 1; i < bitmaps.size(); i++) {
+			result.or(bitmaps.get(i));
+		}
+		return result;
+	}
+	
+	/**
+	 * Determines if any of the passed term bitmaps contain the passed FQNID
+	 * @param bitmaps The term bitmaps
+	 * @param fqn The FQNID
+	 * @return true if any bitmap contains the FQNID
+	 */
+	private static boolean anyContains(final List<FQNBitmap> bitmaps, final int fqn) {
+		for(FQNBitmap b: bitmaps) {
+			if(b.contains(fqn)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the bitmaps of the terms in the passed dictionary matching the passed expression
+	 * @param dict The term dictionary
+	 * @param expr The expression, supporting <b><code>*</code></b> wildcards and <b><code>|</code></b> alternatives
+	 * @return the matching term bitmaps
+	 */
+	private static List<FQNBitmap> terms(final ConcurrentSkipListMap<String, FQNBitmap> dict, final String expr) {
+		final List<FQNBitmap> matched = new ArrayList<FQNBitmap>();
+		for(String alt: alternatives(expr)) {
+			final int wc = alt.indexOf('*');
+			if(wc==-1) {
+				final FQNBitmap b = dict.get(alt);
+				if(b!=null) matched.add(b);
+				continue;
+			}
+			final Pattern p = Pattern.compile(TagPredicateCache.PredicateMatcher.likeToRegex(alt.replace('*', '%')));
+			for(Map.Entry<String, FQNBitmap> e: prefixScan(dict, alt.substring(0, wc)).entrySet()) {
+				if(p.matcher(e.getKey()).matches()) matched.add(e.getValue());
+			}
+		}
+		return matched;
+	}
+	
+	/**
+	 * Returns the bitmaps of the pair terms matching the passed tag key and value expressions
+	 * @param keyExpr The tag key expression
+	 * @param valueExpr The tag value expression
+	 * @return the matching pair term bitmaps
+	 */
+	private List<FQNBitmap> pairTerms(final String keyExpr, final String valueExpr) {
+		final List<FQNBitmap> matched = new ArrayList<FQNBitmap>();
+		final List<String> valueAlts = alternatives(valueExpr);
+		final TagPredicateCache.PredicateMatcher valueMatcher = new TagPredicateCache.PredicateMatcher(valueExpr);
+		// A bare wildcard value only requires the tag key
+		if(valueAlts.contains("*")) {
+			return terms(tagKeyTerms, keyExpr);
+		}
+		for(String keyAlt: alternatives(keyExpr)) {
+			final boolean exactKey = keyAlt.indexOf('*')==-1;
+			if(exactKey) {
+				for(String valueAlt: valueAlts) {
+					final int wc = valueAlt.indexOf('*');
+					if(wc==-1) {
+						final FQNBitmap b = pairTerms.get(keyAlt + PAIR_DELIM + valueAlt);
+						if(b!=null) matched.add(b);
+					} else {
+						final int vstart = keyAlt.length() + 1;
+						final Pattern p = Pattern.compile(TagPredicateCache.PredicateMatcher.likeToRegex(valueAlt.replace('*', '%')));
+						for(Map.Entry<String, FQNBitmap> e: prefixScan(pairTerms, keyAlt + PAIR_DELIM + valueAlt.substring(0, wc)).entrySet()) {
+							if(p.matcher(e.getKey().substring(vstart)).matches()) matched.add(e.getValue());
+						}
+					}
+				}
+			} else {
+				final Pattern keyPattern = Pattern.compile(TagPredicateCache.PredicateMatcher.likeToRegex(keyAlt.replace('*', '%')));
+				for(Map.Entry<String, FQNBitmap> e: prefixScan(pairTerms, keyAlt.substring(0, keyAlt.indexOf('*'))).entrySet()) {
+					final String term = e.getKey();
+					final int delim = term.indexOf(PAIR_DELIM);
+					if(keyPattern.matcher(term.substring(0, delim)).matches() && valueMatcher.matches(term.substring(delim+1))) {
+						matched.add(e.getValue());
+					}
+				}
+			}
+		}
+		return matched;
+	}
+	
+	/**
+	 * Returns the entries in the passed dictionary starting with the passed prefix
+	 * @param dict The term dictionary
+	 * @param prefix The term prefix
+	 * @return the entries starting with the prefix
+	 */
+	private static NavigableMap<String, FQNBitmap> prefixScan(final ConcurrentSkipListMap<String, FQNBitmap> dict, final String prefix) {
+		if(prefix.isEmpty()) return dict;
+		return dict.subMap(prefix, true, prefix + MAX_CHAR, false);
+	}
+	
+	/**
+	 * Splits the passed expression into its <b><code>|</code></b> separated alternatives
+	 * @param expr The expression
+	 * @return the alternatives
+	 */
+	private static List<String> alternatives(final String expr) {
+		final List<String> alts = new ArrayList<String>(2);
+		final StringTokenizer st = new StringTokenizer(expr.replace(" ", ""), "|", false);
+		while(st.hasMoreTokens()) {
+			alts.add(st.nextToken());
+		}
+		return alts;
+	}
+}
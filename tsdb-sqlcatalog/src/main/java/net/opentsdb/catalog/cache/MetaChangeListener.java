@@ -0,0 +1,51 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import net.opentsdb.meta.UIDMeta;
+
+/**
+ * <p>Title: MetaChangeListener</p>
+ * <p>Description: Defines a listener notified by the catalog writer when existing TSMetas or UIDMetas are updated, 
+ * or UIDMetas are deleted. Notifications are only issued after the enclosing transaction has committed.
+ * New and deleted time series are published through {@link SeriesListener}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.MetaChangeListener</code></p>
+ */
+
+public interface MetaChangeListener {
+	/**
+	 * Callback when an existing TSMeta is updated
+	 * @param tsuid The TSUID of the updated TSMeta
+	 */
+	public void onTSMetaChanged(String tsuid);
+	
+	/**
+	 * Callback when an existing UIDMeta is updated or deleted
+	 * @param uidMeta The updated or deleted UIDMeta
+	 */
+	public void onUIDMetaChanged(UIDMeta uidMeta);
+}
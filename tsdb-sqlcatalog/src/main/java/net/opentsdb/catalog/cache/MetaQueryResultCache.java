@@ -0,0 +1,915 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import net.opentsdb.catalog.cache.TagPredicateCache.PredicateMatcher;
+import net.opentsdb.meta.TSMeta;
+import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.meta.api.QueryContext;
+import net.opentsdb.stats.StatsCollector;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+import org.helios.tsdb.plugins.cache.CacheStatistics;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Stream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * <p>Title: MetaQueryResultCache</p>
+ * <p>Description: Caches single pages of TSMeta and tag value query results, keyed by the normalized query expression 
+ * (tags sorted, alternatives sorted, whitespace removed) plus the {@link QueryContext} paging position. Continuous queries
+ * and queries resuming an open cursor are not cached.</p>
+ * <p>The cache is bounded by the estimated memory weight of the results rather than the entry count, and is kept 
+ * consistent by the catalog writer: a new series evicts only the entries whose expression it satisfies, and a changed
+ * or deleted TSMeta or UIDMeta evicts the entries whose results reference it, or whose expression its name satisfies.
+ * Results captured while a relevant change commits are discarded rather than cached.</p> 
+ * <p>Cached pages hold the TSMetas and UIDMetas the query streamed, not copies, and every replay of a page delivers
+ * the same instances. Consumers must treat them as read-only.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.MetaQueryResultCache</code></p>
+ */
+
+public class MetaQueryResultCache implements SeriesListener, MetaChangeListener, RemovalListener<String, MetaQueryResultCache.ResultEntry>, Weigher<String, MetaQueryResultCache.ResultEntry> {
+	/** Instance logger */
+	protected Logger log = LoggerFactory.getLogger(getClass());
+	/** Indicates if the cache is enabled */
+	protected final boolean enabled;
+	/** The underlying guava cache of result pages keyed by the normalized query key */
+	protected final Cache<String, ResultEntry> cache;
+	/** The estimated bytes held by the cache */
+	protected final AtomicLong bytes = new AtomicLong(0L);
+	/** The cache keys referencing each TSUID or UID found in their results */
+	protected final ConcurrentHashMap<String, Set<String>> references = new ConcurrentHashMap<String, Set<String>>();
+	/** The cache keys indexed by the exact names, or wildcard tokens, of their expressions. See {@link Key#tokens} */
+	protected final ConcurrentHashMap<String, Set<String>> expressions = new ConcurrentHashMap<String, Set<String>>();
+	/** Result captures in progress */
+	protected final Set<Capture> pendingCaptures = Collections.newSetFromMap(new ConcurrentHashMap<Capture, Boolean>());
+	/** The cache stats ObjectName if stats are enabled */
+	protected final ObjectName objectName;
+	/** The number of entries invalidated by catalog changes */
+	protected final AtomicLong invalidations = new AtomicLong(0L);
+	
+	/** The result capture bound to the current query thread */
+	private static final ThreadLocal<Capture> currentCapture = new ThreadLocal<Capture>();
+	
+	/** The configuration property name for the enablement of the result cache */
+	public static final String ENABLED_PROP = "helios.search.catalog.resultcache.enabled";
+	/** The configuration property name for the maximum estimated bytes held by the result cache */
+	public static final String MAX_BYTES_PROP = "helios.search.catalog.resultcache.maxbytes";
+	/** The configuration property name for the concurrency of the result cache */
+	public static final String CONCURRENCY_PROP = "helios.search.catalog.resultcache.concurrency";
+	/** The configuration property name for the stats enablement of the result cache */
+	public static final String STATS_ENABLED_PROP = "helios.search.catalog.resultcache.stats";
+	
+	/** The default enablement of the result cache */
+	public static final boolean DEFAULT_ENABLED = true;
+	/** The default maximum estimated bytes held by the result cache */
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+	/** The default concurrency of the result cache */
+	public static final int DEFAULT_CONCURRENCY = 4;
+	/** The default stats enablement of the result cache */
+	public static final boolean DEFAULT_STATS_ENABLED = true;
+	
+	/** The key kind for TSMeta queries */
+	public static final String KIND_TSMETAS = "TSMETAS";
+	/** The key kind for tag value queries */
+	public static final String KIND_TAGVALUES = "TAGVALUES";
+	
+	/** The expression index token prefix for metric names */
+	static final String TOKEN_METRIC = "M:";
+	/** The expression index token prefix for tag keys */
+	static final String TOKEN_TAGK = "K:";
+	/** The expression index token prefix for tag values */
+	static final String TOKEN_TAGV = "V:";
+	/** The expression index token suffix for expressions containing wildcards */
+	static final String TOKEN_WILDCARD = "*";
+	/** The expression index token for tag value query keys */
+	static final String TOKEN_TAGVALUES_KIND = "KIND:" + KIND_TAGVALUES;
+	
+	/** The estimated fixed overhead of an entry in bytes */
+	private static final int ENTRY_OVERHEAD = 256;
+	/** The estimated fixed size of a TSMeta in bytes, excluding strings and tags */
+	private static final int TSMETA_SIZE = 160;
+	/** The estimated fixed size of a UIDMeta in bytes, excluding strings */
+	private static final int UIDMETA_SIZE = 96;
+	/** The estimated size of a String in bytes, excluding its characters */
+	private static final int STRING_SIZE = 40;
+	
+	/**
+	 * Creates a new MetaQueryResultCache
+	 */
+	public MetaQueryResultCache() {
+		enabled = ConfigurationHelper.getBooleanSystemThenEnvProperty(ENABLED_PROP, DEFAULT_ENABLED);
+		final long maxBytes = ConfigurationHelper.getLongSystemThenEnvProperty(MAX_BYTES_PROP, DEFAULT_MAX_BYTES);
+		final int concurrency = ConfigurationHelper.getIntSystemThenEnvProperty(CONCURRENCY_PROP, DEFAULT_CONCURRENCY);
+		final boolean stats = ConfigurationHelper.getBooleanSystemThenEnvProperty(STATS_ENABLED_PROP, DEFAULT_STATS_ENABLED);
+		final CacheBuilder<String, ResultEntry> builder = CacheBuilder.newBuilder()
+			.concurrencyLevel(concurrency)
+			.maximumWeight(maxBytes)
+			.weigher(this)
+			.removalListener(this);
+		if(stats) builder.recordStats();
+		cache = builder.build();
+		if(stats && enabled) {
+			objectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=MetaQueryResultCache"));
+			JMXHelper.registerMBean(objectName, new CacheStatistics(cache, objectName, bytes));
+		} else {
+			objectName = null;
+		}
+	}
+	
+	/**
+	 * Creates the cache key for a TSMeta query
+	 * @param queryContext The query context
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param tsuid The optional TSUID to match
+	 * @return the key or null if the query is not cacheable
+	 */
+	public Key tsMetasKey(final QueryContext queryContext, final String metricName, final Map<String, String> tags, final String tsuid) {
+		if(!isCacheable(queryContext)) return null;
+		return new Key(KIND_TSMETAS, queryContext, metricName, tags, null, tsuid);
+	}
+	
+	/**
+	 * Creates the cache key for a tag value query
+	 * @param queryContext The query context
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param tagKey The expression of the tag key to return the values of
+	 * @return the key or null if the query is not cacheable
+	 */
+	public Key tagValuesKey(final QueryContext queryContext, final String metricName, final Map<String, String> tags, final String tagKey) {
+		if(!isCacheable(queryContext)) return null;
+		return new Key(KIND_TAGVALUES, queryContext, metricName, tags, tagKey, null);
+	}
+	
+	/**
+	 * Determines if a query with the passed context can be cached
+	 * @param queryContext The query context
+	 * @return true if cacheable, false otherwise
+	 */
+	protected boolean isCacheable(final QueryContext queryContext) {
+		return enabled && !queryContext.isContinuous() && queryContext.getCursorId()==null;
+	}
+	
+	/**
+	 * Delivers the cached result page for the passed key, if there is one, into the passed deferred,
+	 * advancing the query context as if the query had been executed. The delivered items are shared and read-only.
+	 * @param key The cache key, ignored if null
+	 * @param def The deferred to deliver into
+	 * @param queryContext The query context
+	 * @return true if the page was delivered from the cache, false if the query should be executed
+	 */
+	public <T> boolean replay(final Key key, final Deferred<T, Stream<T>> def, final QueryContext queryContext) {
+		if(key==null) return false;
+		final ResultEntry entry = cache.getIfPresent(key.id);
+		if(entry==null) return false;
+		replay(entry, def, queryContext);
+		return true;
+	}
+	
+	/**
+	 * Returns a task that delivers the cached result page for the passed key into the passed deferred. The page is looked up
+	 * now and delivered when the task runs, so the task can be dispatched like a query and the caller can consume the stream
+	 * before the page arrives. The delivered items are shared and read-only.
+	 * @param key The cache key, ignored if null
+	 * @param def The deferred to deliver into
+	 * @param queryContext The query context
+	 * @return the delivering task, or null if there is no cached page and the query should be executed
+	 */
+	public <T> Runnable replaying(final Key key, final Deferred<T, Stream<T>> def, final QueryContext queryContext) {
+		if(key==null) return null;
+		final ResultEntry entry = cache.getIfPresent(key.id);
+		if(entry==null) return null;
+		return new Runnable() {
+			public void run() {
+				replay(entry, def, queryContext);
+			}
+		};
+	}
+	
+	/**
+	 * Delivers a cached result page into the passed deferred, advancing the query context as if the query had been executed
+	 * @param entry The cached page
+	 * @param def The deferred to deliver into
+	 * @param queryContext The query context
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> void replay(final ResultEntry entry, final Deferred<T, Stream<T>> def, final QueryContext queryContext) {
+		for(Object item: entry.items) {
+			def.accept((T)item);
+		}
+		queryContext.setExhausted(entry.exhausted).setNextIndex(entry.nextIndex).incrementCummulative(entry.items.length);
+		queryContext.addCtx("ResultCacheHit", System.currentTimeMillis());
+		def.flush();
+	}
+	
+	/**
+	 * Wraps the passed query so that the page it streams is captured into the cache under the passed key
+	 * @param key The cache key. If null the query is returned unwrapped.
+	 * @param queryContext The query context
+	 * @param query The query
+	 * @return the capturing query
+	 */
+	public Runnable capturing(final Key key, final QueryContext queryContext, final Runnable query) {
+		if(key==null) return query;
+		return new Runnable() {
+			public void run() {
+				final Capture capture = new Capture(key);
+				pendingCaptures.add(capture);
+				currentCapture.set(capture);
+				try {
+					query.run();
+				} finally {
+					currentCapture.remove();
+					// the capture stays pending until its page is stored so that changes committing in between mark it stale
+					try {
+						complete(capture, queryContext);
+					} finally {
+						pendingCaptures.remove(capture);
+					}
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Returns the result capture bound to the current query thread
+	 * @return the current capture or null if the current query is not being captured
+	 */
+	public static Capture currentCapture() {
+		return currentCapture.get();
+	}
+	
+	/**
+	 * Caches a completed capture if it holds exactly one page and was not invalidated while running.
+	 * The entry is stored and indexed before the staleness is checked again, so a change committing
+	 * concurrently either finds the indexed entry or has already marked the capture stale.
+	 * @param capture The completed capture
+	 * @param queryContext The query context the page was streamed to
+	 */
+	protected void complete(final Capture capture, final QueryContext queryContext) {
+		if(capture.stale || capture.pages!=1 || queryContext.isExpired()) return;
+		final Object[] items = capture.items.toArray();
+		final ResultEntry entry = new ResultEntry(capture.key, items, queryContext.isExhausted(), queryContext.getNextIndex());
+		bytes.addAndGet(entry.weight);
+		cache.put(capture.key.id, entry);
+		for(String ref: entry.refs) {
+			index(references, ref, capture.key.id);
+		}
+		for(String token: capture.key.tokens) {
+			index(expressions, token, capture.key.id);
+		}
+		if(capture.stale) invalidate(capture.key.id);
+	}
+	
+	/**
+	 * Adds a cache key id to the passed index
+	 * @param index The index to add to
+	 * @param token The token to index the key id under
+	 * @param id The cache key id
+	 */
+	protected static void index(final ConcurrentHashMap<String, Set<String>> index, final String token, final String id) {
+		Set<String> keys = index.get(token);
+		if(keys==null) {
+			final Set<String> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			keys = index.putIfAbsent(token, newKeys);
+			if(keys==null) keys = newKeys;
+		}
+		keys.add(id);
+	}
+	
+	/**
+	 * Removes a cache key id from the passed index
+	 * @param index The index to remove from
+	 * @param token The token the key id is indexed under
+	 * @param id The cache key id
+	 */
+	protected static void unindex(final ConcurrentHashMap<String, Set<String>> index, final String token, final String id) {
+		final Set<String> keys = index.get(token);
+		if(keys!=null) {
+			keys.remove(id);
+			if(keys.isEmpty()) index.remove(token, keys);
+		}
+	}
+	
+	/**
+	 * Returns the cached entries indexed under the exact name token or the wildcard token of the passed prefix
+	 * @param prefix The token prefix, e.g. {@link #TOKEN_METRIC}
+	 * @param name The UID name
+	 * @return the candidate entries
+	 */
+	protected List<ResultEntry> candidates(final String prefix, final String name) {
+		final List<ResultEntry> entries = new ArrayList<ResultEntry>();
+		collect(entries, prefix + TOKEN_WILDCARD);
+		if(name!=null) collect(entries, prefix + name);
+		return entries;
+	}
+	
+	/**
+	 * Adds the cached entries indexed under the passed token to the passed list
+	 * @param entries The list to add to
+	 * @param token The expression index token
+	 */
+	protected void collect(final List<ResultEntry> entries, final String token) {
+		final Set<String> keys = expressions.get(token);
+		if(keys==null) return;
+		for(String id: keys) {
+			final ResultEntry entry = cache.getIfPresent(id);
+			if(entry!=null) entries.add(entry);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Evicts the entries, and discards the pending captures, whose expression the new series satisfies</p>
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onSeriesAdded(long, java.lang.String, net.opentsdb.meta.UIDMeta, net.opentsdb.meta.UIDMeta[])
+	 */
+	@Override
+	public void onSeriesAdded(final long fqnId, final String tsuid, final UIDMeta metric, final UIDMeta[] tags) {
+		if(!enabled) return;
+		for(Capture capture: pendingCaptures) {
+			if(capture.key.matchesSeries(tsuid, metric, tags)) capture.stale = true;
+		}
+		for(ResultEntry entry: candidates(TOKEN_METRIC, metric==null ? null : metric.getName())) {
+			if(entry.key.matchesSeries(tsuid, metric, tags)) invalidate(entry.key.id);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Evicts the TSMeta entries holding the removed series and all tag value entries, since the removed series' 
+	 * tag values are not known.</p>
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onSeriesRemoved(java.lang.String)
+	 */
+	@Override
+	public void onSeriesRemoved(final String tsuid) {
+		if(!enabled) return;
+		discardPendingCaptures();
+		invalidateReferences(tsuid);
+		final List<ResultEntry> entries = new ArrayList<ResultEntry>();
+		collect(entries, TOKEN_TAGVALUES_KIND);
+		for(ResultEntry entry: entries) {
+			invalidate(entry.key.id);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onPurge()
+	 */
+	@Override
+	public void onPurge() {
+		discardPendingCaptures();
+		cache.invalidateAll();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.cache.MetaChangeListener#onTSMetaChanged(java.lang.String)
+	 */
+	@Override
+	public void onTSMetaChanged(final String tsuid) {
+		if(!enabled) return;
+		discardPendingCaptures();
+		invalidateReferences(tsuid);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Evicts the entries whose results reference the UID, and those whose expression the (possibly new) name satisfies</p>
+	 * @see net.opentsdb.catalog.cache.MetaChangeListener#onUIDMetaChanged(net.opentsdb.meta.UIDMeta)
+	 */
+	@Override
+	public void onUIDMetaChanged(final UIDMeta uidMeta) {
+		if(!enabled) return;
+		discardPendingCaptures();
+		invalidateReferences(uidMeta.getUID());
+		for(ResultEntry entry: candidates(Key.tokenPrefix(uidMeta.getType()), uidMeta.getName())) {
+			if(entry.key.matchesName(uidMeta.getType(), uidMeta.getName())) invalidate(entry.key.id);
+		}
+	}
+	
+	/**
+	 * Marks all pending captures as stale since a change may have been missed by their reads
+	 */
+	protected void discardPendingCaptures() {
+		for(Capture capture: pendingCaptures) {
+			capture.stale = true;
+		}
+	}
+	
+	/**
+	 * Evicts the entries whose results reference the passed TSUID or UID
+	 * @param ref The TSUID or UID
+	 */
+	protected void invalidateReferences(final String ref) {
+		if(ref==null) return;
+		final Set<String> keys = references.remove(ref);
+		if(keys==null) return;
+		for(String id: keys) {
+			invalidate(id);
+		}
+	}
+	
+	/**
+	 * Evicts the entry with the passed id
+	 * @param id The entry id
+	 */
+	protected void invalidate(final String id) {
+		if(cache.asMap().remove(id)!=null) {
+			invalidations.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Evicts all entries
+	 */
+	public void clear() {
+		discardPendingCaptures();
+		cache.invalidateAll();
+	}
+	
+	/**
+	 * Returns the number of entries invalidated by catalog changes
+	 * @return the number of invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+	
+	/**
+	 * Returns the estimated bytes held by the cache
+	 * @return the estimated bytes held
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+	
+	/**
+	 * Records this cache's stats to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		CacheStatistics.collectStats(collector, "metaquery", cache);
+	}
+	
+	/**
+	 * Unregisters the cache stats
+	 */
+	public void shutdown() {
+		cache.invalidateAll();
+		if(objectName!=null) try { JMXHelper.unregisterMBean(objectName); } catch (Exception x) {/* No Op */}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see com.google.common.cache.Weigher#weigh(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public int weigh(final String key, final ResultEntry value) {
+		return value.weight;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>Maintains the held bytes, the reference index and the expression index. A replaced entry's references are 
+	 * left in place since its replacement is indexed under the same id.</p>
+	 * @see com.google.common.cache.RemovalListener#onRemoval(com.google.common.cache.RemovalNotification)
+	 */
+	@Override
+	public void onRemoval(final RemovalNotification<String, ResultEntry> notification) {
+		final ResultEntry entry = notification.getValue();
+		if(entry==null) return;
+		bytes.addAndGet(-entry.weight);
+		if(notification.getCause()==RemovalCause.REPLACED) return;
+		for(String ref: entry.refs) {
+			unindex(references, ref, entry.key.id);
+		}
+		for(String token: entry.key.tokens) {
+			unindex(expressions, token, entry.key.id);
+		}
+	}
+	
+	/**
+	 * Estimates the heap size of a String
+	 * @param s The string
+	 * @return the estimated bytes
+	 */
+	static int size(final String s) {
+		return s==null ? 0 : STRING_SIZE + (s.length() * 2);
+	}
+	
+	/**
+	 * Estimates the heap size of a UIDMeta
+	 * @param uidMeta The UIDMeta
+	 * @return the estimated bytes
+	 */
+	static int size(final UIDMeta uidMeta) {
+		if(uidMeta==null) return 0;
+		return UIDMETA_SIZE + size(uidMeta.getUID()) + size(uidMeta.getName()) + size(uidMeta.getDisplayName()) 
+				+ size(uidMeta.getDescription()) + size(uidMeta.getNotes()) + size(uidMeta.getCustom());
+	}
+	
+	/**
+	 * Estimates the heap size of a TSMeta, including its metric and tag UIDMetas
+	 * @param tsMeta The TSMeta
+	 * @return the estimated bytes
+	 */
+	static int size(final TSMeta tsMeta) {
+		int size = TSMETA_SIZE + size(tsMeta.getTSUID()) + size(tsMeta.getDisplayName()) + size(tsMeta.getDescription()) 
+				+ size(tsMeta.getNotes()) + size(tsMeta.getUnits()) + size(tsMeta.getDataType()) + size(tsMeta.getCustom())
+				+ size(tsMeta.getMetric());
+		final List<UIDMeta> tags = tsMeta.getTags();
+		if(tags!=null) {
+			for(UIDMeta tag: tags) {
+				size += size(tag);
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Estimates the heap size of a custom map
+	 * @param custom The map
+	 * @return the estimated bytes
+	 */
+	static int size(final Map<String, String> custom) {
+		if(custom==null || custom.isEmpty()) return 0;
+		int size = 48;
+		for(Map.Entry<String, String> e: custom.entrySet()) {
+			size += 32 + size(e.getKey()) + size(e.getValue());
+		}
+		return size;
+	}
+	
+	/**
+	 * Normalizes a name expression by removing whitespace and sorting and de-duplicating its alternatives
+	 * @param expr The expression
+	 * @return the normalized expression
+	 */
+	static String normalize(final String expr) {
+		if(expr==null || expr.trim().isEmpty()) return "*";
+		final StringTokenizer st = new StringTokenizer(expr.replace(" ", ""), "|", false);
+		final Set<String> alts = new TreeSet<String>();
+		while(st.hasMoreTokens()) {
+			alts.add(st.nextToken());
+		}
+		final StringBuilder b = new StringBuilder();
+		for(String alt: alts) {
+			if(b.length()>0) b.append('|');
+			b.append(alt);
+		}
+		return b.length()==0 ? "*" : b.toString();
+	}
+	
+	/**
+	 * <p>Title: Key</p>
+	 * <p>Description: A normalized, cacheable query and the matchers used to decide which catalog changes affect it</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.cache.MetaQueryResultCache.Key</code></p>
+	 */
+	public static class Key {
+		/** The normalized key id */
+		final String id;
+		/** The query kind */
+		final String kind;
+		/** The metric name matcher */
+		final PredicateMatcher metric;
+		/** The tag key matchers, aligned with {@link #tagValues} */
+		final PredicateMatcher[] tagKeys;
+		/** The tag value matchers, aligned with {@link #tagKeys} */
+		final PredicateMatcher[] tagValues;
+		/** The matcher for the tag key whose values are returned, or null */
+		final PredicateMatcher tagKey;
+		/** The TSUID to match, or null */
+		final String tsuid;
+		/** The expression index tokens: the exact metric, tag key and tag value names of the expression, or the wildcard
+		 * token of the name type when any alternative contains a wildcard, plus the kind token of tag value queries */
+		final String[] tokens;
+		
+		/**
+		 * Creates a new Key
+		 * @param kind The query kind
+		 * @param queryContext The query context
+		 * @param metricName The metric name expression
+		 * @param tags The tag key and value expressions
+		 * @param tagKey The expression of the tag key whose values are returned, or null
+		 * @param tsuid The TSUID to match, or null
+		 */
+		Key(final String kind, final QueryContext queryContext, final String metricName, final Map<String, String> tags, final String tagKey, final String tsuid) {
+			this.kind = kind;
+			this.tsuid = tsuid;
+			final String normMetric = normalize(metricName);
+			metric = new PredicateMatcher(normMetric);
+			final TreeMap<String, String> normTags = new TreeMap<String, String>();
+			if(tags!=null) {
+				for(Map.Entry<String, String> e: tags.entrySet()) {
+					normTags.put(normalize(e.getKey()), normalize(e.getValue()));
+				}
+			}
+			tagKeys = new PredicateMatcher[normTags.size()];
+			tagValues = new PredicateMatcher[normTags.size()];
+			int i = 0;
+			for(Map.Entry<String, String> e: normTags.entrySet()) {
+				tagKeys[i] = new PredicateMatcher(e.getKey());
+				tagValues[i] = new PredicateMatcher(e.getValue());
+				i++;
+			}
+			final String normTagKey = tagKey==null ? null : normalize(tagKey);
+			this.tagKey = normTagKey==null ? null : new PredicateMatcher(normTagKey);
+			final Set<String> t = new HashSet<String>();
+			tokens(t, TOKEN_METRIC, metric);
+			for(int x = 0; x < tagKeys.length; x++) {
+				tokens(t, TOKEN_TAGK, tagKeys[x]);
+				tokens(t, TOKEN_TAGV, tagValues[x]);
+			}
+			if(this.tagKey!=null) tokens(t, TOKEN_TAGK, this.tagKey);
+			if(kind==KIND_TAGVALUES) {
+				// any tag value may appear in the results
+				t.add(TOKEN_TAGV + TOKEN_WILDCARD);
+				t.add(TOKEN_TAGVALUES_KIND);
+			}
+			tokens = t.toArray(new String[t.size()]);
+			final Object nextIndex = queryContext.getNextIndex();
+			id = new StringBuilder(kind).append(':').append(normMetric).append(':').append(normTags)
+				.append(':').append(normTagKey).append(':').append(tsuid)
+				.append('@').append(nextIndex==null ? "" : nextIndex.toString().trim())
+				.append('/').append(queryContext.getPageSize())
+				.append('/').append(queryContext.getNextMaxLimit())
+				.toString();
+		}
+		
+		/**
+		 * Adds the expression index tokens of the passed matcher to the passed set
+		 * @param t The set to add to
+		 * @param prefix The token prefix of the name type
+		 * @param matcher The matcher
+		 */
+		private static void tokens(final Set<String> t, final String prefix, final PredicateMatcher matcher) {
+			if(matcher.like!=null) t.add(prefix + TOKEN_WILDCARD);
+			for(String name: matcher.exact) {
+				t.add(prefix + name);
+			}
+		}
+		
+		/**
+		 * Returns the expression index token prefix for the passed UID type
+		 * @param type The UID type
+		 * @return the token prefix
+		 */
+		static String tokenPrefix(final UniqueIdType type) {
+			switch(type) {
+				case METRIC:
+					return TOKEN_METRIC;
+				case TAGK:
+					return TOKEN_TAGK;
+				default:
+					return TOKEN_TAGV;
+			}
+		}
+		
+		/**
+		 * Determines if a new series could be returned by this query
+		 * @param seriesTsuid The series TSUID
+		 * @param seriesMetric The series metric
+		 * @param seriesTags The series tags in alternating key, value order
+		 * @return true if the series satisfies this query's expression
+		 */
+		boolean matchesSeries(final String seriesTsuid, final UIDMeta seriesMetric, final UIDMeta[] seriesTags) {
+			if(tsuid!=null && !tsuid.equals(seriesTsuid)) return false;
+			if(seriesMetric==null || !metric.matches(seriesMetric.getName())) return false;
+			for(int i = 0; i < tagKeys.length; i++) {
+				if(!hasPair(seriesTags, tagKeys[i], tagValues[i])) return false;
+			}
+			return tagKey==null || hasPair(seriesTags, tagKey, null);
+		}
+		
+		/**
+		 * Determines if the passed series tags contain a pair matching the passed matchers
+		 * @param seriesTags The series tags in alternating key, value order
+		 * @param k The tag key matcher
+		 * @param v The tag value matcher, or null to match any value
+		 * @return true if a pair matches
+		 */
+		private static boolean hasPair(final UIDMeta[] seriesTags, final PredicateMatcher k, final PredicateMatcher v) {
+			if(seriesTags==null) return false;
+			for(int i = 0; i + 1 < seriesTags.length; i += 2) {
+				if(k.matches(seriesTags[i].getName()) && (v==null || v.matches(seriesTags[i+1].getName()))) return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * Determines if a UID with the passed name could appear in, or change the results of, this query
+		 * @param type The UID type
+		 * @param name The UID name
+		 * @return true if this query's expression references the name
+		 */
+		boolean matchesName(final UniqueIdType type, final String name) {
+			switch(type) {
+				case METRIC:
+					return metric.matches(name);
+				case TAGK:
+					if(tagKey!=null && tagKey.matches(name)) return true;
+					return anyMatches(tagKeys, name);
+				case TAGV:
+					if(kind==KIND_TAGVALUES) return true;
+					return anyMatches(tagValues, name);
+				default:
+					return false;
+			}
+		}
+		
+		/**
+		 * Determines if any of the passed matchers matches the passed name
+		 * @param matchers The matchers
+		 * @param name The name
+		 * @return true if any matches
+		 */
+		private static boolean anyMatches(final PredicateMatcher[] matchers, final String name) {
+			for(PredicateMatcher m: matchers) {
+				if(m.matches(name)) return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return id;
+		}
+	}
+	
+	/**
+	 * <p>Title: Capture</p>
+	 * <p>Description: Records the page streamed by a running query for caching</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.cache.MetaQueryResultCache.Capture</code></p>
+	 */
+	public static class Capture {
+		/** The key the page will be cached under */
+		final Key key;
+		/** The streamed items */
+		final List<Object> items = new ArrayList<Object>();
+		/** The number of pages streamed */
+		int pages = 0;
+		/** Indicates a catalog change may have made the captured page stale */
+		volatile boolean stale = false;
+		
+		/**
+		 * Creates a new Capture
+		 * @param key The key the page will be cached under
+		 */
+		Capture(final Key key) {
+			this.key = key;
+		}
+		
+		/**
+		 * Records a streamed item
+		 * @param item The item
+		 */
+		public void add(final Object item) {
+			items.add(item);
+		}
+		
+		/**
+		 * Records the end of a streamed page
+		 */
+		public void pageComplete() {
+			pages++;
+		}
+		
+		/**
+		 * Abandons the capture, typically because the query failed or expired
+		 */
+		public void abandon() {
+			stale = true;
+		}
+	}
+	
+	/**
+	 * <p>Title: ResultEntry</p>
+	 * <p>Description: A cached result page with the paging state it left the query context in</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.cache.MetaQueryResultCache.ResultEntry</code></p>
+	 */
+	public static class ResultEntry {
+		/** The key the entry is cached under */
+		final Key key;
+		/** The page items */
+		final Object[] items;
+		/** Indicates the page exhausted the results */
+		final boolean exhausted;
+		/** The next index after the page */
+		final Object nextIndex;
+		/** The TSUIDs and UIDs referenced by the items */
+		final String[] refs;
+		/** The estimated heap size in bytes */
+		final int weight;
+		
+		/**
+		 * Creates a new ResultEntry
+		 * @param key The key the entry is cached under
+		 * @param items The page items
+		 * @param exhausted Indicates the page exhausted the results
+		 * @param nextIndex The next index after the page
+		 */
+		ResultEntry(final Key key, final Object[] items, final boolean exhausted, final Object nextIndex) {
+			this.key = key;
+			this.items = items;
+			this.exhausted = exhausted;
+			this.nextIndex = nextIndex;
+			final Set<String> r = new HashSet<String>();
+			long w = ENTRY_OVERHEAD + size(key.id) + (items.length * 8L);
+			for(Object item: items) {
+				if(item instanceof TSMeta) {
+					final TSMeta tsMeta = (TSMeta)item;
+					r.add(tsMeta.getTSUID());
+					if(tsMeta.getMetric()!=null) r.add(tsMeta.getMetric().getUID());
+					if(tsMeta.getTags()!=null) {
+						for(UIDMeta tag: tsMeta.getTags()) {
+							r.add(tag.getUID());
+						}
+					}
+					w += size(tsMeta);
+				} else if(item instanceof UIDMeta) {
+					final UIDMeta uidMeta = (UIDMeta)item;
+					r.add(uidMeta.getUID());
+					w += size(uidMeta);
+				} else {
+					w += 64;
+				}
+			}
+			r.remove(null);
+			refs = r.toArray(new String[r.size()]);
+			w += refs.length * 8L;
+			weight = (int)Math.min(Integer.MAX_VALUE, w);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return new StringBuilder("ResultEntry [").append(key.id).append(", items:").append(items.length).append(", refs:").append(Arrays.toString(refs)).append("]").toString();
+		}
+	}
+}
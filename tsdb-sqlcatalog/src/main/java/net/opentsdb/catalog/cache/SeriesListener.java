@@ -0,0 +1,58 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import net.opentsdb.meta.UIDMeta;
+
+/**
+ * <p>Title: SeriesListener</p>
+ * <p>Description: Defines a listener notified by the catalog writer when time series (TSMetas) are committed to, 
+ * or removed from, the catalog. Notifications are only issued after the enclosing transaction has committed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.SeriesListener</code></p>
+ */
+
+public interface SeriesListener {
+	/**
+	 * Callback when a new time series is committed to the catalog
+	 * @param fqnId The FQNID assigned to the time series
+	 * @param tsuid The TSUID of the time series
+	 * @param metric The metric UIDMeta
+	 * @param tags The tag UIDMetas in alternating tag key, tag value order
+	 */
+	public void onSeriesAdded(long fqnId, String tsuid, UIDMeta metric, UIDMeta[] tags);
+	
+	/**
+	 * Callback when a time series is deleted from the catalog
+	 * @param tsuid The TSUID of the deleted time series
+	 */
+	public void onSeriesRemoved(String tsuid);
+	
+	/**
+	 * Callback when the catalog is purged
+	 */
+	public void onPurge();
+}
@@ -26,6 +26,7 @@ package net.opentsdb.catalog.cache;
 
 import java.sql.Connection;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.management.ObjectName;
 
@@ -33,6 +34,7 @@ import net.opentsdb.catalog.MetaReader;
 import net.opentsdb.catalog.SQLWorker;
 import net.opentsdb.catalog.TSDBCachedRowSetImpl;
 import net.opentsdb.meta.TSMeta;
+import net.opentsdb.stats.StatsCollector;
 
 import org.helios.jmx.util.helpers.ConfigurationHelper;
 import org.helios.tsdb.plugins.cache.CacheStatistics;
@@ -40,7 +42,6 @@ import org.helios.tsdb.plugins.util.JMXHelper;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.util.concurrent.Callables;
 
 /**
  * <p>Title: TSMetaCache</p>
@@ -109,6 +110,14 @@ public class TSMetaCache {
 		put(metaReader.readTSMetas(sqlWorker.executeQuery(INITIAL_LOAD_SQL, false, initialSize), true).toArray(new TSMeta[0]));
 	}
 	
+	/**
+	 * Records this cache's stats to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		CacheStatistics.collectStats(collector, "tsmeta", cache);
+	}
+	
 	/**
 	 * Shuts down the cache
 	 */
@@ -125,7 +134,13 @@ public class TSMetaCache {
 	 */
 	public TSMeta get(final String key, final Connection conn) {
 		try {			
-			return cache.get(key, Callables.returning(getName(key, conn)));
+			return cache.get(key, new Callable<TSMeta>() {
+				@Override
+				public TSMeta call() throws Exception {
+					// A null (not found) load is not cached and surfaces as an exception
+					return getName(key, conn);
+				}
+			});
 		} catch (Exception ex) {
 			//throw new RuntimeException("TSMetaCache failed on looking up [" + key + "]", ex);
 			return null;
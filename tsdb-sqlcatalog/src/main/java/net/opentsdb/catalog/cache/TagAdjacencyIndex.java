@@ -0,0 +1,545 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.opentsdb.catalog.SQLWorker;
+import net.opentsdb.catalog.SQLWorker.ResultSetHandler;
+import net.opentsdb.catalog.cache.TagPredicateCache.PredicateMatcher;
+import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.uid.UniqueId;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: TagAdjacencyIndex</p>
+ * <p>Description: An in-memory adjacency graph of metric &rarr; tag keys &rarr; tag values with time series counts at each node.
+ * The graph is loaded from the catalog in the background on startup and maintained by the catalog writer through {@link SeriesListener},
+ * so metric UI autocomplete lookups (tag keys for a metric, tag values for a metric and tag key, metrics for a set of 
+ * tag keys or tag pairs) are served without joining through <b><code>TSD_FQN_TAGPAIR</code></b>. Lookups fall back to SQL until the
+ * load completes.</p>
+ * <p>Nodes only hold the UID and name of each UIDMeta. Callers needing the description, notes or custom map re-read the page of
+ * UIDs they were served.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.TagAdjacencyIndex</code></p>
+ */
+
+public class TagAdjacencyIndex implements SeriesListener {
+	/** Instance logger */
+	protected Logger log = LoggerFactory.getLogger(getClass()); 
+	/** A SQLWorker to load the index */
+	protected final SQLWorker sqlWorker;
+	/** The metric nodes keyed by metric UID */
+	protected final ConcurrentSkipListMap<String, MetricNode> metrics = new ConcurrentSkipListMap<String, MetricNode>();
+	/** The metric nodes keyed by metric name */
+	protected final ConcurrentHashMap<String, MetricNode> metricsByName = new ConcurrentHashMap<String, MetricNode>();
+	/** Indicates if the index is enabled */
+	protected final boolean enabled;
+	/** Indicates if the index has been loaded and can serve lookups */
+	protected volatile boolean loaded = false;
+	/** The thread loading the index on startup */
+	protected final Thread loadThread;
+	/** The number of lookups served */
+	protected final AtomicLong lookups = new AtomicLong(0L);
+	
+	/** The configuration property name for enabling the adjacency index */
+	public static final String ENABLED_PROP = "helios.search.catalog.adjacency.enabled";
+	/** The default enablement of the adjacency index */
+	public static final boolean DEFAULT_ENABLED = true;
+	
+	/** The width of a UID in hex characters */
+	public static final int UID_HEX_WIDTH = 6;
+	
+	/** The SQL to load the metric/tag key/tag value adjacency with series counts */
+	public static final String LOAD_SQL = 
+			"SELECT M.XUID, M.NAME, K.XUID, K.NAME, V.XUID, V.NAME, COUNT(*) " + 
+			"FROM TSD_TSMETA X, TSD_METRIC M, TSD_FQN_TAGPAIR T, TSD_TAGPAIR P, TSD_TAGK K, TSD_TAGV V " + 
+			"WHERE M.XUID = X.METRIC_UID " + 
+			"AND X.FQNID = T.FQNID " + 
+			"AND T.XUID = P.XUID " + 
+			"AND P.TAGK = K.XUID " + 
+			"AND P.TAGV = V.XUID " + 
+			"GROUP BY M.XUID, M.NAME, K.XUID, K.NAME, V.XUID, V.NAME";
+	/** The SQL to load the series count for each metric */
+	public static final String METRIC_SERIES_SQL = 
+			"SELECT M.XUID, M.NAME, COUNT(*) FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID GROUP BY M.XUID, M.NAME";
+
+	/**
+	 * Creates a new TagAdjacencyIndex and starts loading it in the background if enabled
+	 * @param sqlWorker A SQLWorker to load the index
+	 */
+	public TagAdjacencyIndex(final SQLWorker sqlWorker) {
+		this.sqlWorker = sqlWorker;
+		enabled = ConfigurationHelper.getBooleanSystemThenEnvProperty(ENABLED_PROP, DEFAULT_ENABLED);
+		if(enabled) {
+			loadThread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						load();
+					} catch (Exception ex) {
+						log.error("Failed to load TagAdjacencyIndex. Lookups will use SQL.", ex);
+					}
+				}
+			}, getClass().getSimpleName() + "LoadThread");
+			loadThread.setDaemon(true);
+			loadThread.start();
+		} else {
+			loadThread = null;
+		}
+	}
+	
+	/**
+	 * Stops a load in progress
+	 */
+	public void shutdown() {
+		if(loadThread!=null) loadThread.interrupt();
+	}
+	
+	/**
+	 * (Re)loads the index from the catalog. Series added or removed while loading wait for the load to complete.
+	 */
+	public synchronized void load() {
+		final long start = System.currentTimeMillis();
+		loaded = false;
+		metrics.clear();
+		metricsByName.clear();
+		final AtomicInteger rows = new AtomicInteger(0);
+		sqlWorker.executeQuery(METRIC_SERIES_SQL, new ResultSetHandler() {
+			@Override
+			public boolean onRow(int rowId, ResultSet rset) {
+				try {
+					metricNode(rset.getString(1), rset.getString(2)).series.set(rset.getInt(3));
+				} catch (Exception ex) {
+					throw new RuntimeException("Failed to read metric series counts", ex);
+				}
+				return true;
+			}
+		});
+		sqlWorker.executeQuery(LOAD_SQL, new ResultSetHandler() {
+			@Override
+			public boolean onRow(int rowId, ResultSet rset) {
+				try {
+					metricNode(rset.getString(1), rset.getString(2))
+						.keyNode(rset.getString(3), rset.getString(4))
+						.valueNode(rset.getString(5), rset.getString(6))
+						.series.set(rset.getInt(7));
+					rows.incrementAndGet();
+				} catch (Exception ex) {
+					throw new RuntimeException("Failed to read tag adjacency", ex);
+				}
+				return true;
+			}
+		});
+		loaded = true;
+		log.info("Loaded TagAdjacencyIndex with [{}] metrics and [{}] metric/tag pair edges in [{}] ms.", metrics.size(), rows.get(), System.currentTimeMillis()-start);
+	}
+	
+	/**
+	 * Indicates if the index is loaded and can serve lookups
+	 * @return true if the index is loaded, false otherwise
+	 */
+	public boolean isLoaded() {
+		return enabled && loaded;
+	}
+	
+	/**
+	 * Returns the number of lookups served
+	 * @return the number of lookups served
+	 */
+	public long getLookupCount() {
+		return lookups.get();
+	}
+	
+	/**
+	 * Returns the number of indexed metrics
+	 * @return the number of indexed metrics
+	 */
+	public int getMetricCount() {
+		return metrics.size();
+	}
+	
+	// ==================================================================================================
+	//  Maintenance
+	// ==================================================================================================
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onSeriesAdded(long, java.lang.String, net.opentsdb.meta.UIDMeta, net.opentsdb.meta.UIDMeta[])
+	 */
+	@Override
+	public synchronized void onSeriesAdded(final long fqnId, final String tsuid, final UIDMeta metric, final UIDMeta[] tags) {
+		if(!enabled) return;
+		final MetricNode mn = metricNode(metric.getUID(), metric.getName());
+		mn.series.incrementAndGet();
+		for(int i = 0; i+1 < tags.length; i+=2) {
+			mn.keyNode(tags[i].getUID(), tags[i].getName()).valueNode(tags[i+1].getUID(), tags[i+1].getName()).series.incrementAndGet();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>The metric and tag pair UIDs are decoded from the TSUID.</p>
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onSeriesRemoved(java.lang.String)
+	 */
+	@Override
+	public synchronized void onSeriesRemoved(final String tsuid) {
+		if(!enabled || tsuid==null || tsuid.length() < UID_HEX_WIDTH) return;
+		final MetricNode mn = metrics.get(tsuid.substring(0, UID_HEX_WIDTH));
+		if(mn==null) return;
+		for(int i = UID_HEX_WIDTH; i + (UID_HEX_WIDTH*2) <= tsuid.length(); i += (UID_HEX_WIDTH*2)) {
+			final String keyUid = tsuid.substring(i, i+UID_HEX_WIDTH);
+			final KeyNode kn = mn.keys.get(keyUid);
+			if(kn==null) continue;
+			final String valueUid = tsuid.substring(i+UID_HEX_WIDTH, i+(UID_HEX_WIDTH*2));
+			final ValueNode vn = kn.values.get(valueUid);
+			if(vn==null) continue;
+			if(vn.series.decrementAndGet() <= 0) {
+				kn.values.remove(valueUid);
+				if(kn.values.isEmpty()) mn.keys.remove(keyUid);
+			}
+		}
+		if(mn.series.decrementAndGet() <= 0 && mn.keys.isEmpty()) {
+			metrics.remove(mn.meta.getUID());
+			metricsByName.remove(mn.meta.getName());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.cache.SeriesListener#onPurge()
+	 */
+	@Override
+	public synchronized void onPurge() {
+		metrics.clear();
+		metricsByName.clear();
+	}
+	
+	// ==================================================================================================
+	//  Lookups
+	// ==================================================================================================
+	
+	/**
+	 * Returns the tag keys used by series of the metrics matching the passed expression
+	 * @param metricExpr The metric name expression, supporting <b><code>*</code></b> wildcards and <b><code>|</code></b> alternatives
+	 * @param excludes Tag key names to exclude
+	 * @param startIndex The exclusive upper bound UID to page from, or null for the first page
+	 * @param limit The maximum number of results
+	 * @return the matching tag key UIDMetas in descending UID order
+	 */
+	public List<UIDMeta> getTagKeys(final String metricExpr, final Collection<String> excludes, final Object startIndex, final int limit) {
+		lookups.incrementAndGet();
+		final String start = startIndex==null ? null : startIndex.toString();
+		final Set<String> ex = excludes==null ? Collections.<String>emptySet() : new HashSet<String>(excludes);
+		final TreeMap<String, UIDMeta> results = new TreeMap<String, UIDMeta>();
+		for(MetricNode mn: matchMetrics(metricExpr)) {
+			for(KeyNode kn: mn.keys.values()) {
+				if(inRange(kn.meta, start) && !ex.contains(kn.meta.getName())) {
+					results.put(kn.meta.getUID(), kn.meta);
+				}
+			}
+		}
+		return top(results, limit);
+	}
+	
+	/**
+	 * Returns the tag values used with the tag keys matching the passed expression by series of the metrics matching the passed expression
+	 * @param metricExpr The metric name expression
+	 * @param tagKeyExpr The tag key expression
+	 * @param startIndex The exclusive upper bound UID to page from, or null for the first page
+	 * @param limit The maximum number of results
+	 * @return the matching tag value UIDMetas in descending UID order
+	 */
+	public List<UIDMeta> getTagValues(final String metricExpr, final String tagKeyExpr, final Object startIndex, final int limit) {
+		lookups.incrementAndGet();
+		final String start = startIndex==null ? null : startIndex.toString();
+		final PredicateMatcher keyMatcher = new PredicateMatcher(tagKeyExpr);
+		final TreeMap<String, UIDMeta> results = new TreeMap<String, UIDMeta>();
+		for(MetricNode mn: matchMetrics(metricExpr)) {
+			for(KeyNode kn: mn.keys.values()) {
+				if(!keyMatcher.matches(kn.meta.getName())) continue;
+				for(ValueNode vn: kn.values.values()) {
+					if(inRange(vn.meta, start)) {
+						results.put(vn.meta.getUID(), vn.meta);
+					}
+				}
+			}
+		}
+		return top(results, limit);
+	}
+	
+	/**
+	 * Returns the metrics which have series using every one of the tag keys matching the passed expressions
+	 * @param tagKeyExprs The tag key expressions
+	 * @param startIndex The exclusive upper bound UID to page from, or null for the first page
+	 * @param limit The maximum number of results
+	 * @return the matching metric UIDMetas in descending UID order
+	 */
+	public List<UIDMeta> getMetricNamesForKeys(final String[] tagKeyExprs, final Object startIndex, final int limit) {
+		lookups.incrementAndGet();
+		final String start = startIndex==null ? null : startIndex.toString();
+		final PredicateMatcher[] keyMatchers = new PredicateMatcher[tagKeyExprs.length];
+		for(int i = 0; i < tagKeyExprs.length; i++) {
+			keyMatchers[i] = new PredicateMatcher(tagKeyExprs[i]);
+		}
+		final TreeMap<String, UIDMeta> results = new TreeMap<String, UIDMeta>();
+		for(MetricNode mn: metrics.values()) {
+			if(!inRange(mn.meta, start)) continue;
+			boolean all = true;
+			for(PredicateMatcher km: keyMatchers) {
+				if(!mn.hasKey(km)) { all = false; break; }
+			}
+			if(all) results.put(mn.meta.getUID(), mn.meta);
+		}
+		return top(results, limit);
+	}
+	
+	/**
+	 * Returns the metrics which have series using every one of the tag pairs matching the passed expressions
+	 * @param tags The tag key and value expressions
+	 * @param startIndex The exclusive upper bound UID to page from, or null for the first page
+	 * @param limit The maximum number of results
+	 * @return the matching metric UIDMetas in descending UID order
+	 */
+	public List<UIDMeta> getMetricNamesForTags(final Map<String, String> tags, final Object startIndex, final int limit) {
+		lookups.incrementAndGet();
+		final String start = startIndex==null ? null : startIndex.toString();
+		final PredicateMatcher[][] pairMatchers = new PredicateMatcher[tags.size()][];
+		int i = 0;
+		for(Map.Entry<String, String> e: tags.entrySet()) {
+			pairMatchers[i++] = new PredicateMatcher[]{new PredicateMatcher(e.getKey()), new PredicateMatcher(e.getValue())};
+		}
+		final TreeMap<String, UIDMeta> results = new TreeMap<String, UIDMeta>();
+		for(MetricNode mn: metrics.values()) {
+			if(!inRange(mn.meta, start)) continue;
+			boolean all = true;
+			for(PredicateMatcher[] pm: pairMatchers) {
+				if(!mn.hasPair(pm[0], pm[1])) { all = false; break; }
+			}
+			if(all) results.put(mn.meta.getUID(), mn.meta);
+		}
+		return top(results, limit);
+	}
+	
+	/**
+	 * Returns the number of series for the passed metric name
+	 * @param metricName The metric name
+	 * @return the number of series
+	 */
+	public int getSeriesCount(final String metricName) {
+		final MetricNode mn = metricsByName.get(metricName);
+		return mn==null ? 0 : mn.series.get();
+	}
+	
+	/**
+	 * Returns the series counts for each tag value of the passed tag key in series of the passed metric
+	 * @param metricName The metric name
+	 * @param tagKey The tag key name
+	 * @return a map of series counts keyed by tag value name
+	 */
+	public Map<String, Integer> getTagValueCounts(final String metricName, final String tagKey) {
+		final Map<String, Integer> counts = new TreeMap<String, Integer>();
+		final MetricNode mn = metricsByName.get(metricName);
+		if(mn==null) return counts;
+		for(KeyNode kn: mn.keys.values()) {
+			if(!kn.meta.getName().equals(tagKey)) continue;
+			for(ValueNode vn: kn.values.values()) {
+				counts.put(vn.meta.getName(), vn.series.get());
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Returns the metric nodes whose names match the passed expression
+	 * @param metricExpr The metric name expression
+	 * @return the matching metric nodes
+	 */
+	protected Collection<MetricNode> matchMetrics(final String metricExpr) {
+		final PredicateMatcher matcher = new PredicateMatcher(metricExpr);
+		final List<MetricNode> matched = new ArrayList<MetricNode>();
+		if(matcher.like==null) {
+			for(String name: matcher.exact) {
+				final MetricNode mn = metricsByName.get(name);
+				if(mn!=null) matched.add(mn);
+			}
+		} else {
+			for(MetricNode mn: metrics.values()) {
+				if(matcher.matches(mn.meta.getName())) matched.add(mn);
+			}
+		}
+		return matched;
+	}
+	
+	/**
+	 * Determines if the passed UIDMeta is below the paging start index
+	 * @param meta The UIDMeta to test
+	 * @param start The exclusive upper bound UID, or null for no bound
+	 * @return true if in range, false otherwise
+	 */
+	private static boolean inRange(final UIDMeta meta, final String start) {
+		return start==null || meta.getUID().compareTo(start) < 0;
+	}
+	
+	/**
+	 * Returns up to <b><code>limit</code></b> values from the passed map in descending key order
+	 * @param results The results keyed by UID
+	 * @param limit The maximum number of results
+	 * @return the ordered results
+	 */
+	private static List<UIDMeta> top(final TreeMap<String, UIDMeta> results, final int limit) {
+		final List<UIDMeta> list = new ArrayList<UIDMeta>(Math.min(limit, results.size()));
+		for(UIDMeta meta: results.descendingMap().values()) {
+			if(list.size() >= limit) break;
+			list.add(meta);
+		}
+		return list;
+	}
+	
+	/**
+	 * Acquires the metric node for the passed UID, creating it if it does not exist
+	 * @param uid The metric UID
+	 * @param name The metric name
+	 * @return the metric node
+	 */
+	private MetricNode metricNode(final String uid, final String name) {
+		MetricNode mn = metrics.get(uid);
+		if(mn==null) {
+			mn = new MetricNode(newUIDMeta(UniqueIdType.METRIC, uid, name));
+			metrics.put(uid, mn);
+			metricsByName.put(name, mn);
+		}
+		return mn;
+	}
+	
+	/**
+	 * Creates a lightweight UIDMeta for the index, holding only the type, UID and name
+	 * @param type The UID type
+	 * @param uid The UID
+	 * @param name The name
+	 * @return the UIDMeta
+	 */
+	static UIDMeta newUIDMeta(final UniqueIdType type, final String uid, final String name) {
+		return new UIDMeta(type, UniqueId.stringToUid(uid), name);
+	}
+	
+	/**
+	 * <p>Title: MetricNode</p>
+	 * <p>Description: A metric in the adjacency graph</p> 
+	 */
+	static class MetricNode {
+		/** The metric UIDMeta */
+		final UIDMeta meta;
+		/** The number of series for this metric */
+		final AtomicInteger series = new AtomicInteger(0);
+		/** The tag keys used by this metric's series keyed by tag key UID */
+		final ConcurrentSkipListMap<String, KeyNode> keys = new ConcurrentSkipListMap<String, KeyNode>();
+		
+		MetricNode(final UIDMeta meta) {
+			this.meta = meta;
+		}
+		
+		KeyNode keyNode(final String uid, final String name) {
+			KeyNode kn = keys.get(uid);
+			if(kn==null) {
+				kn = new KeyNode(newUIDMeta(UniqueIdType.TAGK, uid, name));
+				keys.put(uid, kn);
+			}
+			return kn;
+		}
+		
+		boolean hasKey(final PredicateMatcher keyMatcher) {
+			for(KeyNode kn: keys.values()) {
+				if(keyMatcher.matches(kn.meta.getName())) return true;
+			}
+			return false;
+		}
+		
+		boolean hasPair(final PredicateMatcher keyMatcher, final PredicateMatcher valueMatcher) {
+			for(KeyNode kn: keys.values()) {
+				if(!keyMatcher.matches(kn.meta.getName())) continue;
+				for(ValueNode vn: kn.values.values()) {
+					if(valueMatcher.matches(vn.meta.getName())) return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * <p>Title: KeyNode</p>
+	 * <p>Description: A tag key of a metric in the adjacency graph</p> 
+	 */
+	static class KeyNode {
+		/** The tag key UIDMeta */
+		final UIDMeta meta;
+		/** The tag values used with this key keyed by tag value UID */
+		final ConcurrentSkipListMap<String, ValueNode> values = new ConcurrentSkipListMap<String, ValueNode>();
+		
+		KeyNode(final UIDMeta meta) {
+			this.meta = meta;
+		}
+		
+		ValueNode valueNode(final String uid, final String name) {
+			ValueNode vn = values.get(uid);
+			if(vn==null) {
+				vn = new ValueNode(newUIDMeta(UniqueIdType.TAGV, uid, name));
+				values.put(uid, vn);
+			}
+			return vn;
+		}
+	}
+	
+	/**
+	 * <p>Title: ValueNode</p>
+	 * <p>Description: A tag value of a metric's tag key in the adjacency graph</p> 
+	 */
+	static class ValueNode {
+		/** The tag value UIDMeta */
+		final UIDMeta meta;
+		/** The number of series for this metric, tag key and tag value */
+		final AtomicInteger series = new AtomicInteger(0);
+		
+		ValueNode(final UIDMeta meta) {
+			this.meta = meta;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.cache;
+
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+/**
+ * <p>Title: TagPairListener</p>
+ * <p>Description: Defines a listener notified by the catalog writer when tag pairs are committed to, or removed from, the catalog.
+ * Notifications are only issued after the enclosing transaction has committed.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.cache.TagPairListener</code></p>
+ */
+
+public interface TagPairListener {
+	/**
+	 * Callback when a new tag pair is committed to the catalog
+	 * @param xuid The tag pair XUID (the tag key UID followed by the tag value UID)
+	 * @param tagKey The tag key name
+	 * @param tagValue The tag value name
+	 */
+	public void onTagPairAdded(String xuid, String tagKey, String tagValue);
+	
+	/**
+	 * Callback when a tag key or tag value UID is deleted from the catalog, removing all its parent tag pairs
+	 * @param type The type of the deleted UID (only {@link UniqueIdType#TAGK} and {@link UniqueIdType#TAGV} are published)
+	 * @param uid The deleted UID
+	 */
+	public void onTagPairsRemoved(UniqueIdType type, String uid);
+}
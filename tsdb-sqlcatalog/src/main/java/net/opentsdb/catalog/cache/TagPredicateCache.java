@@ -24,9 +24,15 @@
  */
 package net.opentsdb.catalog.cache;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.sql.ResultSet;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +41,8 @@ import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,9 +50,11 @@ import javax.management.ObjectName;
 
 import net.opentsdb.catalog.SQLWorker;
 import net.opentsdb.catalog.SQLWorker.ResultSetHandler;
+import net.opentsdb.stats.StatsCollector;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
 
-import org.helios.jmx.util.helpers.ConfigurationHelper;
 import org.helios.tsdb.plugins.cache.CacheStatistics;
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
 import org.helios.tsdb.plugins.util.JMXHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,27 +64,51 @@ import com.google.common.cache.CacheBuilder;
 
 /**
  * <p>Title: TagPredicateCache</p>
- * <p>Description: Cache for tag query predicates keyed by the deep hash code of the raw tag predicates</p> 
+ * <p>Description: Cache for tag query predicates keyed by the canonical form of the raw tag pair predicates.
+ * Cached entries are kept current by the catalog writer, which publishes newly committed tag pairs through
+ * {@link TagPairListener}: matching entries (including wildcard and multi-value predicates) are updated in place
+ * rather than evicted. Predicate access counts are persisted on shutdown and the hottest predicates are
+ * re-loaded by a background thread on startup so the cache warms without delaying catalog initialization.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>net.opentsdb.catalog.cache.TagPredicateCache</code></p>
  */
 
-public class TagPredicateCache {
+public class TagPredicateCache implements TagPairListener {
 	/** Instance logger */
 	protected Logger log = LoggerFactory.getLogger(getClass()); 
 	/** A SQLWorker to execute lookups */
 	protected final SQLWorker sqlWorker;
-	/** The underlying guava cache of UIDs keyed by the deep hash code of the raw predicates */
-	protected final Cache<Integer, String[]> cache;
+	/** The underlying guava cache of predicate entries keyed by the canonical predicate key */
+	protected final Cache<String, PredicateEntry> cache;
+	/** Entries currently being loaded from the DB which must also receive tag pair updates */
+	protected final Set<PredicateEntry> pendingLoads = Collections.newSetFromMap(new ConcurrentHashMap<PredicateEntry, Boolean>());
+	/** Access counts for predicate keys, persisted to the access log on shutdown */
+	protected final ConcurrentHashMap<String, AtomicLong> accessCounts = new ConcurrentHashMap<String, AtomicLong>();
 	/** The cache stats ObjectName if stats are enabled */
 	protected final ObjectName objectName;
+	/** The access log file, or null if access logging is disabled */
+	protected final File accessLogFile;
+	/** The maximum number of predicates to warm the cache with on startup */
+	protected final int warmCount;
+	/** The maximum number of distinct predicate keys to track access counts for */
+	protected final int maxTracked;
+	/** The thread warming the cache from the access log, or null if warming is disabled */
+	protected final Thread warmThread;
+	/** The number of entries updated in place by new tag pairs */
+	protected final AtomicLong inPlaceUpdates = new AtomicLong(0L);
 	/** The configuration property name for the maximum size of the cache */
 	public static final String MAX_SIZE_PROP = "helios.search.catalog.predicatecache.maxsize";
 	/** The configuration property name for the concurrency of the cache */
 	public static final String CONCURRENCY_PROP = "helios.search.catalog.predicatecache.concurrency";
 	/** The configuration property name for the stats enablement of the cache */
 	public static final String STATS_ENABLED_PROP = "helios.search.catalog.predicatecache.stats";
+	/** The configuration property name for the access log file. Set to blank to disable access logging and warming */
+	public static final String ACCESS_LOG_PROP = "helios.search.catalog.predicatecache.accesslog";
+	/** The configuration property name for the maximum number of predicates to warm the cache with on startup */
+	public static final String WARM_COUNT_PROP = "helios.search.catalog.predicatecache.warmcount";
+	/** The configuration property name for the maximum number of distinct predicates to track access counts for */
+	public static final String MAX_TRACKED_PROP = "helios.search.catalog.predicatecache.maxtracked";
 	
 	/** The default maximum size of the cache */
 	public static final long DEFAULT_MAX_SIZE = 1000;
@@ -82,6 +116,12 @@ public class TagPredicateCache {
 	public static final int DEFAULT_CONCURRENCY = 4;
 	/** The default stats enablement of the cache */
 	public static final boolean DEFAULT_STATS_ENABLED = true;
+	/** The default access log file */
+	public static final String DEFAULT_ACCESS_LOG = System.getProperty("user.home") + File.separator + ".tsdb" + File.separator + "predicate-access.log";
+	/** The default maximum number of predicates to warm the cache with on startup */
+	public static final int DEFAULT_WARM_COUNT = 100;
+	/** The default maximum number of distinct predicates to track access counts for */
+	public static final int DEFAULT_MAX_TRACKED = 10000;
 	/** The configuration property with stats enablement of the cache */
 	public static final String SPEC_TEMPLATE_WSTATS = "concurrencyLevel=%s,initialCapacity=%s,maximumSize=%s,recordStats";
 	/** The configuration property without stats enablement of the cache */
@@ -95,7 +135,20 @@ public class TagPredicateCache {
 	/** The dynamic binding SQL block for tag values */
 	public static final String TAGV_SQL_BLOCK = "V.NAME %s ?";
 	
-	
+	/** An empty string array constant */
+	private static final String[] EMPTY_ARR = {};
+	/** Splits a canonical predicate key into pairs */
+	private static final Pattern PAIR_SPLITTER = Pattern.compile(",");
+	/** Splits the access log lines */
+	private static final Pattern TAB_SPLITTER = Pattern.compile("\t");
+	/** Orders access count entries by descending count */
+	private static final Comparator<Map.Entry<String, AtomicLong>> COUNT_DESC = new Comparator<Map.Entry<String, AtomicLong>>() {
+		@Override
+		public int compare(Map.Entry<String, AtomicLong> e1, Map.Entry<String, AtomicLong> e2) {
+			final long c1 = e1.getValue().get(), c2 = e2.getValue().get();
+			return c1 > c2 ? -1 : c1 < c2 ? 1 : e1.getKey().compareTo(e2.getKey());
+		}
+	};
 
 
 	/**
@@ -107,6 +160,10 @@ public class TagPredicateCache {
 		final long maxSize = ConfigurationHelper.getLongSystemThenEnvProperty(MAX_SIZE_PROP, DEFAULT_MAX_SIZE);
 		final int concurrency = ConfigurationHelper.getIntSystemThenEnvProperty(CONCURRENCY_PROP, DEFAULT_CONCURRENCY);
 		final boolean stats = ConfigurationHelper.getBooleanSystemThenEnvProperty(STATS_ENABLED_PROP, DEFAULT_STATS_ENABLED);
+		final String accessLog = ConfigurationHelper.getSystemThenEnvProperty(ACCESS_LOG_PROP, DEFAULT_ACCESS_LOG);
+		warmCount = ConfigurationHelper.getIntSystemThenEnvProperty(WARM_COUNT_PROP, DEFAULT_WARM_COUNT);
+		maxTracked = ConfigurationHelper.getIntSystemThenEnvProperty(MAX_TRACKED_PROP, DEFAULT_MAX_TRACKED);
+		accessLogFile = (accessLog==null || accessLog.trim().isEmpty()) ? null : new File(accessLog.trim());
 		final String spec = String.format(stats ? SPEC_TEMPLATE_WSTATS : SPEC_TEMPLATE_NOSTATS, concurrency, 100, maxSize);		
 		cache = CacheBuilder.from(spec).build();
 		if(stats) {
@@ -114,16 +171,366 @@ public class TagPredicateCache {
 			JMXHelper.registerMBean(objectName, new CacheStatistics(cache, objectName));
 		} else {
 			objectName = null;
-		}		
+		}
+		if(accessLogFile!=null && warmCount > 0 && accessLogFile.canRead()) {
+			warmThread = new Thread(new Runnable() {
+				public void run() {
+					warm();
+				}
+			}, getClass().getSimpleName() + "WarmThread");
+			warmThread.setDaemon(true);
+			warmThread.start();
+		} else {
+			warmThread = null;
+		}
 	}
 	
+	/**
+	 * Returns the entry for the passed key, loading it from the DB if it is not cached.
+	 * A loading entry stays registered in {@link #pendingLoads} until the cache has installed it,
+	 * so tag pairs committed at any point during the load are applied to it.
+	 * @param key The canonical predicate key
+	 * @param pb The predicate builder for the key
+	 * @return the predicate entry
+	 * @throws Exception thrown on any error loading the entry
+	 */
+	protected PredicateEntry load(final String key, final PredicateBuilder pb) throws Exception {
+		final PredicateRetriever retriever = new PredicateRetriever(pb);
+		try {
+			return cache.get(key, retriever);
+		} finally {
+			if(retriever.entry!=null) pendingLoads.remove(retriever.entry);
+		}
+	}
+	
+	/**
+	 * Creates a new predicate builder
+	 * @return a new predicate builder
+	 */
 	public PredicateBuilder newPredicateBuilder() {
 		return new PredicateBuilder();
 	}
 	
-	private class PredicateRetriever implements Callable<String[]>, ResultSetHandler {
+	/**
+	 * {@inheritDoc}
+	 * <p>Appends the new tag pair XUID to every cached (or loading) entry whose predicates it satisfies.</p>
+	 * @see net.opentsdb.catalog.cache.TagPairListener#onTagPairAdded(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void onTagPairAdded(final String xuid, final String tagKey, final String tagValue) {
+		int updated = 0;
+		for(PredicateEntry entry: cache.asMap().values()) {
+			if(entry.matches(tagKey, tagValue) && entry.add(xuid)) updated++;
+		}
+		for(PredicateEntry entry: pendingLoads) {
+			if(entry.matches(tagKey, tagValue)) entry.add(xuid);
+		}
+		if(updated>0) {
+			inPlaceUpdates.addAndGet(updated);
+			if(log.isDebugEnabled()) log.debug("Updated [{}] predicate entries with new tag pair [{}={}]", updated, tagKey, tagValue);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Removes tag pair XUIDs referencing the deleted UID from every cached (or loading) entry.</p>
+	 * @see net.opentsdb.catalog.cache.TagPairListener#onTagPairsRemoved(net.opentsdb.uid.UniqueId.UniqueIdType, java.lang.String)
+	 */
+	@Override
+	public void onTagPairsRemoved(final UniqueIdType type, final String uid) {
+		if(type!=UniqueIdType.TAGK && type!=UniqueIdType.TAGV) return;
+		final boolean key = type==UniqueIdType.TAGK;
+		for(PredicateEntry entry: cache.asMap().values()) {
+			entry.remove(uid, key);
+		}
+		for(PredicateEntry entry: pendingLoads) {
+			entry.remove(uid, key);
+		}
+	}
+	
+	/**
+	 * Returns the number of cached entries updated in place by new tag pairs
+	 * @return the number of in place updates
+	 */
+	public long getInPlaceUpdates() {
+		return inPlaceUpdates.get();
+	}
+	
+	/**
+	 * Returns the number of entries in the cache
+	 * @return the number of entries in the cache
+	 */
+	public long size() {
+		return cache.size();
+	}
+	
+	/**
+	 * Clears the cache. Access counts are retained.
+	 */
+	public void clear() {
+		cache.invalidateAll();
+	}
+	
+	/**
+	 * Records this cache's stats to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		CacheStatistics.collectStats(collector, "tagpredicate", cache);
+	}
+	
+	/**
+	 * Persists the access log and unregisters the cache stats MBean
+	 */
+	public void shutdown() {
+		if(warmThread!=null) warmThread.interrupt();
+		writeAccessLog();
+		if(objectName!=null) {
+			try { JMXHelper.unregisterMBean(objectName); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Records an access of the passed predicate key
+	 * @param key The canonical predicate key
+	 */
+	protected void recordAccess(final String key) {
+		if(accessLogFile==null) return;
+		AtomicLong ctr = accessCounts.get(key);
+		if(ctr==null) {
+			if(accessCounts.size() >= maxTracked) return;
+			ctr = new AtomicLong(0L);
+			AtomicLong tmp = accessCounts.putIfAbsent(key, ctr);
+			if(tmp!=null) ctr = tmp;
+		}
+		ctr.incrementAndGet();
+	}
+	
+	/**
+	 * Writes the hottest predicate keys and their access counts to the access log file
+	 */
+	protected void writeAccessLog() {
+		if(accessLogFile==null || accessCounts.isEmpty()) return;
+		final List<Map.Entry<String, AtomicLong>> entries = new ArrayList<Map.Entry<String, AtomicLong>>(accessCounts.entrySet());
+		Collections.sort(entries, COUNT_DESC);
+		BufferedWriter writer = null;
+		int written = 0;
+		try {
+			final File dir = accessLogFile.getAbsoluteFile().getParentFile();
+			if(dir!=null && !dir.exists()) dir.mkdirs();
+			writer = new BufferedWriter(new FileWriter(accessLogFile, false));
+			for(Map.Entry<String, AtomicLong> e: entries) {
+				if(written >= warmCount) break;
+				writer.write(Long.toString(e.getValue().get()));
+				writer.write('\t');
+				writer.write(e.getKey());
+				writer.newLine();
+				written++;
+			}
+			writer.flush();
+			log.info("Wrote [{}] predicates to access log [{}]", written, accessLogFile);
+		} catch (Exception ex) {
+			log.warn("Failed to write predicate access log [{}]", accessLogFile, ex);
+		} finally {
+			if(writer!=null) try { writer.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Loads the hottest predicates recorded in the access log into the cache.
+	 * The persisted access counts are carried forward so hot predicates stay hot across restarts.
+	 * Called on the warm thread, which is interrupted if the cache is shut down first.
+	 */
+	protected void warm() {
+		BufferedReader reader = null;
+		int loaded = 0;
+		final long start = System.currentTimeMillis();
+		try {
+			reader = new BufferedReader(new FileReader(accessLogFile));
+			String line = null;
+			while((line = reader.readLine())!=null && loaded < warmCount && !Thread.currentThread().isInterrupted()) {
+				line = line.trim();
+				if(line.isEmpty()) continue;
+				final String[] frags = TAB_SPLITTER.split(line, 2);
+				if(frags.length!=2) continue;
+				final PredicateBuilder pb = new PredicateBuilder();
+				if(!pb.parseKey(frags[1])) continue;
+				try {
+					final String key = pb.getKey();
+					load(key, pb);
+					accessCounts.putIfAbsent(key, new AtomicLong(Long.parseLong(frags[0].trim())));
+					loaded++;
+				} catch (Exception ex) {
+					log.warn("Failed to warm predicate [{}]", frags[1], ex);
+				}
+			}
+			log.info("Warmed TagPredicateCache with [{}] predicates in [{}] ms.", loaded, System.currentTimeMillis()-start);
+		} catch (Exception ex) {
+			log.warn("Failed to read predicate access log [{}]", accessLogFile, ex);
+		} finally {
+			if(reader!=null) try { reader.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * <p>Title: PredicateEntry</p>
+	 * <p>Description: A cached predicate result, holding the matched tag pair XUIDs and the compiled predicates 
+	 * used to match newly added tag pairs</p> 
+	 */
+	protected static class PredicateEntry {
+		/** The compiled [key, value] matchers for each tag pair predicate */
+		final PredicateMatcher[][] matchers;
+		/** The matched tag pair XUIDs */
+		private volatile String[] xuids = EMPTY_ARR;
+		
+		/**
+		 * Creates a new PredicateEntry
+		 * @param pairPredicates The tag pair predicates
+		 */
+		PredicateEntry(final Map<String, String> pairPredicates) {
+			matchers = new PredicateMatcher[pairPredicates.size()][];
+			int i = 0;
+			for(Map.Entry<String, String> entry: pairPredicates.entrySet()) {
+				matchers[i++] = new PredicateMatcher[]{new PredicateMatcher(entry.getKey()), new PredicateMatcher(entry.getValue())};
+			}
+		}
+		
+		/**
+		 * Determines if the passed tag pair satisfies all the predicates of this entry
+		 * (the retrieval SQL INTERSECTs each pair predicate's result)
+		 * @param tagKey The tag key
+		 * @param tagValue The tag value
+		 * @return true if the pair matches, false otherwise
+		 */
+		boolean matches(final String tagKey, final String tagValue) {
+			if(matchers.length==0) return false;
+			for(PredicateMatcher[] pm: matchers) {
+				if(!pm[0].matches(tagKey) || !pm[1].matches(tagValue)) return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Returns the matched XUIDs
+		 * @return the matched XUIDs
+		 */
+		String[] get() {
+			return xuids;
+		}
+		
+		/**
+		 * Adds an XUID to this entry if not already present
+		 * @param xuid The XUID to add
+		 * @return true if added, false if already present
+		 */
+		synchronized boolean add(final String xuid) {
+			final String[] current = xuids;
+			for(String s: current) {
+				if(s.equals(xuid)) return false;
+			}
+			final String[] updated = new String[current.length+1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = xuid;
+			xuids = updated;
+			return true;
+		}
+		
+		/**
+		 * Merges the XUIDs retrieved from the DB into this entry
+		 * @param retrieved The retrieved XUIDs
+		 */
+		synchronized void addAll(final Set<String> retrieved) {
+			final Set<String> merged = new LinkedHashSet<String>(retrieved);
+			Collections.addAll(merged, xuids);
+			xuids = merged.toArray(new String[merged.size()]);
+		}
+		
+		/**
+		 * Removes any XUIDs referencing the passed tag key or tag value UID
+		 * @param uid The UID of the deleted tag key or value
+		 * @param key true if the UID is a tag key, false if it is a tag value
+		 */
+		synchronized void remove(final String uid, final boolean key) {
+			final String[] current = xuids;
+			final List<String> retained = new ArrayList<String>(current.length);
+			for(String s: current) {
+				if(key ? !s.startsWith(uid) : !s.endsWith(uid)) retained.add(s);
+			}
+			if(retained.size()!=current.length) {
+				xuids = retained.toArray(new String[retained.size()]);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: PredicateMatcher</p>
+	 * <p>Description: In memory equivalent of a predicate expanded by {@link TagPredicateCache#expandPredicate(String, String, List)}.
+	 * Alternatives are separated by <b><code>|</code></b>. An alternative containing a <b><code>*</code></b> is matched as a SQL <b><code>LIKE</code></b>, 
+	 * otherwise it is matched for equality.</p> 
+	 */
+	static class PredicateMatcher {
+		/** The exact match alternatives */
+		final Set<String> exact = new TreeSet<String>();
+		/** The LIKE match alternatives */
+		final Pattern like;
+		
+		/**
+		 * Creates a new PredicateMatcher
+		 * @param value The raw predicate expression
+		 */
+		PredicateMatcher(final String value) {
+			final StringTokenizer st = new StringTokenizer(value.replace(" ", ""), "|", false);
+			final StringBuilder b = new StringBuilder();
+			while(st.hasMoreTokens()) {
+				final String val = st.nextToken();
+				if(val.indexOf('*')==-1) {
+					exact.add(val);
+				} else {
+					if(b.length()>0) b.append('|');
+					b.append(likeToRegex(val.replace('*', '%')));
+				}
+			}
+			like = b.length()==0 ? null : Pattern.compile(b.toString());
+		}
+		
+		/**
+		 * Determines if the passed name matches this predicate
+		 * @param name The tag key or value name
+		 * @return true for a match, false otherwise
+		 */
+		boolean matches(final String name) {
+			if(name==null) return false;
+			if(exact.contains(name)) return true;
+			return like!=null && like.matcher(name).matches();
+		}
+		
+		/**
+		 * Converts a SQL LIKE expression to a regex
+		 * @param expr The LIKE expression
+		 * @return the equivalent regex
+		 */
+		static String likeToRegex(final String expr) {
+			final StringBuilder b = new StringBuilder("(?:");
+			final StringBuilder literal = new StringBuilder();
+			for(int i = 0; i < expr.length(); i++) {
+				final char c = expr.charAt(i);
+				if(c=='%' || c=='_') {
+					if(literal.length()>0) { b.append(Pattern.quote(literal.toString())); literal.setLength(0); }
+					b.append(c=='%' ? ".*" : ".");
+				} else {
+					literal.append(c);
+				}
+			}
+			if(literal.length()>0) b.append(Pattern.quote(literal.toString()));
+			return b.append(")").toString();
+		}
+	}
+	
+	private class PredicateRetriever implements Callable<PredicateEntry>, ResultSetHandler {
 		final PredicateBuilder pb;
 		final Set<String> results = new LinkedHashSet<String>();
+		/** The entry being loaded, registered in {@link TagPredicateCache#pendingLoads} until the cache installs it */
+		volatile PredicateEntry entry = null;
 		
 		public PredicateRetriever(PredicateBuilder pb) {
 			this.pb = pb;
@@ -132,11 +539,14 @@ public class TagPredicateCache {
 
 
 		@Override
-		public String[] call() throws Exception {
+		public PredicateEntry call() throws Exception {
+			final PredicateEntry entry = new PredicateEntry(pb.pairPredicates);
+			if(pb.pairPredicates.isEmpty()) return entry;
+			this.entry = entry;
 			StringBuilder b = new StringBuilder();
 			boolean first = true;
 			List<Object> binds = new ArrayList<Object>();
-			for(Map.Entry<String, String> entry: pb.pairPredicates.entrySet()) {
+			for(Map.Entry<String, String> e: pb.pairPredicates.entrySet()) {
 				
 				if(first) {
 					first = false;
@@ -145,14 +555,18 @@ public class TagPredicateCache {
 				}
 				b.append(LOAD_SQL);
 				b.append("(")
-					.append("(").append(expandPredicate(entry.getKey(), TAGK_SQL_BLOCK, binds)).append(")")
+					.append("(").append(expandPredicate(e.getKey(), TAGK_SQL_BLOCK, binds)).append(")")
 					.append(" AND ")
-					.append("(").append(expandPredicate(entry.getValue(), TAGV_SQL_BLOCK, binds)).append(")")
+					.append("(").append(expandPredicate(e.getValue(), TAGV_SQL_BLOCK, binds)).append(")")
 					.append(") ");
 			}
-			log.info("Executing SQL [{}]", fillInSQL(b.toString(), binds));
-			sqlWorker.executeQuery(b.toString(), this, binds.toArray(new Object[0]));			
-			return results.toArray(new String[results.size()]);
+			if(log.isDebugEnabled()) log.debug("Executing SQL [{}]", fillInSQL(b.toString(), binds));
+			// Register before querying so tag pairs committed while the query runs are not lost.
+			// The entry is deregistered by the caller once the cache has installed it.
+			pendingLoads.add(entry);
+			sqlWorker.executeQuery(b.toString(), this, binds.toArray(new Object[0]));
+			entry.addAll(results);
+			return entry;
 		}
 
 
@@ -191,12 +605,12 @@ public class TagPredicateCache {
 		final TreeSet<String> keyPredicates = new TreeSet<String>();
 		final TreeSet<String> valuePredicates = new TreeSet<String>();
 		final TreeMap<String, String> pairPredicates = new TreeMap<String, String>();		
-		private volatile String[] preds = {};
+		private volatile String key = null;
 		
 		public PredicateBuilder appendKeys(String...keys) {
 			for(String s: keys) {
 				if(s!=null && !s.trim().isEmpty()) {
-					if(keyPredicates.add(s.trim())) preds = null;
+					keyPredicates.add(s.trim());
 				}
 			}
 			return this;
@@ -205,7 +619,7 @@ public class TagPredicateCache {
 		public PredicateBuilder appendValues(String...values) {
 			for(String s: values) {
 				if(s!=null && !s.trim().isEmpty()) {
-					if(valuePredicates.add(s.trim())) preds = null;
+					valuePredicates.add(s.trim());
 				}
 			}
 			return this;
@@ -216,26 +630,50 @@ public class TagPredicateCache {
 			for(Map.Entry<String, String> e: tags.entrySet()) {
 				pairPredicates.put(e.getKey().trim(), e.getValue().trim());
 			}
-			preds = null;
+			key = null;
 			return this;			
 		}
 		
-		public int hashCode() {
-			if(preds==null) {
-				final int k = keyPredicates.size();
-				final int v = valuePredicates.size();
-				final int p = pairPredicates.size();
-				preds = new String[p];
-				System.arraycopy(valuePredicates.toArray(new String[p]), 0, preds, 0, p);
-//				System.arraycopy(keyPredicates.toArray(new String[k]), 0, preds, 0, k);
-//				System.arraycopy(valuePredicates.toArray(new String[v]), 0, preds, k-1, v);
+		/**
+		 * Returns the canonical key for the tag pair predicates, which are the only predicates the retrieval SQL uses.
+		 * The pairs are sorted, so the same predicates supplied in any order produce the same key.
+		 * @return the canonical predicate key
+		 */
+		public String getKey() {
+			if(key==null) {
+				final StringBuilder b = new StringBuilder();
+				for(Map.Entry<String, String> e: pairPredicates.entrySet()) {
+					if(b.length()>0) b.append(',');
+					b.append(e.getKey()).append('=').append(e.getValue());
+				}
+				key = b.toString();
+			}
+			return key;
+		}
+		
+		/**
+		 * Populates the tag pair predicates from a canonical predicate key
+		 * @param canonicalKey The canonical key
+		 * @return true if the key was parsed, false if it was malformed
+		 */
+		boolean parseKey(final String canonicalKey) {
+			for(String pair: PAIR_SPLITTER.split(canonicalKey)) {
+				final int index = pair.indexOf('=');
+				if(index < 1 || index==pair.length()-1) return false;
+				pairPredicates.put(pair.substring(0, index).trim(), pair.substring(index+1).trim());
 			}
-			return preds.length==0 ? 0 : Arrays.deepHashCode(preds);			
+			key = null;
+			return !pairPredicates.isEmpty();
+		}
+		
+		public int hashCode() {
+			return getKey().hashCode();
 		}
 		
 		public String[] get() throws Exception {
-			final int key = hashCode();
-			return cache.get(hashCode(), new PredicateRetriever(this));
+			final String k = getKey();
+			recordAccess(k);
+			return load(k, this).get();
 		}
 		
 		
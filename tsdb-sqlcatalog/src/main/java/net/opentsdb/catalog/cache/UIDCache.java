@@ -27,6 +27,7 @@ package net.opentsdb.catalog.cache;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.management.ObjectName;
 
@@ -35,6 +36,7 @@ import net.opentsdb.catalog.SQLWorker;
 import net.opentsdb.catalog.SQLWorker.ResultSetHandler;
 import net.opentsdb.catalog.TSDBCachedRowSetImpl;
 import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.stats.StatsCollector;
 import net.opentsdb.uid.UniqueId;
 
 import org.helios.jmx.util.helpers.ConfigurationHelper;
@@ -43,7 +45,6 @@ import org.helios.tsdb.plugins.util.JMXHelper;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.util.concurrent.Callables;
 
 /**
  * <p>Title: UIDCache</p>
@@ -124,6 +125,14 @@ public class UIDCache  {
 	
 
 	
+	/**
+	 * Records this cache's stats to the passed collector
+	 * @param collector The collector to write to
+	 */
+	public void collectStats(StatsCollector collector) {
+		CacheStatistics.collectStats(collector, "uid." + uidType.name().toLowerCase(), cache);
+	}
+	
 	/**
 	 * Shuts down the cache
 	 */
@@ -140,7 +149,13 @@ public class UIDCache  {
 	 */
 	public UIDMeta get(final String key, final Connection conn) {
 		try {
-			return cache.get(key, Callables.returning(getName(key, conn)));
+			return cache.get(key, new Callable<UIDMeta>() {
+				@Override
+				public UIDMeta call() throws Exception {
+					// A null (not found) load is not cached and surfaces as an exception
+					return getName(key, conn);
+				}
+			});
 		} catch (Exception ex) {
 			//throw new RuntimeException("UIDCache [" + uidType + "] failed on looking up [" + key + "]", ex);
 			return null;
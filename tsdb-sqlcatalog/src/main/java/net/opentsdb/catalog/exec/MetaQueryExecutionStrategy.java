@@ -0,0 +1,56 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.exec;
+
+/**
+ * <p>Title: MetaQueryExecutionStrategy</p>
+ * <p>Description: Defines how admitted meta API queries are given a thread to run on. 
+ * Admission, fairness and cancellation are handled by the {@link MetaQueryScheduler}, so an implementation
+ * only needs to run each query it is handed on its own thread, without queueing it behind other queries.</p>
+ * <p>Implementations are instantiated by class name and must have a public constructor accepting the 
+ * scheduler's maximum concurrency as an int.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.exec.MetaQueryExecutionStrategy</code></p>
+ */
+
+public interface MetaQueryExecutionStrategy {
+	/**
+	 * Runs the passed query asynchronously
+	 * @param query The query to run
+	 */
+	public void execute(Runnable query);
+	
+	/**
+	 * Returns a short descriptive name of this strategy
+	 * @return the strategy name
+	 */
+	public String getName();
+	
+	/**
+	 * Stops this strategy. Queries already running are allowed to complete. 
+	 */
+	public void shutdown();
+}
@@ -0,0 +1,597 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.exec;
+
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import net.opentsdb.catalog.SQLWorker;
+import net.opentsdb.meta.api.QueryContext;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.composable.Deferred;
+
+/**
+ * <p>Title: MetaQueryScheduler</p>
+ * <p>Description: Admits meta API queries onto a pluggable {@link MetaQueryExecutionStrategy}, where each
+ * admitted query gets its own thread rather than waiting behind a bounded dispatcher pool.</p>
+ * <p>Queries wait in one of two lanes according to their {@link MetaQueryClass}. While both lanes have waiting
+ * queries, <b><code>interactiveWeight</code></b> interactive queries are started for each bulk query, so neither a
+ * burst of slow autocomplete lookups nor a large TSMeta scan can starve the other. Each client, identified by
+ * {@link QueryContext#getClientId()}, may only have <b><code>clientLimit</code></b> queries running at once; 
+ * its other queries wait without blocking other clients' queries behind them.</p>
+ * <p>A reaper fails queries that expire before starting and cancels the JDBC statement of running queries whose 
+ * {@link QueryContext} has expired, which makes the statement's owner close it and fail the query's deferred.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.exec.MetaQueryScheduler</code></p>
+ */
+
+public class MetaQueryScheduler implements MetaQuerySchedulerMXBean, ThreadFactory {
+	/** Instance logger */
+	protected Logger log = LoggerFactory.getLogger(getClass());
+	/** The execution strategy admitted queries run on */
+	protected final MetaQueryExecutionStrategy strategy;
+	/** The maximum number of concurrently running queries */
+	protected final int maxConcurrent;
+	/** The maximum number of concurrently running queries per client */
+	protected final int clientLimit;
+	/** The number of interactive queries started for each bulk query while both are waiting */
+	protected final int interactiveWeight;
+	/** The waiting interactive queries */
+	protected final ArrayDeque<MetaQuery> interactive = new ArrayDeque<MetaQuery>();
+	/** The waiting bulk queries */
+	protected final ArrayDeque<MetaQuery> bulk = new ArrayDeque<MetaQuery>();
+	/** The number of running queries per client id */
+	protected final Map<String, int[]> clientRunning = new HashMap<String, int[]>();
+	/** The running queries */
+	protected final Set<MetaQuery> active = Collections.newSetFromMap(new ConcurrentHashMap<MetaQuery, Boolean>());
+	/** The number of running queries. Guarded by this. */
+	protected int running = 0;
+	/** The number of interactive queries that may still be started before a waiting bulk query. Guarded by this. */
+	protected int interactiveCredit;
+	/** The expiry reaper */
+	protected final ScheduledExecutorService reaper;
+	/** This scheduler's JMX ObjectName */
+	protected final ObjectName objectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=MetaQueryScheduler"));
+	
+	/** The total number of submitted queries */
+	protected final AtomicLong submitted = new AtomicLong(0L);
+	/** The total number of completed queries */
+	protected final AtomicLong completed = new AtomicLong(0L);
+	/** The number of queries that waited for their client's concurrency limit */
+	protected final AtomicLong clientThrottled = new AtomicLong(0L);
+	/** The number of queries that expired before they started */
+	protected final AtomicLong expiredQueued = new AtomicLong(0L);
+	/** The number of running queries cancelled on expiry */
+	protected final AtomicLong cancelled = new AtomicLong(0L);
+	
+	/** The configuration property name for the execution strategy: <b><code>auto</code></b>, <b><code>virtual</code></b>, <b><code>pooled</code></b> or a {@link MetaQueryExecutionStrategy} class name */
+	public static final String EXEC_STRATEGY_PROP = "helios.search.catalog.exec.strategy";
+	/** The default execution strategy, which uses virtual threads where the runtime supports them */
+	public static final String DEFAULT_EXEC_STRATEGY = "auto";
+	/** The configuration property name for the maximum number of concurrently running queries */
+	public static final String MAX_CONCURRENT_PROP = "helios.search.catalog.exec.maxconcurrent";
+	/** The default maximum number of concurrently running queries */
+	public static final int DEFAULT_MAX_CONCURRENT = 32;
+	/** The configuration property name for the maximum number of concurrently running queries per client */
+	public static final String CLIENT_LIMIT_PROP = "helios.search.catalog.exec.clientlimit";
+	/** The default maximum number of concurrently running queries per client */
+	public static final int DEFAULT_CLIENT_LIMIT = 4;
+	/** The configuration property name for the number of interactive queries started for each bulk query */
+	public static final String INTERACTIVE_WEIGHT_PROP = "helios.search.catalog.exec.interactiveweight";
+	/** The default number of interactive queries started for each bulk query */
+	public static final int DEFAULT_INTERACTIVE_WEIGHT = 4;
+	/** The expiry reaper period in ms. */
+	public static final long REAPER_PERIOD = 100L;
+	
+	/**
+	 * Creates a new MetaQueryScheduler
+	 * @param properties The plugin context's extracted properties
+	 */
+	public MetaQueryScheduler(final Properties properties) {
+		maxConcurrent = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(MAX_CONCURRENT_PROP, DEFAULT_MAX_CONCURRENT, properties));
+		clientLimit = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(CLIENT_LIMIT_PROP, DEFAULT_CLIENT_LIMIT, properties));
+		interactiveWeight = Math.max(1, ConfigurationHelper.getIntSystemThenEnvProperty(INTERACTIVE_WEIGHT_PROP, DEFAULT_INTERACTIVE_WEIGHT, properties));
+		interactiveCredit = interactiveWeight;
+		strategy = newStrategy(ConfigurationHelper.getSystemThenEnvProperty(EXEC_STRATEGY_PROP, DEFAULT_EXEC_STRATEGY, properties).trim(), maxConcurrent);
+		reaper = Executors.newSingleThreadScheduledExecutor(this);
+		reaper.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					reap();
+				} catch (Exception ex) {
+					log.warn("Meta query reaper failure", ex);
+				}
+			}
+		}, REAPER_PERIOD, REAPER_PERIOD, TimeUnit.MILLISECONDS);
+		JMXHelper.registerMBean(this, objectName);
+		log.info("Started MetaQueryScheduler with strategy [{}], max concurrent [{}], client limit [{}], interactive weight [{}]", strategy.getName(), maxConcurrent, clientLimit, interactiveWeight);
+	}
+	
+	/**
+	 * Creates the named execution strategy
+	 * @param name <b><code>auto</code></b>, <b><code>virtual</code></b>, <b><code>pooled</code></b> or a {@link MetaQueryExecutionStrategy} class name
+	 * @param maxConcurrent The maximum number of concurrently running queries
+	 * @return the execution strategy
+	 */
+	public static MetaQueryExecutionStrategy newStrategy(final String name, final int maxConcurrent) {
+		if("auto".equalsIgnoreCase(name)) {
+			return VirtualThreadExecutionStrategy.isAvailable() ? new VirtualThreadExecutionStrategy(maxConcurrent) : new PooledExecutionStrategy(maxConcurrent);
+		} else if("virtual".equalsIgnoreCase(name)) {
+			return new VirtualThreadExecutionStrategy(maxConcurrent);
+		} else if("pooled".equalsIgnoreCase(name)) {
+			return new PooledExecutionStrategy(maxConcurrent);
+		}
+		try {
+			final Class<? extends MetaQueryExecutionStrategy> clazz = Class.forName(name, true, MetaQueryScheduler.class.getClassLoader()).asSubclass(MetaQueryExecutionStrategy.class);
+			return clazz.getConstructor(int.class).newInstance(maxConcurrent);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to create meta query execution strategy [" + name + "]", ex);
+		}
+	}
+	
+	/**
+	 * Submits a query for execution
+	 * @param queryContext The query's context, providing the client id and expiry
+	 * @param queryClass The class of the query
+	 * @param def The deferred the query delivers into, failed if the query expires before it starts 
+	 * @param query The query
+	 */
+	public void submit(final QueryContext queryContext, final MetaQueryClass queryClass, final Deferred<?, ?> def, final Runnable query) {
+		submitted.incrementAndGet();
+		final MetaQuery mq = new MetaQuery(queryContext, queryClass, def, query);
+		synchronized(this) {
+			(queryClass==MetaQueryClass.INTERACTIVE ? interactive : bulk).addLast(mq);
+		}
+		dispatch();
+	}
+	
+	/**
+	 * Starts as many waiting queries as the concurrency limits allow
+	 */
+	protected void dispatch() {
+		List<MetaQuery> starting = null;
+		synchronized(this) {
+			while(running < maxConcurrent) {
+				final MetaQuery mq = next();
+				if(mq==null) break;
+				running++;
+				if(mq.clientId!=null) {
+					final int[] count = clientRunning.get(mq.clientId);
+					if(count==null) clientRunning.put(mq.clientId, new int[]{1});
+					else count[0]++;
+				}
+				if(starting==null) starting = new ArrayList<MetaQuery>(2);
+				starting.add(mq);
+			}
+		}
+		if(starting!=null) {
+			for(MetaQuery mq: starting) {
+				active.add(mq);
+				try {
+					strategy.execute(mq);
+				} catch (Exception ex) {
+					mq.fail(new RuntimeException("Meta query execution rejected", ex));
+					finished(mq);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes the next query to start from the lanes. Must be called while holding this scheduler's monitor.
+	 * @return the next query to start or null if no waiting query can be started
+	 */
+	private MetaQuery next() {
+		final boolean preferInteractive = interactiveCredit > 0 || bulk.isEmpty();
+		MetaQuery mq = take(preferInteractive ? interactive : bulk);
+		if(mq==null) mq = take(preferInteractive ? bulk : interactive);
+		if(mq!=null) {
+			if(mq.queryClass==MetaQueryClass.INTERACTIVE) interactiveCredit--;
+			else interactiveCredit = interactiveWeight;
+		}
+		return mq;
+	}
+	
+	/**
+	 * Removes the first query from the passed lane whose client is under its concurrency limit.
+	 * Must be called while holding this scheduler's monitor.
+	 * @param lane The lane to take from
+	 * @return the query or null if none can be started
+	 */
+	private MetaQuery take(final ArrayDeque<MetaQuery> lane) {
+		for(Iterator<MetaQuery> iter = lane.iterator(); iter.hasNext();) {
+			final MetaQuery mq = iter.next();
+			if(mq.clientId!=null) {
+				final int[] count = clientRunning.get(mq.clientId);
+				if(count!=null && count[0] >= clientLimit) {
+					if(!mq.throttled) {
+						mq.throttled = true;
+						clientThrottled.incrementAndGet();
+					}
+					continue;
+				}
+			}
+			iter.remove();
+			return mq;
+		}
+		return null;
+	}
+	
+	/**
+	 * Releases the concurrency held by a finished query and starts waiting queries
+	 * @param mq The finished query
+	 */
+	protected void finished(final MetaQuery mq) {
+		active.remove(mq);
+		completed.incrementAndGet();
+		synchronized(this) {
+			running--;
+			if(mq.clientId!=null) {
+				final int[] count = clientRunning.get(mq.clientId);
+				if(count!=null && --count[0] <= 0) clientRunning.remove(mq.clientId);
+			}
+		}
+		dispatch();
+	}
+	
+	/**
+	 * Fails waiting queries that have expired and cancels running queries that have expired 
+	 */
+	protected void reap() {
+		final long now = System.currentTimeMillis();
+		final List<MetaQuery> expired = new ArrayList<MetaQuery>();
+		synchronized(this) {
+			removeExpired(interactive, now, expired);
+			removeExpired(bulk, now, expired);
+		}
+		for(MetaQuery mq: expired) {
+			expiredQueued.incrementAndGet();
+			mq.fail(new TimeoutException("Request Timed Out Waiting To Start after [" + mq.queryContext.getTimeout() + "] ms."));
+		}
+		for(MetaQuery mq: active) {
+			if(mq.isExpired(now) && mq.cancel()) {
+				cancelled.incrementAndGet();
+				log.debug("Cancelled expired meta query [{}]", mq.queryContext);
+			}
+		}
+	}
+	
+	/**
+	 * Removes the expired queries from the passed lane. Must be called while holding this scheduler's monitor.
+	 * @param lane The lane to remove from
+	 * @param now The current time in ms.
+	 * @param expired The list the expired queries are added to
+	 */
+	private static void removeExpired(final ArrayDeque<MetaQuery> lane, final long now, final List<MetaQuery> expired) {
+		for(Iterator<MetaQuery> iter = lane.iterator(); iter.hasNext();) {
+			final MetaQuery mq = iter.next();
+			if(mq.isExpired(now)) {
+				iter.remove();
+				expired.add(mq);
+			}
+		}
+	}
+	
+	/**
+	 * Stops this scheduler, failing any waiting queries
+	 */
+	public void shutdown() {
+		reaper.shutdownNow();
+		final List<MetaQuery> waiting = new ArrayList<MetaQuery>();
+		synchronized(this) {
+			waiting.addAll(interactive);
+			waiting.addAll(bulk);
+			interactive.clear();
+			bulk.clear();
+		}
+		for(MetaQuery mq: waiting) {
+			mq.fail(new IllegalStateException("The meta query scheduler was shut down"));
+		}
+		strategy.shutdown();
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(final Runnable r) {
+		final Thread t = new Thread(r, "MetaQueryReaper");
+		t.setDaemon(true);
+		return t;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getStrategyName()
+	 */
+	@Override
+	public String getStrategyName() {
+		return strategy.getName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getMaxConcurrent()
+	 */
+	@Override
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getClientLimit()
+	 */
+	@Override
+	public int getClientLimit() {
+		return clientLimit;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getInteractiveWeight()
+	 */
+	@Override
+	public int getInteractiveWeight() {
+		return interactiveWeight;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getRunning()
+	 */
+	@Override
+	public synchronized int getRunning() {
+		return running;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getQueuedInteractive()
+	 */
+	@Override
+	public synchronized int getQueuedInteractive() {
+		return interactive.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getQueuedBulk()
+	 */
+	@Override
+	public synchronized int getQueuedBulk() {
+		return bulk.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getActiveClients()
+	 */
+	@Override
+	public synchronized int getActiveClients() {
+		return clientRunning.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getSubmitted()
+	 */
+	@Override
+	public long getSubmitted() {
+		return submitted.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getCompleted()
+	 */
+	@Override
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getClientThrottled()
+	 */
+	@Override
+	public long getClientThrottled() {
+		return clientThrottled.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getExpiredQueued()
+	 */
+	@Override
+	public long getExpiredQueued() {
+		return expiredQueued.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean#getCancelled()
+	 */
+	@Override
+	public long getCancelled() {
+		return cancelled.get();
+	}
+	
+	/**
+	 * <p>Title: MetaQuery</p>
+	 * <p>Description: A submitted query, which tracks the JDBC statements its thread executes so they can be cancelled on expiry</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.exec.MetaQueryScheduler.MetaQuery</code></p>
+	 */
+	protected class MetaQuery implements Runnable, SQLWorker.StatementTracker {
+		/** The query's context */
+		final QueryContext queryContext;
+		/** The class of the query */
+		final MetaQueryClass queryClass;
+		/** The deferred the query delivers into */
+		final Deferred<?, ?> def;
+		/** The query */
+		final Runnable query;
+		/** The id of the submitting client, or null if the query is not subject to a client limit */
+		final String clientId;
+		/** The time after which the query is expired */
+		volatile long deadline;
+		/** The statement currently executing on behalf of the query */
+		volatile Statement statement = null;
+		/** Indicates the query has been cancelled */
+		volatile boolean cancelled = false;
+		/** Indicates the query has been held back by its client's limit. Guarded by the scheduler. */
+		boolean throttled = false;
+		
+		/**
+		 * Creates a new MetaQuery
+		 * @param queryContext The query's context
+		 * @param queryClass The class of the query
+		 * @param def The deferred the query delivers into
+		 * @param query The query
+		 */
+		MetaQuery(final QueryContext queryContext, final MetaQueryClass queryClass, final Deferred<?, ?> def, final Runnable query) {
+			this.queryContext = queryContext;
+			this.queryClass = queryClass;
+			this.def = def;
+			this.query = query;
+			clientId = queryContext.getClientId();
+			deadline = System.currentTimeMillis() + queryContext.getTimeout();
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			SQLWorker.bindStatementTracker(this);
+			try {
+				query.run();
+			} catch (Throwable t) {
+				log.error("Meta query failed", t);
+				fail(t);
+			} finally {
+				SQLWorker.bindStatementTracker(null);
+				statement = null;
+				finished(this);
+			}
+		}
+		
+		/**
+		 * Indicates if this query has expired. Follows the context's time limit, which is pushed out 
+		 * as a continuous or multi-page query makes progress.
+		 * @param now The current time in ms.
+		 * @return true if expired, false otherwise
+		 */
+		boolean isExpired(final long now) {
+			final long timeLimit = queryContext.getTimeLimit();
+			if(timeLimit!=-1L && timeLimit > deadline) deadline = timeLimit;
+			return now > deadline;
+		}
+		
+		/**
+		 * Cancels this query's executing statement, which causes the statement's owner to close it
+		 * @return true if this call cancelled the query, false if it had already been cancelled
+		 */
+		boolean cancel() {
+			if(cancelled) return false;
+			cancelled = true;
+			cancelStatement(statement);
+			return true;
+		}
+		
+		/**
+		 * Cancels the passed statement
+		 * @param st The statement to cancel, ignored if null
+		 */
+		void cancelStatement(final Statement st) {
+			if(st!=null) {
+				try {
+					st.cancel();
+				} catch (Exception ex) {
+					log.debug("Failed to cancel statement for expired meta query", ex);
+				}
+			}
+		}
+		
+		/**
+		 * Fails this query's deferred
+		 * @param t The failure cause
+		 */
+		void fail(final Throwable t) {
+			try {
+				def.accept(t);
+			} catch (Exception ex) {
+				log.warn("Failed to deliver meta query failure", ex);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see net.opentsdb.catalog.SQLWorker.StatementTracker#onExecute(java.sql.Statement)
+		 */
+		@Override
+		public void onExecute(final Statement st) {
+			statement = st;
+			if(cancelled) cancelStatement(st);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see net.opentsdb.catalog.SQLWorker.StatementTracker#onClose(java.sql.Statement)
+		 */
+		@Override
+		public void onClose(final Statement st) {
+			if(statement==st) statement = null;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.exec;
+
+/**
+ * <p>Title: MetaQuerySchedulerMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link MetaQueryScheduler}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.exec.MetaQuerySchedulerMXBean</code></p>
+ */
+
+public interface MetaQuerySchedulerMXBean {
+	/**
+	 * Returns the name of the execution strategy queries run on
+	 * @return the execution strategy name
+	 */
+	public String getStrategyName();
+	
+	/**
+	 * Returns the maximum number of concurrently running queries
+	 * @return the maximum number of concurrently running queries
+	 */
+	public int getMaxConcurrent();
+	
+	/**
+	 * Returns the maximum number of concurrently running queries per client
+	 * @return the maximum number of concurrently running queries per client
+	 */
+	public int getClientLimit();
+	
+	/**
+	 * Returns the number of interactive queries started for each bulk query while both are waiting
+	 * @return the interactive weight
+	 */
+	public int getInteractiveWeight();
+	
+	/**
+	 * Returns the number of currently running queries
+	 * @return the number of running queries
+	 */
+	public int getRunning();
+	
+	/**
+	 * Returns the number of queued interactive queries
+	 * @return the number of queued interactive queries
+	 */
+	public int getQueuedInteractive();
+	
+	/**
+	 * Returns the number of queued bulk queries
+	 * @return the number of queued bulk queries
+	 */
+	public int getQueuedBulk();
+	
+	/**
+	 * Returns the number of clients with running queries
+	 * @return the number of active clients
+	 */
+	public int getActiveClients();
+	
+	/**
+	 * Returns the total number of submitted queries
+	 * @return the number of submitted queries
+	 */
+	public long getSubmitted();
+	
+	/**
+	 * Returns the total number of completed queries
+	 * @return the number of completed queries
+	 */
+	public long getCompleted();
+	
+	/**
+	 * Returns the number of queries that waited for their client's concurrency limit
+	 * @return the number of client throttled queries
+	 */
+	public long getClientThrottled();
+	
+	/**
+	 * Returns the number of queries that expired before they started
+	 * @return the number of queries expired in the queue
+	 */
+	public long getExpiredQueued();
+	
+	/**
+	 * Returns the number of running queries cancelled on expiry
+	 * @return the number of cancelled queries
+	 */
+	public long getCancelled();
+}
@@ -0,0 +1,98 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.exec;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Title: PooledExecutionStrategy</p>
+ * <p>Description: The fallback {@link MetaQueryExecutionStrategy} for runtimes without virtual threads.
+ * Queries run on a pool of daemon threads sized to the scheduler's maximum concurrency, so an admitted query
+ * never waits for a thread. Idle threads time out.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.exec.PooledExecutionStrategy</code></p>
+ */
+
+public class PooledExecutionStrategy implements MetaQueryExecutionStrategy, ThreadFactory {
+	/** The query thread pool */
+	protected final ThreadPoolExecutor pool;
+	/** Serial number factory for thread names */
+	protected final AtomicInteger serial = new AtomicInteger(0);
+	
+	/** The idle time in seconds after which a pool thread is stopped */
+	public static final long IDLE_TIMEOUT = 60L;
+	
+	/**
+	 * Creates a new PooledExecutionStrategy
+	 * @param maxConcurrency The maximum number of concurrently running queries
+	 */
+	public PooledExecutionStrategy(final int maxConcurrency) {
+		pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, IDLE_TIMEOUT, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), this);
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQueryExecutionStrategy#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(final Runnable query) {
+		pool.execute(query);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQueryExecutionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "pooled";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQueryExecutionStrategy#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(final Runnable r) {
+		final Thread t = new Thread(r, "MetaQueryThread#" + serial.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	}
+}
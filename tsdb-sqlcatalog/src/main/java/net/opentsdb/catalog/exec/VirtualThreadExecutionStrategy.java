@@ -0,0 +1,107 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.exec;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Title: VirtualThreadExecutionStrategy</p>
+ * <p>Description: A {@link MetaQueryExecutionStrategy} that runs each query on its own virtual thread. 
+ * The executor is acquired reflectively so this class loads on any runtime, and {@link #isAvailable()} 
+ * reports whether the running JVM actually supports virtual threads.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.exec.VirtualThreadExecutionStrategy</code></p>
+ */
+
+public class VirtualThreadExecutionStrategy implements MetaQueryExecutionStrategy {
+	/** The thread per task executor */
+	protected final ExecutorService executor;
+	
+	/** The virtual thread per task executor factory method, or null if the runtime does not support virtual threads */
+	private static final Method NEW_VIRTUAL_EXECUTOR;
+	
+	static {
+		Method m = null;
+		try {
+			m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			// Preview runtimes expose the method but throw unless previews are enabled
+			((ExecutorService)m.invoke(null)).shutdown();
+		} catch (Throwable t) {
+			m = null;
+		}
+		NEW_VIRTUAL_EXECUTOR = m;
+	}
+	
+	/**
+	 * Indicates if the running JVM supports virtual threads
+	 * @return true if virtual threads are supported, false otherwise
+	 */
+	public static boolean isAvailable() {
+		return NEW_VIRTUAL_EXECUTOR!=null;
+	}
+	
+	/**
+	 * Creates a new VirtualThreadExecutionStrategy
+	 * @param maxConcurrency The maximum number of concurrently running queries. Ignored since virtual threads are not pooled.
+	 */
+	public VirtualThreadExecutionStrategy(final int maxConcurrency) {
+		if(NEW_VIRTUAL_EXECUTOR==null) throw new IllegalStateException("Virtual threads are not supported by this JVM");
+		try {
+			executor = (ExecutorService)NEW_VIRTUAL_EXECUTOR.invoke(null);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to create virtual thread executor", ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQueryExecutionStrategy#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(final Runnable query) {
+		executor.execute(query);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQueryExecutionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "virtual";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.exec.MetaQueryExecutionStrategy#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,650 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import org.helios.tsdb.plugins.util.ConfigurationHelper;
+import org.helios.tsdb.plugins.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: CatalogExporter</p>
+ * <p>Description: Exports the catalog's TSMeta, UID, tag pair and TSMeta tag pair tables to columnar files in a local directory
+ * so that capacity reports and other analytics can run against the files instead of the serving catalog.</p>
+ * <p>The first export of each table is full. Later exports are incremental, containing only the rows whose <b><code>LAST_UPDATE</code></b>
+ * (or, for the tag pair tables which have none, whose TSMeta's <b><code>LAST_UPDATE</code></b>) is later than the table's watermark.
+ * <b><code>LAST_UPDATE</code></b> is stamped when a row is written, not when it is committed, so each export only reads rows up to a cutoff
+ * trailing the export start by a safety lag, and the watermark advances to that cutoff. A row stamped before the cutoff but committed after
+ * it is read by a later export, provided its commit is not delayed by more than the lag. Every file therefore covers a disjoint
+ * <b><code>(watermark, cutoff]</code></b> window. Watermarks are persisted in the export directory. Files are written to a temporary name and renamed when complete, as
+ * <b><code>&lt;dir&gt;/&lt;TABLE&gt;/&lt;TABLE&gt;-&lt;timestamp&gt;-&lt;full|delta&gt;&lt;ext&gt;</code></b>.</p>
+ * <p>Exports run on a single low priority background thread and reads are throttled to a configurable number of rows per second.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.export.CatalogExporter</code></p>
+ */
+
+public class CatalogExporter implements CatalogExporterMXBean, ThreadFactory {
+	/** Instance logger */
+	protected Logger log = LoggerFactory.getLogger(getClass());
+	/** The catalog datasource */
+	protected final DataSource dataSource;
+	/** The export directory */
+	protected final File exportDir;
+	/** The export format */
+	protected final ExportFormat format;
+	/** The period between scheduled exports in seconds */
+	protected final long period;
+	/** The safety lag in ms. between an export's start and the latest LAST_UPDATE it reads */
+	protected final long lag;
+	/** The JDBC fetch size */
+	protected final int fetchSize;
+	/** The maximum number of rows read per second, 0 for unthrottled */
+	protected volatile int maxRowsPerSecond;
+	/** The export scheduler */
+	protected final ScheduledExecutorService scheduler;
+	/** The watermarks keyed by table */
+	protected final Map<String, Long> watermarks = new TreeMap<String, Long>();
+	/** Indicates an export is running */
+	protected final AtomicBoolean running = new AtomicBoolean(false);
+	/** The number of completed exports */
+	protected final AtomicLong exportCount = new AtomicLong(0L);
+	/** The number of failed exports */
+	protected final AtomicLong failureCount = new AtomicLong(0L);
+	/** The total rows exported */
+	protected final AtomicLong totalRows = new AtomicLong(0L);
+	/** The cumulative throttled time in ms */
+	protected final AtomicLong throttledTime = new AtomicLong(0L);
+	/** The rows exported by the last export */
+	protected volatile long lastExportRows = 0L;
+	/** The elapsed time of the last export in ms */
+	protected volatile long lastExportElapsed = 0L;
+	/** The completion time of the last export */
+	protected volatile long lastExportTime = 0L;
+	/** The JMX ObjectName */
+	protected final ObjectName objectName = JMXHelper.objectName(new StringBuilder(getClass().getPackage().getName()).append(":service=CatalogExporter"));
+	/** Thread serial number factory */
+	protected final AtomicInteger serial = new AtomicInteger(0);
+	
+	/** The configuration property name for enabling scheduled catalog exports */
+	public static final String EXPORT_ENABLED_PROP = "helios.search.catalog.export.enabled";
+	/** The default scheduled catalog export enablement */
+	public static final boolean DEFAULT_EXPORT_ENABLED = false;
+	/** The configuration property name for the export directory */
+	public static final String EXPORT_DIR_PROP = "helios.search.catalog.export.dir";
+	/** The default export directory */
+	public static final String DEFAULT_EXPORT_DIR = (System.getProperty("java.io.tmpdir") + File.separator + "tsdb-catalog-export").replace(File.separator + File.separator, File.separator);
+	/** The configuration property name for the export format name or {@link ExportFormat} class name */
+	public static final String EXPORT_FORMAT_PROP = "helios.search.catalog.export.format";
+	/** The default export format */
+	public static final String DEFAULT_EXPORT_FORMAT = ColumnarExportFormat.NAME;
+	/** The configuration property name for the export period in seconds */
+	public static final String EXPORT_PERIOD_PROP = "helios.search.catalog.export.period";
+	/** The default export period in seconds */
+	public static final long DEFAULT_EXPORT_PERIOD = 3600;
+	/** The configuration property name for the safety lag in seconds behind the export start that an export reads up to */
+	public static final String EXPORT_LAG_PROP = "helios.search.catalog.export.lag";
+	/** The default export safety lag in seconds */
+	public static final long DEFAULT_EXPORT_LAG = 120;
+	/** The configuration property name for the columnar row group size */
+	public static final String EXPORT_ROWGROUP_PROP = "helios.search.catalog.export.rowgroup";
+	/** The default columnar row group size */
+	public static final int DEFAULT_EXPORT_ROWGROUP = ColumnarExportFormat.DEFAULT_ROW_GROUP_SIZE;
+	/** The configuration property name for the maximum rows read per second */
+	public static final String EXPORT_THROTTLE_PROP = "helios.search.catalog.export.throttle";
+	/** The default maximum rows read per second */
+	public static final int DEFAULT_EXPORT_THROTTLE = 20000;
+	/** The configuration property name for the JDBC fetch size */
+	public static final String EXPORT_FETCHSIZE_PROP = "helios.search.catalog.export.fetchsize";
+	/** The default JDBC fetch size */
+	public static final int DEFAULT_EXPORT_FETCHSIZE = 1000;
+	
+	/** The name of the watermark file in the export directory */
+	public static final String STATE_FILE = "export.state";
+	
+	/** The exported tables. Full queries bind the cutoff, incremental queries bind the watermark then the cutoff. 
+	 * Tag pairs are immutable, so the full tag pair export is unbounded and a pair may appear in more than one file. */
+	protected static final ExportTable[] TABLES = {
+		new ExportTable("TSD_METRIC", "SELECT * FROM TSD_METRIC WHERE LAST_UPDATE <= ?", "SELECT * FROM TSD_METRIC WHERE LAST_UPDATE > ? AND LAST_UPDATE <= ?", "TSD_METRIC"),
+		new ExportTable("TSD_TAGK", "SELECT * FROM TSD_TAGK WHERE LAST_UPDATE <= ?", "SELECT * FROM TSD_TAGK WHERE LAST_UPDATE > ? AND LAST_UPDATE <= ?", "TSD_TAGK"),
+		new ExportTable("TSD_TAGV", "SELECT * FROM TSD_TAGV WHERE LAST_UPDATE <= ?", "SELECT * FROM TSD_TAGV WHERE LAST_UPDATE > ? AND LAST_UPDATE <= ?", "TSD_TAGV"),
+		new ExportTable("TSD_TAGPAIR", "SELECT * FROM TSD_TAGPAIR", 
+				"SELECT DISTINCT P.* FROM TSD_TAGPAIR P, TSD_FQN_TAGPAIR T, TSD_TSMETA F WHERE P.XUID = T.XUID AND T.FQNID = F.FQNID AND F.LAST_UPDATE > ? AND F.LAST_UPDATE <= ?", "TSD_TSMETA"),
+		new ExportTable("TSD_TSMETA", "SELECT * FROM TSD_TSMETA WHERE LAST_UPDATE <= ?", "SELECT * FROM TSD_TSMETA WHERE LAST_UPDATE > ? AND LAST_UPDATE <= ?", "TSD_TSMETA"),
+		new ExportTable("TSD_FQN_TAGPAIR", "SELECT T.* FROM TSD_FQN_TAGPAIR T, TSD_TSMETA F WHERE T.FQNID = F.FQNID AND F.LAST_UPDATE <= ?", 
+				"SELECT T.* FROM TSD_FQN_TAGPAIR T, TSD_TSMETA F WHERE T.FQNID = F.FQNID AND F.LAST_UPDATE > ? AND F.LAST_UPDATE <= ?", "TSD_TSMETA")
+	};
+	
+	/**
+	 * Creates a new CatalogExporter
+	 * @param dataSource The catalog datasource
+	 * @param config The catalog configuration
+	 */
+	public CatalogExporter(final DataSource dataSource, final Properties config) {
+		this.dataSource = dataSource;
+		exportDir = new File(ConfigurationHelper.getSystemThenEnvProperty(EXPORT_DIR_PROP, DEFAULT_EXPORT_DIR, config));
+		period = ConfigurationHelper.getLongSystemThenEnvProperty(EXPORT_PERIOD_PROP, DEFAULT_EXPORT_PERIOD, config);
+		lag = TimeUnit.SECONDS.toMillis(ConfigurationHelper.getLongSystemThenEnvProperty(EXPORT_LAG_PROP, DEFAULT_EXPORT_LAG, config));
+		fetchSize = ConfigurationHelper.getIntSystemThenEnvProperty(EXPORT_FETCHSIZE_PROP, DEFAULT_EXPORT_FETCHSIZE, config);
+		maxRowsPerSecond = ConfigurationHelper.getIntSystemThenEnvProperty(EXPORT_THROTTLE_PROP, DEFAULT_EXPORT_THROTTLE, config);
+		format = resolveFormat(
+				ConfigurationHelper.getSystemThenEnvProperty(EXPORT_FORMAT_PROP, DEFAULT_EXPORT_FORMAT, config),
+				ConfigurationHelper.getIntSystemThenEnvProperty(EXPORT_ROWGROUP_PROP, DEFAULT_EXPORT_ROWGROUP, config));
+		if(!exportDir.isDirectory() && !exportDir.mkdirs()) {
+			throw new RuntimeException("Failed to create export directory [" + exportDir + "]");
+		}
+		loadWatermarks();
+		scheduler = Executors.newSingleThreadScheduledExecutor(this);
+		if(ConfigurationHelper.getBooleanSystemThenEnvProperty(EXPORT_ENABLED_PROP, DEFAULT_EXPORT_ENABLED, config)) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					export(false);
+				}
+			}, period, period, TimeUnit.SECONDS);
+			log.info("Scheduled catalog exports every [{}] s to [{}] in format [{}]", period, exportDir, format.getName());
+		}
+		JMXHelper.registerMBean(this, objectName);
+	}
+	
+	/**
+	 * Resolves the named export format
+	 * @param name The built in format name, the name of a format available through {@link ServiceLoader}, or an {@link ExportFormat} class name
+	 * @param rowGroupSize The row group size for the built in format
+	 * @return the export format
+	 */
+	protected static ExportFormat resolveFormat(final String name, final int rowGroupSize) {
+		if(ColumnarExportFormat.NAME.equalsIgnoreCase(name)) return new ColumnarExportFormat(rowGroupSize);
+		for(ExportFormat ef: ServiceLoader.load(ExportFormat.class)) {
+			if(ef.getName().equalsIgnoreCase(name)) return ef;
+		}
+		try {
+			return (ExportFormat)Class.forName(name).newInstance();
+		} catch (Exception ex) {
+			throw new IllegalArgumentException("Unknown export format [" + name + "]", ex);
+		}
+	}
+	
+	/**
+	 * Stops the exporter, interrupting any running export
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+		try { JMXHelper.unregisterMBean(objectName); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#exportNow()
+	 */
+	@Override
+	public void exportNow() {
+		scheduler.execute(new Runnable() {
+			public void run() {
+				export(false);
+			}
+		});
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#exportFull()
+	 */
+	@Override
+	public void exportFull() {
+		scheduler.execute(new Runnable() {
+			public void run() {
+				export(true);
+			}
+		});
+	}
+	
+	/**
+	 * Exports each table, incrementally unless full is requested or the table has no watermark
+	 * @param full true to export every row
+	 */
+	protected void export(final boolean full) {
+		if(!running.compareAndSet(false, true)) return;
+		final long start = System.currentTimeMillis();
+		final String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(start));
+		final long cutoff = start - lag;
+		final Map<String, Long> startMarks;
+		synchronized(watermarks) {
+			startMarks = new TreeMap<String, Long>(watermarks);
+		}
+		// Watermarks only advance once every table has been exported
+		final Map<String, Long> endMarks = new TreeMap<String, Long>(startMarks);
+		long rows = 0;
+		Connection conn = null;
+		try {
+			conn = dataSource.getConnection();
+			try { conn.setReadOnly(true); } catch (Exception x) {/* No Op */}
+			// Some drivers only stream with a cursor when auto commit is off
+			conn.setAutoCommit(false);
+			for(ExportTable table: TABLES) {
+				final Long mark = full ? null : startMarks.get(table.markTable);
+				rows += exportTable(conn, table, mark, cutoff, stamp, endMarks);
+			}
+			synchronized(watermarks) {
+				watermarks.putAll(endMarks);
+			}
+			saveWatermarks();
+			lastExportRows = rows;
+			lastExportElapsed = System.currentTimeMillis() - start;
+			lastExportTime = System.currentTimeMillis();
+			exportCount.incrementAndGet();
+			log.info("Exported [{}] catalog rows to [{}] in [{}] ms", rows, exportDir, lastExportElapsed);
+		} catch (Exception ex) {
+			failureCount.incrementAndGet();
+			log.error("Catalog export failed", ex);
+		} finally {
+			if(conn!=null) {
+				try { conn.rollback(); } catch (Exception x) {/* No Op */}
+				try { conn.setAutoCommit(true); } catch (Exception x) {/* No Op */}
+				try { conn.setReadOnly(false); } catch (Exception x) {/* No Op */}
+				try { conn.close(); } catch (Exception x) {/* No Op */}
+			}
+			running.set(false);
+		}
+	}
+	
+	/**
+	 * Exports one table to a new file
+	 * @param conn The connection to read with
+	 * @param table The table to export
+	 * @param mark The watermark to export rows updated after, or null for a full export
+	 * @param cutoff The latest LAST_UPDATE to export
+	 * @param stamp The export timestamp for the file name
+	 * @param endMarks The watermarks to advance to the cutoff
+	 * @return the number of rows exported
+	 * @throws Exception thrown on any error
+	 */
+	protected long exportTable(final Connection conn, final ExportTable table, final Long mark, final long cutoff, final String stamp, final Map<String, Long> endMarks) throws Exception {
+		final File tableDir = new File(exportDir, table.name);
+		if(!tableDir.isDirectory() && !tableDir.mkdirs()) throw new IOException("Failed to create directory [" + tableDir + "]");
+		final String fileName = new StringBuilder(table.name).append('-').append(stamp).append(mark==null ? "-full" : "-delta").append(format.getExtension()).toString();
+		final File tmp = new File(tableDir, fileName + ".tmp");
+		PreparedStatement ps = null;
+		ResultSet rset = null;
+		TableWriter writer = null;
+		long rows = 0;
+		boolean complete = false;
+		try {
+			ps = conn.prepareStatement(mark==null ? table.fullSql : table.deltaSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			if(mark==null) {
+				if(table.fullBindsCutoff) ps.setTimestamp(1, new Timestamp(cutoff));
+			} else {
+				ps.setTimestamp(1, new Timestamp(mark));
+				ps.setTimestamp(2, new Timestamp(cutoff));
+			}
+			rset = ps.executeQuery();
+			final ResultSetMetaData rsmd = rset.getMetaData();
+			final int cols = rsmd.getColumnCount();
+			final String[] names = new String[cols];
+			final ColumnType[] types = new ColumnType[cols];
+			for(int i = 0; i < cols; i++) {
+				names[i] = rsmd.getColumnLabel(i+1).toUpperCase();
+				types[i] = ColumnType.forSqlType(rsmd.getColumnType(i+1));
+			}
+			writer = format.newWriter(new FileOutputStream(tmp), table.name, names, types);
+			final Object[] row = new Object[cols];
+			final long startNanos = System.nanoTime();
+			while(rset.next()) {
+				for(int i = 0; i < cols; i++) {
+					row[i] = readValue(rset, i+1, types[i]);
+				}
+				writer.write(row);
+				rows++;
+				if((rows & 0xFF)==0) throttle(rows, startNanos);
+			}
+			writer.close();
+			writer = null;
+			complete = true;
+		} finally {
+			if(rset!=null) try { rset.close(); } catch (Exception x) {/* No Op */}
+			if(ps!=null) try { ps.close(); } catch (Exception x) {/* No Op */}
+			if(writer!=null) try { writer.close(); } catch (Exception x) {/* No Op */}
+			if(!complete) tmp.delete();
+		}
+		if(rows==0 && mark!=null) {
+			tmp.delete();
+		} else if(!tmp.renameTo(new File(tableDir, fileName))) {
+			tmp.delete();
+			throw new IOException("Failed to publish export file [" + fileName + "]");
+		}
+		if(table.tracksMark()) {
+			// Never move a watermark back, e.g. when the lag has been raised
+			final Long prior = endMarks.get(table.name);
+			if(prior==null || prior.longValue() < cutoff) endMarks.put(table.name, cutoff);
+		}
+		totalRows.addAndGet(rows);
+		log.debug("Exported [{}] rows from [{}]", rows, table.name);
+		return rows;
+	}
+	
+	/**
+	 * Reads a column value as the type it is exported as
+	 * @param rset The result set
+	 * @param col The 1 based column index
+	 * @param type The column type
+	 * @return the value or null
+	 * @throws Exception thrown on any error
+	 */
+	protected static Object readValue(final ResultSet rset, final int col, final ColumnType type) throws Exception {
+		switch(type) {
+			case LONG:
+				final long l = rset.getLong(col);
+				return rset.wasNull() ? null : Long.valueOf(l);
+			case DOUBLE:
+				final double d = rset.getDouble(col);
+				return rset.wasNull() ? null : Double.valueOf(d);
+			case TIMESTAMP:
+				final Timestamp ts = rset.getTimestamp(col);
+				return ts==null ? null : Long.valueOf(ts.getTime());
+			default:
+				return rset.getString(col);
+		}
+	}
+	
+	/**
+	 * Sleeps if the export is reading faster than the configured rate
+	 * @param rows The number of rows read so far
+	 * @param startNanos The time the read started
+	 * @throws InterruptedException thrown if the exporter is shut down while throttled
+	 */
+	protected void throttle(final long rows, final long startNanos) throws InterruptedException {
+		final int rate = maxRowsPerSecond;
+		if(rate < 1) return;
+		final long aheadMs = TimeUnit.NANOSECONDS.toMillis((rows * 1000000000L / rate) - (System.nanoTime() - startNanos));
+		if(aheadMs > 0) {
+			Thread.sleep(aheadMs);
+			throttledTime.addAndGet(aheadMs);
+		}
+	}
+	
+	/**
+	 * Loads the persisted watermarks
+	 */
+	protected void loadWatermarks() {
+		final File f = new File(exportDir, STATE_FILE);
+		if(!f.canRead()) return;
+		final Properties p = new Properties();
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(f);
+			p.load(fis);
+			synchronized(watermarks) {
+				for(String table: p.stringPropertyNames()) {
+					watermarks.put(table, Long.parseLong(p.getProperty(table).trim()));
+				}
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to load export watermarks from [{}]. Next export will be full.", f, ex);
+		} finally {
+			if(fis!=null) try { fis.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Persists the watermarks
+	 * @throws IOException thrown on any IO error
+	 */
+	protected void saveWatermarks() throws IOException {
+		final Properties p = new Properties();
+		synchronized(watermarks) {
+			for(Map.Entry<String, Long> e: watermarks.entrySet()) {
+				p.setProperty(e.getKey(), e.getValue().toString());
+			}
+		}
+		final File f = new File(exportDir, STATE_FILE);
+		final File tmp = new File(exportDir, STATE_FILE + ".tmp");
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(tmp);
+			p.store(fos, "Catalog export watermarks (LAST_UPDATE epoch millis)");
+		} finally {
+			if(fos!=null) try { fos.close(); } catch (Exception x) {/* No Op */}
+		}
+		if(!tmp.renameTo(f)) {
+			f.delete();
+			if(!tmp.renameTo(f)) throw new IOException("Failed to save export watermarks to [" + f + "]");
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(final Runnable r) {
+		final Thread t = new Thread(r, getClass().getSimpleName() + "Thread#" + serial.incrementAndGet());
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getExportDirectory()
+	 */
+	@Override
+	public String getExportDirectory() {
+		return exportDir.getAbsolutePath();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getFormat()
+	 */
+	@Override
+	public String getFormat() {
+		return format.getName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getPeriod()
+	 */
+	@Override
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getLag()
+	 */
+	@Override
+	public long getLag() {
+		return TimeUnit.MILLISECONDS.toSeconds(lag);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getMaxRowsPerSecond()
+	 */
+	@Override
+	public int getMaxRowsPerSecond() {
+		return maxRowsPerSecond;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#setMaxRowsPerSecond(int)
+	 */
+	@Override
+	public void setMaxRowsPerSecond(final int maxRowsPerSecond) {
+		this.maxRowsPerSecond = maxRowsPerSecond;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#isRunning()
+	 */
+	@Override
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getExportCount()
+	 */
+	@Override
+	public long getExportCount() {
+		return exportCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getFailureCount()
+	 */
+	@Override
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getTotalRows()
+	 */
+	@Override
+	public long getTotalRows() {
+		return totalRows.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getLastExportRows()
+	 */
+	@Override
+	public long getLastExportRows() {
+		return lastExportRows;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getLastExportElapsed()
+	 */
+	@Override
+	public long getLastExportElapsed() {
+		return lastExportElapsed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getLastExportTime()
+	 */
+	@Override
+	public long getLastExportTime() {
+		return lastExportTime;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getThrottledTime()
+	 */
+	@Override
+	public long getThrottledTime() {
+		return throttledTime.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.CatalogExporterMXBean#getWatermarks()
+	 */
+	@Override
+	public Map<String, Long> getWatermarks() {
+		synchronized(watermarks) {
+			return new TreeMap<String, Long>(watermarks);
+		}
+	}
+	
+	/**
+	 * <p>Title: ExportTable</p>
+	 * <p>Description: An exported table and the queries that read it</p> 
+	 */
+	protected static class ExportTable {
+		/** The table name */
+		final String name;
+		/** The full export query, binding the cutoff if it has a parameter */
+		final String fullSql;
+		/** Indicates if the full export query binds the cutoff */
+		final boolean fullBindsCutoff;
+		/** The incremental export query, binding the watermark and the cutoff */
+		final String deltaSql;
+		/** The table whose watermark the incremental query binds */
+		final String markTable;
+		
+		/**
+		 * Creates a new ExportTable
+		 * @param name The table name
+		 * @param fullSql The full export query, binding the cutoff if it has a parameter
+		 * @param deltaSql The incremental export query, binding the watermark and the cutoff
+		 * @param markTable The table whose watermark the incremental query binds
+		 */
+		ExportTable(final String name, final String fullSql, final String deltaSql, final String markTable) {
+			this.name = name;
+			this.fullSql = fullSql;
+			fullBindsCutoff = fullSql.indexOf('?')!=-1;
+			this.deltaSql = deltaSql;
+			this.markTable = markTable;
+		}
+		
+		/**
+		 * Indicates if this table's rows advance its own watermark
+		 * @return true if this table has its own LAST_UPDATE watermark
+		 */
+		boolean tracksMark() {
+			return name.equals(markTable);
+		}
+	}
+}
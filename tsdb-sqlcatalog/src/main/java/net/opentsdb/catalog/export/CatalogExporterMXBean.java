@@ -0,0 +1,137 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.export;
+
+import java.util.Map;
+
+/**
+ * <p>Title: CatalogExporterMXBean</p>
+ * <p>Description: JMX MXBean interface for {@link CatalogExporter}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.export.CatalogExporterMXBean</code></p>
+ */
+
+public interface CatalogExporterMXBean {
+	/**
+	 * Returns the directory exports are written to
+	 * @return the export directory
+	 */
+	public String getExportDirectory();
+	
+	/**
+	 * Returns the name of the export format
+	 * @return the export format name
+	 */
+	public String getFormat();
+	
+	/**
+	 * Returns the period between scheduled exports in seconds
+	 * @return the export period in seconds
+	 */
+	public long getPeriod();
+	
+	/**
+	 * Returns the safety lag behind each export's start that it reads LAST_UPDATEs up to
+	 * @return the export lag in seconds
+	 */
+	public long getLag();
+	
+	/**
+	 * Returns the maximum number of rows read per second
+	 * @return the maximum rows per second, or 0 if unthrottled
+	 */
+	public int getMaxRowsPerSecond();
+	
+	/**
+	 * Sets the maximum number of rows read per second
+	 * @param maxRowsPerSecond the maximum rows per second, or 0 to disable throttling
+	 */
+	public void setMaxRowsPerSecond(int maxRowsPerSecond);
+	
+	/**
+	 * Indicates if an export is running
+	 * @return true if an export is running
+	 */
+	public boolean isRunning();
+	
+	/**
+	 * Returns the number of completed exports
+	 * @return the number of completed exports
+	 */
+	public long getExportCount();
+	
+	/**
+	 * Returns the number of failed exports
+	 * @return the number of failed exports
+	 */
+	public long getFailureCount();
+	
+	/**
+	 * Returns the total number of rows exported
+	 * @return the total number of rows exported
+	 */
+	public long getTotalRows();
+	
+	/**
+	 * Returns the number of rows exported by the last export
+	 * @return the number of rows in the last export
+	 */
+	public long getLastExportRows();
+	
+	/**
+	 * Returns the elapsed time of the last export in ms
+	 * @return the last export elapsed time in ms
+	 */
+	public long getLastExportElapsed();
+	
+	/**
+	 * Returns the completion time of the last export
+	 * @return the last export completion time as UTC epoch millis, or 0 if no export has completed
+	 */
+	public long getLastExportTime();
+	
+	/**
+	 * Returns the cumulative time spent throttled in ms
+	 * @return the throttled time in ms
+	 */
+	public long getThrottledTime();
+	
+	/**
+	 * Returns the incremental export watermarks, the highest LAST_UPDATE exported, keyed by table
+	 * @return the watermarks as UTC epoch millis
+	 */
+	public Map<String, Long> getWatermarks();
+	
+	/**
+	 * Requests an incremental export of the rows updated since the last export
+	 */
+	public void exportNow();
+	
+	/**
+	 * Requests a full export of every row
+	 */
+	public void exportFull();
+}
@@ -0,0 +1,86 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.export;
+
+import java.sql.Types;
+
+/**
+ * <p>Title: ColumnType</p>
+ * <p>Description: The column types of exported catalog tables</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.export.ColumnType</code></p>
+ */
+
+public enum ColumnType {
+	/** Integral numbers, exported as longs */
+	LONG,
+	/** Floating point and decimal numbers, exported as doubles */
+	DOUBLE,
+	/** Timestamps and dates, exported as UTC epoch millis */
+	TIMESTAMP,
+	/** Everything else, exported as strings */
+	STRING;
+	
+	/** The column types indexed by ordinal */
+	private static final ColumnType[] values = values();
+	
+	/**
+	 * Decodes a column type from its ordinal
+	 * @param ordinal The ordinal
+	 * @return the column type
+	 */
+	public static ColumnType decode(final int ordinal) {
+		if(ordinal < 0 || ordinal >= values.length) throw new IllegalArgumentException("Invalid ColumnType ordinal [" + ordinal + "]");
+		return values[ordinal];
+	}
+	
+	/**
+	 * Returns the column type for a JDBC type
+	 * @param sqlType The JDBC type from {@link java.sql.ResultSetMetaData#getColumnType(int)}
+	 * @return the column type
+	 */
+	public static ColumnType forSqlType(final int sqlType) {
+		switch(sqlType) {
+			case Types.BIGINT:
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+				return LONG;
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+			case Types.NUMERIC:
+			case Types.DECIMAL:
+				return DOUBLE;
+			case Types.TIMESTAMP:
+			case Types.DATE:
+			case Types.TIME:
+				return TIMESTAMP;
+			default:
+				return STRING;
+		}
+	}
+}
@@ -0,0 +1,448 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.export;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Title: ColumnarExportFormat</p>
+ * <p>Description: The built in, dependency free, columnar export format. A file is a GZIP stream of:<ol>
+ * 	<li>The header: the magic bytes <b><code>TSDBCOL</code></b>, a format version byte, the table name, the column count 
+ * 	and each column's name and {@link ColumnType} ordinal.</li>
+ * 	<li>Row groups of up to {@link #getRowGroupSize()} rows, each the row count followed by one chunk per column. A chunk is 
+ * 	a null bitmap followed by the non null values: longs and doubles as 8 bytes, timestamps as epoch millis, and strings
+ * 	as a row group dictionary of distinct values followed by a dictionary index per value.</li>
+ * 	<li>The trailer: a zero row count and the total number of rows.</li>
+ * </ol>
+ * Strings are written as an int byte length followed by UTF-8 bytes. {@link Reader} reads the format back.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.export.ColumnarExportFormat</code></p>
+ */
+
+public class ColumnarExportFormat implements ExportFormat {
+	/** The number of rows per row group */
+	protected final int rowGroupSize;
+	
+	/** The format name */
+	public static final String NAME = "columnar";
+	/** The file name extension */
+	public static final String EXTENSION = ".tcol.gz";
+	/** The magic bytes at the start of every file */
+	public static final byte[] MAGIC = "TSDBCOL".getBytes(Charset.forName("US-ASCII"));
+	/** The format version */
+	public static final byte VERSION = 1;
+	/** The default number of rows per row group */
+	public static final int DEFAULT_ROW_GROUP_SIZE = 8192;
+	
+	/** The UTF-8 charset */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Creates a new ColumnarExportFormat with the default row group size
+	 */
+	public ColumnarExportFormat() {
+		this(DEFAULT_ROW_GROUP_SIZE);
+	}
+	
+	/**
+	 * Creates a new ColumnarExportFormat
+	 * @param rowGroupSize The number of rows per row group
+	 */
+	public ColumnarExportFormat(final int rowGroupSize) {
+		if(rowGroupSize < 1) throw new IllegalArgumentException("Invalid row group size [" + rowGroupSize + "]");
+		this.rowGroupSize = rowGroupSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.ExportFormat#getName()
+	 */
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.ExportFormat#getExtension()
+	 */
+	@Override
+	public String getExtension() {
+		return EXTENSION;
+	}
+	
+	/**
+	 * Returns the number of rows per row group
+	 * @return the row group size
+	 */
+	public int getRowGroupSize() {
+		return rowGroupSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see net.opentsdb.catalog.export.ExportFormat#newWriter(java.io.OutputStream, java.lang.String, java.lang.String[], net.opentsdb.catalog.export.ColumnType[])
+	 */
+	@Override
+	public TableWriter newWriter(final OutputStream out, final String table, final String[] columnNames, final ColumnType[] columnTypes) throws IOException {
+		return new Writer(out, table, columnNames, columnTypes, rowGroupSize);
+	}
+	
+	/**
+	 * Writes a length prefixed UTF-8 string
+	 * @param dos The output stream
+	 * @param s The string
+	 * @throws IOException thrown on any IO error
+	 */
+	static void writeString(final DataOutputStream dos, final String s) throws IOException {
+		final byte[] bytes = s.getBytes(UTF8);
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+	}
+	
+	/**
+	 * Reads a length prefixed UTF-8 string
+	 * @param dis The input stream
+	 * @return the string
+	 * @throws IOException thrown on any IO error
+	 */
+	static String readString(final DataInputStream dis) throws IOException {
+		final byte[] bytes = new byte[dis.readInt()];
+		dis.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	/**
+	 * <p>Title: Writer</p>
+	 * <p>Description: Buffers rows into column vectors and writes them a row group at a time</p> 
+	 */
+	static class Writer implements TableWriter {
+		/** The output stream */
+		final DataOutputStream dos;
+		/** The column types */
+		final ColumnType[] types;
+		/** The row group size */
+		final int groupSize;
+		/** The buffered column vectors */
+		final Object[][] columns;
+		/** The number of buffered rows */
+		int rows = 0;
+		/** The total number of rows written */
+		long totalRows = 0;
+		
+		/**
+		 * Creates a new Writer and writes the header
+		 * @param out The output stream
+		 * @param table The table name
+		 * @param names The column names
+		 * @param types The column types
+		 * @param groupSize The row group size
+		 * @throws IOException thrown on any IO error
+		 */
+		Writer(final OutputStream out, final String table, final String[] names, final ColumnType[] types, final int groupSize) throws IOException {
+			if(names.length!=types.length) throw new IllegalArgumentException("Column name and type counts differ");
+			dos = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out, 8192), 8192));
+			this.types = types.clone();
+			this.groupSize = groupSize;
+			columns = new Object[types.length][groupSize];
+			dos.write(MAGIC);
+			dos.writeByte(VERSION);
+			writeString(dos, table);
+			dos.writeInt(types.length);
+			for(int i = 0; i < types.length; i++) {
+				writeString(dos, names[i]);
+				dos.writeByte(types[i].ordinal());
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see net.opentsdb.catalog.export.TableWriter#write(java.lang.Object[])
+		 */
+		@Override
+		public void write(final Object[] row) throws IOException {
+			for(int c = 0; c < columns.length; c++) {
+				columns[c][rows] = row[c];
+			}
+			rows++;
+			if(rows==groupSize) flushGroup();
+		}
+		
+		/**
+		 * Writes the buffered rows as a row group
+		 * @throws IOException thrown on any IO error
+		 */
+		void flushGroup() throws IOException {
+			if(rows==0) return;
+			dos.writeInt(rows);
+			final byte[] nulls = new byte[(rows + 7) >>> 3];
+			for(int c = 0; c < columns.length; c++) {
+				final Object[] col = columns[c];
+				Arrays.fill(nulls, (byte)0);
+				for(int r = 0; r < rows; r++) {
+					if(col[r]==null) nulls[r >>> 3] |= (1 << (r & 7));
+				}
+				dos.write(nulls);
+				switch(types[c]) {
+					case LONG:
+					case TIMESTAMP:
+						for(int r = 0; r < rows; r++) {
+							if(col[r]!=null) dos.writeLong(((Number)col[r]).longValue());
+						}
+						break;
+					case DOUBLE:
+						for(int r = 0; r < rows; r++) {
+							if(col[r]!=null) dos.writeDouble(((Number)col[r]).doubleValue());
+						}
+						break;
+					default:
+						writeStrings(col);
+				}
+				Arrays.fill(col, 0, rows, null);
+			}
+			totalRows += rows;
+			rows = 0;
+		}
+		
+		/**
+		 * Writes a dictionary encoded string chunk
+		 * @param col The column vector
+		 * @throws IOException thrown on any IO error
+		 */
+		private void writeStrings(final Object[] col) throws IOException {
+			final Map<String, Integer> dict = new HashMap<String, Integer>();
+			final List<String> entries = new ArrayList<String>();
+			final int[] indexes = new int[rows];
+			for(int r = 0; r < rows; r++) {
+				if(col[r]==null) continue;
+				final String s = col[r].toString();
+				Integer index = dict.get(s);
+				if(index==null) {
+					index = entries.size();
+					dict.put(s, index);
+					entries.add(s);
+				}
+				indexes[r] = index;
+			}
+			dos.writeInt(entries.size());
+			for(String s: entries) {
+				writeString(dos, s);
+			}
+			for(int r = 0; r < rows; r++) {
+				if(col[r]!=null) dos.writeInt(indexes[r]);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see net.opentsdb.catalog.export.TableWriter#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				flushGroup();
+				dos.writeInt(0);
+				dos.writeLong(totalRows);
+				dos.flush();
+			} finally {
+				dos.close();
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: Reader</p>
+	 * <p>Description: Reads a columnar export file back into rows</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>net.opentsdb.catalog.export.ColumnarExportFormat.Reader</code></p>
+	 */
+	public static class Reader {
+		/** The input stream */
+		private final DataInputStream dis;
+		/** The table name */
+		private final String table;
+		/** The column names */
+		private final String[] names;
+		/** The column types */
+		private final ColumnType[] types;
+		/** The current row group's column vectors */
+		private Object[][] columns = null;
+		/** The number of rows in the current row group */
+		private int groupRows = 0;
+		/** The next row in the current row group */
+		private int nextRow = 0;
+		/** Indicates the trailer has been read */
+		private boolean done = false;
+		/** The total row count from the trailer */
+		private long totalRows = -1L;
+		
+		/**
+		 * Creates a new Reader and reads the header
+		 * @param in The input stream to read from
+		 * @throws IOException thrown on any IO error or if the stream is not in this format
+		 */
+		public Reader(final InputStream in) throws IOException {
+			dis = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, 8192), 8192));
+			final byte[] magic = new byte[MAGIC.length];
+			dis.readFully(magic);
+			if(!Arrays.equals(magic, MAGIC)) throw new IOException("Not a columnar export file");
+			final byte version = dis.readByte();
+			if(version!=VERSION) throw new IOException("Unsupported columnar export version [" + version + "]");
+			table = readString(dis);
+			final int count = dis.readInt();
+			names = new String[count];
+			types = new ColumnType[count];
+			for(int i = 0; i < count; i++) {
+				names[i] = readString(dis);
+				types[i] = ColumnType.decode(dis.readByte());
+			}
+		}
+		
+		/**
+		 * Returns the next row
+		 * @return the next row or null if there are no more rows
+		 * @throws IOException thrown on any IO error
+		 */
+		public Object[] next() throws IOException {
+			if(nextRow==groupRows && !readGroup()) return null;
+			final Object[] row = new Object[columns.length];
+			for(int c = 0; c < columns.length; c++) {
+				row[c] = columns[c][nextRow];
+			}
+			nextRow++;
+			return row;
+		}
+		
+		/**
+		 * Reads the next row group
+		 * @return true if a row group was read, false if the trailer was reached
+		 * @throws IOException thrown on any IO error
+		 */
+		private boolean readGroup() throws IOException {
+			if(done) return false;
+			final int rows = dis.readInt();
+			if(rows==0) {
+				totalRows = dis.readLong();
+				done = true;
+				return false;
+			}
+			columns = new Object[types.length][rows];
+			final byte[] nulls = new byte[(rows + 7) >>> 3];
+			for(int c = 0; c < types.length; c++) {
+				final Object[] col = columns[c];
+				dis.readFully(nulls);
+				switch(types[c]) {
+					case LONG:
+					case TIMESTAMP:
+						for(int r = 0; r < rows; r++) {
+							if(!isNull(nulls, r)) col[r] = dis.readLong();
+						}
+						break;
+					case DOUBLE:
+						for(int r = 0; r < rows; r++) {
+							if(!isNull(nulls, r)) col[r] = dis.readDouble();
+						}
+						break;
+					default:
+						final String[] dict = new String[dis.readInt()];
+						for(int i = 0; i < dict.length; i++) {
+							dict[i] = readString(dis);
+						}
+						for(int r = 0; r < rows; r++) {
+							if(!isNull(nulls, r)) col[r] = dict[dis.readInt()];
+						}
+				}
+			}
+			groupRows = rows;
+			nextRow = 0;
+			return true;
+		}
+		
+		/**
+		 * Tests a null bitmap
+		 * @param nulls The null bitmap
+		 * @param r The row
+		 * @return true if the row is null
+		 */
+		private static boolean isNull(final byte[] nulls, final int r) {
+			return (nulls[r >>> 3] & (1 << (r & 7)))!=0;
+		}
+		
+		/**
+		 * Closes the underlying stream
+		 */
+		public void close() {
+			try { dis.close(); } catch (Exception x) {/* No Op */}
+		}
+
+		/**
+		 * Returns the table name
+		 * @return the table name
+		 */
+		public String getTable() {
+			return table;
+		}
+
+		/**
+		 * Returns the column names
+		 * @return the column names
+		 */
+		public String[] getColumnNames() {
+			return names.clone();
+		}
+
+		/**
+		 * Returns the column types
+		 * @return the column types
+		 */
+		public ColumnType[] getColumnTypes() {
+			return types.clone();
+		}
+		
+		/**
+		 * Returns the total row count recorded in the trailer
+		 * @return the total row count, or -1 if the trailer has not been read yet
+		 */
+		public long getTotalRows() {
+			return totalRows;
+		}
+	}
+}
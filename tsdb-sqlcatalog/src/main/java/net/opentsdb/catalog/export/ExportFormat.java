@@ -0,0 +1,63 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Title: ExportFormat</p>
+ * <p>Description: A pluggable file format for catalog exports. The built in format is {@link ColumnarExportFormat}. 
+ * Additional formats, such as Arrow IPC or Parquet writers that depend on libraries not shipped with the catalog,
+ * are discovered through {@link java.util.ServiceLoader} by their {@link #getName()}, or loaded by class name.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.export.ExportFormat</code></p>
+ */
+
+public interface ExportFormat {
+	/**
+	 * Returns the name the format is configured by
+	 * @return the format name
+	 */
+	public String getName();
+	
+	/**
+	 * Returns the file name extension for files in this format, including the leading dot
+	 * @return the file name extension
+	 */
+	public String getExtension();
+	
+	/**
+	 * Creates a writer for one table
+	 * @param out The stream to write to, which the writer closes when it is closed
+	 * @param table The table name
+	 * @param columnNames The column names
+	 * @param columnTypes The column types
+	 * @return the table writer
+	 * @throws IOException thrown on any IO error
+	 */
+	public TableWriter newWriter(OutputStream out, String table, String[] columnNames, ColumnType[] columnTypes) throws IOException;
+}
@@ -0,0 +1,51 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package net.opentsdb.catalog.export;
+
+import java.io.IOException;
+
+/**
+ * <p>Title: TableWriter</p>
+ * <p>Description: Writes the rows of one exported catalog table in an {@link ExportFormat}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>net.opentsdb.catalog.export.TableWriter</code></p>
+ */
+
+public interface TableWriter {
+	/**
+	 * Writes a row. Values are Longs, Doubles, Longs (epoch millis) or Strings according to the column types, or null.
+	 * The row array may be reused by the caller once this method returns.
+	 * @param row The row values in column order
+	 * @throws IOException thrown on any IO error
+	 */
+	public void write(Object[] row) throws IOException;
+	
+	/**
+	 * Flushes any buffered rows, writes the format's trailer and closes the underlying stream
+	 * @throws IOException thrown on any IO error
+	 */
+	public void close() throws IOException;
+}
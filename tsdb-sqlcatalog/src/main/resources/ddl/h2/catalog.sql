@@ -100,6 +100,7 @@ CREATE TABLE IF NOT EXISTS TSD_FQN_TAGPAIR (
 ALTER TABLE TSD_FQN_TAGPAIR ADD CONSTRAINT IF NOT EXISTS TSD_FQN_TAGPAIR_PK PRIMARY KEY ( FQN_TP_ID ) ;
 CREATE UNIQUE INDEX IF NOT EXISTS TSD_FQN_TAGPAIR_AK ON TSD_FQN_TAGPAIR (FQN_TP_ID);
 CREATE UNIQUE INDEX IF NOT EXISTS TSD_FQN_TAGPAIR_IND ON TSD_FQN_TAGPAIR (FQNID, XUID, PORDER);
+CREATE INDEX IF NOT EXISTS TSD_FQN_TAGPAIR_XUID_IDX ON TSD_FQN_TAGPAIR (XUID, FQNID);
 ALTER TABLE TSD_FQN_TAGPAIR ADD CONSTRAINT IF NOT EXISTS TSD_FQN_TAGPAIR_FK FOREIGN KEY(XUID) REFERENCES TSD_TAGPAIR ( XUID ) ON DELETE CASCADE;
 
 CREATE TABLE IF NOT EXISTS TSD_TSMETA (
@@ -125,6 +126,8 @@ ALTER TABLE TSD_TSMETA ADD CONSTRAINT IF NOT EXISTS TSD_FQN_PK PRIMARY KEY ( FQN
 CREATE UNIQUE INDEX IF NOT EXISTS TSD_FQN_AK ON TSD_TSMETA (FQNID);
 CREATE UNIQUE INDEX IF NOT EXISTS TSD_FQN_TSUID_AK ON TSD_TSMETA (TSUID);
 CREATE UNIQUE INDEX IF NOT EXISTS TSD_FQN_FQN_AK ON TSD_TSMETA (FQN);
+CREATE INDEX IF NOT EXISTS TSD_TSMETA_METRIC_IDX ON TSD_TSMETA (METRIC_UID, FQNID);
+CREATE INDEX IF NOT EXISTS TSD_TSMETA_METRIC_TSUID_IDX ON TSD_TSMETA (METRIC_UID, TSUID);
 
 ALTER TABLE TSD_TSMETA ADD CONSTRAINT IF NOT EXISTS TSD_FQN_METRIC_FK FOREIGN KEY(METRIC_UID) REFERENCES TSD_METRIC ( XUID );
 
@@ -145,6 +145,7 @@ COMMENT ON COLUMN TSD_FQN_TAGPAIR.NODE IS 'Indicates if this tagpair is a Branch
 
 CREATE UNIQUE INDEX TSD_FQN_TAGPAIR_AK ON TSD_FQN_TAGPAIR (FQN_TP_ID);
 CREATE UNIQUE INDEX TSD_FQN_TAGPAIR_IND ON TSD_FQN_TAGPAIR (FQNID, XUID, PORDER);
+CREATE INDEX TSD_FQN_TAGPAIR_XUID_IDX ON TSD_FQN_TAGPAIR (XUID, FQNID);
 ALTER TABLE TSD_FQN_TAGPAIR ADD CONSTRAINT TSD_FQN_TAGPAIR_FK FOREIGN KEY(XUID) REFERENCES TSD_TAGPAIR ( XUID ) ON DELETE CASCADE;
 ALTER TABLE TSD_FQN_TAGPAIR ADD (CONSTRAINT  NODE_IS_B_OR_L CHECK (NODE IN ('B', 'L'))); 
 
@@ -193,6 +194,8 @@ COMMENT ON COLUMN TSD_TSMETA.CUSTOM IS 'An optional map of key/value pairs encod
 ALTER TABLE TSD_TSMETA ADD CONSTRAINT TSD_FQN_PK PRIMARY KEY ( FQNID ) ;
 CREATE UNIQUE INDEX TSD_FQN_TSUID_AK ON TSD_TSMETA (TSUID);
 CREATE UNIQUE INDEX TSD_FQN_FQN_AK ON TSD_TSMETA (FQN);
+CREATE INDEX TSD_TSMETA_METRIC_IDX ON TSD_TSMETA (METRIC_UID, FQNID);
+CREATE INDEX TSD_TSMETA_METRIC_TSUID_IDX ON TSD_TSMETA (METRIC_UID, TSUID);
 
 ALTER TABLE TSD_TSMETA ADD CONSTRAINT TSD_FQN_METRIC_FK FOREIGN KEY(METRIC_UID) REFERENCES TSD_METRIC ( XUID );
 
@@ -95,6 +95,7 @@ CREATE TABLE IF NOT EXISTS TSD_FQN_TAGPAIR (
 ); 
 
 CREATE INDEX IF NOT EXISTS TSD_FQN_TAGPAIR_IND ON TSD_FQN_TAGPAIR (FQNID, XUID, PORDER);
+CREATE INDEX IF NOT EXISTS TSD_FQN_TAGPAIR_XUID_IDX ON TSD_FQN_TAGPAIR (XUID, FQNID);
 
 -- =================================================================
 -- TSMETAS
@@ -121,6 +122,7 @@ CREATE TABLE IF NOT EXISTS TSD_TSMETA (
 
 CREATE INDEX IF NOT EXISTS TSD_META_FQN_AK ON TSD_TSMETA (FQN);
 CREATE INDEX IF NOT EXISTS TSD_META_TSUID_AK ON TSD_TSMETA (TSUID);
+CREATE INDEX IF NOT EXISTS TSD_META_METRIC_IDX ON TSD_TSMETA (METRIC_UID) INCLUDE (TSUID, FQN);
 
 -- =================================================================
 -- ANNOTATIONS
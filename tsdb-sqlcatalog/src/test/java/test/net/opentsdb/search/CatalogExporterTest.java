@@ -0,0 +1,232 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import net.opentsdb.catalog.export.CatalogExporter;
+import net.opentsdb.catalog.export.ColumnarExportFormat;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: CatalogExporterTest</p>
+ * <p>Description: Tests the incremental export windows of the {@link CatalogExporter}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.CatalogExporterTest</code></p>
+ */
+
+public class CatalogExporterTest {
+	/** The export safety lag in seconds used by the test */
+	static final int LAG = 2;
+	/** The catalog datasource */
+	protected JdbcDataSource dataSource = null;
+	/** A connection that keeps the in-memory database open */
+	protected Connection conn = null;
+	/** The export directory */
+	protected File exportDir = null;
+	/** The exporter under test */
+	protected CatalogExporter exporter = null;
+	
+	/**
+	 * Creates the exported tables in an in-memory database and a fresh export directory
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:" + getClass().getSimpleName() + System.nanoTime());
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+		conn = dataSource.getConnection();
+		final Statement st = conn.createStatement();
+		for(String uid: new String[]{"TSD_METRIC", "TSD_TAGK", "TSD_TAGV"}) {
+			st.execute("CREATE TABLE " + uid + " (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60), LAST_UPDATE TIMESTAMP NOT NULL)");
+		}
+		st.execute("CREATE TABLE TSD_TAGPAIR (XUID CHAR(12) PRIMARY KEY, TAGK CHAR(6), TAGV CHAR(6), NAME VARCHAR(120))");
+		st.execute("CREATE TABLE TSD_TSMETA (FQNID BIGINT PRIMARY KEY, TSUID VARCHAR(120), LAST_UPDATE TIMESTAMP NOT NULL)");
+		st.execute("CREATE TABLE TSD_FQN_TAGPAIR (FQNID BIGINT, XUID CHAR(12))");
+		st.close();
+		exportDir = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName() + "-" + System.nanoTime());
+	}
+	
+	/**
+	 * Stops the exporter, closes the database and deletes the export directory
+	 */
+	@After
+	public void tearDown() {
+		if(exporter!=null) exporter.shutdown();
+		exporter = null;
+		if(conn!=null) try { conn.close(); } catch (Exception x) {/* No Op */}
+		delete(exportDir);
+	}
+	
+	/**
+	 * Tests that rows stamped inside the lag are left for the next export, and that a row stamped before an
+	 * export started but committed after it is picked up by the next export instead of falling behind the watermark
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testLateCommitIsExported() throws Exception {
+		final long now = System.currentTimeMillis();
+		insertMetric("000001", "old.metric", now - 60000L);
+		insertMetric("000002", "recent.metric", now);
+		exporter = new CatalogExporter(dataSource, config());
+		Assert.assertEquals("Lag", LAG, exporter.getLag());
+		runExport();
+		Assert.assertEquals("First export", Arrays.asList("old.metric"), exportedMetrics(0));
+		final long mark = exporter.getWatermarks().get("TSD_METRIC");
+		Assert.assertTrue("Watermark trails the export start", mark < now + 1000L && mark >= now - (LAG * 1000L));
+		// Stamped before the first export started, committed after it
+		insertMetric("000003", "late.metric", now - 500L);
+		Thread.sleep(LAG * 1000L + 500L);
+		runExport();
+		final List<String> second = exportedMetrics(1);
+		Assert.assertEquals("Second export size", 2, second.size());
+		Assert.assertTrue("Recent metric exported", second.contains("recent.metric"));
+		Assert.assertTrue("Late metric exported", second.contains("late.metric"));
+		Assert.assertTrue("Watermark advanced", exporter.getWatermarks().get("TSD_METRIC") > mark);
+	}
+	
+	/**
+	 * Tests that an export with nothing in its window writes no delta file and leaves the other windows disjoint
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testEmptyDelta() throws Exception {
+		insertMetric("000001", "old.metric", System.currentTimeMillis() - 60000L);
+		exporter = new CatalogExporter(dataSource, config());
+		runExport();
+		runExport();
+		Assert.assertEquals("Export files", 1, exportFiles().length);
+		Assert.assertEquals("Full export", Arrays.asList("old.metric"), exportedMetrics(0));
+	}
+	
+	/**
+	 * Creates the exporter configuration
+	 * @return the exporter configuration
+	 */
+	protected Properties config() {
+		final Properties p = new Properties();
+		p.setProperty(CatalogExporter.EXPORT_DIR_PROP, exportDir.getAbsolutePath());
+		p.setProperty(CatalogExporter.EXPORT_LAG_PROP, "" + LAG);
+		p.setProperty(CatalogExporter.EXPORT_THROTTLE_PROP, "0");
+		return p;
+	}
+	
+	/**
+	 * Inserts a metric UID
+	 * @param xuid The UID
+	 * @param name The metric name
+	 * @param lastUpdate The LAST_UPDATE stamp
+	 * @throws Exception thrown on any error
+	 */
+	protected void insertMetric(final String xuid, final String name, final long lastUpdate) throws Exception {
+		final PreparedStatement ps = conn.prepareStatement("INSERT INTO TSD_METRIC VALUES (?,?,?)");
+		try {
+			ps.setString(1, xuid);
+			ps.setString(2, name);
+			ps.setTimestamp(3, new Timestamp(lastUpdate));
+			ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+	
+	/**
+	 * Runs an export and waits for it to complete
+	 * @throws Exception thrown on any error
+	 */
+	protected void runExport() throws Exception {
+		final long count = exporter.getExportCount();
+		exporter.exportNow();
+		final long timeout = System.currentTimeMillis() + 10000L;
+		while(exporter.getExportCount()==count) {
+			Assert.assertEquals("Failed exports", 0, exporter.getFailureCount());
+			Assert.assertTrue("Timed out waiting for export", System.currentTimeMillis() < timeout);
+			Thread.sleep(20);
+		}
+	}
+	
+	/**
+	 * Returns the published TSD_METRIC export files in export order
+	 * @return the export files
+	 */
+	protected File[] exportFiles() {
+		final File[] files = new File(exportDir, "TSD_METRIC").listFiles();
+		Arrays.sort(files);
+		return files;
+	}
+	
+	/**
+	 * Reads the metric names from a TSD_METRIC export file
+	 * @param index The index of the export file in export order
+	 * @return the metric names
+	 * @throws Exception thrown on any error
+	 */
+	protected List<String> exportedMetrics(final int index) throws Exception {
+		final File[] files = exportFiles();
+		Assert.assertTrue("Export file #" + index, files.length > index);
+		final ColumnarExportFormat.Reader reader = new ColumnarExportFormat.Reader(new FileInputStream(files[index]));
+		try {
+			final int nameCol = Arrays.asList(reader.getColumnNames()).indexOf("NAME");
+			final List<String> names = new ArrayList<String>();
+			Object[] row = null;
+			while((row = reader.next())!=null) {
+				names.add((String)row[nameCol]);
+			}
+			return names;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Recursively deletes a file or directory
+	 * @param f The file to delete
+	 */
+	protected static void delete(final File f) {
+		if(f==null) return;
+		final File[] children = f.listFiles();
+		if(children!=null) {
+			for(File child: children) delete(child);
+		}
+		f.delete();
+	}
+}
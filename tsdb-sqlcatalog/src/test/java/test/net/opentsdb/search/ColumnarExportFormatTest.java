@@ -0,0 +1,167 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import net.opentsdb.catalog.export.ColumnType;
+import net.opentsdb.catalog.export.ColumnarExportFormat;
+import net.opentsdb.catalog.export.TableWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: ColumnarExportFormatTest</p>
+ * <p>Description: Round trip tests of the {@link ColumnarExportFormat} writer against its {@link ColumnarExportFormat.Reader}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.ColumnarExportFormatTest</code></p>
+ */
+
+public class ColumnarExportFormatTest {
+	/** The test column names */
+	static final String[] NAMES = {"XUID", "NAME", "VERSION", "SCORE", "LAST_UPDATE"};
+	/** The test column types */
+	static final ColumnType[] TYPES = {ColumnType.STRING, ColumnType.STRING, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.TIMESTAMP};
+	
+	/**
+	 * Tests a round trip over several row groups with a partial last group, nulls in every column type, 
+	 * repeated and non ASCII strings
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testRoundTripPartialGroup() throws Exception {
+		final List<Object[]> rows = rows(11);
+		assertRoundTrip(rows, write(new ColumnarExportFormat(4), rows));
+	}
+	
+	/**
+	 * Tests a round trip where the row count is an exact multiple of the row group size
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testRoundTripExactGroups() throws Exception {
+		final List<Object[]> rows = rows(8);
+		assertRoundTrip(rows, write(new ColumnarExportFormat(4), rows));
+	}
+	
+	/**
+	 * Tests a round trip of a single row group larger than the row count
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testRoundTripSingleGroup() throws Exception {
+		final List<Object[]> rows = rows(100);
+		assertRoundTrip(rows, write(new ColumnarExportFormat(), rows));
+	}
+	
+	/**
+	 * Tests that a file with no rows reads back its header and a zero row trailer
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testEmpty() throws Exception {
+		assertRoundTrip(new ArrayList<Object[]>(), write(new ColumnarExportFormat(4), new ArrayList<Object[]>()));
+	}
+	
+	/**
+	 * Tests that a stream in another format is rejected
+	 * @throws Exception thrown on any error
+	 */
+	@Test(expected=IOException.class)
+	public void testBadMagic() throws Exception {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final GZIPOutputStream gzip = new GZIPOutputStream(baos);
+		gzip.write("NOTCOLUMNAR".getBytes("US-ASCII"));
+		gzip.close();
+		new ColumnarExportFormat.Reader(new ByteArrayInputStream(baos.toByteArray()));
+	}
+	
+	/**
+	 * Generates test rows
+	 * @param count The number of rows
+	 * @return the rows
+	 */
+	static List<Object[]> rows(final int count) {
+		final List<Object[]> rows = new ArrayList<Object[]>(count);
+		for(int i = 0; i < count; i++) {
+			rows.add(new Object[]{
+				String.format("%06X", i),
+				i%5==0 ? null : (i%2==0 ? "sys.cpu" : "m\u00e9moire." + (i%3)),
+				i%3==0 ? null : Long.valueOf(i - 5L),
+				i%4==0 ? null : Double.valueOf(i / 3d),
+				i%7==0 ? null : Long.valueOf(1400000000000L + i)
+			});
+		}
+		return rows;
+	}
+	
+	/**
+	 * Writes the passed rows with the passed format
+	 * @param format The format to write with
+	 * @param rows The rows to write
+	 * @return the written bytes
+	 * @throws Exception thrown on any error
+	 */
+	static byte[] write(final ColumnarExportFormat format, final List<Object[]> rows) throws Exception {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final TableWriter writer = format.newWriter(baos, "TSD_TEST", NAMES, TYPES);
+		for(Object[] row: rows) {
+			writer.write(row.clone());
+		}
+		writer.close();
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Reads the passed bytes back and compares them to the rows written
+	 * @param expected The rows written
+	 * @param bytes The written bytes
+	 * @throws Exception thrown on any error
+	 */
+	static void assertRoundTrip(final List<Object[]> expected, final byte[] bytes) throws Exception {
+		final ColumnarExportFormat.Reader reader = new ColumnarExportFormat.Reader(new ByteArrayInputStream(bytes));
+		try {
+			Assert.assertEquals("Table", "TSD_TEST", reader.getTable());
+			Assert.assertArrayEquals("Names", NAMES, reader.getColumnNames());
+			Assert.assertArrayEquals("Types", TYPES, reader.getColumnTypes());
+			Assert.assertEquals("Total rows before trailer", -1L, reader.getTotalRows());
+			for(int i = 0; i < expected.size(); i++) {
+				Assert.assertArrayEquals("Row #" + i, expected.get(i), reader.next());
+			}
+			Assert.assertNull("Rows after the last", reader.next());
+			Assert.assertNull("Rows after the trailer", reader.next());
+			Assert.assertEquals("Total rows", expected.size(), reader.getTotalRows());
+		} finally {
+			reader.close();
+		}
+	}
+}
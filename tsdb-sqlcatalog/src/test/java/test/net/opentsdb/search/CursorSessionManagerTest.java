@@ -0,0 +1,258 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.opentsdb.catalog.CursorSessionManager;
+import net.opentsdb.catalog.CursorSessionManager.CursorSession;
+import net.opentsdb.catalog.IndexProvidingIterator;
+import net.opentsdb.meta.api.QueryContext;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: CursorSessionManagerTest</p>
+ * <p>Description: Tests parking, resuming, windowing and expiry of held cursor sessions</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.CursorSessionManagerTest</code></p>
+ */
+
+public class CursorSessionManagerTest {
+	/** The session manager under test */
+	protected CursorSessionManager manager = null;
+	
+	/**
+	 * Shuts down the session manager and clears the config overrides
+	 */
+	@After
+	public void tearDown() {
+		if(manager!=null) manager.shutdown();
+		manager = null;
+		System.clearProperty(CursorSessionManager.CURSOR_TTL_PROP);
+		System.clearProperty(CursorSessionManager.MAX_CURSORS_PROP);
+		System.clearProperty(CursorSessionManager.CURSOR_PAGES_PROP);
+	}
+	
+	/**
+	 * Tests that a parked session is resumed at the next index and closed once exhausted
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testParkAndResume() throws Exception {
+		manager = new CursorSessionManager();
+		final QueryContext ctx = new QueryContext().setPageSize(10).setMaxSize(1000);
+		final AtomicBoolean closed = new AtomicBoolean(false);
+		final ListIterator iter = new ListIterator(25);
+		final int windowEnd = ctx.getCummulative() + manager.windowLimit(ctx) - 1;
+		Assert.assertEquals("Window end", 10 * CursorSessionManager.DEFAULT_CURSOR_PAGES, windowEnd);
+		page(iter, ctx);
+		Assert.assertTrue("Session not opened", manager.open("sig", resultSet(closed), iter, ctx, windowEnd));
+		Assert.assertNotNull("No cursor id", ctx.getCursorId());
+		Assert.assertEquals("Open cursors", 1, manager.getOpenCursors());
+		
+		CursorSession<Integer> session = manager.checkout("sig", ctx);
+		Assert.assertNotNull("Session not resumed", session);
+		Assert.assertNull("Cursor id not cleared on checkout", ctx.getCursorId());
+		page(session.getIterator(), ctx);
+		Assert.assertEquals("Next index", 19, ctx.getNextIndex());
+		manager.park(session, ctx);
+		Assert.assertNotNull("No cursor id after park", ctx.getCursorId());
+		
+		session = manager.checkout("sig", ctx);
+		Assert.assertNotNull("Session not resumed", session);
+		page(session.getIterator(), ctx);
+		Assert.assertTrue("Not exhausted", ctx.isExhausted());
+		manager.park(session, ctx);
+		Assert.assertNull("Cursor id left on exhausted context", ctx.getCursorId());
+		Assert.assertTrue("Result set not closed", closed.get());
+		Assert.assertEquals("Open cursors", 0, manager.getOpenCursors());
+		Assert.assertEquals("Cursor hits", 2, manager.getCursorHits());
+	}
+	
+	/**
+	 * Tests that a session presented with another signature or index is closed rather than resumed
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testMismatchCloses() throws Exception {
+		manager = new CursorSessionManager();
+		final QueryContext ctx = new QueryContext().setPageSize(10).setMaxSize(1000);
+		final AtomicBoolean closed = new AtomicBoolean(false);
+		final ListIterator iter = new ListIterator(100);
+		page(iter, ctx);
+		Assert.assertTrue("Session not opened", manager.open("sig", resultSet(closed), iter, ctx, ctx.getCummulative() + manager.windowLimit(ctx) - 1));
+		Assert.assertNull("Resumed with another signature", manager.checkout("other", ctx));
+		Assert.assertTrue("Result set not closed", closed.get());
+		Assert.assertEquals("Open cursors", 0, manager.getOpenCursors());
+		Assert.assertEquals("Cursor misses", 1, manager.getCursorMisses());
+	}
+	
+	/**
+	 * Tests that a session is dropped once its window of pages is used up, and that the cap is enforced
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testWindowAndCap() throws Exception {
+		System.setProperty(CursorSessionManager.CURSOR_PAGES_PROP, "2");
+		System.setProperty(CursorSessionManager.MAX_CURSORS_PROP, "1");
+		manager = new CursorSessionManager();
+		final QueryContext ctx = new QueryContext().setPageSize(10).setMaxSize(1000);
+		final int limit = manager.windowLimit(ctx);
+		Assert.assertEquals("Window limit", 21, limit);
+		final ListIterator iter = new ListIterator(limit);
+		page(iter, ctx);
+		Assert.assertTrue("Session not opened", manager.open("sig", resultSet(new AtomicBoolean()), iter, ctx, limit - 1));
+		Assert.assertFalse("Cap not enforced", manager.hasCapacity());
+		final QueryContext ctx2 = new QueryContext().setPageSize(10).setMaxSize(1000);
+		final ListIterator iter2 = new ListIterator(limit);
+		page(iter2, ctx2);
+		Assert.assertFalse("Cap not enforced", manager.open("sig", resultSet(new AtomicBoolean()), iter2, ctx2, limit - 1));
+		Assert.assertEquals("Cursor rejections", 1, manager.getCursorRejections());
+		
+		final CursorSession<Integer> session = manager.checkout("sig", ctx);
+		Assert.assertNotNull("Session not resumed", session);
+		page(session.getIterator(), ctx);
+		Assert.assertFalse("Window end read as exhaustion", ctx.isExhausted());
+		manager.park(session, ctx);
+		Assert.assertNull("Resumed past the window", manager.checkout("sig", ctx));
+		Assert.assertEquals("Open cursors", 0, manager.getOpenCursors());
+		Assert.assertEquals("Window limit at max size", 6, manager.windowLimit(new QueryContext().setPageSize(10).setMaxSize(5)));
+	}
+	
+	/**
+	 * Tests that an idle parked session is closed by the reaper
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testExpiry() throws Exception {
+		System.setProperty(CursorSessionManager.CURSOR_TTL_PROP, "100");
+		manager = new CursorSessionManager();
+		final QueryContext ctx = new QueryContext().setPageSize(10).setMaxSize(1000);
+		final AtomicBoolean closed = new AtomicBoolean(false);
+		final ListIterator iter = new ListIterator(100);
+		page(iter, ctx);
+		Assert.assertTrue("Session not opened", manager.open("sig", resultSet(closed), iter, ctx, ctx.getCummulative() + manager.windowLimit(ctx) - 1));
+		final long timeout = System.currentTimeMillis() + 5000;
+		while(!closed.get() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(100);
+		}
+		Assert.assertTrue("Session not expired", closed.get());
+		Assert.assertEquals("Cursor expirations", 1, manager.getCursorExpirations());
+		Assert.assertEquals("Open cursors", 0, manager.getOpenCursors());
+		Assert.assertNull("Resumed an expired session", manager.checkout("sig", ctx));
+	}
+	
+	/**
+	 * Reads a page from the passed iterator the way the catalog streams pages, and advances the context
+	 * @param iter The iterator
+	 * @param ctx The query context
+	 */
+	protected static void page(final IndexProvidingIterator<Integer> iter, final QueryContext ctx) {
+		int rows = 0;
+		while(rows < ctx.getPageSize() && iter.hasNext()) {
+			iter.next();
+			rows++;
+		}
+		if(rows==ctx.getPageSize()) {
+			ctx.setExhausted(false).setNextIndex(iter.getIndex()).incrementCummulative(rows);
+		} else {
+			ctx.setExhausted(true).setNextIndex(null).incrementCummulative(rows);
+		}
+	}
+	
+	/**
+	 * Creates a result set stub which records when it is closed
+	 * @param closed Set to true when the result set is closed
+	 * @return the result set
+	 */
+	protected static ResultSet resultSet(final AtomicBoolean closed) {
+		return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[]{ResultSet.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				if("close".equals(method.getName())) closed.set(true);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * <p>Title: ListIterator</p>
+	 * <p>Description: An index providing iterator over a range of integers, standing in for a result set iterator</p> 
+	 */
+	protected static class ListIterator implements IndexProvidingIterator<Integer> {
+		/** The rows */
+		final List<Integer> rows = new ArrayList<Integer>();
+		/** The position of the next row */
+		int pos = 0;
+		
+		/**
+		 * Creates a new ListIterator
+		 * @param count The number of rows
+		 */
+		ListIterator(final int count) {
+			for(int i = 0; i < count; i++) {
+				rows.add(i);
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return pos < rows.size();
+		}
+		
+		@Override
+		public Integer next() {
+			if(!hasNext()) throw new NoSuchElementException();
+			return rows.get(pos++);
+		}
+		
+		@Override
+		public Object getIndex() throws NoSuchElementException {
+			if(pos==0) throw new NoSuchElementException();
+			return rows.get(pos-1);
+		}
+		
+		@Override
+		public void pushBack() {
+			if(pos > 0) pos--;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.sql.DataSource;
+
+import net.opentsdb.catalog.QueryAdvisor;
+import net.opentsdb.catalog.SQLWorker;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: QueryAdvisorTest</p>
+ * <p>Description: Tests that the {@link QueryAdvisor} captures plans in the background rather than on the recording thread</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.QueryAdvisorTest</code></p>
+ */
+
+public class QueryAdvisorTest {
+	/** The names of the threads that acquired a connection */
+	protected final Set<String> connectingThreads = new CopyOnWriteArraySet<String>();
+	/** A connection that keeps the in-memory database open */
+	protected Connection conn = null;
+	/** The advisor under test */
+	protected QueryAdvisor advisor = null;
+	
+	/**
+	 * Creates an in-memory database with one unindexed table and an advisor over a datasource that records connecting threads
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void setUp() throws Exception {
+		final JdbcDataSource h2 = new JdbcDataSource();
+		h2.setURL("jdbc:h2:mem:" + getClass().getSimpleName() + System.nanoTime());
+		h2.setUser("sa");
+		h2.setPassword("");
+		conn = h2.getConnection();
+		final Statement st = conn.createStatement();
+		st.execute("CREATE TABLE TSD_ADVISED (ID INT PRIMARY KEY, NAME VARCHAR(60))");
+		st.close();
+		final DataSource ds = (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				if("getConnection".equals(method.getName())) connectingThreads.add(Thread.currentThread().getName());
+				try {
+					return method.invoke(h2, args);
+				} catch (InvocationTargetException ite) {
+					throw ite.getCause();
+				}
+			}
+		});
+		final SQLWorker sqlWorker = SQLWorker.getInstance(ds);
+		connectingThreads.clear();
+		advisor = new QueryAdvisor(sqlWorker);
+	}
+	
+	/**
+	 * Stops the advisor and closes the database
+	 */
+	@After
+	public void tearDown() {
+		if(advisor!=null) advisor.shutdown();
+		advisor = null;
+		if(conn!=null) try { conn.close(); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * Tests that recording an execution does not acquire a connection on the recording thread, 
+	 * and that the plan and full scan are captured in the background, once per template
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testExplainInBackground() throws Exception {
+		final String sql = "SELECT * FROM TSD_ADVISED WHERE NAME = ?";
+		advisor.record("NAME_SQL", sql, Arrays.<Object>asList("foo"), 1000L);
+		advisor.record("NAME_SQL", sql, Arrays.<Object>asList("bar"), 3000L);
+		Assert.assertFalse("Recording thread acquired a connection", connectingThreads.contains(Thread.currentThread().getName()));
+		final long timeout = System.currentTimeMillis() + 10000L;
+		while(!advisor.getPlans().containsKey("NAME_SQL")) {
+			Assert.assertTrue("Timed out waiting for plan", System.currentTimeMillis() < timeout);
+			Thread.sleep(20);
+		}
+		Assert.assertEquals("Executions", Long.valueOf(2), advisor.getExecutionCounts().get("NAME_SQL"));
+		Assert.assertEquals("Full scans", 1, advisor.getFullScans().length);
+		Assert.assertTrue("Full scan table", advisor.getFullScans()[0].contains("TSD_ADVISED"));
+		Assert.assertEquals("Explaining threads", 1, connectingThreads.size());
+		Assert.assertFalse("Recording thread acquired a connection", connectingThreads.contains(Thread.currentThread().getName()));
+	}
+}
@@ -0,0 +1,530 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search;
+
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TAG_FILTER_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TAG_VALUES_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.GET_TSMETAS_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.INITIAL_TSUID_START_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.INITIAL_XUID_START_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.METRIC_SQL_BLOCK;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.TAGK_SQL_BLOCK;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.TAGV_SQL_BLOCK;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.TSUID_START_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.XUID_START_SQL;
+import static net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl.expandPredicate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.opentsdb.catalog.QueryShapeCompiler;
+import net.opentsdb.catalog.QueryShapeCompiler.CompiledQuery;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: QueryShapeCompilerTest</p>
+ * <p>Description: Tests that the SQL compiled by the {@link QueryShapeCompiler} returns the same rows as the SQL
+ * generated per expression before it, for a set of expressions against an in-memory H2 catalog</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.QueryShapeCompilerTest</code></p>
+ */
+
+public class QueryShapeCompilerTest {
+	/** A connection that keeps the in-memory database open */
+	protected Connection conn = null;
+	/** The compiler under test */
+	protected QueryShapeCompiler compiler = null;
+	/** The TSUIDs of the catalog's series keyed by FQNID */
+	protected final Map<Long, String> tsuids = new LinkedHashMap<Long, String>();
+	
+	/** The row limit bound to every TSMeta and tag value query */
+	public static final int LIMIT = 100;
+	
+	/** The pre-compiler TSMeta SQL template when no tags are provided, with the metric name */
+	public static final String OLD_GET_TSMETAS_NO_TAGS_NAME_SQL =
+			"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND %s AND M.NAME = ? ORDER BY X.TSUID DESC LIMIT ?";
+	/** The pre-compiler TSMeta SQL template when no tags are provided, with the metric name and a TSUID */
+	public static final String OLD_GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL =
+			"SELECT X.* FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND %s AND M.NAME = ?  AND X.TSUID = ? ORDER BY X.TSUID DESC LIMIT ?";
+	
+	/** The metric names by XUID */
+	private static final String[][] METRICS = {{"000001", "sys.cpu"}, {"000002", "sys.mem"}, {"000003", "app.cpu"}};
+	/** The tag keys by XUID */
+	private static final String[][] TAGKS = {{"000001", "host"}, {"000002", "cpu"}, {"000003", "dc"}};
+	/** The tag values by XUID */
+	private static final String[][] TAGVS = {{"000001", "web01"}, {"000002", "web02"}, {"000003", "web03"}, {"000004", "0"}, {"000005", "1"}, {"000006", "dc1"}, {"000007", "dc2"}};
+	/** The series as a metric XUID followed by tag pair XUIDs in tag key order */
+	private static final String[][] SERIES = {
+		{"000001", "000001000001", "000002000004", "000003000006"},		// sys.cpu host=web01,cpu=0,dc=dc1
+		{"000001", "000001000001", "000002000005", "000003000006"},		// sys.cpu host=web01,cpu=1,dc=dc1
+		{"000001", "000001000002", "000002000004", "000003000007"},		// sys.cpu host=web02,cpu=0,dc=dc2
+		{"000001", "000001000003", "000002000005", "000003000007"},		// sys.cpu host=web03,cpu=1,dc=dc2
+		{"000002", "000001000001", "000003000006"},						// sys.mem host=web01,dc=dc1
+		{"000002", "000001000002", "000003000007"},						// sys.mem host=web02,dc=dc2
+		{"000003", "000001000003", "000002000004", "000003000007"},		// app.cpu host=web03,cpu=0,dc=dc2
+		{"000003", "000001000001", "000002000005", "000003000006"}		// app.cpu host=web01,cpu=1,dc=dc1
+	};
+	
+	/**
+	 * Creates a catalog of eight series of three metrics in an in-memory database
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void setUp() throws Exception {
+		final JdbcDataSource h2 = new JdbcDataSource();
+		h2.setURL("jdbc:h2:mem:" + getClass().getSimpleName() + System.nanoTime());
+		h2.setUser("sa");
+		h2.setPassword("");
+		conn = h2.getConnection();
+		final Statement st = conn.createStatement();
+		st.execute("CREATE TABLE TSD_METRIC (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGK (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGV (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGPAIR (XUID CHAR(12) PRIMARY KEY, TAGK CHAR(6), TAGV CHAR(6))");
+		st.execute("CREATE TABLE TSD_TSMETA (FQNID BIGINT PRIMARY KEY, METRIC_UID CHAR(6), TSUID VARCHAR(120))");
+		st.execute("CREATE TABLE TSD_FQN_TAGPAIR (FQNID BIGINT, XUID CHAR(12))");
+		insertUIDs(st, "TSD_METRIC", METRICS);
+		insertUIDs(st, "TSD_TAGK", TAGKS);
+		insertUIDs(st, "TSD_TAGV", TAGVS);
+		for(String[] tagk: TAGKS) {
+			for(String[] tagv: TAGVS) {
+				st.execute("INSERT INTO TSD_TAGPAIR VALUES ('" + tagk[0] + tagv[0] + "', '" + tagk[0] + "', '" + tagv[0] + "')");
+			}
+		}
+		for(int i = 0; i < SERIES.length; i++) {
+			final long fqnId = i + 1;
+			final StringBuilder tsuid = new StringBuilder(SERIES[i][0]);
+			for(int p = 1; p < SERIES[i].length; p++) {
+				tsuid.append(SERIES[i][p]);
+				st.execute("INSERT INTO TSD_FQN_TAGPAIR VALUES (" + fqnId + ", '" + SERIES[i][p] + "')");
+			}
+			st.execute("INSERT INTO TSD_TSMETA VALUES (" + fqnId + ", '" + SERIES[i][0] + "', '" + tsuid + "')");
+			tsuids.put(fqnId, tsuid.toString());
+		}
+		st.close();
+		compiler = new QueryShapeCompiler();
+	}
+	
+	/**
+	 * Unregisters the compiler and closes the database
+	 */
+	@After
+	public void tearDown() {
+		if(compiler!=null) compiler.shutdown();
+		compiler = null;
+		if(conn!=null) try { conn.close(); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * Tests that compiled TSMeta queries with tags return the same TSUIDs as the generated ones
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testTSMetasEquivalence() throws Exception {
+		final String[][] exprs = {
+			{"sys.cpu", "host=web01"},
+			{"sys.*", "host=web01|web02"},
+			{"sys.cpu|sys.mem", "host=web*,cpu=0"},
+			{"*", "dc=dc1,host=web01|web02|web03"},
+			{"sys.cpu|app.*", "host=*,cpu=0|1,dc=dc*"},
+			{"sys.cpu|sys.mem|app.cpu", "cpu=1|0,host=web01|web0*|web03"},
+			{"sys.mem", "cpu=0"},
+			{"nope", "host=web01"}
+		};
+		final String start = tsuids.get(3L);
+		final String tsuid = tsuids.get(2L);
+		for(String[] expr: exprs) {
+			final Map<String, String> tags = tags(expr[1]);
+			assertTSMetas(expr[0], tags, null, null);
+			assertTSMetas(expr[0], tags, null, start);
+			assertTSMetas(expr[0], tags, tsuid, null);
+			assertTSMetas(expr[0], tags, tsuid, start);
+		}
+		Assert.assertTrue("Shapes not reused", compiler.getShapesReused() > 0);
+	}
+	
+	/**
+	 * Tests that compiled TSMeta queries with no tags and any metric return the same TSUIDs as the generated ones
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testTaglessAnyMetricEquivalence() throws Exception {
+		final Map<String, String> tags = Collections.emptyMap();
+		assertTSMetas("*", tags, null, null);
+		assertTSMetas("*", tags, null, tsuids.get(5L));
+		assertTSMetas("*", tags, tsuids.get(4L), null);
+		assertTSMetas("*", tags, tsuids.get(4L), tsuids.get(5L));
+	}
+	
+	/**
+	 * Tests that a compiled TSMeta query with no tags applies the metric expression, 
+	 * which the generated query dropped, returning every series
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testTaglessMetricApplied() throws Exception {
+		final Map<String, String> tags = Collections.emptyMap();
+		final List<String> all = tsuids(1, 2, 3, 4, 5, 6, 7, 8);
+		Assert.assertEquals("Generated sys.cpu", all, oldTSMetas("sys.cpu", tags, null, null));
+		Assert.assertEquals("Compiled sys.cpu", tsuids(1, 2, 3, 4), compiledTSMetas("sys.cpu", tags, null, null));
+		Assert.assertEquals("Compiled sys.*|app.cpu", all, compiledTSMetas("sys.*|app.cpu", tags, null, null));
+		Assert.assertEquals("Compiled sys.m*|app.cpu from series 7", tsuids(5, 6, 7, 8), compiledTSMetas("sys.m*|app.cpu", tags, null, tsuids.get(7L)));
+		Assert.assertEquals("Compiled app.cpu for series 8", tsuids(8), compiledTSMetas("app.cpu", tags, tsuids.get(8L), null));
+		Assert.assertEquals("Compiled app.cpu for series 1", tsuids(), compiledTSMetas("app.cpu", tags, tsuids.get(1L), null));
+	}
+	
+	/**
+	 * Tests that compiled overlap queries count the TSMetas the generated TSMeta queries return for the first expression
+	 * and not for the second, and the same as the generated overlap queries where the second expression has one tag. 
+	 * H2 evaluates <b><code>A EXCEPT B1 INTERSECT B2</code></b> left to right, so the generated overlap query 
+	 * depended on the tag order when the second expression had more than one.
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testOverlapEquivalence() throws Exception {
+		final String[][] exprs = {
+			{"sys.cpu", "host=web01", "sys.cpu", "cpu=0"},
+			{"sys.*", "host=*", "sys.mem", "dc=dc1"},
+			{"*", "dc=dc1|dc2", "sys.cpu|app.cpu", "host=web01|web02,cpu=*"},
+			{"*", "dc=dc1|dc2", "sys.cpu|app.cpu", "cpu=*,host=web01|web02"},
+			{"sys.cpu|sys.mem", "host=web0*,dc=dc*", "*", "dc=dc2,host=web02|web03,cpu=0"},
+			{"sys.cpu", "host=web01", "sys.cpu", "host=web01"},
+			{"app.cpu", "cpu=0|1", "nope", "host=web01"}
+		};
+		for(String[] expr: exprs) {
+			final Map<String, String> tagsOne = tags(expr[1]), tagsTwo = tags(expr[3]);
+			final List<String> expected = oldTSMetas(expr[0], tagsOne, null, null);
+			expected.removeAll(oldTSMetas(expr[2], tagsTwo, null, null));
+			final long actual = count(compiler.overlap(expr[0], tagsOne, expr[2], tagsTwo));
+			Assert.assertEquals("Overlap " + Arrays.toString(expr), expected.size(), actual);
+			if(tagsTwo.size()==1) {
+				final List<Object> oldBinds = new ArrayList<Object>();
+				final StringBuilder oldSql = new StringBuilder("SELECT COUNT(*) FROM ( ");
+				oldIntersection(expr[0], tagsOne, oldBinds, oldSql);
+				oldSql.append("\n\tEXCEPT\n");
+				oldIntersection(expr[2], tagsTwo, oldBinds, oldSql);
+				oldSql.append(") X ");
+				Assert.assertEquals("Generated overlap " + Arrays.toString(expr), column(oldSql.toString(), oldBinds, (Object)1).get(0), actual);
+			}
+		}
+		Assert.assertEquals("Overlap of * dc=dc1|dc2 except sys.cpu|app.cpu host=web01|web02,cpu=*", 4L, count(compiler.overlap("*", tags("dc=dc1|dc2"), "sys.cpu|app.cpu", tags("host=web01|web02,cpu=*"))));
+	}
+	
+	/**
+	 * Tests that compiled tag value queries return the same tag values as the generated ones
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testTagValuesEquivalence() throws Exception {
+		final String[][] exprs = {
+			{"sys.cpu", "host", ""},
+			{"sys.*", "host|cpu", ""},
+			{"*", "dc", "host=web01"},
+			{"sys.cpu|app.cpu", "cpu", "host=web0*,dc=dc2"},
+			{"sys.mem", "host", "dc=dc1|dc2|dc3"},
+			{"sys.cpu", "h*", "cpu=1,dc=dc*,host=web01|web03"},
+			{"nope", "host", ""}
+		};
+		for(String[] expr: exprs) {
+			final Map<String, String> tags = tags(expr[2]);
+			assertTagValues(expr[0], expr[1], tags, null);
+			assertTagValues(expr[0], expr[1], tags, "000005");
+		}
+	}
+	
+	/**
+	 * Asserts that the compiled and the generated TSMeta queries return the same TSUIDs
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param tsuid The optional TSUID to match
+	 * @param nextIndex The TSUID to start at, or null to start at the first
+	 * @throws Exception thrown on any error
+	 */
+	protected void assertTSMetas(final String metricName, final Map<String, String> tags, final String tsuid, final String nextIndex) throws Exception {
+		final List<String> expected = oldTSMetas(metricName, tags, tsuid, nextIndex);
+		final List<String> actual = compiledTSMetas(metricName, tags, tsuid, nextIndex);
+		Assert.assertEquals("TSMetas for [" + metricName + ":" + tags + "] tsuid [" + tsuid + "] from [" + nextIndex + "]", expected, actual);
+	}
+	
+	/**
+	 * Asserts that the compiled and the generated tag value queries return the same tag values
+	 * @param metricName The metric name expression
+	 * @param tagKey The expression of the tag key to return the values of
+	 * @param tags The tag key and value expressions
+	 * @param nextIndex The XUID to start after, or null to start at the first
+	 * @throws Exception thrown on any error
+	 */
+	protected void assertTagValues(final String metricName, final String tagKey, final Map<String, String> tags, final String nextIndex) throws Exception {
+		final List<Object> oldBinds = new ArrayList<Object>();
+		final String oldSql = oldTagValues(metricName, tagKey, tags, nextIndex, oldBinds);
+		oldBinds.add(LIMIT);
+		final CompiledQuery query = compiler.tagValues(metricName, tagKey, tags, nextIndex);
+		final List<Object> binds = query.getBinds();
+		binds.add(LIMIT);
+		Assert.assertEquals("Tag values for [" + metricName + ":" + tagKey + ":" + tags + "] from [" + nextIndex + "]", column(oldSql, oldBinds, "XUID"), column(query.getSQL(), binds, "XUID"));
+	}
+	
+	/**
+	 * Executes the compiled TSMeta query
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param tsuid The optional TSUID to match
+	 * @param nextIndex The TSUID to start at, or null to start at the first
+	 * @return the returned TSUIDs
+	 * @throws Exception thrown on any error
+	 */
+	protected List<String> compiledTSMetas(final String metricName, final Map<String, String> tags, final String tsuid, final String nextIndex) throws Exception {
+		final CompiledQuery query = compiler.tsMetas(metricName, tags, tsuid, nextIndex);
+		final List<Object> binds = query.getBinds();
+		binds.add(LIMIT);
+		return column(query.getSQL(), binds, "TSUID");
+	}
+	
+	/**
+	 * Generates and executes the TSMeta query as generated before the compiler
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param tsuid The optional TSUID to match
+	 * @param nextIndex The TSUID to start at, or null to start at the first
+	 * @return the returned TSUIDs
+	 * @throws Exception thrown on any error
+	 */
+	protected List<String> oldTSMetas(final String metricName, final Map<String, String> tags, final String tsuid, final String nextIndex) throws Exception {
+		final List<Object> binds = new ArrayList<Object>();
+		final StringBuilder sqlBuffer = new StringBuilder();
+		final boolean hasMetricName = (metricName==null || metricName.trim().isEmpty());
+		if(tags==null || tags.isEmpty()) {	
+			if(tsuid!=null && !tsuid.trim().isEmpty()) {
+				if(nextIndex==null) {							
+					sqlBuffer.append(String.format(hasMetricName ? OLD_GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL, INITIAL_TSUID_START_SQL)); 
+				} else {
+					sqlBuffer.append(String.format(hasMetricName ? OLD_GET_TSMETAS_NO_TAGS_NAME_TSUID_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_TSUID_SQL, TSUID_START_SQL));
+					binds.add(nextIndex);
+				}
+				binds.add(tsuid);
+			} else {
+				if(nextIndex==null) {							
+					sqlBuffer.append(String.format(hasMetricName ? OLD_GET_TSMETAS_NO_TAGS_NAME_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL, INITIAL_TSUID_START_SQL)); 
+				} else {
+					sqlBuffer.append(String.format(hasMetricName ? OLD_GET_TSMETAS_NO_TAGS_NAME_SQL : GET_TSMETAS_NO_TAGS_NO_METRIC_NAME_SQL, TSUID_START_SQL));
+					binds.add(nextIndex);
+				}
+			}
+			if(hasMetricName) binds.add(metricName);			
+		} else {
+			final StringBuilder keySql = new StringBuilder("SELECT * FROM ( ");
+			oldIntersection(metricName, tags, binds, keySql);
+			keySql.append(") X ");
+			if(nextIndex==null) {
+				keySql.append(" WHERE ").append(INITIAL_TSUID_START_SQL);
+			} else {
+				keySql.append(" WHERE ").append(TSUID_START_SQL);
+				binds.add(nextIndex);
+			}
+			if(tsuid!=null && !tsuid.trim().isEmpty()) {
+				keySql.append("\n AND X.TSUID = ? \n");
+				binds.add(tsuid);
+			}
+			keySql.append(" ORDER BY X.TSUID DESC LIMIT ? ");
+			sqlBuffer.append(keySql.toString());
+		}
+		binds.add(LIMIT);
+		return column(sqlBuffer.toString(), binds, "TSUID");
+	}
+	
+	/**
+	 * Generates the intersection of the TSMetas matching each tag as generated before the compiler
+	 * @param metricName The metric name expression
+	 * @param tags The tag key and value expressions
+	 * @param binds The bind accumulator
+	 * @param sql The buffer to generate into
+	 */
+	protected static void oldIntersection(final String metricName, final Map<String, String> tags, final List<Object> binds, final StringBuilder sql) {
+		final Iterator<Map.Entry<String, String>> iter = tags.entrySet().iterator();
+		boolean first = true;
+		while(iter.hasNext()) {
+			final Map.Entry<String, String> tag = iter.next();
+			if(!first) sql.append("\n INTERSECT  \n");
+			sql.append(String.format(GET_TSMETAS_SQL,  
+					expandPredicate(metricName, METRIC_SQL_BLOCK, binds),
+					expandPredicate(tag.getKey(), TAGK_SQL_BLOCK, binds),
+					expandPredicate(tag.getValue(), TAGV_SQL_BLOCK, binds)
+			));
+			first = false;
+		}
+	}
+	
+	/**
+	 * Generates the tag value query as generated before the compiler
+	 * @param metricName The metric name expression
+	 * @param tagKey The expression of the tag key to return the values of
+	 * @param tags The tag key and value expressions
+	 * @param nextIndex The XUID to start after, or null to start at the first
+	 * @param binds The bind accumulator
+	 * @return the generated SQL
+	 */
+	protected static String oldTagValues(final String metricName, final String tagKey, final Map<String, String> tags, final String nextIndex, final List<Object> binds) {
+		final StringBuilder sqlBuffer = new StringBuilder(String.format(GET_TAG_VALUES_SQL,
+				expandPredicate(metricName, METRIC_SQL_BLOCK, binds),
+				expandPredicate(tagKey, TAGK_SQL_BLOCK, binds)
+		));
+		if(!tags.isEmpty()) {
+			sqlBuffer.append(" AND EXISTS ( ");
+			boolean first = true;
+			for(Map.Entry<String, String> pair: tags.entrySet()) {
+				if(!first) sqlBuffer.append(" \nINTERSECT\n ");
+				final StringBuilder b = new StringBuilder("( ( ");
+				b.append(expandPredicate(pair.getKey(), " KA.NAME %s ? ", binds));
+				b.append(" ) AND ( ");
+				b.append(expandPredicate(pair.getValue(), " VA.NAME %s ? ", binds));
+				b.append(" ) ) ");
+				sqlBuffer.append(String.format(GET_TAG_FILTER_SQL, b.toString()));
+				first = false;
+			}
+			sqlBuffer.append(" ) ");
+		}
+		sqlBuffer.append(" AND ");
+		if(nextIndex!=null && !nextIndex.trim().isEmpty()) {
+			sqlBuffer.append(XUID_START_SQL);
+			binds.add(nextIndex.trim());
+		} else {
+			sqlBuffer.append(INITIAL_XUID_START_SQL);
+		}
+		sqlBuffer.append(" ORDER BY X.XUID DESC LIMIT ? ");
+		return sqlBuffer.toString();
+	}
+	
+	/**
+	 * Executes the passed compiled overlap query
+	 * @param query The compiled query
+	 * @return the count
+	 * @throws Exception thrown on any error
+	 */
+	protected long count(final CompiledQuery query) throws Exception {
+		return ((Number)column(query.getSQL(), query.getBinds(), (Object)1).get(0)).longValue();
+	}
+	
+	/**
+	 * Executes the passed SQL and returns a column of each row
+	 * @param sql The SQL to execute
+	 * @param binds The bind values
+	 * @param column The name of the column to return
+	 * @return the column values
+	 * @throws Exception thrown on any error
+	 */
+	protected List<String> column(final String sql, final List<Object> binds, final String column) throws Exception {
+		final List<String> values = new ArrayList<String>();
+		for(Object value: column(sql, binds, (Object)column)) {
+			values.add(value.toString().trim());
+		}
+		return values;
+	}
+	
+	/**
+	 * Executes the passed SQL and returns a column of each row
+	 * @param sql The SQL to execute
+	 * @param binds The bind values
+	 * @param column The name or the index of the column to return
+	 * @return the column values
+	 * @throws Exception thrown on any error
+	 */
+	protected List<Object> column(final String sql, final List<Object> binds, final Object column) throws Exception {
+		final List<Object> values = new ArrayList<Object>();
+		final PreparedStatement ps = conn.prepareStatement(sql);
+		ResultSet rset = null;
+		try {
+			for(int i = 0; i < binds.size(); i++) {
+				ps.setObject(i+1, binds.get(i));
+			}
+			rset = ps.executeQuery();
+			while(rset.next()) {
+				values.add(column instanceof String ? rset.getObject((String)column) : rset.getObject((Integer)column));
+			}
+			return values;
+		} finally {
+			if(rset!=null) try { rset.close(); } catch (Exception x) {/* No Op */}
+			try { ps.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+	
+	/**
+	 * Parses the passed tag expressions, keeping their order
+	 * @param expr The comma separated <b><code>key=value</code></b> expressions
+	 * @return the tags
+	 */
+	protected static Map<String, String> tags(final String expr) {
+		final Map<String, String> tags = new LinkedHashMap<String, String>();
+		if(expr.isEmpty()) return tags;
+		for(String pair: expr.split(",")) {
+			final int index = pair.indexOf('=');
+			tags.put(pair.substring(0, index), pair.substring(index+1));
+		}
+		return tags;
+	}
+	
+	/**
+	 * Returns the TSUIDs of the passed series in TSUID descending order
+	 * @param fqnIds The FQNIDs of the series
+	 * @return the TSUIDs
+	 */
+	protected List<String> tsuids(final long...fqnIds) {
+		final List<String> ids = new ArrayList<String>(fqnIds.length);
+		for(long fqnId: fqnIds) {
+			ids.add(tsuids.get(fqnId));
+		}
+		Collections.sort(ids, Collections.reverseOrder());
+		return ids;
+	}
+	
+	/**
+	 * Inserts UIDs into the passed table
+	 * @param st The statement to insert with
+	 * @param table The table name
+	 * @param uids The XUID and name pairs
+	 * @throws Exception thrown on any error
+	 */
+	private static void insertUIDs(final Statement st, final String table, final String[][] uids) throws Exception {
+		for(String[] uid: uids) {
+			st.execute("INSERT INTO " + table + " VALUES ('" + uid[0] + "', '" + uid[1] + "')");
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import net.opentsdb.catalog.SQLWorker;
+import net.opentsdb.catalog.cache.TagAdjacencyIndex;
+import net.opentsdb.meta.UIDMeta;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: TagAdjacencyIndexTest</p>
+ * <p>Description: Tests the background load and lookups of the {@link TagAdjacencyIndex}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.TagAdjacencyIndexTest</code></p>
+ */
+
+public class TagAdjacencyIndexTest {
+	/** Holds connection requests until released, once armed */
+	protected final CountDownLatch gate = new CountDownLatch(1);
+	/** Indicates if connection requests should wait on the gate */
+	protected volatile boolean armed = false;
+	/** A connection that keeps the in-memory database open */
+	protected Connection conn = null;
+	/** The SQLWorker over the gated datasource */
+	protected SQLWorker sqlWorker = null;
+	/** The index under test */
+	protected TagAdjacencyIndex index = null;
+	
+	/**
+	 * Creates a small catalog of two metrics in an in-memory database
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void setUp() throws Exception {
+		final JdbcDataSource h2 = new JdbcDataSource();
+		h2.setURL("jdbc:h2:mem:" + getClass().getSimpleName() + System.nanoTime());
+		h2.setUser("sa");
+		h2.setPassword("");
+		conn = h2.getConnection();
+		final Statement st = conn.createStatement();
+		st.execute("CREATE TABLE TSD_METRIC (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGK (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGV (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGPAIR (XUID CHAR(12) PRIMARY KEY, TAGK CHAR(6), TAGV CHAR(6))");
+		st.execute("CREATE TABLE TSD_TSMETA (FQNID BIGINT PRIMARY KEY, METRIC_UID CHAR(6))");
+		st.execute("CREATE TABLE TSD_FQN_TAGPAIR (FQNID BIGINT, XUID CHAR(12))");
+		st.execute("INSERT INTO TSD_METRIC VALUES ('000001', 'sys.cpu'), ('000002', 'sys.mem')");
+		st.execute("INSERT INTO TSD_TAGK VALUES ('000001', 'host'), ('000002', 'cpu')");
+		st.execute("INSERT INTO TSD_TAGV VALUES ('000001', 'web01'), ('000002', 'web02'), ('000003', '0')");
+		st.execute("INSERT INTO TSD_TAGPAIR VALUES ('000001000001', '000001', '000001'), ('000001000002', '000001', '000002'), ('000002000003', '000002', '000003')");
+		// sys.cpu host=web01,cpu=0  sys.cpu host=web02,cpu=0  sys.mem host=web01
+		st.execute("INSERT INTO TSD_TSMETA VALUES (1, '000001'), (2, '000001'), (3, '000002')");
+		st.execute("INSERT INTO TSD_FQN_TAGPAIR VALUES (1, '000001000001'), (1, '000002000003'), (2, '000001000002'), (2, '000002000003'), (3, '000001000001')");
+		st.close();
+		final DataSource ds = (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				if(armed && "getConnection".equals(method.getName())) {
+					if(!gate.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Gate never opened");
+				}
+				try {
+					return method.invoke(h2, args);
+				} catch (InvocationTargetException ite) {
+					throw ite.getCause();
+				}
+			}
+		});
+		sqlWorker = SQLWorker.getInstance(ds);
+	}
+	
+	/**
+	 * Stops the index and closes the database
+	 */
+	@After
+	public void tearDown() {
+		gate.countDown();
+		if(index!=null) index.shutdown();
+		index = null;
+		if(conn!=null) try { conn.close(); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * Tests that construction does not wait for the load, and that the index serves lookups once loaded
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testBackgroundLoad() throws Exception {
+		armed = true;
+		index = new TagAdjacencyIndex(sqlWorker);
+		Assert.assertFalse("Loaded before the catalog was read", index.isLoaded());
+		gate.countDown();
+		awaitLoaded();
+		Assert.assertEquals("Metrics", 2, index.getMetricCount());
+		Assert.assertEquals("sys.cpu series", 2, index.getSeriesCount("sys.cpu"));
+		Assert.assertEquals("sys.cpu tag keys", asList("cpu", "host"), names(index.getTagKeys("sys.cpu", null, null, 10)));
+		Assert.assertEquals("sys.cpu host values", asList("web02", "web01"), names(index.getTagValues("sys.cpu", "host", null, 10)));
+		Assert.assertEquals("Metrics with cpu", asList("sys.cpu"), names(index.getMetricNamesForKeys(new String[]{"cpu"}, null, 10)));
+		Assert.assertEquals("Metrics with host=web01", asList("sys.mem", "sys.cpu"), 
+				names(index.getMetricNamesForTags(Collections.singletonMap("host", "web01"), null, 10)));
+	}
+	
+	/**
+	 * Tests that a removed series is removed from the graph, and its metric once it has no series
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testSeriesRemoved() throws Exception {
+		index = new TagAdjacencyIndex(sqlWorker);
+		awaitLoaded();
+		index.onSeriesRemoved("000002" + "000001000001");
+		Assert.assertEquals("Metrics", 1, index.getMetricCount());
+		Assert.assertEquals("Metrics with host=web01", asList("sys.cpu"), 
+				names(index.getMetricNamesForTags(Collections.singletonMap("host", "web01"), null, 10)));
+	}
+	
+	/**
+	 * Waits for the index to load
+	 * @throws Exception thrown on any error
+	 */
+	protected void awaitLoaded() throws Exception {
+		final long timeout = System.currentTimeMillis() + 10000L;
+		while(!index.isLoaded()) {
+			Assert.assertTrue("Timed out waiting for load", System.currentTimeMillis() < timeout);
+			Thread.sleep(20);
+		}
+	}
+	
+	/**
+	 * Returns the names of the passed UIDMetas
+	 * @param metas The UIDMetas
+	 * @return the names in order
+	 */
+	protected static List<String> names(final List<UIDMeta> metas) {
+		final List<String> names = new ArrayList<String>(metas.size());
+		for(UIDMeta meta: metas) names.add(meta.getName());
+		return names;
+	}
+	
+	/**
+	 * Returns the passed names as a list
+	 * @param names The names
+	 * @return the list
+	 */
+	protected static List<String> asList(final String...names) {
+		final List<String> list = new ArrayList<String>(names.length);
+		Collections.addAll(list, names);
+		return list;
+	}
+}
@@ -0,0 +1,516 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search.cache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+import net.opentsdb.catalog.SQLWorker;
+import net.opentsdb.catalog.cache.FQNBitmap;
+import net.opentsdb.catalog.cache.FQNBitmapIndex;
+import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.uid.UniqueId;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * <p>Title: FQNBitmapIndexTestCase</p>
+ * <p>Description: Validates {@link FQNBitmapIndex} expression resolution, overlap counts and paging against 
+ * the same questions answered in SQL from the catalog tables</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.cache.FQNBitmapIndexTestCase</code></p>
+ */
+
+public class FQNBitmapIndexTestCase extends BaseTest {
+	/** A connection that keeps the in-memory catalog open */
+	static Connection conn = null;
+	/** The SQLWorker the index loads with */
+	static SQLWorker sqlWorker = null;
+	/** The number of series in the catalog */
+	static int seriesCount = 0;
+	/** The FQNID serial number */
+	static int fqnSerial = 0;
+	
+	/** The metric names, indexed by UID - 1 */
+	static final String[] METRICS = {"sys.cpu", "sys.mem", "app.latency"};
+	/** The tag key names, indexed by UID - 1 */
+	static final String[] TAGKS = {"host", "cpu", "dc"};
+	/** The spacing of the FQNIDs, so the series span several bitmap chunks */
+	static final int FQN_STRIDE = 4099;
+	
+	/** The expressions resolved by the tests, as a metric expression followed by tag key and value expressions */
+	static final String[][] EXPRESSIONS = {
+		{"sys.cpu"},
+		{"sys.cpu", "host", "web01"},
+		{"sys.*", "host", "web0*"},
+		{"sys.cpu|sys.mem", "dc", "east", "host", "web1*|web02"},
+		{"*", "cpu", "*"},
+		{"*", "h*", "web03"},
+		{"*", "dc", "*st"},
+		{"app.*", "dc", "west", "cpu", "*"},
+		{"nomatch"},
+		{"sys.cpu", "host", "nomatch"}
+	};
+	
+	/**
+	 * Creates the catalog tables in an in-memory database and populates them
+	 * @throws Exception thrown on any error
+	 */
+	@BeforeClass
+	public static void createCatalog() throws Exception {
+		final JdbcDataSource ds = new JdbcDataSource();
+		ds.setURL("jdbc:h2:mem:FQNBitmapIndexTestCase" + System.nanoTime());
+		ds.setUser("sa");
+		ds.setPassword("");
+		conn = ds.getConnection();
+		final Statement st = conn.createStatement();
+		st.execute("CREATE TABLE TSD_METRIC (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGK (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGV (XUID CHAR(6) PRIMARY KEY, NAME VARCHAR(60))");
+		st.execute("CREATE TABLE TSD_TAGPAIR (XUID CHAR(12) PRIMARY KEY, TAGK CHAR(6), TAGV CHAR(6))");
+		st.execute("CREATE TABLE TSD_TSMETA (FQNID BIGINT PRIMARY KEY, TSUID VARCHAR(120), METRIC_UID CHAR(6))");
+		st.execute("CREATE TABLE TSD_FQN_TAGPAIR (FQNID BIGINT, XUID CHAR(12))");
+		st.close();
+		for(int i = 0; i < METRICS.length; i++) insert("INSERT INTO TSD_METRIC VALUES (?,?)", uid(i+1), METRICS[i]);
+		for(int i = 0; i < TAGKS.length; i++) insert("INSERT INTO TSD_TAGK VALUES (?,?)", uid(i+1), TAGKS[i]);
+		// Tag values: web00..web19, 0..3, east and west
+		for(int h = 0; h < 20; h++) {
+			for(int c = 0; c < 4; c++) {
+				final String dc = h%2==0 ? "east" : "west";
+				// sys.cpu has a series per host and cpu, sys.mem one per host, app.latency one per even host
+				addSeries(1, h, c, dc);
+				if(c==0) addSeries(2, h, -1, dc);
+				if(c==0 && h%2==0) addSeries(3, h, -1, dc);
+			}
+		}
+		sqlWorker = SQLWorker.getInstance(ds);
+	}
+	
+	/**
+	 * Closes the in-memory catalog
+	 */
+	@AfterClass
+	public static void closeCatalog() {
+		if(conn!=null) try { conn.close(); } catch (Exception x) {/* No Op */}
+	}
+	
+	/**
+	 * Validates that resolved expressions match the series selected in SQL
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testResolve() throws Exception {
+		final FQNBitmapIndex index = new FQNBitmapIndex(sqlWorker);
+		Assert.assertTrue("Loaded", index.isLoaded());
+		Assert.assertEquals("Series", seriesCount, index.getSeriesCount());
+		for(String[] expr: EXPRESSIONS) {
+			final FQNBitmap resolved = index.resolve(expr[0], tags(expr));
+			final TreeSet<Integer> expected = sqlResolve(expr);
+			Assert.assertEquals("Resolved " + str(expr), expected, toSet(resolved));
+			for(Map.Entry<Integer, String> e: sqlTsuids().entrySet()) {
+				Assert.assertEquals("Match " + str(expr) + " " + e.getValue(), expected.contains(e.getKey()), index.match(expr[0], tags(expr), e.getValue()));
+			}
+		}
+	}
+	
+	/**
+	 * Validates overlap counts for every pair of expressions against the set difference of the series selected in SQL
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testOverlap() throws Exception {
+		final FQNBitmapIndex index = new FQNBitmapIndex(sqlWorker);
+		for(String[] one: EXPRESSIONS) {
+			final TreeSet<Integer> sqlOne = sqlResolve(one);
+			for(String[] two: EXPRESSIONS) {
+				final TreeSet<Integer> diff = new TreeSet<Integer>(sqlOne);
+				diff.removeAll(sqlResolve(two));
+				Assert.assertEquals("Overlap " + str(one) + " not in " + str(two), diff.size(), index.overlap(one[0], tags(one), two[0], tags(two)));
+			}
+		}
+	}
+	
+	/**
+	 * Validates pages walked from the start of each expression at several page sizes against the same pages selected in SQL,
+	 * including page sizes of one, of exactly the match count and beyond it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testPageWalk() throws Exception {
+		final FQNBitmapIndex index = new FQNBitmapIndex(sqlWorker);
+		final Map<Integer, String> tsuids = sqlTsuids();
+		for(String[] expr: EXPRESSIONS) {
+			final FQNBitmap resolved = index.resolve(expr[0], tags(expr));
+			final int total = resolved.cardinality();
+			for(int limit: new int[]{1, 7, Math.max(total, 1), total + 5}) {
+				String start = null;
+				int walked = 0;
+				while(true) {
+					final List<Long> page = index.page(resolved, start, limit);
+					Assert.assertEquals("Page of " + str(expr) + " limit " + limit + " after " + start, sqlPage(expr, start, limit), page);
+					if(page.isEmpty()) break;
+					walked += page.size();
+					start = tsuids.get(page.get(page.size()-1).intValue());
+				}
+				Assert.assertEquals("Walked " + str(expr) + " limit " + limit, total, walked);
+			}
+		}
+	}
+	
+	/**
+	 * Validates pages starting at the boundaries of the TSUID range, at an existing TSUID, and with a zero limit
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testPageBoundaries() throws Exception {
+		final FQNBitmapIndex index = new FQNBitmapIndex(sqlWorker);
+		final String[] all = {"*"};
+		final FQNBitmap resolved = index.resolve("*", tags(all));
+		final TreeSet<String> sorted = new TreeSet<String>(sqlTsuids().values());
+		Assert.assertTrue("Before the lowest TSUID", index.page(resolved, sorted.first(), 10).isEmpty());
+		Assert.assertEquals("Above the highest TSUID", sqlPage(all, null, 10), index.page(resolved, "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF", 10));
+		final String mid = sorted.toArray(new String[0])[sorted.size()/2];
+		final List<Long> page = index.page(resolved, mid, 10);
+		Assert.assertEquals("From an existing TSUID", sqlPage(all, mid, 10), page);
+		Assert.assertFalse("Start is exclusive", page.contains(sqlFqnId(mid)));
+		Assert.assertTrue("Zero limit", index.page(resolved, null, 0).isEmpty());
+		Assert.assertTrue("Empty match", index.page(new FQNBitmap(), null, 10).isEmpty());
+	}
+	
+	/**
+	 * Validates that series removed from and added to the catalog through the listener are reflected in resolution and paging
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testMaintenance() throws Exception {
+		final FQNBitmapIndex index = new FQNBitmapIndex(sqlWorker);
+		final String[] expr = {"sys.cpu", "host", "web01"};
+		final long removed = sqlResolve(expr).first();
+		final String removedTsuid = sqlTsuids().get((int)removed);
+		try {
+			deleteSeries(removed);
+			index.onSeriesRemoved(removedTsuid);
+			Assert.assertEquals("After remove", sqlResolve(expr), toSet(index.resolve(expr[0], tags(expr))));
+			final int fqn = addSeries(1, 1, 9, "west");
+			index.onSeriesAdded(fqn, sqlTsuids().get(fqn), 
+					uidMeta(UniqueIdType.METRIC, 1, "sys.cpu"), new UIDMeta[]{
+						uidMeta(UniqueIdType.TAGK, 1, "host"), uidMeta(UniqueIdType.TAGV, 2, "web01"),
+						uidMeta(UniqueIdType.TAGK, 2, "cpu"), uidMeta(UniqueIdType.TAGV, tagvUid("9"), "9"),
+						uidMeta(UniqueIdType.TAGK, 3, "dc"), uidMeta(UniqueIdType.TAGV, tagvUid("west"), "west")
+					});
+			Assert.assertEquals("After add", sqlResolve(expr), toSet(index.resolve(expr[0], tags(expr))));
+			Assert.assertEquals("Page after add", sqlPage(expr, null, 3), index.page(index.resolve(expr[0], tags(expr)), null, 3));
+			deleteSeries(fqn);
+		} finally {
+			// Put the removed series back for the other tests
+			if(sqlTsuids().get((int)removed)==null) addSeries(1, 1, 0, "west", (int)removed);
+		}
+	}
+	
+	// ==================================================================================================
+	//  Catalog population
+	// ==================================================================================================
+	
+	/**
+	 * Adds a series with the next FQNID
+	 * @param metric The metric UID
+	 * @param host The host number
+	 * @param cpu The cpu number, or -1 for none
+	 * @param dc The data center
+	 * @return the FQNID of the new series
+	 * @throws Exception thrown on any error
+	 */
+	static int addSeries(final int metric, final int host, final int cpu, final String dc) throws Exception {
+		return addSeries(metric, host, cpu, dc, ++fqnSerial * FQN_STRIDE);
+	}
+	
+	/**
+	 * Adds a series
+	 * @param metric The metric UID
+	 * @param host The host number
+	 * @param cpu The cpu number, or -1 for none
+	 * @param dc The data center
+	 * @param fqn The FQNID of the series
+	 * @return the FQNID of the new series
+	 * @throws Exception thrown on any error
+	 */
+	static int addSeries(final int metric, final int host, final int cpu, final String dc, final int fqn) throws Exception {
+		final Map<Integer, String> pairs = new LinkedHashMap<Integer, String>();
+		pairs.put(1, String.format("web%02d", host));
+		if(cpu!=-1) pairs.put(2, "" + cpu);
+		pairs.put(3, dc);
+		final StringBuilder tsuid = new StringBuilder(uid(metric));
+		for(Map.Entry<Integer, String> pair: pairs.entrySet()) {
+			final String v = uid(tagvUid(pair.getValue()));
+			final String xuid = uid(pair.getKey()) + v;
+			tsuid.append(xuid);
+			if(count("SELECT COUNT(*) FROM TSD_TAGV WHERE XUID = ?", v)==0) insert("INSERT INTO TSD_TAGV VALUES (?,?)", v, pair.getValue());
+			if(count("SELECT COUNT(*) FROM TSD_TAGPAIR WHERE XUID = ?", xuid)==0) insert("INSERT INTO TSD_TAGPAIR VALUES (?,?,?)", xuid, uid(pair.getKey()), v);
+			insert("INSERT INTO TSD_FQN_TAGPAIR VALUES (?,?)", fqn, xuid);
+		}
+		insert("INSERT INTO TSD_TSMETA VALUES (?,?,?)", fqn, tsuid.toString(), uid(metric));
+		seriesCount++;
+		return fqn;
+	}
+	
+	/**
+	 * Deletes a series
+	 * @param fqn The FQNID of the series
+	 * @throws Exception thrown on any error
+	 */
+	static void deleteSeries(final long fqn) throws Exception {
+		insert("DELETE FROM TSD_FQN_TAGPAIR WHERE FQNID = ?", fqn);
+		insert("DELETE FROM TSD_TSMETA WHERE FQNID = ?", fqn);
+		seriesCount--;
+	}
+	
+	/**
+	 * Returns the tag value UID for the passed tag value name. Hosts take 1-20, cpus 21-30 and data centers 31 and 32.
+	 * @param value The tag value name
+	 * @return the UID
+	 */
+	static int tagvUid(final String value) {
+		if(value.startsWith("web")) return Integer.parseInt(value.substring(3)) + 1;
+		if("east".equals(value)) return 31;
+		if("west".equals(value)) return 32;
+		return Integer.parseInt(value) + 21;
+	}
+	
+	/**
+	 * Formats a UID as hex
+	 * @param uid The UID
+	 * @return the hex UID
+	 */
+	static String uid(final int uid) {
+		return String.format("%06X", uid);
+	}
+	
+	/**
+	 * Creates a UIDMeta
+	 * @param type The UID type
+	 * @param uid The UID
+	 * @param name The name
+	 * @return the UIDMeta
+	 */
+	static UIDMeta uidMeta(final UniqueIdType type, final int uid, final String name) {
+		return new UIDMeta(type, UniqueId.stringToUid(uid(uid)), name);
+	}
+	
+	// ==================================================================================================
+	//  SQL answers
+	// ==================================================================================================
+	
+	/**
+	 * Resolves the FQNIDs of the series matching the passed expression in SQL: the metric name matches and, for each tag,
+	 * the series has a tag pair matching the key and value
+	 * @param expr The expression
+	 * @return the FQNIDs
+	 * @throws Exception thrown on any error
+	 */
+	static TreeSet<Integer> sqlResolve(final String[] expr) throws Exception {
+		final List<Object> binds = new ArrayList<Object>();
+		final StringBuilder sql = new StringBuilder("SELECT X.FQNID FROM TSD_TSMETA X, TSD_METRIC M WHERE M.XUID = X.METRIC_UID AND ");
+		like(sql, "M.NAME", expr[0], binds);
+		for(int i = 1; i+1 < expr.length; i+=2) {
+			sql.append(" AND EXISTS (SELECT 1 FROM TSD_FQN_TAGPAIR T, TSD_TAGPAIR P, TSD_TAGK K, TSD_TAGV V WHERE T.FQNID = X.FQNID AND T.XUID = P.XUID AND P.TAGK = K.XUID AND P.TAGV = V.XUID AND ");
+			like(sql, "K.NAME", expr[i], binds);
+			sql.append(" AND ");
+			like(sql, "V.NAME", expr[i+1], binds);
+			sql.append(")");
+		}
+		final TreeSet<Integer> ids = new TreeSet<Integer>();
+		final PreparedStatement ps = conn.prepareStatement(sql.toString());
+		try {
+			for(int i = 0; i < binds.size(); i++) ps.setObject(i+1, binds.get(i));
+			final ResultSet rset = ps.executeQuery();
+			while(rset.next()) ids.add(rset.getInt(1));
+			rset.close();
+		} finally {
+			ps.close();
+		}
+		return ids;
+	}
+	
+	/**
+	 * Selects a page of the series matching the passed expression in SQL, in descending TSUID order
+	 * @param expr The expression
+	 * @param start The exclusive upper bound TSUID, or null for the first page
+	 * @param limit The page size
+	 * @return the FQNIDs of the page
+	 * @throws Exception thrown on any error
+	 */
+	static List<Long> sqlPage(final String[] expr, final String start, final int limit) throws Exception {
+		final TreeSet<Integer> matched = sqlResolve(expr);
+		final List<Long> page = new ArrayList<Long>();
+		final PreparedStatement ps = conn.prepareStatement("SELECT FQNID, TSUID FROM TSD_TSMETA WHERE TSUID < ? ORDER BY TSUID DESC");
+		try {
+			ps.setString(1, start==null ? "G" : start);
+			final ResultSet rset = ps.executeQuery();
+			while(rset.next() && page.size() < limit) {
+				if(matched.contains(rset.getInt(1))) page.add(rset.getLong(1));
+			}
+			rset.close();
+		} finally {
+			ps.close();
+		}
+		return page;
+	}
+	
+	/**
+	 * Returns the TSUIDs of all series keyed by FQNID
+	 * @return the TSUIDs keyed by FQNID
+	 * @throws Exception thrown on any error
+	 */
+	static Map<Integer, String> sqlTsuids() throws Exception {
+		final Map<Integer, String> tsuids = new LinkedHashMap<Integer, String>();
+		final Statement st = conn.createStatement();
+		try {
+			final ResultSet rset = st.executeQuery("SELECT FQNID, TSUID FROM TSD_TSMETA");
+			while(rset.next()) tsuids.put(rset.getInt(1), rset.getString(2));
+			rset.close();
+		} finally {
+			st.close();
+		}
+		return tsuids;
+	}
+	
+	/**
+	 * Returns the FQNID of the passed TSUID
+	 * @param tsuid The TSUID
+	 * @return the FQNID
+	 * @throws Exception thrown on any error
+	 */
+	static Long sqlFqnId(final String tsuid) throws Exception {
+		for(Map.Entry<Integer, String> e: sqlTsuids().entrySet()) {
+			if(e.getValue().equals(tsuid)) return e.getKey().longValue();
+		}
+		return null;
+	}
+	
+	/**
+	 * Appends a SQL predicate for an expression with <b><code>*</code></b> wildcards and <b><code>|</code></b> alternatives
+	 * @param sql The SQL buffer
+	 * @param column The column
+	 * @param expr The expression
+	 * @param binds The bind values
+	 */
+	static void like(final StringBuilder sql, final String column, final String expr, final List<Object> binds) {
+		sql.append("(");
+		final StringTokenizer st = new StringTokenizer(expr, "|");
+		boolean first = true;
+		while(st.hasMoreTokens()) {
+			if(!first) sql.append(" OR ");
+			first = false;
+			sql.append(column).append(" LIKE ?");
+			binds.add(st.nextToken().replace('*', '%'));
+		}
+		sql.append(")");
+	}
+	
+	// ==================================================================================================
+	//  Helpers
+	// ==================================================================================================
+	
+	/**
+	 * Returns the tag expressions of an expression
+	 * @param expr The expression
+	 * @return the tag key and value expressions
+	 */
+	static Map<String, String> tags(final String[] expr) {
+		final Map<String, String> tags = new LinkedHashMap<String, String>();
+		for(int i = 1; i+1 < expr.length; i+=2) tags.put(expr[i], expr[i+1]);
+		return tags;
+	}
+	
+	/**
+	 * Renders an expression for assertion messages
+	 * @param expr The expression
+	 * @return the rendered expression
+	 */
+	static String str(final String[] expr) {
+		return expr[0] + ":" + tags(expr);
+	}
+	
+	/**
+	 * Returns the ids in the passed bitmap as a set
+	 * @param bitmap The bitmap
+	 * @return the ids
+	 */
+	static TreeSet<Integer> toSet(final FQNBitmap bitmap) {
+		final TreeSet<Integer> ids = new TreeSet<Integer>();
+		for(int id: bitmap.toArray()) ids.add(id);
+		return ids;
+	}
+	
+	/**
+	 * Executes an update
+	 * @param sql The SQL
+	 * @param binds The bind values
+	 * @throws Exception thrown on any error
+	 */
+	static void insert(final String sql, final Object...binds) throws Exception {
+		final PreparedStatement ps = conn.prepareStatement(sql);
+		try {
+			for(int i = 0; i < binds.length; i++) ps.setObject(i+1, binds[i]);
+			ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+	
+	/**
+	 * Executes a count query
+	 * @param sql The SQL
+	 * @param binds The bind values
+	 * @return the count
+	 * @throws Exception thrown on any error
+	 */
+	static int count(final String sql, final Object...binds) throws Exception {
+		final PreparedStatement ps = conn.prepareStatement(sql);
+		try {
+			for(int i = 0; i < binds.length; i++) ps.setObject(i+1, binds[i]);
+			final ResultSet rset = ps.executeQuery();
+			rset.next();
+			return rset.getInt(1);
+		} finally {
+			ps.close();
+		}
+	}
+}
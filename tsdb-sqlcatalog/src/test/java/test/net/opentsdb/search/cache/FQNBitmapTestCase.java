@@ -0,0 +1,185 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search.cache;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import net.opentsdb.catalog.cache.FQNBitmap;
+
+import org.helios.tsdb.plugins.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Title: FQNBitmapTestCase</p>
+ * <p>Description: Validates {@link FQNBitmap} against a {@link TreeSet} across sparse and dense chunks and chunk boundaries</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.cache.FQNBitmapTestCase</code></p>
+ */
+
+public class FQNBitmapTestCase extends BaseTest {
+	/** The number of ids in one chunk */
+	static final int CHUNK = 1 << 16;
+	
+	/**
+	 * Validates adds, removes and contains across the sparse to dense container switch and back
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testAddRemoveAcrossContainerSwitch() throws Exception {
+		final FQNBitmap bitmap = new FQNBitmap();
+		final TreeSet<Integer> expected = new TreeSet<Integer>();
+		// One chunk grown past the array container limit, plus ids either side of the chunk boundaries
+		for(int i = 0; i <= FQNBitmap.ARRAY_MAX + 10; i++) {
+			add(bitmap, expected, CHUNK + (i * 3));
+		}
+		add(bitmap, expected, CHUNK - 1);
+		add(bitmap, expected, CHUNK * 2);
+		add(bitmap, expected, Integer.MAX_VALUE);
+		add(bitmap, expected, 0);
+		Assert.assertFalse("Duplicate add", bitmap.add(CHUNK));
+		assertSame(expected, bitmap);
+		// Remove back below the array container limit
+		for(int i = 0; i <= FQNBitmap.ARRAY_MAX; i += 2) {
+			Assert.assertTrue("Removed [" + i + "]", bitmap.remove(CHUNK + (i * 3)));
+			expected.remove(CHUNK + (i * 3));
+		}
+		Assert.assertFalse("Duplicate remove", bitmap.remove(CHUNK));
+		Assert.assertFalse("Remove absent", bitmap.remove(CHUNK + 1));
+		Assert.assertFalse("Contains absent", bitmap.contains(CHUNK + 1));
+		Assert.assertFalse("Remove negative", bitmap.remove(-1));
+		Assert.assertFalse("Contains negative", bitmap.contains(-1));
+		assertSame(expected, bitmap);
+		// Emptying a chunk drops it
+		for(Integer id: new TreeSet<Integer>(expected)) {
+			Assert.assertTrue("Removed [" + id + "]", bitmap.remove(id));
+		}
+		Assert.assertTrue("Empty", bitmap.isEmpty());
+		Assert.assertEquals("Cardinality", 0, bitmap.cardinality());
+		Assert.assertEquals("Array", 0, bitmap.toArray().length);
+	}
+	
+	/**
+	 * Validates that negative ids are rejected
+	 * @throws Exception thrown on any error
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeId() throws Exception {
+		new FQNBitmap().add(-1);
+	}
+	
+	/**
+	 * Validates and, andNot, andNotCardinality and or between every combination of sparse and dense chunks
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testBinaryOperations() throws Exception {
+		final Random r = new Random(11);
+		// Chunk 0 is dense in both, chunk 1 dense in a and sparse in b, chunk 2 sparse in both, chunk 3 only in a, chunk 4 only in b
+		final int[][] sizes = {{20000, 15000}, {9000, 300}, {200, 150}, {100, 0}, {0, 100}};
+		final FQNBitmap a = new FQNBitmap(), b = new FQNBitmap();
+		final TreeSet<Integer> sa = new TreeSet<Integer>(), sb = new TreeSet<Integer>();
+		for(int chunk = 0; chunk < sizes.length; chunk++) {
+			// Draw from a narrow range so the operands overlap
+			for(int i = 0; i < sizes[chunk][0]; i++) add(a, sa, (chunk * CHUNK) + r.nextInt(sizes[chunk][0] * 2));
+			for(int i = 0; i < sizes[chunk][1]; i++) add(b, sb, (chunk * CHUNK) + r.nextInt(Math.max(sizes[chunk][0], sizes[chunk][1]) * 2));
+		}
+		final int[] beforeA = a.toArray(), beforeB = b.toArray();
+		
+		final TreeSet<Integer> and = new TreeSet<Integer>(sa);
+		and.retainAll(sb);
+		assertSame(and, FQNBitmap.and(a, b));
+		assertSame(and, FQNBitmap.and(b, a));
+		
+		final TreeSet<Integer> aNotB = new TreeSet<Integer>(sa);
+		aNotB.removeAll(sb);
+		final TreeSet<Integer> bNotA = new TreeSet<Integer>(sb);
+		bNotA.removeAll(sa);
+		assertSame(aNotB, FQNBitmap.andNot(a, b));
+		assertSame(bNotA, FQNBitmap.andNot(b, a));
+		Assert.assertEquals("a andNot b cardinality", aNotB.size(), FQNBitmap.andNotCardinality(a, b));
+		Assert.assertEquals("b andNot a cardinality", bNotA.size(), FQNBitmap.andNotCardinality(b, a));
+		Assert.assertEquals("a andNot a cardinality", 0, FQNBitmap.andNotCardinality(a, a));
+		Assert.assertEquals("a andNot empty cardinality", sa.size(), FQNBitmap.andNotCardinality(a, new FQNBitmap()));
+		Assert.assertEquals("empty andNot a cardinality", 0, FQNBitmap.andNotCardinality(new FQNBitmap(), a));
+		
+		final TreeSet<Integer> or = new TreeSet<Integer>(sa);
+		or.addAll(sb);
+		assertSame(or, a.copy().or(b));
+		assertSame(or, b.copy().or(a));
+		
+		Assert.assertArrayEquals("a was modified", beforeA, a.toArray());
+		Assert.assertArrayEquals("b was modified", beforeB, b.toArray());
+	}
+	
+	/**
+	 * Validates that a copy is independent of its source
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testCopyIsIndependent() throws Exception {
+		final FQNBitmap a = new FQNBitmap();
+		for(int i = 0; i < FQNBitmap.ARRAY_MAX * 2; i++) a.add(i);
+		a.add(CHUNK + 5);
+		final FQNBitmap c = a.copy();
+		c.add(CHUNK + 6);
+		c.remove(0);
+		Assert.assertTrue("Source lost an id", a.contains(0));
+		Assert.assertFalse("Source gained an id", a.contains(CHUNK + 6));
+		Assert.assertEquals("Source cardinality", (FQNBitmap.ARRAY_MAX * 2) + 1, a.cardinality());
+		Assert.assertEquals("Copy cardinality", (FQNBitmap.ARRAY_MAX * 2) + 1, c.cardinality());
+	}
+	
+	/**
+	 * Adds an id to the bitmap and the expected set, checking the add result
+	 * @param bitmap The bitmap
+	 * @param expected The expected set
+	 * @param id The id to add
+	 */
+	static void add(final FQNBitmap bitmap, final TreeSet<Integer> expected, final int id) {
+		Assert.assertEquals("Add [" + id + "]", expected.add(id), bitmap.add(id));
+	}
+	
+	/**
+	 * Asserts that the bitmap holds exactly the expected ids
+	 * @param expected The expected ids
+	 * @param bitmap The bitmap
+	 */
+	static void assertSame(final TreeSet<Integer> expected, final FQNBitmap bitmap) {
+		Assert.assertEquals("Cardinality", expected.size(), bitmap.cardinality());
+		Assert.assertEquals("Empty", expected.isEmpty(), bitmap.isEmpty());
+		final int[] arr = bitmap.toArray();
+		Assert.assertEquals("Array length", expected.size(), arr.length);
+		final Iterator<Integer> iter = expected.iterator();
+		for(int i = 0; i < arr.length; i++) {
+			final int id = iter.next();
+			Assert.assertEquals("Id #" + i, id, arr[i]);
+			Assert.assertTrue("Contains [" + id + "]", bitmap.contains(id));
+		}
+	}
+}
@@ -0,0 +1,407 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package test.net.opentsdb.search.cache;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.opentsdb.catalog.AbstractDBCatalog;
+import net.opentsdb.catalog.SQLCatalogMetricsMetaAPIImpl;
+import net.opentsdb.catalog.TSDBCatalogSearchEventHandler;
+import net.opentsdb.catalog.cache.MetaQueryResultCache;
+import net.opentsdb.meta.TSMeta;
+import net.opentsdb.meta.UIDMeta;
+import net.opentsdb.meta.api.QueryContext;
+import net.opentsdb.uid.UniqueId;
+import net.opentsdb.uid.UniqueId.UniqueIdType;
+
+import org.helios.tsdb.plugins.util.SystemClock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import reactor.core.composable.Deferred;
+import reactor.core.composable.Stream;
+import reactor.core.composable.spec.Streams;
+import reactor.function.Consumer;
+import test.net.opentsdb.search.CatalogBaseTest;
+import test.net.opentsdb.search.util.JDBCHelper;
+
+/**
+ * <p>Title: MetaQueryResultCacheTestCase</p>
+ * <p>Description: Validates that {@link MetaQueryResultCache} entries are invalidated by the changes the H2 catalog
+ * commits: a new series matching a cached expression, a deleted series and a renamed UIDMeta, and that a page 
+ * captured while a relevant change commits is not cached.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>test.net.opentsdb.search.cache.MetaQueryResultCacheTestCase</code></p>
+ */
+
+public class MetaQueryResultCacheTestCase extends CatalogBaseTest {
+	/** The catalog's metrics meta service */
+	static SQLCatalogMetricsMetaAPIImpl metaApi = null;
+	
+	/** An empty tag map */
+	static final Map<String, String> NO_TAGS = Collections.emptyMap();
+	
+	/** The reflective access field for the catalog's metrics meta service */
+	protected static final Field metricsMetaServiceField;
+	
+	static {
+		try {
+			metricsMetaServiceField = AbstractDBCatalog.class.getDeclaredField("metricsMetaService");
+			metricsMetaServiceField.setAccessible(true);
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Starts a TSDB with the catalog search plugin on an in-memory H2 catalog.
+	 * Hides {@link CatalogBaseTest#initialize()} which starts the default catalog.
+	 */
+	@BeforeClass
+	public static void initialize() {
+		tearDownTSDBAfterTest = false;
+		createServiceJar();
+		tsdb = newTSDB("H2CatalogSearchConfig");
+		TSDBCatalogSearchEventHandler.waitForStart();
+		jdbcHelper = new JDBCHelper(TSDBCatalogSearchEventHandler.getInstance().getDataSource());
+		try {
+			metaApi = (SQLCatalogMetricsMetaAPIImpl)metricsMetaServiceField.get(TSDBCatalogSearchEventHandler.getInstance().getDbInterface());
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to get the catalog's metrics meta service", ex);
+		}
+	}
+	
+	/**
+	 * Empties the catalog, and with it the result cache, before each test
+	 */
+	@Before
+	public void purgeCatalog() {
+		TSDBCatalogSearchEventHandler.getInstance().getDbInterface().purge();
+		Assert.assertEquals("TSMetas after purge", 0, jdbcHelper.queryForInt("SELECT COUNT(*) FROM TSD_TSMETA"));
+	}
+	
+	/**
+	 * Validates that a cached page is replayed until a new series matching its expression is committed,
+	 * and that a new series that does not match leaves it cached
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testNewMatchingSeriesInvalidates() throws Exception {
+		final Map<String, String> tags = tags("host", "*");
+		final TSMeta web01 = series("cache.new.cpu", "host", "web01");
+		series("cache.other.cpu", "host", "web01");
+		waitForProcessingQueue("testNewMatchingSeriesInvalidates/Indexing", 30000, TimeUnit.MILLISECONDS);
+		
+		assertQuery("First query", false, "cache.new.cpu", tags, web01);
+		assertQuery("Repeated query", true, "cache.new.cpu", tags, web01);
+		
+		series("cache.other.mem", "host", "web02");
+		waitForProcessingQueue("testNewMatchingSeriesInvalidates/Non Matching", 30000, TimeUnit.MILLISECONDS);
+		assertQuery("After non matching series", true, "cache.new.cpu", tags, web01);
+		
+		final long invalidations = metaApi.getResultCache().getInvalidations();
+		final TSMeta web02 = series("cache.new.cpu", "host", "web02");
+		waitForProcessingQueue("testNewMatchingSeriesInvalidates/Matching", 30000, TimeUnit.MILLISECONDS);
+		Assert.assertTrue("Invalidations", metaApi.getResultCache().getInvalidations() > invalidations);
+		assertQuery("After matching series", false, "cache.new.cpu", tags, web01, web02);
+		assertQuery("Repeated after matching series", true, "cache.new.cpu", tags, web01, web02);
+	}
+	
+	/**
+	 * Validates that deleting a TSMeta evicts the cached pages holding it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testTSMetaDeleteInvalidates() throws Exception {
+		final TSMeta web01 = series("cache.del.cpu", "host", "web01");
+		final TSMeta web02 = series("cache.del.cpu", "host", "web02");
+		waitForProcessingQueue("testTSMetaDeleteInvalidates/Indexing", 30000, TimeUnit.MILLISECONDS);
+		
+		assertQuery("First query", false, "cache.del.cpu", NO_TAGS, web01, web02);
+		assertQuery("Repeated query", true, "cache.del.cpu", NO_TAGS, web01, web02);
+		
+		tsdb.deleteTSMeta(web02.getTSUID());
+		waitForProcessingQueue("testTSMetaDeleteInvalidates/Delete", 30000, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("TSMetas after delete", 1, jdbcHelper.queryForInt("SELECT COUNT(*) FROM TSD_TSMETA"));
+		assertQuery("After delete", false, "cache.del.cpu", NO_TAGS, web01);
+	}
+	
+	/**
+	 * Validates that renaming a metric UIDMeta evicts the pages whose results hold it,
+	 * and the pages whose expression matches its old or new name
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testUIDMetaRenameInvalidates() throws Exception {
+		final TSMeta cpu = series("cache.ren.cpu", "host", "web01");
+		final TSMeta mem = series("cache.ren.mem", "host", "web01");
+		waitForProcessingQueue("testUIDMetaRenameInvalidates/Indexing", 30000, TimeUnit.MILLISECONDS);
+		
+		assertQuery("Wildcard query", false, "cache.ren.*", NO_TAGS, cpu, mem);
+		assertQuery("Old name query", false, "cache.ren.cpu|cache.ren.mem", NO_TAGS, cpu, mem);
+		assertQuery("New name query", false, "cache.ren.processor|cache.ren.mem", NO_TAGS, mem);
+		assertQuery("Repeated wildcard query", true, "cache.ren.*", NO_TAGS, cpu, mem);
+		assertQuery("Repeated old name query", true, "cache.ren.cpu|cache.ren.mem", NO_TAGS, cpu, mem);
+		assertQuery("Repeated new name query", true, "cache.ren.processor|cache.ren.mem", NO_TAGS, mem);
+		
+		final UIDMeta renamed = new UIDMeta(UniqueIdType.METRIC, UniqueId.stringToUid(cpu.getMetric().getUID()), "cache.ren.processor");
+		tsdb.indexUIDMeta(renamed);
+		waitForProcessingQueue("testUIDMetaRenameInvalidates/Rename", 30000, TimeUnit.MILLISECONDS);
+		
+		final List<TSMeta> wildcard = assertQuery("Wildcard query after rename", false, "cache.ren.*", NO_TAGS, cpu, mem);
+		for(TSMeta tsMeta: wildcard) {
+			if(tsMeta.getTSUID().equals(cpu.getTSUID())) Assert.assertEquals("Renamed metric", "cache.ren.processor", tsMeta.getMetric().getName());
+		}
+		assertQuery("Old name query after rename", false, "cache.ren.cpu|cache.ren.mem", NO_TAGS, mem);
+		assertQuery("New name query after rename", false, "cache.ren.processor|cache.ren.mem", NO_TAGS, cpu, mem);
+	}
+	
+	/**
+	 * Validates that a page captured while a matching series commits is not cached, 
+	 * and that the same capture is cached when nothing commits
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testNoStaleCaptureAfterConcurrentInvalidation() throws Exception {
+		final MetaQueryResultCache resultCache = metaApi.getResultCache();
+		final TSMeta web01 = series("cache.race.cpu", "host", "web01");
+		waitForProcessingQueue("testNoStaleCaptureAfterConcurrentInvalidation/Indexing", 30000, TimeUnit.MILLISECONDS);
+		final List<TSMeta> page = assertQuery("First query", false, "cache.race.cpu", NO_TAGS, web01);
+		
+		// the first query's page is cached by now, so the captures below are the only pending ones
+		resultCache.clear();
+		final QueryContext quiet = newQueryContext();
+		final MetaQueryResultCache.Key quietKey = resultCache.tsMetasKey(quiet, "cache.race.cpu", NO_TAGS, null);
+		resultCache.capturing(quietKey, quiet, capturePage(quiet, page, null)).run();
+		Assert.assertNotNull("Quiet capture was cached", cachedPage("cache.race.cpu", NO_TAGS));
+		
+		resultCache.clear();
+		final QueryContext racing = newQueryContext();
+		final MetaQueryResultCache.Key racingKey = resultCache.tsMetasKey(racing, "cache.race.cpu", NO_TAGS, null);
+		final TSMeta[] web02 = new TSMeta[1];
+		resultCache.capturing(racingKey, racing, capturePage(racing, page, new Runnable() {
+			public void run() {
+				web02[0] = series("cache.race.cpu", "host", "web02");
+				waitForProcessingQueue("testNoStaleCaptureAfterConcurrentInvalidation/Racing", 30000, TimeUnit.MILLISECONDS);
+			}
+		})).run();
+		Assert.assertNull("Racing capture was cached", cachedPage("cache.race.cpu", NO_TAGS));
+		assertQuery("Query after racing capture", false, "cache.race.cpu", NO_TAGS, web01, web02[0]);
+	}
+	
+	/**
+	 * Returns a query that streams the passed page into the current capture the way the catalog queries do,
+	 * running the passed change between reading the page and completing it
+	 * @param queryContext The query context of the captured query
+	 * @param page The page to stream
+	 * @param change The change to commit while the page is read, or null
+	 * @return the query
+	 */
+	protected static Runnable capturePage(final QueryContext queryContext, final List<TSMeta> page, final Runnable change) {
+		return new Runnable() {
+			public void run() {
+				final MetaQueryResultCache.Capture capture = MetaQueryResultCache.currentCapture();
+				Assert.assertNotNull("Current capture", capture);
+				for(TSMeta tsMeta: page) {
+					capture.add(tsMeta);
+				}
+				if(change!=null) change.run();
+				queryContext.setExhausted(true).setNextIndex(null).incrementCummulative(page.size());
+				capture.pageComplete();
+			}
+		};
+	}
+	
+	/**
+	 * Validates the TSUIDs of a page, either replayed from the result cache or read from the catalog.
+	 * An expected miss is executed through the catalog's metrics meta service, and since a page read from the catalog
+	 * is cached once its capture completes, shortly after the page is delivered, waits for the page to be cached.
+	 * @param message The assertion message prefix
+	 * @param cacheHit true if the page is expected from the result cache, false if it is expected to be read from the catalog
+	 * @param metricName The metric name expression
+	 * @param tags The tag expressions
+	 * @param expected The expected TSMetas
+	 * @return the page's TSMetas
+	 * @throws Exception thrown on any error
+	 */
+	protected static List<TSMeta> assertQuery(final String message, final boolean cacheHit, final String metricName, final Map<String, String> tags, final TSMeta...expected) throws Exception {
+		final List<TSMeta> cached = cachedPage(metricName, tags);
+		final List<TSMeta> results;
+		if(cacheHit) {
+			Assert.assertNotNull(message + ": Cache hit", cached);
+			results = cached;
+		} else {
+			Assert.assertNull(message + ": Cache miss", cached);
+			final QueryContext q = newQueryContext();
+			results = query(q, metricName, tags);
+			Assert.assertFalse(message + ": Replayed", q.getCtx().containsKey("ResultCacheHit"));
+			Assert.assertTrue(message + ": Exhausted", q.isExhausted());
+		}
+		final TreeSet<String> expectedTsuids = new TreeSet<String>();
+		for(TSMeta tsMeta: expected) {
+			expectedTsuids.add(tsMeta.getTSUID());
+		}
+		final TreeSet<String> tsuids = new TreeSet<String>();
+		for(TSMeta tsMeta: results) {
+			tsuids.add(tsMeta.getTSUID());
+		}
+		Assert.assertEquals(message + ": TSUIDs", expectedTsuids, tsuids);
+		if(!cacheHit) {
+			final long deadline = System.currentTimeMillis() + 5000;
+			while(cachedPage(metricName, tags)==null) {
+				Assert.assertTrue(message + ": Timed out waiting for the page to be cached", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Replays the cached page of a TSMeta query into a stream consumed before the page is delivered
+	 * @param metricName The metric name expression
+	 * @param tags The tag expressions
+	 * @return the cached page's TSMetas, or null if the page is not cached
+	 */
+	protected static List<TSMeta> cachedPage(final String metricName, final Map<String, String> tags) {
+		final MetaQueryResultCache resultCache = metaApi.getResultCache();
+		final QueryContext q = newQueryContext();
+		final Deferred<TSMeta, Stream<TSMeta>> def = Streams.<TSMeta>defer().get();
+		final List<TSMeta> page = new ArrayList<TSMeta>();
+		def.compose().consume(new Consumer<TSMeta>() {
+			@Override
+			public void accept(final TSMeta tsMeta) {
+				page.add(tsMeta);
+			}
+		});
+		if(!resultCache.replay(resultCache.tsMetasKey(q, metricName, tags, null), def, q)) return null;
+		Assert.assertTrue("Replayed page exhausted", q.isExhausted());
+		return page;
+	}
+	
+	/**
+	 * Executes a TSMeta query through the catalog's metrics meta service and waits for its page
+	 * @param q The query context
+	 * @param metricName The metric name expression
+	 * @param tags The tag expressions
+	 * @return the returned TSMetas
+	 * @throws Exception thrown on any error
+	 */
+	protected static List<TSMeta> query(final QueryContext q, final String metricName, final Map<String, String> tags) throws Exception {
+		final List<TSMeta> results = new ArrayList<TSMeta>();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		metaApi.getTSMetas(q, metricName, tags).consume(new Consumer<List<TSMeta>>() {
+			@Override
+			public void accept(final List<TSMeta> page) {
+				results.addAll(page);
+				latch.countDown();
+			}
+		}).when(Throwable.class, new Consumer<Throwable>() {
+			@Override
+			public void accept(final Throwable t) {
+				error.set(t);
+				latch.countDown();
+			}
+		});
+		Assert.assertTrue("Timed out waiting for [" + metricName + "] " + tags, latch.await(5000, TimeUnit.MILLISECONDS));
+		if(error.get()!=null) throw new Exception("Query failed for [" + metricName + "] " + tags, error.get());
+		return results;
+	}
+	
+	/**
+	 * Creates a new single page query context
+	 * @return the query context
+	 */
+	protected static QueryContext newQueryContext() {
+		return new QueryContext().setPageSize(100).setMaxSize(100).setTimeout(5000);
+	}
+	
+	/**
+	 * Indexes the TSMeta of a series and the UIDMetas it creates. UIDMetas created by earlier series are not 
+	 * indexed again since the catalog records that as a change.
+	 * @param metric The metric name
+	 * @param tags The tag keys and values in alternating order
+	 * @return the indexed TSMeta
+	 */
+	protected TSMeta series(final String metric, final String...tags) {
+		final LinkedList<UIDMeta> uidMetas = new LinkedList<UIDMeta>();
+		final List<UIDMeta> created = new ArrayList<UIDMeta>();
+		uidMetas.add(uidMeta(UniqueIdType.METRIC, METRIC_COUNTER, createdMetricNames, metric, created));
+		for(int i = 0; i < tags.length; i += 2) {
+			uidMetas.add(uidMeta(UniqueIdType.TAGK, TAGK_COUNTER, createdTagKeys, tags[i], created));
+			uidMetas.add(uidMeta(UniqueIdType.TAGV, TAGV_COUNTER, createdTagValues, tags[i+1], created));
+		}
+		for(UIDMeta uidMeta: created) {
+			tsdb.indexUIDMeta(uidMeta);
+		}
+		final TSMeta tsMeta = fromUids(uidMetas);
+		tsMeta.setCreated(SystemClock.unixTime());
+		tsdb.indexTSMeta(tsMeta);
+		return tsMeta;
+	}
+	
+	/**
+	 * Returns the UIDMeta for the passed name, creating it if this test has not created it yet
+	 * @param type The UIDMeta type
+	 * @param ctr The UID counter for the type
+	 * @param existing The UIDMetas of the type created so far, keyed by name
+	 * @param name The UIDMeta name
+	 * @param created The list to add a created UIDMeta to
+	 * @return the UIDMeta
+	 */
+	protected UIDMeta uidMeta(final UniqueIdType type, final AtomicInteger ctr, final Map<String, UIDMeta> existing, final String name, final List<UIDMeta> created) {
+		final boolean exists = existing.containsKey(name);
+		final UIDMeta uidMeta = newUIDMeta(type, ctr, name);
+		if(!exists) created.add(uidMeta);
+		return uidMeta;
+	}
+	
+	/**
+	 * Builds a tag map from alternating keys and values
+	 * @param pairs The tag keys and values
+	 * @return the tag map
+	 */
+	protected static Map<String, String> tags(final String...pairs) {
+		final Map<String, String> tags = new HashMap<String, String>();
+		for(int i = 0; i < pairs.length; i += 2) {
+			tags.put(pairs[i], pairs[i+1]);
+		}
+		return tags;
+	}
+}